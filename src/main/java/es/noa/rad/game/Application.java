@@ -182,10 +182,11 @@ import es.noa.rad.game.engine.core.Window;
 
     /**
      * Cleans up all resources before shutdown.
-     * Closes the window and releases GLFW resources.
+     * Closes the window, releases GLFW resources and the frame arena.
      */
     private void close() {
       Window.get().close();
+      GameTiming.get().close();
     }
 
     /**
@@ -0,0 +1,306 @@
+package es.noa.rad.game.engine.animation;
+
+  /**
+   * Compressed keyframe animation of a skeleton.
+   *
+   * <p>Every joint has three tracks (translation, rotation and scale). A
+   * track keeps only the keys its curve needs: keys that linear
+   * interpolation of their neighbours reproduces within the tolerance of
+   * the {@link ClipCompressor} are dropped, and a track that does not move
+   * keeps a single key. The remaining keys are quantized to 16 bits:
+   * <ul>
+   *   <li>times, as a fraction of the clip duration;</li>
+   *   <li>translations and scales, over the range of their track, which is
+   *       stored as a minimum and a step per component;</li>
+   *   <li>rotations, as the four quaternion components over
+   *       {@code [-1, 1]}, renormalized when sampled.</li>
+   * </ul>
+   * All tracks share two {@code char} arrays (times and values) indexed
+   * by per-track offsets.
+   *
+   * <p>Sampling finds the surrounding keys of every track by binary
+   * search and interpolates them: linearly for translations and scales,
+   * along the shortest arc for rotations.
+   *
+   * <p>Immutable; may be sampled by several threads at once.
+   *
+   * @see ClipCompressor
+   */
+  public final class AnimationClip {
+
+    /**
+     * Track of the translation of a joint, relative to its first track.
+     */
+    static final int TRANSLATION = 0;
+
+    /**
+     * Track of the rotation of a joint, relative to its first track.
+     */
+    static final int ROTATION = 1;
+
+    /**
+     * Track of the scale of a joint, relative to its first track.
+     */
+    static final int SCALE = 2;
+
+    /**
+     * Number of tracks of a joint.
+     */
+    static final int TRACKS_PER_JOINT = 3;
+
+    /**
+     * Number of floats of the range of a track: minimum and step of every
+     * component.
+     */
+    static final int RANGE_STRIDE = 6;
+
+    /**
+     * Largest quantized value.
+     */
+    static final float QUANTUM = Character.MAX_VALUE;
+
+    /**
+     * Step of a quantized rotation component over {@code [-1, 1]}.
+     */
+    static final float ROTATION_STEP = 2.0F / AnimationClip.QUANTUM;
+
+    /**
+     * Duration in seconds.
+     */
+    private final float duration;
+
+    /**
+     * First key of every track; the entry after the last track holds the
+     * key count.
+     */
+    private final int[] keyStarts;
+
+    /**
+     * First value of every track.
+     */
+    private final int[] valueStarts;
+
+    /**
+     * Quantized time of every key.
+     */
+    private final char[] times;
+
+    /**
+     * Quantized components of every key.
+     */
+    private final char[] values;
+
+    /**
+     * Minimum and step of every component of every translation and scale
+     * track.
+     */
+    private final float[] ranges;
+
+    /**
+     * Creates a clip from compressed data.
+     *
+     * @param _duration the duration in seconds
+     * @param _keyStarts the first key of every track, plus the key count
+     * @param _valueStarts the first value of every track
+     * @param _times the quantized time of every key
+     * @param _values the quantized components of every key
+     * @param _ranges the minimum and step of every track component
+     */
+    AnimationClip(
+        final float _duration,
+        final int[] _keyStarts,
+        final int[] _valueStarts,
+        final char[] _times,
+        final char[] _values,
+        final float[] _ranges) {
+      this.duration = _duration;
+      this.keyStarts = _keyStarts;
+      this.valueStarts = _valueStarts;
+      this.times = _times;
+      this.values = _values;
+      this.ranges = _ranges;
+    }
+
+    /**
+     * Gets the duration.
+     *
+     * @return the duration in seconds
+     */
+    public float duration() {
+      return this.duration;
+    }
+
+    /**
+     * Gets the number of joints animated.
+     *
+     * @return the joint count
+     */
+    public int jointCount() {
+      return this.valueStarts.length / AnimationClip.TRACKS_PER_JOINT;
+    }
+
+    /**
+     * Gets the number of keys kept over all tracks.
+     *
+     * @return the key count
+     */
+    public int keyCount() {
+      return this.times.length;
+    }
+
+    /**
+     * Gets the memory taken by the compressed data.
+     *
+     * @return the size in bytes of the arrays of the clip
+     */
+    public long bytes() {
+      return ((long) (this.times.length + this.values.length) * Character.BYTES)
+        + ((long) (this.keyStarts.length + this.valueStarts.length)
+          * Integer.BYTES)
+        + ((long) this.ranges.length * Float.BYTES);
+    }
+
+    /**
+     * Samples every joint at a time.
+     *
+     * @param _time the time in seconds, clamped to the clip
+     * @param _dest the pose receiving the local transforms
+     */
+    public void sample(
+        final float _time,
+        final Pose _dest) {
+      final float tick = Math.max(0.0F,
+        Math.min(_time / this.duration, 1.0F)) * AnimationClip.QUANTUM;
+      final float[] translations = _dest.translations();
+      final float[] rotations = _dest.rotations();
+      final float[] scales = _dest.scales();
+      final int jointCount = this.jointCount();
+      for (int joint = 0; joint < jointCount; joint++) {
+        final int track = joint * AnimationClip.TRACKS_PER_JOINT;
+        this.sampleVector(track + AnimationClip.TRANSLATION, tick,
+          translations, joint * Pose.VECTOR_STRIDE);
+        this.sampleRotation(track + AnimationClip.ROTATION, tick,
+          rotations, joint * Pose.ROTATION_STRIDE);
+        this.sampleVector(track + AnimationClip.SCALE, tick,
+          scales, joint * Pose.VECTOR_STRIDE);
+      }
+    }
+
+    /**
+     * Samples a translation or scale track.
+     *
+     * @param _track the track
+     * @param _tick the quantized time
+     * @param _dest the block receiving the vector
+     * @param _offset the position of the vector in the block
+     */
+    private void sampleVector(
+        final int _track,
+        final float _tick,
+        final float[] _dest,
+        final int _offset) {
+      final int first = this.keyStarts[_track];
+      final int key = this.find(_track, _tick);
+      final int next = Math.min(key + 1, this.keyStarts[_track + 1] - 1);
+      final float weight = this.weight(key, next, _tick);
+      final int range = _track * AnimationClip.RANGE_STRIDE;
+      final int base = this.valueStarts[_track]
+        + ((key - first) * Pose.VECTOR_STRIDE);
+      final int nextBase = base + ((next - key) * Pose.VECTOR_STRIDE);
+      for (int component = 0; component < Pose.VECTOR_STRIDE; component++) {
+        final float step = this.ranges[range + Pose.VECTOR_STRIDE + component];
+        final float from = this.values[base + component] * step;
+        final float to = this.values[nextBase + component] * step;
+        _dest[_offset + component] = this.ranges[range + component]
+          + from + ((to - from) * weight);
+      }
+    }
+
+    /**
+     * Samples a rotation track.
+     *
+     * @param _track the track
+     * @param _tick the quantized time
+     * @param _dest the block receiving the quaternion
+     * @param _offset the position of the quaternion in the block
+     */
+    private void sampleRotation(
+        final int _track,
+        final float _tick,
+        final float[] _dest,
+        final int _offset) {
+      final int first = this.keyStarts[_track];
+      final int key = this.find(_track, _tick);
+      final int next = Math.min(key + 1, this.keyStarts[_track + 1] - 1);
+      final float weight = this.weight(key, next, _tick);
+      final int base = this.valueStarts[_track]
+        + ((key - first) * Pose.ROTATION_STRIDE);
+      final int nextBase = base + ((next - key) * Pose.ROTATION_STRIDE);
+      for (int component = 0; component < Pose.ROTATION_STRIDE;
+          component++) {
+        _dest[_offset + component] = AnimationClip.rotation(
+          this.values[base + component]);
+      }
+      /* Also renormalizes the quantized key when both keys are the same. */
+      Pose.nlerp(_dest, _offset,
+        AnimationClip.rotation(this.values[nextBase]),
+        AnimationClip.rotation(this.values[nextBase + 1]),
+        AnimationClip.rotation(this.values[nextBase + 2]),
+        AnimationClip.rotation(this.values[nextBase + Pose.W]),
+        weight);
+    }
+
+    /**
+     * Finds the last key of a track at or before a time.
+     *
+     * @param _track the track
+     * @param _tick the quantized time
+     * @return the key, or the first key of the track if all are later
+     */
+    private int find(
+        final int _track,
+        final float _tick) {
+      int low = this.keyStarts[_track];
+      int high = this.keyStarts[_track + 1] - 1;
+      while (low < high) {
+        final int middle = (low + high + 1) >>> 1;
+        if (this.times[middle] <= _tick) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Computes the interpolation weight between two keys.
+     *
+     * @param _key the key at or before the time
+     * @param _next the key after it, or the same key at the end of a track
+     * @param _tick the quantized time
+     * @return the weight of the next key
+     */
+    private float weight(
+        final int _key,
+        final int _next,
+        final float _tick) {
+      final float span = this.times[_next] - this.times[_key];
+      if (span <= 0.0F) {
+        return 0.0F;
+      }
+      return Math.max(0.0F, Math.min((_tick - this.times[_key]) / span, 1.0F));
+    }
+
+    /**
+     * Decodes a quantized rotation component.
+     *
+     * @param _value the quantized component
+     * @return the component
+     */
+    private static float rotation(
+        final char _value) {
+      return (_value * AnimationClip.ROTATION_STEP) - 1.0F;
+    }
+
+  }
@@ -0,0 +1,532 @@
+package es.noa.rad.game.engine.animation;
+
+import java.util.Arrays;
+
+import es.noa.rad.game.engine.job.JobSystem;
+import es.noa.rad.game.engine.job.ParallelFor;
+import es.noa.rad.game.engine.math.BatchMath;
+import es.noa.rad.game.engine.memory.HandlePool;
+
+  /**
+   * Plays skeletal animations on the CPU for every animated character.
+   *
+   * <p>Characters are identified by generational handles. Each one plays a
+   * clip, optionally blended with a second clip at the same phase (a walk
+   * into a run, for instance), and owns its poses and matrix palettes, so
+   * characters are independent of each other. Every {@link #update(float)}
+   * spreads the characters over the job system; for each character it:
+   * <ol>
+   *   <li>advances the playback time, looping the clip;</li>
+   *   <li>samples the compressed clips into local poses and blends
+   *       them;</li>
+   *   <li>composes the model matrix of every joint from its local
+   *       translation, rotation and scale and the model matrix of its
+   *       parent;</li>
+   *   <li>multiplies the model matrices by the inverse bind matrices into
+   *       the skinning palette with {@link BatchMath}.</li>
+   * </ol>
+   * The palette, one column-major matrix per joint, is what the vertex
+   * skinning of the character reads.
+   *
+   * <p>Not thread-safe: characters are created, changed and updated by one
+   * thread at a time; the update itself uses the job system.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * Animator animator = new Animator(jobSystem, 256);
+   * int hero = animator.create(skeleton);
+   * animator.play(hero, walk);
+   * animator.blend(hero, run, 0.25f);
+   * animator.update(deltaTime);
+   * float[] palette = animator.skinning(hero);
+   * }</pre>
+   */
+  public final class Animator {
+
+    /**
+     * Number of characters of a batch of the parallel update.
+     */
+    private static final int GRAIN = 8;
+
+    /**
+     * Handles of the characters.
+     */
+    private final HandlePool handles;
+
+    /**
+     * Parallel loop over the character slots.
+     */
+    private final ParallelFor loop;
+
+    /**
+     * State of every character slot, null for free slots.
+     */
+    private Instance[] instances;
+
+    /**
+     * Time step of the running update.
+     */
+    private float deltaTime;
+
+    /**
+     * Duration of the last update in nanoseconds.
+     */
+    private long updateNanos;
+
+    /**
+     * Creates an animator.
+     *
+     * @param _jobSystem the job system running the updates
+     * @param _capacity the number of characters before growing
+     */
+    public Animator(
+        final JobSystem _jobSystem,
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.handles = new HandlePool(capacity);
+      this.loop = new ParallelFor(_jobSystem, this::updateRange,
+        Animator.GRAIN);
+      this.instances = new Instance[capacity];
+    }
+
+    /**
+     * Creates a character in the bind pose of its skeleton.
+     *
+     * @param _skeleton the skeleton of the character
+     * @return the character handle
+     */
+    public int create(
+        final Skeleton _skeleton) {
+      final int character = this.handles.allocate();
+      final int slot = this.handles.slot(character);
+      if (slot >= this.instances.length) {
+        this.instances = Arrays.copyOf(this.instances,
+          this.handles.capacity());
+      }
+      this.instances[slot] = new Instance(_skeleton);
+      this.instances[slot].update(0.0F);
+      return character;
+    }
+
+    /**
+     * Destroys a character.
+     *
+     * @param _character the character handle
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void destroy(
+        final int _character) {
+      this.instances[this.handles.release(_character)] = null;
+    }
+
+    /**
+     * Checks whether a handle identifies a live character.
+     *
+     * @param _character the character handle
+     * @return {@code true} if the character is live
+     */
+    public boolean isValid(
+        final int _character) {
+      return this.handles.isValid(_character);
+    }
+
+    /**
+     * Plays a clip from its start, removing any blended clip.
+     *
+     * @param _character the character handle
+     * @param _clip the clip, null to hold the bind pose
+     * @throws IllegalArgumentException if the handle is not live or the
+     *     clip does not animate the joints of the skeleton
+     */
+    public void play(
+        final int _character,
+        final AnimationClip _clip) {
+      final Instance state = this.character(_character);
+      state.clip = state.check(_clip);
+      state.blendClip = null;
+      state.weight = 0.0F;
+      state.time = 0.0F;
+    }
+
+    /**
+     * Blends a second clip over the playing one. The second clip plays at
+     * the same phase as the first, stretched to its duration.
+     *
+     * @param _character the character handle
+     * @param _clip the clip to blend, null to stop blending
+     * @param _weight the weight of the blended clip, from 0 to 1
+     * @throws IllegalArgumentException if the handle is not live or the
+     *     clip does not animate the joints of the skeleton
+     */
+    public void blend(
+        final int _character,
+        final AnimationClip _clip,
+        final float _weight) {
+      final Instance state = this.character(_character);
+      state.blendClip = state.check(_clip);
+      state.weight = Math.max(0.0F, Math.min(_weight, 1.0F));
+    }
+
+    /**
+     * Sets the playback speed of a character.
+     *
+     * @param _character the character handle
+     * @param _speed the speed, 1 for real time; negative plays backwards
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void speed(
+        final int _character,
+        final float _speed) {
+      this.character(_character).speed = _speed;
+    }
+
+    /**
+     * Gets the playback time of a character.
+     *
+     * @param _character the character handle
+     * @return the time in seconds within the playing clip
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public float time(
+        final int _character) {
+      return this.character(_character).time;
+    }
+
+    /**
+     * Advances and poses every character.
+     *
+     * @param _deltaTime the time step in seconds
+     */
+    public void update(
+        final float _deltaTime) {
+      final long start = System.nanoTime();
+      this.deltaTime = _deltaTime;
+      this.loop.run(this.handles.slotCount());
+      this.updateNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the local pose computed by the last update. The pose is owned
+     * by the animator and overwritten by the next update.
+     *
+     * @param _character the character handle
+     * @return the pose
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Pose pose(
+        final int _character) {
+      return this.character(_character).pose;
+    }
+
+    /**
+     * Gets the skinning palette computed by the last update: the model
+     * matrix of every joint times its inverse bind matrix, column-major.
+     * The palette is owned by the animator and overwritten by the next
+     * update.
+     *
+     * @param _character the character handle
+     * @return the palette, {@link BatchMath#MATRIX_SIZE} floats per joint
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public float[] skinning(
+        final int _character) {
+      return this.character(_character).skinning;
+    }
+
+    /**
+     * Gets the model matrix of every joint computed by the last update.
+     *
+     * @param _character the character handle
+     * @return the matrices, {@link BatchMath#MATRIX_SIZE} floats per joint
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public float[] models(
+        final int _character) {
+      return this.character(_character).models;
+    }
+
+    /**
+     * Gets the number of characters.
+     *
+     * @return the character count
+     */
+    public int size() {
+      return this.handles.size();
+    }
+
+    /**
+     * Gets the duration of the last update.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long updateNanos() {
+      return this.updateNanos;
+    }
+
+    /**
+     * Gets the state of a live character.
+     *
+     * @param _character the character handle
+     * @return the state
+     */
+    private Instance character(
+        final int _character) {
+      return this.instances[this.handles.slot(_character)];
+    }
+
+    /**
+     * Updates a range of character slots.
+     *
+     * @param _from the first slot
+     * @param _to the slot after the last
+     */
+    private void updateRange(
+        final int _from,
+        final int _to) {
+      final float step = this.deltaTime;
+      for (int slot = _from; slot < _to; slot++) {
+        final Instance state = this.instances[slot];
+        if (state != null) {
+          state.update(step);
+        }
+      }
+    }
+
+    /**
+     * Playback state, poses and matrices of a character.
+     */
+    private static final class Instance {
+
+      /**
+       * Skeleton of the character.
+       */
+      private final Skeleton skeleton;
+
+      /**
+       * Pose sampled from the playing clip, blended with the second one.
+       */
+      private final Pose pose;
+
+      /**
+       * Pose sampled from the blended clip.
+       */
+      private final Pose blendPose;
+
+      /**
+       * Model matrix of every joint.
+       */
+      private final float[] models;
+
+      /**
+       * Skinning matrix of every joint.
+       */
+      private final float[] skinning;
+
+      /**
+       * Playing clip, null in the bind pose.
+       */
+      private AnimationClip clip;
+
+      /**
+       * Blended clip, null when not blending.
+       */
+      private AnimationClip blendClip;
+
+      /**
+       * Weight of the blended clip.
+       */
+      private float weight;
+
+      /**
+       * Playback time within the playing clip in seconds.
+       */
+      private float time;
+
+      /**
+       * Playback speed.
+       */
+      private float speed;
+
+      /**
+       * Creates the state of a character in the bind pose.
+       *
+       * @param _skeleton the skeleton of the character
+       */
+      private Instance(
+          final Skeleton _skeleton) {
+        final int joints = _skeleton.jointCount();
+        this.skeleton = _skeleton;
+        this.pose = new Pose(joints);
+        this.pose.set(_skeleton.bindPose());
+        this.blendPose = new Pose(joints);
+        this.models = new float[joints * BatchMath.MATRIX_SIZE];
+        this.skinning = new float[joints * BatchMath.MATRIX_SIZE];
+        this.speed = 1.0F;
+      }
+
+      /**
+       * Checks that a clip animates the joints of the skeleton.
+       *
+       * @param _clip the clip, may be null
+       * @return the clip
+       * @throws IllegalArgumentException if the joint counts differ
+       */
+      private AnimationClip check(
+          final AnimationClip _clip) {
+        if ((_clip != null)
+            && (_clip.jointCount() != this.skeleton.jointCount())) {
+          throw new IllegalArgumentException("Clip animates "
+            + _clip.jointCount() + " joints, skeleton has "
+            + this.skeleton.jointCount());
+        }
+        return _clip;
+      }
+
+      /**
+       * Advances the playback and computes the poses and matrices.
+       *
+       * @param _deltaTime the time step in seconds
+       */
+      private void update(
+          final float _deltaTime) {
+        if (this.clip != null) {
+          final float duration = this.clip.duration();
+          float next = (this.time + (_deltaTime * this.speed)) % duration;
+          if (next < 0.0F) {
+            next += duration;
+          }
+          this.time = next;
+          this.clip.sample(next, this.pose);
+          if ((this.blendClip != null) && (this.weight > 0.0F)) {
+            this.blendClip.sample(
+              (next / duration) * this.blendClip.duration(), this.blendPose);
+            this.pose.blend(this.blendPose, this.weight);
+          }
+        }
+        final int joints = this.skeleton.jointCount();
+        for (int joint = 0; joint < joints; joint++) {
+          Instance.compose(this.pose, joint, this.skeleton.parent(joint),
+            this.models);
+        }
+        BatchMath.multiply(this.models, this.skeleton.inverseBinds(),
+          this.skinning, 0, joints);
+      }
+
+      /**
+       * Computes the model matrix of a joint as the model matrix of its
+       * parent times its local translation, rotation and scale.
+       *
+       * @param _pose the local pose
+       * @param _joint the joint
+       * @param _parent the parent joint, -1 for a root
+       * @param _models the model matrices
+       */
+      private static void compose(
+          final Pose _pose,
+          final int _joint,
+          final int _parent,
+          final float[] _models) {
+        final int vector = _joint * Pose.VECTOR_STRIDE;
+        final int rotation = _joint * Pose.ROTATION_STRIDE;
+        final float[] rotations = _pose.rotations();
+        final float[] scales = _pose.scales();
+        final float[] translations = _pose.translations();
+        final float qx = rotations[rotation];
+        final float qy = rotations[rotation + 1];
+        final float qz = rotations[rotation + 2];
+        final float qw = rotations[rotation + Pose.W];
+        final float sx = scales[vector];
+        final float sy = scales[vector + 1];
+        final float sz = scales[vector + 2];
+        final float xx = qx * qx;
+        final float yy = qy * qy;
+        final float zz = qz * qz;
+        final float xy = qx * qy;
+        final float xz = qx * qz;
+        final float yz = qy * qz;
+        final float xw = qx * qw;
+        final float yw = qy * qw;
+        final float zw = qz * qw;
+        /* Local matrix, lCR is column C, row R. */
+        final float l00 = (1.0F - (2.0F * (yy + zz))) * sx;
+        final float l01 = (2.0F * (xy + zw)) * sx;
+        final float l02 = (2.0F * (xz - yw)) * sx;
+        final float l10 = (2.0F * (xy - zw)) * sy;
+        final float l11 = (1.0F - (2.0F * (xx + zz))) * sy;
+        final float l12 = (2.0F * (yz + xw)) * sy;
+        final float l20 = (2.0F * (xz + yw)) * sz;
+        final float l21 = (2.0F * (yz - xw)) * sz;
+        final float l22 = (1.0F - (2.0F * (xx + yy))) * sz;
+        final float l30 = translations[vector];
+        final float l31 = translations[vector + 1];
+        final float l32 = translations[vector + 2];
+
+        final float[] m = _models;
+        final int w = _joint * BatchMath.MATRIX_SIZE;
+        final int c1 = Pose.ROTATION_STRIDE;
+        final int c2 = 2 * Pose.ROTATION_STRIDE;
+        final int c3 = Pose.W * Pose.ROTATION_STRIDE;
+        if (_parent < 0) {
+          Instance.store(m, w, l00, l01, l02);
+          Instance.store(m, w + c1, l10, l11, l12);
+          Instance.store(m, w + c2, l20, l21, l22);
+          Instance.store(m, w + c3, l30, l31, l32);
+          m[w + BatchMath.MATRIX_SIZE - 1] = 1.0F;
+          return;
+        }
+        final int p = _parent * BatchMath.MATRIX_SIZE;
+        final float p00 = m[p];
+        final float p01 = m[p + 1];
+        final float p02 = m[p + 2];
+        final float p10 = m[p + c1];
+        final float p11 = m[p + c1 + 1];
+        final float p12 = m[p + c1 + 2];
+        final float p20 = m[p + c2];
+        final float p21 = m[p + c2 + 1];
+        final float p22 = m[p + c2 + 2];
+        final float p30 = m[p + c3];
+        final float p31 = m[p + c3 + 1];
+        final float p32 = m[p + c3 + 2];
+        Instance.store(m, w,
+          (p00 * l00) + (p10 * l01) + (p20 * l02),
+          (p01 * l00) + (p11 * l01) + (p21 * l02),
+          (p02 * l00) + (p12 * l01) + (p22 * l02));
+        Instance.store(m, w + c1,
+          (p00 * l10) + (p10 * l11) + (p20 * l12),
+          (p01 * l10) + (p11 * l11) + (p21 * l12),
+          (p02 * l10) + (p12 * l11) + (p22 * l12));
+        Instance.store(m, w + c2,
+          (p00 * l20) + (p10 * l21) + (p20 * l22),
+          (p01 * l20) + (p11 * l21) + (p21 * l22),
+          (p02 * l20) + (p12 * l21) + (p22 * l22));
+        Instance.store(m, w + c3,
+          (p00 * l30) + (p10 * l31) + (p20 * l32) + p30,
+          (p01 * l30) + (p11 * l31) + (p21 * l32) + p31,
+          (p02 * l30) + (p12 * l31) + (p22 * l32) + p32);
+        m[w + BatchMath.MATRIX_SIZE - 1] = 1.0F;
+      }
+
+      /**
+       * Stores the first three rows of a matrix column; the fourth row of
+       * the first three columns is always zero.
+       *
+       * @param _matrices the matrix block
+       * @param _offset the position of the column in the block
+       * @param _row0 the first row
+       * @param _row1 the second row
+       * @param _row2 the third row
+       */
+      private static void store(
+          final float[] _matrices,
+          final int _offset,
+          final float _row0,
+          final float _row1,
+          final float _row2) {
+        _matrices[_offset] = _row0;
+        _matrices[_offset + 1] = _row1;
+        _matrices[_offset + 2] = _row2;
+      }
+
+    }
+
+  }
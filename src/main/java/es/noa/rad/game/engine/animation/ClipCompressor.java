@@ -0,0 +1,495 @@
+package es.noa.rad.game.engine.animation;
+
+import java.util.Arrays;
+
+  /**
+   * Builds an {@link AnimationClip} from raw keyframes.
+   *
+   * <p>Tracks are given as sampled keys, the way importers read them; any
+   * track left unset holds the bind pose of the skeleton. Building reduces
+   * and quantizes every track:
+   * <ol>
+   *   <li>rotations are normalized and made sign-continuous, so that
+   *       consecutive keys interpolate along the shortest arc;</li>
+   *   <li>a key is dropped when linear interpolation between the keys kept
+   *       around it reproduces every dropped key within the tolerance, in
+   *       units for translations and scales and in radians for rotations;
+   *       a track that stays within the tolerance of its first key keeps
+   *       only that key;</li>
+   *   <li>the times and components of the remaining keys are quantized to
+   *       16 bits, as described in {@link AnimationClip}.</li>
+   * </ol>
+   *
+   * <p>Not thread-safe; meant to run once per clip at load time.
+   */
+  public final class ClipCompressor {
+
+    /**
+     * Skeleton the clip animates.
+     */
+    private final Skeleton skeleton;
+
+    /**
+     * Duration of the clip in seconds.
+     */
+    private final float duration;
+
+    /**
+     * Largest error allowed when dropping keys.
+     */
+    private final float tolerance;
+
+    /**
+     * Key times in seconds of every track, null for unset tracks.
+     */
+    private final float[][] trackTimes;
+
+    /**
+     * Key components of every track, null for unset tracks.
+     */
+    private final float[][] trackValues;
+
+    /**
+     * Creates a compressor.
+     *
+     * @param _skeleton the skeleton the clip animates
+     * @param _duration the duration of the clip in seconds
+     * @param _tolerance the largest error allowed when dropping keys, 0 to
+     *     keep every key
+     * @throws IllegalArgumentException if the duration is not positive or
+     *     the tolerance is negative
+     */
+    public ClipCompressor(
+        final Skeleton _skeleton,
+        final float _duration,
+        final float _tolerance) {
+      if (!(_duration > 0.0F)) {
+        throw new IllegalArgumentException(
+          "Clip duration must be positive: " + _duration);
+      }
+      if (!(_tolerance >= 0.0F)) {
+        throw new IllegalArgumentException(
+          "Clip tolerance must not be negative: " + _tolerance);
+      }
+      this.skeleton = _skeleton;
+      this.duration = _duration;
+      this.tolerance = _tolerance;
+      final int tracks =
+        _skeleton.jointCount() * AnimationClip.TRACKS_PER_JOINT;
+      this.trackTimes = new float[tracks][];
+      this.trackValues = new float[tracks][];
+    }
+
+    /**
+     * Sets the translation keys of a joint.
+     *
+     * @param _joint the joint
+     * @param _times the time of every key in seconds, ascending
+     * @param _values the x, y and z of every key
+     * @return this compressor
+     */
+    public ClipCompressor translation(
+        final int _joint,
+        final float[] _times,
+        final float[] _values) {
+      return this.track(_joint, AnimationClip.TRANSLATION, _times, _values,
+        Pose.VECTOR_STRIDE);
+    }
+
+    /**
+     * Sets the rotation keys of a joint.
+     *
+     * @param _joint the joint
+     * @param _times the time of every key in seconds, ascending
+     * @param _values the x, y, z and w of every key
+     * @return this compressor
+     */
+    public ClipCompressor rotation(
+        final int _joint,
+        final float[] _times,
+        final float[] _values) {
+      return this.track(_joint, AnimationClip.ROTATION, _times, _values,
+        Pose.ROTATION_STRIDE);
+    }
+
+    /**
+     * Sets the scale keys of a joint.
+     *
+     * @param _joint the joint
+     * @param _times the time of every key in seconds, ascending
+     * @param _values the x, y and z of every key
+     * @return this compressor
+     */
+    public ClipCompressor scale(
+        final int _joint,
+        final float[] _times,
+        final float[] _values) {
+      return this.track(_joint, AnimationClip.SCALE, _times, _values,
+        Pose.VECTOR_STRIDE);
+    }
+
+    /**
+     * Builds the compressed clip.
+     *
+     * @return the clip
+     */
+    public AnimationClip build() {
+      final int tracks = this.trackTimes.length;
+      final int[][] kept = new int[tracks][];
+      final float[][] times = new float[tracks][];
+      final float[][] values = new float[tracks][];
+      int keyCount = 0;
+      int valueCount = 0;
+      for (int track = 0; track < tracks; track++) {
+        final int stride = ClipCompressor.stride(track);
+        times[track] = this.times(track);
+        values[track] = this.values(track);
+        if (stride == Pose.ROTATION_STRIDE) {
+          ClipCompressor.align(values[track]);
+        }
+        kept[track] = this.reduce(times[track], values[track], stride);
+        keyCount += kept[track].length;
+        valueCount += kept[track].length * stride;
+      }
+      final int[] keyStarts = new int[tracks + 1];
+      final int[] valueStarts = new int[tracks];
+      final char[] quantizedTimes = new char[keyCount];
+      final char[] quantizedValues = new char[valueCount];
+      final float[] ranges = new float[tracks * AnimationClip.RANGE_STRIDE];
+      int key = 0;
+      int value = 0;
+      for (int track = 0; track < tracks; track++) {
+        final int stride = ClipCompressor.stride(track);
+        keyStarts[track] = key;
+        valueStarts[track] = value;
+        if (stride == Pose.VECTOR_STRIDE) {
+          ClipCompressor.range(values[track], kept[track], ranges,
+            track * AnimationClip.RANGE_STRIDE);
+        }
+        for (final int index : kept[track]) {
+          quantizedTimes[key++] = ClipCompressor.quantize(
+            times[track][index] / this.duration);
+          for (int component = 0; component < stride; component++) {
+            final float raw = values[track][(index * stride) + component];
+            quantizedValues[value++] = ClipCompressor.quantize(
+              (stride == Pose.ROTATION_STRIDE)
+                ? (raw + 1.0F) / 2.0F
+                : ClipCompressor.normalize(raw, ranges,
+                  (track * AnimationClip.RANGE_STRIDE) + component));
+          }
+        }
+      }
+      keyStarts[tracks] = key;
+      return new AnimationClip(this.duration, keyStarts, valueStarts,
+        quantizedTimes, quantizedValues, ranges);
+    }
+
+    /**
+     * Stores the keys of a track.
+     *
+     * @param _joint the joint
+     * @param _channel the track of the joint
+     * @param _times the time of every key
+     * @param _values the components of every key
+     * @param _stride the number of components of a key
+     * @return this compressor
+     * @throws IllegalArgumentException if the joint is out of range, there
+     *     are no keys or the value count does not match the key count
+     */
+    private ClipCompressor track(
+        final int _joint,
+        final int _channel,
+        final float[] _times,
+        final float[] _values,
+        final int _stride) {
+      if ((_joint < 0) || (_joint >= this.skeleton.jointCount())) {
+        throw new IllegalArgumentException("Joint out of range: " + _joint);
+      }
+      if ((_times.length == 0) || (_values.length != _times.length * _stride)) {
+        throw new IllegalArgumentException("Track of joint " + _joint
+          + " has " + _times.length + " keys and " + _values.length
+          + " values");
+      }
+      final int track = (_joint * AnimationClip.TRACKS_PER_JOINT) + _channel;
+      this.trackTimes[track] = _times.clone();
+      this.trackValues[track] = _values.clone();
+      return this;
+    }
+
+    /**
+     * Gets the key times of a track, a single key at 0 for unset tracks.
+     *
+     * @param _track the track
+     * @return the times in seconds
+     */
+    private float[] times(
+        final int _track) {
+      if (this.trackTimes[_track] == null) {
+        return new float[] {0.0F};
+      }
+      return this.trackTimes[_track];
+    }
+
+    /**
+     * Gets the key components of a track, the bind pose for unset tracks.
+     *
+     * @param _track the track
+     * @return the components
+     */
+    private float[] values(
+        final int _track) {
+      if (this.trackValues[_track] != null) {
+        return this.trackValues[_track];
+      }
+      final int joint = _track / AnimationClip.TRACKS_PER_JOINT;
+      final Pose bindPose = this.skeleton.bindPose();
+      final int stride = ClipCompressor.stride(_track);
+      final float[] source;
+      switch (_track % AnimationClip.TRACKS_PER_JOINT) {
+        case AnimationClip.TRANSLATION:
+          source = bindPose.translations();
+          break;
+        case AnimationClip.ROTATION:
+          source = bindPose.rotations();
+          break;
+        default:
+          source = bindPose.scales();
+          break;
+      }
+      return Arrays.copyOfRange(source, joint * stride,
+        (joint + 1) * stride);
+    }
+
+    /**
+     * Chooses the keys of a track to keep.
+     *
+     * @param _times the time of every key
+     * @param _values the components of every key
+     * @param _stride the number of components of a key
+     * @return the indices of the kept keys, ascending
+     */
+    private int[] reduce(
+        final float[] _times,
+        final float[] _values,
+        final int _stride) {
+      final int count = _times.length;
+      final int[] kept = new int[count];
+      int size = 0;
+      kept[size++] = 0;
+      if (count == 1) {
+        return Arrays.copyOf(kept, size);
+      }
+      boolean constant = true;
+      for (int index = 1; constant && (index < count); index++) {
+        constant = ClipCompressor.error(_values, 0, index, _stride)
+          <= this.tolerance;
+      }
+      if (constant) {
+        return Arrays.copyOf(kept, size);
+      }
+      final float[] interpolated = new float[_stride];
+      int anchor = 0;
+      for (int end = 2; end < count; end++) {
+        if (!this.fits(_times, _values, anchor, end, _stride,
+            interpolated)) {
+          anchor = end - 1;
+          kept[size++] = anchor;
+        }
+      }
+      kept[size++] = count - 1;
+      return Arrays.copyOf(kept, size);
+    }
+
+    /**
+     * Tests whether interpolating two keys reproduces every key between.
+     *
+     * @param _times the time of every key
+     * @param _values the components of every key
+     * @param _from the first key
+     * @param _to the last key
+     * @param _stride the number of components of a key
+     * @param _interpolated scratch space for one key
+     * @return whether every key between is within the tolerance
+     */
+    private boolean fits(
+        final float[] _times,
+        final float[] _values,
+        final int _from,
+        final int _to,
+        final int _stride,
+        final float[] _interpolated) {
+      final float span = _times[_to] - _times[_from];
+      for (int index = _from + 1; index < _to; index++) {
+        final float weight = (span > 0.0F)
+          ? (_times[index] - _times[_from]) / span
+          : 0.0F;
+        System.arraycopy(_values, _from * _stride, _interpolated, 0, _stride);
+        if (_stride == Pose.ROTATION_STRIDE) {
+          final int to = _to * _stride;
+          Pose.nlerp(_interpolated, 0, _values[to], _values[to + 1],
+            _values[to + 2], _values[to + Pose.W], weight);
+        } else {
+          for (int component = 0; component < _stride; component++) {
+            final float to = _values[(_to * _stride) + component];
+            _interpolated[component] +=
+              (to - _interpolated[component]) * weight;
+          }
+        }
+        if (ClipCompressor.error(_interpolated, _values, index, _stride)
+            > this.tolerance) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Measures the error between two keys of a track.
+     *
+     * @param _values the components of every key
+     * @param _first the first key
+     * @param _second the second key
+     * @param _stride the number of components of a key
+     * @return the distance, or the angle in radians for rotations
+     */
+    private static float error(
+        final float[] _values,
+        final int _first,
+        final int _second,
+        final int _stride) {
+      return ClipCompressor.error(
+        Arrays.copyOfRange(_values, _first * _stride, (_first + 1) * _stride),
+        _values, _second, _stride);
+    }
+
+    /**
+     * Measures the error between a key and a key of a track.
+     *
+     * @param _key the components of the key
+     * @param _values the components of every key of the track
+     * @param _index the key of the track
+     * @param _stride the number of components of a key
+     * @return the distance, or the angle in radians for rotations
+     */
+    private static float error(
+        final float[] _key,
+        final float[] _values,
+        final int _index,
+        final int _stride) {
+      final int offset = _index * _stride;
+      float sum = 0.0F;
+      for (int component = 0; component < _stride; component++) {
+        final float other = _values[offset + component];
+        sum += (_stride == Pose.ROTATION_STRIDE)
+          ? _key[component] * other
+          : (_key[component] - other) * (_key[component] - other);
+      }
+      if (_stride == Pose.ROTATION_STRIDE) {
+        return 2.0F * (float) Math.acos(Math.min(Math.abs(sum), 1.0F));
+      }
+      return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * Normalizes the quaternions of a rotation track and flips the sign of
+     * every key further than a half turn from the one before.
+     *
+     * @param _values the x, y, z and w of every key
+     */
+    private static void align(
+        final float[] _values) {
+      for (int offset = 0; offset < _values.length;
+          offset += Pose.ROTATION_STRIDE) {
+        float dot = 0.0F;
+        float length = 0.0F;
+        for (int component = 0; component < Pose.ROTATION_STRIDE;
+            component++) {
+          final float value = _values[offset + component];
+          length += value * value;
+          if (offset > 0) {
+            dot += value * _values[offset - Pose.ROTATION_STRIDE + component];
+          }
+        }
+        final float scale = ((dot < 0.0F) ? -1.0F : 1.0F)
+          / (float) Math.sqrt(length);
+        for (int component = 0; component < Pose.ROTATION_STRIDE;
+            component++) {
+          _values[offset + component] *= scale;
+        }
+      }
+    }
+
+    /**
+     * Computes the quantization range of a translation or scale track.
+     *
+     * @param _values the x, y and z of every key
+     * @param _kept the kept keys
+     * @param _ranges the ranges receiving the minimum and step
+     * @param _offset the position of the range of the track
+     */
+    private static void range(
+        final float[] _values,
+        final int[] _kept,
+        final float[] _ranges,
+        final int _offset) {
+      for (int component = 0; component < Pose.VECTOR_STRIDE; component++) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (final int index : _kept) {
+          final float value = _values[(index * Pose.VECTOR_STRIDE) + component];
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+        }
+        _ranges[_offset + component] = min;
+        _ranges[_offset + Pose.VECTOR_STRIDE + component] =
+          (max - min) / AnimationClip.QUANTUM;
+      }
+    }
+
+    /**
+     * Maps a component into {@code [0, 1]} over the range of its track.
+     *
+     * @param _value the component
+     * @param _ranges the ranges of every track
+     * @param _offset the position of the minimum of the component
+     * @return the fraction of the range
+     */
+    private static float normalize(
+        final float _value,
+        final float[] _ranges,
+        final int _offset) {
+      final float step = _ranges[_offset + Pose.VECTOR_STRIDE];
+      if (step == 0.0F) {
+        return 0.0F;
+      }
+      return (_value - _ranges[_offset]) / step / AnimationClip.QUANTUM;
+    }
+
+    /**
+     * Quantizes a fraction to 16 bits.
+     *
+     * @param _fraction the fraction, clamped to {@code [0, 1]}
+     * @return the quantized value
+     */
+    private static char quantize(
+        final float _fraction) {
+      return (char) Math.round(
+        Math.max(0.0F, Math.min(_fraction, 1.0F)) * AnimationClip.QUANTUM);
+    }
+
+    /**
+     * Gets the number of components of the keys of a track.
+     *
+     * @param _track the track
+     * @return 4 for rotations, 3 otherwise
+     */
+    private static int stride(
+        final int _track) {
+      if ((_track % AnimationClip.TRACKS_PER_JOINT)
+          == AnimationClip.ROTATION) {
+        return Pose.ROTATION_STRIDE;
+      }
+      return Pose.VECTOR_STRIDE;
+    }
+
+  }
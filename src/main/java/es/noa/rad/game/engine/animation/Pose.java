@@ -0,0 +1,217 @@
+package es.noa.rad.game.engine.animation;
+
+import java.util.Arrays;
+
+  /**
+   * Local transforms of the joints of a skeleton.
+   *
+   * <p>Transforms are stored as structure of arrays, one block per
+   * component kind, in the layout of the scene graph: three floats per
+   * joint for translations and scales, four ({@code x, y, z, w}) for
+   * rotation quaternions. Clips sample into a pose and poses are blended
+   * joint by joint over those blocks.
+   *
+   * <p>Not thread-safe.
+   *
+   * @see AnimationClip#sample(float, Pose)
+   */
+  public final class Pose {
+
+    /**
+     * Number of floats of a translation or a scale.
+     */
+    static final int VECTOR_STRIDE = 3;
+
+    /**
+     * Number of floats of a rotation quaternion.
+     */
+    static final int ROTATION_STRIDE = 4;
+
+    /**
+     * Offset of the w component of a quaternion.
+     */
+    static final int W = 3;
+
+    /**
+     * Translation of every joint.
+     */
+    private final float[] translations;
+
+    /**
+     * Rotation of every joint.
+     */
+    private final float[] rotations;
+
+    /**
+     * Scale of every joint.
+     */
+    private final float[] scales;
+
+    /**
+     * Creates an identity pose.
+     *
+     * @param _jointCount the number of joints
+     */
+    public Pose(
+        final int _jointCount) {
+      this.translations = new float[_jointCount * Pose.VECTOR_STRIDE];
+      this.rotations = new float[_jointCount * Pose.ROTATION_STRIDE];
+      this.scales = new float[_jointCount * Pose.VECTOR_STRIDE];
+      for (int joint = 0; joint < _jointCount; joint++) {
+        this.rotations[(joint * Pose.ROTATION_STRIDE) + Pose.W] = 1.0F;
+      }
+      Arrays.fill(this.scales, 1.0F);
+    }
+
+    /**
+     * Gets the number of joints.
+     *
+     * @return the joint count
+     */
+    public int jointCount() {
+      return this.translations.length / Pose.VECTOR_STRIDE;
+    }
+
+    /**
+     * Sets the transform of a joint.
+     *
+     * @param _joint the joint
+     * @param _translation the translation: x, y, z
+     * @param _rotation the rotation quaternion: x, y, z, w
+     * @param _scale the scale: x, y, z
+     */
+    public void set(
+        final int _joint,
+        final float[] _translation,
+        final float[] _rotation,
+        final float[] _scale) {
+      System.arraycopy(_translation, 0, this.translations,
+        _joint * Pose.VECTOR_STRIDE, Pose.VECTOR_STRIDE);
+      System.arraycopy(_rotation, 0, this.rotations,
+        _joint * Pose.ROTATION_STRIDE, Pose.ROTATION_STRIDE);
+      System.arraycopy(_scale, 0, this.scales,
+        _joint * Pose.VECTOR_STRIDE, Pose.VECTOR_STRIDE);
+    }
+
+    /**
+     * Copies another pose of the same skeleton.
+     *
+     * @param _pose the pose to copy
+     */
+    public void set(
+        final Pose _pose) {
+      System.arraycopy(_pose.translations, 0, this.translations, 0,
+        this.translations.length);
+      System.arraycopy(_pose.rotations, 0, this.rotations, 0,
+        this.rotations.length);
+      System.arraycopy(_pose.scales, 0, this.scales, 0, this.scales.length);
+    }
+
+    /**
+     * Blends this pose towards another one: translations and scales are
+     * interpolated linearly, rotations along the shortest arc and
+     * renormalized.
+     *
+     * @param _target the pose blended in
+     * @param _weight the weight of the target, from 0 (this pose) to 1
+     *     (the target)
+     */
+    public void blend(
+        final Pose _target,
+        final float _weight) {
+      Pose.lerp(this.translations, _target.translations, _weight);
+      Pose.lerp(this.scales, _target.scales, _weight);
+      final float[] to = _target.rotations;
+      for (int offset = 0; offset < this.rotations.length;
+          offset += Pose.ROTATION_STRIDE) {
+        Pose.nlerp(this.rotations, offset, to[offset], to[offset + 1],
+          to[offset + 2], to[offset + Pose.W], _weight);
+      }
+    }
+
+    /**
+     * Gets the translation block.
+     *
+     * @return the translations, three floats per joint
+     */
+    public float[] translations() {
+      return this.translations;
+    }
+
+    /**
+     * Gets the rotation block.
+     *
+     * @return the rotations, four floats per joint
+     */
+    public float[] rotations() {
+      return this.rotations;
+    }
+
+    /**
+     * Gets the scale block.
+     *
+     * @return the scales, three floats per joint
+     */
+    public float[] scales() {
+      return this.scales;
+    }
+
+    /**
+     * Interpolates a block linearly towards another, in place.
+     *
+     * @param _from the block interpolated, receiving the result
+     * @param _to the target block
+     * @param _weight the weight of the target
+     */
+    private static void lerp(
+        final float[] _from,
+        final float[] _to,
+        final float _weight) {
+      for (int index = 0; index < _from.length; index++) {
+        _from[index] += (_to[index] - _from[index]) * _weight;
+      }
+    }
+
+    /**
+     * Interpolates a quaternion towards another along the shortest arc and
+     * renormalizes it, in place.
+     *
+     * @param _rotations the block holding the quaternion interpolated
+     * @param _offset the position of the quaternion in the block
+     * @param _x the x component of the target
+     * @param _y the y component of the target
+     * @param _z the z component of the target
+     * @param _w the w component of the target
+     * @param _weight the weight of the target
+     */
+    static void nlerp(
+        final float[] _rotations,
+        final int _offset,
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _w,
+        final float _weight) {
+      final float x = _rotations[_offset];
+      final float y = _rotations[_offset + 1];
+      final float z = _rotations[_offset + 2];
+      final float w = _rotations[_offset + Pose.W];
+      /* q and -q are the same rotation; take the closer one. */
+      float weight = _weight;
+      if ((((x * _x) + (y * _y)) + ((z * _z) + (w * _w))) < 0.0F) {
+        weight = -weight;
+      }
+      final float keep = 1.0F - _weight;
+      final float rx = (x * keep) + (_x * weight);
+      final float ry = (y * keep) + (_y * weight);
+      final float rz = (z * keep) + (_z * weight);
+      final float rw = (w * keep) + (_w * weight);
+      final float inverseLength = 1.0F / (float) Math.sqrt(
+        (rx * rx) + (ry * ry) + (rz * rz) + (rw * rw));
+      _rotations[_offset] = rx * inverseLength;
+      _rotations[_offset + 1] = ry * inverseLength;
+      _rotations[_offset + 2] = rz * inverseLength;
+      _rotations[_offset + Pose.W] = rw * inverseLength;
+    }
+
+  }
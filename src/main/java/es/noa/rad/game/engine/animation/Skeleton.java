@@ -0,0 +1,141 @@
+package es.noa.rad.game.engine.animation;
+
+import java.util.Arrays;
+
+import es.noa.rad.game.engine.math.BatchMath;
+
+  /**
+   * Joint hierarchy of an animated character.
+   *
+   * <p>Joints are identified by their index. Parents always precede their
+   * children, so a single forward pass over the joints computes the model
+   * space transforms. Every joint carries its inverse bind matrix, which
+   * takes mesh vertices from model space to the space of the joint, and its
+   * bind pose, used by clips for joints they do not animate.
+   *
+   * <p>Immutable once built; shared by every character using it.
+   *
+   * @see Pose
+   * @see AnimationClip
+   */
+  public final class Skeleton {
+
+    /**
+     * Name of every joint.
+     */
+    private final String[] names;
+
+    /**
+     * Parent of every joint, -1 for roots.
+     */
+    private final int[] parents;
+
+    /**
+     * Inverse bind matrix of every joint, column-major.
+     */
+    private final float[] inverseBinds;
+
+    /**
+     * Local bind pose of every joint.
+     */
+    private final Pose bindPose;
+
+    /**
+     * Creates a skeleton.
+     *
+     * @param _names the name of every joint
+     * @param _parents the parent of every joint, -1 for roots; parents must
+     *     precede their children
+     * @param _inverseBinds the inverse bind matrix of every joint,
+     *     {@link BatchMath#MATRIX_SIZE} floats each, column-major
+     * @param _bindPose the local bind pose of every joint
+     * @throws IllegalArgumentException if the arrays do not match the joint
+     *     count or a parent does not precede its child
+     */
+    public Skeleton(
+        final String[] _names,
+        final int[] _parents,
+        final float[] _inverseBinds,
+        final Pose _bindPose) {
+      final int count = _names.length;
+      if ((_parents.length != count)
+          || (_inverseBinds.length != (count * BatchMath.MATRIX_SIZE))
+          || (_bindPose.jointCount() != count)) {
+        throw new IllegalArgumentException(
+          "Skeleton arrays do not match " + count + " joints.");
+      }
+      for (int joint = 0; joint < count; joint++) {
+        if ((_parents[joint] < -1) || (_parents[joint] >= joint)) {
+          throw new IllegalArgumentException("Parent of joint " + joint
+            + " must precede it: " + _parents[joint]);
+        }
+      }
+      this.names = _names.clone();
+      this.parents = _parents.clone();
+      this.inverseBinds = _inverseBinds.clone();
+      this.bindPose = new Pose(count);
+      this.bindPose.set(_bindPose);
+    }
+
+    /**
+     * Gets the number of joints.
+     *
+     * @return the joint count
+     */
+    public int jointCount() {
+      return this.parents.length;
+    }
+
+    /**
+     * Gets the name of a joint.
+     *
+     * @param _joint the joint
+     * @return the name
+     */
+    public String name(
+        final int _joint) {
+      return this.names[_joint];
+    }
+
+    /**
+     * Finds a joint by name.
+     *
+     * @param _name the name
+     * @return the joint, or -1 if no joint has that name
+     */
+    public int joint(
+        final String _name) {
+      return Arrays.asList(this.names).indexOf(_name);
+    }
+
+    /**
+     * Gets the parent of a joint.
+     *
+     * @param _joint the joint
+     * @return the parent joint, or -1 for a root
+     */
+    public int parent(
+        final int _joint) {
+      return this.parents[_joint];
+    }
+
+    /**
+     * Gets the inverse bind matrices.
+     *
+     * @return the matrices, {@link BatchMath#MATRIX_SIZE} floats per joint;
+     *     must not be modified
+     */
+    public float[] inverseBinds() {
+      return this.inverseBinds;
+    }
+
+    /**
+     * Gets the local bind pose.
+     *
+     * @return the pose; must not be modified
+     */
+    public Pose bindPose() {
+      return this.bindPose;
+    }
+
+  }
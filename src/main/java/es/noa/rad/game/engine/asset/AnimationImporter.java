@@ -0,0 +1,502 @@
+package es.noa.rad.game.engine.asset;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.lwjgl.assimp.AIAnimation;
+import org.lwjgl.assimp.AIBone;
+import org.lwjgl.assimp.AIMatrix4x4;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AINode;
+import org.lwjgl.assimp.AINodeAnim;
+import org.lwjgl.assimp.AIQuatKey;
+import org.lwjgl.assimp.AIQuaternion;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+import org.lwjgl.assimp.AIVectorKey;
+import org.lwjgl.assimp.Assimp;
+
+import es.noa.rad.game.engine.animation.AnimationClip;
+import es.noa.rad.game.engine.animation.ClipCompressor;
+import es.noa.rad.game.engine.animation.Pose;
+import es.noa.rad.game.engine.animation.Skeleton;
+import es.noa.rad.game.engine.math.BatchMath;
+
+  /**
+   * Loads the skeleton and animations of a model understood by Assimp
+   * (glTF, FBX, COLLADA...).
+   *
+   * <p>The joints of the skeleton are the nodes of the scene that are
+   * bones of a mesh or animated by a clip, plus their ancestors, in depth
+   * first order. A joint takes its bind pose from the transform of its
+   * node and its inverse bind matrix from the offset matrix of its bone,
+   * or the identity for nodes that are not bones.
+   *
+   * <p>Every animation of the scene becomes an {@link AnimationClip},
+   * reduced and quantized by a {@link ClipCompressor}. The size of the
+   * keyframes as Assimp stores them is kept to report the savings of the
+   * compression.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * AnimationImporter model = AnimationImporter.load(
+   *     Path.of("models/hero.gltf"), 0.001f);
+   * int hero = animator.create(model.skeleton());
+   * animator.play(hero, model.clip("Walk"));
+   * }</pre>
+   *
+   * @see MeshImporter
+   */
+  public final class AnimationImporter {
+
+    /**
+     * Assimp post-processing applied to every imported scene.
+     */
+    public static final int IMPORT_FLAGS = Assimp.aiProcess_LimitBoneWeights
+      | Assimp.aiProcess_ValidateDataStructure;
+
+    /**
+     * Ticks per second of animations that do not set it.
+     */
+    private static final double DEFAULT_TICKS_PER_SECOND = 25.0;
+
+    /**
+     * Number of floats of a vector key.
+     */
+    private static final int VECTOR_STRIDE = 3;
+
+    /**
+     * Number of floats of a quaternion key.
+     */
+    private static final int QUATERNION_STRIDE = 4;
+
+    /**
+     * Position of the w component of a quaternion key.
+     */
+    private static final int W = 3;
+
+    /**
+     * Skeleton of the model.
+     */
+    private final Skeleton skeleton;
+
+    /**
+     * Name of every clip.
+     */
+    private final String[] names;
+
+    /**
+     * Every clip.
+     */
+    private final AnimationClip[] clips;
+
+    /**
+     * Size in bytes of the keyframes of the clips as stored by Assimp.
+     */
+    private final long sourceBytes;
+
+    /**
+     * Creates the result of an import.
+     *
+     * @param _skeleton the skeleton
+     * @param _names the name of every clip
+     * @param _clips every clip
+     * @param _sourceBytes the size of the Assimp keyframes
+     */
+    private AnimationImporter(
+        final Skeleton _skeleton,
+        final String[] _names,
+        final AnimationClip[] _clips,
+        final long _sourceBytes) {
+      this.skeleton = _skeleton;
+      this.names = _names;
+      this.clips = _clips;
+      this.sourceBytes = _sourceBytes;
+    }
+
+    /**
+     * Imports the skeleton and animations of a model.
+     *
+     * @param _source the model to import
+     * @param _tolerance the largest error allowed when dropping keys, in
+     *     model units for translations and scales and in radians for
+     *     rotations
+     * @return the imported skeleton and clips
+     * @throws IOException if the model cannot be imported
+     */
+    public static AnimationImporter load(
+        final Path _source,
+        final float _tolerance) throws IOException {
+      final AIScene scene = Assimp.aiImportFile(
+        _source.toString(), AnimationImporter.IMPORT_FLAGS);
+      if (scene == null) {
+        throw new IOException("Unable to import " + _source + ": "
+          + Assimp.aiGetErrorString());
+      }
+      try {
+        final Skeleton skeleton = AnimationImporter.skeleton(scene);
+        final int clipCount = scene.mNumAnimations();
+        final String[] names = new String[clipCount];
+        final AnimationClip[] clips = new AnimationClip[clipCount];
+        long sourceBytes = 0L;
+        for (int clip = 0; clip < clipCount; clip++) {
+          final AIAnimation animation = AnimationImporter.animation(
+            scene, clip);
+          names[clip] = animation.mName().dataString();
+          clips[clip] = AnimationImporter.clip(animation, skeleton,
+            _tolerance);
+          sourceBytes += AnimationImporter.sourceBytes(animation);
+        }
+        return new AnimationImporter(skeleton, names, clips, sourceBytes);
+      } finally {
+        Assimp.aiReleaseImport(scene);
+      }
+    }
+
+    /**
+     * Gets the skeleton.
+     *
+     * @return the skeleton
+     */
+    public Skeleton skeleton() {
+      return this.skeleton;
+    }
+
+    /**
+     * Gets the number of clips.
+     *
+     * @return the clip count
+     */
+    public int clipCount() {
+      return this.clips.length;
+    }
+
+    /**
+     * Gets a clip.
+     *
+     * @param _clip the clip index
+     * @return the clip
+     */
+    public AnimationClip clip(
+        final int _clip) {
+      return this.clips[_clip];
+    }
+
+    /**
+     * Finds a clip by name.
+     *
+     * @param _name the clip name
+     * @return the first clip with the name, null if none
+     */
+    public AnimationClip clip(
+        final String _name) {
+      for (int clip = 0; clip < this.names.length; clip++) {
+        if (this.names[clip].equals(_name)) {
+          return this.clips[clip];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Gets the name of a clip.
+     *
+     * @param _clip the clip index
+     * @return the name, empty if the clip has none
+     */
+    public String name(
+        final int _clip) {
+      return this.names[_clip];
+    }
+
+    /**
+     * Gets the size of the keyframes of the clips as stored by Assimp.
+     *
+     * @return the size in bytes
+     */
+    public long sourceBytes() {
+      return this.sourceBytes;
+    }
+
+    /**
+     * Gets the size of the compressed clips.
+     *
+     * @return the size in bytes
+     */
+    public long compressedBytes() {
+      long bytes = 0L;
+      for (final AnimationClip clip : this.clips) {
+        bytes += clip.bytes();
+      }
+      return bytes;
+    }
+
+    /**
+     * Builds the skeleton of a scene.
+     *
+     * @param _scene the scene
+     * @return the skeleton
+     */
+    private static Skeleton skeleton(
+        final AIScene _scene) {
+      final Map<String, AIMatrix4x4> offsets = new HashMap<>();
+      for (int index = 0; index < _scene.mNumMeshes(); index++) {
+        final AIMesh mesh = AIMesh.create(_scene.mMeshes().get(index));
+        for (int bone = 0; bone < mesh.mNumBones(); bone++) {
+          final AIBone source = AIBone.create(mesh.mBones().get(bone));
+          offsets.putIfAbsent(source.mName().dataString(),
+            source.mOffsetMatrix());
+        }
+      }
+      final Set<String> marked = new HashSet<>(offsets.keySet());
+      for (int clip = 0; clip < _scene.mNumAnimations(); clip++) {
+        final AIAnimation animation = AnimationImporter.animation(
+          _scene, clip);
+        for (int channel = 0; channel < animation.mNumChannels();
+            channel++) {
+          marked.add(AnimationImporter.channel(animation, channel)
+            .mNodeName().dataString());
+        }
+      }
+
+      final List<AINode> nodes = new ArrayList<>();
+      final List<Integer> parents = new ArrayList<>();
+      final AINode root = _scene.mRootNode();
+      if (root != null) {
+        AnimationImporter.collect(root, -1, marked, nodes, parents);
+      }
+      final int count = nodes.size();
+      final String[] names = new String[count];
+      final int[] parentJoints = new int[count];
+      final float[] inverseBinds = new float[count * BatchMath.MATRIX_SIZE];
+      final Pose bindPose = new Pose(count);
+      final Matrix4f matrix = new Matrix4f();
+      final Vector3f translation = new Vector3f();
+      final Quaternionf rotation = new Quaternionf();
+      final Vector3f scale = new Vector3f();
+      for (int joint = 0; joint < count; joint++) {
+        final AINode node = nodes.get(joint);
+        names[joint] = node.mName().dataString();
+        parentJoints[joint] = parents.get(joint);
+        AnimationImporter.matrix(node.mTransformation(), matrix);
+        matrix.getTranslation(translation);
+        matrix.getUnnormalizedRotation(rotation).normalize();
+        matrix.getScale(scale);
+        bindPose.set(joint,
+          new float[] {translation.x, translation.y, translation.z},
+          new float[] {rotation.x, rotation.y, rotation.z, rotation.w},
+          new float[] {scale.x, scale.y, scale.z});
+        final AIMatrix4x4 offset = offsets.get(names[joint]);
+        if (offset == null) {
+          matrix.identity();
+        } else {
+          AnimationImporter.matrix(offset, matrix);
+        }
+        matrix.get(inverseBinds, joint * BatchMath.MATRIX_SIZE);
+      }
+      return new Skeleton(names, parentJoints, inverseBinds, bindPose);
+    }
+
+    /**
+     * Adds a node and its descendants to the joints if any of them is
+     * marked, parents first.
+     *
+     * @param _node the node
+     * @param _parent the joint of the parent node, -1 for the root
+     * @param _marked the names of the nodes that must be joints
+     * @param _nodes the joint nodes
+     * @param _parents the parent of every joint
+     * @return whether the node became a joint
+     */
+    private static boolean collect(
+        final AINode _node,
+        final int _parent,
+        final Set<String> _marked,
+        final List<AINode> _nodes,
+        final List<Integer> _parents) {
+      final int joint = _nodes.size();
+      _nodes.add(_node);
+      _parents.add(_parent);
+      boolean used = _marked.contains(_node.mName().dataString());
+      for (int child = 0; child < _node.mNumChildren(); child++) {
+        used |= AnimationImporter.collect(
+          AINode.create(_node.mChildren().get(child)), joint, _marked,
+          _nodes, _parents);
+      }
+      if (!used) {
+        /* No marked descendant: its subtree was the last added. */
+        _nodes.subList(joint, _nodes.size()).clear();
+        _parents.subList(joint, _parents.size()).clear();
+      }
+      return used;
+    }
+
+    /**
+     * Compresses an animation.
+     *
+     * @param _animation the animation
+     * @param _skeleton the skeleton it animates
+     * @param _tolerance the largest error allowed when dropping keys
+     * @return the clip
+     */
+    private static AnimationClip clip(
+        final AIAnimation _animation,
+        final Skeleton _skeleton,
+        final float _tolerance) {
+      final double ticksPerSecond = (_animation.mTicksPerSecond() > 0.0)
+        ? _animation.mTicksPerSecond()
+        : AnimationImporter.DEFAULT_TICKS_PER_SECOND;
+      /* A single pose still needs a positive duration. */
+      final double ticks = Math.max(_animation.mDuration(), 1.0);
+      final ClipCompressor compressor = new ClipCompressor(_skeleton,
+        (float) (ticks / ticksPerSecond), _tolerance);
+      for (int channel = 0; channel < _animation.mNumChannels(); channel++) {
+        final AINodeAnim source = AnimationImporter.channel(
+          _animation, channel);
+        final int joint = _skeleton.joint(source.mNodeName().dataString());
+        if (joint < 0) {
+          continue;
+        }
+        if (source.mNumPositionKeys() > 0) {
+          final AIVectorKey.Buffer keys = source.mPositionKeys();
+          compressor.translation(joint,
+            AnimationImporter.times(keys, ticksPerSecond),
+            AnimationImporter.vectors(keys));
+        }
+        if (source.mNumRotationKeys() > 0) {
+          final AIQuatKey.Buffer keys = source.mRotationKeys();
+          final int count = keys.remaining();
+          final float[] times = new float[count];
+          final float[] values =
+            new float[count * AnimationImporter.QUATERNION_STRIDE];
+          for (int key = 0; key < count; key++) {
+            final AIQuatKey value = keys.get(key);
+            final AIQuaternion quaternion = value.mValue();
+            times[key] = (float) (value.mTime() / ticksPerSecond);
+            final int offset = key * AnimationImporter.QUATERNION_STRIDE;
+            values[offset] = quaternion.x();
+            values[offset + 1] = quaternion.y();
+            values[offset + 2] = quaternion.z();
+            values[offset + AnimationImporter.W] = quaternion.w();
+          }
+          compressor.rotation(joint, times, values);
+        }
+        if (source.mNumScalingKeys() > 0) {
+          final AIVectorKey.Buffer keys = source.mScalingKeys();
+          compressor.scale(joint,
+            AnimationImporter.times(keys, ticksPerSecond),
+            AnimationImporter.vectors(keys));
+        }
+      }
+      return compressor.build();
+    }
+
+    /**
+     * Reads the times of vector keys.
+     *
+     * @param _keys the keys
+     * @param _ticksPerSecond the ticks per second of the animation
+     * @return the times in seconds
+     */
+    private static float[] times(
+        final AIVectorKey.Buffer _keys,
+        final double _ticksPerSecond) {
+      final float[] times = new float[_keys.remaining()];
+      for (int key = 0; key < times.length; key++) {
+        times[key] = (float) (_keys.get(key).mTime() / _ticksPerSecond);
+      }
+      return times;
+    }
+
+    /**
+     * Reads the values of vector keys.
+     *
+     * @param _keys the keys
+     * @return the x, y and z of every key
+     */
+    private static float[] vectors(
+        final AIVectorKey.Buffer _keys) {
+      final int count = _keys.remaining();
+      final float[] values =
+        new float[count * AnimationImporter.VECTOR_STRIDE];
+      for (int key = 0; key < count; key++) {
+        final AIVector3D value = _keys.get(key).mValue();
+        final int offset = key * AnimationImporter.VECTOR_STRIDE;
+        values[offset] = value.x();
+        values[offset + 1] = value.y();
+        values[offset + 2] = value.z();
+      }
+      return values;
+    }
+
+    /**
+     * Measures the keyframes of an animation as stored by Assimp.
+     *
+     * @param _animation the animation
+     * @return the size in bytes of its position, rotation and scale keys
+     */
+    private static long sourceBytes(
+        final AIAnimation _animation) {
+      long bytes = 0L;
+      for (int channel = 0; channel < _animation.mNumChannels(); channel++) {
+        final AINodeAnim source = AnimationImporter.channel(
+          _animation, channel);
+        bytes += ((long) (source.mNumPositionKeys()
+          + source.mNumScalingKeys())) * AIVectorKey.SIZEOF;
+        bytes += ((long) source.mNumRotationKeys()) * AIQuatKey.SIZEOF;
+      }
+      return bytes;
+    }
+
+    /**
+     * Converts an Assimp matrix, stored by rows, to a JOML matrix.
+     *
+     * @param _source the Assimp matrix
+     * @param _dest the matrix receiving the values
+     */
+    private static void matrix(
+        final AIMatrix4x4 _source,
+        final Matrix4f _dest) {
+      _dest.set(
+        _source.a1(), _source.b1(), _source.c1(), _source.d1(),
+        _source.a2(), _source.b2(), _source.c2(), _source.d2(),
+        _source.a3(), _source.b3(), _source.c3(), _source.d3(),
+        _source.a4(), _source.b4(), _source.c4(), _source.d4());
+    }
+
+    /**
+     * Gets an animation of a scene.
+     *
+     * @param _scene the scene
+     * @param _index the animation index
+     * @return the animation
+     */
+    private static AIAnimation animation(
+        final AIScene _scene,
+        final int _index) {
+      return AIAnimation.create(_scene.mAnimations().get(_index));
+    }
+
+    /**
+     * Gets a node channel of an animation.
+     *
+     * @param _animation the animation
+     * @param _index the channel index
+     * @return the channel
+     */
+    private static AINodeAnim channel(
+        final AIAnimation _animation,
+        final int _index) {
+      return AINodeAnim.create(_animation.mChannels().get(_index));
+    }
+
+  }
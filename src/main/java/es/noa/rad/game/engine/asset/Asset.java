@@ -0,0 +1,22 @@
+package es.noa.rad.game.engine.asset;
+
+  /**
+   * Loaded resource whose memory is accounted by the {@link AssetCache}.
+   *
+   * @see AssetCache
+   */
+  public interface Asset {
+
+    /**
+     * Gets the memory held by the asset.
+     *
+     * @return the size in bytes
+     */
+    long byteSize();
+
+    /**
+     * Releases the memory held by the asset.
+     */
+    void close();
+
+  }
@@ -0,0 +1,585 @@
+package es.noa.rad.game.engine.asset;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import es.noa.rad.game.engine.configuration.settings.AssetSettings;
+
+  /**
+   * Reference counted asset cache with a memory budget.
+   *
+   * <p>Assets are identified by a key, typically their path. Every
+   * {@link #acquire(String, Function)} of a key takes a reference that
+   * must be given back with {@link #release(String)}; the asset is loaded
+   * on the first acquisition and shared by the following ones. Concurrent
+   * acquisitions of a key being loaded wait for that single load instead
+   * of starting their own.
+   *
+   * <p>An asset whose last reference is released stays cached, so that
+   * acquiring it again is a hit, and joins a least recently used list.
+   * Whenever the cached assets exceed the budget, unreferenced assets are
+   * evicted from the least recently used end and closed. Referenced
+   * assets are never evicted: the cache may exceed its budget while they
+   * are in use.
+   *
+   * <p>Thread-safe. Bookkeeping runs under a single lock; loaders and
+   * {@link Asset#close()} run outside it.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * AssetCache cache = new AssetCache();
+   * Texture grass = cache.acquire("textures/grass.png", this::decode);
+   * ...
+   * cache.release("textures/grass.png");
+   * }</pre>
+   *
+   * @see Asset
+   */
+  public final class AssetCache {
+
+    /**
+     * Lock guarding the bookkeeping.
+     */
+    private final Object lock;
+
+    /**
+     * Entries by key, loaded or being loaded.
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * Memory budget in bytes.
+     */
+    private long budget;
+
+    /**
+     * Memory held by the loaded assets in bytes.
+     */
+    private long usedBytes;
+
+    /**
+     * Least recently released unreferenced entry, next to be evicted.
+     */
+    private Entry eldest;
+
+    /**
+     * Most recently released unreferenced entry.
+     */
+    private Entry youngest;
+
+    /**
+     * Number of acquisitions of cached or loading assets.
+     */
+    private long hits;
+
+    /**
+     * Number of acquisitions that started a load.
+     */
+    private long misses;
+
+    /**
+     * Number of evicted assets.
+     */
+    private long evictions;
+
+    /**
+     * Number of loads that failed.
+     */
+    private long failures;
+
+    /**
+     * Creates a cache whose budget is the {@code asset.cache.budget}
+     * setting.
+     */
+    public AssetCache() {
+      this(AssetSettings.ASSET_CACHE_BUDGET.<Long>get());
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param _budget the memory budget in bytes
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public AssetCache(
+        final long _budget) {
+      if (_budget < 0L) {
+        throw new IllegalArgumentException(
+          "Budget must not be negative: " + _budget);
+      }
+      this.lock = new Object();
+      this.entries = new HashMap<>();
+      this.budget = _budget;
+    }
+
+    /**
+     * Acquires an asset, loading it on the calling thread on a miss.
+     *
+     * <p>Waits when another thread is loading the same key.
+     *
+     * @param <T> the asset type
+     * @param _key the asset key
+     * @param _loader the loader called with the key on a miss
+     * @return the asset
+     * @throws java.util.concurrent.CompletionException if the load fails,
+     *     for every caller waiting for it; no reference is kept then. The
+     *     loading caller gets an {@link Error} thrown by the loader as is
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Asset> T acquire(
+        final String _key,
+        final Function<String, T> _loader) {
+      final Entry entry = this.reserve(_key);
+      if (this.claim(entry)) {
+        this.load(entry, _loader);
+      }
+      return (T) entry.future.join();
+    }
+
+    /**
+     * Acquires an asset, loading it with an executor on a miss.
+     *
+     * <p>The reference is taken at once, even before the asset is loaded,
+     * and must be released once the asset is no longer needed, even if
+     * the returned future has not completed yet. A failed load drops every
+     * reference, which must not be released then.
+     *
+     * @param <T> the asset type
+     * @param _key the asset key
+     * @param _loader the loader called with the key on a miss
+     * @param _executor the executor running the loader
+     * @return the future asset, completed exceptionally if the load fails
+     *     or the executor rejects it
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Asset> CompletableFuture<T> acquireAsync(
+        final String _key,
+        final Function<String, T> _loader,
+        final Executor _executor) {
+      final Entry entry = this.reserve(_key);
+      if (this.claim(entry)) {
+        try {
+          _executor.execute(() -> this.load(entry, _loader));
+        } catch (final RejectedExecutionException rejectedException) {
+          this.fail(entry, rejectedException);
+        }
+      }
+      return (CompletableFuture<T>) entry.future;
+    }
+
+    /**
+     * Releases a reference taken by an acquisition.
+     *
+     * <p>When the last reference is released the asset becomes evictable.
+     *
+     * @param _key the asset key
+     * @throws IllegalStateException if the key holds no reference
+     */
+    public void release(
+        final String _key) {
+      final Entry evicted;
+      synchronized (this.lock) {
+        final Entry entry = this.entries.get(_key);
+        if ((entry == null) || (entry.references == 0)) {
+          throw new IllegalStateException("Asset not acquired: " + _key);
+        }
+        entry.references--;
+        if ((entry.references == 0) && (entry.asset != null)) {
+          this.link(entry);
+        }
+        evicted = this.evict(this.budget);
+      }
+      AssetCache.close(evicted);
+    }
+
+    /**
+     * Sets the memory budget, evicting assets if it shrinks.
+     *
+     * @param _budget the budget in bytes
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public void budget(
+        final long _budget) {
+      if (_budget < 0L) {
+        throw new IllegalArgumentException(
+          "Budget must not be negative: " + _budget);
+      }
+      final Entry evicted;
+      synchronized (this.lock) {
+        this.budget = _budget;
+        evicted = this.evict(_budget);
+      }
+      AssetCache.close(evicted);
+    }
+
+    /**
+     * Gets the memory budget.
+     *
+     * @return the budget in bytes
+     */
+    public long budget() {
+      synchronized (this.lock) {
+        return this.budget;
+      }
+    }
+
+    /**
+     * Evicts every unreferenced asset.
+     */
+    public void trim() {
+      final Entry evicted;
+      synchronized (this.lock) {
+        evicted = this.evict(0L);
+      }
+      AssetCache.close(evicted);
+    }
+
+    /**
+     * Checks whether an asset is loaded or being loaded.
+     *
+     * @param _key the asset key
+     * @return {@code true} if cached
+     */
+    public boolean contains(
+        final String _key) {
+      synchronized (this.lock) {
+        return this.entries.containsKey(_key);
+      }
+    }
+
+    /**
+     * Gets the number of references held on an asset.
+     *
+     * @param _key the asset key
+     * @return the reference count, zero if not cached
+     */
+    public int references(
+        final String _key) {
+      synchronized (this.lock) {
+        final Entry entry = this.entries.get(_key);
+        return (entry == null) ? 0 : entry.references;
+      }
+    }
+
+    /**
+     * Gets the number of cached assets, loaded or being loaded.
+     *
+     * @return the asset count
+     */
+    public int size() {
+      synchronized (this.lock) {
+        return this.entries.size();
+      }
+    }
+
+    /**
+     * Gets the memory held by the loaded assets.
+     *
+     * @return the size in bytes
+     */
+    public long usedBytes() {
+      synchronized (this.lock) {
+        return this.usedBytes;
+      }
+    }
+
+    /**
+     * Gets the number of acquisitions of cached or loading assets since
+     * the last {@link #resetStatistics()}.
+     *
+     * @return the hit count
+     */
+    public long hits() {
+      synchronized (this.lock) {
+        return this.hits;
+      }
+    }
+
+    /**
+     * Gets the number of acquisitions that started a load since the last
+     * {@link #resetStatistics()}.
+     *
+     * @return the miss count
+     */
+    public long misses() {
+      synchronized (this.lock) {
+        return this.misses;
+      }
+    }
+
+    /**
+     * Gets the number of evicted assets since the last
+     * {@link #resetStatistics()}.
+     *
+     * @return the eviction count
+     */
+    public long evictions() {
+      synchronized (this.lock) {
+        return this.evictions;
+      }
+    }
+
+    /**
+     * Gets the number of failed loads since the last
+     * {@link #resetStatistics()}.
+     *
+     * @return the failure count
+     */
+    public long failures() {
+      synchronized (this.lock) {
+        return this.failures;
+      }
+    }
+
+    /**
+     * Resets the hit, miss, eviction and failure counters.
+     */
+    public void resetStatistics() {
+      synchronized (this.lock) {
+        this.hits = 0L;
+        this.misses = 0L;
+        this.evictions = 0L;
+        this.failures = 0L;
+      }
+    }
+
+    /**
+     * Takes a reference on the entry of a key, creating it on a miss.
+     *
+     * @param _key the asset key
+     * @return the entry
+     */
+    private Entry reserve(
+        final String _key) {
+      synchronized (this.lock) {
+        Entry entry = this.entries.get(_key);
+        if (entry == null) {
+          entry = new Entry(_key);
+          this.entries.put(_key, entry);
+          this.misses++;
+        } else {
+          if ((entry.references == 0) && (entry.asset != null)) {
+            this.unlink(entry);
+          }
+          this.hits++;
+        }
+        entry.references++;
+        return entry;
+      }
+    }
+
+    /**
+     * Loads the asset of an entry and completes its future.
+     *
+     * <p>The future is completed whatever the loader throws, so that no
+     * caller waits forever; errors are rethrown once it is.
+     *
+     * @param _entry the entry
+     * @param _loader the loader
+     */
+    private void load(
+        final Entry _entry,
+        final Function<String, ? extends Asset> _loader) {
+      final Asset asset;
+      try {
+        asset = _loader.apply(_entry.key);
+        if (asset == null) {
+          throw new IllegalStateException(
+            "Loader returned no asset: " + _entry.key);
+        }
+      } catch (final RuntimeException loadException) {
+        this.fail(_entry, loadException);
+        return;
+      } catch (final Error loadException) {
+        this.fail(_entry, loadException);
+        throw loadException;
+      }
+      final Entry evicted;
+      synchronized (this.lock) {
+        _entry.asset = asset;
+        _entry.byteSize = asset.byteSize();
+        this.usedBytes += _entry.byteSize;
+        if (_entry.references == 0) {
+          /* Every reference was released while loading. */
+          this.link(_entry);
+        }
+        evicted = this.evict(this.budget);
+      }
+      _entry.future.complete(asset);
+      AssetCache.close(evicted);
+    }
+
+    /**
+     * Drops a failed entry and completes its future exceptionally.
+     *
+     * @param _entry the entry
+     * @param _cause the failure
+     */
+    private void fail(
+        final Entry _entry,
+        final Throwable _cause) {
+      synchronized (this.lock) {
+        this.entries.remove(_entry.key, _entry);
+        this.failures++;
+      }
+      _entry.future.completeExceptionally(_cause);
+    }
+
+    /**
+     * Claims the load of an entry, so that only one caller starts it.
+     *
+     * @param _entry the entry
+     * @return {@code true} if the caller must load the entry
+     */
+    private boolean claim(
+        final Entry _entry) {
+      synchronized (this.lock) {
+        if (_entry.claimed) {
+          return false;
+        }
+        _entry.claimed = true;
+        return true;
+      }
+    }
+
+    /**
+     * Appends an unreferenced entry to the youngest end of the eviction
+     * list.
+     *
+     * @param _entry the entry
+     */
+    private void link(
+        final Entry _entry) {
+      _entry.older = this.youngest;
+      _entry.younger = null;
+      if (this.youngest == null) {
+        this.eldest = _entry;
+      } else {
+        this.youngest.younger = _entry;
+      }
+      this.youngest = _entry;
+    }
+
+    /**
+     * Removes an entry from the eviction list.
+     *
+     * @param _entry the entry
+     */
+    private void unlink(
+        final Entry _entry) {
+      if (_entry.older == null) {
+        this.eldest = _entry.younger;
+      } else {
+        _entry.older.younger = _entry.younger;
+      }
+      if (_entry.younger == null) {
+        this.youngest = _entry.older;
+      } else {
+        _entry.younger.older = _entry.older;
+      }
+      _entry.older = null;
+      _entry.younger = null;
+    }
+
+    /**
+     * Evicts the eldest unreferenced entries until the loaded assets fit a
+     * size. Must be called under the lock.
+     *
+     * @param _limit the size in bytes
+     * @return the evicted entries chained by {@link Entry#younger}, to be
+     *     closed outside the lock, or null
+     */
+    private Entry evict(
+        final long _limit) {
+      Entry evicted = null;
+      while ((this.usedBytes > _limit) && (this.eldest != null)) {
+        final Entry entry = this.eldest;
+        this.unlink(entry);
+        this.entries.remove(entry.key);
+        this.usedBytes -= entry.byteSize;
+        this.evictions++;
+        entry.younger = evicted;
+        evicted = entry;
+      }
+      return evicted;
+    }
+
+    /**
+     * Closes a chain of evicted entries.
+     *
+     * @param _evicted the first evicted entry, or null
+     */
+    private static void close(
+        final Entry _evicted) {
+      Entry entry = _evicted;
+      while (entry != null) {
+        entry.asset.close();
+        final Entry next = entry.younger;
+        entry.younger = null;
+        entry = next;
+      }
+    }
+
+    /**
+     * Cached asset of a key.
+     */
+    private static final class Entry {
+
+      /**
+       * Asset key.
+       */
+      private final String key;
+
+      /**
+       * Loaded asset, shared by all acquisitions.
+       */
+      private final CompletableFuture<Asset> future;
+
+      /**
+       * Loaded asset, null while loading.
+       */
+      private Asset asset;
+
+      /**
+       * Memory held by the asset.
+       */
+      private long byteSize;
+
+      /**
+       * Number of references held.
+       */
+      private int references;
+
+      /**
+       * Whether a caller has started the load.
+       */
+      private boolean claimed;
+
+      /**
+       * Previous entry of the eviction list, released earlier.
+       */
+      private Entry older;
+
+      /**
+       * Next entry of the eviction list, released later.
+       */
+      private Entry younger;
+
+      /**
+       * Creates an entry being loaded.
+       *
+       * @param _key the asset key
+       */
+      private Entry(
+          final String _key) {
+        this.key = _key;
+        this.future = new CompletableFuture<>();
+      }
+
+    }
+
+  }
@@ -0,0 +1,934 @@
+package es.noa.rad.game.engine.asset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.joml.primitives.AABBf;
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.render.DrawCommand;
+import es.noa.rad.game.engine.render.MeshArena;
+import es.noa.rad.game.engine.render.VertexFormat;
+import es.noa.rad.game.engine.render.lod.LodMesh;
+
+  /**
+   * Engine-native binary mesh, memory-mapped from disk.
+   *
+   * <p>The file is produced offline by {@link MeshImporter} and opened
+   * with a single {@code FileChannel.map}: nothing is parsed or copied
+   * into the heap. Vertex and index data are read straight from the
+   * mapping, either by draw commands ({@link #draw(int, DrawCommand)}) or
+   * by a native copy into a {@link MeshArena}
+   * ({@link #upload(int, MeshArena)}).
+   *
+   * <p>Layout, little endian:
+   * <pre>
+   * offset  size  content
+   *      0     4  magic "NMSH"
+   *      4     4  version
+   *      8     4  vertex format ordinal
+   *     12     4  vertex count
+   *     16     4  index count (32-bit indices)
+   *     20     4  submesh count
+   *     24     4  material count
+   *     28     4  level of detail count
+   *     32     4  vertex stream offset
+   *     36     4  index stream offset
+   *     40     4  submesh table offset
+   *     44     4  material table offset
+   *     48    24  bounds (min x, y, z, max x, y, z)
+   *     72     4  level of detail table offset
+   *     76     4  reserved
+   * </pre>
+   * The vertex and index streams start on {@link #STREAM_ALIGNMENT} byte
+   * boundaries. Every submesh record holds its first vertex, vertex count,
+   * first index, index count, material, bounds and the range of its level
+   * of detail records; its indices are relative to its first vertex.
+   * Every level of detail record holds the first index, index count and
+   * relative error of a level: level 0 is the index range of the submesh
+   * and the coarser levels, simplified at import, follow it in the index
+   * stream and share its vertices. Every material record holds the
+   * lengths and UTF-8 bytes of its name and diffuse texture path.
+   *
+   * <p>Mapped files are unmapped by the garbage collector, since the
+   * platform offers no explicit unmapping; {@link #close()} only drops
+   * the mapping.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * MeshFile file = MeshFile.open(Path.of("models/ship.nmsh"));
+   * for (int submesh = 0; submesh < file.submeshCount(); submesh++) {
+   *   file.draw(submesh, queue.push(sortKey));
+   * }
+   * LodMesh ship = file.uploadLods(0, arena);
+   * }</pre>
+   *
+   * @see MeshImporter
+   */
+  public final class MeshFile implements Asset {
+
+    /**
+     * File magic, "NMSH" read as a little endian integer.
+     */
+    public static final int MAGIC = 0x48534D4E;
+
+    /**
+     * Current format version.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Size in bytes of the header.
+     */
+    public static final int HEADER_SIZE = 80;
+
+    /**
+     * Alignment in bytes of the vertex and index streams.
+     */
+    public static final int STREAM_ALIGNMENT = 64;
+
+    /**
+     * Size in bytes of a submesh record.
+     */
+    public static final int SUBMESH_SIZE = 56;
+
+    /**
+     * Size in bytes of a level of detail record.
+     */
+    public static final int LOD_SIZE = 12;
+
+    /**
+     * Header offset of the version.
+     */
+    static final int VERSION_OFFSET = 4;
+
+    /**
+     * Header offset of the vertex format ordinal.
+     */
+    static final int FORMAT_OFFSET = 8;
+
+    /**
+     * Header offset of the vertex count.
+     */
+    static final int VERTEX_COUNT_OFFSET = 12;
+
+    /**
+     * Header offset of the index count.
+     */
+    static final int INDEX_COUNT_OFFSET = 16;
+
+    /**
+     * Header offset of the submesh count.
+     */
+    static final int SUBMESH_COUNT_OFFSET = 20;
+
+    /**
+     * Header offset of the material count.
+     */
+    static final int MATERIAL_COUNT_OFFSET = 24;
+
+    /**
+     * Header offset of the level of detail count.
+     */
+    static final int LOD_COUNT_OFFSET = 28;
+
+    /**
+     * Header offset of the vertex stream offset.
+     */
+    static final int VERTEX_STREAM_OFFSET = 32;
+
+    /**
+     * Header offset of the index stream offset.
+     */
+    static final int INDEX_STREAM_OFFSET = 36;
+
+    /**
+     * Header offset of the submesh table offset.
+     */
+    static final int SUBMESH_TABLE_OFFSET = 40;
+
+    /**
+     * Header offset of the material table offset.
+     */
+    static final int MATERIAL_TABLE_OFFSET = 44;
+
+    /**
+     * Header offset of the bounds.
+     */
+    static final int BOUNDS_OFFSET = 48;
+
+    /**
+     * Header offset of the level of detail table offset.
+     */
+    static final int LOD_TABLE_OFFSET = 72;
+
+    /**
+     * Submesh record offset of the first vertex.
+     */
+    static final int SUBMESH_FIRST_VERTEX = 0;
+
+    /**
+     * Submesh record offset of the vertex count.
+     */
+    static final int SUBMESH_VERTEX_COUNT = 4;
+
+    /**
+     * Submesh record offset of the first index.
+     */
+    static final int SUBMESH_FIRST_INDEX = 8;
+
+    /**
+     * Submesh record offset of the index count.
+     */
+    static final int SUBMESH_INDEX_COUNT = 12;
+
+    /**
+     * Submesh record offset of the material.
+     */
+    static final int SUBMESH_MATERIAL = 16;
+
+    /**
+     * Submesh record offset of the bounds.
+     */
+    static final int SUBMESH_BOUNDS = 20;
+
+    /**
+     * Submesh record offset of the first level of detail record.
+     */
+    static final int SUBMESH_FIRST_LOD = 44;
+
+    /**
+     * Submesh record offset of the level of detail count.
+     */
+    static final int SUBMESH_LOD_COUNT = 48;
+
+    /**
+     * Level of detail record offset of the first index.
+     */
+    static final int LOD_FIRST_INDEX = 0;
+
+    /**
+     * Level of detail record offset of the index count.
+     */
+    static final int LOD_INDEX_COUNT = 4;
+
+    /**
+     * Level of detail record offset of the relative error.
+     */
+    static final int LOD_ERROR = 8;
+
+    /**
+     * Number of floats of a bounding box.
+     */
+    private static final int BOUNDS_FLOATS = 6;
+
+    /**
+     * File the mesh was opened from.
+     */
+    private final Path path;
+
+    /**
+     * Address of the mapped file.
+     */
+    private final long address;
+
+    /**
+     * Vertex format.
+     */
+    private final VertexFormat format;
+
+    /**
+     * Number of vertices.
+     */
+    private final int vertexCount;
+
+    /**
+     * Number of indices.
+     */
+    private final int indexCount;
+
+    /**
+     * Number of submeshes.
+     */
+    private final int submeshCount;
+
+    /**
+     * Offset of the vertex stream.
+     */
+    private final int vertexOffset;
+
+    /**
+     * Offset of the index stream.
+     */
+    private final int indexOffset;
+
+    /**
+     * Offset of the submesh table.
+     */
+    private final int submeshOffset;
+
+    /**
+     * Offset of the level of detail table.
+     */
+    private final int lodOffset;
+
+    /**
+     * Name of every material.
+     */
+    private final String[] materialNames;
+
+    /**
+     * Diffuse texture path of every material, empty if none.
+     */
+    private final String[] materialTextures;
+
+    /**
+     * Mapped file.
+     */
+    private ByteBuffer data;
+
+    /**
+     * Creates a mesh over a validated mapping.
+     *
+     * @param _path the file
+     * @param _data the mapping, little endian
+     * @throws IOException if the material table is corrupt
+     */
+    private MeshFile(
+        final Path _path,
+        final ByteBuffer _data) throws IOException {
+      this.path = _path;
+      this.data = _data;
+      this.address = MemoryUtil.memAddress(_data);
+      this.format = VertexFormat.of(_data.getInt(MeshFile.FORMAT_OFFSET));
+      this.vertexCount = _data.getInt(MeshFile.VERTEX_COUNT_OFFSET);
+      this.indexCount = _data.getInt(MeshFile.INDEX_COUNT_OFFSET);
+      this.submeshCount = _data.getInt(MeshFile.SUBMESH_COUNT_OFFSET);
+      this.vertexOffset = _data.getInt(MeshFile.VERTEX_STREAM_OFFSET);
+      this.indexOffset = _data.getInt(MeshFile.INDEX_STREAM_OFFSET);
+      this.submeshOffset = _data.getInt(MeshFile.SUBMESH_TABLE_OFFSET);
+      this.lodOffset = _data.getInt(MeshFile.LOD_TABLE_OFFSET);
+
+      final int materialCount = _data.getInt(MeshFile.MATERIAL_COUNT_OFFSET);
+      this.materialNames = new String[materialCount];
+      this.materialTextures = new String[materialCount];
+      int offset = _data.getInt(MeshFile.MATERIAL_TABLE_OFFSET);
+      for (int material = 0; material < materialCount; material++) {
+        this.materialNames[material] = MeshFile.string(_path, _data, offset);
+        offset += Integer.BYTES + _data.getInt(offset);
+        this.materialTextures[material]
+          = MeshFile.string(_path, _data, offset);
+        offset += Integer.BYTES + _data.getInt(offset);
+      }
+    }
+
+    /**
+     * Maps a mesh file.
+     *
+     * @param _path the file
+     * @return the mesh
+     * @throws IOException if the file cannot be read, is not a mesh file
+     *     of the current version or is corrupt
+     */
+    public static MeshFile open(
+        final Path _path) throws IOException {
+      final ByteBuffer data;
+      try (FileChannel channel
+          = FileChannel.open(_path, StandardOpenOption.READ)) {
+        final long size = channel.size();
+        if ((size < MeshFile.HEADER_SIZE) || (size > Integer.MAX_VALUE)) {
+          throw new IOException("Not a mesh file: " + _path);
+        }
+        data = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      }
+      if (data.getInt(0) != MeshFile.MAGIC) {
+        throw new IOException("Not a mesh file: " + _path);
+      }
+      if (data.getInt(MeshFile.VERSION_OFFSET) != MeshFile.VERSION) {
+        throw new IOException("Unsupported mesh file version "
+          + data.getInt(MeshFile.VERSION_OFFSET) + ": " + _path);
+      }
+      MeshFile.validate(_path, data);
+      return new MeshFile(_path, data);
+    }
+
+    /**
+     * Gets the file the mesh was opened from.
+     *
+     * @return the path
+     */
+    public Path path() {
+      return this.path;
+    }
+
+    /**
+     * Gets the vertex format.
+     *
+     * @return the format
+     */
+    public VertexFormat vertexFormat() {
+      return this.format;
+    }
+
+    /**
+     * Gets the number of vertices of all submeshes.
+     *
+     * @return the vertex count
+     */
+    public int vertexCount() {
+      return this.vertexCount;
+    }
+
+    /**
+     * Gets the number of indices of all submeshes.
+     *
+     * @return the index count
+     */
+    public int indexCount() {
+      return this.indexCount;
+    }
+
+    /**
+     * Gets the bounds of the mesh.
+     *
+     * @param _dest will hold the bounds
+     * @return {@code _dest}
+     */
+    public AABBf bounds(
+        final AABBf _dest) {
+      return this.readBounds(MeshFile.BOUNDS_OFFSET, _dest);
+    }
+
+    /**
+     * Gets a view of the vertex stream of all submeshes, without copying.
+     *
+     * @return the vertices, little endian
+     */
+    public ByteBuffer vertices() {
+      return this.mapping()
+        .slice(this.vertexOffset, this.vertexCount * this.format.stride())
+        .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gets a view of the index stream of all submeshes, without copying.
+     *
+     * @return the indices, little endian
+     */
+    public ByteBuffer indices() {
+      return this.mapping()
+        .slice(this.indexOffset, this.indexCount * MeshArena.INDEX_SIZE)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gets the number of submeshes.
+     *
+     * @return the submesh count
+     */
+    public int submeshCount() {
+      return this.submeshCount;
+    }
+
+    /**
+     * Gets the first vertex of a submesh.
+     *
+     * @param _submesh the submesh
+     * @return the index of its first vertex in the vertex stream
+     */
+    public int firstVertex(
+        final int _submesh) {
+      return this.submeshInt(_submesh, MeshFile.SUBMESH_FIRST_VERTEX);
+    }
+
+    /**
+     * Gets the number of vertices of a submesh.
+     *
+     * @param _submesh the submesh
+     * @return the vertex count
+     */
+    public int vertexCount(
+        final int _submesh) {
+      return this.submeshInt(_submesh, MeshFile.SUBMESH_VERTEX_COUNT);
+    }
+
+    /**
+     * Gets the first index of a submesh.
+     *
+     * @param _submesh the submesh
+     * @return the position of its first index in the index stream
+     */
+    public int firstIndex(
+        final int _submesh) {
+      return this.submeshInt(_submesh, MeshFile.SUBMESH_FIRST_INDEX);
+    }
+
+    /**
+     * Gets the number of indices of a submesh.
+     *
+     * @param _submesh the submesh
+     * @return the index count
+     */
+    public int indexCount(
+        final int _submesh) {
+      return this.submeshInt(_submesh, MeshFile.SUBMESH_INDEX_COUNT);
+    }
+
+    /**
+     * Gets the material of a submesh.
+     *
+     * @param _submesh the submesh
+     * @return the material index
+     */
+    public int material(
+        final int _submesh) {
+      return this.submeshInt(_submesh, MeshFile.SUBMESH_MATERIAL);
+    }
+
+    /**
+     * Gets the bounds of a submesh.
+     *
+     * @param _submesh the submesh
+     * @param _dest will hold the bounds
+     * @return {@code _dest}
+     */
+    public AABBf bounds(
+        final int _submesh,
+        final AABBf _dest) {
+      return this.readBounds(this.submeshOffset
+        + (_submesh * MeshFile.SUBMESH_SIZE) + MeshFile.SUBMESH_BOUNDS, _dest);
+    }
+
+    /**
+     * Gets the number of levels of detail of a submesh.
+     *
+     * @param _submesh the submesh
+     * @return the level count, at least one
+     */
+    public int lodCount(
+        final int _submesh) {
+      return this.submeshInt(_submesh, MeshFile.SUBMESH_LOD_COUNT);
+    }
+
+    /**
+     * Gets the first index of a level of detail of a submesh.
+     *
+     * @param _submesh the submesh
+     * @param _level the level, 0 being the submesh itself
+     * @return the position of its first index in the index stream
+     */
+    public int lodFirstIndex(
+        final int _submesh,
+        final int _level) {
+      return this.mapping().getInt(
+        this.lodRecord(_submesh, _level) + MeshFile.LOD_FIRST_INDEX);
+    }
+
+    /**
+     * Gets the number of indices of a level of detail of a submesh.
+     *
+     * @param _submesh the submesh
+     * @param _level the level, 0 being the submesh itself
+     * @return the index count
+     */
+    public int lodIndexCount(
+        final int _submesh,
+        final int _level) {
+      return this.mapping().getInt(
+        this.lodRecord(_submesh, _level) + MeshFile.LOD_INDEX_COUNT);
+    }
+
+    /**
+     * Gets the error of a level of detail of a submesh.
+     *
+     * @param _submesh the submesh
+     * @param _level the level, 0 being the submesh itself
+     * @return the error relative to the radius of the submesh bounds
+     */
+    public float lodError(
+        final int _submesh,
+        final int _level) {
+      return this.mapping().getFloat(
+        this.lodRecord(_submesh, _level) + MeshFile.LOD_ERROR);
+    }
+
+    /**
+     * Gets the number of materials.
+     *
+     * @return the material count
+     */
+    public int materialCount() {
+      return this.materialNames.length;
+    }
+
+    /**
+     * Gets the name of a material.
+     *
+     * @param _material the material
+     * @return the name
+     */
+    public String materialName(
+        final int _material) {
+      return this.materialNames[_material];
+    }
+
+    /**
+     * Gets the diffuse texture path of a material.
+     *
+     * @param _material the material
+     * @return the path as written in the source model, empty if none
+     */
+    public String materialTexture(
+        final int _material) {
+      return this.materialTextures[_material];
+    }
+
+    /**
+     * Fills the geometry of a draw command with a submesh, read straight
+     * from the mapping.
+     *
+     * @param _submesh the submesh
+     * @param _command the command to fill
+     */
+    public void draw(
+        final int _submesh,
+        final DrawCommand _command) {
+      this.mapping();
+      _command.vertexAddress(this.address + this.vertexOffset
+        + (((long) this.firstVertex(_submesh)) * this.format.stride()));
+      _command.vertexCount(this.vertexCount(_submesh));
+      _command.vertexFormat(this.format);
+      _command.indexAddress(this.address + this.indexOffset
+        + (((long) this.firstIndex(_submesh)) * MeshArena.INDEX_SIZE));
+      _command.indexCount(this.indexCount(_submesh));
+    }
+
+    /**
+     * Fills the geometry of a draw command with a level of detail of a
+     * submesh, read straight from the mapping.
+     *
+     * @param _submesh the submesh
+     * @param _level the level, 0 being the submesh itself
+     * @param _command the command to fill
+     */
+    public void draw(
+        final int _submesh,
+        final int _level,
+        final DrawCommand _command) {
+      this.draw(_submesh, _command);
+      _command.indexAddress(this.address + this.indexOffset
+        + (((long) this.lodFirstIndex(_submesh, _level))
+          * MeshArena.INDEX_SIZE));
+      _command.indexCount(this.lodIndexCount(_submesh, _level));
+    }
+
+    /**
+     * Copies a submesh into a mesh arena, natively.
+     *
+     * @param _submesh the submesh
+     * @param _arena the arena
+     * @return the handle of the new arena mesh
+     */
+    public int upload(
+        final int _submesh,
+        final MeshArena _arena) {
+      this.mapping();
+      final int vertices = this.vertexCount(_submesh);
+      final int indices = this.indexCount(_submesh);
+      final int mesh = _arena.create(this.format, vertices, indices);
+      MemoryUtil.memCopy(
+        this.address + this.vertexOffset
+          + (((long) this.firstVertex(_submesh)) * this.format.stride()),
+        _arena.vertexAddress(mesh),
+        ((long) vertices) * this.format.stride());
+      if (indices > 0) {
+        MemoryUtil.memCopy(
+          this.address + this.indexOffset
+            + (((long) this.firstIndex(_submesh)) * MeshArena.INDEX_SIZE),
+          _arena.indexAddress(mesh),
+          ((long) indices) * MeshArena.INDEX_SIZE);
+      }
+      return mesh;
+    }
+
+    /**
+     * Copies a submesh and all its levels of detail into a mesh arena,
+     * natively. The arena mesh holds the indices of every level.
+     *
+     * @param _submesh the submesh
+     * @param _arena the arena
+     * @return the levels of the new arena mesh
+     */
+    public LodMesh uploadLods(
+        final int _submesh,
+        final MeshArena _arena) {
+      final int levelCount = this.lodCount(_submesh);
+      final int firstIndex = this.firstIndex(_submesh);
+      final int[] firstIndices = new int[levelCount];
+      final int[] indexCounts = new int[levelCount];
+      final float[] errors = new float[levelCount];
+      int end = firstIndex;
+      for (int level = 0; level < levelCount; level++) {
+        firstIndices[level] = this.lodFirstIndex(_submesh, level) - firstIndex;
+        indexCounts[level] = this.lodIndexCount(_submesh, level);
+        errors[level] = this.lodError(_submesh, level);
+        end = Math.max(end, this.lodFirstIndex(_submesh, level)
+          + indexCounts[level]);
+      }
+      final int vertices = this.vertexCount(_submesh);
+      final int indices = end - firstIndex;
+      final int mesh = _arena.create(this.format, vertices, indices);
+      MemoryUtil.memCopy(
+        this.address + this.vertexOffset
+          + (((long) this.firstVertex(_submesh)) * this.format.stride()),
+        _arena.vertexAddress(mesh),
+        ((long) vertices) * this.format.stride());
+      if (indices > 0) {
+        MemoryUtil.memCopy(
+          this.address + this.indexOffset
+            + (((long) firstIndex) * MeshArena.INDEX_SIZE),
+          _arena.indexAddress(mesh),
+          ((long) indices) * MeshArena.INDEX_SIZE);
+      }
+      return new LodMesh(mesh, firstIndices, indexCounts, errors,
+        this.bounds(_submesh, new AABBf()));
+    }
+
+    /**
+     * Gets the size of the mapping.
+     *
+     * @return the size in bytes, zero once closed
+     */
+    @Override
+    public long byteSize() {
+      return (this.data == null) ? 0L : this.data.capacity();
+    }
+
+    /**
+     * Drops the mapping; the mesh must not be accessed afterwards.
+     */
+    @Override
+    public void close() {
+      this.data = null;
+    }
+
+    /**
+     * Gets the mapping.
+     *
+     * @return the mapping
+     * @throws IllegalStateException if the mesh is closed
+     */
+    private ByteBuffer mapping() {
+      if (this.data == null) {
+        throw new IllegalStateException("Mesh file closed: " + this.path);
+      }
+      return this.data;
+    }
+
+    /**
+     * Reads an integer of a submesh record.
+     *
+     * @param _submesh the submesh
+     * @param _field the field offset inside the record
+     * @return the value
+     */
+    private int submeshInt(
+        final int _submesh,
+        final int _field) {
+      if ((_submesh < 0) || (_submesh >= this.submeshCount)) {
+        throw new IndexOutOfBoundsException(
+          "Submesh " + _submesh + " of " + this.submeshCount);
+      }
+      return this.mapping().getInt(this.submeshOffset
+        + (_submesh * MeshFile.SUBMESH_SIZE) + _field);
+    }
+
+    /**
+     * Gets the offset of a level of detail record.
+     *
+     * @param _submesh the submesh
+     * @param _level the level
+     * @return the record offset
+     */
+    private int lodRecord(
+        final int _submesh,
+        final int _level) {
+      final int levelCount = this.lodCount(_submesh);
+      if ((_level < 0) || (_level >= levelCount)) {
+        throw new IndexOutOfBoundsException(
+          "Level " + _level + " of " + levelCount);
+      }
+      return this.lodOffset + ((this.submeshInt(_submesh,
+        MeshFile.SUBMESH_FIRST_LOD) + _level) * MeshFile.LOD_SIZE);
+    }
+
+    /**
+     * Reads a bounding box.
+     *
+     * @param _offset the offset of the six floats
+     * @param _dest will hold the bounds
+     * @return {@code _dest}
+     */
+    private AABBf readBounds(
+        final int _offset,
+        final AABBf _dest) {
+      final ByteBuffer mapping = this.mapping();
+      final int max = _offset + (MeshFile.BOUNDS_FLOATS / 2 * Float.BYTES);
+      return _dest
+        .setMin(
+          mapping.getFloat(_offset),
+          mapping.getFloat(_offset + Float.BYTES),
+          mapping.getFloat(_offset + (2 * Float.BYTES)))
+        .setMax(
+          mapping.getFloat(max),
+          mapping.getFloat(max + Float.BYTES),
+          mapping.getFloat(max + (2 * Float.BYTES)));
+    }
+
+    /**
+     * Checks that the streams and tables of a mapping lie inside it.
+     *
+     * @param _path the file
+     * @param _data the mapping
+     * @throws IOException if the file is corrupt
+     */
+    private static void validate(
+        final Path _path,
+        final ByteBuffer _data) throws IOException {
+      final int format = _data.getInt(MeshFile.FORMAT_OFFSET);
+      final int vertices = _data.getInt(MeshFile.VERTEX_COUNT_OFFSET);
+      final int indices = _data.getInt(MeshFile.INDEX_COUNT_OFFSET);
+      final int submeshes = _data.getInt(MeshFile.SUBMESH_COUNT_OFFSET);
+      final int lods = _data.getInt(MeshFile.LOD_COUNT_OFFSET);
+      if ((format < 0) || (format >= VertexFormat.values().length)
+          || (vertices < 0) || (indices < 0) || (submeshes < 0)
+          || (lods < 0)
+          || (_data.getInt(MeshFile.MATERIAL_COUNT_OFFSET) < 0)) {
+        throw new IOException("Corrupt mesh file: " + _path);
+      }
+      final long size = _data.capacity();
+      final long vertexBytes
+        = ((long) vertices) * VertexFormat.of(format).stride();
+      final long indexBytes = ((long) indices) * MeshArena.INDEX_SIZE;
+      final long submeshBytes = ((long) submeshes) * MeshFile.SUBMESH_SIZE;
+      final long lodBytes = ((long) lods) * MeshFile.LOD_SIZE;
+      if (!MeshFile.inside(_data.getInt(MeshFile.VERTEX_STREAM_OFFSET),
+            vertexBytes, size)
+          || !MeshFile.inside(_data.getInt(MeshFile.INDEX_STREAM_OFFSET),
+            indexBytes, size)
+          || !MeshFile.inside(_data.getInt(MeshFile.SUBMESH_TABLE_OFFSET),
+            submeshBytes, size)
+          || !MeshFile.inside(_data.getInt(MeshFile.LOD_TABLE_OFFSET),
+            lodBytes, size)
+          || !MeshFile.inside(_data.getInt(MeshFile.MATERIAL_TABLE_OFFSET),
+            0L, size)) {
+        throw new IOException("Corrupt mesh file: " + _path);
+      }
+      final int table = _data.getInt(MeshFile.SUBMESH_TABLE_OFFSET);
+      for (int submesh = 0; submesh < submeshes; submesh++) {
+        final int record = table + (submesh * MeshFile.SUBMESH_SIZE);
+        final long firstVertex
+          = _data.getInt(record + MeshFile.SUBMESH_FIRST_VERTEX);
+        final long vertexCount
+          = _data.getInt(record + MeshFile.SUBMESH_VERTEX_COUNT);
+        final long firstIndex
+          = _data.getInt(record + MeshFile.SUBMESH_FIRST_INDEX);
+        final long indexCount
+          = _data.getInt(record + MeshFile.SUBMESH_INDEX_COUNT);
+        final long firstLod = _data.getInt(record + MeshFile.SUBMESH_FIRST_LOD);
+        final long lodCount = _data.getInt(record + MeshFile.SUBMESH_LOD_COUNT);
+        if ((firstVertex < 0L) || (vertexCount < 0L)
+            || ((firstVertex + vertexCount) > vertices)
+            || (firstIndex < 0L) || (indexCount < 0L)
+            || ((firstIndex + indexCount) > indices)
+            || (firstLod < 0L) || (lodCount <= 0L)
+            || ((firstLod + lodCount) > lods)) {
+          throw new IOException("Corrupt mesh file: " + _path);
+        }
+        MeshFile.validateLods(_path, _data, firstIndex, indices,
+          (int) firstLod, (int) lodCount);
+      }
+    }
+
+    /**
+     * Checks that the levels of detail of a submesh lie inside the index
+     * stream, after its first index.
+     *
+     * @param _path the file
+     * @param _data the mapping
+     * @param _firstIndex the first index of the submesh
+     * @param _indices the number of indices of the stream
+     * @param _firstLod the first level of detail record of the submesh
+     * @param _lodCount the number of levels of the submesh
+     * @throws IOException if the file is corrupt
+     */
+    private static void validateLods(
+        final Path _path,
+        final ByteBuffer _data,
+        final long _firstIndex,
+        final int _indices,
+        final int _firstLod,
+        final int _lodCount) throws IOException {
+      final int table = _data.getInt(MeshFile.LOD_TABLE_OFFSET);
+      for (int level = 0; level < _lodCount; level++) {
+        final int record = table + ((_firstLod + level) * MeshFile.LOD_SIZE);
+        final long firstIndex
+          = _data.getInt(record + MeshFile.LOD_FIRST_INDEX);
+        final long indexCount
+          = _data.getInt(record + MeshFile.LOD_INDEX_COUNT);
+        if ((firstIndex < _firstIndex) || (indexCount < 0L)
+            || ((firstIndex + indexCount) > _indices)) {
+          throw new IOException("Corrupt mesh file: " + _path);
+        }
+      }
+    }
+
+    /**
+     * Checks that a range lies inside a mapping.
+     *
+     * @param _offset the range offset
+     * @param _length the range length
+     * @param _size the mapping size
+     * @return {@code true} if inside
+     */
+    private static boolean inside(
+        final int _offset,
+        final long _length,
+        final long _size) {
+      return (_offset >= MeshFile.HEADER_SIZE)
+        && ((_offset + _length) <= _size);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     *
+     * @param _path the file
+     * @param _data the mapping
+     * @param _offset the offset of the length
+     * @return the string
+     * @throws IOException if the string lies outside the mapping
+     */
+    private static String string(
+        final Path _path,
+        final ByteBuffer _data,
+        final int _offset) throws IOException {
+      if ((_offset + Integer.BYTES) > _data.capacity()) {
+        throw new IOException("Corrupt mesh file: " + _path);
+      }
+      final int length = _data.getInt(_offset);
+      if ((length < 0)
+          || (((long) _offset + Integer.BYTES + length) > _data.capacity())) {
+        throw new IOException("Corrupt mesh file: " + _path);
+      }
+      final byte[] bytes = new byte[length];
+      _data.get(_offset + Integer.BYTES, bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+  }
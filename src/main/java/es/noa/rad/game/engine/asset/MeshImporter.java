@@ -0,0 +1,740 @@
+package es.noa.rad.game.engine.asset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMaterial;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIString;
+import org.lwjgl.assimp.AIVector3D;
+import org.lwjgl.assimp.Assimp;
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.render.MeshArena;
+import es.noa.rad.game.engine.render.VertexFormat;
+import es.noa.rad.game.engine.render.lod.LodChain;
+import es.noa.rad.game.engine.render.lod.MeshSimplifier;
+
+  /**
+   * Offline converter from any model format understood by Assimp (glTF,
+   * FBX, OBJ...) to the engine-native {@link MeshFile} format.
+   *
+   * <p>The scene is imported once with its node transforms baked into the
+   * vertices, triangulated, with identical vertices joined and smooth
+   * normals generated where missing. Every triangle mesh of the scene
+   * becomes a submesh of {@link VertexFormat#POSITION_NORMAL_TEXCOORD}
+   * vertices; point and line meshes are dropped. Materials keep their
+   * name and diffuse texture path.
+   *
+   * <p>Submeshes are then reordered by a {@link MeshOptimizer} and
+   * simplified into a {@link LodChain} of levels of detail, in parallel,
+   * before being written. The coarser levels only add indices over the
+   * optimized vertices, each level reordered for the vertex cache.
+   *
+   * <p>Runs at build time or in tools, so that the game only maps the
+   * result with {@link MeshFile#open(Path)}.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * MeshImporter.convert(Path.of("models/ship.gltf"),
+   *     Path.of("models/ship.nmsh"));
+   * }</pre>
+   *
+   * @see MeshFile
+   */
+  public final class MeshImporter {
+
+    /**
+     * Assimp post-processing applied to every imported scene.
+     */
+    public static final int IMPORT_FLAGS = Assimp.aiProcess_Triangulate
+      | Assimp.aiProcess_JoinIdenticalVertices
+      | Assimp.aiProcess_GenSmoothNormals
+      | Assimp.aiProcess_PreTransformVertices
+      | Assimp.aiProcess_SortByPType;
+
+    /**
+     * Default maximum number of levels of detail of a submesh, including
+     * the submesh itself.
+     */
+    public static final int DEFAULT_LOD_LEVELS = 4;
+
+    /**
+     * Target index count ratio between two levels of detail.
+     */
+    private static final float LOD_REDUCTION = 0.5F;
+
+    /**
+     * Maximum relative error of a collapse of the simplifier.
+     */
+    private static final float LOD_MAX_ERROR = 0.05F;
+
+    /**
+     * Vertex format of the written meshes.
+     */
+    private static final VertexFormat FORMAT
+      = VertexFormat.POSITION_NORMAL_TEXCOORD;
+
+    /**
+     * Number of indices of a triangle.
+     */
+    private static final int TRIANGLE = 3;
+
+    /**
+     * Number of axes of a position or normal.
+     */
+    private static final int AXES = 3;
+
+    /**
+     * Number of floats of a vertex.
+     */
+    private static final int FLOATS
+      = MeshImporter.FORMAT.stride() / Float.BYTES;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private MeshImporter() {
+    }
+
+    /**
+     * Converts a model into a mesh file, optimizing and simplifying its
+     * submeshes in parallel on the common pool with the default overdraw
+     * threshold and levels of detail.
+     *
+     * @param _source the model to import
+     * @param _target the mesh file to write, replaced if it exists
+     * @return the size in bytes of the mesh file
+     * @throws IOException if the model cannot be imported or the mesh file
+     *     cannot be written
+     */
+    public static long convert(
+        final Path _source,
+        final Path _target) throws IOException {
+      return MeshImporter.convert(_source, _target,
+        ForkJoinPool.commonPool(), MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD,
+        MeshImporter.DEFAULT_LOD_LEVELS);
+    }
+
+    /**
+     * Converts a model into a mesh file.
+     *
+     * <p>Every submesh is reordered by a {@link MeshOptimizer} for vertex
+     * cache, overdraw and vertex fetch efficiency, then simplified by a
+     * {@link MeshSimplifier} into its levels of detail, every level
+     * halving the triangles of the previous one; submeshes are processed
+     * in parallel.
+     *
+     * @param _source the model to import
+     * @param _target the mesh file to write, replaced if it exists
+     * @param _pool the pool optimizing the submeshes
+     * @param _overdrawThreshold the overdraw threshold of the optimizer,
+     *     zero to skip the overdraw pass
+     * @param _lodLevels the maximum number of levels of detail of a
+     *     submesh, including the submesh itself; one to skip the
+     *     simplification
+     * @return the size in bytes of the mesh file
+     * @throws IOException if the model cannot be imported or the mesh file
+     *     cannot be written
+     * @throws IllegalArgumentException if the level count is not positive
+     */
+    public static long convert(
+        final Path _source,
+        final Path _target,
+        final ForkJoinPool _pool,
+        final float _overdrawThreshold,
+        final int _lodLevels) throws IOException {
+      if (_lodLevels <= 0) {
+        throw new IllegalArgumentException(
+          "Level count must be positive: " + _lodLevels);
+      }
+      final AIScene scene = Assimp.aiImportFile(
+        _source.toString(), MeshImporter.IMPORT_FLAGS);
+      if (scene == null) {
+        throw new IOException("Unable to import " + _source + ": "
+          + Assimp.aiGetErrorString());
+      }
+      final Submesh[] submeshes;
+      final byte[][] materials;
+      try {
+        submeshes = MeshImporter.read(scene);
+        materials = MeshImporter.materials(scene);
+      } finally {
+        Assimp.aiReleaseImport(scene);
+      }
+      if (submeshes.length > 0) {
+        _pool.invoke(new OptimizeTask(
+          submeshes, 0, submeshes.length, _overdrawThreshold, _lodLevels));
+      }
+
+      final ByteBuffer file = MeshImporter.encode(submeshes, materials);
+      try (FileChannel channel = FileChannel.open(_target,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        while (file.hasRemaining()) {
+          channel.write(file);
+        }
+        return file.capacity();
+      } finally {
+        MemoryUtil.memFree(file);
+      }
+    }
+
+    /**
+     * Copies the triangle meshes of a scene.
+     *
+     * @param _scene the scene
+     * @return the submeshes
+     */
+    private static Submesh[] read(
+        final AIScene _scene) {
+      final int meshCount = _scene.mNumMeshes();
+      int submeshCount = 0;
+      for (int index = 0; index < meshCount; index++) {
+        if (MeshImporter.triangles(MeshImporter.mesh(_scene, index))) {
+          submeshCount++;
+        }
+      }
+      final Submesh[] submeshes = new Submesh[submeshCount];
+      int submesh = 0;
+      for (int index = 0; index < meshCount; index++) {
+        final AIMesh mesh = MeshImporter.mesh(_scene, index);
+        if (MeshImporter.triangles(mesh)) {
+          submeshes[submesh++] = new Submesh(
+            MeshImporter.vertices(mesh),
+            MeshImporter.indices(mesh),
+            mesh.mMaterialIndex());
+        }
+      }
+      return submeshes;
+    }
+
+    /**
+     * Reads the name and diffuse texture path of every material.
+     *
+     * @param _scene the scene
+     * @return the UTF-8 name and path of every material, interleaved
+     */
+    private static byte[][] materials(
+        final AIScene _scene) {
+      final int materialCount = _scene.mNumMaterials();
+      final byte[][] strings = new byte[materialCount * 2][];
+      for (int material = 0; material < materialCount; material++) {
+        final AIMaterial source
+          = AIMaterial.create(_scene.mMaterials().get(material));
+        strings[2 * material] = MeshImporter.name(source);
+        strings[(2 * material) + 1] = MeshImporter.texture(source);
+      }
+      return strings;
+    }
+
+    /**
+     * Encodes submeshes and materials into a mesh file image.
+     *
+     * @param _submeshes the submeshes
+     * @param _materials the material strings
+     * @return the file image, to be freed with {@link MemoryUtil#memFree}
+     */
+    private static ByteBuffer encode(
+        final Submesh[] _submeshes,
+        final byte[][] _materials) {
+      long vertexCount = 0L;
+      long indexCount = 0L;
+      int lodCount = 0;
+      for (final Submesh submesh : _submeshes) {
+        vertexCount += submesh.vertexCount;
+        for (final int[] level : submesh.lods) {
+          indexCount += level.length;
+        }
+        lodCount += submesh.lods.length;
+      }
+      long materialBytes = 0L;
+      for (final byte[] string : _materials) {
+        materialBytes += Integer.BYTES + string.length;
+      }
+
+      final long vertexOffset = MeshImporter.align(MeshFile.HEADER_SIZE);
+      final long indexOffset = MeshImporter.align(
+        vertexOffset + (vertexCount * MeshImporter.FORMAT.stride()));
+      final long submeshOffset
+        = indexOffset + (indexCount * MeshArena.INDEX_SIZE);
+      final long lodOffset = submeshOffset
+        + (((long) _submeshes.length) * MeshFile.SUBMESH_SIZE);
+      final long materialOffset
+        = lodOffset + (((long) lodCount) * MeshFile.LOD_SIZE);
+      final long size = materialOffset + materialBytes;
+      if (size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Scene too large: " + size);
+      }
+      final ByteBuffer file = MemoryUtil.memCalloc((int) size)
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+      file.putInt(0, MeshFile.MAGIC);
+      file.putInt(MeshFile.VERSION_OFFSET, MeshFile.VERSION);
+      file.putInt(MeshFile.FORMAT_OFFSET, MeshImporter.FORMAT.ordinal());
+      file.putInt(MeshFile.VERTEX_COUNT_OFFSET, (int) vertexCount);
+      file.putInt(MeshFile.INDEX_COUNT_OFFSET, (int) indexCount);
+      file.putInt(MeshFile.SUBMESH_COUNT_OFFSET, _submeshes.length);
+      file.putInt(MeshFile.MATERIAL_COUNT_OFFSET, _materials.length / 2);
+      file.putInt(MeshFile.LOD_COUNT_OFFSET, lodCount);
+      file.putInt(MeshFile.VERTEX_STREAM_OFFSET, (int) vertexOffset);
+      file.putInt(MeshFile.INDEX_STREAM_OFFSET, (int) indexOffset);
+      file.putInt(MeshFile.SUBMESH_TABLE_OFFSET, (int) submeshOffset);
+      file.putInt(MeshFile.MATERIAL_TABLE_OFFSET, (int) materialOffset);
+      file.putInt(MeshFile.LOD_TABLE_OFFSET, (int) lodOffset);
+
+      final float[] bounds = MeshImporter.emptyBounds();
+      int firstVertex = 0;
+      int firstIndex = 0;
+      int firstLod = 0;
+      for (int submesh = 0; submesh < _submeshes.length; submesh++) {
+        final Submesh source = _submeshes[submesh];
+        final int vertexFloats = source.vertexCount * MeshImporter.FLOATS;
+        file.slice((int) vertexOffset
+            + (firstVertex * MeshImporter.FORMAT.stride()),
+            vertexFloats * Float.BYTES)
+          .order(ByteOrder.LITTLE_ENDIAN)
+          .asFloatBuffer()
+          .put(source.vertices, 0, vertexFloats);
+        final int record = (int) submeshOffset
+          + (submesh * MeshFile.SUBMESH_SIZE);
+        file.putInt(record + MeshFile.SUBMESH_FIRST_LOD, firstLod);
+        file.putInt(record + MeshFile.SUBMESH_LOD_COUNT, source.lods.length);
+        int levelIndex = firstIndex;
+        for (int level = 0; level < source.lods.length; level++) {
+          final int[] indices = source.lods[level];
+          file.slice((int) indexOffset + (levelIndex * MeshArena.INDEX_SIZE),
+              indices.length * MeshArena.INDEX_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asIntBuffer()
+            .put(indices);
+          final int lod = (int) lodOffset
+            + ((firstLod + level) * MeshFile.LOD_SIZE);
+          file.putInt(lod + MeshFile.LOD_FIRST_INDEX, levelIndex);
+          file.putInt(lod + MeshFile.LOD_INDEX_COUNT, indices.length);
+          file.putFloat(lod + MeshFile.LOD_ERROR, source.lodErrors[level]);
+          levelIndex += indices.length;
+        }
+
+        final float[] submeshBounds = MeshImporter.emptyBounds();
+        MeshImporter.grow(submeshBounds, source.vertices, vertexFloats);
+        file.putInt(record + MeshFile.SUBMESH_FIRST_VERTEX, firstVertex);
+        file.putInt(record + MeshFile.SUBMESH_VERTEX_COUNT,
+          source.vertexCount);
+        file.putInt(record + MeshFile.SUBMESH_FIRST_INDEX, firstIndex);
+        file.putInt(record + MeshFile.SUBMESH_INDEX_COUNT,
+          source.indices.length);
+        file.putInt(record + MeshFile.SUBMESH_MATERIAL, source.material);
+        MeshImporter.putBounds(
+          file, record + MeshFile.SUBMESH_BOUNDS, submeshBounds);
+        MeshImporter.union(bounds, submeshBounds);
+        firstVertex += source.vertexCount;
+        firstIndex = levelIndex;
+        firstLod += source.lods.length;
+      }
+      if (_submeshes.length == 0) {
+        Arrays.fill(bounds, 0.0F);
+      }
+      MeshImporter.putBounds(file, MeshFile.BOUNDS_OFFSET, bounds);
+
+      int offset = (int) materialOffset;
+      for (final byte[] string : _materials) {
+        file.putInt(offset, string.length);
+        file.put(offset + Integer.BYTES, string);
+        offset += Integer.BYTES + string.length;
+      }
+      return file;
+    }
+
+    /**
+     * Copies the vertices of a mesh.
+     *
+     * @param _mesh the mesh
+     * @return the interleaved vertices
+     */
+    private static float[] vertices(
+        final AIMesh _mesh) {
+      final int vertexCount = _mesh.mNumVertices();
+      final float[] vertices = new float[vertexCount * MeshImporter.FLOATS];
+      final long positions = _mesh.mVertices().address();
+      final AIVector3D.Buffer normalBuffer = _mesh.mNormals();
+      final long normals = (normalBuffer == null)
+        ? MemoryUtil.NULL : normalBuffer.address();
+      final AIVector3D.Buffer texcoordBuffer = _mesh.mTextureCoords(0);
+      final long texcoords = (texcoordBuffer == null)
+        ? MemoryUtil.NULL : texcoordBuffer.address();
+      final int normal = MeshImporter.AXES;
+      final int texcoord = 2 * MeshImporter.AXES;
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        final long source = ((long) vertex) * AIVector3D.SIZEOF;
+        final int target = vertex * MeshImporter.FLOATS;
+        for (int axis = 0; axis < MeshImporter.AXES; axis++) {
+          vertices[target + axis]
+            = MemoryUtil.memGetFloat(positions + source + (axis * Float.BYTES));
+          if (normals != MemoryUtil.NULL) {
+            vertices[target + normal + axis]
+              = MemoryUtil.memGetFloat(normals + source + (axis * Float.BYTES));
+          }
+        }
+        if (texcoords != MemoryUtil.NULL) {
+          vertices[target + texcoord]
+            = MemoryUtil.memGetFloat(texcoords + source);
+          vertices[target + texcoord + 1]
+            = MemoryUtil.memGetFloat(texcoords + source + Float.BYTES);
+        }
+      }
+      return vertices;
+    }
+
+    /**
+     * Copies the triangle indices of a mesh, dropping other faces.
+     *
+     * @param _mesh the mesh
+     * @return the indices
+     */
+    private static int[] indices(
+        final AIMesh _mesh) {
+      final AIFace.Buffer faces = _mesh.mFaces();
+      final long base = faces.address();
+      final int faceCount = _mesh.mNumFaces();
+      final int[] indices = new int[faceCount * MeshImporter.TRIANGLE];
+      int written = 0;
+      for (int face = 0; face < faceCount; face++) {
+        final long address = base + (((long) face) * AIFace.SIZEOF);
+        if (AIFace.nmNumIndices(address) != MeshImporter.TRIANGLE) {
+          continue;
+        }
+        final long source
+          = MemoryUtil.memGetAddress(address + AIFace.MINDICES);
+        for (int corner = 0; corner < MeshImporter.TRIANGLE; corner++) {
+          indices[written++]
+            = MemoryUtil.memGetInt(source + (corner * Integer.BYTES));
+        }
+      }
+      return (written == indices.length)
+        ? indices : Arrays.copyOf(indices, written);
+    }
+
+    /**
+     * Gets a mesh of a scene.
+     *
+     * @param _scene the scene
+     * @param _index the mesh index
+     * @return the mesh
+     */
+    private static AIMesh mesh(
+        final AIScene _scene,
+        final int _index) {
+      return AIMesh.create(_scene.mMeshes().get(_index));
+    }
+
+    /**
+     * Checks whether a mesh is made of triangles.
+     *
+     * @param _mesh the mesh
+     * @return {@code true} for triangle meshes
+     */
+    private static boolean triangles(
+        final AIMesh _mesh) {
+      return ((_mesh.mPrimitiveTypes() & Assimp.aiPrimitiveType_TRIANGLE)
+        != 0) && (_mesh.mNumVertices() > 0);
+    }
+
+    /**
+     * Reads the name of a material.
+     *
+     * @param _material the material
+     * @return the UTF-8 name, empty if none
+     */
+    private static byte[] name(
+        final AIMaterial _material) {
+      try (AIString string = AIString.calloc()) {
+        if (Assimp.aiGetMaterialString(_material, Assimp.AI_MATKEY_NAME,
+            0, 0, string) != Assimp.aiReturn_SUCCESS) {
+          return new byte[0];
+        }
+        return string.dataString().getBytes(StandardCharsets.UTF_8);
+      }
+    }
+
+    /**
+     * Reads the diffuse texture path of a material.
+     *
+     * @param _material the material
+     * @return the UTF-8 path, empty if none
+     */
+    private static byte[] texture(
+        final AIMaterial _material) {
+      try (AIString string = AIString.calloc()) {
+        if (Assimp.aiGetMaterialTexture(_material,
+            Assimp.aiTextureType_DIFFUSE, 0, string, (int[]) null, null,
+            null, null, null, null) != Assimp.aiReturn_SUCCESS) {
+          return new byte[0];
+        }
+        return string.dataString().getBytes(StandardCharsets.UTF_8);
+      }
+    }
+
+    /**
+     * Rounds an offset up to the stream alignment.
+     *
+     * @param _offset the offset
+     * @return the aligned offset
+     */
+    private static long align(
+        final long _offset) {
+      final long mask = MeshFile.STREAM_ALIGNMENT - 1;
+      return (_offset + mask) & ~mask;
+    }
+
+    /**
+     * Creates inverted bounds that any point grows.
+     *
+     * @return the bounds, minimum then maximum
+     */
+    private static float[] emptyBounds() {
+      return new float[] {
+        Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+        Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY,
+        Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY
+      };
+    }
+
+    /**
+     * Grows bounds around the positions of interleaved vertices.
+     *
+     * @param _bounds the bounds to grow
+     * @param _vertices the interleaved vertices, position first
+     * @param _length the number of floats to read
+     */
+    private static void grow(
+        final float[] _bounds,
+        final float[] _vertices,
+        final int _length) {
+      for (int vertex = 0; vertex < _length; vertex += MeshImporter.FLOATS) {
+        for (int axis = 0; axis < MeshImporter.AXES; axis++) {
+          _bounds[axis] = Math.min(_bounds[axis], _vertices[vertex + axis]);
+          _bounds[axis + MeshImporter.AXES] = Math.max(
+            _bounds[axis + MeshImporter.AXES], _vertices[vertex + axis]);
+        }
+      }
+    }
+
+    /**
+     * Grows bounds around other bounds.
+     *
+     * @param _bounds the bounds to grow
+     * @param _other the other bounds
+     */
+    private static void union(
+        final float[] _bounds,
+        final float[] _other) {
+      for (int axis = 0; axis < MeshImporter.AXES; axis++) {
+        _bounds[axis] = Math.min(_bounds[axis], _other[axis]);
+        _bounds[axis + MeshImporter.AXES] = Math.max(
+          _bounds[axis + MeshImporter.AXES],
+          _other[axis + MeshImporter.AXES]);
+      }
+    }
+
+    /**
+     * Writes bounds.
+     *
+     * @param _file the file image
+     * @param _offset the offset of the six floats
+     * @param _bounds the bounds
+     */
+    private static void putBounds(
+        final ByteBuffer _file,
+        final int _offset,
+        final float[] _bounds) {
+      for (int component = 0; component < _bounds.length; component++) {
+        _file.putFloat(_offset + (component * Float.BYTES),
+          _bounds[component]);
+      }
+    }
+
+    /**
+     * Triangle mesh copied from the scene.
+     */
+    private static final class Submesh {
+
+      /**
+       * Interleaved vertices; only the first {@link #vertexCount} are
+       * used once optimized.
+       */
+      private final float[] vertices;
+
+      /**
+       * Triangle indices, relative to the first vertex.
+       */
+      private final int[] indices;
+
+      /**
+       * Material index.
+       */
+      private final int material;
+
+      /**
+       * Number of vertices used.
+       */
+      private int vertexCount;
+
+      /**
+       * Indices of every level of detail, the first one being
+       * {@link #indices}.
+       */
+      private int[][] lods;
+
+      /**
+       * Relative error of every level of detail.
+       */
+      private float[] lodErrors;
+
+      /**
+       * Creates a submesh.
+       *
+       * @param _vertices the interleaved vertices
+       * @param _indices the triangle indices
+       * @param _material the material index
+       */
+      private Submesh(
+          final float[] _vertices,
+          final int[] _indices,
+          final int _material) {
+        this.vertices = _vertices;
+        this.indices = _indices;
+        this.material = _material;
+        this.vertexCount = _vertices.length / MeshImporter.FLOATS;
+        this.lods = new int[][] {_indices};
+        this.lodErrors = new float[1];
+      }
+
+    }
+
+    /**
+     * Task optimizing a range of submeshes.
+     */
+    private static final class OptimizeTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * All submeshes.
+       */
+      private final Submesh[] submeshes;
+
+      /**
+       * First submesh of the range.
+       */
+      private final int from;
+
+      /**
+       * End of the range, exclusive.
+       */
+      private final int to;
+
+      /**
+       * Overdraw threshold of the optimizer.
+       */
+      private final float overdrawThreshold;
+
+      /**
+       * Maximum number of levels of detail of a submesh.
+       */
+      private final int lodLevels;
+
+      /**
+       * Creates the task of a range.
+       *
+       * @param _submeshes all submeshes
+       * @param _from the first submesh
+       * @param _to the end of the range, exclusive
+       * @param _overdrawThreshold the overdraw threshold
+       * @param _lodLevels the maximum number of levels of detail
+       */
+      private OptimizeTask(
+          final Submesh[] _submeshes,
+          final int _from,
+          final int _to,
+          final float _overdrawThreshold,
+          final int _lodLevels) {
+        this.submeshes = _submeshes;
+        this.from = _from;
+        this.to = _to;
+        this.overdrawThreshold = _overdrawThreshold;
+        this.lodLevels = _lodLevels;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        if ((this.to - this.from) > 1) {
+          final int middle = (this.from + this.to) >>> 1;
+          ForkJoinTask.invokeAll(
+            new OptimizeTask(this.submeshes, this.from, middle,
+              this.overdrawThreshold, this.lodLevels),
+            new OptimizeTask(this.submeshes, middle, this.to,
+              this.overdrawThreshold, this.lodLevels));
+          return;
+        }
+        final Submesh submesh = this.submeshes[this.from];
+        final MeshOptimizer optimizer = new MeshOptimizer(
+          MeshOptimizer.DEFAULT_CACHE_SIZE, this.overdrawThreshold);
+        submesh.vertexCount = optimizer.optimize(
+          submesh.indices, submesh.vertices, MeshImporter.FLOATS);
+        if (this.lodLevels > 1) {
+          this.simplify(submesh, optimizer);
+        }
+      }
+
+      /**
+       * Builds the levels of detail of an optimized submesh.
+       *
+       * @param _submesh the submesh
+       * @param _optimizer the optimizer reordering the coarser levels
+       */
+      private void simplify(
+          final Submesh _submesh,
+          final MeshOptimizer _optimizer) {
+        final float[] positions
+          = new float[_submesh.vertexCount * MeshImporter.AXES];
+        for (int vertex = 0; vertex < _submesh.vertexCount; vertex++) {
+          System.arraycopy(_submesh.vertices, vertex * MeshImporter.FLOATS,
+            positions, vertex * MeshImporter.AXES, MeshImporter.AXES);
+        }
+        final LodChain chain = LodChain.build(new MeshSimplifier(),
+          positions, _submesh.indices, this.lodLevels,
+          MeshImporter.LOD_REDUCTION, MeshImporter.LOD_MAX_ERROR);
+        final int levelCount = chain.levelCount();
+        _submesh.lods = new int[levelCount][];
+        _submesh.lodErrors = new float[levelCount];
+        _submesh.lods[0] = _submesh.indices;
+        for (int level = 1; level < levelCount; level++) {
+          final int[] indices = chain.indices(level).clone();
+          _optimizer.optimizeVertexCache(indices, _submesh.vertexCount);
+          _submesh.lods[level] = indices;
+          _submesh.lodErrors[level] = chain.error(level);
+        }
+      }
+
+    }
+
+  }
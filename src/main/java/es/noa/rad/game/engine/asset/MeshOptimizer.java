@@ -0,0 +1,988 @@
+package es.noa.rad.game.engine.asset;
+
+import java.util.Arrays;
+
+import es.noa.rad.game.engine.render.RadixSort;
+
+  /**
+   * Import-time reordering of mesh triangles and vertices for the GPU.
+   *
+   * <p>Three passes, meant to run in this order:
+   * <ol>
+   *   <li>{@link #optimizeVertexCache(int[], int)}: reorders triangles
+   *       for post-transform vertex cache locality, greedily emitting the
+   *       triangle whose vertices score best, as described by Tom Forsyth
+   *       in "Linear-Speed Vertex Cache Optimisation". Vertices score by
+   *       their position in a simulated LRU cache and by the number of
+   *       triangles still using them.</li>
+   *   <li>{@link #optimizeOverdraw(int[], float[], int)}: splits the cache
+   *       ordered triangles into clusters at the points where the cache
+   *       starts over, and sorts the clusters so that those facing away
+   *       from the mesh center, which tend to occlude the rest, are drawn
+   *       first. The new order is kept only while the cache miss ratio
+   *       stays within the overdraw threshold of the cache order.</li>
+   *   <li>{@link #optimizeVertexFetch(int[], float[], int)}: renumbers the
+   *       vertices in order of first use, so that vertex fetches walk
+   *       memory linearly, and drops unused vertices.</li>
+   * </ol>
+   * {@link #optimize(int[], float[], int)} runs the three passes and
+   * records the ACMR (cache misses per triangle) and ATVR (cache misses
+   * per vertex, 1.0 being optimal) before and after, measured on a FIFO
+   * cache of the configured size as found in most GPUs.
+   *
+   * <p>Works on plain arrays, in place. Not thread-safe: every thread
+   * needs its own optimizer, whose scratch arrays are reused across
+   * meshes.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * MeshOptimizer optimizer = new MeshOptimizer();
+   * int vertexCount = optimizer.optimize(indices, vertices, 8);
+   * float gain = optimizer.acmrBefore() - optimizer.acmrAfter();
+   * }</pre>
+   *
+   * @see MeshImporter
+   */
+  public final class MeshOptimizer {
+
+    /**
+     * Default size of the FIFO cache the results are measured on.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 16;
+
+    /**
+     * Default overdraw threshold: the cluster order may cost up to 5 %
+     * more cache misses than the cache order.
+     */
+    public static final float DEFAULT_OVERDRAW_THRESHOLD = 1.05F;
+
+    /**
+     * Size of the LRU cache simulated by the cache optimizer.
+     */
+    private static final int LRU_CACHE_SIZE = 32;
+
+    /**
+     * Number of vertices of a triangle.
+     */
+    private static final int TRIANGLE = 3;
+
+    /**
+     * Score of the vertices of the last emitted triangle, lowered so that
+     * strips do not keep the same vertices alive.
+     */
+    private static final float LAST_TRIANGLE_SCORE = 0.75F;
+
+    /**
+     * Power of the decay of the cache score with the cache position.
+     */
+    private static final double CACHE_DECAY_POWER = 1.5;
+
+    /**
+     * Scale of the boost of vertices used by few remaining triangles.
+     */
+    private static final double VALENCE_BOOST_SCALE = 2.0;
+
+    /**
+     * Power of the boost of vertices used by few remaining triangles.
+     */
+    private static final double VALENCE_BOOST_POWER = -0.5;
+
+    /**
+     * Number of precomputed valence scores.
+     */
+    private static final int VALENCE_SCORES = 64;
+
+    /**
+     * Score of a vertex used by no remaining triangle.
+     */
+    private static final float UNUSED_SCORE = -1.0F;
+
+    /**
+     * Bits of the sign-flipped 32-bit sort key.
+     */
+    private static final long KEY_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Cache score of every LRU position.
+     */
+    private static final float[] CACHE_SCORES;
+
+    /**
+     * Valence boost of every small remaining triangle count.
+     */
+    private static final float[] VALENCE_SCORES_TABLE;
+
+    static {
+      CACHE_SCORES = new float[MeshOptimizer.LRU_CACHE_SIZE];
+      for (int position = 0; position < MeshOptimizer.LRU_CACHE_SIZE;
+          position++) {
+        if (position < MeshOptimizer.TRIANGLE) {
+          MeshOptimizer.CACHE_SCORES[position]
+            = MeshOptimizer.LAST_TRIANGLE_SCORE;
+        } else {
+          final double scale = 1.0 / (MeshOptimizer.LRU_CACHE_SIZE
+            - MeshOptimizer.TRIANGLE);
+          MeshOptimizer.CACHE_SCORES[position] = (float) Math.pow(
+            1.0 - ((position - MeshOptimizer.TRIANGLE) * scale),
+            MeshOptimizer.CACHE_DECAY_POWER);
+        }
+      }
+      VALENCE_SCORES_TABLE = new float[MeshOptimizer.VALENCE_SCORES];
+      for (int valence = 1; valence < MeshOptimizer.VALENCE_SCORES;
+          valence++) {
+        MeshOptimizer.VALENCE_SCORES_TABLE[valence]
+          = MeshOptimizer.valenceBoost(valence);
+      }
+    }
+
+    /**
+     * Size of the FIFO cache the results are measured on.
+     */
+    private final int cacheSize;
+
+    /**
+     * Tolerated ratio between the cache misses of the cluster order and
+     * of the cache order, zero to skip the overdraw pass.
+     */
+    private final float overdrawThreshold;
+
+    /**
+     * Start of the triangle list of every vertex, plus one end offset.
+     */
+    private int[] adjacencyOffsets;
+
+    /**
+     * Triangles using every vertex; the first {@link #valences} entries
+     * of every list are the triangles not yet emitted.
+     */
+    private int[] adjacency;
+
+    /**
+     * Number of triangles not yet emitted using every vertex.
+     */
+    private int[] valences;
+
+    /**
+     * LRU position of every vertex, -1 outside the cache; also the FIFO
+     * time stamps of the cache simulation and the vertex remap.
+     */
+    private int[] positions;
+
+    /**
+     * Score of every vertex.
+     */
+    private float[] vertexScores;
+
+    /**
+     * Score of every triangle, -1 once emitted.
+     */
+    private float[] triangleScores;
+
+    /**
+     * Reordered indices.
+     */
+    private int[] output;
+
+    /**
+     * Reordered vertices.
+     */
+    private float[] vertexOutput;
+
+    /**
+     * Simulated LRU cache.
+     */
+    private final int[] cache;
+
+    /**
+     * Next state of the simulated LRU cache.
+     */
+    private final int[] nextCache;
+
+    /**
+     * First triangle of every cluster.
+     */
+    private int[] clusterStarts;
+
+    /**
+     * Sort key of every cluster.
+     */
+    private long[] clusterKeys;
+
+    /**
+     * Cluster indices being sorted.
+     */
+    private int[] clusterOrder;
+
+    /**
+     * Radix sort scratch keys.
+     */
+    private long[] scratchKeys;
+
+    /**
+     * Radix sort scratch values.
+     */
+    private int[] scratchValues;
+
+    /**
+     * Radix sort histogram.
+     */
+    private final int[] histogram;
+
+    /**
+     * ACMR before the last {@link #optimize(int[], float[], int)}.
+     */
+    private float acmrBefore;
+
+    /**
+     * ACMR after the last {@link #optimize(int[], float[], int)}.
+     */
+    private float acmrAfter;
+
+    /**
+     * ATVR before the last {@link #optimize(int[], float[], int)}.
+     */
+    private float atvrBefore;
+
+    /**
+     * ATVR after the last {@link #optimize(int[], float[], int)}.
+     */
+    private float atvrAfter;
+
+    /**
+     * Creates an optimizer measuring on a {@link #DEFAULT_CACHE_SIZE}
+     * vertex cache with the {@link #DEFAULT_OVERDRAW_THRESHOLD}.
+     */
+    public MeshOptimizer() {
+      this(
+        MeshOptimizer.DEFAULT_CACHE_SIZE,
+        MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD
+      );
+    }
+
+    /**
+     * Creates an optimizer.
+     *
+     * @param _cacheSize the size of the FIFO cache the results are
+     *     measured on, and the overdraw clusters are split for
+     * @param _overdrawThreshold the tolerated ratio between the cache
+     *     misses of the overdraw order and of the cache order, at least
+     *     one, or zero to skip the overdraw pass
+     * @throws IllegalArgumentException if the cache size is not positive
+     *     or the threshold is out of range
+     */
+    public MeshOptimizer(
+        final int _cacheSize,
+        final float _overdrawThreshold) {
+      if (_cacheSize <= 0) {
+        throw new IllegalArgumentException(
+          "Cache size must be positive: " + _cacheSize);
+      }
+      if (!((_overdrawThreshold == 0.0F) || (_overdrawThreshold >= 1.0F))) {
+        throw new IllegalArgumentException(
+          "Overdraw threshold must be zero or at least one: "
+            + _overdrawThreshold);
+      }
+      this.cacheSize = _cacheSize;
+      this.overdrawThreshold = _overdrawThreshold;
+      this.adjacencyOffsets = new int[1];
+      this.adjacency = new int[0];
+      this.valences = new int[0];
+      this.positions = new int[0];
+      this.vertexScores = new float[0];
+      this.triangleScores = new float[0];
+      this.output = new int[0];
+      this.vertexOutput = new float[0];
+      this.cache
+        = new int[MeshOptimizer.LRU_CACHE_SIZE + MeshOptimizer.TRIANGLE];
+      this.nextCache
+        = new int[MeshOptimizer.LRU_CACHE_SIZE + MeshOptimizer.TRIANGLE];
+      this.clusterStarts = new int[0];
+      this.clusterKeys = new long[0];
+      this.clusterOrder = new int[0];
+      this.scratchKeys = new long[0];
+      this.scratchValues = new int[0];
+      this.histogram = new int[RadixSort.histogramSize()];
+    }
+
+    /**
+     * Runs the cache, overdraw and fetch passes and measures the result.
+     *
+     * @param _indices the triangle indices, reordered and renumbered
+     * @param _vertices the interleaved vertices, position first,
+     *     reordered
+     * @param _stride the number of floats of a vertex
+     * @return the number of vertices used, packed at the start of
+     *     {@code _vertices}
+     */
+    public int optimize(
+        final int[] _indices,
+        final float[] _vertices,
+        final int _stride) {
+      final int vertexCount = _vertices.length / _stride;
+      this.acmrBefore = this.acmr(_indices, vertexCount);
+      this.atvrBefore = this.atvr(_indices, vertexCount);
+      this.optimizeVertexCache(_indices, vertexCount);
+      if (this.overdrawThreshold > 0.0F) {
+        this.optimizeOverdraw(_indices, _vertices, _stride);
+      }
+      final int used = this.optimizeVertexFetch(_indices, _vertices, _stride);
+      this.acmrAfter = this.acmr(_indices, used);
+      this.atvrAfter = this.atvr(_indices, used);
+      return used;
+    }
+
+    /**
+     * Reorders triangles for vertex cache locality.
+     *
+     * @param _indices the triangle indices, reordered in place
+     * @param _vertexCount the number of vertices
+     */
+    public void optimizeVertexCache(
+        final int[] _indices,
+        final int _vertexCount) {
+      final int triangleCount = _indices.length / MeshOptimizer.TRIANGLE;
+      if (triangleCount == 0) {
+        return;
+      }
+      this.buildAdjacency(_indices, _vertexCount);
+      for (int vertex = 0; vertex < _vertexCount; vertex++) {
+        this.positions[vertex] = -1;
+        this.vertexScores[vertex]
+          = MeshOptimizer.score(-1, this.valences[vertex]);
+      }
+      int best = 0;
+      for (int triangle = 0; triangle < triangleCount; triangle++) {
+        final int first = triangle * MeshOptimizer.TRIANGLE;
+        this.triangleScores[triangle] = this.vertexScores[_indices[first]]
+          + this.vertexScores[_indices[first + 1]]
+          + this.vertexScores[_indices[first + 2]];
+        if (this.triangleScores[triangle] > this.triangleScores[best]) {
+          best = triangle;
+        }
+      }
+
+      int cacheCount = 0;
+      int cursor = 0;
+      for (int emitted = 0; emitted < triangleCount; emitted++) {
+        if (best < 0) {
+          /* Nothing in the cache: resume with the next triangle left. */
+          while (this.triangleScores[cursor] < 0.0F) {
+            cursor++;
+          }
+          best = cursor;
+        }
+        final int first = best * MeshOptimizer.TRIANGLE;
+        final int a = _indices[first];
+        final int b = _indices[first + 1];
+        final int c = _indices[first + 2];
+        this.output[emitted * MeshOptimizer.TRIANGLE] = a;
+        this.output[(emitted * MeshOptimizer.TRIANGLE) + 1] = b;
+        this.output[(emitted * MeshOptimizer.TRIANGLE) + 2] = c;
+        this.triangleScores[best] = MeshOptimizer.UNUSED_SCORE;
+        this.detach(a, best);
+        this.detach(b, best);
+        this.detach(c, best);
+
+        /* Move the triangle vertices to the front of the LRU cache. */
+        int nextCount = 0;
+        nextCount = this.pushFront(a, nextCount);
+        nextCount = this.pushFront(b, nextCount);
+        nextCount = this.pushFront(c, nextCount);
+        for (int slot = 0; slot < cacheCount; slot++) {
+          final int vertex = this.cache[slot];
+          if ((vertex != a) && (vertex != b) && (vertex != c)) {
+            this.nextCache[nextCount++] = vertex;
+          }
+        }
+        for (int slot = 0; slot < nextCount; slot++) {
+          final int vertex = this.nextCache[slot];
+          final int position
+            = (slot < MeshOptimizer.LRU_CACHE_SIZE) ? slot : -1;
+          this.positions[vertex] = position;
+          this.rescore(vertex);
+          if (position >= 0) {
+            this.cache[slot] = vertex;
+          }
+        }
+        cacheCount = Math.min(nextCount, MeshOptimizer.LRU_CACHE_SIZE);
+
+        best = this.bestCached(cacheCount);
+      }
+      System.arraycopy(this.output, 0, _indices, 0,
+        triangleCount * MeshOptimizer.TRIANGLE);
+    }
+
+    /**
+     * Reorders cache-ordered triangles to reduce overdraw.
+     *
+     * <p>Does nothing if the configured threshold is zero.
+     *
+     * @param _indices the triangle indices, in vertex cache order,
+     *     reordered in place
+     * @param _vertices the interleaved vertices, position first
+     * @param _stride the number of floats of a vertex
+     */
+    public void optimizeOverdraw(
+        final int[] _indices,
+        final float[] _vertices,
+        final int _stride) {
+      final int triangleCount = _indices.length / MeshOptimizer.TRIANGLE;
+      if ((this.overdrawThreshold == 0.0F) || (triangleCount == 0)) {
+        return;
+      }
+      final int vertexCount = _vertices.length / _stride;
+      final int clusterCount = this.splitClusters(_indices, vertexCount);
+      if (clusterCount < 2) {
+        return;
+      }
+
+      /* Area weighted centroid of the mesh. */
+      double meshX = 0.0;
+      double meshY = 0.0;
+      double meshZ = 0.0;
+      double meshArea = 0.0;
+      final float[] triangle = new float[MeshOptimizer.TRIANGLE
+        + MeshOptimizer.TRIANGLE + 1];
+      for (int index = 0; index < triangleCount; index++) {
+        MeshOptimizer.triangle(_indices, index, _vertices, _stride, triangle);
+        final double area = MeshOptimizer.length(triangle);
+        meshX += triangle[MeshOptimizer.TRIANGLE] * area;
+        meshY += triangle[MeshOptimizer.TRIANGLE + 1] * area;
+        meshZ += triangle[MeshOptimizer.TRIANGLE + 2] * area;
+        meshArea += area;
+      }
+      if (meshArea > 0.0) {
+        meshX /= meshArea;
+        meshY /= meshArea;
+        meshZ /= meshArea;
+      }
+
+      for (int cluster = 0; cluster < clusterCount; cluster++) {
+        double normalX = 0.0;
+        double normalY = 0.0;
+        double normalZ = 0.0;
+        double centerX = 0.0;
+        double centerY = 0.0;
+        double centerZ = 0.0;
+        double area = 0.0;
+        for (int index = this.clusterStarts[cluster];
+            index < this.clusterStarts[cluster + 1]; index++) {
+          MeshOptimizer.triangle(
+            _indices, index, _vertices, _stride, triangle);
+          final double weight = MeshOptimizer.length(triangle);
+          normalX += triangle[0];
+          normalY += triangle[1];
+          normalZ += triangle[2];
+          centerX += triangle[MeshOptimizer.TRIANGLE] * weight;
+          centerY += triangle[MeshOptimizer.TRIANGLE + 1] * weight;
+          centerZ += triangle[MeshOptimizer.TRIANGLE + 2] * weight;
+          area += weight;
+        }
+        float key = 0.0F;
+        final double normalLength = Math.sqrt((normalX * normalX)
+          + (normalY * normalY) + (normalZ * normalZ));
+        if ((area > 0.0) && (normalLength > 0.0)) {
+          key = (float) ((((centerX / area) - meshX) * normalX
+            + ((centerY / area) - meshY) * normalY
+            + ((centerZ / area) - meshZ) * normalZ) / normalLength);
+        }
+        /* Descending order: the most outward facing clusters first. */
+        this.clusterKeys[cluster] = MeshOptimizer.KEY_MASK
+          - MeshOptimizer.sortable(key);
+        this.clusterOrder[cluster] = cluster;
+      }
+      RadixSort.sort(this.clusterKeys, this.clusterOrder, this.scratchKeys,
+        this.scratchValues, this.histogram, clusterCount);
+
+      int written = 0;
+      for (int rank = 0; rank < clusterCount; rank++) {
+        final int cluster = this.clusterOrder[rank];
+        final int start = this.clusterStarts[cluster] * MeshOptimizer.TRIANGLE;
+        final int length = (this.clusterStarts[cluster + 1]
+          * MeshOptimizer.TRIANGLE) - start;
+        System.arraycopy(_indices, start, this.output, written, length);
+        written += length;
+      }
+      final int misses = this.cacheMisses(this.output, written, vertexCount);
+      final int cacheOrderMisses
+        = this.cacheMisses(_indices, written, vertexCount);
+      if (misses <= (cacheOrderMisses * this.overdrawThreshold)) {
+        System.arraycopy(this.output, 0, _indices, 0, written);
+      }
+    }
+
+    /**
+     * Renumbers vertices in order of first use and packs them.
+     *
+     * @param _indices the triangle indices, renumbered in place
+     * @param _vertices the interleaved vertices, reordered in place
+     * @param _stride the number of floats of a vertex
+     * @return the number of vertices used, packed at the start of
+     *     {@code _vertices}; the rest of the array is left unspecified
+     */
+    public int optimizeVertexFetch(
+        final int[] _indices,
+        final float[] _vertices,
+        final int _stride) {
+      final int vertexCount = _vertices.length / _stride;
+      this.ensureVertices(vertexCount);
+      if (this.vertexOutput.length < _vertices.length) {
+        this.vertexOutput = new float[_vertices.length];
+      }
+      Arrays.fill(this.positions, 0, vertexCount, -1);
+      int used = 0;
+      for (int index = 0; index < _indices.length; index++) {
+        final int vertex = _indices[index];
+        if (this.positions[vertex] < 0) {
+          this.positions[vertex] = used;
+          System.arraycopy(_vertices, vertex * _stride,
+            this.vertexOutput, used * _stride, _stride);
+          used++;
+        }
+        _indices[index] = this.positions[vertex];
+      }
+      System.arraycopy(this.vertexOutput, 0, _vertices, 0, used * _stride);
+      return used;
+    }
+
+    /**
+     * Computes the average cache miss ratio: cache misses per triangle.
+     *
+     * @param _indices the triangle indices
+     * @param _vertexCount the number of vertices
+     * @return the ACMR, between 0.5 and 3 for real meshes
+     */
+    public float acmr(
+        final int[] _indices,
+        final int _vertexCount) {
+      final int triangleCount = _indices.length / MeshOptimizer.TRIANGLE;
+      if (triangleCount == 0) {
+        return 0.0F;
+      }
+      return ((float) this.cacheMisses(
+        _indices, _indices.length, _vertexCount)) / triangleCount;
+    }
+
+    /**
+     * Computes the average transformed vertex ratio: cache misses per
+     * vertex.
+     *
+     * @param _indices the triangle indices
+     * @param _vertexCount the number of vertices
+     * @return the ATVR, 1.0 when every vertex is transformed once
+     */
+    public float atvr(
+        final int[] _indices,
+        final int _vertexCount) {
+      if (_vertexCount == 0) {
+        return 0.0F;
+      }
+      return ((float) this.cacheMisses(
+        _indices, _indices.length, _vertexCount)) / _vertexCount;
+    }
+
+    /**
+     * Gets the ACMR before the last {@link #optimize(int[], float[], int)}.
+     *
+     * @return the ACMR
+     */
+    public float acmrBefore() {
+      return this.acmrBefore;
+    }
+
+    /**
+     * Gets the ACMR after the last {@link #optimize(int[], float[], int)}.
+     *
+     * @return the ACMR
+     */
+    public float acmrAfter() {
+      return this.acmrAfter;
+    }
+
+    /**
+     * Gets the ATVR before the last {@link #optimize(int[], float[], int)}.
+     *
+     * @return the ATVR
+     */
+    public float atvrBefore() {
+      return this.atvrBefore;
+    }
+
+    /**
+     * Gets the ATVR after the last {@link #optimize(int[], float[], int)}.
+     *
+     * @return the ATVR
+     */
+    public float atvrAfter() {
+      return this.atvrAfter;
+    }
+
+    /**
+     * Counts the misses of the FIFO cache over an index sequence.
+     *
+     * @param _indices the indices
+     * @param _count the number of indices to read
+     * @param _vertexCount the number of vertices
+     * @return the number of misses
+     */
+    private int cacheMisses(
+        final int[] _indices,
+        final int _count,
+        final int _vertexCount) {
+      this.ensureVertices(_vertexCount);
+      /* A vertex is cached while fewer than cacheSize misses followed it. */
+      Arrays.fill(this.positions, 0, _vertexCount, -this.cacheSize - 1);
+      int misses = 0;
+      for (int index = 0; index < _count; index++) {
+        final int vertex = _indices[index];
+        if ((misses - this.positions[vertex]) > this.cacheSize) {
+          this.positions[vertex] = misses;
+          misses++;
+        }
+      }
+      return misses;
+    }
+
+    /**
+     * Splits cache-ordered triangles into clusters.
+     *
+     * <p>Hard boundaries fall where every vertex of a triangle misses the
+     * FIFO cache, so that moving the cluster costs nothing. Every hard
+     * cluster is then cut further at soft boundaries, as soon as the miss
+     * ratio of the current cluster, starting with an empty cache, falls
+     * to the overdraw threshold times the miss ratio of the hard cluster.
+     *
+     * @param _indices the triangle indices
+     * @param _vertexCount the number of vertices
+     * @return the number of clusters, whose bounds are in
+     *     {@link #clusterStarts}
+     */
+    private int splitClusters(
+        final int[] _indices,
+        final int _vertexCount) {
+      final int triangleCount = _indices.length / MeshOptimizer.TRIANGLE;
+      this.ensureVertices(_vertexCount);
+      this.ensureClusters(triangleCount);
+      Arrays.fill(this.positions, 0, _vertexCount, -this.cacheSize - 1);
+      int time = 0;
+      int hardCount = 0;
+      for (int triangle = 0; triangle < triangleCount; triangle++) {
+        final int misses = this.simulate(_indices, triangle, time);
+        time += misses;
+        if ((triangle == 0) || (misses == MeshOptimizer.TRIANGLE)) {
+          this.scratchValues[hardCount++] = triangle;
+        }
+      }
+      this.scratchValues[hardCount] = triangleCount;
+
+      int clusterCount = 0;
+      for (int hard = 0; hard < hardCount; hard++) {
+        final int start = this.scratchValues[hard];
+        final int end = this.scratchValues[hard + 1];
+        /* An empty cache: every stamp is older than the cache size. */
+        time += this.cacheSize + 1;
+        int hardMisses = 0;
+        for (int triangle = start; triangle < end; triangle++) {
+          final int misses = this.simulate(_indices, triangle, time);
+          time += misses;
+          hardMisses += misses;
+        }
+        final float target = (this.overdrawThreshold * hardMisses)
+          / (end - start);
+
+        this.clusterStarts[clusterCount++] = start;
+        time += this.cacheSize + 1;
+        int clusterStart = start;
+        int clusterMisses = 0;
+        for (int triangle = start; triangle < (end - 1); triangle++) {
+          final int misses = this.simulate(_indices, triangle, time);
+          time += misses;
+          clusterMisses += misses;
+          if (clusterMisses <= (target * (triangle - clusterStart + 1))) {
+            this.clusterStarts[clusterCount++] = triangle + 1;
+            time += this.cacheSize + 1;
+            clusterStart = triangle + 1;
+            clusterMisses = 0;
+          }
+        }
+      }
+      this.clusterStarts[clusterCount] = triangleCount;
+      return clusterCount;
+    }
+
+    /**
+     * Feeds the vertices of a triangle to the simulated FIFO cache.
+     *
+     * @param _indices the triangle indices
+     * @param _triangle the triangle
+     * @param _time the number of vertices pushed into the cache so far
+     * @return the number of misses
+     */
+    private int simulate(
+        final int[] _indices,
+        final int _triangle,
+        final int _time) {
+      int misses = 0;
+      for (int corner = 0; corner < MeshOptimizer.TRIANGLE; corner++) {
+        final int vertex
+          = _indices[(_triangle * MeshOptimizer.TRIANGLE) + corner];
+        if ((_time + misses - this.positions[vertex]) > this.cacheSize) {
+          this.positions[vertex] = _time + misses;
+          misses++;
+        }
+      }
+      return misses;
+    }
+
+    /**
+     * Builds the triangle lists of the vertices.
+     *
+     * @param _indices the triangle indices
+     * @param _vertexCount the number of vertices
+     */
+    private void buildAdjacency(
+        final int[] _indices,
+        final int _vertexCount) {
+      this.ensureVertices(_vertexCount);
+      final int triangleCount = _indices.length / MeshOptimizer.TRIANGLE;
+      if (this.adjacency.length < _indices.length) {
+        this.adjacency = new int[_indices.length];
+        this.output = new int[_indices.length];
+      }
+      if (this.triangleScores.length < triangleCount) {
+        this.triangleScores = new float[triangleCount];
+      }
+      Arrays.fill(this.valences, 0, _vertexCount, 0);
+      for (int index = 0; index < _indices.length; index++) {
+        this.valences[_indices[index]]++;
+      }
+      this.adjacencyOffsets[0] = 0;
+      for (int vertex = 0; vertex < _vertexCount; vertex++) {
+        this.adjacencyOffsets[vertex + 1]
+          = this.adjacencyOffsets[vertex] + this.valences[vertex];
+        this.positions[vertex] = this.adjacencyOffsets[vertex];
+      }
+      for (int index = 0; index < _indices.length; index++) {
+        this.adjacency[this.positions[_indices[index]]++]
+          = index / MeshOptimizer.TRIANGLE;
+      }
+    }
+
+    /**
+     * Removes an emitted triangle from the remaining triangles of a
+     * vertex.
+     *
+     * @param _vertex the vertex
+     * @param _triangle the emitted triangle
+     */
+    private void detach(
+        final int _vertex,
+        final int _triangle) {
+      final int start = this.adjacencyOffsets[_vertex];
+      final int end = start + this.valences[_vertex];
+      for (int slot = start; slot < end; slot++) {
+        if (this.adjacency[slot] == _triangle) {
+          this.adjacency[slot] = this.adjacency[end - 1];
+          this.adjacency[end - 1] = _triangle;
+          this.valences[_vertex]--;
+          return;
+        }
+      }
+    }
+
+    /**
+     * Adds a vertex of the emitted triangle to the front of the next
+     * cache, once.
+     *
+     * @param _vertex the vertex
+     * @param _count the number of vertices already in the next cache
+     * @return the new number of vertices in the next cache
+     */
+    private int pushFront(
+        final int _vertex,
+        final int _count) {
+      for (int slot = 0; slot < _count; slot++) {
+        if (this.nextCache[slot] == _vertex) {
+          return _count;
+        }
+      }
+      this.nextCache[_count] = _vertex;
+      return _count + 1;
+    }
+
+    /**
+     * Updates the score of a vertex and of its remaining triangles.
+     *
+     * @param _vertex the vertex
+     */
+    private void rescore(
+        final int _vertex) {
+      final float score = MeshOptimizer.score(
+        this.positions[_vertex], this.valences[_vertex]);
+      final float delta = score - this.vertexScores[_vertex];
+      this.vertexScores[_vertex] = score;
+      final int start = this.adjacencyOffsets[_vertex];
+      final int end = start + this.valences[_vertex];
+      for (int slot = start; slot < end; slot++) {
+        this.triangleScores[this.adjacency[slot]] += delta;
+      }
+    }
+
+    /**
+     * Finds the best remaining triangle using a cached vertex.
+     *
+     * @param _cacheCount the number of cached vertices
+     * @return the triangle, or -1 if no cached vertex has any left
+     */
+    private int bestCached(
+        final int _cacheCount) {
+      int best = -1;
+      float bestScore = MeshOptimizer.UNUSED_SCORE;
+      for (int slot = 0; slot < _cacheCount; slot++) {
+        final int vertex = this.cache[slot];
+        final int start = this.adjacencyOffsets[vertex];
+        final int end = start + this.valences[vertex];
+        for (int entry = start; entry < end; entry++) {
+          final int triangle = this.adjacency[entry];
+          if (this.triangleScores[triangle] > bestScore) {
+            bestScore = this.triangleScores[triangle];
+            best = triangle;
+          }
+        }
+      }
+      return best;
+    }
+
+    /**
+     * Grows the per-vertex scratch arrays.
+     *
+     * @param _vertexCount the number of vertices
+     */
+    private void ensureVertices(
+        final int _vertexCount) {
+      if (this.positions.length < _vertexCount) {
+        this.positions = new int[_vertexCount];
+        this.valences = new int[_vertexCount];
+        this.vertexScores = new float[_vertexCount];
+        this.adjacencyOffsets = new int[_vertexCount + 1];
+      }
+    }
+
+    /**
+     * Grows the per-cluster scratch arrays.
+     *
+     * @param _triangleCount the maximum number of clusters
+     */
+    private void ensureClusters(
+        final int _triangleCount) {
+      if (this.clusterOrder.length < _triangleCount) {
+        this.clusterStarts = new int[_triangleCount + 1];
+        this.clusterKeys = new long[_triangleCount];
+        this.clusterOrder = new int[_triangleCount];
+        this.scratchKeys = new long[_triangleCount];
+        this.scratchValues = new int[_triangleCount + 1];
+      }
+      if (this.output.length < (_triangleCount * MeshOptimizer.TRIANGLE)) {
+        this.output = new int[_triangleCount * MeshOptimizer.TRIANGLE];
+      }
+    }
+
+    /**
+     * Computes the score of a vertex.
+     *
+     * @param _position the LRU position, -1 outside the cache
+     * @param _valence the number of remaining triangles using the vertex
+     * @return the score
+     */
+    private static float score(
+        final int _position,
+        final int _valence) {
+      if (_valence == 0) {
+        return MeshOptimizer.UNUSED_SCORE;
+      }
+      float score = 0.0F;
+      if (_position >= 0) {
+        score = MeshOptimizer.CACHE_SCORES[_position];
+      }
+      if (_valence < MeshOptimizer.VALENCE_SCORES) {
+        return score + MeshOptimizer.VALENCE_SCORES_TABLE[_valence];
+      }
+      return score + MeshOptimizer.valenceBoost(_valence);
+    }
+
+    /**
+     * Computes the boost of a vertex used by few remaining triangles.
+     *
+     * @param _valence the number of remaining triangles
+     * @return the boost
+     */
+    private static float valenceBoost(
+        final int _valence) {
+      return (float) (MeshOptimizer.VALENCE_BOOST_SCALE
+        * Math.pow(_valence, MeshOptimizer.VALENCE_BOOST_POWER));
+    }
+
+    /**
+     * Reads the doubled-area normal and the centroid of a triangle.
+     *
+     * @param _indices the triangle indices
+     * @param _triangle the triangle
+     * @param _vertices the interleaved vertices, position first
+     * @param _stride the number of floats of a vertex
+     * @param _dest will hold the normal then the centroid
+     */
+    private static void triangle(
+        final int[] _indices,
+        final int _triangle,
+        final float[] _vertices,
+        final int _stride,
+        final float[] _dest) {
+      final int first = _triangle * MeshOptimizer.TRIANGLE;
+      final int a = _indices[first] * _stride;
+      final int b = _indices[first + 1] * _stride;
+      final int c = _indices[first + 2] * _stride;
+      final float abX = _vertices[b] - _vertices[a];
+      final float abY = _vertices[b + 1] - _vertices[a + 1];
+      final float abZ = _vertices[b + 2] - _vertices[a + 2];
+      final float acX = _vertices[c] - _vertices[a];
+      final float acY = _vertices[c + 1] - _vertices[a + 1];
+      final float acZ = _vertices[c + 2] - _vertices[a + 2];
+      _dest[0] = (abY * acZ) - (abZ * acY);
+      _dest[1] = (abZ * acX) - (abX * acZ);
+      _dest[2] = (abX * acY) - (abY * acX);
+      final float third = 1.0F / MeshOptimizer.TRIANGLE;
+      _dest[MeshOptimizer.TRIANGLE]
+        = (_vertices[a] + _vertices[b] + _vertices[c]) * third;
+      _dest[MeshOptimizer.TRIANGLE + 1]
+        = (_vertices[a + 1] + _vertices[b + 1] + _vertices[c + 1]) * third;
+      _dest[MeshOptimizer.TRIANGLE + 2]
+        = (_vertices[a + 2] + _vertices[b + 2] + _vertices[c + 2]) * third;
+    }
+
+    /**
+     * Computes the length of the normal stored by
+     * {@link #triangle(int[], int, float[], int, float[])}.
+     *
+     * @param _triangle the normal then the centroid
+     * @return twice the triangle area
+     */
+    private static double length(
+        final float[] _triangle) {
+      return Math.sqrt((_triangle[0] * _triangle[0])
+        + (_triangle[1] * _triangle[1]) + (_triangle[2] * _triangle[2]));
+    }
+
+    /**
+     * Maps a float to an unsigned 32-bit key of the same order.
+     *
+     * @param _value the value
+     * @return the key
+     */
+    private static long sortable(
+        final float _value) {
+      final int bits = Float.floatToIntBits(_value);
+      final int ordered = bits ^ ((bits >> (Integer.SIZE - 1)) >>> 1);
+      return (ordered ^ Integer.MIN_VALUE) & MeshOptimizer.KEY_MASK;
+    }
+
+  }
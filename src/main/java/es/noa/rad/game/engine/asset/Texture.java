@@ -0,0 +1,232 @@
+package es.noa.rad.game.engine.asset;
+
+import java.nio.file.Path;
+
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Decoded RGBA8 texture with its mip chain in off-heap memory.
+   *
+   * <p>All levels are stored back to back in a single block, level 0
+   * first, each level tightly packed with {@link #CHANNELS} bytes per
+   * pixel. A texture whose loading failed has no pixels and carries the
+   * reason in {@link #error()}.
+   *
+   * <p>The pixel memory is owned by whoever received the texture from the
+   * {@link TextureLoader}, who must {@link #close()} it once the pixels
+   * have been uploaded or are no longer needed.
+   *
+   * @see TextureLoader
+   */
+  public final class Texture implements Asset {
+
+    /**
+     * Number of bytes per pixel (RGBA).
+     */
+    public static final int CHANNELS = 4;
+
+    /**
+     * File the texture was loaded from.
+     */
+    private final Path path;
+
+    /**
+     * Width of level 0 in pixels.
+     */
+    private final int width;
+
+    /**
+     * Height of level 0 in pixels.
+     */
+    private final int height;
+
+    /**
+     * Offset of every level inside the pixel block.
+     */
+    private final long[] mipOffsets;
+
+    /**
+     * Size in bytes of the pixel block.
+     */
+    private final long byteSize;
+
+    /**
+     * Reason of the failure, null on success.
+     */
+    private final String error;
+
+    /**
+     * Address of the pixel block, NULL once closed or on failure.
+     */
+    private long pixels;
+
+    /**
+     * Creates a decoded texture.
+     *
+     * @param _path the file the texture was loaded from
+     * @param _width the width of level 0
+     * @param _height the height of level 0
+     * @param _mipOffsets the offset of every level
+     * @param _pixels the address of the pixel block, owned by the texture
+     * @param _byteSize the size of the pixel block
+     */
+    Texture(
+        final Path _path,
+        final int _width,
+        final int _height,
+        final long[] _mipOffsets,
+        final long _pixels,
+        final long _byteSize) {
+      this.path = _path;
+      this.width = _width;
+      this.height = _height;
+      this.mipOffsets = _mipOffsets;
+      this.pixels = _pixels;
+      this.byteSize = _byteSize;
+      this.error = null;
+    }
+
+    /**
+     * Creates a failed texture.
+     *
+     * @param _path the file the texture was loaded from
+     * @param _error the reason of the failure
+     */
+    Texture(
+        final Path _path,
+        final String _error) {
+      this.path = _path;
+      this.width = 0;
+      this.height = 0;
+      this.mipOffsets = new long[0];
+      this.pixels = MemoryUtil.NULL;
+      this.byteSize = 0L;
+      this.error = _error;
+    }
+
+    /**
+     * Gets the file the texture was loaded from.
+     *
+     * @return the path
+     */
+    public Path path() {
+      return this.path;
+    }
+
+    /**
+     * Checks whether the texture was decoded.
+     *
+     * @return {@code true} on success
+     */
+    public boolean loaded() {
+      return this.error == null;
+    }
+
+    /**
+     * Gets the reason the texture could not be loaded.
+     *
+     * @return the reason, or null on success
+     */
+    public String error() {
+      return this.error;
+    }
+
+    /**
+     * Gets the width of level 0.
+     *
+     * @return the width in pixels
+     */
+    public int width() {
+      return this.width;
+    }
+
+    /**
+     * Gets the height of level 0.
+     *
+     * @return the height in pixels
+     */
+    public int height() {
+      return this.height;
+    }
+
+    /**
+     * Gets the number of levels.
+     *
+     * @return the mip count, zero on failure
+     */
+    public int mipCount() {
+      return this.mipOffsets.length;
+    }
+
+    /**
+     * Gets the width of a level.
+     *
+     * @param _level the level
+     * @return the width in pixels
+     */
+    public int mipWidth(
+        final int _level) {
+      return Math.max(1, this.width >> _level);
+    }
+
+    /**
+     * Gets the height of a level.
+     *
+     * @param _level the level
+     * @return the height in pixels
+     */
+    public int mipHeight(
+        final int _level) {
+      return Math.max(1, this.height >> _level);
+    }
+
+    /**
+     * Gets the address of the pixels of a level.
+     *
+     * @param _level the level
+     * @return the address
+     * @throws IllegalStateException if the texture is closed or failed
+     */
+    public long mipAddress(
+        final int _level) {
+      if (this.pixels == MemoryUtil.NULL) {
+        throw new IllegalStateException("Texture has no pixels: " + this.path);
+      }
+      return this.pixels + this.mipOffsets[_level];
+    }
+
+    /**
+     * Gets the size in bytes of a level.
+     *
+     * @param _level the level
+     * @return the size in bytes
+     */
+    public long mipSize(
+        final int _level) {
+      return ((long) this.mipWidth(_level)) * this.mipHeight(_level)
+        * Texture.CHANNELS;
+    }
+
+    /**
+     * Gets the size in bytes of all levels.
+     *
+     * @return the size in bytes, zero on failure
+     */
+    @Override
+    public long byteSize() {
+      return this.byteSize;
+    }
+
+    /**
+     * Releases the pixel memory.
+     *
+     * <p>The pixels must not be accessed after this call; calling it again
+     * has no effect.
+     */
+    @Override
+    public void close() {
+      MemoryUtil.nmemFree(this.pixels);
+      this.pixels = MemoryUtil.NULL;
+    }
+
+  }
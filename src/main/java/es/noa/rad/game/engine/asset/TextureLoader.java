@@ -0,0 +1,463 @@
+package es.noa.rad.game.engine.asset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.stb.STBImageResize;
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.configuration.settings.AssetSettings;
+
+  /**
+   * Asynchronous texture loader decoding images on worker threads.
+   *
+   * <p>Pipeline of every request:
+   * <ol>
+   *   <li>{@link #load(Path)} queues the request and returns at once: the
+   *       request queue is unbounded, so the calling (game) thread never
+   *       waits.</li>
+   *   <li>A worker memory-maps the file, decodes it to RGBA8 with
+   *       {@code stbi_load_from_memory}, and builds the mip chain with
+   *       {@code stb_image_resize}, each level filtered from the previous
+   *       one, into a single off-heap block.</li>
+   *   <li>The finished {@link Texture} is handed to a bounded queue. When
+   *       the queue is full the worker waits, which caps the memory of
+   *       decoded textures not yet consumed.</li>
+   *   <li>The render thread takes finished textures with {@link #poll()},
+   *       which never blocks, uploads them and closes them.</li>
+   * </ol>
+   *
+   * <p>Failures (missing files, corrupt images, exhausted memory) are
+   * reported as textures without pixels whose {@link Texture#error()}
+   * tells the reason; every request leaves {@link #pending()} once its
+   * worker is done with it, whatever the outcome.
+   *
+   * <p>The {@link es.noa.rad.game.engine.core.Window} polls its loader
+   * every frame and uploads the textures to its render backend.
+   *
+   * <p>Mapped files are unmapped by the garbage collector, since the
+   * platform offers no explicit unmapping.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * TextureLoader loader = new TextureLoader();
+   * loader.load(Path.of("textures/grass.png"));
+   * ...
+   * Texture texture;
+   * while ((texture = loader.poll()) != null) {
+   *   upload(texture);
+   *   texture.close();
+   * }
+   * }</pre>
+   *
+   * @see Texture
+   */
+  public final class TextureLoader {
+
+    /**
+     * Index of the alpha channel in a pixel.
+     */
+    private static final int ALPHA_CHANNEL = 3;
+
+    /**
+     * Time given to the workers to finish on {@link #close()}.
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 5L;
+
+    /**
+     * Whether mip levels are filtered in the sRGB color space.
+     */
+    private final boolean srgb;
+
+    /**
+     * Workers decoding the requests.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Decoded textures waiting for the render thread.
+     */
+    private final BlockingQueue<Texture> ready;
+
+    /**
+     * Number of requests not yet handed to the ready queue.
+     */
+    private final AtomicInteger pending;
+
+    /**
+     * Number of textures decoded.
+     */
+    private final AtomicInteger loadedCount;
+
+    /**
+     * Number of requests that failed.
+     */
+    private final AtomicInteger failedCount;
+
+    /**
+     * Number of file bytes read.
+     */
+    private final AtomicLong bytesRead;
+
+    /**
+     * Number of level 0 pixel bytes decoded.
+     */
+    private final AtomicLong bytesDecoded;
+
+    /**
+     * Time spent by the workers decoding and filtering, in nanoseconds.
+     */
+    private final AtomicLong decodeNanos;
+
+    /**
+     * Creates a loader configured by the {@code asset.texture.*} settings,
+     * filtering mips in the sRGB color space.
+     */
+    public TextureLoader() {
+      this(
+        TextureLoader.threads(
+          AssetSettings.ASSET_TEXTURE_THREADS.<Integer>get()),
+        AssetSettings.ASSET_TEXTURE_QUEUE_CAPACITY.<Integer>get(),
+        true
+      );
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param _threads the number of worker threads
+     * @param _queueCapacity the number of decoded textures that may wait
+     *     for the render thread
+     * @param _srgb whether mip levels are filtered in the sRGB color space
+     * @throws IllegalArgumentException if the thread count or the queue
+     *     capacity is not positive
+     */
+    public TextureLoader(
+        final int _threads,
+        final int _queueCapacity,
+        final boolean _srgb) {
+      if (_threads <= 0) {
+        throw new IllegalArgumentException(
+          "Thread count must be positive: " + _threads);
+      }
+      if (_queueCapacity <= 0) {
+        throw new IllegalArgumentException(
+          "Queue capacity must be positive: " + _queueCapacity);
+      }
+      this.srgb = _srgb;
+      this.ready = new ArrayBlockingQueue<>(_queueCapacity);
+      this.pending = new AtomicInteger();
+      this.loadedCount = new AtomicInteger();
+      this.failedCount = new AtomicInteger();
+      this.bytesRead = new AtomicLong();
+      this.bytesDecoded = new AtomicLong();
+      this.decodeNanos = new AtomicLong();
+      final AtomicInteger threadCount = new AtomicInteger();
+      this.workers = Executors.newFixedThreadPool(_threads, runnable -> {
+        final Thread thread = new Thread(
+          runnable, "Texture-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
+    /**
+     * Requests a texture. Never blocks.
+     *
+     * @param _path the image file (PNG, JPEG, TGA, BMP, PSD, GIF, HDR, PIC
+     *     or PNM)
+     * @throws IllegalStateException if the loader is closed
+     */
+    public void load(
+        final Path _path) {
+      this.pending.incrementAndGet();
+      try {
+        this.workers.execute(() -> this.run(_path));
+      } catch (final RejectedExecutionException rejectedException) {
+        this.pending.decrementAndGet();
+        throw new IllegalStateException("Texture loader is closed.",
+          rejectedException);
+      }
+    }
+
+    /**
+     * Takes a finished texture. Never blocks.
+     *
+     * @return the texture, now owned by the caller, or null if none is
+     *     ready
+     */
+    public Texture poll() {
+      return this.ready.poll();
+    }
+
+    /**
+     * Tells whether mip levels are filtered in the sRGB color space.
+     *
+     * @return whether the pixels are sRGB
+     */
+    public boolean srgb() {
+      return this.srgb;
+    }
+
+    /**
+     * Gets the number of requests not yet finished.
+     *
+     * @return the pending request count
+     */
+    public int pending() {
+      return this.pending.get();
+    }
+
+    /**
+     * Gets the number of textures decoded.
+     *
+     * @return the loaded count
+     */
+    public int loadedCount() {
+      return this.loadedCount.get();
+    }
+
+    /**
+     * Gets the number of requests that failed.
+     *
+     * @return the failed count
+     */
+    public int failedCount() {
+      return this.failedCount.get();
+    }
+
+    /**
+     * Gets the number of file bytes read.
+     *
+     * @return the bytes read
+     */
+    public long bytesRead() {
+      return this.bytesRead.get();
+    }
+
+    /**
+     * Gets the number of level 0 pixel bytes decoded.
+     *
+     * @return the bytes decoded
+     */
+    public long bytesDecoded() {
+      return this.bytesDecoded.get();
+    }
+
+    /**
+     * Gets the time spent by all workers decoding and building mips.
+     *
+     * @return the decode time in nanoseconds
+     */
+    public long decodeNanos() {
+      return this.decodeNanos.get();
+    }
+
+    /**
+     * Stops the workers and releases the textures not yet taken.
+     *
+     * <p>Requests not yet started are dropped.
+     */
+    public void close() {
+      this.workers.shutdownNow();
+      try {
+        this.workers.awaitTermination(
+          TextureLoader.CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      Texture texture = this.ready.poll();
+      while (texture != null) {
+        texture.close();
+        texture = this.ready.poll();
+      }
+    }
+
+    /**
+     * Resolves the configured thread count.
+     *
+     * @param _threads the configured count, zero for automatic
+     * @return the thread count
+     */
+    private static int threads(
+        final int _threads) {
+      if (_threads > 0) {
+        return _threads;
+      }
+      return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * Runs a request on a worker thread. The request leaves the pending
+     * count even if decoding fails with an unexpected exception or error.
+     *
+     * @param _path the image file
+     */
+    private void run(
+        final Path _path) {
+      try {
+        Texture texture;
+        try {
+          texture = this.decode(_path);
+        } catch (final RuntimeException | OutOfMemoryError decodeException) {
+          texture = new Texture(_path, decodeException.toString());
+        }
+        this.hand(texture);
+      } finally {
+        this.pending.decrementAndGet();
+      }
+    }
+
+    /**
+     * Loads a texture on a worker thread.
+     *
+     * @param _path the image file
+     * @return the texture, failed if it could not be loaded
+     */
+    private Texture decode(
+        final Path _path) {
+      final long start = System.nanoTime();
+      Texture texture;
+      try (FileChannel channel
+          = FileChannel.open(_path, StandardOpenOption.READ)) {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException("Image file too large: " + size);
+        }
+        final MappedByteBuffer data
+          = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        final int[] width = new int[1];
+        final int[] height = new int[1];
+        final int[] channels = new int[1];
+        final ByteBuffer image = STBImage.stbi_load_from_memory(
+          data, width, height, channels, Texture.CHANNELS);
+        if (image == null) {
+          texture = new Texture(_path, STBImage.stbi_failure_reason());
+        } else {
+          try {
+            texture = this.buildMips(_path, image, width[0], height[0]);
+          } finally {
+            STBImage.stbi_image_free(image);
+          }
+          this.bytesDecoded.addAndGet(texture.mipSize(0));
+        }
+        this.bytesRead.addAndGet(size);
+      } catch (final IOException ioException) {
+        texture = new Texture(_path, ioException.toString());
+      }
+      this.decodeNanos.addAndGet(System.nanoTime() - start);
+      return texture;
+    }
+
+    /**
+     * Copies a decoded image and its mip levels into a new pixel block.
+     *
+     * @param _path the image file
+     * @param _image the decoded RGBA pixels
+     * @param _width the image width
+     * @param _height the image height
+     * @return the texture
+     */
+    private Texture buildMips(
+        final Path _path,
+        final ByteBuffer _image,
+        final int _width,
+        final int _height) {
+      final int mipCount = Integer.SIZE
+        - Integer.numberOfLeadingZeros(Math.max(_width, _height));
+      final long[] offsets = new long[mipCount];
+      long total = 0L;
+      for (int level = 0; level < mipCount; level++) {
+        offsets[level] = total;
+        total += ((long) Math.max(1, _width >> level))
+          * Math.max(1, _height >> level) * Texture.CHANNELS;
+      }
+      final long pixels = MemoryUtil.nmemAlloc(total);
+      if (pixels == MemoryUtil.NULL) {
+        throw new OutOfMemoryError(
+          "Unable to allocate the pixels of " + _path);
+      }
+      try {
+        MemoryUtil.memCopy(MemoryUtil.memAddress(_image), pixels,
+          offsets.length > 1 ? offsets[1] : total);
+        for (int level = 1; level < mipCount; level++) {
+          this.resize(pixels + offsets[level - 1], pixels + offsets[level],
+            Math.max(1, _width >> (level - 1)),
+            Math.max(1, _height >> (level - 1)),
+            Math.max(1, _width >> level),
+            Math.max(1, _height >> level));
+        }
+        return new Texture(_path, _width, _height, offsets, pixels, total);
+      } catch (final RuntimeException | Error mipException) {
+        /* The texture never took ownership of the pixels. */
+        MemoryUtil.nmemFree(pixels);
+        throw mipException;
+      }
+    }
+
+    /**
+     * Filters a mip level from the previous one.
+     *
+     * @param _source the address of the previous level
+     * @param _target the address of the level
+     * @param _sourceWidth the width of the previous level
+     * @param _sourceHeight the height of the previous level
+     * @param _targetWidth the width of the level
+     * @param _targetHeight the height of the level
+     */
+    private void resize(
+        final long _source,
+        final long _target,
+        final int _sourceWidth,
+        final int _sourceHeight,
+        final int _targetWidth,
+        final int _targetHeight) {
+      if (this.srgb) {
+        STBImageResize.nstbir_resize_uint8_srgb(
+          _source, _sourceWidth, _sourceHeight, 0,
+          _target, _targetWidth, _targetHeight, 0,
+          Texture.CHANNELS, TextureLoader.ALPHA_CHANNEL, 0);
+      } else {
+        STBImageResize.nstbir_resize_uint8(
+          _source, _sourceWidth, _sourceHeight, 0,
+          _target, _targetWidth, _targetHeight, 0,
+          Texture.CHANNELS);
+      }
+    }
+
+    /**
+     * Hands a finished texture to the render thread, waiting while the
+     * ready queue is full.
+     *
+     * @param _texture the texture
+     */
+    private void hand(
+        final Texture _texture) {
+      if (_texture.loaded()) {
+        this.loadedCount.incrementAndGet();
+      } else {
+        this.failedCount.incrementAndGet();
+      }
+      try {
+        this.ready.put(_texture);
+      } catch (final InterruptedException interruptedException) {
+        /* The loader is closing: nobody will take the texture. */
+        _texture.close();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  }
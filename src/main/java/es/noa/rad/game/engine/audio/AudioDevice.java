@@ -0,0 +1,290 @@
+package es.noa.rad.game.engine.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import org.lwjgl.openal.AL;
+import org.lwjgl.openal.ALC;
+import org.lwjgl.openal.ALC10;
+import org.lwjgl.openal.ALC11;
+import org.lwjgl.openal.ALCCapabilities;
+import org.lwjgl.openal.SOFTLoopback;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * OpenAL device with its context, current for the whole process.
+   *
+   * <p>Two kinds of devices are supported:
+   * <ul>
+   *   <li>Output devices, opened by name, that play through the sound
+   *       hardware in real time. With OpenAL Soft, setting the
+   *       {@code ALSOFT_DRIVERS=null} environment variable turns the
+   *       default device into one that mixes in real time without any
+   *       output, which is enough to run the game headless.</li>
+   *   <li>Loopback devices ({@code ALC_SOFT_loopback}), which only mix
+   *       when asked to with {@link #render(ShortBuffer)} or
+   *       {@link #advance(float)}. They need no sound hardware and make
+   *       playback deterministic, so tests and profiling runs drive time
+   *       themselves.</li>
+   * </ul>
+   *
+   * <p>OpenAL calls are thread-safe, so once the device is open any thread
+   * may use it, such as the thread of an {@link AudioStreamer}.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * AudioDevice device = AudioDevice.loopback(48000);
+   * AudioStreamer streamer = new AudioStreamer();
+   * streamer.play(Path.of("music/theme.ogg"), true);
+   * device.advance(deltaTime);
+   * }</pre>
+   */
+  public final class AudioDevice {
+
+    /**
+     * Number of channels mixed by loopback devices.
+     */
+    public static final int CHANNELS = 2;
+
+    /**
+     * Name that opens the default output device.
+     */
+    public static final String DEFAULT_DEVICE = "default";
+
+    /**
+     * Number of frames mixed at a time by {@link #advance(float)}.
+     */
+    private static final int RENDER_FRAMES = 1024;
+
+    /**
+     * Device handle.
+     */
+    private final long device;
+
+    /**
+     * Context handle.
+     */
+    private final long context;
+
+    /**
+     * Whether the device is a loopback device.
+     */
+    private final boolean loopback;
+
+    /**
+     * Mix discarded by {@link #advance(float)}, null for output devices.
+     */
+    private final ShortBuffer scratch;
+
+    /**
+     * Frames owed to {@link #advance(float)}, below one.
+     */
+    private double pendingFrames;
+
+    /**
+     * Number of frames mixed by a loopback device.
+     */
+    private long renderedFrames;
+
+    /**
+     * Creates a context on an open device and makes it current.
+     *
+     * @param _device the device handle
+     * @param _loopback whether the device is a loopback device
+     * @param _attributes the context attributes, null terminated, or null
+     * @throws IllegalStateException if the context cannot be created
+     */
+    private AudioDevice(
+        final long _device,
+        final boolean _loopback,
+        final int[] _attributes) {
+      final ALCCapabilities deviceCapabilities = ALC.createCapabilities(
+        _device);
+      final long handle = ALC10.alcCreateContext(_device, _attributes);
+      if ((handle == MemoryUtil.NULL)
+          || !ALC10.alcMakeContextCurrent(handle)) {
+        if (handle != MemoryUtil.NULL) {
+          ALC10.alcDestroyContext(handle);
+        }
+        ALC10.alcCloseDevice(_device);
+        throw new IllegalStateException(
+          "Unable to create the OpenAL context.");
+      }
+      AL.createCapabilities(deviceCapabilities);
+      this.device = _device;
+      this.context = handle;
+      this.loopback = _loopback;
+      this.scratch = _loopback
+        ? MemoryUtil.memAllocShort(
+          AudioDevice.RENDER_FRAMES * AudioDevice.CHANNELS)
+        : null;
+    }
+
+    /**
+     * Opens an output device.
+     *
+     * @param _name the device name, or {@link #DEFAULT_DEVICE}
+     * @return the device, its context current
+     * @throws IllegalStateException if the device or its context cannot be
+     *     opened
+     */
+    public static AudioDevice open(
+        final String _name) {
+      final long handle;
+      if (AudioDevice.DEFAULT_DEVICE.equals(_name)) {
+        handle = ALC10.alcOpenDevice((ByteBuffer) null);
+      } else {
+        handle = ALC10.alcOpenDevice(_name);
+      }
+      if (handle == MemoryUtil.NULL) {
+        throw new IllegalStateException(
+          "Unable to open the audio device '" + _name + "'.");
+      }
+      return new AudioDevice(handle, false, null);
+    }
+
+    /**
+     * Opens a loopback device mixing 16-bit stereo.
+     *
+     * @param _frequency the mixing frequency in hertz
+     * @return the device, its context current
+     * @throws IllegalArgumentException if the frequency is not positive
+     * @throws IllegalStateException if OpenAL does not support loopback
+     *     devices or the format
+     */
+    public static AudioDevice loopback(
+        final int _frequency) {
+      if (_frequency <= 0) {
+        throw new IllegalArgumentException(
+          "Frequency must be positive: " + _frequency);
+      }
+      final long handle = SOFTLoopback.alcLoopbackOpenDeviceSOFT(
+        (ByteBuffer) null);
+      if (handle == MemoryUtil.NULL) {
+        throw new IllegalStateException(
+          "Unable to open an OpenAL loopback device.");
+      }
+      final int[] attributes = {
+        SOFTLoopback.ALC_FORMAT_CHANNELS_SOFT, SOFTLoopback.ALC_STEREO_SOFT,
+        SOFTLoopback.ALC_FORMAT_TYPE_SOFT, SOFTLoopback.ALC_SHORT_SOFT,
+        ALC10.ALC_FREQUENCY, _frequency,
+        0
+      };
+      if (!SOFTLoopback.alcIsRenderFormatSupportedSOFT(handle, _frequency,
+          SOFTLoopback.ALC_STEREO_SOFT, SOFTLoopback.ALC_SHORT_SOFT)) {
+        ALC10.alcCloseDevice(handle);
+        throw new IllegalStateException(
+          "Loopback format not supported at " + _frequency + " Hz.");
+      }
+      return new AudioDevice(handle, true, attributes);
+    }
+
+    /**
+     * Gets the name of the device.
+     *
+     * @return the device specifier
+     */
+    public String name() {
+      return ALC10.alcGetString(this.device, ALC10.ALC_DEVICE_SPECIFIER);
+    }
+
+    /**
+     * Checks whether the device only mixes when asked to.
+     *
+     * @return {@code true} for loopback devices
+     */
+    public boolean isLoopback() {
+      return this.loopback;
+    }
+
+    /**
+     * Gets the mixing frequency.
+     *
+     * @return the frequency in hertz
+     */
+    public int frequency() {
+      return ALC10.alcGetInteger(this.device, ALC10.ALC_FREQUENCY);
+    }
+
+    /**
+     * Gets the number of mono sources the context can play at once.
+     *
+     * @return the mono source count
+     */
+    public int monoSources() {
+      return ALC10.alcGetInteger(this.device, ALC11.ALC_MONO_SOURCES);
+    }
+
+    /**
+     * Gets the number of stereo sources the context can play at once.
+     *
+     * @return the stereo source count
+     */
+    public int stereoSources() {
+      return ALC10.alcGetInteger(this.device, ALC11.ALC_STEREO_SOURCES);
+    }
+
+    /**
+     * Mixes the next frames of a loopback device.
+     *
+     * @param _dest the buffer receiving interleaved 16-bit stereo frames;
+     *     as many frames as fit in its remaining space are mixed
+     * @throws IllegalStateException if the device is not a loopback device
+     */
+    public void render(
+        final ShortBuffer _dest) {
+      if (!this.loopback) {
+        throw new IllegalStateException(
+          "Only loopback devices render on demand.");
+      }
+      final int frames = _dest.remaining() / AudioDevice.CHANNELS;
+      SOFTLoopback.nalcRenderSamplesSOFT(this.device,
+        MemoryUtil.memAddress(_dest), frames);
+      this.renderedFrames += frames;
+    }
+
+    /**
+     * Mixes and discards the frames of a time span on a loopback device,
+     * so that sources play as if the device were outputting in real time.
+     * Output devices mix by themselves and ignore the call.
+     *
+     * @param _seconds the time span in seconds
+     */
+    public void advance(
+        final float _seconds) {
+      if (!this.loopback || !(_seconds > 0.0F)) {
+        return;
+      }
+      this.pendingFrames += ((double) _seconds) * this.frequency();
+      while (this.pendingFrames >= 1.0) {
+        final int frames = (int) Math.min(this.pendingFrames,
+          AudioDevice.RENDER_FRAMES);
+        this.scratch.clear().limit(frames * AudioDevice.CHANNELS);
+        this.render(this.scratch);
+        this.pendingFrames -= frames;
+      }
+    }
+
+    /**
+     * Gets the number of frames mixed by a loopback device.
+     *
+     * @return the rendered frame count
+     */
+    public long renderedFrames() {
+      return this.renderedFrames;
+    }
+
+    /**
+     * Destroys the context and closes the device.
+     */
+    public void close() {
+      ALC10.alcMakeContextCurrent(MemoryUtil.NULL);
+      AL.setCurrentProcess(null);
+      ALC10.alcDestroyContext(this.context);
+      ALC10.alcCloseDevice(this.device);
+      if (this.scratch != null) {
+        MemoryUtil.memFree(this.scratch);
+      }
+    }
+
+  }
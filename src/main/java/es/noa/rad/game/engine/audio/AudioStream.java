@@ -0,0 +1,380 @@
+package es.noa.rad.game.engine.audio;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+
+import org.lwjgl.openal.AL10;
+
+  /**
+   * Music or long sound played from a file by an {@link AudioStreamer}.
+   *
+   * <p>The stream owns an OpenAL source and a small ring of buffers. The
+   * streamer thread opens the file, fills the buffers and queues them on
+   * the source; whenever the source has played a buffer, the thread
+   * unqueues it, decodes the next frames into it and queues it again.
+   * A source that runs out of queued buffers before the end of the file
+   * stops: the thread counts an underrun and restarts it.
+   *
+   * <p>The controls ({@link #gain(float)}, {@link #pause()},
+   * {@link #resume()} and {@link #stop()}) only record the request, which
+   * the streamer thread applies on its next pass, so they never block.
+   * Streams are not spatialized: they play relative to the listener.
+   */
+  public final class AudioStream {
+
+    /**
+     * Streamed file.
+     */
+    private final Path path;
+
+    /**
+     * Whether the stream starts over at the end of the file.
+     */
+    private final boolean looping;
+
+    /**
+     * OpenAL buffers of the ring.
+     */
+    private final int[] buffers;
+
+    /**
+     * Number of frames of a buffer.
+     */
+    private final int bufferFrames;
+
+    /**
+     * Requested gain.
+     */
+    private volatile float gain;
+
+    /**
+     * Whether a pause is requested.
+     */
+    private volatile boolean paused;
+
+    /**
+     * Whether a stop is requested.
+     */
+    private volatile boolean stopRequested;
+
+    /**
+     * Whether the stream is over and its resources released.
+     */
+    private volatile boolean finished;
+
+    /**
+     * Reason of a failure, null if none.
+     */
+    private volatile String error;
+
+    /**
+     * Number of times the source ran out of queued buffers.
+     */
+    private volatile int underruns;
+
+    /**
+     * Number of frames decoded.
+     */
+    private volatile long decodedFrames;
+
+    /**
+     * Decoder of the file; streamer thread only.
+     */
+    private VorbisDecoder decoder;
+
+    /**
+     * OpenAL source; streamer thread only.
+     */
+    private int source;
+
+    /**
+     * OpenAL format of the buffers; streamer thread only.
+     */
+    private int format;
+
+    /**
+     * Gain last set on the source; streamer thread only.
+     */
+    private float sourceGain;
+
+    /**
+     * Whether the whole file has been decoded; streamer thread only.
+     */
+    private boolean ended;
+
+    /**
+     * Creates a stream waiting for the streamer thread.
+     *
+     * @param _path the Ogg Vorbis file
+     * @param _looping whether to start over at the end of the file
+     * @param _bufferCount the number of buffers of the ring
+     * @param _bufferFrames the number of frames of a buffer
+     */
+    AudioStream(
+        final Path _path,
+        final boolean _looping,
+        final int _bufferCount,
+        final int _bufferFrames) {
+      this.path = _path;
+      this.looping = _looping;
+      this.buffers = new int[_bufferCount];
+      this.bufferFrames = _bufferFrames;
+      this.gain = 1.0F;
+      this.sourceGain = Float.NaN;
+    }
+
+    /**
+     * Gets the streamed file.
+     *
+     * @return the path
+     */
+    public Path path() {
+      return this.path;
+    }
+
+    /**
+     * Checks whether the stream starts over at the end of the file.
+     *
+     * @return {@code true} for looping streams
+     */
+    public boolean isLooping() {
+      return this.looping;
+    }
+
+    /**
+     * Sets the gain.
+     *
+     * @param _gain the gain, 1 for the volume of the file
+     */
+    public void gain(
+        final float _gain) {
+      this.gain = Math.max(0.0F, _gain);
+    }
+
+    /**
+     * Pauses the playback, keeping the position.
+     */
+    public void pause() {
+      this.paused = true;
+    }
+
+    /**
+     * Resumes a paused playback.
+     */
+    public void resume() {
+      this.paused = false;
+    }
+
+    /**
+     * Stops the playback and releases the stream.
+     */
+    public void stop() {
+      this.stopRequested = true;
+    }
+
+    /**
+     * Checks whether the stream is over: played to the end, stopped or
+     * failed.
+     *
+     * @return {@code true} once the resources of the stream are released
+     */
+    public boolean isFinished() {
+      return this.finished;
+    }
+
+    /**
+     * Gets the reason of a failure.
+     *
+     * @return the reason, or null if the stream did not fail
+     */
+    public String error() {
+      return this.error;
+    }
+
+    /**
+     * Gets the number of times the source ran out of queued buffers.
+     *
+     * @return the underrun count
+     */
+    public int underruns() {
+      return this.underruns;
+    }
+
+    /**
+     * Gets the number of frames decoded.
+     *
+     * @return the decoded frame count
+     */
+    public long decodedFrames() {
+      return this.decodedFrames;
+    }
+
+    /**
+     * Opens the file, fills the ring and starts the source. Streamer
+     * thread only.
+     *
+     * @param _streamer the streamer
+     * @return whether the stream is already finished
+     */
+    boolean start(
+        final AudioStreamer _streamer) {
+      if (this.stopRequested) {
+        this.finished = true;
+        return true;
+      }
+      try {
+        this.decoder = VorbisDecoder.open(this.path);
+      } catch (final IOException ioException) {
+        return this.fail(ioException.getMessage());
+      }
+      switch (this.decoder.channels()) {
+        case 1:
+          this.format = AL10.AL_FORMAT_MONO16;
+          break;
+        case 2:
+          this.format = AL10.AL_FORMAT_STEREO16;
+          break;
+        default:
+          this.decoder.close();
+          return this.fail("Unsupported channel count "
+            + this.decoder.channels() + " in " + this.path);
+      }
+      AL10.alGetError();
+      this.source = AL10.alGenSources();
+      if (AL10.alGetError() != AL10.AL_NO_ERROR) {
+        this.decoder.close();
+        return this.fail("No OpenAL source left for " + this.path);
+      }
+      AL10.alGenBuffers(this.buffers);
+      AL10.alSourcei(this.source, AL10.AL_SOURCE_RELATIVE, AL10.AL_TRUE);
+      for (final int buffer : this.buffers) {
+        if (this.ended || (this.fill(buffer, _streamer) == 0)) {
+          break;
+        }
+        AL10.alSourceQueueBuffers(this.source, buffer);
+      }
+      return this.service(_streamer);
+    }
+
+    /**
+     * Refills the played buffers and applies the requests. Streamer thread
+     * only.
+     *
+     * @param _streamer the streamer
+     * @return whether the stream is finished
+     */
+    boolean service(
+        final AudioStreamer _streamer) {
+      if (this.stopRequested) {
+        this.release();
+        return true;
+      }
+      final float requestedGain = this.gain;
+      if (requestedGain != this.sourceGain) {
+        AL10.alSourcef(this.source, AL10.AL_GAIN, requestedGain);
+        this.sourceGain = requestedGain;
+      }
+      for (int processed = AL10.alGetSourcei(
+          this.source, AL10.AL_BUFFERS_PROCESSED);
+          processed > 0; processed--) {
+        final int buffer = AL10.alSourceUnqueueBuffers(this.source);
+        if (!this.ended && (this.fill(buffer, _streamer) > 0)) {
+          AL10.alSourceQueueBuffers(this.source, buffer);
+        }
+      }
+      final int state = AL10.alGetSourcei(this.source, AL10.AL_SOURCE_STATE);
+      if (this.paused) {
+        if (state == AL10.AL_PLAYING) {
+          AL10.alSourcePause(this.source);
+        }
+        return false;
+      }
+      if (state == AL10.AL_PLAYING) {
+        return false;
+      }
+      if (AL10.alGetSourcei(this.source, AL10.AL_BUFFERS_QUEUED) == 0) {
+        /* Played to the end. */
+        this.release();
+        return true;
+      }
+      if (state == AL10.AL_STOPPED) {
+        this.underruns++;
+        _streamer.underrun();
+      }
+      AL10.alSourcePlay(this.source);
+      return false;
+    }
+
+    /**
+     * Releases the stream without starting it. Streamer thread only.
+     */
+    void cancel() {
+      this.finished = true;
+    }
+
+    /**
+     * Stops the source and releases the source, the buffers and the
+     * decoder. Streamer thread only.
+     */
+    void release() {
+      AL10.alSourceStop(this.source);
+      AL10.alSourcei(this.source, AL10.AL_BUFFER, 0);
+      AL10.alDeleteSources(this.source);
+      AL10.alDeleteBuffers(this.buffers);
+      this.decoder.close();
+      this.finished = true;
+    }
+
+    /**
+     * Decodes the next frames into a buffer.
+     *
+     * @param _buffer the OpenAL buffer
+     * @param _streamer the streamer lending its staging memory
+     * @return the number of frames decoded, zero at the end of the file
+     */
+    private int fill(
+        final int _buffer,
+        final AudioStreamer _streamer) {
+      final long start = System.nanoTime();
+      final ShortBuffer staging = _streamer.staging();
+      staging.clear().limit(this.bufferFrames * this.decoder.channels());
+      int frames = this.decoder.decode(staging);
+      while (staging.hasRemaining()) {
+        if (!this.looping) {
+          this.ended = true;
+          break;
+        }
+        this.decoder.rewind();
+        final int more = this.decoder.decode(staging);
+        if (more == 0) {
+          /* Empty file: looping would never fill the buffer. */
+          this.ended = true;
+          break;
+        }
+        frames += more;
+      }
+      _streamer.decoded(frames, System.nanoTime() - start);
+      this.decodedFrames += frames;
+      if (frames > 0) {
+        staging.flip();
+        AL10.alBufferData(_buffer, this.format, staging,
+          this.decoder.sampleRate());
+      }
+      return frames;
+    }
+
+    /**
+     * Records a failure and finishes the stream.
+     *
+     * @param _error the reason
+     * @return {@code true}
+     */
+    private boolean fail(
+        final String _error) {
+      this.error = _error;
+      this.finished = true;
+      return true;
+    }
+
+  }
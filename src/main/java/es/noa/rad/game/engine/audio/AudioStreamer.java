@@ -0,0 +1,319 @@
+package es.noa.rad.game.engine.audio;
+
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.configuration.settings.AudioSettings;
+
+  /**
+   * Plays music and long sounds from Ogg Vorbis files without loading them
+   * in memory.
+   *
+   * <p>A single background thread serves every {@link AudioStream}: it
+   * opens the files, decodes them with {@code stb_vorbis} into each
+   * stream's ring of OpenAL buffers and requeues the buffers as they are
+   * played. The game thread only queues requests: {@link #play(Path,
+   * boolean)} never decodes nor waits. The memory of a stream is its
+   * decoder state plus its ring, whatever the length of the file.
+   *
+   * <p>The ring must cover the time between two passes of the thread: a
+   * source that plays all its queued buffers before the thread comes back
+   * stops, which the streams count as underruns. With the defaults, four
+   * buffers of 8192 frames hold about 680 ms of 48 kHz audio for a pass
+   * every 10 ms.
+   *
+   * <p>Requires an {@link AudioDevice} to be open while streams play.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * AudioStreamer streamer = new AudioStreamer();
+   * AudioStream music = streamer.play(Path.of("music/theme.ogg"), true);
+   * music.gain(0.5f);
+   * ...
+   * music.stop();
+   * streamer.close();
+   * }</pre>
+   *
+   * @see AudioStream
+   * @see VorbisDecoder
+   */
+  public final class AudioStreamer {
+
+    /**
+     * Largest number of channels of a streamed file.
+     */
+    private static final int MAX_CHANNELS = 2;
+
+    /**
+     * Smallest number of buffers of a ring: one playing, one filling.
+     */
+    private static final int MIN_BUFFERS = 2;
+
+    /**
+     * Number of buffers of the ring of every stream.
+     */
+    private final int bufferCount;
+
+    /**
+     * Number of frames of a buffer.
+     */
+    private final int bufferFrames;
+
+    /**
+     * Time between two passes of the thread in nanoseconds.
+     */
+    private final long periodNanos;
+
+    /**
+     * Streams waiting for the thread.
+     */
+    private final Queue<AudioStream> incoming;
+
+    /**
+     * Streams served by the thread; streamer thread only.
+     */
+    private final List<AudioStream> streams;
+
+    /**
+     * Decoded frames on their way to a buffer; streamer thread only.
+     */
+    private final ShortBuffer staging;
+
+    /**
+     * Streamer thread.
+     */
+    private final Thread thread;
+
+    /**
+     * Number of streams served by the thread.
+     */
+    private final AtomicInteger activeCount;
+
+    /**
+     * Number of frames decoded.
+     */
+    private final AtomicLong decodedFrames;
+
+    /**
+     * Time spent decoding in nanoseconds.
+     */
+    private final AtomicLong decodeNanos;
+
+    /**
+     * Number of times a source ran out of queued buffers.
+     */
+    private final AtomicLong underruns;
+
+    /**
+     * Whether the streamer is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a streamer configured by the {@code audio.stream.*}
+     * settings.
+     */
+    public AudioStreamer() {
+      this(
+        AudioSettings.AUDIO_STREAM_BUFFERS.<Integer>get(),
+        AudioSettings.AUDIO_STREAM_BUFFER_FRAMES.<Integer>get(),
+        AudioSettings.AUDIO_STREAM_PERIOD.<Integer>get()
+      );
+    }
+
+    /**
+     * Creates a streamer and starts its thread.
+     *
+     * @param _bufferCount the number of buffers of the ring of a stream
+     * @param _bufferFrames the number of frames of a buffer
+     * @param _periodMillis the time between two passes of the thread in
+     *     milliseconds
+     * @throws IllegalArgumentException if there are fewer than two
+     *     buffers, or the frame count or the period is not positive
+     */
+    public AudioStreamer(
+        final int _bufferCount,
+        final int _bufferFrames,
+        final int _periodMillis) {
+      if (_bufferCount < AudioStreamer.MIN_BUFFERS) {
+        throw new IllegalArgumentException(
+          "Stream needs at least two buffers: " + _bufferCount);
+      }
+      if (_bufferFrames <= 0) {
+        throw new IllegalArgumentException(
+          "Buffer frames must be positive: " + _bufferFrames);
+      }
+      if (_periodMillis <= 0) {
+        throw new IllegalArgumentException(
+          "Stream period must be positive: " + _periodMillis);
+      }
+      this.bufferCount = _bufferCount;
+      this.bufferFrames = _bufferFrames;
+      this.periodNanos = TimeUnit.MILLISECONDS.toNanos(_periodMillis);
+      this.incoming = new ConcurrentLinkedQueue<>();
+      this.streams = new ArrayList<>();
+      this.staging = MemoryUtil.memAllocShort(
+        _bufferFrames * AudioStreamer.MAX_CHANNELS);
+      this.activeCount = new AtomicInteger();
+      this.decodedFrames = new AtomicLong();
+      this.decodeNanos = new AtomicLong();
+      this.underruns = new AtomicLong();
+      this.thread = new Thread(this::run, "Audio-Stream");
+      this.thread.setDaemon(true);
+      this.thread.start();
+    }
+
+    /**
+     * Starts streaming a file. Never blocks: the file is opened by the
+     * streamer thread, and failures are reported by
+     * {@link AudioStream#error()}.
+     *
+     * @param _path the Ogg Vorbis file, mono or stereo
+     * @param _looping whether to start over at the end of the file
+     * @return the stream
+     * @throws IllegalStateException if the streamer is closed
+     */
+    public AudioStream play(
+        final Path _path,
+        final boolean _looping) {
+      if (this.closed) {
+        throw new IllegalStateException("Audio streamer is closed.");
+      }
+      final AudioStream stream = new AudioStream(
+        _path, _looping, this.bufferCount, this.bufferFrames);
+      this.incoming.add(stream);
+      if (this.closed && this.incoming.remove(stream)) {
+        /* Closed meanwhile: the thread may be gone. */
+        stream.cancel();
+      }
+      LockSupport.unpark(this.thread);
+      return stream;
+    }
+
+    /**
+     * Gets the number of streams being played.
+     *
+     * @return the active stream count
+     */
+    public int activeCount() {
+      return this.activeCount.get();
+    }
+
+    /**
+     * Gets the number of frames decoded by all streams.
+     *
+     * @return the decoded frame count
+     */
+    public long decodedFrames() {
+      return this.decodedFrames.get();
+    }
+
+    /**
+     * Gets the time spent decoding by all streams.
+     *
+     * @return the decode time in nanoseconds
+     */
+    public long decodeNanos() {
+      return this.decodeNanos.get();
+    }
+
+    /**
+     * Gets the number of times a source ran out of queued buffers.
+     *
+     * @return the underrun count
+     */
+    public long underruns() {
+      return this.underruns.get();
+    }
+
+    /**
+     * Stops every stream and the thread.
+     */
+    public void close() {
+      this.closed = true;
+      LockSupport.unpark(this.thread);
+      try {
+        this.thread.join();
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Gets the staging memory. Streamer thread only.
+     *
+     * @return the staging buffer
+     */
+    ShortBuffer staging() {
+      return this.staging;
+    }
+
+    /**
+     * Records decoded frames.
+     *
+     * @param _frames the number of frames
+     * @param _nanos the decode time in nanoseconds
+     */
+    void decoded(
+        final int _frames,
+        final long _nanos) {
+      this.decodedFrames.addAndGet(_frames);
+      this.decodeNanos.addAndGet(_nanos);
+    }
+
+    /**
+     * Records an underrun.
+     */
+    void underrun() {
+      this.underruns.incrementAndGet();
+    }
+
+    /**
+     * Serves the streams until the streamer is closed.
+     */
+    private void run() {
+      try {
+        while (!this.closed) {
+          AudioStream stream = this.incoming.poll();
+          while (stream != null) {
+            if (!stream.start(this)) {
+              this.streams.add(stream);
+            }
+            stream = this.incoming.poll();
+          }
+          for (int index = this.streams.size() - 1; index >= 0; index--) {
+            if (this.streams.get(index).service(this)) {
+              final int last = this.streams.size() - 1;
+              this.streams.set(index, this.streams.get(last));
+              this.streams.remove(last);
+            }
+          }
+          this.activeCount.set(this.streams.size());
+          LockSupport.parkNanos(this, this.periodNanos);
+        }
+      } finally {
+        for (final AudioStream stream : this.streams) {
+          stream.release();
+        }
+        this.streams.clear();
+        AudioStream stream = this.incoming.poll();
+        while (stream != null) {
+          stream.cancel();
+          stream = this.incoming.poll();
+        }
+        this.activeCount.set(0);
+        MemoryUtil.memFree(this.staging);
+      }
+    }
+
+  }
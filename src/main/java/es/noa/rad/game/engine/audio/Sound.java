@@ -0,0 +1,180 @@
+package es.noa.rad.game.engine.audio;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+
+import org.lwjgl.openal.AL10;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Short sound fully decoded into an OpenAL buffer, played by the voices
+   * of a {@link VoiceManager}.
+   *
+   * <p>Meant for effects: the whole sound stays in memory, so music and
+   * long ambiences should be streamed with an {@link AudioStreamer}
+   * instead. Only mono sounds are positioned in space; stereo sounds
+   * always play as they are.
+   *
+   * <p>Requires an {@link AudioDevice} to be open.
+   */
+  public final class Sound {
+
+    /**
+     * OpenAL buffer.
+     */
+    private final int buffer;
+
+    /**
+     * Number of channels.
+     */
+    private final int channels;
+
+    /**
+     * Sample rate in hertz.
+     */
+    private final int sampleRate;
+
+    /**
+     * Number of frames.
+     */
+    private final int frames;
+
+    /**
+     * Creates a sound on a filled buffer.
+     *
+     * @param _buffer the OpenAL buffer
+     * @param _channels the number of channels
+     * @param _sampleRate the sample rate in hertz
+     * @param _frames the number of frames
+     */
+    private Sound(
+        final int _buffer,
+        final int _channels,
+        final int _sampleRate,
+        final int _frames) {
+      this.buffer = _buffer;
+      this.channels = _channels;
+      this.sampleRate = _sampleRate;
+      this.frames = _frames;
+    }
+
+    /**
+     * Decodes an Ogg Vorbis file into a new sound.
+     *
+     * @param _path the Ogg Vorbis file, mono or stereo
+     * @return the sound
+     * @throws IOException if the file cannot be decoded
+     */
+    public static Sound load(
+        final Path _path) throws IOException {
+      final VorbisDecoder decoder = VorbisDecoder.open(_path);
+      try {
+        final ShortBuffer pcm = MemoryUtil.memAllocShort(
+          decoder.frames() * decoder.channels());
+        try {
+          decoder.decode(pcm);
+          pcm.flip();
+          return Sound.create(pcm, decoder.channels(),
+            decoder.sampleRate());
+        } finally {
+          MemoryUtil.memFree(pcm);
+        }
+      } finally {
+        decoder.close();
+      }
+    }
+
+    /**
+     * Creates a sound from decoded samples.
+     *
+     * @param _pcm the interleaved signed 16-bit frames, from the position
+     *     to the limit
+     * @param _channels the number of channels, 1 or 2
+     * @param _sampleRate the sample rate in hertz
+     * @return the sound
+     * @throws IllegalArgumentException if the channel count is not 1 or 2,
+     *     the sample rate is not positive or there are no frames
+     */
+    public static Sound create(
+        final ShortBuffer _pcm,
+        final int _channels,
+        final int _sampleRate) {
+      final int format;
+      switch (_channels) {
+        case 1:
+          format = AL10.AL_FORMAT_MONO16;
+          break;
+        case 2:
+          format = AL10.AL_FORMAT_STEREO16;
+          break;
+        default:
+          throw new IllegalArgumentException(
+            "Unsupported channel count: " + _channels);
+      }
+      if (_sampleRate <= 0) {
+        throw new IllegalArgumentException(
+          "Sample rate must be positive: " + _sampleRate);
+      }
+      final int frames = _pcm.remaining() / _channels;
+      if (frames == 0) {
+        throw new IllegalArgumentException("Sound has no frames.");
+      }
+      final int buffer = AL10.alGenBuffers();
+      AL10.alBufferData(buffer, format, _pcm, _sampleRate);
+      return new Sound(buffer, _channels, _sampleRate, frames);
+    }
+
+    /**
+     * Gets the OpenAL buffer.
+     *
+     * @return the buffer name
+     */
+    public int buffer() {
+      return this.buffer;
+    }
+
+    /**
+     * Gets the number of channels.
+     *
+     * @return the channel count
+     */
+    public int channels() {
+      return this.channels;
+    }
+
+    /**
+     * Gets the sample rate.
+     *
+     * @return the rate in hertz
+     */
+    public int sampleRate() {
+      return this.sampleRate;
+    }
+
+    /**
+     * Gets the length of the sound.
+     *
+     * @return the frame count
+     */
+    public int frames() {
+      return this.frames;
+    }
+
+    /**
+     * Gets the duration of the sound.
+     *
+     * @return the duration in seconds
+     */
+    public float duration() {
+      return (float) this.frames / this.sampleRate;
+    }
+
+    /**
+     * Deletes the buffer. No voice may be playing the sound.
+     */
+    public void close() {
+      AL10.alDeleteBuffers(this.buffer);
+    }
+
+  }
@@ -0,0 +1,1119 @@
+package es.noa.rad.game.engine.audio;
+
+import java.util.Arrays;
+
+import org.lwjgl.openal.AL10;
+import org.lwjgl.openal.AL11;
+
+import es.noa.rad.game.engine.configuration.settings.AudioSettings;
+import es.noa.rad.game.engine.memory.HandlePool;
+import es.noa.rad.game.engine.render.RadixSort;
+import es.noa.rad.game.engine.util.IntList;
+
+  /**
+   * Plays thousands of short sounds on the few sources the device can mix.
+   *
+   * <p>Every sound played is a voice, identified by a generational handle.
+   * Voices are logical: they keep their own position, gain and playback
+   * time whether they are heard or not. Every update ranks the voices by
+   * priority first and then by the gain they would reach the listener
+   * with, and only the best ones are bound to one of a fixed pool of
+   * OpenAL sources, created once. The others are virtual: they advance
+   * their time and finish on their own, so a voice that becomes real
+   * again resumes where it would have been.
+   *
+   * <p>The changes between real and virtual do not click: a voice losing
+   * its source is silenced and only stopped on the next update, and a
+   * voice gaining one in the middle of its sound starts silent and gets
+   * its gain on the next update, both ramps being left to the mixer. A
+   * real voice only loses its source to a voice some 25% louder, so that
+   * voices of similar loudness do not keep swapping. Voices quieter than
+   * -60 dB never take a source.
+   *
+   * <p>{@link #play}, {@link #stop}, {@link #position}, {@link #gain},
+   * {@link #pitch}, {@link #distance}, {@link #listener} and
+   * {@link #isValid} may be called from any thread, such as systems
+   * running in parallel: they only take a handle under a lock and record
+   * a command, and {@link #update(float)} applies the commands in order
+   * before ranking, so every OpenAL call happens on the updating thread.
+   * A voice is valid from the moment it is played and invalid from the
+   * moment it is stopped. {@link #update(float)}, {@link #isReal},
+   * the statistics and {@link #close()} belong to one thread at a time,
+   * with an {@link AudioDevice} open. The attenuation is OpenAL's inverse
+   * distance clamped model with a rolloff of one; only mono sounds are
+   * positioned.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * VoiceManager voices = new VoiceManager();
+   * int shot = voices.play(sound, x, y, z, 1.0f, 200, false);
+   * ...
+   * voices.listener(camera.x, camera.y, camera.z);
+   * voices.update(deltaTime);
+   * ...
+   * voices.close();
+   * }</pre>
+   *
+   * @see Sound
+   */
+  public final class VoiceManager {
+
+    /**
+     * Highest priority of a voice.
+     */
+    public static final int MAX_PRIORITY = 255;
+
+    /**
+     * Source index of a virtual voice.
+     */
+    private static final int VIRTUAL = -1;
+
+    /**
+     * Number of floats of a position.
+     */
+    private static final int POSITION_STRIDE = 3;
+
+    /**
+     * Gain below which a voice is not worth a source, -60 dB.
+     */
+    private static final float AUDIBLE_GAIN = 0.001F;
+
+    /**
+     * Factor on the loudness of real voices when ranking.
+     */
+    private static final float HYSTERESIS = 1.25F;
+
+    /**
+     * Bit shift of the priority in a ranking key.
+     */
+    private static final int PRIORITY_SHIFT = 32;
+
+    /**
+     * Mask of the loudness in a ranking key.
+     */
+    private static final long LOUDNESS_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Command playing a voice: voice, slot, sound, x, y, z, gain,
+     * priority, looping.
+     */
+    private static final int PLAY = 0;
+
+    /**
+     * Command stopping a voice: voice, slot.
+     */
+    private static final int STOP = 1;
+
+    /**
+     * Command moving a voice: voice, slot, x, y, z.
+     */
+    private static final int POSITION = 2;
+
+    /**
+     * Command setting the gain of a voice: voice, slot, gain.
+     */
+    private static final int GAIN = 3;
+
+    /**
+     * Command setting the pitch of a voice: voice, slot, pitch.
+     */
+    private static final int PITCH = 4;
+
+    /**
+     * Command setting the distances of a voice: voice, slot, reference,
+     * max.
+     */
+    private static final int DISTANCE = 5;
+
+    /**
+     * Command moving the listener: x, y, z.
+     */
+    private static final int LISTENER = 6;
+
+    /**
+     * Words of the command buffers before they grow.
+     */
+    private static final int COMMAND_CAPACITY = 1024;
+
+    /**
+     * Guards the handles and the recording command buffer.
+     */
+    private final Object lock;
+
+    /**
+     * Voice handles, guarded by the lock.
+     */
+    private final HandlePool handles;
+
+    /**
+     * Commands recorded since the last update, guarded by the lock.
+     */
+    private IntList recording;
+
+    /**
+     * Sounds of the recorded play commands, guarded by the lock.
+     */
+    private Sound[] recordingSounds;
+
+    /**
+     * Number of recorded sounds.
+     */
+    private int recordingSoundCount;
+
+    /**
+     * Commands being applied by the update, swapped with the recording
+     * ones.
+     */
+    private IntList replaying;
+
+    /**
+     * Sounds of the commands being applied.
+     */
+    private Sound[] replayingSounds;
+
+    /**
+     * Handle of the voice of every slot, as applied by the updates.
+     */
+    private int[] voiceHandles;
+
+    /**
+     * Number of slots the updates walk.
+     */
+    private int slotCount;
+
+    /**
+     * Sound of every voice slot, null for free slots.
+     */
+    private Sound[] sounds;
+
+    /**
+     * Position of every voice slot.
+     */
+    private float[] positions;
+
+    /**
+     * Gain of every voice slot.
+     */
+    private float[] gains;
+
+    /**
+     * Pitch of every voice slot.
+     */
+    private float[] pitches;
+
+    /**
+     * Reference distance of every voice slot.
+     */
+    private float[] referenceDistances;
+
+    /**
+     * Maximum distance of every voice slot.
+     */
+    private float[] maxDistances;
+
+    /**
+     * Priority of every voice slot.
+     */
+    private int[] priorities;
+
+    /**
+     * Whether every voice slot loops.
+     */
+    private boolean[] looping;
+
+    /**
+     * Playback time of every voice slot in seconds.
+     */
+    private float[] times;
+
+    /**
+     * Pool index of the source of every voice slot, or -1 if virtual.
+     */
+    private int[] voiceSources;
+
+    /**
+     * Update in which every voice slot was last selected.
+     */
+    private int[] selections;
+
+    /**
+     * OpenAL sources of the pool.
+     */
+    private final int[] sources;
+
+    /**
+     * Voice slot bound to every source of the pool, or -1.
+     */
+    private final int[] sourceVoices;
+
+    /**
+     * Update in which every source of the pool started silent.
+     */
+    private final int[] sourceStarts;
+
+    /**
+     * Pool indices of the free sources.
+     */
+    private final int[] freeSources;
+
+    /**
+     * Number of free sources.
+     */
+    private int freeCount;
+
+    /**
+     * Pool indices of the sources silenced and stopped on the next update.
+     */
+    private final int[] fadingSources;
+
+    /**
+     * Number of silenced sources.
+     */
+    private int fadingCount;
+
+    /**
+     * Ranking keys, one per audible voice.
+     */
+    private long[] keys;
+
+    /**
+     * Voice slots ranked with the keys.
+     */
+    private int[] ranked;
+
+    /**
+     * Scratch keys of the ranking sort.
+     */
+    private long[] scratchKeys;
+
+    /**
+     * Scratch slots of the ranking sort.
+     */
+    private int[] scratchRanked;
+
+    /**
+     * Histogram of the ranking sort.
+     */
+    private final int[] histogram;
+
+    /**
+     * Listener position.
+     */
+    private final float[] listener;
+
+    /**
+     * Number of updates.
+     */
+    private int epoch;
+
+    /**
+     * Voices that became real in the last update.
+     */
+    private int promotions;
+
+    /**
+     * Voices that became virtual in the last update.
+     */
+    private int demotions;
+
+    /**
+     * Duration of the last update in nanoseconds.
+     */
+    private long updateNanos;
+
+    /**
+     * Creates a voice manager sized by {@link AudioSettings}.
+     */
+    public VoiceManager() {
+      this(
+        AudioSettings.AUDIO_VOICES.get(),
+        AudioSettings.AUDIO_VOICE_CAPACITY.get());
+    }
+
+    /**
+     * Creates a voice manager.
+     *
+     * @param _sources the number of OpenAL sources to mix, fewer if the
+     *     device runs out of them
+     * @param _capacity the number of voices before growing
+     * @throws IllegalArgumentException if the number of sources is
+     *     negative
+     */
+    public VoiceManager(
+        final int _sources,
+        final int _capacity) {
+      if (_sources < 0) {
+        throw new IllegalArgumentException(
+          "Source count must not be negative: " + _sources);
+      }
+      final int capacity = Math.max(1, _capacity);
+      this.lock = new Object();
+      this.handles = new HandlePool(capacity);
+      this.recording = new IntList(VoiceManager.COMMAND_CAPACITY);
+      this.replaying = new IntList(VoiceManager.COMMAND_CAPACITY);
+      this.recordingSounds = new Sound[capacity];
+      this.replayingSounds = new Sound[capacity];
+      this.recordingSoundCount = 0;
+      this.voiceHandles = new int[capacity];
+      this.slotCount = 0;
+      this.sounds = new Sound[capacity];
+      this.positions = new float[capacity * VoiceManager.POSITION_STRIDE];
+      this.gains = new float[capacity];
+      this.pitches = new float[capacity];
+      this.referenceDistances = new float[capacity];
+      this.maxDistances = new float[capacity];
+      this.priorities = new int[capacity];
+      this.looping = new boolean[capacity];
+      this.times = new float[capacity];
+      this.voiceSources = new int[capacity];
+      this.selections = new int[capacity];
+      this.keys = new long[capacity];
+      this.ranked = new int[capacity];
+      this.scratchKeys = new long[capacity];
+      this.scratchRanked = new int[capacity];
+      this.histogram = new int[RadixSort.histogramSize()];
+      this.listener = new float[VoiceManager.POSITION_STRIDE];
+
+      final int[] generated = new int[_sources];
+      int count = 0;
+      AL10.alGetError();
+      while (count < _sources) {
+        final int source = AL10.alGenSources();
+        if (AL10.alGetError() != AL10.AL_NO_ERROR) {
+          break;
+        }
+        generated[count++] = source;
+      }
+      this.sources = Arrays.copyOf(generated, count);
+      this.sourceVoices = new int[count];
+      this.sourceStarts = new int[count];
+      this.freeSources = new int[count];
+      this.fadingSources = new int[count];
+      for (int i = 0; i < count; i++) {
+        this.sourceVoices[i] = VoiceManager.VIRTUAL;
+        this.freeSources[i] = count - 1 - i;
+      }
+      this.freeCount = count;
+      AL10.alDistanceModel(AL11.AL_INVERSE_DISTANCE_CLAMPED);
+    }
+
+    /**
+     * Plays a sound. The voice starts virtual and may become real on the
+     * next update.
+     *
+     * @param _sound the sound
+     * @param _x the x coordinate of the position
+     * @param _y the y coordinate of the position
+     * @param _z the z coordinate of the position
+     * @param _gain the gain, not negative
+     * @param _priority the priority, from 0 to {@link #MAX_PRIORITY};
+     *     voices of a higher priority always take sources first
+     * @param _looping whether the sound loops until stopped
+     * @return the voice handle
+     * @throws IllegalArgumentException if the gain is negative or the
+     *     priority is out of range
+     */
+    public int play(
+        final Sound _sound,
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _gain,
+        final int _priority,
+        final boolean _looping) {
+      if (_gain < 0.0F) {
+        throw new IllegalArgumentException(
+          "Gain must not be negative: " + _gain);
+      }
+      if ((_priority < 0) || (_priority > VoiceManager.MAX_PRIORITY)) {
+        throw new IllegalArgumentException(
+          "Priority out of range: " + _priority);
+      }
+      synchronized (this.lock) {
+        final int voice = this.handles.allocate();
+        if (this.recordingSoundCount == this.recordingSounds.length) {
+          this.recordingSounds = Arrays.copyOf(
+            this.recordingSounds, this.recordingSounds.length * 2);
+        }
+        this.recordingSounds[this.recordingSoundCount] = _sound;
+        this.record(VoiceManager.PLAY, voice);
+        this.recording.add(this.recordingSoundCount++);
+        this.recordFloats(_x, _y, _z);
+        this.recording.add(Float.floatToRawIntBits(_gain));
+        this.recording.add(_priority);
+        this.recording.add(_looping ? 1 : 0);
+        return voice;
+      }
+    }
+
+    /**
+     * Stops a voice. A real voice fades out over the next update.
+     *
+     * @param _voice the voice handle
+     * @throws IllegalArgumentException if the handle is not valid
+     */
+    public void stop(
+        final int _voice) {
+      synchronized (this.lock) {
+        this.record(VoiceManager.STOP, _voice);
+        this.handles.release(_voice);
+      }
+    }
+
+    /**
+     * Checks whether a voice is playing. Voices become invalid when
+     * stopped or when a sound that does not loop ends.
+     *
+     * @param _voice the voice handle
+     * @return {@code true} if the voice is playing
+     */
+    public boolean isValid(
+        final int _voice) {
+      synchronized (this.lock) {
+        return this.handles.isValid(_voice);
+      }
+    }
+
+    /**
+     * Checks whether a voice was mixed by a source in the last update.
+     *
+     * @param _voice the voice handle
+     * @return {@code true} if the voice is real, {@code false} if virtual
+     *     or played after the last update
+     * @throws IllegalArgumentException if the handle is not valid
+     */
+    public boolean isReal(
+        final int _voice) {
+      final int slot;
+      synchronized (this.lock) {
+        slot = this.handles.slot(_voice);
+      }
+      return (slot < this.slotCount) && (this.voiceHandles[slot] == _voice)
+        && (this.sounds[slot] != null)
+        && (this.voiceSources[slot] != VoiceManager.VIRTUAL);
+    }
+
+    /**
+     * Moves a voice.
+     *
+     * @param _voice the voice handle
+     * @param _x the x coordinate of the position
+     * @param _y the y coordinate of the position
+     * @param _z the z coordinate of the position
+     * @throws IllegalArgumentException if the handle is not valid
+     */
+    public void position(
+        final int _voice,
+        final float _x,
+        final float _y,
+        final float _z) {
+      synchronized (this.lock) {
+        this.record(VoiceManager.POSITION, _voice);
+        this.recordFloats(_x, _y, _z);
+      }
+    }
+
+    /**
+     * Sets the gain of a voice.
+     *
+     * @param _voice the voice handle
+     * @param _gain the gain, not negative
+     * @throws IllegalArgumentException if the handle is not valid or the
+     *     gain is negative
+     */
+    public void gain(
+        final int _voice,
+        final float _gain) {
+      if (_gain < 0.0F) {
+        throw new IllegalArgumentException(
+          "Gain must not be negative: " + _gain);
+      }
+      synchronized (this.lock) {
+        this.record(VoiceManager.GAIN, _voice);
+        this.recording.add(Float.floatToRawIntBits(_gain));
+      }
+    }
+
+    /**
+     * Sets the pitch of a voice, which also scales its playback speed.
+     *
+     * @param _voice the voice handle
+     * @param _pitch the pitch, positive
+     * @throws IllegalArgumentException if the handle is not valid or the
+     *     pitch is not positive
+     */
+    public void pitch(
+        final int _voice,
+        final float _pitch) {
+      if (_pitch <= 0.0F) {
+        throw new IllegalArgumentException(
+          "Pitch must be positive: " + _pitch);
+      }
+      synchronized (this.lock) {
+        this.record(VoiceManager.PITCH, _voice);
+        this.recording.add(Float.floatToRawIntBits(_pitch));
+      }
+    }
+
+    /**
+     * Sets the attenuation distances of a voice. The voice keeps its gain
+     * up to the reference distance and then halves it every time the
+     * distance doubles, down to the maximum distance.
+     *
+     * @param _voice the voice handle
+     * @param _reference the reference distance, positive
+     * @param _max the maximum distance, not below the reference distance
+     * @throws IllegalArgumentException if the handle or the distances are
+     *     not valid
+     */
+    public void distance(
+        final int _voice,
+        final float _reference,
+        final float _max) {
+      if ((_reference <= 0.0F) || (_max < _reference)) {
+        throw new IllegalArgumentException(
+          "Invalid distances: " + _reference + ", " + _max);
+      }
+      synchronized (this.lock) {
+        this.record(VoiceManager.DISTANCE, _voice);
+        this.recording.add(Float.floatToRawIntBits(_reference));
+        this.recording.add(Float.floatToRawIntBits(_max));
+      }
+    }
+
+    /**
+     * Moves the listener, for both the ranking and OpenAL.
+     *
+     * @param _x the x coordinate of the position
+     * @param _y the y coordinate of the position
+     * @param _z the z coordinate of the position
+     */
+    public void listener(
+        final float _x,
+        final float _y,
+        final float _z) {
+      synchronized (this.lock) {
+        this.recording.add(VoiceManager.LISTENER);
+        this.recordFloats(_x, _y, _z);
+      }
+    }
+
+    /**
+     * Applies the recorded commands, advances the voices and hands the
+     * sources to the best ones.
+     *
+     * @param _deltaTime the elapsed time in seconds
+     */
+    public void update(
+        final float _deltaTime) {
+      final long start = System.nanoTime();
+      this.replay();
+      this.epoch++;
+      this.promotions = 0;
+      this.demotions = 0;
+      for (int i = 0; i < this.fadingCount; i++) {
+        final int index = this.fadingSources[i];
+        AL10.alSourceStop(this.sources[index]);
+        AL10.alSourcei(this.sources[index], AL10.AL_BUFFER, 0);
+        this.freeSources[this.freeCount++] = index;
+      }
+      this.fadingCount = 0;
+
+      final int count = this.rank(_deltaTime);
+      RadixSort.sort(this.keys, this.ranked, this.scratchKeys,
+        this.scratchRanked, this.histogram, count);
+      final int selected = Math.min(count, this.sources.length);
+      for (int i = 0; i < selected; i++) {
+        this.selections[this.ranked[i]] = this.epoch;
+      }
+      for (int i = 0; i < this.sources.length; i++) {
+        final int slot = this.sourceVoices[i];
+        if ((slot != VoiceManager.VIRTUAL)
+            && (this.selections[slot] != this.epoch)) {
+          this.times[slot] = AL10.alGetSourcef(
+            this.sources[i], AL11.AL_SEC_OFFSET);
+          this.unbind(slot, true);
+          this.demotions++;
+        }
+      }
+      for (int i = 0; (i < selected) && (this.freeCount > 0); i++) {
+        final int slot = this.ranked[i];
+        if (this.voiceSources[slot] == VoiceManager.VIRTUAL) {
+          this.bind(slot);
+          this.promotions++;
+        }
+      }
+      for (int i = 0; i < this.sources.length; i++) {
+        final int slot = this.sourceVoices[i];
+        if ((slot != VoiceManager.VIRTUAL)
+            && (this.sourceStarts[i] != this.epoch)) {
+          this.apply(slot, this.sources[i]);
+        }
+      }
+      this.updateNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the number of voices playing.
+     *
+     * @return the voice count, real and virtual
+     */
+    public int size() {
+      synchronized (this.lock) {
+        return this.handles.size();
+      }
+    }
+
+    /**
+     * Gets the number of OpenAL sources of the pool.
+     *
+     * @return the source count
+     */
+    public int sourceCount() {
+      return this.sources.length;
+    }
+
+    /**
+     * Gets the number of real voices.
+     *
+     * @return the number of voices bound to a source
+     */
+    public int realCount() {
+      return this.sources.length - this.freeCount - this.fadingCount;
+    }
+
+    /**
+     * Gets the number of voices that became real in the last update.
+     *
+     * @return the promotion count
+     */
+    public int promotions() {
+      return this.promotions;
+    }
+
+    /**
+     * Gets the number of voices that became virtual in the last update.
+     *
+     * @return the demotion count
+     */
+    public int demotions() {
+      return this.demotions;
+    }
+
+    /**
+     * Gets the duration of the last update.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long updateNanos() {
+      return this.updateNanos;
+    }
+
+    /**
+     * Stops every voice, drops the recorded commands and deletes the
+     * sources.
+     */
+    public void close() {
+      for (final int source : this.sources) {
+        AL10.alSourceStop(source);
+        AL10.alSourcei(source, AL10.AL_BUFFER, 0);
+      }
+      AL10.alDeleteSources(this.sources);
+      synchronized (this.lock) {
+        for (int slot = 0; slot < this.handles.slotCount(); slot++) {
+          if (this.handles.isUsed(slot)) {
+            this.handles.release(this.handles.handle(slot));
+          }
+        }
+        this.recording.clear();
+        Arrays.fill(this.recordingSounds, 0, this.recordingSoundCount, null);
+        this.recordingSoundCount = 0;
+      }
+      Arrays.fill(this.sounds, 0, this.slotCount, null);
+      this.slotCount = 0;
+      this.freeCount = 0;
+      this.fadingCount = 0;
+      Arrays.fill(this.sourceVoices, VoiceManager.VIRTUAL);
+    }
+
+    /**
+     * Advances every voice, finishes the ended ones and fills the ranking
+     * keys of the audible ones: the priority inverted in the high half,
+     * so that an ascending sort puts it first, and the loudness inverted
+     * in the low half.
+     *
+     * @param _deltaTime the elapsed time in seconds
+     * @return the number of audible voices
+     */
+    private int rank(
+        final float _deltaTime) {
+      int count = 0;
+      for (int slot = 0; slot < this.slotCount; slot++) {
+        if (this.sounds[slot] == null) {
+          continue;
+        }
+        final int index = this.voiceSources[slot];
+        final float duration = this.sounds[slot].duration();
+        float time = this.times[slot] + (_deltaTime * this.pitches[slot]);
+        if (time >= duration) {
+          if (this.looping[slot]) {
+            time %= duration;
+          } else if (index == VoiceManager.VIRTUAL) {
+            this.finish(slot);
+            continue;
+          } else {
+            time = duration;
+          }
+        }
+        if ((index != VoiceManager.VIRTUAL) && !this.looping[slot]
+            && (AL10.alGetSourcei(this.sources[index],
+              AL10.AL_SOURCE_STATE) == AL10.AL_STOPPED)) {
+          this.unbind(slot, false);
+          this.finish(slot);
+          continue;
+        }
+        this.times[slot] = time;
+        float loudness = this.loudness(slot);
+        if (loudness < VoiceManager.AUDIBLE_GAIN) {
+          continue;
+        }
+        if (index != VoiceManager.VIRTUAL) {
+          loudness *= VoiceManager.HYSTERESIS;
+        }
+        this.keys[count] = ((long) (VoiceManager.MAX_PRIORITY
+          - this.priorities[slot]) << VoiceManager.PRIORITY_SHIFT)
+          | (~Float.floatToRawIntBits(loudness) & VoiceManager.LOUDNESS_MASK);
+        this.ranked[count] = slot;
+        count++;
+      }
+      return count;
+    }
+
+    /**
+     * Computes the gain a voice reaches the listener with.
+     *
+     * @param _slot the voice slot
+     * @return the attenuated gain
+     */
+    private float loudness(
+        final int _slot) {
+      if (this.sounds[_slot].channels() != 1) {
+        return this.gains[_slot];
+      }
+      final int offset = _slot * VoiceManager.POSITION_STRIDE;
+      final float dx = this.positions[offset] - this.listener[0];
+      final float dy = this.positions[offset + 1] - this.listener[1];
+      final float dz = this.positions[offset + 2] - this.listener[2];
+      final float reference = this.referenceDistances[_slot];
+      final float distance = Math.min(Math.max(
+        (float) Math.sqrt((dx * dx) + (dy * dy) + (dz * dz)), reference),
+        this.maxDistances[_slot]);
+      return this.gains[_slot] * reference / distance;
+    }
+
+    /**
+     * Binds a free source to a virtual voice and plays it from the voice
+     * time, silent if it resumes in the middle of the sound.
+     *
+     * @param _slot the voice slot
+     */
+    private void bind(
+        final int _slot) {
+      final int index = this.freeSources[--this.freeCount];
+      final int source = this.sources[index];
+      this.sourceVoices[index] = _slot;
+      this.voiceSources[_slot] = index;
+      AL10.alSourcei(source, AL10.AL_BUFFER, this.sounds[_slot].buffer());
+      AL10.alSourcei(source, AL10.AL_LOOPING,
+        this.looping[_slot] ? AL10.AL_TRUE : AL10.AL_FALSE);
+      AL10.alSourcef(source, AL10.AL_REFERENCE_DISTANCE,
+        this.referenceDistances[_slot]);
+      AL10.alSourcef(source, AL10.AL_MAX_DISTANCE,
+        this.maxDistances[_slot]);
+      AL10.alSourcef(source, AL11.AL_SEC_OFFSET, this.times[_slot]);
+      this.apply(_slot, source);
+      if (this.times[_slot] > 0.0F) {
+        AL10.alSourcef(source, AL10.AL_GAIN, 0.0F);
+        this.sourceStarts[index] = this.epoch;
+      }
+      AL10.alSourcePlay(source);
+    }
+
+    /**
+     * Takes the source of a real voice, silenced to be stopped on the
+     * next update or stopped at once.
+     *
+     * @param _slot the voice slot
+     * @param _fade whether the source fades out
+     */
+    private void unbind(
+        final int _slot,
+        final boolean _fade) {
+      final int index = this.voiceSources[_slot];
+      if (index == VoiceManager.VIRTUAL) {
+        return;
+      }
+      this.voiceSources[_slot] = VoiceManager.VIRTUAL;
+      this.sourceVoices[index] = VoiceManager.VIRTUAL;
+      final int source = this.sources[index];
+      if (_fade) {
+        AL10.alSourcef(source, AL10.AL_GAIN, 0.0F);
+        this.fadingSources[this.fadingCount++] = index;
+      } else {
+        AL10.alSourceStop(source);
+        AL10.alSourcei(source, AL10.AL_BUFFER, 0);
+        this.freeSources[this.freeCount++] = index;
+      }
+    }
+
+    /**
+     * Copies the position, gain and pitch of a voice to its source.
+     *
+     * @param _slot the voice slot
+     * @param _source the OpenAL source
+     */
+    private void apply(
+        final int _slot,
+        final int _source) {
+      final int offset = _slot * VoiceManager.POSITION_STRIDE;
+      AL10.alSource3f(_source, AL10.AL_POSITION, this.positions[offset],
+        this.positions[offset + 1], this.positions[offset + 2]);
+      AL10.alSourcef(_source, AL10.AL_GAIN, this.gains[_slot]);
+      AL10.alSourcef(_source, AL10.AL_PITCH, this.pitches[_slot]);
+    }
+
+    /**
+     * Releases the handle of a voice without a source, unless it was
+     * stopped in the meantime.
+     *
+     * @param _slot the voice slot
+     */
+    private void finish(
+        final int _slot) {
+      this.sounds[_slot] = null;
+      synchronized (this.lock) {
+        if (this.handles.isValid(this.voiceHandles[_slot])) {
+          this.handles.release(this.voiceHandles[_slot]);
+        }
+      }
+    }
+
+    /**
+     * Records the opcode, handle and slot of a voice command. Called with
+     * the lock held.
+     *
+     * @param _command the opcode
+     * @param _voice the voice handle
+     * @throws IllegalArgumentException if the handle is not valid
+     */
+    private void record(
+        final int _command,
+        final int _voice) {
+      final int slot = this.handles.slot(_voice);
+      this.recording.add(_command);
+      this.recording.add(_voice);
+      this.recording.add(slot);
+    }
+
+    /**
+     * Records three floats by their bits. Called with the lock held.
+     *
+     * @param _x the first float
+     * @param _y the second float
+     * @param _z the third float
+     */
+    private void recordFloats(
+        final float _x,
+        final float _y,
+        final float _z) {
+      this.recording.add(Float.floatToRawIntBits(_x));
+      this.recording.add(Float.floatToRawIntBits(_y));
+      this.recording.add(Float.floatToRawIntBits(_z));
+    }
+
+    /**
+     * Swaps the command buffers under the lock and applies the recorded
+     * commands in order. Commands of a voice that ended before they were
+     * applied are skipped.
+     */
+    private void replay() {
+      synchronized (this.lock) {
+        final IntList commands = this.recording;
+        this.recording = this.replaying;
+        this.replaying = commands;
+        final Sound[] played = this.recordingSounds;
+        this.recordingSounds = this.replayingSounds;
+        this.replayingSounds = played;
+        this.recordingSoundCount = 0;
+      }
+      final int[] words = this.replaying.array();
+      final int size = this.replaying.size();
+      int word = 0;
+      while (word < size) {
+        final int command = words[word++];
+        if (command == VoiceManager.LISTENER) {
+          this.listener[0] = Float.intBitsToFloat(words[word++]);
+          this.listener[1] = Float.intBitsToFloat(words[word++]);
+          this.listener[2] = Float.intBitsToFloat(words[word++]);
+          AL10.alListener3f(AL10.AL_POSITION, this.listener[0],
+            this.listener[1], this.listener[2]);
+          continue;
+        }
+        final int voice = words[word++];
+        final int slot = words[word++];
+        if (command == VoiceManager.PLAY) {
+          word = this.replayPlay(voice, slot, words, word);
+          continue;
+        }
+        final boolean live = (slot < this.slotCount)
+          && (this.sounds[slot] != null)
+          && (this.voiceHandles[slot] == voice);
+        switch (command) {
+          case VoiceManager.STOP:
+            if (live) {
+              this.unbind(slot, true);
+              this.sounds[slot] = null;
+            }
+            break;
+          case VoiceManager.POSITION:
+            if (live) {
+              this.setPosition(slot, Float.intBitsToFloat(words[word]),
+                Float.intBitsToFloat(words[word + 1]),
+                Float.intBitsToFloat(words[word + 2]));
+            }
+            word += VoiceManager.POSITION_STRIDE;
+            break;
+          case VoiceManager.GAIN:
+            if (live) {
+              this.gains[slot] = Float.intBitsToFloat(words[word]);
+            }
+            word++;
+            break;
+          case VoiceManager.PITCH:
+            if (live) {
+              this.pitches[slot] = Float.intBitsToFloat(words[word]);
+            }
+            word++;
+            break;
+          case VoiceManager.DISTANCE:
+            if (live) {
+              this.setDistance(slot, Float.intBitsToFloat(words[word]),
+                Float.intBitsToFloat(words[word + 1]));
+            }
+            word += 2;
+            break;
+          default:
+            throw new IllegalStateException(
+              "Unknown voice command: " + command);
+        }
+      }
+      this.replaying.clear();
+    }
+
+    /**
+     * Applies a play command.
+     *
+     * @param _voice the voice handle
+     * @param _slot the voice slot
+     * @param _words the commands
+     * @param _word the first word after the slot
+     * @return the first word of the next command
+     */
+    private int replayPlay(
+        final int _voice,
+        final int _slot,
+        final int[] _words,
+        final int _word) {
+      int word = _word;
+      if (_slot >= this.sounds.length) {
+        this.grow(Math.max(_slot + 1, this.sounds.length * 2));
+      }
+      this.slotCount = Math.max(this.slotCount, _slot + 1);
+      final int sound = _words[word++];
+      this.sounds[_slot] = this.replayingSounds[sound];
+      this.replayingSounds[sound] = null;
+      this.voiceHandles[_slot] = _voice;
+      this.setPosition(_slot, Float.intBitsToFloat(_words[word]),
+        Float.intBitsToFloat(_words[word + 1]),
+        Float.intBitsToFloat(_words[word + 2]));
+      word += VoiceManager.POSITION_STRIDE;
+      this.gains[_slot] = Float.intBitsToFloat(_words[word++]);
+      this.pitches[_slot] = 1.0F;
+      this.referenceDistances[_slot] = 1.0F;
+      this.maxDistances[_slot] = Float.MAX_VALUE;
+      this.priorities[_slot] = _words[word++];
+      this.looping[_slot] = _words[word++] != 0;
+      this.times[_slot] = 0.0F;
+      this.voiceSources[_slot] = VoiceManager.VIRTUAL;
+      return word;
+    }
+
+    /**
+     * Stores the attenuation distances of a voice and copies them to its
+     * source.
+     *
+     * @param _slot the voice slot
+     * @param _reference the reference distance
+     * @param _max the maximum distance
+     */
+    private void setDistance(
+        final int _slot,
+        final float _reference,
+        final float _max) {
+      this.referenceDistances[_slot] = _reference;
+      this.maxDistances[_slot] = _max;
+      final int index = this.voiceSources[_slot];
+      if (index != VoiceManager.VIRTUAL) {
+        final int source = this.sources[index];
+        AL10.alSourcef(source, AL10.AL_REFERENCE_DISTANCE, _reference);
+        AL10.alSourcef(source, AL10.AL_MAX_DISTANCE, _max);
+      }
+    }
+
+    /**
+     * Stores the position of a voice.
+     *
+     * @param _slot the voice slot
+     * @param _x the x coordinate
+     * @param _y the y coordinate
+     * @param _z the z coordinate
+     */
+    private void setPosition(
+        final int _slot,
+        final float _x,
+        final float _y,
+        final float _z) {
+      final int offset = _slot * VoiceManager.POSITION_STRIDE;
+      this.positions[offset] = _x;
+      this.positions[offset + 1] = _y;
+      this.positions[offset + 2] = _z;
+    }
+
+    /**
+     * Grows the voice arrays.
+     *
+     * @param _capacity the new number of voice slots
+     */
+    private void grow(
+        final int _capacity) {
+      this.sounds = Arrays.copyOf(this.sounds, _capacity);
+      this.positions = Arrays.copyOf(this.positions,
+        _capacity * VoiceManager.POSITION_STRIDE);
+      this.gains = Arrays.copyOf(this.gains, _capacity);
+      this.pitches = Arrays.copyOf(this.pitches, _capacity);
+      this.referenceDistances = Arrays.copyOf(this.referenceDistances,
+        _capacity);
+      this.maxDistances = Arrays.copyOf(this.maxDistances, _capacity);
+      this.priorities = Arrays.copyOf(this.priorities, _capacity);
+      this.looping = Arrays.copyOf(this.looping, _capacity);
+      this.times = Arrays.copyOf(this.times, _capacity);
+      this.voiceSources = Arrays.copyOf(this.voiceSources, _capacity);
+      this.voiceHandles = Arrays.copyOf(this.voiceHandles, _capacity);
+      this.selections = Arrays.copyOf(this.selections, _capacity);
+      this.keys = Arrays.copyOf(this.keys, _capacity);
+      this.ranked = Arrays.copyOf(this.ranked, _capacity);
+      this.scratchKeys = new long[_capacity];
+      this.scratchRanked = new int[_capacity];
+    }
+
+  }
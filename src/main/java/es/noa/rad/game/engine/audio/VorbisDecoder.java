@@ -0,0 +1,167 @@
+package es.noa.rad.game.engine.audio;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Path;
+
+import org.lwjgl.stb.STBVorbis;
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Incremental Ogg Vorbis decoder over a file.
+   *
+   * <p>The file is read through {@code stb_vorbis} as it is decoded, so
+   * only the decoder state (tens of kilobytes) stays in memory however long
+   * the file is. Samples are decoded to interleaved signed 16-bit frames.
+   *
+   * <p>Not thread-safe: a decoder is used by one thread at a time.
+   *
+   * @see AudioStreamer
+   */
+  public final class VorbisDecoder {
+
+    /**
+     * Decoded file.
+     */
+    private final Path path;
+
+    /**
+     * Decoder handle.
+     */
+    private final long handle;
+
+    /**
+     * Number of channels.
+     */
+    private final int channels;
+
+    /**
+     * Sample rate in hertz.
+     */
+    private final int sampleRate;
+
+    /**
+     * Number of frames of the file.
+     */
+    private final int frames;
+
+    /**
+     * Creates a decoder on an open handle.
+     *
+     * @param _path the decoded file
+     * @param _handle the decoder handle
+     * @param _info the stream information
+     */
+    private VorbisDecoder(
+        final Path _path,
+        final long _handle,
+        final STBVorbisInfo _info) {
+      this.path = _path;
+      this.handle = _handle;
+      this.channels = _info.channels();
+      this.sampleRate = _info.sample_rate();
+      this.frames = STBVorbis.stb_vorbis_stream_length_in_samples(_handle);
+    }
+
+    /**
+     * Opens a file and reads its headers.
+     *
+     * @param _path the Ogg Vorbis file
+     * @return the decoder, positioned at the first frame
+     * @throws IOException if the file cannot be opened or is not a Vorbis
+     *     stream
+     */
+    public static VorbisDecoder open(
+        final Path _path) throws IOException {
+      try (MemoryStack stack = MemoryStack.stackPush()) {
+        final IntBuffer error = stack.mallocInt(1);
+        final long handle = STBVorbis.stb_vorbis_open_filename(
+          _path.toString(), error, null);
+        if (handle == MemoryUtil.NULL) {
+          throw new IOException("Unable to open " + _path
+            + ": stb_vorbis error " + error.get(0));
+        }
+        final STBVorbisInfo info = STBVorbisInfo.malloc(stack);
+        STBVorbis.stb_vorbis_get_info(handle, info);
+        return new VorbisDecoder(_path, handle, info);
+      }
+    }
+
+    /**
+     * Gets the decoded file.
+     *
+     * @return the path
+     */
+    public Path path() {
+      return this.path;
+    }
+
+    /**
+     * Gets the number of channels.
+     *
+     * @return the channel count
+     */
+    public int channels() {
+      return this.channels;
+    }
+
+    /**
+     * Gets the sample rate.
+     *
+     * @return the rate in hertz
+     */
+    public int sampleRate() {
+      return this.sampleRate;
+    }
+
+    /**
+     * Gets the length of the file.
+     *
+     * @return the frame count
+     */
+    public int frames() {
+      return this.frames;
+    }
+
+    /**
+     * Decodes the next frames.
+     *
+     * @param _dest the buffer receiving interleaved frames from its
+     *     position, which advances past them
+     * @return the number of frames decoded, fewer than fit in the buffer
+     *     only at the end of the file
+     */
+    public int decode(
+        final ShortBuffer _dest) {
+      int decoded = 0;
+      while (_dest.remaining() >= this.channels) {
+        final int count = STBVorbis.nstb_vorbis_get_samples_short_interleaved(
+          this.handle, this.channels, MemoryUtil.memAddress(_dest),
+          _dest.remaining());
+        if (count == 0) {
+          break;
+        }
+        _dest.position(_dest.position() + (count * this.channels));
+        decoded += count;
+      }
+      return decoded;
+    }
+
+    /**
+     * Moves back to the first frame.
+     */
+    public void rewind() {
+      STBVorbis.stb_vorbis_seek_start(this.handle);
+    }
+
+    /**
+     * Closes the file and frees the decoder.
+     */
+    public void close() {
+      STBVorbis.stb_vorbis_close(this.handle);
+    }
+
+  }
@@ -0,0 +1,147 @@
+package es.noa.rad.game.engine.configuration.settings;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+
+  /**
+   * Enumeration of asset loading configuration settings.
+   *
+   * <p>This enum provides type-safe access to asset loading configuration
+   * properties from {@code application.properties}. Each constant
+   * includes its property key, expected type, and default value.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * int threads = AssetSettings.ASSET_TEXTURE_THREADS.get();
+   * }</pre>
+   *
+   * @see Configuration
+   * @see RenderSettings
+   */
+  public enum AssetSettings {
+
+    /**
+     * Number of worker threads decoding textures.
+     *
+     * <p>Zero uses one thread less than the available processors, with a
+     * minimum of one, leaving a core for the game thread.
+     *
+     * <p>Property key: {@code asset.texture.threads}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 0}
+     */
+    ASSET_TEXTURE_THREADS(
+      "asset.texture.threads",
+      Integer.class,
+      0
+    ),
+
+    /**
+     * Number of decoded textures waiting for the render thread before the
+     * decoding workers stop and wait.
+     *
+     * <p>Bounds the memory held by decoded but not yet uploaded textures.
+     *
+     * <p>Property key: {@code asset.texture.queue.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 32}
+     */
+    ASSET_TEXTURE_QUEUE_CAPACITY(
+      "asset.texture.queue.capacity",
+      Integer.class,
+      32
+    ),
+
+    /**
+     * Memory budget of the asset cache in bytes.
+     *
+     * <p>Unreferenced assets are evicted, least recently used first, while
+     * the cached assets exceed this size.
+     *
+     * <p>Property key: {@code asset.cache.budget}
+     * <p>Type: {@code Long}
+     * <p>Default: {@code 268435456} (256 MiB)
+     */
+    ASSET_CACHE_BUDGET(
+      "asset.cache.budget",
+      Long.class,
+      268435456L
+    );
+
+    /**
+     * Property key in application.properties file.
+     */
+    private final String property;
+
+    /**
+     * Java class type for automatic conversion.
+     */
+    private final Class<?> classType;
+
+    /**
+     * Default value if property is not found in configuration.
+     */
+    private final Object defaultValue;
+
+    /**
+     * Private constructor for enum constants.
+     *
+     * @param _property the property key
+     * @param _classType the expected type
+     * @param _defaultValue the fallback value
+     */
+    AssetSettings(
+        final String _property,
+        final Class<?> _classType,
+        final Object _defaultValue) {
+      this.property = _property;
+      this.classType = _classType;
+      this.defaultValue = _defaultValue;
+    }
+
+    /**
+     * Gets the property value from configuration with enum default.
+     *
+     * <p>Returns the value from {@code application.properties},
+     * or the default value defined in this enum if not found.
+     *
+     * @param <T> the type of the property value
+     * @return the property value converted to the expected type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get() {
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          (T) this.defaultValue
+        );
+    }
+
+    /**
+     * Gets the property value with a custom default.
+     *
+     * <p>Allows overriding the enum's default value with a custom one.
+     * Useful for runtime-specific defaults.
+     *
+     * @param <T> the type of the property value
+     * @param _defaultValue custom default to use if property not found
+     * @return the property value or custom default
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(
+        final T _defaultValue) {
+      /* Establish which default value to use. */
+      T propertyValue = (T) this.defaultValue;
+      if (_defaultValue != null) {
+        propertyValue = _defaultValue;
+      }
+
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          propertyValue
+        );
+    }
+
+  }
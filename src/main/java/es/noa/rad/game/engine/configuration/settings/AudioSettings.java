@@ -0,0 +1,203 @@
+package es.noa.rad.game.engine.configuration.settings;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+
+  /**
+   * Enumeration of audio configuration settings.
+   *
+   * <p>This enum provides type-safe access to audio configuration
+   * properties from {@code application.properties}. Each constant
+   * includes its property key, expected type, and default value.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * String device = AudioSettings.AUDIO_DEVICE.get();
+   * }</pre>
+   *
+   * @see Configuration
+   * @see GameSettings
+   */
+  public enum AudioSettings {
+
+    /**
+     * Audio device opened by the window.
+     *
+     * <p>Accepted values:
+     * <ul>
+     *   <li>{@code none}: no audio</li>
+     *   <li>{@code loopback}: OpenAL Soft loopback device, mixed by the
+     *       game loop without sound hardware</li>
+     *   <li>{@code default}: the default output device</li>
+     *   <li>any other value: the output device with that name</li>
+     * </ul>
+     *
+     * <p>Property key: {@code audio.device}
+     * <p>Type: {@code String}
+     * <p>Default: {@code none}
+     */
+    AUDIO_DEVICE(
+      "audio.device",
+      String.class,
+      "none"
+    ),
+
+    /**
+     * Mixing frequency of the loopback device in hertz.
+     *
+     * <p>Property key: {@code audio.frequency}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 48000}
+     */
+    AUDIO_FREQUENCY(
+      "audio.frequency",
+      Integer.class,
+      48000
+    ),
+
+    /**
+     * Number of OpenAL buffers of the ring of every audio stream.
+     *
+     * <p>Property key: {@code audio.stream.buffers}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 4}
+     */
+    AUDIO_STREAM_BUFFERS(
+      "audio.stream.buffers",
+      Integer.class,
+      4
+    ),
+
+    /**
+     * Number of frames decoded into every buffer of an audio stream.
+     *
+     * <p>Property key: {@code audio.stream.buffer.frames}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 8192}
+     */
+    AUDIO_STREAM_BUFFER_FRAMES(
+      "audio.stream.buffer.frames",
+      Integer.class,
+      8192
+    ),
+
+    /**
+     * Time between two passes of the streamer thread in milliseconds.
+     *
+     * <p>The buffers of a stream must hold more than this, or sources run
+     * dry between passes.
+     *
+     * <p>Property key: {@code audio.stream.period}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 10}
+     */
+    AUDIO_STREAM_PERIOD(
+      "audio.stream.period",
+      Integer.class,
+      10
+    ),
+
+    /**
+     * Number of OpenAL sources mixing the voices of the voice manager;
+     * the other voices play virtually.
+     *
+     * <p>Property key: {@code audio.voices}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 32}
+     */
+    AUDIO_VOICES(
+      "audio.voices",
+      Integer.class,
+      32
+    ),
+
+    /**
+     * Number of voices the voice manager holds before growing.
+     *
+     * <p>Property key: {@code audio.voice.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 1024}
+     */
+    AUDIO_VOICE_CAPACITY(
+      "audio.voice.capacity",
+      Integer.class,
+      1024
+    );
+
+    /**
+     * Property key in application.properties file.
+     */
+    private final String property;
+
+    /**
+     * Java class type for automatic conversion.
+     */
+    private final Class<?> classType;
+
+    /**
+     * Default value if property is not found in configuration.
+     */
+    private final Object defaultValue;
+
+    /**
+     * Private constructor for enum constants.
+     *
+     * @param _property the property key
+     * @param _classType the expected type
+     * @param _defaultValue the fallback value
+     */
+    AudioSettings(
+        final String _property,
+        final Class<?> _classType,
+        final Object _defaultValue) {
+      this.property = _property;
+      this.classType = _classType;
+      this.defaultValue = _defaultValue;
+    }
+
+    /**
+     * Gets the property value from configuration with enum default.
+     *
+     * <p>Returns the value from {@code application.properties},
+     * or the default value defined in this enum if not found.
+     *
+     * @param <T> the type of the property value
+     * @return the property value converted to the expected type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get() {
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          (T) this.defaultValue
+        );
+    }
+
+    /**
+     * Gets the property value with a custom default.
+     *
+     * <p>Allows overriding the enum's default value with a custom one.
+     * Useful for runtime-specific defaults.
+     *
+     * @param <T> the type of the property value
+     * @param _defaultValue custom default to use if property not found
+     * @return the property value or custom default
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(
+        final T _defaultValue) {
+      /* Establish which default value to use. */
+      T propertyValue = (T) this.defaultValue;
+      if (_defaultValue != null) {
+        propertyValue = _defaultValue;
+      }
+
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          propertyValue
+        );
+    }
+
+  }
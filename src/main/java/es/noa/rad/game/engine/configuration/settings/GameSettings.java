@@ -15,6 +15,11 @@ import es.noa.rad.game.engine.configuration.Configuration;
    *   <li>FPS limiting when VSync is disabled</li>
    *   <li>Fixed timestep update rate (UPS)</li>
    *   <li>Spiral of death protection parameters</li>
+   *   <li>Initial capacity of the scene graph</li>
+   *   <li>Chunk size of the entity world</li>
+   *   <li>Worker count of the job system</li>
+   *   <li>Size and buffering of the frame arena</li>
+   *   <li>Debug checks of the engine</li>
    * </ul>
    *
    * <p>Usage example:
@@ -111,6 +116,118 @@ import es.noa.rad.game.engine.configuration.Configuration;
       "game.maximum.accumulated.time",
       Float.class,
       0.5F
+    ),
+
+    /**
+     * Initial number of nodes of the scene graph.
+     *
+     * <p>The transform blocks are preallocated for this many nodes and
+     * grow when the scene holds more.
+     *
+     * <p>Property key: {@code game.scene.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 4096}
+     */
+    GAME_SCENE_CAPACITY(
+      "game.scene.capacity",
+      Integer.class,
+      4096
+    ),
+
+    /**
+     * Number of entities of a chunk of the entity world.
+     *
+     * <p>Rounded up to a power of two. Larger chunks mean fewer, longer
+     * loops per query; smaller chunks mean finer parallel splitting.
+     *
+     * <p>Property key: {@code game.entity.chunk.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 1024}
+     */
+    GAME_ENTITY_CHUNK_CAPACITY(
+      "game.entity.chunk.capacity",
+      Integer.class,
+      1024
+    ),
+
+    /**
+     * Initial number of animated characters of the animator.
+     *
+     * <p>The per-character state is preallocated for this many characters
+     * and grows when the game animates more.
+     *
+     * <p>Property key: {@code game.animation.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 256}
+     */
+    GAME_ANIMATION_CAPACITY(
+      "game.animation.capacity",
+      Integer.class,
+      256
+    ),
+
+    /**
+     * Number of workers of the job system.
+     *
+     * <p>Zero sizes the pool to the number of available processors.
+     *
+     * <p>Property key: {@code game.job.threads}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 0}
+     */
+    GAME_JOB_THREADS(
+      "game.job.threads",
+      Integer.class,
+      0
+    ),
+
+    /**
+     * Initial size in bytes of every buffer of the frame arena.
+     *
+     * <p>Buffers grow to the largest frame seen, so this only avoids
+     * overflow blocks while the game warms up.
+     *
+     * <p>Property key: {@code game.frame.arena.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 1048576}
+     */
+    GAME_FRAME_ARENA_CAPACITY(
+      "game.frame.arena.capacity",
+      Integer.class,
+      1048576
+    ),
+
+    /**
+     * Number of buffers of the frame arena.
+     *
+     * <p>Memory allocated during a frame stays valid for this many frames:
+     * two lets a consumer run one frame behind, three two frames behind.
+     *
+     * <p>Property key: {@code game.frame.arena.buffers}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 2}
+     */
+    GAME_FRAME_ARENA_BUFFERS(
+      "game.frame.arena.buffers",
+      Integer.class,
+      2
+    ),
+
+    /**
+     * Enable or disable the debug checks of the engine.
+     *
+     * <p>When enabled, misuse that is otherwise silent or repaired, such
+     * as math stack temporaries escaping their frame or frames left
+     * pushed, fails loudly. Meant for development builds.
+     *
+     * <p>Property key: {@code game.debug.mode}
+     * <p>Type: {@code Boolean}
+     * <p>Default: {@code false}
+     */
+    GAME_DEBUG_MODE(
+      "game.debug.mode",
+      Boolean.class,
+      false
     );
 
     /**
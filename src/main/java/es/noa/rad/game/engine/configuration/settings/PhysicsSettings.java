@@ -0,0 +1,140 @@
+package es.noa.rad.game.engine.configuration.settings;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+
+  /**
+   * Enumeration of physics configuration settings.
+   *
+   * <p>This enum provides type-safe access to physics configuration
+   * properties from {@code application.properties}. Each constant
+   * includes its property key, expected type, and default value.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * int iterations = PhysicsSettings.PHYSICS_SOLVER_ITERATIONS.get();
+   * }</pre>
+   *
+   * @see Configuration
+   * @see GameSettings
+   */
+  public enum PhysicsSettings {
+
+    /**
+     * Number of rigid bodies the physics world holds before growing.
+     *
+     * <p>Property key: {@code physics.body.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 1024}
+     */
+    PHYSICS_BODY_CAPACITY(
+      "physics.body.capacity",
+      Integer.class,
+      1024
+    ),
+
+    /**
+     * Number of velocity iterations of the contact solver per step.
+     *
+     * <p>More iterations make tall stacks stiffer at a linear cost.
+     *
+     * <p>Property key: {@code physics.solver.iterations}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 10}
+     */
+    PHYSICS_SOLVER_ITERATIONS(
+      "physics.solver.iterations",
+      Integer.class,
+      10
+    ),
+
+    /**
+     * Gravity acceleration along the y axis in units per second squared.
+     *
+     * <p>Property key: {@code physics.gravity}
+     * <p>Type: {@code Float}
+     * <p>Default: {@code -9.81}
+     */
+    PHYSICS_GRAVITY(
+      "physics.gravity",
+      Float.class,
+      -9.81f
+    );
+
+    /**
+     * Property key in application.properties file.
+     */
+    private final String property;
+
+    /**
+     * Java class type for automatic conversion.
+     */
+    private final Class<?> classType;
+
+    /**
+     * Default value if property is not found in configuration.
+     */
+    private final Object defaultValue;
+
+    /**
+     * Private constructor for enum constants.
+     *
+     * @param _property the property key
+     * @param _classType the expected type
+     * @param _defaultValue the fallback value
+     */
+    PhysicsSettings(
+        final String _property,
+        final Class<?> _classType,
+        final Object _defaultValue) {
+      this.property = _property;
+      this.classType = _classType;
+      this.defaultValue = _defaultValue;
+    }
+
+    /**
+     * Gets the property value from configuration with enum default.
+     *
+     * <p>Returns the value from {@code application.properties},
+     * or the default value defined in this enum if not found.
+     *
+     * @param <T> the type of the property value
+     * @return the property value converted to the expected type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get() {
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          (T) this.defaultValue
+        );
+    }
+
+    /**
+     * Gets the property value with a custom default.
+     *
+     * <p>Allows overriding the enum's default value with a custom one.
+     * Useful for runtime-specific defaults.
+     *
+     * @param <T> the type of the property value
+     * @param _defaultValue custom default to use if property not found
+     * @return the property value or custom default
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(
+        final T _defaultValue) {
+      /* Establish which default value to use. */
+      T propertyValue = (T) this.defaultValue;
+      if (_defaultValue != null) {
+        propertyValue = _defaultValue;
+      }
+
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          propertyValue
+        );
+    }
+
+  }
@@ -0,0 +1,307 @@
+package es.noa.rad.game.engine.configuration.settings;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+
+  /**
+   * Enumeration of rendering configuration settings.
+   *
+   * <p>This enum provides type-safe access to renderer configuration
+   * properties from {@code application.properties}. Each constant
+   * includes its property key, expected type, and default value.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * int capacity = RenderSettings.RENDER_QUEUE_CAPACITY.get();
+   * }</pre>
+   *
+   * @see Configuration
+   * @see GameSettings
+   * @see WindowSettings
+   */
+  public enum RenderSettings {
+
+    /**
+     * Initial number of draw commands the render queue can hold per frame.
+     *
+     * <p>The queue preallocates its sort keys and off-heap payload for
+     * this many commands. It grows when a frame submits more, so the
+     * value should cover the typical scene to avoid reallocations.
+     *
+     * <p>Property key: {@code render.queue.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 65536}
+     */
+    RENDER_QUEUE_CAPACITY(
+      "render.queue.capacity",
+      Integer.class,
+      65536
+    ),
+
+    /**
+     * Render backend the render queue is submitted to.
+     *
+     * <p>Accepted values:
+     * <ul>
+     *   <li>{@code none}: OpenGL context only, draw commands are
+     *       discarded</li>
+     *   <li>{@code recording}: commands are recorded without drawing</li>
+     *   <li>{@code bgfx}: commands are drawn through bgfx</li>
+     * </ul>
+     *
+     * <p>Property key: {@code render.backend}
+     * <p>Type: {@code String}
+     * <p>Default: {@code none}
+     */
+    RENDER_BACKEND(
+      "render.backend",
+      String.class,
+      "none"
+    ),
+
+    /**
+     * Graphics API used by the bgfx backend.
+     *
+     * <p>Accepted values: {@code auto}, {@code noop}, {@code opengl},
+     * {@code vulkan}, {@code direct3d11}, {@code direct3d12} and
+     * {@code metal}. The {@code noop} renderer runs the whole submission
+     * path without a GPU.
+     *
+     * <p>Property key: {@code render.bgfx.renderer}
+     * <p>Type: {@code String}
+     * <p>Default: {@code auto}
+     */
+    RENDER_BGFX_RENDERER(
+      "render.bgfx.renderer",
+      String.class,
+      "auto"
+    ),
+
+    /**
+     * Size in bytes of the bgfx transient vertex buffer pool.
+     *
+     * <p>Bounds the amount of vertex data submitted in a single frame.
+     *
+     * <p>Property key: {@code render.bgfx.transient.vertex.buffer.size}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 33554432} (32 MiB)
+     */
+    RENDER_BGFX_TRANSIENT_VERTEX_BUFFER_SIZE(
+      "render.bgfx.transient.vertex.buffer.size",
+      Integer.class,
+      33554432
+    ),
+
+    /**
+     * Size in bytes of the bgfx transient index buffer pool.
+     *
+     * <p>Bounds the amount of index data submitted in a single frame.
+     *
+     * <p>Property key: {@code render.bgfx.transient.index.buffer.size}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 16777216} (16 MiB)
+     */
+    RENDER_BGFX_TRANSIENT_INDEX_BUFFER_SIZE(
+      "render.bgfx.transient.index.buffer.size",
+      Integer.class,
+      16777216
+    ),
+
+    /**
+     * Size in bytes of the blocks reserved by the mesh arena.
+     *
+     * <p>Mesh vertex and index data are suballocated from blocks of this
+     * size; larger meshes get a dedicated block.
+     *
+     * <p>Property key: {@code render.mesh.arena.block.size}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 4194304} (4 MiB)
+     */
+    RENDER_MESH_ARENA_BLOCK_SIZE(
+      "render.mesh.arena.block.size",
+      Integer.class,
+      4194304
+    ),
+
+    /**
+     * Initial number of sprites the sprite batch can hold per frame.
+     *
+     * <p>The batch preallocates its recording arrays and off-heap vertex
+     * staging for this many sprites and grows when a frame draws more.
+     *
+     * <p>Property key: {@code render.sprite.batch.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 16384}
+     */
+    RENDER_SPRITE_BATCH_CAPACITY(
+      "render.sprite.batch.capacity",
+      Integer.class,
+      16384
+    ),
+
+    /**
+     * Initial number of mesh draws the instance batch can hold per frame.
+     *
+     * <p>The batch preallocates its recording arrays and off-heap instance
+     * data for this many draws and grows when a frame draws more.
+     *
+     * <p>Property key: {@code render.instance.batch.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 16384}
+     */
+    RENDER_INSTANCE_BATCH_CAPACITY(
+      "render.instance.batch.capacity",
+      Integer.class,
+      16384
+    ),
+
+    /**
+     * Simplification error in pixels tolerated when selecting a level of
+     * detail.
+     *
+     * <p>Property key: {@code render.lod.pixel.error}
+     * <p>Type: {@code Float}
+     * <p>Default: {@code 1.0f}
+     */
+    RENDER_LOD_PIXEL_ERROR(
+      "render.lod.pixel.error",
+      Float.class,
+      1.0F
+    ),
+
+    /**
+     * Fraction of the tolerated error an object must gain before it moves
+     * to a coarser level of detail, to avoid popping between levels.
+     *
+     * <p>Property key: {@code render.lod.hysteresis}
+     * <p>Type: {@code Float}
+     * <p>Default: {@code 0.25f}
+     */
+    RENDER_LOD_HYSTERESIS(
+      "render.lod.hysteresis",
+      Float.class,
+      0.25F
+    ),
+
+    /**
+     * Global level of detail bias: every unit doubles (positive) or halves
+     * (negative) the tolerated error.
+     *
+     * <p>Property key: {@code render.lod.bias}
+     * <p>Type: {@code Float}
+     * <p>Default: {@code 0.0f}
+     */
+    RENDER_LOD_BIAS(
+      "render.lod.bias",
+      Float.class,
+      0.0F
+    ),
+
+    /**
+     * Initial number of scene graph slots the culling bounds hold.
+     *
+     * <p>The local and world bounds of the window grow when the game sets
+     * more boxes than this.
+     *
+     * <p>Property key: {@code render.culling.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 4096}
+     */
+    RENDER_CULLING_CAPACITY(
+      "render.culling.capacity",
+      Integer.class,
+      4096
+    ),
+
+    /**
+     * Maximum number of live particles of the window particle system.
+     *
+     * <p>Particles emitted while the system is full are dropped.
+     *
+     * <p>Property key: {@code render.particle.capacity}
+     * <p>Type: {@code Integer}
+     * <p>Default: {@code 65536}
+     */
+    RENDER_PARTICLE_CAPACITY(
+      "render.particle.capacity",
+      Integer.class,
+      65536
+    );
+
+    /**
+     * Property key in application.properties file.
+     */
+    private final String property;
+
+    /**
+     * Java class type for automatic conversion.
+     */
+    private final Class<?> classType;
+
+    /**
+     * Default value if property is not found in configuration.
+     */
+    private final Object defaultValue;
+
+    /**
+     * Private constructor for enum constants.
+     *
+     * @param _property the property key
+     * @param _classType the expected type
+     * @param _defaultValue the fallback value
+     */
+    RenderSettings(
+        final String _property,
+        final Class<?> _classType,
+        final Object _defaultValue) {
+      this.property = _property;
+      this.classType = _classType;
+      this.defaultValue = _defaultValue;
+    }
+
+    /**
+     * Gets the property value from configuration with enum default.
+     *
+     * <p>Returns the value from {@code application.properties},
+     * or the default value defined in this enum if not found.
+     *
+     * @param <T> the type of the property value
+     * @return the property value converted to the expected type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get() {
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          (T) this.defaultValue
+        );
+    }
+
+    /**
+     * Gets the property value with a custom default.
+     *
+     * <p>Allows overriding the enum's default value with a custom one.
+     * Useful for runtime-specific defaults.
+     *
+     * @param <T> the type of the property value
+     * @param _defaultValue custom default to use if property not found
+     * @return the property value or custom default
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(
+        final T _defaultValue) {
+      /* Establish which default value to use. */
+      T propertyValue = (T) this.defaultValue;
+      if (_defaultValue != null) {
+        propertyValue = _defaultValue;
+      }
+
+      return (T) Configuration.get()
+        .property(
+          this.property,
+          (Class<T>) this.classType,
+          propertyValue
+        );
+    }
+
+  }
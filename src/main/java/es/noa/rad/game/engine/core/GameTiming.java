@@ -4,6 +4,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import es.noa.rad.game.engine.configuration.settings.GameSettings;
+import es.noa.rad.game.engine.memory.FrameArena;
+import es.noa.rad.game.engine.memory.MathStack;
 
   /**
    *
@@ -122,6 +124,13 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
      */
     private double renderTime;
 
+    /**
+     * Off-heap allocator for transient per-frame data, reset at the start
+     * of every tick. Null until {@link #start()} and after
+     * {@link #close()}.
+     */
+    private FrameArena frameArena;
+
     /**
      *
      */
@@ -232,9 +241,14 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
 
     /**
      * Starts the game timing system.
-     * Sets the running flag to true, allowing tick() to process frames.
+     * Sets the running flag to true, allowing tick() to process frames,
+     * and creates the frame arena if there is none yet or it was closed.
      */
     public void start() {
+      /* Per-frame allocator, kept across restarts. */
+      if (this.frameArena == null) {
+        this.frameArena = new FrameArena();
+      }
       this.running = true;
     }
 
@@ -246,6 +260,31 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
       this.running = false;
     }
 
+    /**
+     * Stops the game timing system and releases the memory of the frame
+     * arena. {@link #start()} creates a new arena.
+     */
+    public void close() {
+      this.stop();
+      if (this.frameArena != null) {
+        this.frameArena.close();
+        this.frameArena = null;
+      }
+    }
+
+    /**
+     * Gets the off-heap allocator for transient per-frame data.
+     *
+     * <p>Memory allocated from it during a tick stays valid for as many
+     * ticks as the arena has buffers.
+     *
+     * @return the frame arena, or null if the game timing system is not
+     *     started or was closed
+     */
+    public FrameArena frameArena() {
+      return this.frameArena;
+    }
+
     /**
      * Processes one frame of the game loop.
      * Handles timing accumulation, spiral of death protection,
@@ -253,6 +292,7 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
      *
      * <p>This method performs a complete frame tick:
      * <ol>
+     *   <li>Resets the frame arena</li>
      *   <li>Accumulates elapsed time</li>
      *   <li>Applies spiral of death protection if needed</li>
      *   <li>Processes input</li>
@@ -262,7 +302,7 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
      *   <li>Limits frame rate when VSync is disabled</li>
      * </ol>
      *
-     * <p>FPS limiting (step 7):
+     * <p>FPS limiting (step 8):
      * <ul>
      *   <li>Only active when renderTime > 0
      *       (VSync disabled and FPS cap set)</li>
@@ -279,6 +319,9 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
         return false;
       }
 
+      /* Start a new frame of transient allocations. */
+      this.frameArena.reset();
+
       final long currentTime = System.nanoTime();
 
       /*
@@ -388,6 +431,7 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
         /* Default fallback if not configured the update callback. */
         Window.get().update(_deltaTime);
       }
+      MathStack.checkFrames();
       this.increaseUps();
       final long currentTime = System.currentTimeMillis();
       if (currentTime > this.upsTime) {
@@ -413,6 +457,7 @@ import es.noa.rad.game.engine.configuration.settings.GameSettings;
         /* Default fallback if not configured the render callback. */
         Window.get().render(_deltaTime);
       }
+      MathStack.checkFrames();
       this.increaseFps();
       final long currentTime = System.currentTimeMillis();
       if (currentTime > this.fpsTime) {
@@ -1,11 +1,51 @@
 package es.noa.rad.game.engine.core;
 
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
 import org.lwjgl.glfw.GLFW;
+import org.lwjgl.glfw.GLFWNativeCocoa;
+import org.lwjgl.glfw.GLFWNativeWin32;
+import org.lwjgl.glfw.GLFWNativeX11;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.Platform;
 
+import es.noa.rad.game.engine.animation.Animator;
+import es.noa.rad.game.engine.asset.Texture;
+import es.noa.rad.game.engine.asset.TextureLoader;
+import es.noa.rad.game.engine.audio.AudioDevice;
+import es.noa.rad.game.engine.audio.AudioStreamer;
+import es.noa.rad.game.engine.audio.VoiceManager;
+import es.noa.rad.game.engine.configuration.settings.AudioSettings;
+import es.noa.rad.game.engine.configuration.settings.GameSettings;
+import es.noa.rad.game.engine.configuration.settings.RenderSettings;
+import es.noa.rad.game.engine.ecs.EntityWorld;
+import es.noa.rad.game.engine.ecs.SystemScheduler;
 import es.noa.rad.game.engine.event.KeyboardEventHandler;
 import es.noa.rad.game.engine.event.MouseEventHandler;
+import es.noa.rad.game.engine.event.callback.FramebufferSizeCallback;
+import es.noa.rad.game.engine.job.JobSystem;
+import es.noa.rad.game.engine.job.TaskGraph;
+import es.noa.rad.game.engine.physics.PhysicsWorld;
+import es.noa.rad.game.engine.render.InstanceBatch;
+import es.noa.rad.game.engine.render.MeshArena;
+import es.noa.rad.game.engine.render.RecordingRenderBackend;
+import es.noa.rad.game.engine.render.RenderBackend;
+import es.noa.rad.game.engine.render.RenderQueue;
+import es.noa.rad.game.engine.render.SpriteBatch;
+import es.noa.rad.game.engine.render.bgfx.BgfxRenderBackend;
+import es.noa.rad.game.engine.render.culling.BoundingBoxes;
+import es.noa.rad.game.engine.render.culling.FrustumCuller;
+import es.noa.rad.game.engine.render.culling.OcclusionCuller;
+import es.noa.rad.game.engine.render.lod.LodSelector;
+import es.noa.rad.game.engine.render.particle.ParticleSystem;
+import es.noa.rad.game.engine.scene.SceneGraph;
+import es.noa.rad.game.engine.util.IntList;
 
   /**
    * Singleton manager for the GLFW window and OpenGL context.
@@ -16,6 +56,7 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
    *   <li>OpenGL context setup</li>
    *   <li>Input callback registration</li>
    *   <li>VSync control</li>
+   *   <li>Render queue submission to the active render backend</li>
    *   <li>Frame buffer swapping and event polling</li>
    * </ul>
    *
@@ -40,9 +81,20 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
    *
    * @see KeyboardEventHandler
    * @see MouseEventHandler
+   * @see RenderQueue
    */
   public final class Window {
 
+    /**
+     * Pass of the particle draw, after the opaque pass of the batches.
+     */
+    private static final int PARTICLE_PASS = 1;
+
+    /**
+     * Initial number of occluder slots, a few large nodes per frame.
+     */
+    private static final int OCCLUDER_CAPACITY = 64;
+
     /**
      * Singleton instance of the window manager.
      */
@@ -63,11 +115,267 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
      */
     private int height;
 
+    /**
+     * Framebuffer width in pixels, which differs from the window width on
+     * HiDPI screens.
+     */
+    private int framebufferWidth;
+
+    /**
+     * Framebuffer height in pixels, which differs from the window height
+     * on HiDPI screens.
+     */
+    private int framebufferHeight;
+
+    /**
+     * Callback forwarding framebuffer resizes to {@link #resize(int, int)}.
+     * Null until the window is initialized.
+     */
+    private FramebufferSizeCallback framebufferSizeCallback;
+
     /**
      * Window title displayed in the title bar.
      */
     private String title;
 
+    /**
+     * Queue collecting the draw commands of the current frame.
+     * Null until the window is initialized.
+     */
+    private RenderQueue renderQueue;
+
+    /**
+     * Backend the render queue is submitted to every frame.
+     * Null until a backend is configured; commands are discarded meanwhile.
+     */
+    private RenderBackend renderBackend;
+
+    /**
+     * Off-heap storage for the vertex and index data of the meshes.
+     * Null until the window is initialized.
+     */
+    private MeshArena meshArena;
+
+    /**
+     * Batch collecting the sprites of the current frame.
+     * Null until the window is initialized.
+     */
+    private SpriteBatch spriteBatch;
+
+    /**
+     * Batch grouping the mesh draws of the current frame into instanced
+     * draws. Null until the window is initialized.
+     */
+    private InstanceBatch instanceBatch;
+
+    /**
+     * Loader decoding textures in the background for the render backend.
+     * Null until the window is initialized.
+     */
+    private TextureLoader textureLoader;
+
+    /**
+     * Render backend handle of every texture uploaded, by file.
+     */
+    private final Map<Path, Integer> textures;
+
+    /**
+     * Level of detail selector of the {@link #instanceBatch}.
+     * Null until the window is initialized.
+     */
+    private LodSelector lodSelector;
+
+    /**
+     * Camera facing particles of the game, simulated every update and
+     * drawn every frame. Null until the window is initialized.
+     */
+    private ParticleSystem particleSystem;
+
+    /**
+     * Frustum culling of the world bounds of the scene graph nodes.
+     * Null until the window is initialized.
+     */
+    private FrustumCuller frustumCuller;
+
+    /**
+     * Occlusion culling of the frustum visible slots behind the
+     * {@link #occluderSlots}. Null until the window is initialized.
+     */
+    private OcclusionCuller occlusionCuller;
+
+    /**
+     * Scene graph slots whose world bounds are rasterized as occluders,
+     * chosen by the game. Null until the window is initialized.
+     */
+    private IntList occluderSlots;
+
+    /**
+     * Model space bounds of every scene graph slot, set by the game.
+     * Null until the window is initialized.
+     */
+    private BoundingBoxes localBounds;
+
+    /**
+     * World space bounds of every scene graph slot, recomputed every frame.
+     * Null until the window is initialized.
+     */
+    private BoundingBoxes worldBounds;
+
+    /**
+     * Slots found inside the camera frustum and not occluded by the last
+     * frame.
+     * Null until the window is initialized.
+     */
+    private IntList visibleSlots;
+
+    /**
+     * View matrix of the camera.
+     */
+    private final Matrix4f cameraView;
+
+    /**
+     * Projection times view matrix of the camera.
+     */
+    private final Matrix4f cameraViewProjection;
+
+    /**
+     * Transform hierarchy of the scene, updated every frame.
+     * Null until the window is initialized.
+     */
+    private SceneGraph sceneGraph;
+
+    /**
+     * Entities of the game.
+     * Null until the window is initialized.
+     */
+    private EntityWorld entityWorld;
+
+    /**
+     * Systems run on the entities every update.
+     * Null until the window is initialized.
+     */
+    private SystemScheduler systemScheduler;
+
+    /**
+     * Rigid bodies of the game, stepped every update.
+     * Null until the window is initialized.
+     */
+    private PhysicsWorld physicsWorld;
+
+    /**
+     * Skeletal animations of the game, played every update.
+     * Null until the window is initialized.
+     */
+    private Animator animator;
+
+    /**
+     * Audio device selected in the configuration.
+     * Null until the window is initialized, or without audio.
+     */
+    private AudioDevice audioDevice;
+
+    /**
+     * Music and long sounds streamed from files.
+     * Null until the window is initialized, or without audio.
+     */
+    private AudioStreamer audioStreamer;
+
+    /**
+     * Voices of the sound effects, mixed by a pool of sources.
+     * Null until the window is initialized, or without audio.
+     */
+    private VoiceManager voiceManager;
+
+    /**
+     * Work-stealing workers running the jobs of every update.
+     * Null until the window is initialized.
+     */
+    private JobSystem jobSystem;
+
+    /**
+     * Dependency graph of the jobs of the current update.
+     * Null until the window is initialized.
+     */
+    private TaskGraph updateGraph;
+
+    /**
+     * Job running the entity systems of the current update.
+     */
+    private Runnable systemsJob;
+
+    /**
+     * Job stepping the physics world of the current update.
+     */
+    private Runnable physicsJob;
+
+    /**
+     * Job posing the animated characters of the current update.
+     */
+    private Runnable animationJob;
+
+    /**
+     * Job ranking the voices and mixing the loopback audio device over
+     * the current update.
+     */
+    private Runnable audioJob;
+
+    /**
+     * Job updating the scene graph of the current update.
+     */
+    private Runnable sceneJob;
+
+    /**
+     * Job simulating the particles of the current update.
+     */
+    private Runnable particlesJob;
+
+    /**
+     * Time step of the current update in seconds.
+     */
+    private float updateDeltaTime;
+
+    /**
+     * Dependency graph of the jobs of the current frame.
+     * Null until the window is initialized.
+     */
+    private TaskGraph renderGraph;
+
+    /**
+     * Job computing the world bounds of the scene graph nodes of the
+     * current frame.
+     */
+    private Runnable boundsJob;
+
+    /**
+     * Job culling the world bounds against the camera frustum of the
+     * current frame.
+     */
+    private Runnable cullingJob;
+
+    /**
+     * Job rasterizing the occluders of the current frame and removing the
+     * slots they hide from the visible slots.
+     */
+    private Runnable occlusionJob;
+
+    /**
+     * Job writing the particle quads of the current frame into the render
+     * queue.
+     */
+    private Runnable particleDrawJob;
+
+    /**
+     * Job flushing the sprite and instance batches of the current frame
+     * into the render queue.
+     */
+    private Runnable batchesJob;
+
+    /**
+     * Whether the window owns an OpenGL context. False when the render
+     * backend drives the graphics API itself (bgfx).
+     */
+    private boolean openGlContext;
+
     /**
      * Private constructor to enforce singleton pattern.
      * Initializes window properties to default values.
@@ -75,8 +383,22 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
     private Window() {
       this.width = 0;
       this.height = 0;
+      this.framebufferWidth = 0;
+      this.framebufferHeight = 0;
+      this.framebufferSizeCallback = null;
       this.title = "";
       this.glfwWindow = MemoryUtil.NULL;
+      this.renderQueue = null;
+      this.renderBackend = null;
+      this.meshArena = null;
+      this.spriteBatch = null;
+      this.instanceBatch = null;
+      this.lodSelector = null;
+      this.textureLoader = null;
+      this.textures = new HashMap<>();
+      this.cameraView = new Matrix4f();
+      this.cameraViewProjection = new Matrix4f();
+      this.openGlContext = true;
     }
 
     /**
@@ -115,9 +437,13 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
      *   <li>Initializes GLFW library</li>
      *   <li>Creates window with specified dimensions and title</li>
      *   <li>Centers window on primary monitor</li>
-     *   <li>Makes OpenGL context current</li>
-     *   <li>Registers keyboard, mouse, and scroll callbacks</li>
+     *   <li>Makes OpenGL context current (unless bgfx owns the graphics
+     *       API)</li>
+     *   <li>Registers keyboard, mouse, scroll and framebuffer size
+     *       callbacks</li>
      *   <li>Makes window visible</li>
+     *   <li>Creates the render queue and the configured render
+     *       backend</li>
      * </ol>
      *
      * <p>Prints error messages to stderr if initialization fails.
@@ -142,6 +468,16 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
         return;
       }
 
+      /*
+       * bgfx creates its own graphics context on the native window, so GLFW
+       * must not create an OpenGL one.
+       */
+      final String backend = RenderSettings.RENDER_BACKEND.get();
+      this.openGlContext = !"bgfx".equalsIgnoreCase(backend.trim());
+      if (!this.openGlContext) {
+        GLFW.glfwWindowHint(GLFW.GLFW_CLIENT_API, GLFW.GLFW_NO_API);
+      }
+
       /* Create the window. */
       this.glfwWindow =
         GLFW.glfwCreateWindow(
@@ -173,7 +509,9 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
        * Sets the OpenGL context of the specified window as the current context
        * for the calling thread.
        */
-      GLFW.glfwMakeContextCurrent(this.glfwWindow);
+      if (this.openGlContext) {
+        GLFW.glfwMakeContextCurrent(this.glfwWindow);
+      }
 
       /* Register all input callbacks from event handlers. */
       GLFW.glfwSetKeyCallback(
@@ -193,8 +531,228 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
         MouseEventHandler.get().getGlfwMouseButtonCallback()
       );
 
+      this.trackFramebufferSize();
+
       /* Make the window visible. */
       GLFW.glfwShowWindow(this.glfwWindow);
+
+      /* Preallocate the per-frame draw command queue. */
+      this.renderQueue
+        = new RenderQueue(RenderSettings.RENDER_QUEUE_CAPACITY.get());
+      this.renderBackend = this.createRenderBackend(backend);
+      this.meshArena
+        = new MeshArena(RenderSettings.RENDER_MESH_ARENA_BLOCK_SIZE.get());
+      this.spriteBatch = new SpriteBatch(
+        RenderSettings.RENDER_SPRITE_BATCH_CAPACITY.get(), 0);
+      this.textureLoader = new TextureLoader();
+      this.lodSelector = new LodSelector();
+      this.instanceBatch = new InstanceBatch(this.meshArena,
+        RenderSettings.RENDER_INSTANCE_BATCH_CAPACITY.get(), this.lodSelector);
+      this.sceneGraph
+        = new SceneGraph(GameSettings.GAME_SCENE_CAPACITY.get());
+      this.entityWorld
+        = new EntityWorld(GameSettings.GAME_ENTITY_CHUNK_CAPACITY.get());
+      this.systemScheduler = new SystemScheduler(this.entityWorld);
+      this.physicsWorld = new PhysicsWorld();
+      this.jobSystem = new JobSystem();
+      this.animator = new Animator(this.jobSystem,
+        GameSettings.GAME_ANIMATION_CAPACITY.get());
+      this.audioDevice = this.createAudioDevice(
+        AudioSettings.AUDIO_DEVICE.get());
+      if (this.audioDevice != null) {
+        this.audioStreamer = new AudioStreamer();
+        this.voiceManager = new VoiceManager();
+      }
+      this.updateGraph = new TaskGraph(this.jobSystem, Byte.SIZE);
+      this.systemsJob = () -> this.systemScheduler.update(
+        this.updateDeltaTime, this.jobSystem.pool());
+      this.physicsJob = () -> this.physicsWorld.step(this.updateDeltaTime,
+        this.jobSystem.pool());
+      this.animationJob = () -> this.animator.update(this.updateDeltaTime);
+      this.sceneJob = () -> this.sceneGraph.update(this.jobSystem.pool());
+      this.audioJob = () -> {
+        this.voiceManager.update(this.updateDeltaTime);
+        this.audioDevice.advance(this.updateDeltaTime);
+      };
+      this.particleSystem = new ParticleSystem(
+        RenderSettings.RENDER_PARTICLE_CAPACITY.get(), Window.PARTICLE_PASS,
+        this.jobSystem.pool(), ParticleSystem.DEFAULT_PARALLEL_THRESHOLD);
+      this.particlesJob
+        = () -> this.particleSystem.update(this.updateDeltaTime);
+      this.initCulling();
+      this.renderGraph = new TaskGraph(this.jobSystem, Byte.SIZE);
+      this.particleDrawJob = () -> this.particleSystem.flush(
+        this.renderQueue, this.cameraView);
+      this.batchesJob = () -> {
+        this.spriteBatch.flush(this.renderQueue);
+        this.instanceBatch.flush(this.renderQueue);
+      };
+    }
+
+    /**
+     * Creates the culling bounds and cullers and the render jobs driving
+     * them.
+     */
+    private void initCulling() {
+      final int cullingCapacity = RenderSettings.RENDER_CULLING_CAPACITY.get();
+      this.frustumCuller = new FrustumCuller(
+        this.jobSystem.pool(), FrustumCuller.DEFAULT_PARALLEL_THRESHOLD);
+      this.occlusionCuller = new OcclusionCuller(this.jobSystem.pool(),
+        OcclusionCuller.DEFAULT_WIDTH, OcclusionCuller.DEFAULT_HEIGHT);
+      this.occluderSlots = new IntList(Window.OCCLUDER_CAPACITY);
+      this.localBounds = new BoundingBoxes(cullingCapacity);
+      this.worldBounds = new BoundingBoxes(cullingCapacity);
+      this.visibleSlots = new IntList(cullingCapacity);
+      this.boundsJob = () -> this.sceneGraph.worldBounds(
+        this.localBounds, this.worldBounds);
+      this.cullingJob = () -> {
+        this.frustumCuller.update(this.cameraViewProjection);
+        this.frustumCuller.cull(this.worldBounds, this.visibleSlots);
+      };
+      this.occlusionJob = this::cullOccluded;
+    }
+
+    /**
+     * Rasterizes the world bounds of the occluder slots inside the camera
+     * frustum and removes the visible slots they hide. Does nothing when
+     * the game chose no occluder.
+     */
+    private void cullOccluded() {
+      if (this.occluderSlots.isEmpty()) {
+        return;
+      }
+      this.occlusionCuller.begin(this.cameraViewProjection);
+      final float[] minX = this.worldBounds.minX();
+      final float[] minY = this.worldBounds.minY();
+      final float[] minZ = this.worldBounds.minZ();
+      final float[] maxX = this.worldBounds.maxX();
+      final float[] maxY = this.worldBounds.maxY();
+      final float[] maxZ = this.worldBounds.maxZ();
+      for (int index = 0; index < this.occluderSlots.size(); index++) {
+        final int slot = this.occluderSlots.get(index);
+        if ((slot < this.worldBounds.size())
+            && this.frustumCuller.frustum().testAab(minX[slot], minY[slot],
+              minZ[slot], maxX[slot], maxY[slot], maxZ[slot])) {
+          this.occlusionCuller.addBoxOccluder(minX[slot], minY[slot],
+            minZ[slot], maxX[slot], maxY[slot], maxZ[slot]);
+        }
+      }
+      this.occlusionCuller.rasterize();
+      this.occlusionCuller.cull(this.worldBounds, this.visibleSlots);
+    }
+
+    /**
+     * Reads the framebuffer size and registers the callback keeping it
+     * up to date.
+     *
+     * <p>The framebuffer is measured in pixels and may be larger than the
+     * window on HiDPI screens; the render backend follows its size.
+     */
+    private void trackFramebufferSize() {
+      final int[] framebufferWidthPixels = new int[1];
+      final int[] framebufferHeightPixels = new int[1];
+      GLFW.glfwGetFramebufferSize(
+        this.glfwWindow,
+        framebufferWidthPixels,
+        framebufferHeightPixels
+      );
+      this.framebufferWidth = framebufferWidthPixels[0];
+      this.framebufferHeight = framebufferHeightPixels[0];
+      this.framebufferSizeCallback = new FramebufferSizeCallback();
+      GLFW.glfwSetFramebufferSizeCallback(
+        this.glfwWindow,
+        this.framebufferSizeCallback
+      );
+    }
+
+    /**
+     * Opens the audio device selected in the configuration.
+     *
+     * @param _device the device name ({@code none}, {@code loopback},
+     *     {@code default} or the name of an output device)
+     * @return the audio device, or null for {@code none}
+     * @throws IllegalStateException if the device cannot be opened
+     */
+    private AudioDevice createAudioDevice(
+        final String _device) {
+      final String device = _device.trim();
+      switch (device.toLowerCase(Locale.ROOT)) {
+        case "none":
+          return null;
+        case "loopback":
+          return AudioDevice.loopback(AudioSettings.AUDIO_FREQUENCY.get());
+        default:
+          return AudioDevice.open(device);
+      }
+    }
+
+    /**
+     * Creates the render backend selected in the configuration.
+     *
+     * @param _backend the backend name ({@code none}, {@code recording}
+     *     or {@code bgfx})
+     * @return the render backend, or null for {@code none}
+     * @throws IllegalArgumentException if the backend name is unknown
+     */
+    private RenderBackend createRenderBackend(
+        final String _backend) {
+      switch (_backend.trim().toLowerCase(Locale.ROOT)) {
+        case "none":
+          return null;
+        case "recording":
+          return new RecordingRenderBackend();
+        case "bgfx":
+          final BgfxRenderBackend bgfxRenderBackend = new BgfxRenderBackend(
+            BgfxRenderBackend.rendererType(
+              RenderSettings.RENDER_BGFX_RENDERER.get())
+          );
+          bgfxRenderBackend.transientBufferSizes(
+            RenderSettings.RENDER_BGFX_TRANSIENT_VERTEX_BUFFER_SIZE.get(),
+            RenderSettings.RENDER_BGFX_TRANSIENT_INDEX_BUFFER_SIZE.get()
+          );
+          bgfxRenderBackend.init(
+            this.nativeDisplay(),
+            this.nativeWindow(),
+            this.framebufferWidth,
+            this.framebufferHeight,
+            GameSettings.GAME_VERTICAL_SYNCHRONIZATION.get()
+          );
+          return bgfxRenderBackend;
+        default:
+          throw new IllegalArgumentException(
+            "Unknown render backend: '" + _backend + "'");
+      }
+    }
+
+    /**
+     * Gets the native handle of the window for graphics APIs that create
+     * their own context (bgfx).
+     *
+     * @return the HWND, X11 window or NSWindow of the GLFW window
+     */
+    public long nativeWindow() {
+      switch (Platform.get()) {
+        case WINDOWS:
+          return GLFWNativeWin32.glfwGetWin32Window(this.glfwWindow);
+        case MACOSX:
+          return GLFWNativeCocoa.glfwGetCocoaWindow(this.glfwWindow);
+        case LINUX:
+          return GLFWNativeX11.glfwGetX11Window(this.glfwWindow);
+        default:
+          return MemoryUtil.NULL;
+      }
+    }
+
+    /**
+     * Gets the native display handle required by some platforms.
+     *
+     * @return the X11 display on Linux, NULL elsewhere
+     */
+    public long nativeDisplay() {
+      if (Platform.get() == Platform.LINUX) {
+        return GLFWNativeX11.glfwGetX11Display();
+      }
+      return MemoryUtil.NULL;
     }
 
     /**
@@ -205,9 +763,13 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
      * refresh rate (typically 60 Hz or 144 Hz).
      *
      * <p>Call this after {@link #init(int, int, String)} to enable VSync.
+     * Without an OpenGL context (bgfx backend) this is a no-op: the backend
+     * applies the VSync setting when it is created.
      */
     public void enableVSync() {
-      GLFW.glfwSwapInterval(1);
+      if (this.openGlContext) {
+        GLFW.glfwSwapInterval(1);
+      }
     }
 
     /**
@@ -223,7 +785,8 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
      *
      * <p>With VSync enabled, this call blocks until the next vertical
      * refresh. Without VSync, it returns immediately, potentially causing
-     * screen tearing.
+     * screen tearing. Without an OpenGL context (bgfx backend) the backend
+     * presents the frame and only events are polled.
      *
      * <p>Should be called once per frame after rendering.
      */
@@ -233,7 +796,9 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
        * block until the next vertical refresh, limiting the frame rate to
        * the monitor's refresh rate.
        */
-      GLFW.glfwSwapBuffers(this.glfwWindow);
+      if (this.openGlContext) {
+        GLFW.glfwSwapBuffers(this.glfwWindow);
+      }
 
       /*
        * Poll for window events (keyboard, mouse, window close, etc.).
@@ -277,35 +842,128 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
      *
      * <p>This method is called once per frame with the time elapsed since
      * the last update. Typically used for game logic, physics, AI, etc.
-     *
-     * <p>Currently a placeholder implementation for future game logic.
+     * The update is a graph of jobs run on the {@link #jobSystem()}: the
+     * systems of the {@link #systemScheduler()} run first and their
+     * structural changes are applied, then the {@link #physicsWorld()} is
+     * stepped and the characters of the {@link #animator()} are posed, in
+     * parallel and by the same fixed time step, then the world transforms
+     * of the {@link #sceneGraph()} nodes changed during the frame are
+     * recomputed. Alongside, once the systems have played their sounds,
+     * the {@link #voiceManager()} hands its sources to the loudest voices
+     * and a loopback {@link #audioDevice()} mixes the time step, and the
+     * {@link #particleSystem()} moves and ages its particles, including
+     * the ones the systems emitted.
      *
      * @param _deltaTime time elapsed since last update in seconds
      */
     public void update(
         final float _deltaTime) {
-      // System.out.printf(
-      //  "Updating Game! Delta: %.4f.%n",
-      //  _deltaTime
-      // );
+      if (this.updateGraph == null) {
+        return;
+      }
+      this.updateDeltaTime = _deltaTime;
+      this.updateGraph.clear();
+      final int systems = this.updateGraph.add(this.systemsJob);
+      final int physics = this.updateGraph.add(this.physicsJob);
+      final int animation = this.updateGraph.add(this.animationJob);
+      final int scene = this.updateGraph.add(this.sceneJob);
+      this.updateGraph.dependsOn(physics, systems);
+      this.updateGraph.dependsOn(animation, systems);
+      this.updateGraph.dependsOn(scene, physics);
+      this.updateGraph.dependsOn(scene, animation);
+      if (this.audioDevice != null) {
+        final int audio = this.updateGraph.add(this.audioJob);
+        this.updateGraph.dependsOn(audio, systems);
+      }
+      final int particles = this.updateGraph.add(this.particlesJob);
+      this.updateGraph.dependsOn(particles, systems);
+      this.updateGraph.run();
     }
 
     /**
      * Renders the current frame.
      *
      * <p>This method is called once per frame with the interpolation factor
-     * for the render. Typically used for drawing graphics, UI, etc.
+     * for the render. Textures finished by the {@link #textureLoader()}
+     * are uploaded to the render backend first, without waiting for the
+     * ones still decoding. The frame is then a graph of jobs run on the
+     * {@link #jobSystem()}: the world bounds of the {@link #sceneGraph()}
+     * nodes are computed from the {@link #localBounds()} and culled
+     * against the {@link #camera(Matrix4fc, Matrix4fc) camera} frustum
+     * into the {@link #visibleSlots()}, and the slots hidden behind the
+     * {@link #occluderSlots()} are then removed by the
+     * {@link #occlusionCuller()}. Meanwhile the quads of the
+     * {@link #particleSystem()} are written into the {@link #renderQueue()};
+     * once culling is done, the sprites recorded in the
+     * {@link #spriteBatch()} and the meshes recorded in the
+     * {@link #instanceBatch()} are flushed into it.
+     * The jobs writing into the queue run one after the other, as the
+     * queue is not thread-safe. Finally the draw commands recorded during
+     * the frame are sorted and replayed to the active render backend on
+     * the calling thread. Without a backend the commands are discarded.
      *
-     * <p>Currently a placeholder implementation for future rendering logic.
+     * <p>The game records the draws of a frame before this method culls,
+     * so it draws the visible slots of the previous frame: culling lags
+     * the camera by one frame.
      *
      * @param _deltaTime interpolation factor for smooth rendering
      */
     public void render(
         final float _deltaTime) {
-      // System.out.printf(
-      //   "Rendering Game! Delta: %.4f.%n",
-      //   _deltaTime
-      // );
+      if (this.renderQueue == null) {
+        return;
+      }
+      this.uploadTextures();
+      this.renderGraph.clear();
+      final int bounds = this.renderGraph.add(this.boundsJob);
+      final int culling = this.renderGraph.add(this.cullingJob);
+      final int occlusion = this.renderGraph.add(this.occlusionJob);
+      final int particles = this.renderGraph.add(this.particleDrawJob);
+      final int batches = this.renderGraph.add(this.batchesJob);
+      this.renderGraph.dependsOn(culling, bounds);
+      this.renderGraph.dependsOn(occlusion, culling);
+      this.renderGraph.dependsOn(batches, particles);
+      this.renderGraph.dependsOn(batches, occlusion);
+      this.renderGraph.run();
+      if (this.renderBackend != null) {
+        this.renderQueue.submit(this.renderBackend);
+      } else {
+        this.renderQueue.clear();
+      }
+      this.spriteBatch.clear();
+      this.instanceBatch.clear();
+    }
+
+    /**
+     * Uploads the textures decoded since the last frame to the render
+     * backend and releases their pixels. Never blocks.
+     */
+    private void uploadTextures() {
+      Texture texture = this.textureLoader.poll();
+      while (texture != null) {
+        try {
+          if (!texture.loaded()) {
+            System.err.printf("ERROR: Texture %s wasn't loaded: %s%n",
+              texture.path(), texture.error());
+          } else if (this.renderBackend != null) {
+            final Integer previous = this.textures.put(texture.path(),
+              this.renderBackend.createTexture(
+                texture.width(),
+                texture.height(),
+                texture.mipCount(),
+                this.textureLoader.srgb(),
+                texture.mipAddress(0),
+                texture.byteSize()
+              ));
+            if (previous != null) {
+              this.renderBackend.destroyTexture(previous);
+            }
+          }
+        } finally {
+          texture.close();
+        }
+        texture = this.textureLoader.poll();
+      }
     }
 
     /**
@@ -326,6 +984,9 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
      *
      * <p>This method performs cleanup in the following order:
      * <ol>
+     *   <li>Releases the audio streamer, voices and device, the texture
+     *       loader, the render backend, the render queue and the job
+     *       system</li>
      *   <li>Frees keyboard event handler resources</li>
      *   <li>Frees mouse event handler resources</li>
      *   <li>Destroys the GLFW window</li>
@@ -335,6 +996,57 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
      * <p>Should be called when the application exits to prevent memory leaks.
      */
     public void close() {
+      /* Stop the streams and voices before the device goes away. */
+      if (this.audioStreamer != null) {
+        this.audioStreamer.close();
+        this.audioStreamer = null;
+      }
+      if (this.voiceManager != null) {
+        this.voiceManager.close();
+        this.voiceManager = null;
+      }
+      if (this.audioDevice != null) {
+        this.audioDevice.close();
+        this.audioDevice = null;
+      }
+
+      /* Release the rendering resources. */
+      if (this.textureLoader != null) {
+        this.textureLoader.close();
+        this.textureLoader = null;
+      }
+      this.textures.clear();
+      if (this.renderBackend != null) {
+        this.renderBackend.close();
+        this.renderBackend = null;
+      }
+      if (this.renderQueue != null) {
+        this.renderQueue.close();
+        this.renderQueue = null;
+      }
+      if (this.spriteBatch != null) {
+        this.spriteBatch.close();
+        this.spriteBatch = null;
+      }
+      if (this.instanceBatch != null) {
+        this.instanceBatch.close();
+        this.instanceBatch = null;
+      }
+      if (this.particleSystem != null) {
+        this.particleSystem.close();
+        this.particleSystem = null;
+      }
+      if (this.meshArena != null) {
+        this.meshArena.close();
+        this.meshArena = null;
+      }
+      if (this.jobSystem != null) {
+        this.jobSystem.close();
+        this.jobSystem = null;
+        this.updateGraph = null;
+        this.renderGraph = null;
+      }
+
       /* Free the Keyboard callback. */
       KeyboardEventHandler.get().close();
 
@@ -342,6 +1054,11 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
       MouseEventHandler.get().close();
 
       /* Free the window callbacks and destroy the window. */
+      GLFW.glfwSetFramebufferSizeCallback(this.glfwWindow, null);
+      if (this.framebufferSizeCallback != null) {
+        this.framebufferSizeCallback.free();
+        this.framebufferSizeCallback = null;
+      }
       GLFW.glfwDestroyWindow(this.glfwWindow);
 
       /* Terminate GLFW and free the error callback. */
@@ -366,6 +1083,52 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
       return this.height;
     }
 
+    /**
+     * Handles a resize of the framebuffer, reported in pixels by
+     * {@link FramebufferSizeCallback}.
+     *
+     * <p>Resets the back buffer and view rectangles of the bgfx backend.
+     * A minimized window reports an empty framebuffer, which is ignored
+     * until the window is restored.
+     *
+     * @param _width the framebuffer width in pixels
+     * @param _height the framebuffer height in pixels
+     */
+    public void resize(
+        final int _width,
+        final int _height) {
+      if ((_width <= 0) || (_height <= 0)) {
+        return;
+      }
+      this.framebufferWidth = _width;
+      this.framebufferHeight = _height;
+      if (this.renderBackend instanceof BgfxRenderBackend) {
+        ((BgfxRenderBackend) this.renderBackend).resize(
+          _width,
+          _height,
+          GameSettings.GAME_VERTICAL_SYNCHRONIZATION.get()
+        );
+      }
+    }
+
+    /**
+     * Gets the framebuffer width in pixels.
+     *
+     * @return the framebuffer width
+     */
+    public int framebufferWidth() {
+      return this.framebufferWidth;
+    }
+
+    /**
+     * Gets the framebuffer height in pixels.
+     *
+     * @return the framebuffer height
+     */
+    public int framebufferHeight() {
+      return this.framebufferHeight;
+    }
+
     /**
      * Gets the window title.
      *
@@ -375,4 +1138,284 @@ import es.noa.rad.game.engine.event.MouseEventHandler;
       return this.title;
     }
 
+
+    /**
+     * Gets the queue collecting the draw commands of the current frame.
+     *
+     * @return the render queue, or null if the window is not initialized
+     */
+    public RenderQueue renderQueue() {
+      return this.renderQueue;
+    }
+
+    /**
+     * Gets the batch collecting the sprites of the current frame.
+     *
+     * @return the sprite batch, or null if the window is not initialized
+     */
+    public SpriteBatch spriteBatch() {
+      return this.spriteBatch;
+    }
+
+    /**
+     * Gets the batch grouping the mesh draws of the current frame into
+     * instanced draws.
+     *
+     * @return the instance batch, or null if the window is not initialized
+     */
+    public InstanceBatch instanceBatch() {
+      return this.instanceBatch;
+    }
+
+    /**
+     * Gets the loader decoding textures in the background. Textures it
+     * finishes are uploaded to the render backend by {@link #render}.
+     *
+     * @return the texture loader, or null if the window is not initialized
+     * @see #texture(Path)
+     */
+    public TextureLoader textureLoader() {
+      return this.textureLoader;
+    }
+
+    /**
+     * Gets the render backend handle of a texture requested from the
+     * {@link #textureLoader()}.
+     *
+     * @param _path the image file requested
+     * @return the texture handle, or {@link RenderBackend#INVALID_TEXTURE}
+     *     while it is still loading or if it failed
+     */
+    public int texture(
+        final Path _path) {
+      return this.textures.getOrDefault(
+        _path, RenderBackend.INVALID_TEXTURE);
+    }
+
+    /**
+     * Gets the level of detail selector of the instance batch; the game
+     * sets its camera before recording the draws of a frame.
+     *
+     * @return the selector, or null if the window is not initialized
+     */
+    public LodSelector lodSelector() {
+      return this.lodSelector;
+    }
+
+    /**
+     * Sets the camera the frame is culled against and the particles face.
+     *
+     * @param _view the view matrix of the camera
+     * @param _projection the projection matrix of the camera
+     */
+    public void camera(
+        final Matrix4fc _view,
+        final Matrix4fc _projection) {
+      this.cameraView.set(_view);
+      _projection.mul(_view, this.cameraViewProjection);
+    }
+
+    /**
+     * Gets the camera facing particles of the game; the window simulates
+     * and draws them. The system is not thread-safe: the game emits from
+     * one thread at a time, such as a single system.
+     *
+     * @return the particle system, or null if the window is not
+     *     initialized
+     */
+    public ParticleSystem particleSystem() {
+      return this.particleSystem;
+    }
+
+    /**
+     * Gets the frustum culler of the scene graph nodes, with the
+     * statistics of the last frame.
+     *
+     * @return the frustum culler, or null if the window is not initialized
+     */
+    public FrustumCuller frustumCuller() {
+      return this.frustumCuller;
+    }
+
+    /**
+     * Gets the occlusion culler of the frustum visible slots, with the
+     * statistics of the last frame.
+     *
+     * @return the occlusion culler, or null if the window is not
+     *     initialized
+     */
+    public OcclusionCuller occlusionCuller() {
+      return this.occlusionCuller;
+    }
+
+    /**
+     * Gets the scene graph slots used as occluders. The game adds the
+     * slots of large solid nodes, such as walls, buildings or terrain
+     * chunks, whose world bounds they fill: the bounds are rasterized as
+     * solid boxes, so a node that does not fill them would hide what can
+     * be seen around it. Every frame the occluders inside the camera
+     * frustum are rasterized and the visible slots they hide are removed.
+     * Empty by default, which skips occlusion culling.
+     *
+     * @return the occluder slots, or null if the window is not initialized
+     */
+    public IntList occluderSlots() {
+      return this.occluderSlots;
+    }
+
+    /**
+     * Gets the model space bounds culled every frame, indexed by scene
+     * graph slot ({@link SceneGraph#slot(int)}). The game sizes them and
+     * sets the box of every node it draws; boxes of other slots are
+     * culled with whatever bounds they hold.
+     *
+     * @return the local bounds, or null if the window is not initialized
+     */
+    public BoundingBoxes localBounds() {
+      return this.localBounds;
+    }
+
+    /**
+     * Gets the world space bounds of the last frame, indexed by scene
+     * graph slot.
+     *
+     * @return the world bounds, or null if the window is not initialized
+     */
+    public BoundingBoxes worldBounds() {
+      return this.worldBounds;
+    }
+
+    /**
+     * Gets the scene graph slots inside the camera frustum and not hidden
+     * by the {@link #occluderSlots()} in the last frame, in ascending
+     * order.
+     *
+     * @return the visible slots, or null if the window is not initialized
+     */
+    public IntList visibleSlots() {
+      return this.visibleSlots;
+    }
+
+    /**
+     * Gets the transform hierarchy of the scene.
+     *
+     * @return the scene graph, or null if the window is not initialized
+     */
+    public SceneGraph sceneGraph() {
+      return this.sceneGraph;
+    }
+
+    /**
+     * Gets the entities of the game.
+     *
+     * @return the entity world, or null if the window is not initialized
+     */
+    public EntityWorld entityWorld() {
+      return this.entityWorld;
+    }
+
+    /**
+     * Gets the scheduler running the systems on the entities every update.
+     *
+     * @return the system scheduler, or null if the window is not
+     *     initialized
+     */
+    public SystemScheduler systemScheduler() {
+      return this.systemScheduler;
+    }
+
+    /**
+     * Gets the rigid bodies of the game.
+     *
+     * @return the physics world, or null if the window is not initialized
+     */
+    public PhysicsWorld physicsWorld() {
+      return this.physicsWorld;
+    }
+
+    /**
+     * Gets the skeletal animations of the game.
+     *
+     * @return the animator, or null if the window is not initialized
+     */
+    public Animator animator() {
+      return this.animator;
+    }
+
+    /**
+     * Gets the audio device.
+     *
+     * @return the audio device, or null if the window is not initialized
+     *     or audio is disabled
+     */
+    public AudioDevice audioDevice() {
+      return this.audioDevice;
+    }
+
+    /**
+     * Gets the streamer playing music and long sounds from files.
+     *
+     * @return the audio streamer, or null if the window is not initialized
+     *     or audio is disabled
+     */
+    public AudioStreamer audioStreamer() {
+      return this.audioStreamer;
+    }
+
+    /**
+     * Gets the voice manager playing the sound effects.
+     *
+     * @return the voice manager, or null if the window is not initialized
+     *     or audio is disabled
+     */
+    public VoiceManager voiceManager() {
+      return this.voiceManager;
+    }
+
+    /**
+     * Gets the work-stealing workers running the jobs of every update.
+     *
+     * @return the job system, or null if the window is not initialized
+     */
+    public JobSystem jobSystem() {
+      return this.jobSystem;
+    }
+
+    /**
+     * Gets the off-heap storage for the vertex and index data of meshes.
+     *
+     * @return the mesh arena, or null if the window is not initialized
+     */
+    public MeshArena meshArena() {
+      return this.meshArena;
+    }
+
+    /**
+     * Gets the backend the render queue is submitted to.
+     *
+     * @return the render backend, or null if none is configured
+     */
+    public RenderBackend renderBackend() {
+      return this.renderBackend;
+    }
+
+    /**
+     * Sets the backend the render queue is submitted to every frame.
+     *
+     * <p>The window takes ownership of the backend and closes it on
+     * {@link #close()}. A previously configured backend is closed, with
+     * every texture uploaded to it.
+     *
+     * @param _renderBackend the render backend, or null to discard commands
+     */
+    public void renderBackend(
+        final RenderBackend _renderBackend) {
+      if ((this.renderBackend != null)
+       && (this.renderBackend != _renderBackend)) {
+        this.renderBackend.close();
+        this.textures.clear();
+      }
+      this.renderBackend = _renderBackend;
+    }
+
   }
@@ -0,0 +1,246 @@
+package es.noa.rad.game.engine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.noa.rad.game.engine.memory.HandlePool;
+
+  /**
+   * Set of entities sharing exactly the same component types.
+   *
+   * <p>Entities are packed into {@link Chunk chunks} of a fixed power of
+   * two capacity. Removal moves the last entity of the archetype into the
+   * hole, so every chunk but the last is full and iteration never skips
+   * rows. A row index counts across chunks: its high bits select the chunk
+   * and its low bits the row within it. Emptied chunks are kept for reuse.
+   *
+   * @see EntityWorld
+   */
+  public final class Archetype {
+
+    /**
+     * Position in the archetype list of the world.
+     */
+    private final int index;
+
+    /**
+     * Mask of the component types.
+     */
+    private final long mask;
+
+    /**
+     * Component types, by ascending identifier.
+     */
+    private final ComponentType[] types;
+
+    /**
+     * Column of every component type identifier, -1 if absent.
+     */
+    private final int[] columns;
+
+    /**
+     * Number of rows of a chunk.
+     */
+    private final int chunkCapacity;
+
+    /**
+     * Number of bits of a row within a chunk.
+     */
+    private final int chunkShift;
+
+    /**
+     * Chunks, full ones first.
+     */
+    private final List<Chunk> chunks;
+
+    /**
+     * Number of entities.
+     */
+    private int size;
+
+    /**
+     * Creates an empty archetype.
+     *
+     * @param _index the position in the archetype list of the world
+     * @param _mask the mask of the component types
+     * @param _chunkCapacity the number of rows of a chunk, a power of two
+     */
+    Archetype(
+        final int _index,
+        final long _mask,
+        final int _chunkCapacity) {
+      this.index = _index;
+      this.mask = _mask;
+      this.types = new ComponentType[Long.bitCount(_mask)];
+      this.columns = new int[ComponentType.MAX_TYPES];
+      Arrays.fill(this.columns, -1);
+      int column = 0;
+      for (int id = 0; id < ComponentType.MAX_TYPES; id++) {
+        if ((_mask & (1L << id)) != 0L) {
+          this.types[column] = ComponentType.byId(id);
+          this.columns[id] = column;
+          column++;
+        }
+      }
+      this.chunkCapacity = _chunkCapacity;
+      this.chunkShift = Integer.numberOfTrailingZeros(_chunkCapacity);
+      this.chunks = new ArrayList<>();
+      this.size = 0;
+    }
+
+    /**
+     * Gets the mask of the component types.
+     *
+     * @return the mask
+     */
+    public long mask() {
+      return this.mask;
+    }
+
+    /**
+     * Checks whether the entities have a component.
+     *
+     * @param _type the component type
+     * @return {@code true} if the component is part of the archetype
+     */
+    public boolean has(
+        final ComponentType _type) {
+      return (this.mask & _type.mask()) != 0L;
+    }
+
+    /**
+     * Gets the number of entities.
+     *
+     * @return the entity count
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Gets the number of chunks holding entities.
+     *
+     * @return the chunk count
+     */
+    public int chunkCount() {
+      return (this.size + this.chunkCapacity - 1) >>> this.chunkShift;
+    }
+
+    /**
+     * Gets a chunk holding entities.
+     *
+     * @param _index the chunk index, below {@link #chunkCount()}
+     * @return the chunk
+     */
+    public Chunk chunk(
+        final int _index) {
+      return this.chunks.get(_index);
+    }
+
+    /**
+     * Gets the position in the archetype list of the world.
+     *
+     * @return the archetype index
+     */
+    int index() {
+      return this.index;
+    }
+
+    /**
+     * Gets the number of component types.
+     *
+     * @return the column count
+     */
+    int columnCount() {
+      return this.types.length;
+    }
+
+    /**
+     * Gets the component type of a column.
+     *
+     * @param _column the column
+     * @return the component type
+     */
+    ComponentType type(
+        final int _column) {
+      return this.types[_column];
+    }
+
+    /**
+     * Gets the column of a component type.
+     *
+     * @param _type the component type
+     * @return the column
+     * @throws IllegalArgumentException if the archetype lacks the type
+     */
+    int column(
+        final ComponentType _type) {
+      final int column = this.columns[_type.id()];
+      if (column < 0) {
+        throw new IllegalArgumentException(
+          "Archetype lacks component " + _type + ".");
+      }
+      return column;
+    }
+
+    /**
+     * Gets the chunk of a row index.
+     *
+     * @param _row the row index across chunks
+     * @return the chunk
+     */
+    Chunk chunkOf(
+        final int _row) {
+      return this.chunks.get(_row >>> this.chunkShift);
+    }
+
+    /**
+     * Gets the row within its chunk of a row index.
+     *
+     * @param _row the row index across chunks
+     * @return the row within the chunk
+     */
+    int rowOf(
+        final int _row) {
+      return _row & (this.chunkCapacity - 1);
+    }
+
+    /**
+     * Appends an entity with zeroed components.
+     *
+     * @param _entity the entity handle
+     * @return the row index across chunks
+     */
+    int add(
+        final int _entity) {
+      final int chunkIndex = this.size >>> this.chunkShift;
+      if (chunkIndex == this.chunks.size()) {
+        this.chunks.add(new Chunk(this, this.chunkCapacity));
+      }
+      this.chunks.get(chunkIndex).add(_entity);
+      return this.size++;
+    }
+
+    /**
+     * Removes an entity, moving the last entity into its row.
+     *
+     * @param _row the row index across chunks
+     * @return the moved entity, {@link HandlePool#INVALID_HANDLE} if the
+     *     removed entity was the last one
+     */
+    int remove(
+        final int _row) {
+      final int last = --this.size;
+      final Chunk lastChunk = this.chunkOf(last);
+      int moved = HandlePool.INVALID_HANDLE;
+      if (_row != last) {
+        final int lastRow = this.rowOf(last);
+        lastChunk.moveRow(lastRow, this.chunkOf(_row), this.rowOf(_row));
+        moved = lastChunk.entity(lastRow);
+      }
+      lastChunk.removeLast();
+      return moved;
+    }
+
+  }
@@ -0,0 +1,218 @@
+package es.noa.rad.game.engine.ecs;
+
+import java.util.Arrays;
+
+  /**
+   * Fixed-capacity block of entities of one {@link Archetype}.
+   *
+   * <p>Every component is a primitive array holding
+   * {@link ComponentType#width()} values per entity, row after row, so a
+   * system iterating a chunk walks a few contiguous arrays. Rows
+   * {@code 0} to {@link #size()} - 1 are live.
+   *
+   * <p>The arrays are exposed for hot loops. Their values may be read and
+   * written while iterating; rows must not be added or removed, which
+   * only the {@link EntityWorld} does.
+   */
+  public final class Chunk {
+
+    /**
+     * Archetype the chunk belongs to.
+     */
+    private final Archetype archetype;
+
+    /**
+     * Entity handle of every row.
+     */
+    private final int[] entities;
+
+    /**
+     * Float components, indexed by column.
+     */
+    private final float[][] floatColumns;
+
+    /**
+     * Int components, indexed by column.
+     */
+    private final int[][] intColumns;
+
+    /**
+     * Number of live rows.
+     */
+    private int size;
+
+    /**
+     * Creates an empty chunk.
+     *
+     * @param _archetype the archetype
+     * @param _capacity the number of rows
+     */
+    Chunk(
+        final Archetype _archetype,
+        final int _capacity) {
+      this.archetype = _archetype;
+      this.entities = new int[_capacity];
+      final int columnCount = _archetype.columnCount();
+      this.floatColumns = new float[columnCount][];
+      this.intColumns = new int[columnCount][];
+      for (int column = 0; column < columnCount; column++) {
+        final ComponentType type = _archetype.type(column);
+        if (type.isFloat()) {
+          this.floatColumns[column] = new float[_capacity * type.width()];
+        } else {
+          this.intColumns[column] = new int[_capacity * type.width()];
+        }
+      }
+      this.size = 0;
+    }
+
+    /**
+     * Gets the archetype of the chunk.
+     *
+     * @return the archetype
+     */
+    public Archetype archetype() {
+      return this.archetype;
+    }
+
+    /**
+     * Gets the number of live rows.
+     *
+     * @return the entity count
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Gets the entity of a row.
+     *
+     * @param _row the row
+     * @return the entity handle
+     */
+    public int entity(
+        final int _row) {
+      return this.entities[_row];
+    }
+
+    /**
+     * Gets the values of a float component.
+     *
+     * @param _type the component type
+     * @return the array, {@code width} floats per row
+     * @throws IllegalArgumentException if the archetype lacks the
+     *     component or it does not hold floats
+     */
+    public float[] floats(
+        final ComponentType _type) {
+      final float[] values = this.floatColumns[this.archetype.column(_type)];
+      if (values == null) {
+        throw new IllegalArgumentException(
+          "Component " + _type + " does not hold floats.");
+      }
+      return values;
+    }
+
+    /**
+     * Gets the values of an int component.
+     *
+     * @param _type the component type
+     * @return the array, {@code width} ints per row
+     * @throws IllegalArgumentException if the archetype lacks the
+     *     component or it does not hold ints
+     */
+    public int[] ints(
+        final ComponentType _type) {
+      final int[] values = this.intColumns[this.archetype.column(_type)];
+      if (values == null) {
+        throw new IllegalArgumentException(
+          "Component " + _type + " does not hold ints.");
+      }
+      return values;
+    }
+
+    /**
+     * Appends a row with zeroed components.
+     *
+     * @param _entity the entity handle
+     * @return the new row
+     */
+    int add(
+        final int _entity) {
+      final int row = this.size++;
+      this.entities[row] = _entity;
+      for (int column = 0; column < this.floatColumns.length; column++) {
+        final int width = this.archetype.type(column).width();
+        if (this.floatColumns[column] != null) {
+          Arrays.fill(this.floatColumns[column],
+            row * width, (row + 1) * width, 0.0F);
+        } else {
+          Arrays.fill(this.intColumns[column],
+            row * width, (row + 1) * width, 0);
+        }
+      }
+      return row;
+    }
+
+    /**
+     * Removes the last row.
+     */
+    void removeLast() {
+      this.size--;
+    }
+
+    /**
+     * Copies a row of this chunk over a row of a chunk of the same
+     * archetype.
+     *
+     * @param _row the source row
+     * @param _target the target chunk
+     * @param _targetRow the target row
+     */
+    void moveRow(
+        final int _row,
+        final Chunk _target,
+        final int _targetRow) {
+      _target.entities[_targetRow] = this.entities[_row];
+      for (int column = 0; column < this.floatColumns.length; column++) {
+        final int width = this.archetype.type(column).width();
+        if (this.floatColumns[column] != null) {
+          System.arraycopy(this.floatColumns[column], _row * width,
+            _target.floatColumns[column], _targetRow * width, width);
+        } else {
+          System.arraycopy(this.intColumns[column], _row * width,
+            _target.intColumns[column], _targetRow * width, width);
+        }
+      }
+    }
+
+    /**
+     * Copies the components a row shares with a chunk of another
+     * archetype.
+     *
+     * @param _row the source row
+     * @param _target the target chunk
+     * @param _targetRow the target row
+     */
+    void copyShared(
+        final int _row,
+        final Chunk _target,
+        final int _targetRow) {
+      for (int column = 0; column < this.floatColumns.length; column++) {
+        final ComponentType type = this.archetype.type(column);
+        if (!_target.archetype.has(type)) {
+          continue;
+        }
+        final int targetColumn = _target.archetype.column(type);
+        final int width = type.width();
+        if (this.floatColumns[column] != null) {
+          System.arraycopy(this.floatColumns[column], _row * width,
+            _target.floatColumns[targetColumn], _targetRow * width, width);
+        } else {
+          System.arraycopy(this.intColumns[column], _row * width,
+            _target.intColumns[targetColumn], _targetRow * width, width);
+        }
+      }
+    }
+
+  }
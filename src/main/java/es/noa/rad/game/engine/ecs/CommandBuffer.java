@@ -0,0 +1,350 @@
+package es.noa.rad.game.engine.ecs;
+
+import es.noa.rad.game.engine.util.IntList;
+
+  /**
+   * Structural changes recorded while systems run and applied afterwards.
+   *
+   * <p>Commands are encoded into a single growable {@code int} stream
+   * (float values by their bits), so once the buffer has grown to the
+   * busiest update, recording allocates nothing.
+   *
+   * <p>{@link #create(long)} returns a provisional entity, a negative
+   * value only meaningful to later commands of the same buffer, so a
+   * system can create an entity and set its components in one go:
+   * <pre>{@code
+   * int bullet = commands.create(POSITION, VELOCITY);
+   * commands.set(bullet, POSITION, spawn, 0);
+   * }</pre>
+   *
+   * <p>Commands addressing entities destroyed in the meantime (for
+   * example by another system's buffer) are skipped.
+   *
+   * <p>Not thread-safe: every system records into its own buffer.
+   */
+  public final class CommandBuffer {
+
+    /**
+     * Command creating an entity: mask low and high bits.
+     */
+    private static final int CREATE = 0;
+
+    /**
+     * Command destroying an entity: entity.
+     */
+    private static final int DESTROY = 1;
+
+    /**
+     * Command adding a component: entity, type.
+     */
+    private static final int ADD = 2;
+
+    /**
+     * Command removing a component: entity, type.
+     */
+    private static final int REMOVE = 3;
+
+    /**
+     * Command setting a float component: entity, type, values.
+     */
+    private static final int SET_FLOATS = 4;
+
+    /**
+     * Command setting an int component: entity, type, values.
+     */
+    private static final int SET_INTS = 5;
+
+    /**
+     * Largest provisional entity; provisional entities count down from
+     * here, below {@code HandlePool.INVALID_HANDLE}.
+     */
+    private static final int FIRST_PROVISIONAL = -2;
+
+    /**
+     * Encoded commands.
+     */
+    private final IntList commands;
+
+    /**
+     * Entities created by the running apply, by creation order.
+     */
+    private final IntList created;
+
+    /**
+     * Number of creations recorded.
+     */
+    private int createCount;
+
+    /**
+     * Float values being applied.
+     */
+    private final float[] floatScratch;
+
+    /**
+     * Int values being applied.
+     */
+    private final int[] intScratch;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param _capacity the number of {@code int} words the buffer can hold
+     *     before growing
+     */
+    public CommandBuffer(
+        final int _capacity) {
+      this.commands = new IntList(_capacity);
+      this.created = new IntList(1);
+      this.createCount = 0;
+      this.floatScratch = new float[Byte.MAX_VALUE];
+      this.intScratch = new int[Byte.MAX_VALUE];
+    }
+
+    /**
+     * Records the creation of an entity.
+     *
+     * @param _types the component types
+     * @return the provisional entity, valid for this buffer only
+     */
+    public int create(
+        final ComponentType... _types) {
+      return this.create(ComponentType.mask(_types));
+    }
+
+    /**
+     * Records the creation of an entity.
+     *
+     * @param _mask the mask of the component types
+     * @return the provisional entity, valid for this buffer only
+     */
+    public int create(
+        final long _mask) {
+      this.commands.add(CommandBuffer.CREATE);
+      this.commands.add((int) _mask);
+      this.commands.add((int) (_mask >>> Integer.SIZE));
+      return CommandBuffer.FIRST_PROVISIONAL - this.createCount++;
+    }
+
+    /**
+     * Records the destruction of an entity.
+     *
+     * @param _entity the entity, live or provisional
+     */
+    public void destroy(
+        final int _entity) {
+      this.commands.add(CommandBuffer.DESTROY);
+      this.commands.add(_entity);
+    }
+
+    /**
+     * Records the addition of a zeroed component.
+     *
+     * @param _entity the entity, live or provisional
+     * @param _type the component type
+     */
+    public void add(
+        final int _entity,
+        final ComponentType _type) {
+      this.commands.add(CommandBuffer.ADD);
+      this.commands.add(_entity);
+      this.commands.add(_type.id());
+    }
+
+    /**
+     * Records the removal of a component.
+     *
+     * @param _entity the entity, live or provisional
+     * @param _type the component type
+     */
+    public void remove(
+        final int _entity,
+        final ComponentType _type) {
+      this.commands.add(CommandBuffer.REMOVE);
+      this.commands.add(_entity);
+      this.commands.add(_type.id());
+    }
+
+    /**
+     * Records the values of a float component.
+     *
+     * @param _entity the entity, live or provisional
+     * @param _type the component type
+     * @param _values the array holding {@code width} values
+     * @param _offset the position of the values in the array
+     * @throws IllegalArgumentException if the component is wider than 127
+     *     values
+     */
+    public void set(
+        final int _entity,
+        final ComponentType _type,
+        final float[] _values,
+        final int _offset) {
+      this.checkWidth(_type);
+      this.commands.add(CommandBuffer.SET_FLOATS);
+      this.commands.add(_entity);
+      this.commands.add(_type.id());
+      for (int value = 0; value < _type.width(); value++) {
+        this.commands.add(Float.floatToRawIntBits(_values[_offset + value]));
+      }
+    }
+
+    /**
+     * Records the values of an int component.
+     *
+     * @param _entity the entity, live or provisional
+     * @param _type the component type
+     * @param _values the array holding {@code width} values
+     * @param _offset the position of the values in the array
+     * @throws IllegalArgumentException if the component is wider than 127
+     *     values
+     */
+    public void set(
+        final int _entity,
+        final ComponentType _type,
+        final int[] _values,
+        final int _offset) {
+      this.checkWidth(_type);
+      this.commands.add(CommandBuffer.SET_INTS);
+      this.commands.add(_entity);
+      this.commands.add(_type.id());
+      for (int value = 0; value < _type.width(); value++) {
+        this.commands.add(_values[_offset + value]);
+      }
+    }
+
+    /**
+     * Checks whether no command is recorded.
+     *
+     * @return {@code true} if the buffer is empty
+     */
+    public boolean isEmpty() {
+      return this.commands.isEmpty();
+    }
+
+    /**
+     * Gets the size of the encoded commands.
+     *
+     * @return the number of {@code int} words recorded
+     */
+    public int size() {
+      return this.commands.size();
+    }
+
+    /**
+     * Applies the commands in recording order, then clears the buffer.
+     *
+     * @param _world the world
+     * @throws IllegalStateException if systems are running
+     */
+    public void apply(
+        final EntityWorld _world) {
+      final int[] words = this.commands.array();
+      final int size = this.commands.size();
+      this.created.clear();
+      int position = 0;
+      while (position < size) {
+        final int command = words[position];
+        if (command == CommandBuffer.CREATE) {
+          final long mask = Integer.toUnsignedLong(words[position + 1])
+            | (((long) words[position + 2]) << Integer.SIZE);
+          this.created.add(_world.create(mask));
+          position += 3;
+          continue;
+        }
+        final int entity = this.resolve(words[position + 1]);
+        final boolean live = _world.isValid(entity);
+        if (command == CommandBuffer.DESTROY) {
+          if (live) {
+            _world.destroy(entity);
+          }
+          position += 2;
+          continue;
+        }
+        final ComponentType type = ComponentType.byId(words[position + 2]);
+        if (command == CommandBuffer.ADD) {
+          if (live) {
+            _world.add(entity, type);
+          }
+        } else if (command == CommandBuffer.REMOVE) {
+          if (live) {
+            _world.remove(entity, type);
+          }
+        } else if (live && _world.has(entity, type)) {
+          this.setValues(_world, entity, type, words, position + 3,
+            command == CommandBuffer.SET_FLOATS);
+        }
+        position += 3;
+        if (command >= CommandBuffer.SET_FLOATS) {
+          position += type.width();
+        }
+      }
+      this.clear();
+    }
+
+    /**
+     * Discards the recorded commands.
+     */
+    public void clear() {
+      this.commands.clear();
+      this.createCount = 0;
+    }
+
+    /**
+     * Resolves a provisional entity to the entity created by the running
+     * apply.
+     *
+     * @param _entity the entity, live or provisional
+     * @return the live entity
+     */
+    private int resolve(
+        final int _entity) {
+      if (_entity > CommandBuffer.FIRST_PROVISIONAL) {
+        return _entity;
+      }
+      return this.created.get(CommandBuffer.FIRST_PROVISIONAL - _entity);
+    }
+
+    /**
+     * Copies recorded values into a component.
+     *
+     * @param _world the world
+     * @param _entity the entity
+     * @param _type the component type
+     * @param _words the encoded commands
+     * @param _offset the position of the values
+     * @param _floats whether the values are float bits
+     */
+    private void setValues(
+        final EntityWorld _world,
+        final int _entity,
+        final ComponentType _type,
+        final int[] _words,
+        final int _offset,
+        final boolean _floats) {
+      final int width = _type.width();
+      if (_floats) {
+        for (int value = 0; value < width; value++) {
+          this.floatScratch[value]
+            = Float.intBitsToFloat(_words[_offset + value]);
+        }
+        _world.set(_entity, _type, this.floatScratch, 0);
+      } else {
+        System.arraycopy(_words, _offset, this.intScratch, 0, width);
+        _world.set(_entity, _type, this.intScratch, 0);
+      }
+    }
+
+    /**
+     * Fails if a component is too wide to be recorded.
+     *
+     * @param _type the component type
+     */
+    private void checkWidth(
+        final ComponentType _type) {
+      if (_type.width() > Byte.MAX_VALUE) {
+        throw new IllegalArgumentException(
+          "Component " + _type + " is too wide to be recorded.");
+      }
+    }
+
+  }
@@ -0,0 +1,215 @@
+package es.noa.rad.game.engine.ecs;
+
+  /**
+   * Primitive layout of a component.
+   *
+   * <p>A component is a fixed number of {@code float} or {@code int}
+   * values per entity, for example a position of three floats or a team
+   * of one int. Chunks store every component in its own primitive array,
+   * {@link #width()} values per entity.
+   *
+   * <p>Types are registered process-wide and identified by a bit of a
+   * {@code long} mask, so at most {@link #MAX_TYPES} types can exist.
+   * Declare them once as constants:
+   * <pre>{@code
+   * static final ComponentType POSITION = ComponentType.floats("position", 3);
+   * static final ComponentType TEAM = ComponentType.ints("team", 1);
+   * }</pre>
+   *
+   * @see EntityWorld
+   */
+  public final class ComponentType {
+
+    /**
+     * Maximum number of component types.
+     */
+    public static final int MAX_TYPES = Long.SIZE;
+
+    /**
+     * Registered types by identifier.
+     */
+    private static final ComponentType[] TYPES
+      = new ComponentType[ComponentType.MAX_TYPES];
+
+    /**
+     * Number of registered types.
+     */
+    private static int typeCount;
+
+    /**
+     * Identifier, the bit of the type in masks.
+     */
+    private final int id;
+
+    /**
+     * Name, for diagnostics.
+     */
+    private final String name;
+
+    /**
+     * Whether the values are floats (true) or ints (false).
+     */
+    private final boolean floating;
+
+    /**
+     * Number of values per entity.
+     */
+    private final int width;
+
+    /**
+     * Creates a type.
+     *
+     * @param _id the identifier
+     * @param _name the name
+     * @param _floating whether the values are floats
+     * @param _width the number of values per entity
+     */
+    private ComponentType(
+        final int _id,
+        final String _name,
+        final boolean _floating,
+        final int _width) {
+      this.id = _id;
+      this.name = _name;
+      this.floating = _floating;
+      this.width = _width;
+    }
+
+    /**
+     * Registers a component type of float values.
+     *
+     * @param _name the name
+     * @param _width the number of floats per entity
+     * @return the new type
+     * @throws IllegalArgumentException if the width is not positive
+     * @throws IllegalStateException if {@link #MAX_TYPES} types exist
+     */
+    public static ComponentType floats(
+        final String _name,
+        final int _width) {
+      return ComponentType.register(_name, true, _width);
+    }
+
+    /**
+     * Registers a component type of int values.
+     *
+     * @param _name the name
+     * @param _width the number of ints per entity
+     * @return the new type
+     * @throws IllegalArgumentException if the width is not positive
+     * @throws IllegalStateException if {@link #MAX_TYPES} types exist
+     */
+    public static ComponentType ints(
+        final String _name,
+        final int _width) {
+      return ComponentType.register(_name, false, _width);
+    }
+
+    /**
+     * Builds the mask of a set of types.
+     *
+     * @param _types the types
+     * @return the mask with the bit of every type set
+     */
+    public static long mask(
+        final ComponentType... _types) {
+      long mask = 0L;
+      for (final ComponentType type : _types) {
+        mask |= type.mask();
+      }
+      return mask;
+    }
+
+    /**
+     * Gets a registered type.
+     *
+     * @param _id the identifier
+     * @return the type
+     */
+    static synchronized ComponentType byId(
+        final int _id) {
+      return ComponentType.TYPES[_id];
+    }
+
+    /**
+     * Registers a type.
+     *
+     * @param _name the name
+     * @param _floating whether the values are floats
+     * @param _width the number of values per entity
+     * @return the new type
+     */
+    private static synchronized ComponentType register(
+        final String _name,
+        final boolean _floating,
+        final int _width) {
+      if (_width <= 0) {
+        throw new IllegalArgumentException(
+          "Component width must be positive: " + _width);
+      }
+      if (ComponentType.typeCount == ComponentType.MAX_TYPES) {
+        throw new IllegalStateException(
+          "Too many component types, the limit is "
+          + ComponentType.MAX_TYPES + ".");
+      }
+      final ComponentType type = new ComponentType(
+        ComponentType.typeCount, _name, _floating, _width);
+      ComponentType.TYPES[ComponentType.typeCount++] = type;
+      return type;
+    }
+
+    /**
+     * Gets the identifier, the bit of the type in masks.
+     *
+     * @return the identifier
+     */
+    public int id() {
+      return this.id;
+    }
+
+    /**
+     * Gets the mask holding only this type.
+     *
+     * @return the mask
+     */
+    public long mask() {
+      return 1L << this.id;
+    }
+
+    /**
+     * Gets the name.
+     *
+     * @return the name
+     */
+    public String name() {
+      return this.name;
+    }
+
+    /**
+     * Checks whether the values are floats.
+     *
+     * @return {@code true} for floats, {@code false} for ints
+     */
+    public boolean isFloat() {
+      return this.floating;
+    }
+
+    /**
+     * Gets the number of values per entity.
+     *
+     * @return the width
+     */
+    public int width() {
+      return this.width;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+      return this.name + (this.floating ? "[float x " : "[int x ")
+        + this.width + "]";
+    }
+
+  }
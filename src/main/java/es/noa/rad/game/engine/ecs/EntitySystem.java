@@ -0,0 +1,56 @@
+package es.noa.rad.game.engine.ecs;
+
+  /**
+   * Game logic run on the entities of an {@link EntityWorld} every fixed
+   * update.
+   *
+   * <p>A system declares the component types it reads and writes; the
+   * {@link SystemScheduler} runs systems whose declarations do not
+   * conflict at the same time. A system must only touch the components it
+   * declares and must record structural changes in the given
+   * {@link CommandBuffer}.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * final class MovementSystem implements EntitySystem {
+   *   private Query query;
+   *   public long reads() { return VELOCITY.mask(); }
+   *   public long writes() { return POSITION.mask(); }
+   *   public void update(EntityWorld world, CommandBuffer commands,
+   *       float deltaTime) {
+   *     ...
+   *   }
+   * }
+   * }</pre>
+   *
+   * @see SystemScheduler
+   */
+  public interface EntitySystem {
+
+    /**
+     * Gets the component types the system reads.
+     *
+     * @return the mask of the read component types
+     */
+    long reads();
+
+    /**
+     * Gets the component types the system writes.
+     *
+     * @return the mask of the written component types
+     */
+    long writes();
+
+    /**
+     * Runs the system.
+     *
+     * @param _world the world
+     * @param _commands the buffer receiving the structural changes
+     * @param _deltaTime the fixed time step in seconds
+     */
+    void update(
+        EntityWorld _world,
+        CommandBuffer _commands,
+        float _deltaTime);
+
+  }
@@ -0,0 +1,424 @@
+package es.noa.rad.game.engine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.noa.rad.game.engine.memory.HandlePool;
+
+  /**
+   * Archetype-based entity component store.
+   *
+   * <p>Entities are generational {@link HandlePool} handles. Each entity
+   * lives in the {@link Archetype} matching its exact set of component
+   * types, inside a {@link Chunk} whose components are contiguous
+   * primitive arrays. {@link Query queries} visit the chunks of every
+   * matching archetype linearly.
+   *
+   * <p>Structural changes (creating and destroying entities, adding and
+   * removing components) move rows between chunks, so they are only
+   * allowed while no system runs. Systems record them in a
+   * {@link CommandBuffer} that the {@link SystemScheduler} applies after
+   * every update; calling the structural methods while the scheduler runs
+   * throws {@link IllegalStateException}.
+   *
+   * <p>Not thread-safe for structural changes. During a scheduler update,
+   * systems may read and write component values concurrently as declared
+   * by {@link EntitySystem#reads()} and {@link EntitySystem#writes()}.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * EntityWorld world = new EntityWorld(1024);
+   * int entity = world.create(POSITION, VELOCITY);
+   * world.query(POSITION, VELOCITY).forEach(chunk -> {
+   *   float[] position = chunk.floats(POSITION);
+   *   float[] velocity = chunk.floats(VELOCITY);
+   *   for (int i = 0; i < chunk.size() * 3; i++) {
+   *     position[i] += velocity[i] * deltaTime;
+   *   }
+   * });
+   * }</pre>
+   *
+   * @see SystemScheduler
+   */
+  public final class EntityWorld {
+
+    /**
+     * Number of entities the world can hold before growing.
+     */
+    private static final int INITIAL_ENTITIES = 1024;
+
+    /**
+     * Handles of the entities, indexed by slot.
+     */
+    private final HandlePool entities;
+
+    /**
+     * Archetype index of every slot.
+     */
+    private int[] archetypeIndices;
+
+    /**
+     * Row index across chunks of every slot.
+     */
+    private int[] rows;
+
+    /**
+     * Archetypes, in creation order.
+     */
+    private final List<Archetype> archetypes;
+
+    /**
+     * Archetypes by component mask.
+     */
+    private final Map<Long, Archetype> archetypesByMask;
+
+    /**
+     * Number of rows of every chunk.
+     */
+    private final int chunkCapacity;
+
+    /**
+     * Whether systems are running and structural changes are forbidden.
+     */
+    private boolean locked;
+
+    /**
+     * Creates an empty world.
+     *
+     * @param _chunkCapacity the number of entities of a chunk, rounded up
+     *     to a power of two
+     */
+    public EntityWorld(
+        final int _chunkCapacity) {
+      this.entities = new HandlePool(EntityWorld.INITIAL_ENTITIES);
+      this.archetypeIndices = new int[EntityWorld.INITIAL_ENTITIES];
+      this.rows = new int[EntityWorld.INITIAL_ENTITIES];
+      this.archetypes = new ArrayList<>();
+      this.archetypesByMask = new HashMap<>();
+      this.chunkCapacity = (_chunkCapacity <= 1)
+        ? 1 : Integer.highestOneBit(_chunkCapacity - 1) << 1;
+      this.locked = false;
+    }
+
+    /**
+     * Creates an entity with zeroed components.
+     *
+     * @param _types the component types
+     * @return the entity handle
+     * @throws IllegalStateException if systems are running
+     */
+    public int create(
+        final ComponentType... _types) {
+      return this.create(ComponentType.mask(_types));
+    }
+
+    /**
+     * Creates an entity with zeroed components.
+     *
+     * @param _mask the mask of the component types
+     * @return the entity handle
+     * @throws IllegalStateException if systems are running
+     */
+    public int create(
+        final long _mask) {
+      this.checkUnlocked();
+      final int entity = this.entities.allocate();
+      final int slot = this.entities.slot(entity);
+      if (this.entities.capacity() > this.rows.length) {
+        this.archetypeIndices
+          = Arrays.copyOf(this.archetypeIndices, this.entities.capacity());
+        this.rows = Arrays.copyOf(this.rows, this.entities.capacity());
+      }
+      final Archetype archetype = this.archetype(_mask);
+      this.archetypeIndices[slot] = archetype.index();
+      this.rows[slot] = archetype.add(entity);
+      return entity;
+    }
+
+    /**
+     * Destroys an entity.
+     *
+     * @param _entity the entity handle
+     * @throws IllegalArgumentException if the handle is not live
+     * @throws IllegalStateException if systems are running
+     */
+    public void destroy(
+        final int _entity) {
+      this.checkUnlocked();
+      final int slot = this.entities.slot(_entity);
+      this.removeRow(this.archetypes.get(this.archetypeIndices[slot]),
+        this.rows[slot]);
+      this.entities.release(_entity);
+    }
+
+    /**
+     * Adds a zeroed component to an entity, moving it to another
+     * archetype. Does nothing if the entity already has it.
+     *
+     * @param _entity the entity handle
+     * @param _type the component type
+     * @throws IllegalArgumentException if the handle is not live
+     * @throws IllegalStateException if systems are running
+     */
+    public void add(
+        final int _entity,
+        final ComponentType _type) {
+      this.checkUnlocked();
+      final int slot = this.entities.slot(_entity);
+      final long mask
+        = this.archetypes.get(this.archetypeIndices[slot]).mask();
+      if ((mask & _type.mask()) == 0L) {
+        this.move(slot, mask | _type.mask());
+      }
+    }
+
+    /**
+     * Removes a component from an entity, moving it to another archetype.
+     * Does nothing if the entity lacks it.
+     *
+     * @param _entity the entity handle
+     * @param _type the component type
+     * @throws IllegalArgumentException if the handle is not live
+     * @throws IllegalStateException if systems are running
+     */
+    public void remove(
+        final int _entity,
+        final ComponentType _type) {
+      this.checkUnlocked();
+      final int slot = this.entities.slot(_entity);
+      final long mask
+        = this.archetypes.get(this.archetypeIndices[slot]).mask();
+      if ((mask & _type.mask()) != 0L) {
+        this.move(slot, mask & ~_type.mask());
+      }
+    }
+
+    /**
+     * Checks whether an entity has a component.
+     *
+     * @param _entity the entity handle
+     * @param _type the component type
+     * @return {@code true} if the entity has the component
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public boolean has(
+        final int _entity,
+        final ComponentType _type) {
+      return this.archetypes.get(
+        this.archetypeIndices[this.entities.slot(_entity)]).has(_type);
+    }
+
+    /**
+     * Checks whether an entity handle is live.
+     *
+     * @param _entity the entity handle
+     * @return {@code true} if the entity exists
+     */
+    public boolean isValid(
+        final int _entity) {
+      return this.entities.isValid(_entity);
+    }
+
+    /**
+     * Gets the chunk holding an entity. Valid until the next structural
+     * change.
+     *
+     * @param _entity the entity handle
+     * @return the chunk
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Chunk chunk(
+        final int _entity) {
+      final int slot = this.entities.slot(_entity);
+      return this.archetypes.get(this.archetypeIndices[slot])
+        .chunkOf(this.rows[slot]);
+    }
+
+    /**
+     * Gets the row of an entity within its {@link #chunk(int)}. Valid
+     * until the next structural change.
+     *
+     * @param _entity the entity handle
+     * @return the row
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int row(
+        final int _entity) {
+      final int slot = this.entities.slot(_entity);
+      return this.archetypes.get(this.archetypeIndices[slot])
+        .rowOf(this.rows[slot]);
+    }
+
+    /**
+     * Sets the values of a float component of an entity.
+     *
+     * @param _entity the entity handle
+     * @param _type the component type
+     * @param _values the array holding {@code width} values
+     * @param _offset the position of the values in the array
+     * @throws IllegalArgumentException if the handle is not live or the
+     *     entity lacks the component
+     */
+    public void set(
+        final int _entity,
+        final ComponentType _type,
+        final float[] _values,
+        final int _offset) {
+      System.arraycopy(_values, _offset, this.chunk(_entity).floats(_type),
+        this.row(_entity) * _type.width(), _type.width());
+    }
+
+    /**
+     * Sets the values of an int component of an entity.
+     *
+     * @param _entity the entity handle
+     * @param _type the component type
+     * @param _values the array holding {@code width} values
+     * @param _offset the position of the values in the array
+     * @throws IllegalArgumentException if the handle is not live or the
+     *     entity lacks the component
+     */
+    public void set(
+        final int _entity,
+        final ComponentType _type,
+        final int[] _values,
+        final int _offset) {
+      System.arraycopy(_values, _offset, this.chunk(_entity).ints(_type),
+        this.row(_entity) * _type.width(), _type.width());
+    }
+
+    /**
+     * Creates a query over the entities having a set of components.
+     *
+     * @param _types the required component types
+     * @return the query
+     */
+    public Query query(
+        final ComponentType... _types) {
+      return new Query(this, ComponentType.mask(_types), 0L);
+    }
+
+    /**
+     * Creates a query over the entities having all the included components
+     * and none of the excluded ones.
+     *
+     * @param _include the mask of the required component types
+     * @param _exclude the mask of the forbidden component types
+     * @return the query
+     */
+    public Query query(
+        final long _include,
+        final long _exclude) {
+      return new Query(this, _include, _exclude);
+    }
+
+    /**
+     * Gets the number of live entities.
+     *
+     * @return the entity count
+     */
+    public int size() {
+      return this.entities.size();
+    }
+
+    /**
+     * Gets the number of archetypes ever created.
+     *
+     * @return the archetype count
+     */
+    public int archetypeCount() {
+      return this.archetypes.size();
+    }
+
+    /**
+     * Gets an archetype.
+     *
+     * @param _index the archetype index, in creation order
+     * @return the archetype
+     */
+    public Archetype archetype(
+        final int _index) {
+      return this.archetypes.get(_index);
+    }
+
+    /**
+     * Forbids or allows structural changes while systems run.
+     *
+     * @param _locked whether systems are running
+     */
+    void locked(
+        final boolean _locked) {
+      this.locked = _locked;
+    }
+
+    /**
+     * Fails if systems are running.
+     */
+    private void checkUnlocked() {
+      if (this.locked) {
+        throw new IllegalStateException(
+          "Structural changes must be recorded in a CommandBuffer while"
+          + " systems run.");
+      }
+    }
+
+    /**
+     * Gets or creates the archetype of a mask.
+     *
+     * @param _mask the mask of the component types
+     * @return the archetype
+     */
+    private Archetype archetype(
+        final long _mask) {
+      Archetype archetype = this.archetypesByMask.get(_mask);
+      if (archetype == null) {
+        archetype = new Archetype(
+          this.archetypes.size(), _mask, this.chunkCapacity);
+        this.archetypesByMask.put(_mask, archetype);
+        this.archetypes.add(archetype);
+      }
+      return archetype;
+    }
+
+    /**
+     * Moves an entity to the archetype of another mask, keeping the
+     * shared components.
+     *
+     * @param _slot the entity slot
+     * @param _mask the mask of the new component types
+     */
+    private void move(
+        final int _slot,
+        final long _mask) {
+      final Archetype source
+        = this.archetypes.get(this.archetypeIndices[_slot]);
+      final int sourceRow = this.rows[_slot];
+      final Archetype target = this.archetype(_mask);
+      final int targetRow = target.add(this.entities.handle(_slot));
+      source.chunkOf(sourceRow).copyShared(source.rowOf(sourceRow),
+        target.chunkOf(targetRow), target.rowOf(targetRow));
+      this.removeRow(source, sourceRow);
+      this.archetypeIndices[_slot] = target.index();
+      this.rows[_slot] = targetRow;
+    }
+
+    /**
+     * Removes a row from an archetype and fixes the row of the entity
+     * moved into it.
+     *
+     * @param _archetype the archetype
+     * @param _row the row index across chunks
+     */
+    private void removeRow(
+        final Archetype _archetype,
+        final int _row) {
+      final int moved = _archetype.remove(_row);
+      if (moved != HandlePool.INVALID_HANDLE) {
+        this.rows[this.entities.slot(moved)] = _row;
+      }
+    }
+
+  }
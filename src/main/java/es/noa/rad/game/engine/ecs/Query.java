@@ -0,0 +1,222 @@
+package es.noa.rad.game.engine.ecs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+  /**
+   * Iteration over the chunks of the entities having a set of components.
+   *
+   * <p>A query remembers the archetypes it matched and only tests the
+   * archetypes created since its last use, so keep one query per system
+   * instead of creating it every update.
+   *
+   * <p>A query must be used by one thread at a time; the parallel
+   * {@link #forEach(Consumer, ForkJoinPool)} splits its chunks across the
+   * pool itself.
+   */
+  public final class Query {
+
+    /**
+     * World the query runs on.
+     */
+    private final EntityWorld world;
+
+    /**
+     * Mask of the required component types.
+     */
+    private final long include;
+
+    /**
+     * Mask of the forbidden component types.
+     */
+    private final long exclude;
+
+    /**
+     * Matching archetypes.
+     */
+    private final List<Archetype> matches;
+
+    /**
+     * Number of world archetypes already tested.
+     */
+    private int tested;
+
+    /**
+     * Non-empty chunks gathered for the parallel iteration.
+     */
+    private final List<Chunk> chunks;
+
+    /**
+     * Creates a query.
+     *
+     * @param _world the world
+     * @param _include the mask of the required component types
+     * @param _exclude the mask of the forbidden component types
+     */
+    Query(
+        final EntityWorld _world,
+        final long _include,
+        final long _exclude) {
+      this.world = _world;
+      this.include = _include;
+      this.exclude = _exclude;
+      this.matches = new ArrayList<>();
+      this.tested = 0;
+      this.chunks = new ArrayList<>();
+    }
+
+    /**
+     * Gets the mask of the required component types.
+     *
+     * @return the include mask
+     */
+    public long include() {
+      return this.include;
+    }
+
+    /**
+     * Gets the mask of the forbidden component types.
+     *
+     * @return the exclude mask
+     */
+    public long exclude() {
+      return this.exclude;
+    }
+
+    /**
+     * Counts the matching entities.
+     *
+     * @return the entity count
+     */
+    public int count() {
+      this.refresh();
+      int count = 0;
+      for (int index = 0; index < this.matches.size(); index++) {
+        count += this.matches.get(index).size();
+      }
+      return count;
+    }
+
+    /**
+     * Visits the non-empty chunks of the matching archetypes on the
+     * calling thread.
+     *
+     * @param _action the action run on every chunk
+     */
+    public void forEach(
+        final Consumer<Chunk> _action) {
+      this.refresh();
+      for (int index = 0; index < this.matches.size(); index++) {
+        final Archetype archetype = this.matches.get(index);
+        final int chunkCount = archetype.chunkCount();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+          _action.accept(archetype.chunk(chunk));
+        }
+      }
+    }
+
+    /**
+     * Visits the non-empty chunks of the matching archetypes in parallel,
+     * one chunk per task. The action must only touch its own chunk.
+     *
+     * @param _action the action run on every chunk
+     * @param _pool the pool running the chunks
+     */
+    public void forEach(
+        final Consumer<Chunk> _action,
+        final ForkJoinPool _pool) {
+      this.refresh();
+      this.chunks.clear();
+      for (int index = 0; index < this.matches.size(); index++) {
+        final Archetype archetype = this.matches.get(index);
+        final int chunkCount = archetype.chunkCount();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+          this.chunks.add(archetype.chunk(chunk));
+        }
+      }
+      if (this.chunks.size() > 1) {
+        _pool.invoke(new ChunkTask(_action, 0, this.chunks.size()));
+      } else if (this.chunks.size() == 1) {
+        _action.accept(this.chunks.get(0));
+      }
+    }
+
+    /**
+     * Tests the archetypes created since the last use.
+     */
+    private void refresh() {
+      final int archetypeCount = this.world.archetypeCount();
+      for (; this.tested < archetypeCount; this.tested++) {
+        final Archetype archetype = this.world.archetype(this.tested);
+        final long mask = archetype.mask();
+        if (((mask & this.include) == this.include)
+            && ((mask & this.exclude) == 0L)) {
+          this.matches.add(archetype);
+        }
+      }
+    }
+
+    /**
+     * Task visiting a range of the gathered chunks.
+     */
+    private final class ChunkTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Action run on every chunk.
+       */
+      private final Consumer<Chunk> action;
+
+      /**
+       * First chunk of the range.
+       */
+      private final int from;
+
+      /**
+       * Chunk after the last one of the range.
+       */
+      private final int to;
+
+      /**
+       * Creates the task of a range.
+       *
+       * @param _action the action run on every chunk
+       * @param _from the first chunk
+       * @param _to the chunk after the last one
+       */
+      ChunkTask(
+          final Consumer<Chunk> _action,
+          final int _from,
+          final int _to) {
+        this.action = _action;
+        this.from = _from;
+        this.to = _to;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        if ((this.to - this.from) == 1) {
+          this.action.accept(Query.this.chunks.get(this.from));
+          return;
+        }
+        final int middle = (this.from + this.to) >>> 1;
+        ForkJoinTask.invokeAll(
+          new ChunkTask(this.action, this.from, middle),
+          new ChunkTask(this.action, middle, this.to));
+      }
+
+    }
+
+  }
@@ -0,0 +1,318 @@
+package es.noa.rad.game.engine.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+  /**
+   * Runs the {@link EntitySystem systems} of an {@link EntityWorld} every
+   * fixed update, in parallel where their component accesses allow it.
+   *
+   * <p>Systems are grouped into phases when they are added: a system goes
+   * to the phase after the last earlier system it conflicts with (one
+   * writes a component the other reads or writes). Systems of a phase run
+   * concurrently on the pool; phases run in order, so conflicting systems
+   * keep their registration order.
+   *
+   * <p>The world is locked against structural changes while the phases
+   * run. Afterwards the command buffer of every system is applied, in
+   * registration order, so the result does not depend on thread timing.
+   *
+   * <p>Tasks and command buffers are created when systems are added and
+   * reused every update.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * SystemScheduler scheduler = new SystemScheduler(world);
+   * scheduler.add(new MovementSystem());
+   * scheduler.add(new LifetimeSystem());
+   * GameTiming.get().updateCallback(scheduler::update);
+   * }</pre>
+   */
+  public final class SystemScheduler {
+
+    /**
+     * Number of {@code int} words a command buffer holds before growing.
+     */
+    private static final int COMMAND_BUFFER_CAPACITY = 256;
+
+    /**
+     * World the systems run on.
+     */
+    private final EntityWorld world;
+
+    /**
+     * Systems, in registration order.
+     */
+    private final List<SystemTask> systems;
+
+    /**
+     * Phases, in execution order.
+     */
+    private final List<PhaseTask> phases;
+
+    /**
+     * Time step of the running update.
+     */
+    private float deltaTime;
+
+    /**
+     * Duration of the last update in nanoseconds, commands included.
+     */
+    private long updateNanos;
+
+    /**
+     * Duration of the command application of the last update in
+     * nanoseconds.
+     */
+    private long applyNanos;
+
+    /**
+     * Creates a scheduler without systems.
+     *
+     * @param _world the world the systems run on
+     */
+    public SystemScheduler(
+        final EntityWorld _world) {
+      this.world = _world;
+      this.systems = new ArrayList<>();
+      this.phases = new ArrayList<>();
+    }
+
+    /**
+     * Adds a system after the ones already added.
+     *
+     * @param _system the system
+     */
+    public void add(
+        final EntitySystem _system) {
+      int phase = 0;
+      for (int index = 0; index < this.systems.size(); index++) {
+        final SystemTask other = this.systems.get(index);
+        if (SystemScheduler.conflicts(_system, other.system)) {
+          phase = Math.max(phase, other.phase + 1);
+        }
+      }
+      final SystemTask task = new SystemTask(_system, phase);
+      this.systems.add(task);
+      if (phase == this.phases.size()) {
+        this.phases.add(new PhaseTask());
+      }
+      this.phases.get(phase).add(task);
+    }
+
+    /**
+     * Runs every system on the common pool, then applies their commands.
+     *
+     * @param _deltaTime the fixed time step in seconds
+     */
+    public void update(
+        final float _deltaTime) {
+      this.update(_deltaTime, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs every system, then applies their commands.
+     *
+     * @param _deltaTime the fixed time step in seconds
+     * @param _pool the pool running the systems of a phase
+     */
+    public void update(
+        final float _deltaTime,
+        final ForkJoinPool _pool) {
+      final long start = System.nanoTime();
+      this.deltaTime = _deltaTime;
+      this.world.locked(true);
+      try {
+        for (int index = 0; index < this.phases.size(); index++) {
+          final PhaseTask phase = this.phases.get(index);
+          if (phase.tasks.length == 1) {
+            phase.tasks[0].run();
+          } else {
+            phase.reinitialize();
+            _pool.invoke(phase);
+          }
+        }
+      } finally {
+        this.world.locked(false);
+      }
+      final long applyStart = System.nanoTime();
+      for (int index = 0; index < this.systems.size(); index++) {
+        this.systems.get(index).commands.apply(this.world);
+      }
+      final long end = System.nanoTime();
+      this.applyNanos = end - applyStart;
+      this.updateNanos = end - start;
+    }
+
+    /**
+     * Gets the number of systems.
+     *
+     * @return the system count
+     */
+    public int systemCount() {
+      return this.systems.size();
+    }
+
+    /**
+     * Gets the number of phases.
+     *
+     * @return the phase count
+     */
+    public int phaseCount() {
+      return this.phases.size();
+    }
+
+    /**
+     * Gets the phase a system runs in.
+     *
+     * @param _index the system index, in registration order
+     * @return the phase index
+     */
+    public int phase(
+        final int _index) {
+      return this.systems.get(_index).phase;
+    }
+
+    /**
+     * Gets the duration of the last update, commands included.
+     *
+     * @return the update time in nanoseconds
+     */
+    public long updateNanos() {
+      return this.updateNanos;
+    }
+
+    /**
+     * Gets the duration of the command application of the last update.
+     *
+     * @return the apply time in nanoseconds
+     */
+    public long applyNanos() {
+      return this.applyNanos;
+    }
+
+    /**
+     * Checks whether two systems may not run at the same time.
+     *
+     * @param _first the first system
+     * @param _second the second system
+     * @return {@code true} if one writes what the other reads or writes
+     */
+    private static boolean conflicts(
+        final EntitySystem _first,
+        final EntitySystem _second) {
+      return ((_first.writes() & (_second.reads() | _second.writes())) != 0L)
+        || ((_second.writes() & _first.reads()) != 0L);
+    }
+
+    /**
+     * Task running one system.
+     */
+    private final class SystemTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * System run by the task.
+       */
+      private final EntitySystem system;
+
+      /**
+       * Phase of the system.
+       */
+      private final int phase;
+
+      /**
+       * Buffer receiving the structural changes of the system.
+       */
+      private final CommandBuffer commands;
+
+      /**
+       * Creates the task of a system.
+       *
+       * @param _system the system
+       * @param _phase the phase of the system
+       */
+      SystemTask(
+          final EntitySystem _system,
+          final int _phase) {
+        this.system = _system;
+        this.phase = _phase;
+        this.commands
+          = new CommandBuffer(SystemScheduler.COMMAND_BUFFER_CAPACITY);
+      }
+
+      /**
+       * Runs the system on the calling thread.
+       */
+      void run() {
+        this.system.update(SystemScheduler.this.world, this.commands,
+          SystemScheduler.this.deltaTime);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        this.run();
+      }
+
+    }
+
+    /**
+     * Task running the systems of a phase concurrently.
+     */
+    private final class PhaseTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Tasks of the systems of the phase.
+       */
+      private SystemTask[] tasks;
+
+      /**
+       * Creates an empty phase.
+       */
+      PhaseTask() {
+        this.tasks = new SystemTask[0];
+      }
+
+      /**
+       * Adds a system to the phase.
+       *
+       * @param _task the task of the system
+       */
+      void add(
+          final SystemTask _task) {
+        this.tasks = Arrays.copyOf(this.tasks, this.tasks.length + 1);
+        this.tasks[this.tasks.length - 1] = _task;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        for (final SystemTask task : this.tasks) {
+          task.reinitialize();
+        }
+        ForkJoinTask.invokeAll(this.tasks);
+      }
+
+    }
+
+  }
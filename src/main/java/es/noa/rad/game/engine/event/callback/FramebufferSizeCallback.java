@@ -0,0 +1,38 @@
+package es.noa.rad.game.engine.event.callback;
+
+import org.lwjgl.glfw.GLFWFramebufferSizeCallback;
+import es.noa.rad.game.engine.core.Window;
+
+  /**
+   * GLFW framebuffer size callback handler.
+   *
+   * <p>This callback is invoked by GLFW whenever the framebuffer of the
+   * window is resized, including when the window moves to a monitor with
+   * a different content scale. It forwards the new size in pixels to
+   * {@link Window#resize(int, int)}, which differs from the window size
+   * in screen coordinates on HiDPI screens.
+   *
+   * @see Window
+   * @see GLFWFramebufferSizeCallback
+   */
+  public final class FramebufferSizeCallback
+      extends GLFWFramebufferSizeCallback {
+
+    /**
+     * Processes framebuffer resize events from GLFW.
+     *
+     * {@inheritDoc}
+     *
+     * @param _window the window whose framebuffer was resized
+     * @param _width the new framebuffer width in pixels
+     * @param _height the new framebuffer height in pixels
+     */
+    @Override
+    public void invoke(
+        final long _window,
+        final int _width,
+        final int _height) {
+      Window.get().resize(_width, _height);
+    }
+
+  }
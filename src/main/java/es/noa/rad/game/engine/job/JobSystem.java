@@ -0,0 +1,122 @@
+package es.noa.rad.game.engine.job;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import es.noa.rad.game.engine.configuration.settings.GameSettings;
+
+  /**
+   * Work-stealing worker pool running the jobs of the engine.
+   *
+   * <p>Wraps a {@link ForkJoinPool}: every worker pushes the jobs it
+   * spawns onto its own deque and idle workers steal from the others, so
+   * uneven jobs balance themselves without a shared queue. The pool is
+   * sized to the machine unless configured otherwise.
+   *
+   * <p>Jobs are organized with:
+   * <ul>
+   *   <li>{@link TaskGraph}: reusable dependency graphs of jobs released by
+   *       dependency counters, rebuilt every fixed update or frame.</li>
+   *   <li>{@link ParallelFor}: reusable loops splitting a range of indices
+   *       across the workers.</li>
+   * </ul>
+   *
+   * <p>Any API taking a {@link ForkJoinPool} (scene graph, ECS scheduler,
+   * mesh builders) can run on {@link #pool()}.
+   */
+  public final class JobSystem {
+
+    /**
+     * Time given to the running jobs to finish on {@link #close()}.
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 5L;
+
+    /**
+     * Underlying work-stealing pool.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a job system sized by the {@code game.job.threads} setting.
+     */
+    public JobSystem() {
+      this(JobSystem.threads(GameSettings.GAME_JOB_THREADS.<Integer>get()));
+    }
+
+    /**
+     * Creates a job system.
+     *
+     * @param _threads the number of workers
+     * @throws IllegalArgumentException if the worker count is not positive
+     */
+    public JobSystem(
+        final int _threads) {
+      if (_threads <= 0) {
+        throw new IllegalArgumentException(
+          "Thread count must be positive: " + _threads);
+      }
+      this.pool = new ForkJoinPool(_threads, workerPool -> {
+        final ForkJoinWorkerThread thread = ForkJoinPool
+          .defaultForkJoinWorkerThreadFactory.newThread(workerPool);
+        thread.setName("Job-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+      }, null, false);
+    }
+
+    /**
+     * Gets the underlying work-stealing pool.
+     *
+     * @return the pool
+     */
+    public ForkJoinPool pool() {
+      return this.pool;
+    }
+
+    /**
+     * Gets the number of workers.
+     *
+     * @return the worker count
+     */
+    public int threads() {
+      return this.pool.getParallelism();
+    }
+
+    /**
+     * Gets the number of jobs stolen between workers so far.
+     *
+     * @return the steal count
+     */
+    public long steals() {
+      return this.pool.getStealCount();
+    }
+
+    /**
+     * Stops the workers, waiting for the running jobs.
+     */
+    public void close() {
+      this.pool.shutdown();
+      try {
+        this.pool.awaitTermination(
+          JobSystem.CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Resolves the configured worker count.
+     *
+     * @param _threads the configured count, zero for automatic
+     * @return the worker count
+     */
+    private static int threads(
+        final int _threads) {
+      if (_threads > 0) {
+        return _threads;
+      }
+      return Runtime.getRuntime().availableProcessors();
+    }
+
+  }
@@ -0,0 +1,168 @@
+package es.noa.rad.game.engine.job;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+  /**
+   * Reusable loop splitting a range of indices across a {@link JobSystem}.
+   *
+   * <p>The range is cut into batches of {@code grain} indices. One pooled
+   * task per worker claims batches from a shared atomic cursor until none
+   * is left, so faster workers simply take more batches. The calling
+   * thread's task takes part too when it is a worker, which makes loops
+   * nested in {@link TaskGraph} jobs safe.
+   *
+   * <p>The tasks are created once with the loop, so running it allocates
+   * nothing.
+   *
+   * <p>Not thread-safe: a loop is run by one thread at a time. Create one
+   * loop per call site.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * ParallelFor update = new ParallelFor(jobSystem, this::updateRange, 4096);
+   * update.run(particleCount);
+   * }</pre>
+   */
+  public final class ParallelFor {
+
+    /**
+     * Job system running the loop.
+     */
+    private final JobSystem jobSystem;
+
+    /**
+     * Loop body.
+     */
+    private final RangeJob body;
+
+    /**
+     * Number of indices of a batch.
+     */
+    private final int grain;
+
+    /**
+     * Root task, run by the calling thread or the pool.
+     */
+    private final Batch root;
+
+    /**
+     * Helper tasks, one per additional worker.
+     */
+    private final Batch[] helpers;
+
+    /**
+     * Next unclaimed index.
+     */
+    private final AtomicInteger cursor;
+
+    /**
+     * Number of indices of the running loop.
+     */
+    private int count;
+
+    /**
+     * Creates a loop.
+     *
+     * @param _jobSystem the job system running the loop
+     * @param _body the loop body
+     * @param _grain the number of indices of a batch
+     * @throws IllegalArgumentException if the grain is not positive
+     */
+    public ParallelFor(
+        final JobSystem _jobSystem,
+        final RangeJob _body,
+        final int _grain) {
+      if (_grain <= 0) {
+        throw new IllegalArgumentException(
+          "Grain must be positive: " + _grain);
+      }
+      this.jobSystem = _jobSystem;
+      this.body = _body;
+      this.grain = _grain;
+      this.cursor = new AtomicInteger();
+      this.root = new Batch(null);
+      this.helpers = new Batch[_jobSystem.threads() - 1];
+      for (int helper = 0; helper < this.helpers.length; helper++) {
+        this.helpers[helper] = new Batch(this.root);
+      }
+    }
+
+    /**
+     * Runs the body over the indices {@code 0} to {@code count - 1} and
+     * waits for all of them.
+     *
+     * @param _count the number of indices
+     */
+    public void run(
+        final int _count) {
+      if (_count <= 0) {
+        return;
+      }
+      if (_count <= this.grain) {
+        this.body.run(0, _count);
+        return;
+      }
+      this.count = _count;
+      this.cursor.set(0);
+      this.root.reinitialize();
+      for (final Batch helper : this.helpers) {
+        helper.reinitialize();
+      }
+      this.jobSystem.pool().invoke(this.root);
+    }
+
+    /**
+     * Claims and runs batches until none is left.
+     */
+    private void drain() {
+      int from = this.cursor.getAndAdd(this.grain);
+      while (from < this.count) {
+        this.body.run(from, Math.min(this.count, from + this.grain));
+        from = this.cursor.getAndAdd(this.grain);
+      }
+    }
+
+    /**
+     * Task draining batches; the root also forks the helpers.
+     */
+    private final class Batch
+        extends CountedCompleter<Void> {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Creates a task.
+       *
+       * @param _root the root task, null for the root itself
+       */
+      Batch(
+          final Batch _root) {
+        super(_root);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void compute() {
+        if (this.getCompleter() == null) {
+          final int batches = (ParallelFor.this.count
+            + ParallelFor.this.grain - 1) / ParallelFor.this.grain;
+          final int forks
+            = Math.min(ParallelFor.this.helpers.length, batches - 1);
+          this.setPendingCount(forks);
+          for (int helper = 0; helper < forks; helper++) {
+            ParallelFor.this.helpers[helper].fork();
+          }
+        }
+        ParallelFor.this.drain();
+        this.tryComplete();
+      }
+
+    }
+
+  }
@@ -0,0 +1,20 @@
+package es.noa.rad.game.engine.job;
+
+  /**
+   * Body of a {@link ParallelFor} loop, run on a range of indices.
+   *
+   * @see ParallelFor
+   */
+  public interface RangeJob {
+
+    /**
+     * Runs the loop body on a range of indices.
+     *
+     * @param _from the first index
+     * @param _to the index after the last one
+     */
+    void run(
+        int _from,
+        int _to);
+
+  }
@@ -0,0 +1,399 @@
+package es.noa.rad.game.engine.job;
+
+import java.util.Arrays;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import es.noa.rad.game.engine.memory.MathStack;
+import es.noa.rad.game.engine.util.IntList;
+
+  /**
+   * Reusable dependency graph of jobs run on a {@link JobSystem}.
+   *
+   * <p>Every fixed update or frame the owner {@link #clear() clears} the
+   * graph, {@link #add(Runnable) adds} its jobs, declares their
+   * {@link #dependsOn(int, int) dependencies} and {@link #run() runs} it:
+   * <ol>
+   *   <li>Every task gets a counter holding its number of unfinished
+   *       prerequisites; tasks without prerequisites are forked at
+   *       once.</li>
+   *   <li>A finished task decrements the counter of each dependent task
+   *       and forks the ones reaching zero on the same worker, which
+   *       other workers may steal.</li>
+   *   <li>Every finished task also counts down the root of the graph, which
+   *       completes after the last one and releases {@link #run()}.</li>
+   * </ol>
+   *
+   * <p>No futures are involved. Tasks are pooled fork-join nodes
+   * reinitialized every run and the dependencies are flat {@code int}
+   * arrays, so once the graph has grown to its largest frame, building and
+   * running it allocates nothing. Store the jobs in fields instead of
+   * creating lambdas every frame to keep the whole frame allocation-free.
+   *
+   * <p>Not thread-safe: a graph is built and run by one thread at a time.
+   * Jobs may run {@link ParallelFor} loops or nested graphs. Every job
+   * that returns normally gets the {@link MathStack} frames of the worker
+   * that ran it checked, so a frame leaked on a worker fails the graph in
+   * debug mode instead of going unseen by the game thread.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * graph.clear();
+   * int physics = graph.add(this.physicsJob);
+   * int animation = graph.add(this.animationJob);
+   * int culling = graph.add(this.cullingJob);
+   * graph.dependsOn(culling, physics);
+   * graph.dependsOn(culling, animation);
+   * graph.run();
+   * }</pre>
+   */
+  public final class TaskGraph {
+
+    /**
+     * Job system running the graph.
+     */
+    private final JobSystem jobSystem;
+
+    /**
+     * Job of every task.
+     */
+    private Runnable[] jobs;
+
+    /**
+     * Pooled fork-join node of every task.
+     */
+    private Node[] nodes;
+
+    /**
+     * Number of tasks.
+     */
+    private int size;
+
+    /**
+     * Dependencies, as pairs of prerequisite and dependent task.
+     */
+    private final IntList edges;
+
+    /**
+     * Start of the successors of every task in {@link #successors}; the
+     * entry after the last task holds the end of its successors.
+     */
+    private int[] successorStarts;
+
+    /**
+     * Dependent tasks grouped by prerequisite.
+     */
+    private int[] successors;
+
+    /**
+     * Number of prerequisites of every task.
+     */
+    private int[] prerequisites;
+
+    /**
+     * Unfinished prerequisites of every task during a run.
+     */
+    private AtomicIntegerArray pending;
+
+    /**
+     * Tasks ready to run, scratch of the cycle check.
+     */
+    private int[] ready;
+
+    /**
+     * Completer finishing after the last task.
+     */
+    private final Root root;
+
+    /**
+     * First failure of the running graph.
+     */
+    private final AtomicReference<Throwable> failure;
+
+    /**
+     * Duration of the last run in nanoseconds.
+     */
+    private long runNanos;
+
+    /**
+     * Creates an empty graph.
+     *
+     * @param _jobSystem the job system running the graph
+     * @param _capacity the number of tasks the graph can hold before
+     *     growing
+     */
+    public TaskGraph(
+        final JobSystem _jobSystem,
+        final int _capacity) {
+      this.jobSystem = _jobSystem;
+      this.root = new Root();
+      this.failure = new AtomicReference<>();
+      this.edges = new IntList(Math.max(1, _capacity) * 2);
+      this.size = 0;
+      this.jobs = new Runnable[0];
+      this.nodes = new Node[0];
+      this.grow(Math.max(1, _capacity));
+    }
+
+    /**
+     * Adds a task.
+     *
+     * @param _job the job run by the task
+     * @return the task index, valid until the next {@link #clear()}
+     */
+    public int add(
+        final Runnable _job) {
+      if (this.size == this.jobs.length) {
+        this.grow(this.size * 2);
+      }
+      this.jobs[this.size] = _job;
+      return this.size++;
+    }
+
+    /**
+     * Makes a task wait for another one.
+     *
+     * @param _task the dependent task
+     * @param _prerequisite the task that must finish first
+     * @throws IllegalArgumentException if a task index is out of range
+     */
+    public void dependsOn(
+        final int _task,
+        final int _prerequisite) {
+      if ((_task < 0) || (_task >= this.size)
+          || (_prerequisite < 0) || (_prerequisite >= this.size)) {
+        throw new IllegalArgumentException(
+          "Invalid dependency " + _prerequisite + " -> " + _task);
+      }
+      this.edges.add(_prerequisite);
+      this.edges.add(_task);
+    }
+
+    /**
+     * Removes every task and dependency.
+     */
+    public void clear() {
+      Arrays.fill(this.jobs, 0, this.size, null);
+      this.size = 0;
+      this.edges.clear();
+    }
+
+    /**
+     * Runs every task and waits for all of them.
+     *
+     * <p>If tasks fail, the remaining tasks still run and the first
+     * failure is rethrown once the graph has finished.
+     *
+     * @throws IllegalStateException if the dependencies form a cycle
+     */
+    public void run() {
+      if (this.size == 0) {
+        return;
+      }
+      final long start = System.nanoTime();
+      this.link();
+      this.failure.set(null);
+      for (int task = 0; task < this.size; task++) {
+        this.nodes[task].reinitialize();
+        this.pending.set(task, this.prerequisites[task]);
+      }
+      this.root.reinitialize();
+      this.jobSystem.pool().invoke(this.root);
+      this.runNanos = System.nanoTime() - start;
+
+      final Throwable thrown = this.failure.getAndSet(null);
+      if (thrown instanceof RuntimeException) {
+        throw (RuntimeException) thrown;
+      }
+      if (thrown instanceof Error) {
+        throw (Error) thrown;
+      }
+    }
+
+    /**
+     * Gets the number of tasks.
+     *
+     * @return the task count
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Gets the duration of the last run.
+     *
+     * @return the run time in nanoseconds
+     */
+    public long runNanos() {
+      return this.runNanos;
+    }
+
+    /**
+     * Groups the dependencies by prerequisite and checks them for cycles.
+     */
+    private void link() {
+      final int[] pairs = this.edges.array();
+      final int edgeCount = this.edges.size() / 2;
+      if (this.successors.length < edgeCount) {
+        this.successors = new int[edgeCount];
+      }
+      Arrays.fill(this.successorStarts, 0, this.size + 1, 0);
+      Arrays.fill(this.prerequisites, 0, this.size, 0);
+      for (int edge = 0; edge < edgeCount; edge++) {
+        this.successorStarts[pairs[2 * edge] + 1]++;
+        this.prerequisites[pairs[(2 * edge) + 1]]++;
+      }
+      for (int task = 0; task < this.size; task++) {
+        this.successorStarts[task + 1] += this.successorStarts[task];
+      }
+      /* Fill using the starts as cursors, which turns them into ends. */
+      for (int edge = 0; edge < edgeCount; edge++) {
+        this.successors[this.successorStarts[pairs[2 * edge]]++]
+          = pairs[(2 * edge) + 1];
+      }
+      System.arraycopy(this.successorStarts, 0,
+        this.successorStarts, 1, this.size);
+      this.successorStarts[0] = 0;
+      this.checkAcyclic();
+    }
+
+    /**
+     * Fails if the dependencies form a cycle (Kahn's algorithm).
+     */
+    private void checkAcyclic() {
+      int readyCount = 0;
+      for (int task = 0; task < this.size; task++) {
+        this.pending.set(task, this.prerequisites[task]);
+        if (this.prerequisites[task] == 0) {
+          this.ready[readyCount++] = task;
+        }
+      }
+      int visited = 0;
+      while (visited < readyCount) {
+        final int task = this.ready[visited++];
+        for (int edge = this.successorStarts[task];
+            edge < this.successorStarts[task + 1]; edge++) {
+          final int successor = this.successors[edge];
+          if (this.pending.decrementAndGet(successor) == 0) {
+            this.ready[readyCount++] = successor;
+          }
+        }
+      }
+      if (visited != this.size) {
+        throw new IllegalStateException(
+          "Task graph has a dependency cycle.");
+      }
+    }
+
+    /**
+     * Grows the per-task arrays.
+     *
+     * @param _capacity the new number of tasks
+     */
+    private void grow(
+        final int _capacity) {
+      final int previous = this.nodes.length;
+      this.jobs = Arrays.copyOf(this.jobs, _capacity);
+      this.nodes = Arrays.copyOf(this.nodes, _capacity);
+      for (int task = previous; task < _capacity; task++) {
+        this.nodes[task] = new Node(task);
+      }
+      this.successorStarts = new int[_capacity + 1];
+      this.successors = new int[_capacity];
+      this.prerequisites = new int[_capacity];
+      this.pending = new AtomicIntegerArray(_capacity);
+      this.ready = new int[_capacity];
+    }
+
+    /**
+     * Releases the tasks depending on a finished task.
+     *
+     * @param _task the finished task
+     */
+    private void release(
+        final int _task) {
+      for (int edge = this.successorStarts[_task];
+          edge < this.successorStarts[_task + 1]; edge++) {
+        final int successor = this.successors[edge];
+        if (this.pending.decrementAndGet(successor) == 0) {
+          this.nodes[successor].fork();
+        }
+      }
+    }
+
+    /**
+     * Completer of a run: forks the tasks without prerequisites and
+     * completes once every task has finished.
+     */
+    private final class Root
+        extends CountedCompleter<Void> {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void compute() {
+        /* One count per task, released by the last call below. */
+        this.setPendingCount(TaskGraph.this.size);
+        for (int task = 0; task < TaskGraph.this.size; task++) {
+          if (TaskGraph.this.prerequisites[task] == 0) {
+            TaskGraph.this.nodes[task].fork();
+          }
+        }
+        this.tryComplete();
+      }
+
+    }
+
+    /**
+     * Pooled fork-join node running one task.
+     */
+    private final class Node
+        extends CountedCompleter<Void> {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Task index.
+       */
+      private final int task;
+
+      /**
+       * Creates the node of a task.
+       *
+       * @param _task the task index
+       */
+      Node(
+          final int _task) {
+        super(TaskGraph.this.root);
+        this.task = _task;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void compute() {
+        try {
+          TaskGraph.this.jobs[this.task].run();
+          MathStack.checkFrames();
+        } catch (final RuntimeException | Error runException) {
+          TaskGraph.this.failure.compareAndSet(null, runException);
+        } finally {
+          TaskGraph.this.release(this.task);
+          this.tryComplete();
+        }
+      }
+
+    }
+
+  }
@@ -0,0 +1,686 @@
+package es.noa.rad.game.engine.math;
+
+import java.util.Objects;
+
+import org.joml.Matrix3fc;
+import org.joml.Matrix4fc;
+import org.joml.primitives.AABBf;
+
+import es.noa.rad.game.engine.memory.MathStack;
+import es.noa.rad.game.engine.render.culling.BoundingBoxes;
+import es.noa.rad.game.engine.util.VectorSupport;
+
+  /**
+   * Batch transforms over structure of arrays data.
+   *
+   * <p>Per-object JOML calls transform one vector or matrix at a time.
+   * These operations apply one matrix to whole {@link Vector3Array}s and
+   * {@link BoundingBoxes}, and multiply whole arrays of matrices, so the
+   * work can be spread over the lanes of the Vector API when it is
+   * available and falls back to plain loops otherwise. Both paths use the
+   * arithmetic of the matching JOML method in the same order, so results
+   * are identical to JOML up to the sign of zero and the handling of NaN.
+   *
+   * <p>Matrices in arrays use the layout of
+   * {@link org.joml.Matrix4f#set(float[], int)}: column-major,
+   * {@link #MATRIX_SIZE} floats each, matrix {@code i} starting at
+   * {@code i * MATRIX_SIZE}, like the world matrices of the scene graph.
+   *
+   * <p>The range overloads only touch the given range and expect the
+   * destination to be sized already, so disjoint ranges can be processed
+   * by different threads. The destination may be the source.
+   *
+   * <p>The indexed overload of {@code transformBounds} picks the matrix of
+   * every box from a block, such as the world matrices of a scene graph.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * BatchMath.transformPoints(model, localPositions, worldPositions);
+   * BatchMath.bounds(worldPositions, box);
+   * BatchMath.multiply(globalPoses, inverseBinds, skinning, 0, bones);
+   * }</pre>
+   *
+   * @see VectorSupport
+   */
+  public final class BatchMath {
+
+    /**
+     * Number of floats of a 4x4 matrix.
+     */
+    public static final int MATRIX_SIZE = 16;
+
+    /**
+     * Number of floats of a matrix column.
+     */
+    private static final int COLUMN_SIZE = 4;
+
+    /**
+     * Scratch copy of a single left matrix, one per thread.
+     */
+    private static final ThreadLocal<float[]> LEFT
+      = ThreadLocal.withInitial(() -> new float[BatchMath.MATRIX_SIZE]);
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private BatchMath() {
+      super();
+    }
+
+    /**
+     * Transforms points by an affine matrix, as
+     * {@link Matrix4fc#transformPosition(org.joml.Vector3f)}.
+     *
+     * @param _matrix the matrix
+     * @param _src the points
+     * @param _dest the transformed points; resized to the source
+     */
+    public static void transformPoints(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest) {
+      _dest.size(_src.size());
+      BatchMath.transformPoints(_matrix, _src, _dest, 0, _src.size());
+    }
+
+    /**
+     * Transforms a range of points by an affine matrix, as
+     * {@link Matrix4fc#transformPosition(org.joml.Vector3f)}.
+     *
+     * @param _matrix the matrix
+     * @param _src the points
+     * @param _dest the transformed points
+     * @param _from the first point
+     * @param _to one past the last point
+     * @throws IndexOutOfBoundsException if the range is out of either array
+     */
+    public static void transformPoints(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      BatchMath.checkRange(_from, _to, _src.size(), _dest.size());
+      if (VectorSupport.available()) {
+        BatchMathVector.points(_matrix, _src, _dest, _from, _to);
+      } else {
+        BatchMath.pointsScalar(_matrix, _src, _dest, _from, _to);
+      }
+    }
+
+    /**
+     * Transforms directions by the linear part of a matrix, as
+     * {@link Matrix4fc#transformDirection(org.joml.Vector3f)}.
+     *
+     * @param _matrix the matrix
+     * @param _src the directions
+     * @param _dest the transformed directions; resized to the source
+     */
+    public static void transformDirections(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest) {
+      _dest.size(_src.size());
+      BatchMath.transformDirections(_matrix, _src, _dest, 0, _src.size());
+    }
+
+    /**
+     * Transforms a range of directions by the linear part of a matrix, as
+     * {@link Matrix4fc#transformDirection(org.joml.Vector3f)}.
+     *
+     * @param _matrix the matrix
+     * @param _src the directions
+     * @param _dest the transformed directions
+     * @param _from the first direction
+     * @param _to one past the last direction
+     * @throws IndexOutOfBoundsException if the range is out of either array
+     */
+    public static void transformDirections(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      BatchMath.checkRange(_from, _to, _src.size(), _dest.size());
+      if (VectorSupport.available()) {
+        BatchMathVector.directions(_matrix, _src, _dest, _from, _to);
+      } else {
+        BatchMath.directionsScalar(_matrix, _src, _dest, _from, _to);
+      }
+    }
+
+    /**
+     * Transforms normals by the normal matrix of a model matrix and
+     * normalizes them, as {@link Matrix4fc#normal(org.joml.Matrix3f)}
+     * followed by {@code transform} and {@code normalize}.
+     *
+     * @param _matrix the model matrix
+     * @param _src the normals
+     * @param _dest the transformed normals; resized to the source
+     */
+    public static void transformNormals(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest) {
+      _dest.size(_src.size());
+      BatchMath.transformNormals(_matrix, _src, _dest, 0, _src.size());
+    }
+
+    /**
+     * Transforms a range of normals by the normal matrix of a model matrix
+     * and normalizes them.
+     *
+     * @param _matrix the model matrix
+     * @param _src the normals
+     * @param _dest the transformed normals
+     * @param _from the first normal
+     * @param _to one past the last normal
+     * @throws IndexOutOfBoundsException if the range is out of either array
+     */
+    public static void transformNormals(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      BatchMath.checkRange(_from, _to, _src.size(), _dest.size());
+      try (MathStack stack = MathStack.stackPush()) {
+        final Matrix3fc normal = _matrix.normal(stack.matrix3f());
+        if (VectorSupport.available()) {
+          BatchMathVector.normals(normal, _src, _dest, _from, _to);
+        } else {
+          BatchMath.normalsScalar(normal, _src, _dest, _from, _to);
+        }
+      }
+    }
+
+    /**
+     * Multiplies a range of matrices pairwise, as
+     * {@link Matrix4fc#mul(Matrix4fc, org.joml.Matrix4f)}: product
+     * {@code i} is left {@code i} times right {@code i}.
+     *
+     * @param _left the left matrices
+     * @param _right the right matrices
+     * @param _dest the products; may be the right array, not the left one
+     * @param _from the first matrix
+     * @param _to one past the last matrix
+     * @throws IndexOutOfBoundsException if the range is out of any array
+     */
+    public static void multiply(
+        final float[] _left,
+        final float[] _right,
+        final float[] _dest,
+        final int _from,
+        final int _to) {
+      Objects.checkFromToIndex(
+        _from, _to, _left.length / BatchMath.MATRIX_SIZE);
+      BatchMath.multiply(_left, BatchMath.MATRIX_SIZE, _right, _dest,
+        _from, _to);
+    }
+
+    /**
+     * Multiplies one matrix by a range of matrices: product {@code i} is
+     * the left matrix times right {@code i}.
+     *
+     * @param _left the left matrix
+     * @param _right the right matrices
+     * @param _dest the products; may be the right array
+     * @param _from the first matrix
+     * @param _to one past the last matrix
+     * @throws IndexOutOfBoundsException if the range is out of either array
+     */
+    public static void multiply(
+        final Matrix4fc _left,
+        final float[] _right,
+        final float[] _dest,
+        final int _from,
+        final int _to) {
+      final float[] left = BatchMath.LEFT.get();
+      _left.get(left);
+      BatchMath.multiply(left, 0, _right, _dest, _from, _to);
+    }
+
+    /**
+     * Computes the bounds of a set of points.
+     *
+     * @param _points the points
+     * @param _dest the box receiving the bounds; inverted (infinite minimum,
+     *     negative infinite maximum) for an empty set
+     * @return the destination box
+     */
+    public static AABBf bounds(
+        final Vector3Array _points,
+        final AABBf _dest) {
+      if (VectorSupport.available()) {
+        BatchMathVector.bounds(_points, _dest);
+      } else {
+        _dest.setMin(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+            Float.POSITIVE_INFINITY)
+          .setMax(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY,
+            Float.NEGATIVE_INFINITY);
+        BatchMath.boundsScalar(_points, 0, _dest);
+      }
+      return _dest;
+    }
+
+    /**
+     * Transforms boxes by an affine matrix, as
+     * {@link Matrix4fc#transformAab(float, float, float, float, float,
+     * float, org.joml.Vector3f, org.joml.Vector3f)}: every destination box
+     * encloses its transformed source box.
+     *
+     * @param _matrix the matrix
+     * @param _src the boxes
+     * @param _dest the enclosing boxes; resized to the source
+     */
+    public static void transformBounds(
+        final Matrix4fc _matrix,
+        final BoundingBoxes _src,
+        final BoundingBoxes _dest) {
+      _dest.size(_src.size());
+      BatchMath.transformBounds(_matrix, _src, _dest, 0, _src.size());
+    }
+
+    /**
+     * Transforms a range of boxes by an affine matrix.
+     *
+     * @param _matrix the matrix
+     * @param _src the boxes
+     * @param _dest the enclosing boxes
+     * @param _from the first box
+     * @param _to one past the last box
+     * @throws IndexOutOfBoundsException if the range is out of either set
+     */
+    public static void transformBounds(
+        final Matrix4fc _matrix,
+        final BoundingBoxes _src,
+        final BoundingBoxes _dest,
+        final int _from,
+        final int _to) {
+      BatchMath.checkRange(_from, _to, _src.size(), _dest.size());
+      if (VectorSupport.available()) {
+        BatchMathVector.boxes(_matrix, _src, _dest, _from, _to);
+      } else {
+        BatchMath.boxesScalar(_matrix, _src, _dest, _from, _to);
+      }
+    }
+
+    /**
+     * Transforms a range of boxes by affine matrices picked from a block:
+     * box {@code i} is transformed by matrix {@code _indices[i]}.
+     *
+     * @param _matrices the block of matrices
+     * @param _indices the matrix of every box
+     * @param _src the boxes
+     * @param _dest the enclosing boxes
+     * @param _from the first box
+     * @param _to one past the last box
+     * @throws IndexOutOfBoundsException if the range or a matrix is out of
+     *     its array
+     */
+    public static void transformBounds(
+        final float[] _matrices,
+        final int[] _indices,
+        final BoundingBoxes _src,
+        final BoundingBoxes _dest,
+        final int _from,
+        final int _to) {
+      Objects.checkFromToIndex(_from, _to, _indices.length);
+      BatchMath.checkRange(_from, _to, _src.size(), _dest.size());
+      if (VectorSupport.available()) {
+        BatchMathVector.boxes(_matrices, _indices, _src, _dest, _from, _to);
+      } else {
+        BatchMath.boxesScalar(_matrices, _indices, _src, _dest, _from, _to);
+      }
+    }
+
+    /**
+     * Transforms a range of points on the scalar path.
+     *
+     * @param _matrix the matrix
+     * @param _src the points
+     * @param _dest the transformed points
+     * @param _from the first point
+     * @param _to one past the last point
+     */
+    static void pointsScalar(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      final float[] x = _src.x();
+      final float[] y = _src.y();
+      final float[] z = _src.z();
+      final float[] outX = _dest.x();
+      final float[] outY = _dest.y();
+      final float[] outZ = _dest.z();
+      for (int index = _from; index < _to; index++) {
+        final float px = x[index];
+        final float py = y[index];
+        final float pz = z[index];
+        outX[index] = (_matrix.m00() * px)
+          + ((_matrix.m10() * py) + ((_matrix.m20() * pz) + _matrix.m30()));
+        outY[index] = (_matrix.m01() * px)
+          + ((_matrix.m11() * py) + ((_matrix.m21() * pz) + _matrix.m31()));
+        outZ[index] = (_matrix.m02() * px)
+          + ((_matrix.m12() * py) + ((_matrix.m22() * pz) + _matrix.m32()));
+      }
+    }
+
+    /**
+     * Transforms a range of directions on the scalar path.
+     *
+     * @param _matrix the matrix
+     * @param _src the directions
+     * @param _dest the transformed directions
+     * @param _from the first direction
+     * @param _to one past the last direction
+     */
+    static void directionsScalar(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      final float[] x = _src.x();
+      final float[] y = _src.y();
+      final float[] z = _src.z();
+      final float[] outX = _dest.x();
+      final float[] outY = _dest.y();
+      final float[] outZ = _dest.z();
+      for (int index = _from; index < _to; index++) {
+        final float dx = x[index];
+        final float dy = y[index];
+        final float dz = z[index];
+        outX[index] = (_matrix.m00() * dx)
+          + ((_matrix.m10() * dy) + (_matrix.m20() * dz));
+        outY[index] = (_matrix.m01() * dx)
+          + ((_matrix.m11() * dy) + (_matrix.m21() * dz));
+        outZ[index] = (_matrix.m02() * dx)
+          + ((_matrix.m12() * dy) + (_matrix.m22() * dz));
+      }
+    }
+
+    /**
+     * Transforms and normalizes a range of normals on the scalar path.
+     *
+     * @param _normal the normal matrix
+     * @param _src the normals
+     * @param _dest the transformed normals
+     * @param _from the first normal
+     * @param _to one past the last normal
+     */
+    static void normalsScalar(
+        final Matrix3fc _normal,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      final float[] x = _src.x();
+      final float[] y = _src.y();
+      final float[] z = _src.z();
+      final float[] outX = _dest.x();
+      final float[] outY = _dest.y();
+      final float[] outZ = _dest.z();
+      for (int index = _from; index < _to; index++) {
+        final float vx = x[index];
+        final float vy = y[index];
+        final float vz = z[index];
+        final float nx = (_normal.m00() * vx)
+          + ((_normal.m10() * vy) + (_normal.m20() * vz));
+        final float ny = (_normal.m01() * vx)
+          + ((_normal.m11() * vy) + (_normal.m21() * vz));
+        final float nz = (_normal.m02() * vx)
+          + ((_normal.m12() * vy) + (_normal.m22() * vz));
+        final float inverseLength = 1.0F
+          / (float) Math.sqrt((nx * nx) + ((ny * ny) + (nz * nz)));
+        outX[index] = nx * inverseLength;
+        outY[index] = ny * inverseLength;
+        outZ[index] = nz * inverseLength;
+      }
+    }
+
+    /**
+     * Grows a box to enclose the points from the given index on, on the
+     * scalar path.
+     *
+     * @param _points the points
+     * @param _from the first point
+     * @param _dest the box to grow
+     */
+    static void boundsScalar(
+        final Vector3Array _points,
+        final int _from,
+        final AABBf _dest) {
+      final float[] x = _points.x();
+      final float[] y = _points.y();
+      final float[] z = _points.z();
+      float minX = _dest.minX;
+      float minY = _dest.minY;
+      float minZ = _dest.minZ;
+      float maxX = _dest.maxX;
+      float maxY = _dest.maxY;
+      float maxZ = _dest.maxZ;
+      for (int index = _from; index < _points.size(); index++) {
+        minX = Math.min(minX, x[index]);
+        minY = Math.min(minY, y[index]);
+        minZ = Math.min(minZ, z[index]);
+        maxX = Math.max(maxX, x[index]);
+        maxY = Math.max(maxY, y[index]);
+        maxZ = Math.max(maxZ, z[index]);
+      }
+      _dest.setMin(minX, minY, minZ).setMax(maxX, maxY, maxZ);
+    }
+
+    /**
+     * Transforms a range of boxes on the scalar path.
+     *
+     * @param _matrix the matrix
+     * @param _src the boxes
+     * @param _dest the enclosing boxes
+     * @param _from the first box
+     * @param _to one past the last box
+     */
+    static void boxesScalar(
+        final Matrix4fc _matrix,
+        final BoundingBoxes _src,
+        final BoundingBoxes _dest,
+        final int _from,
+        final int _to) {
+      for (int index = _from; index < _to; index++) {
+        final float loX = _src.minX()[index];
+        final float loY = _src.minY()[index];
+        final float loZ = _src.minZ()[index];
+        final float hiX = _src.maxX()[index];
+        final float hiY = _src.maxY()[index];
+        final float hiZ = _src.maxZ()[index];
+
+        /* Per axis, the smaller and larger product of every column. */
+        final float xLoX = _matrix.m00() * loX;
+        final float xHiX = _matrix.m00() * hiX;
+        final float yLoX = _matrix.m10() * loY;
+        final float yHiX = _matrix.m10() * hiY;
+        final float zLoX = _matrix.m20() * loZ;
+        final float zHiX = _matrix.m20() * hiZ;
+        _dest.minX()[index] = Math.min(xLoX, xHiX) + Math.min(yLoX, yHiX)
+          + Math.min(zLoX, zHiX) + _matrix.m30();
+        _dest.maxX()[index] = Math.max(xLoX, xHiX) + Math.max(yLoX, yHiX)
+          + Math.max(zLoX, zHiX) + _matrix.m30();
+
+        final float xLoY = _matrix.m01() * loX;
+        final float xHiY = _matrix.m01() * hiX;
+        final float yLoY = _matrix.m11() * loY;
+        final float yHiY = _matrix.m11() * hiY;
+        final float zLoY = _matrix.m21() * loZ;
+        final float zHiY = _matrix.m21() * hiZ;
+        _dest.minY()[index] = Math.min(xLoY, xHiY) + Math.min(yLoY, yHiY)
+          + Math.min(zLoY, zHiY) + _matrix.m31();
+        _dest.maxY()[index] = Math.max(xLoY, xHiY) + Math.max(yLoY, yHiY)
+          + Math.max(zLoY, zHiY) + _matrix.m31();
+
+        final float xLoZ = _matrix.m02() * loX;
+        final float xHiZ = _matrix.m02() * hiX;
+        final float yLoZ = _matrix.m12() * loY;
+        final float yHiZ = _matrix.m12() * hiY;
+        final float zLoZ = _matrix.m22() * loZ;
+        final float zHiZ = _matrix.m22() * hiZ;
+        _dest.minZ()[index] = Math.min(xLoZ, xHiZ) + Math.min(yLoZ, yHiZ)
+          + Math.min(zLoZ, zHiZ) + _matrix.m32();
+        _dest.maxZ()[index] = Math.max(xLoZ, xHiZ) + Math.max(yLoZ, yHiZ)
+          + Math.max(zLoZ, zHiZ) + _matrix.m32();
+      }
+    }
+
+    /**
+     * Transforms a range of boxes by indexed matrices on the scalar path.
+     *
+     * @param _matrices the block of matrices
+     * @param _indices the matrix of every box
+     * @param _src the boxes
+     * @param _dest the enclosing boxes
+     * @param _from the first box
+     * @param _to one past the last box
+     */
+    static void boxesScalar(
+        final float[] _matrices,
+        final int[] _indices,
+        final BoundingBoxes _src,
+        final BoundingBoxes _dest,
+        final int _from,
+        final int _to) {
+      final int column1 = BatchMath.COLUMN_SIZE;
+      final int column2 = 2 * BatchMath.COLUMN_SIZE;
+      final int column3 = BatchMath.MATRIX_SIZE - BatchMath.COLUMN_SIZE;
+      for (int index = _from; index < _to; index++) {
+        final int m = _indices[index] * BatchMath.MATRIX_SIZE;
+        final float loX = _src.minX()[index];
+        final float loY = _src.minY()[index];
+        final float loZ = _src.minZ()[index];
+        final float hiX = _src.maxX()[index];
+        final float hiY = _src.maxY()[index];
+        final float hiZ = _src.maxZ()[index];
+
+        /* Per axis, the smaller and larger product of every column. */
+        final float xLoX = _matrices[m] * loX;
+        final float xHiX = _matrices[m] * hiX;
+        final float yLoX = _matrices[m + column1] * loY;
+        final float yHiX = _matrices[m + column1] * hiY;
+        final float zLoX = _matrices[m + column2] * loZ;
+        final float zHiX = _matrices[m + column2] * hiZ;
+        _dest.minX()[index] = Math.min(xLoX, xHiX) + Math.min(yLoX, yHiX)
+          + Math.min(zLoX, zHiX) + _matrices[m + column3];
+        _dest.maxX()[index] = Math.max(xLoX, xHiX) + Math.max(yLoX, yHiX)
+          + Math.max(zLoX, zHiX) + _matrices[m + column3];
+
+        final float xLoY = _matrices[m + 1] * loX;
+        final float xHiY = _matrices[m + 1] * hiX;
+        final float yLoY = _matrices[m + column1 + 1] * loY;
+        final float yHiY = _matrices[m + column1 + 1] * hiY;
+        final float zLoY = _matrices[m + column2 + 1] * loZ;
+        final float zHiY = _matrices[m + column2 + 1] * hiZ;
+        _dest.minY()[index] = Math.min(xLoY, xHiY) + Math.min(yLoY, yHiY)
+          + Math.min(zLoY, zHiY) + _matrices[m + column3 + 1];
+        _dest.maxY()[index] = Math.max(xLoY, xHiY) + Math.max(yLoY, yHiY)
+          + Math.max(zLoY, zHiY) + _matrices[m + column3 + 1];
+
+        final float xLoZ = _matrices[m + 2] * loX;
+        final float xHiZ = _matrices[m + 2] * hiX;
+        final float yLoZ = _matrices[m + column1 + 2] * loY;
+        final float yHiZ = _matrices[m + column1 + 2] * hiY;
+        final float zLoZ = _matrices[m + column2 + 2] * loZ;
+        final float zHiZ = _matrices[m + column2 + 2] * hiZ;
+        _dest.minZ()[index] = Math.min(xLoZ, xHiZ) + Math.min(yLoZ, yHiZ)
+          + Math.min(zLoZ, zHiZ) + _matrices[m + column3 + 2];
+        _dest.maxZ()[index] = Math.max(xLoZ, xHiZ) + Math.max(yLoZ, yHiZ)
+          + Math.max(zLoZ, zHiZ) + _matrices[m + column3 + 2];
+      }
+    }
+
+    /**
+     * Multiplies a range of matrices on the chosen path.
+     *
+     * @param _left the left matrices
+     * @param _leftStride the distance in floats between two left matrices,
+     *     zero to use the first one for every product
+     * @param _right the right matrices
+     * @param _dest the products
+     * @param _from the first matrix
+     * @param _to one past the last matrix
+     */
+    private static void multiply(
+        final float[] _left,
+        final int _leftStride,
+        final float[] _right,
+        final float[] _dest,
+        final int _from,
+        final int _to) {
+      BatchMath.checkRange(_from, _to,
+        _right.length / BatchMath.MATRIX_SIZE,
+        _dest.length / BatchMath.MATRIX_SIZE);
+      if (VectorSupport.available() && BatchMathVector.matrices()) {
+        BatchMathVector.multiply(
+          _left, _leftStride, _right, _dest, _from, _to);
+        return;
+      }
+      BatchMath.matricesScalar(_left, _leftStride, _right, _dest, _from, _to);
+    }
+
+    /**
+     * Multiplies a range of matrices on the scalar path.
+     *
+     * @param _left the left matrices
+     * @param _leftStride the distance in floats between two left matrices,
+     *     zero to use the first one for every product
+     * @param _right the right matrices
+     * @param _dest the products
+     * @param _from the first matrix
+     * @param _to one past the last matrix
+     */
+    static void matricesScalar(
+        final float[] _left,
+        final int _leftStride,
+        final float[] _right,
+        final float[] _dest,
+        final int _from,
+        final int _to) {
+      for (int matrix = _from; matrix < _to; matrix++) {
+        final int left = matrix * _leftStride;
+        final int end = (matrix + 1) * BatchMath.MATRIX_SIZE;
+        for (int column = matrix * BatchMath.MATRIX_SIZE; column < end;
+            column += BatchMath.COLUMN_SIZE) {
+          final float r0 = _right[column];
+          final float r1 = _right[column + 1];
+          final float r2 = _right[column + 2];
+          final float r3 = _right[column + BatchMath.COLUMN_SIZE - 1];
+          for (int row = 0; row < BatchMath.COLUMN_SIZE; row++) {
+            final int cell = left + row;
+            _dest[column + row] = (_left[cell] * r0)
+              + ((_left[cell + BatchMath.COLUMN_SIZE] * r1)
+              + ((_left[cell + (2 * BatchMath.COLUMN_SIZE)] * r2)
+              + (_left[cell + BatchMath.MATRIX_SIZE - BatchMath.COLUMN_SIZE]
+                * r3)));
+          }
+        }
+      }
+    }
+
+    /**
+     * Checks that a range fits in a source and a destination.
+     *
+     * @param _from the first element
+     * @param _to one past the last element
+     * @param _srcSize the number of source elements
+     * @param _destSize the number of destination elements
+     * @throws IndexOutOfBoundsException if the range is out of either
+     */
+    private static void checkRange(
+        final int _from,
+        final int _to,
+        final int _srcSize,
+        final int _destSize) {
+      Objects.checkFromToIndex(_from, _to, _srcSize);
+      Objects.checkFromToIndex(_from, _to, _destSize);
+    }
+
+  }
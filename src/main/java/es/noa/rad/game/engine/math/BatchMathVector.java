@@ -0,0 +1,625 @@
+package es.noa.rad.game.engine.math;
+
+import org.joml.Matrix3fc;
+import org.joml.Matrix4fc;
+import org.joml.primitives.AABBf;
+
+import es.noa.rad.game.engine.render.culling.BoundingBoxes;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+  /**
+   * Vector API kernels of {@link BatchMath}.
+   *
+   * <p>Structure of arrays operations process as many elements per
+   * iteration as the preferred float species has lanes, with the matrix
+   * coefficients broadcast once per call. Matrix products keep the
+   * column-major layout and process one column of four floats per
+   * operation instead. Every kernel uses the same multiplications and
+   * additions, in the same order, as the scalar loops of
+   * {@link BatchMath}, which follow JOML.
+   *
+   * <p>Only reached when {@code VectorSupport.available()} is true.
+   */
+  final class BatchMathVector {
+
+    /**
+     * Species used by the structure of arrays kernels.
+     */
+    private static final VectorSpecies<Float> SPECIES
+      = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Number of floats of a matrix column.
+     */
+    private static final int COLUMN_SIZE = 4;
+
+    /**
+     * Number of lanes of the species.
+     */
+    private static final int LANES = BatchMathVector.SPECIES.length();
+
+    /**
+     * Whether the species lanes hold whole matrix columns, which the
+     * matrix product needs.
+     */
+    private static final boolean MATRICES
+      = (BatchMathVector.LANES >= BatchMathVector.COLUMN_SIZE)
+        && (BatchMathVector.LANES <= BatchMath.MATRIX_SIZE);
+
+    /**
+     * Number of coefficients of the first three rows of a matrix.
+     */
+    private static final int AFFINE_SIZE
+      = BatchMath.MATRIX_SIZE - BatchMathVector.COLUMN_SIZE;
+
+    /**
+     * Scratch affine coefficients of the matrix of every lane, coefficient
+     * major, one per thread.
+     */
+    private static final ThreadLocal<float[]> COEFFICIENTS
+      = ThreadLocal.withInitial(() -> new float[
+        BatchMathVector.AFFINE_SIZE * BatchMathVector.SPECIES.length()]);
+
+    /**
+     * Offset of the vector holding each left column.
+     */
+    private static final int[] LEFT_OFFSETS
+      = BatchMathVector.leftOffsets();
+
+    /**
+     * Shuffle repeating the first left column in every column of a vector.
+     */
+    private static final VectorShuffle<Float> LEFT0
+      = BatchMathVector.leftShuffle(0);
+
+    /**
+     * Shuffle repeating the second left column in every column of a
+     * vector.
+     */
+    private static final VectorShuffle<Float> LEFT1
+      = BatchMathVector.leftShuffle(1);
+
+    /**
+     * Shuffle repeating the third left column in every column of a vector.
+     */
+    private static final VectorShuffle<Float> LEFT2
+      = BatchMathVector.leftShuffle(2);
+
+    /**
+     * Shuffle repeating the fourth left column in every column of a
+     * vector.
+     */
+    private static final VectorShuffle<Float> LEFT3
+      = BatchMathVector.leftShuffle(BatchMathVector.COLUMN_SIZE - 1);
+
+    /**
+     * Shuffle broadcasting the first row of every right column over that
+     * column.
+     */
+    private static final VectorShuffle<Float> RIGHT0
+      = BatchMathVector.rightShuffle(0);
+
+    /**
+     * Shuffle broadcasting the second row of every right column over that
+     * column.
+     */
+    private static final VectorShuffle<Float> RIGHT1
+      = BatchMathVector.rightShuffle(1);
+
+    /**
+     * Shuffle broadcasting the third row of every right column over that
+     * column.
+     */
+    private static final VectorShuffle<Float> RIGHT2
+      = BatchMathVector.rightShuffle(2);
+
+    /**
+     * Shuffle broadcasting the fourth row of every right column over that
+     * column.
+     */
+    private static final VectorShuffle<Float> RIGHT3
+      = BatchMathVector.rightShuffle(BatchMathVector.COLUMN_SIZE - 1);
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private BatchMathVector() {
+      super();
+    }
+
+    /**
+     * Transforms a range of points by an affine matrix.
+     *
+     * @param _matrix the matrix
+     * @param _src the points
+     * @param _dest the transformed points
+     * @param _from the first point
+     * @param _to one past the last point
+     */
+    static void points(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      final float[] x = _src.x();
+      final float[] y = _src.y();
+      final float[] z = _src.z();
+      final float[] outX = _dest.x();
+      final float[] outY = _dest.y();
+      final float[] outZ = _dest.z();
+      final int lanes = BatchMathVector.SPECIES.length();
+      final int upper = _from + BatchMathVector.SPECIES.loopBound(_to - _from);
+
+      int index = _from;
+      for (; index < upper; index += lanes) {
+        final FloatVector vx
+          = FloatVector.fromArray(BatchMathVector.SPECIES, x, index);
+        final FloatVector vy
+          = FloatVector.fromArray(BatchMathVector.SPECIES, y, index);
+        final FloatVector vz
+          = FloatVector.fromArray(BatchMathVector.SPECIES, z, index);
+        vx.mul(_matrix.m00()).add(vy.mul(_matrix.m10())
+            .add(vz.mul(_matrix.m20()).add(_matrix.m30())))
+          .intoArray(outX, index);
+        vx.mul(_matrix.m01()).add(vy.mul(_matrix.m11())
+            .add(vz.mul(_matrix.m21()).add(_matrix.m31())))
+          .intoArray(outY, index);
+        vx.mul(_matrix.m02()).add(vy.mul(_matrix.m12())
+            .add(vz.mul(_matrix.m22()).add(_matrix.m32())))
+          .intoArray(outZ, index);
+      }
+
+      /* Scalar tail with the same arithmetic. */
+      BatchMath.pointsScalar(_matrix, _src, _dest, index, _to);
+    }
+
+    /**
+     * Transforms a range of directions by the linear part of a matrix.
+     *
+     * @param _matrix the matrix
+     * @param _src the directions
+     * @param _dest the transformed directions
+     * @param _from the first direction
+     * @param _to one past the last direction
+     */
+    static void directions(
+        final Matrix4fc _matrix,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      final float[] x = _src.x();
+      final float[] y = _src.y();
+      final float[] z = _src.z();
+      final float[] outX = _dest.x();
+      final float[] outY = _dest.y();
+      final float[] outZ = _dest.z();
+      final int lanes = BatchMathVector.SPECIES.length();
+      final int upper = _from + BatchMathVector.SPECIES.loopBound(_to - _from);
+
+      int index = _from;
+      for (; index < upper; index += lanes) {
+        final FloatVector vx
+          = FloatVector.fromArray(BatchMathVector.SPECIES, x, index);
+        final FloatVector vy
+          = FloatVector.fromArray(BatchMathVector.SPECIES, y, index);
+        final FloatVector vz
+          = FloatVector.fromArray(BatchMathVector.SPECIES, z, index);
+        vx.mul(_matrix.m00()).add(vy.mul(_matrix.m10())
+            .add(vz.mul(_matrix.m20())))
+          .intoArray(outX, index);
+        vx.mul(_matrix.m01()).add(vy.mul(_matrix.m11())
+            .add(vz.mul(_matrix.m21())))
+          .intoArray(outY, index);
+        vx.mul(_matrix.m02()).add(vy.mul(_matrix.m12())
+            .add(vz.mul(_matrix.m22())))
+          .intoArray(outZ, index);
+      }
+
+      /* Scalar tail with the same arithmetic. */
+      BatchMath.directionsScalar(_matrix, _src, _dest, index, _to);
+    }
+
+    /**
+     * Transforms a range of normals by a normal matrix and normalizes
+     * them.
+     *
+     * @param _normal the normal matrix
+     * @param _src the normals
+     * @param _dest the transformed normals
+     * @param _from the first normal
+     * @param _to one past the last normal
+     */
+    static void normals(
+        final Matrix3fc _normal,
+        final Vector3Array _src,
+        final Vector3Array _dest,
+        final int _from,
+        final int _to) {
+      final float[] x = _src.x();
+      final float[] y = _src.y();
+      final float[] z = _src.z();
+      final float[] outX = _dest.x();
+      final float[] outY = _dest.y();
+      final float[] outZ = _dest.z();
+      final FloatVector one
+        = FloatVector.broadcast(BatchMathVector.SPECIES, 1.0F);
+      final int lanes = BatchMathVector.SPECIES.length();
+      final int upper = _from + BatchMathVector.SPECIES.loopBound(_to - _from);
+
+      int index = _from;
+      for (; index < upper; index += lanes) {
+        final FloatVector vx
+          = FloatVector.fromArray(BatchMathVector.SPECIES, x, index);
+        final FloatVector vy
+          = FloatVector.fromArray(BatchMathVector.SPECIES, y, index);
+        final FloatVector vz
+          = FloatVector.fromArray(BatchMathVector.SPECIES, z, index);
+        final FloatVector nx = vx.mul(_normal.m00())
+          .add(vy.mul(_normal.m10()).add(vz.mul(_normal.m20())));
+        final FloatVector ny = vx.mul(_normal.m01())
+          .add(vy.mul(_normal.m11()).add(vz.mul(_normal.m21())));
+        final FloatVector nz = vx.mul(_normal.m02())
+          .add(vy.mul(_normal.m12()).add(vz.mul(_normal.m22())));
+        final FloatVector inverseLength = one.div(
+          nx.mul(nx).add(ny.mul(ny).add(nz.mul(nz))).sqrt());
+        nx.mul(inverseLength).intoArray(outX, index);
+        ny.mul(inverseLength).intoArray(outY, index);
+        nz.mul(inverseLength).intoArray(outZ, index);
+      }
+
+      /* Scalar tail with the same arithmetic. */
+      BatchMath.normalsScalar(_normal, _src, _dest, index, _to);
+    }
+
+    /**
+     * Checks whether the matrix product can run on the species.
+     *
+     * @return {@code true} if the lanes hold one to four whole columns
+     */
+    static boolean matrices() {
+      return BatchMathVector.MATRICES;
+    }
+
+    /**
+     * Multiplies a range of column-major matrices.
+     *
+     * <p>Each vector covers as many product columns as fit in the lanes.
+     * Product column {@code j} is the sum over {@code k} of left column
+     * {@code k} times row {@code k} of right column {@code j}, so every
+     * term is a left column repeated over the vector times a right row
+     * broadcast over each column, both built with constant shuffles.
+     *
+     * @param _left the left matrices
+     * @param _leftStride the distance in floats between two left matrices,
+     *     zero to use the first one for every product
+     * @param _right the right matrices
+     * @param _dest the products
+     * @param _from the first matrix
+     * @param _to one past the last matrix
+     */
+    static void multiply(
+        final float[] _left,
+        final int _leftStride,
+        final float[] _right,
+        final float[] _dest,
+        final int _from,
+        final int _to) {
+      for (int matrix = _from; matrix < _to; matrix++) {
+        final int left = matrix * _leftStride;
+        final FloatVector column0 = FloatVector.fromArray(
+            BatchMathVector.SPECIES, _left,
+            left + BatchMathVector.LEFT_OFFSETS[0])
+          .rearrange(BatchMathVector.LEFT0);
+        final FloatVector column1 = FloatVector.fromArray(
+            BatchMathVector.SPECIES, _left,
+            left + BatchMathVector.LEFT_OFFSETS[1])
+          .rearrange(BatchMathVector.LEFT1);
+        final FloatVector column2 = FloatVector.fromArray(
+            BatchMathVector.SPECIES, _left,
+            left + BatchMathVector.LEFT_OFFSETS[2])
+          .rearrange(BatchMathVector.LEFT2);
+        final FloatVector column3 = FloatVector.fromArray(
+            BatchMathVector.SPECIES, _left,
+            left + BatchMathVector.LEFT_OFFSETS[
+              BatchMathVector.COLUMN_SIZE - 1])
+          .rearrange(BatchMathVector.LEFT3);
+        final int right = matrix * BatchMath.MATRIX_SIZE;
+        for (int offset = right; offset < right + BatchMath.MATRIX_SIZE;
+            offset += BatchMathVector.LANES) {
+          final FloatVector columns = FloatVector.fromArray(
+            BatchMathVector.SPECIES, _right, offset);
+          column0.mul(columns.rearrange(BatchMathVector.RIGHT0))
+            .add(column1.mul(columns.rearrange(BatchMathVector.RIGHT1))
+              .add(column2.mul(columns.rearrange(BatchMathVector.RIGHT2))
+                .add(column3.mul(
+                  columns.rearrange(BatchMathVector.RIGHT3)))))
+            .intoArray(_dest, offset);
+        }
+      }
+    }
+
+    /**
+     * Computes the bounds of a set of points.
+     *
+     * @param _points the points
+     * @param _dest the box receiving the bounds
+     */
+    static void bounds(
+        final Vector3Array _points,
+        final AABBf _dest) {
+      final float[] x = _points.x();
+      final float[] y = _points.y();
+      final float[] z = _points.z();
+      final int count = _points.size();
+      FloatVector minX = FloatVector.broadcast(
+        BatchMathVector.SPECIES, Float.POSITIVE_INFINITY);
+      FloatVector minY = minX;
+      FloatVector minZ = minX;
+      FloatVector maxX = FloatVector.broadcast(
+        BatchMathVector.SPECIES, Float.NEGATIVE_INFINITY);
+      FloatVector maxY = maxX;
+      FloatVector maxZ = maxX;
+      final int lanes = BatchMathVector.SPECIES.length();
+      final int upper = BatchMathVector.SPECIES.loopBound(count);
+
+      int index = 0;
+      for (; index < upper; index += lanes) {
+        final FloatVector vx
+          = FloatVector.fromArray(BatchMathVector.SPECIES, x, index);
+        final FloatVector vy
+          = FloatVector.fromArray(BatchMathVector.SPECIES, y, index);
+        final FloatVector vz
+          = FloatVector.fromArray(BatchMathVector.SPECIES, z, index);
+        minX = minX.min(vx);
+        minY = minY.min(vy);
+        minZ = minZ.min(vz);
+        maxX = maxX.max(vx);
+        maxY = maxY.max(vy);
+        maxZ = maxZ.max(vz);
+      }
+      _dest.setMin(
+          minX.reduceLanes(VectorOperators.MIN),
+          minY.reduceLanes(VectorOperators.MIN),
+          minZ.reduceLanes(VectorOperators.MIN))
+        .setMax(
+          maxX.reduceLanes(VectorOperators.MAX),
+          maxY.reduceLanes(VectorOperators.MAX),
+          maxZ.reduceLanes(VectorOperators.MAX));
+
+      /* Scalar tail folded into the lane bounds. */
+      BatchMath.boundsScalar(_points, index, _dest);
+    }
+
+    /**
+     * Transforms a range of boxes by an affine matrix.
+     *
+     * @param _matrix the matrix
+     * @param _src the boxes
+     * @param _dest the boxes enclosing the transformed boxes
+     * @param _from the first box
+     * @param _to one past the last box
+     */
+    static void boxes(
+        final Matrix4fc _matrix,
+        final BoundingBoxes _src,
+        final BoundingBoxes _dest,
+        final int _from,
+        final int _to) {
+      final int lanes = BatchMathVector.SPECIES.length();
+      final int upper = _from + BatchMathVector.SPECIES.loopBound(_to - _from);
+
+      int index = _from;
+      for (; index < upper; index += lanes) {
+        final FloatVector loX = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.minX(), index);
+        final FloatVector loY = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.minY(), index);
+        final FloatVector loZ = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.minZ(), index);
+        final FloatVector hiX = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.maxX(), index);
+        final FloatVector hiY = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.maxY(), index);
+        final FloatVector hiZ = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.maxZ(), index);
+        /* Per axis, the smaller and larger product of every column. */
+        final FloatVector xLoX = loX.mul(_matrix.m00());
+        final FloatVector xHiX = hiX.mul(_matrix.m00());
+        final FloatVector yLoX = loY.mul(_matrix.m10());
+        final FloatVector yHiX = hiY.mul(_matrix.m10());
+        final FloatVector zLoX = loZ.mul(_matrix.m20());
+        final FloatVector zHiX = hiZ.mul(_matrix.m20());
+        xLoX.min(xHiX).add(yLoX.min(yHiX)).add(zLoX.min(zHiX))
+          .add(_matrix.m30()).intoArray(_dest.minX(), index);
+        xLoX.max(xHiX).add(yLoX.max(yHiX)).add(zLoX.max(zHiX))
+          .add(_matrix.m30()).intoArray(_dest.maxX(), index);
+
+        final FloatVector xLoY = loX.mul(_matrix.m01());
+        final FloatVector xHiY = hiX.mul(_matrix.m01());
+        final FloatVector yLoY = loY.mul(_matrix.m11());
+        final FloatVector yHiY = hiY.mul(_matrix.m11());
+        final FloatVector zLoY = loZ.mul(_matrix.m21());
+        final FloatVector zHiY = hiZ.mul(_matrix.m21());
+        xLoY.min(xHiY).add(yLoY.min(yHiY)).add(zLoY.min(zHiY))
+          .add(_matrix.m31()).intoArray(_dest.minY(), index);
+        xLoY.max(xHiY).add(yLoY.max(yHiY)).add(zLoY.max(zHiY))
+          .add(_matrix.m31()).intoArray(_dest.maxY(), index);
+
+        final FloatVector xLoZ = loX.mul(_matrix.m02());
+        final FloatVector xHiZ = hiX.mul(_matrix.m02());
+        final FloatVector yLoZ = loY.mul(_matrix.m12());
+        final FloatVector yHiZ = hiY.mul(_matrix.m12());
+        final FloatVector zLoZ = loZ.mul(_matrix.m22());
+        final FloatVector zHiZ = hiZ.mul(_matrix.m22());
+        xLoZ.min(xHiZ).add(yLoZ.min(yHiZ)).add(zLoZ.min(zHiZ))
+          .add(_matrix.m32()).intoArray(_dest.minZ(), index);
+        xLoZ.max(xHiZ).add(yLoZ.max(yHiZ)).add(zLoZ.max(zHiZ))
+          .add(_matrix.m32()).intoArray(_dest.maxZ(), index);
+      }
+
+      /* Scalar tail with the same arithmetic. */
+      BatchMath.boxesScalar(_matrix, _src, _dest, index, _to);
+    }
+
+    /**
+     * Transforms a range of boxes by affine matrices picked from a block.
+     *
+     * <p>The affine coefficients of the matrices of the lanes are first
+     * transposed into a scratch array, one vector per coefficient, instead
+     * of using the gather loads of the Vector API: they are no faster,
+     * and C2 of JDK 21.0.1 on AVX-512 was seen to crash the JVM in them
+     * with valid indices once other kernels had been compiled.
+     *
+     * @param _matrices the block of matrices
+     * @param _indices the matrix of every box
+     * @param _src the boxes
+     * @param _dest the boxes enclosing the transformed boxes
+     * @param _from the first box
+     * @param _to one past the last box
+     */
+    static void boxes(
+        final float[] _matrices,
+        final int[] _indices,
+        final BoundingBoxes _src,
+        final BoundingBoxes _dest,
+        final int _from,
+        final int _to) {
+      final int lanes = BatchMathVector.SPECIES.length();
+      final int upper = _from + BatchMathVector.SPECIES.loopBound(_to - _from);
+      final float[] coefficients = BatchMathVector.COEFFICIENTS.get();
+      final int rows = BatchMathVector.COLUMN_SIZE - 1;
+
+      int index = _from;
+      for (; index < upper; index += lanes) {
+        /* Coefficient column * rows + row is at column * 4 + row. */
+        for (int lane = 0; lane < lanes; lane++) {
+          final int matrix = _indices[index + lane] * BatchMath.MATRIX_SIZE;
+          for (int coefficient = 0;
+              coefficient < BatchMathVector.AFFINE_SIZE; coefficient++) {
+            coefficients[(coefficient * lanes) + lane] =
+              _matrices[matrix + coefficient + (coefficient / rows)];
+          }
+        }
+        final FloatVector loX = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.minX(), index);
+        final FloatVector loY = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.minY(), index);
+        final FloatVector loZ = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.minZ(), index);
+        final FloatVector hiX = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.maxX(), index);
+        final FloatVector hiY = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.maxY(), index);
+        final FloatVector hiZ = FloatVector.fromArray(
+          BatchMathVector.SPECIES, _src.maxZ(), index);
+        for (int row = 0; row < rows; row++) {
+          final FloatVector x = FloatVector.fromArray(
+            BatchMathVector.SPECIES, coefficients, row * lanes);
+          final FloatVector y = FloatVector.fromArray(
+            BatchMathVector.SPECIES, coefficients, (rows + row) * lanes);
+          final FloatVector z = FloatVector.fromArray(
+            BatchMathVector.SPECIES, coefficients, ((2 * rows) + row) * lanes);
+          final FloatVector w = FloatVector.fromArray(
+            BatchMathVector.SPECIES, coefficients, ((3 * rows) + row) * lanes);
+          /* The smaller and larger product of every column. */
+          final FloatVector xLo = loX.mul(x);
+          final FloatVector xHi = hiX.mul(x);
+          final FloatVector yLo = loY.mul(y);
+          final FloatVector yHi = hiY.mul(y);
+          final FloatVector zLo = loZ.mul(z);
+          final FloatVector zHi = hiZ.mul(z);
+          xLo.min(xHi).add(yLo.min(yHi)).add(zLo.min(zHi)).add(w)
+            .intoArray(BatchMathVector.minimum(_dest, row), index);
+          xLo.max(xHi).add(yLo.max(yHi)).add(zLo.max(zHi)).add(w)
+            .intoArray(BatchMathVector.maximum(_dest, row), index);
+        }
+      }
+
+      /* Scalar tail with the same arithmetic. */
+      BatchMath.boxesScalar(_matrices, _indices, _src, _dest, index, _to);
+    }
+
+    /**
+     * Gets the minimum coordinates of a set of boxes on an axis.
+     *
+     * @param _boxes the boxes
+     * @param _axis the axis, zero for x
+     * @return the array
+     */
+    private static float[] minimum(
+        final BoundingBoxes _boxes,
+        final int _axis) {
+      if (_axis == 0) {
+        return _boxes.minX();
+      }
+      return (_axis == 1) ? _boxes.minY() : _boxes.minZ();
+    }
+
+    /**
+     * Gets the maximum coordinates of a set of boxes on an axis.
+     *
+     * @param _boxes the boxes
+     * @param _axis the axis, zero for x
+     * @return the array
+     */
+    private static float[] maximum(
+        final BoundingBoxes _boxes,
+        final int _axis) {
+      if (_axis == 0) {
+        return _boxes.maxX();
+      }
+      return (_axis == 1) ? _boxes.maxY() : _boxes.maxZ();
+    }
+
+    /**
+     * Computes the offset, from the start of a matrix, of the vector
+     * holding each left column.
+     *
+     * @return the offset of every column
+     */
+    private static int[] leftOffsets() {
+      final int[] offsets = new int[BatchMathVector.COLUMN_SIZE];
+      for (int column = 0; column < offsets.length; column++) {
+        final int start = column * BatchMathVector.COLUMN_SIZE;
+        offsets[column] = start - (start % BatchMathVector.LANES);
+      }
+      return offsets;
+    }
+
+    /**
+     * Builds the shuffle repeating a left column in every column of a
+     * vector loaded at its offset.
+     *
+     * @param _column the left column
+     * @return the shuffle
+     */
+    private static VectorShuffle<Float> leftShuffle(
+        final int _column) {
+      final int start = (_column * BatchMathVector.COLUMN_SIZE)
+        % BatchMathVector.LANES;
+      return VectorShuffle.fromOp(BatchMathVector.SPECIES,
+        lane -> (start + (lane % BatchMathVector.COLUMN_SIZE))
+          % BatchMathVector.LANES);
+    }
+
+    /**
+     * Builds the shuffle broadcasting one row of every right column over
+     * that column.
+     *
+     * @param _row the row
+     * @return the shuffle
+     */
+    private static VectorShuffle<Float> rightShuffle(
+        final int _row) {
+      return VectorShuffle.fromOp(BatchMathVector.SPECIES,
+        lane -> ((lane - (lane % BatchMathVector.COLUMN_SIZE)) + _row)
+          % BatchMathVector.LANES);
+    }
+
+  }
@@ -0,0 +1,205 @@
+package es.noa.rad.game.engine.math;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+  /**
+   * Three-component vectors stored as structure of arrays.
+   *
+   * <p>Each component lives in its own {@code float[]}, so batch loops
+   * stream through three contiguous arrays and the same layout can be
+   * loaded lane by lane by the Vector API. Used for points, directions and
+   * normals by {@link BatchMath}.
+   *
+   * <p>Not thread-safe for writing; disjoint ranges may be written by
+   * different threads once the size is set.
+   *
+   * @see BatchMath
+   */
+  public final class Vector3Array {
+
+    /**
+     * X component of every vector.
+     */
+    private float[] x;
+
+    /**
+     * Y component of every vector.
+     */
+    private float[] y;
+
+    /**
+     * Z component of every vector.
+     */
+    private float[] z;
+
+    /**
+     * Number of vectors.
+     */
+    private int size;
+
+    /**
+     * Creates an empty array.
+     *
+     * @param _capacity the number of vectors before growing
+     */
+    public Vector3Array(
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.x = new float[capacity];
+      this.y = new float[capacity];
+      this.z = new float[capacity];
+      this.size = 0;
+    }
+
+    /**
+     * Appends a vector.
+     *
+     * @param _x the x component
+     * @param _y the y component
+     * @param _z the z component
+     * @return the index of the vector
+     */
+    public int add(
+        final float _x,
+        final float _y,
+        final float _z) {
+      if (this.size == this.x.length) {
+        this.grow(this.size + 1);
+      }
+      final int index = this.size++;
+      this.x[index] = _x;
+      this.y[index] = _y;
+      this.z[index] = _z;
+      return index;
+    }
+
+    /**
+     * Appends a vector.
+     *
+     * @param _vector the vector
+     * @return the index of the vector
+     */
+    public int add(
+        final Vector3fc _vector) {
+      return this.add(_vector.x(), _vector.y(), _vector.z());
+    }
+
+    /**
+     * Replaces a vector.
+     *
+     * @param _index the index of the vector
+     * @param _x the x component
+     * @param _y the y component
+     * @param _z the z component
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public void set(
+        final int _index,
+        final float _x,
+        final float _y,
+        final float _z) {
+      Objects.checkIndex(_index, this.size);
+      this.x[_index] = _x;
+      this.y[_index] = _y;
+      this.z[_index] = _z;
+    }
+
+    /**
+     * Copies a vector.
+     *
+     * @param _index the index of the vector
+     * @param _dest the vector receiving the components
+     * @return the destination vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Vector3f get(
+        final int _index,
+        final Vector3f _dest) {
+      Objects.checkIndex(_index, this.size);
+      return _dest.set(this.x[_index], this.y[_index], this.z[_index]);
+    }
+
+    /**
+     * Gets the number of vectors.
+     *
+     * @return the size
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Sets the number of vectors, growing the arrays if needed.
+     *
+     * <p>Vectors added by growing the size have undefined components until
+     * written.
+     *
+     * @param _size the new size
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public void size(
+        final int _size) {
+      if (_size < 0) {
+        throw new IllegalArgumentException(
+          "Vector array size must not be negative: " + _size);
+      }
+      if (_size > this.x.length) {
+        this.grow(_size);
+      }
+      this.size = _size;
+    }
+
+    /**
+     * Removes every vector, keeping the capacity.
+     */
+    public void clear() {
+      this.size = 0;
+    }
+
+    /**
+     * Gets the x component array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] x() {
+      return this.x;
+    }
+
+    /**
+     * Gets the y component array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] y() {
+      return this.y;
+    }
+
+    /**
+     * Gets the z component array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] z() {
+      return this.z;
+    }
+
+    /**
+     * Grows the capacity to at least the given number of vectors, at
+     * least doubling it.
+     *
+     * @param _capacity the number of vectors
+     */
+    private void grow(
+        final int _capacity) {
+      final int newCapacity
+        = Math.max(_capacity, Math.multiplyExact(this.x.length, 2));
+      this.x = Arrays.copyOf(this.x, newCapacity);
+      this.y = Arrays.copyOf(this.y, newCapacity);
+      this.z = Arrays.copyOf(this.z, newCapacity);
+    }
+
+  }
@@ -0,0 +1,479 @@
+package es.noa.rad.game.engine.memory;
+
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.configuration.settings.GameSettings;
+
+  /**
+   * Off-heap linear allocator for data that lives for a few frames.
+   *
+   * <p>The arena owns a ring of buffers allocated with {@link MemoryUtil}.
+   * Allocations bump a cursor through the current buffer and are never
+   * freed one by one; {@link #reset()} moves to the next buffer of the
+   * ring and rewinds it instead. With two or three buffers, data written
+   * during a frame stays valid while the next one or two frames are
+   * prepared, long enough for a consumer (render thread, GPU upload) that
+   * runs a frame behind. The game loop calls {@link #reset()} at the start
+   * of every {@code GameTiming.tick()}.
+   *
+   * <p>When a frame needs more than its buffer holds, extra overflow
+   * blocks are chained to the buffer for the rest of the frame, so
+   * addresses already handed out stay valid. When a buffer comes around
+   * again it releases them and, if it is smaller than the largest frame
+   * seen so far (the high watermark), grows to fit it, so overflow only
+   * happens while the arena warms up.
+   *
+   * <p>Not thread-safe: allocate from the game loop thread, for instance
+   * before forking the jobs that fill the memory.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * FrameArena arena = GameTiming.get().frameArena();
+   * long commands = arena.allocate(count * COMMAND_BYTES);
+   * MemoryUtil.memPutInt(commands, meshId);
+   * }</pre>
+   *
+   * @see OffHeapArena
+   */
+  public final class FrameArena {
+
+    /**
+     * Default alignment in bytes of an allocation.
+     */
+    public static final int DEFAULT_ALIGNMENT = 16;
+
+    /**
+     * Alignment in bytes of every buffer and overflow block (cache line).
+     */
+    private static final int BLOCK_ALIGNMENT = 64;
+
+    /**
+     * Largest buffer size in bytes the arena grows to.
+     */
+    private static final int MAXIMUM_CAPACITY
+      = Integer.highestOneBit(Integer.MAX_VALUE);
+
+    /**
+     * Initial number of overflow block slots of a buffer.
+     */
+    private static final int INITIAL_OVERFLOW_BLOCKS = 4;
+
+    /**
+     * Base address of every buffer.
+     */
+    private final long[] addresses;
+
+    /**
+     * Size in bytes of every buffer.
+     */
+    private final int[] capacities;
+
+    /**
+     * Overflow blocks chained to every buffer during its frame.
+     */
+    private final long[][] overflowBlocks;
+
+    /**
+     * Size in bytes of the overflow blocks of every buffer.
+     */
+    private final int[][] overflowSizes;
+
+    /**
+     * Number of overflow blocks of every buffer.
+     */
+    private final int[] overflowCounts;
+
+    /**
+     * Buffer of the current frame.
+     */
+    private int buffer;
+
+    /**
+     * Base address of the block allocations are bumped from.
+     */
+    private long blockAddress;
+
+    /**
+     * Size in bytes of the block allocations are bumped from.
+     */
+    private long blockCapacity;
+
+    /**
+     * Offset of the next free byte of the block allocations are bumped
+     * from.
+     */
+    private long blockOffset;
+
+    /**
+     * Bytes handed out during the current frame, alignment padding
+     * included.
+     */
+    private long bytesUsed;
+
+    /**
+     * Largest number of bytes handed out during a single frame.
+     */
+    private long highWatermark;
+
+    /**
+     * Bytes reserved by the buffers and overflow blocks.
+     */
+    private long bytesReserved;
+
+    /**
+     * Number of overflow blocks allocated so far.
+     */
+    private long overflowCount;
+
+    /**
+     * Number of buffer growths so far.
+     */
+    private long growCount;
+
+    /**
+     * Number of frames started so far.
+     */
+    private long frame;
+
+    /**
+     * Creates an arena sized by the {@code game.frame.arena.capacity} and
+     * {@code game.frame.arena.buffers} settings.
+     */
+    public FrameArena() {
+      this(GameSettings.GAME_FRAME_ARENA_CAPACITY.<Integer>get(),
+        GameSettings.GAME_FRAME_ARENA_BUFFERS.<Integer>get());
+    }
+
+    /**
+     * Creates an arena.
+     *
+     * @param _capacity the initial size in bytes of every buffer
+     * @param _buffers the number of buffers of the ring, usually two or
+     *     three
+     * @throws IllegalArgumentException if the capacity or the buffer count
+     *     is not positive
+     */
+    public FrameArena(
+        final int _capacity,
+        final int _buffers) {
+      if (_capacity <= 0) {
+        throw new IllegalArgumentException(
+          "Capacity must be positive: " + _capacity);
+      }
+      if (_buffers <= 0) {
+        throw new IllegalArgumentException(
+          "Buffer count must be positive: " + _buffers);
+      }
+      this.addresses = new long[_buffers];
+      this.capacities = new int[_buffers];
+      this.overflowBlocks = new long[_buffers][];
+      this.overflowSizes = new int[_buffers][];
+      this.overflowCounts = new int[_buffers];
+      for (int index = 0; index < _buffers; index++) {
+        this.addresses[index] = this.reserve(_capacity);
+        this.capacities[index] = _capacity;
+        this.overflowBlocks[index]
+          = new long[FrameArena.INITIAL_OVERFLOW_BLOCKS];
+        this.overflowSizes[index]
+          = new int[FrameArena.INITIAL_OVERFLOW_BLOCKS];
+      }
+      this.buffer = 0;
+      this.rewind();
+    }
+
+    /**
+     * Starts a new frame: moves to the next buffer of the ring and rewinds
+     * it.
+     *
+     * <p>Memory handed out {@code buffers} frames ago becomes invalid.
+     */
+    public void reset() {
+      this.highWatermark = Math.max(this.highWatermark, this.bytesUsed);
+      this.buffer = (this.buffer + 1) % this.addresses.length;
+      this.frame++;
+
+      this.releaseOverflow(this.buffer);
+
+      if (this.capacities[this.buffer] < this.highWatermark) {
+        final int capacity = FrameArena.grownCapacity(this.highWatermark);
+        this.release(this.addresses[this.buffer],
+          this.capacities[this.buffer]);
+        this.addresses[this.buffer] = this.reserve(capacity);
+        this.capacities[this.buffer] = capacity;
+        this.growCount++;
+      }
+      this.rewind();
+    }
+
+    /**
+     * Allocates a block aligned to {@link #DEFAULT_ALIGNMENT} bytes.
+     *
+     * @param _size the size in bytes
+     * @return the address of the block, valid for this frame and the next
+     *     {@code buffers - 1} ones
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public long allocate(
+        final int _size) {
+      return this.allocate(_size, FrameArena.DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * Allocates an aligned block.
+     *
+     * <p>The content of the block is undefined.
+     *
+     * @param _size the size in bytes
+     * @param _alignment the alignment in bytes (power of two)
+     * @return the address of the block, valid for this frame and the next
+     *     {@code buffers - 1} ones
+     * @throws IllegalArgumentException if the size is negative or the
+     *     alignment is not a power of two
+     */
+    public long allocate(
+        final int _size,
+        final int _alignment) {
+      if (_size < 0) {
+        throw new IllegalArgumentException(
+          "Allocation size must not be negative: " + _size);
+      }
+      if ((_alignment <= 0) || (Integer.bitCount(_alignment) != 1)) {
+        throw new IllegalArgumentException(
+          "Alignment must be a power of two: " + _alignment);
+      }
+      long offset = this.alignedOffset(_alignment);
+      if ((offset + _size) > this.blockCapacity) {
+        this.overflow(((long) _size) + _alignment);
+        offset = this.alignedOffset(_alignment);
+      }
+      final long end = offset + _size;
+      this.bytesUsed += end - this.blockOffset;
+      this.blockOffset = end;
+      return this.blockAddress + offset;
+    }
+
+    /**
+     * Releases every buffer and overflow block.
+     *
+     * <p>The arena must not be used after this call.
+     */
+    public void close() {
+      for (int index = 0; index < this.addresses.length; index++) {
+        this.releaseOverflow(index);
+        if (this.addresses[index] != MemoryUtil.NULL) {
+          this.release(this.addresses[index], this.capacities[index]);
+          this.addresses[index] = MemoryUtil.NULL;
+        }
+      }
+      this.blockAddress = MemoryUtil.NULL;
+      this.blockCapacity = 0L;
+      this.blockOffset = 0L;
+    }
+
+    /**
+     * Gets the number of buffers of the ring.
+     *
+     * @return the buffer count
+     */
+    public int bufferCount() {
+      return this.addresses.length;
+    }
+
+    /**
+     * Gets the buffer of the current frame.
+     *
+     * @return the buffer index
+     */
+    public int buffer() {
+      return this.buffer;
+    }
+
+    /**
+     * Gets the number of frames started so far.
+     *
+     * @return the frame count
+     */
+    public long frame() {
+      return this.frame;
+    }
+
+    /**
+     * Gets the size of the buffer of the current frame, overflow blocks
+     * excluded.
+     *
+     * @return the capacity in bytes
+     */
+    public int capacity() {
+      return this.capacities[this.buffer];
+    }
+
+    /**
+     * Gets the bytes handed out during the current frame, alignment
+     * padding included.
+     *
+     * @return the used bytes
+     */
+    public long bytesUsed() {
+      return this.bytesUsed;
+    }
+
+    /**
+     * Gets the largest number of bytes handed out during a single frame,
+     * the current one included.
+     *
+     * @return the high watermark in bytes
+     */
+    public long highWatermark() {
+      return Math.max(this.highWatermark, this.bytesUsed);
+    }
+
+    /**
+     * Gets the bytes reserved from the system by the buffers and overflow
+     * blocks.
+     *
+     * @return the reserved bytes
+     */
+    public long bytesReserved() {
+      return this.bytesReserved;
+    }
+
+    /**
+     * Gets the number of overflow blocks allocated so far.
+     *
+     * <p>A count that keeps increasing after warm-up means frames vary
+     * more than the buffers grow; raise the initial capacity.
+     *
+     * @return the overflow count
+     */
+    public long overflowCount() {
+      return this.overflowCount;
+    }
+
+    /**
+     * Gets the number of times a buffer grew to the high watermark.
+     *
+     * @return the grow count
+     */
+    public long growCount() {
+      return this.growCount;
+    }
+
+    /**
+     * Makes the buffer of the current frame the block allocations are
+     * bumped from.
+     */
+    private void rewind() {
+      this.blockAddress = this.addresses[this.buffer];
+      this.blockCapacity = this.capacities[this.buffer];
+      this.blockOffset = 0L;
+      this.bytesUsed = 0L;
+    }
+
+    /**
+     * Computes the offset of the next aligned byte of the current block.
+     *
+     * @param _alignment the alignment in bytes (power of two)
+     * @return the aligned offset
+     */
+    private long alignedOffset(
+        final int _alignment) {
+      final long address = this.blockAddress + this.blockOffset;
+      return ((address + _alignment - 1L) & -((long) _alignment))
+        - this.blockAddress;
+    }
+
+    /**
+     * Chains a new overflow block to the buffer of the current frame and
+     * bumps allocations from it.
+     *
+     * @param _minimum the minimum size in bytes of the block
+     */
+    private void overflow(
+        final long _minimum) {
+      final int size = FrameArena.grownCapacity(
+        Math.max(_minimum, this.capacities[this.buffer]));
+      final long address = this.reserve(size);
+      final int count = this.overflowCounts[this.buffer];
+      if (count == this.overflowBlocks[this.buffer].length) {
+        this.overflowBlocks[this.buffer]
+          = Arrays.copyOf(this.overflowBlocks[this.buffer], count * 2);
+        this.overflowSizes[this.buffer]
+          = Arrays.copyOf(this.overflowSizes[this.buffer], count * 2);
+      }
+      this.overflowBlocks[this.buffer][count] = address;
+      this.overflowSizes[this.buffer][count] = size;
+      this.overflowCounts[this.buffer] = count + 1;
+      this.overflowCount++;
+      /* The unused tail of the previous block counts as used. */
+      this.bytesUsed += this.blockCapacity - this.blockOffset;
+      this.blockAddress = address;
+      this.blockCapacity = size;
+      this.blockOffset = 0L;
+    }
+
+    /**
+     * Reserves a block from the system.
+     *
+     * @param _size the size in bytes
+     * @return the address of the block
+     */
+    private long reserve(
+        final int _size) {
+      final long address
+        = MemoryUtil.nmemAlignedAlloc(FrameArena.BLOCK_ALIGNMENT, _size);
+      if (address == MemoryUtil.NULL) {
+        throw new OutOfMemoryError(
+          "Unable to reserve a frame arena block of " + _size + " bytes.");
+      }
+      this.bytesReserved += _size;
+      return address;
+    }
+
+    /**
+     * Releases a block reserved with {@link #reserve(int)}.
+     *
+     * @param _address the address of the block
+     * @param _size the size in bytes of the block
+     */
+    private void release(
+        final long _address,
+        final int _size) {
+      MemoryUtil.nmemAlignedFree(_address);
+      this.bytesReserved -= _size;
+    }
+
+    /**
+     * Releases the overflow blocks of a buffer.
+     *
+     * @param _buffer the buffer index
+     */
+    private void releaseOverflow(
+        final int _buffer) {
+      final long[] blocks = this.overflowBlocks[_buffer];
+      for (int block = 0; block < this.overflowCounts[_buffer]; block++) {
+        this.release(blocks[block], this.overflowSizes[_buffer][block]);
+        blocks[block] = MemoryUtil.NULL;
+      }
+      this.overflowCounts[_buffer] = 0;
+    }
+
+    /**
+     * Rounds a size up to the next power of two.
+     *
+     * @param _size the size in bytes
+     * @return the capacity in bytes
+     * @throws IllegalArgumentException if the size exceeds the maximum
+     *     capacity
+     */
+    private static int grownCapacity(
+        final long _size) {
+      if (_size > FrameArena.MAXIMUM_CAPACITY) {
+        throw new IllegalArgumentException(
+          "Frame arena block too large: " + _size);
+      }
+      return Integer.highestOneBit(Math.max(1, ((int) _size) - 1)) << 1;
+    }
+
+  }
@@ -0,0 +1,229 @@
+package es.noa.rad.game.engine.memory;
+
+import java.util.Arrays;
+
+  /**
+   * Pool of generational {@code int} handles backed by primitive arrays.
+   *
+   * <p>A handle packs a slot index (low 24 bits) and a generation counter
+   * (next 7 bits). Releasing a handle bumps the generation of its slot, so
+   * stale copies of the handle are detected instead of silently aliasing
+   * whatever reuses the slot. Handles are always non-negative, which leaves
+   * {@link #INVALID_HANDLE} free as a sentinel.
+   *
+   * <p>Owners keep their per-handle data in parallel primitive arrays
+   * indexed by {@link #slot(int)} and size them with {@link #capacity()}.
+   *
+   * <p>Not thread-safe.
+   */
+  public final class HandlePool {
+
+    /**
+     * Sentinel value that never identifies a live handle.
+     */
+    public static final int INVALID_HANDLE = -1;
+
+    /**
+     * Number of bits of the slot index.
+     */
+    private static final int SLOT_BITS = 24;
+
+    /**
+     * Mask extracting the slot index of a handle.
+     */
+    private static final int SLOT_MASK = (1 << HandlePool.SLOT_BITS) - 1;
+
+    /**
+     * Mask of the generation counter (7 bits, keeps handles positive).
+     */
+    private static final int GENERATION_MASK = 0x7F;
+
+    /**
+     * Maximum number of slots a pool can hold.
+     */
+    public static final int MAX_SLOTS = HandlePool.SLOT_MASK + 1;
+
+    /**
+     * Current generation of every slot.
+     */
+    private int[] generations;
+
+    /**
+     * Whether every slot is currently in use.
+     */
+    private boolean[] used;
+
+    /**
+     * Stack of released slots available for reuse.
+     */
+    private int[] freeSlots;
+
+    /**
+     * Number of entries in {@link #freeSlots}.
+     */
+    private int freeCount;
+
+    /**
+     * Number of slots ever handed out (high watermark).
+     */
+    private int slotCount;
+
+    /**
+     * Number of live handles.
+     */
+    private int liveCount;
+
+    /**
+     * Creates a pool with room for the given number of handles before
+     * growing.
+     *
+     * @param _capacity the initial capacity
+     */
+    public HandlePool(
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.generations = new int[capacity];
+      this.used = new boolean[capacity];
+      this.freeSlots = new int[capacity];
+      this.freeCount = 0;
+      this.slotCount = 0;
+      this.liveCount = 0;
+    }
+
+    /**
+     * Hands out a new handle.
+     *
+     * @return the new handle
+     * @throws IllegalStateException if {@link #MAX_SLOTS} handles are live
+     */
+    public int allocate() {
+      final int slot;
+      if (this.freeCount > 0) {
+        slot = this.freeSlots[--this.freeCount];
+      } else {
+        if (this.slotCount == HandlePool.MAX_SLOTS) {
+          throw new IllegalStateException("Handle pool exhausted.");
+        }
+        if (this.slotCount == this.generations.length) {
+          this.grow();
+        }
+        slot = this.slotCount++;
+      }
+      this.used[slot] = true;
+      this.liveCount++;
+      return (this.generations[slot] << HandlePool.SLOT_BITS) | slot;
+    }
+
+    /**
+     * Releases a live handle.
+     *
+     * @param _handle the handle to release
+     * @return the slot the handle occupied
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int release(
+        final int _handle) {
+      final int slot = this.slot(_handle);
+      this.used[slot] = false;
+      this.generations[slot]
+        = (this.generations[slot] + 1) & HandlePool.GENERATION_MASK;
+      this.freeSlots[this.freeCount++] = slot;
+      this.liveCount--;
+      return slot;
+    }
+
+    /**
+     * Checks whether a handle is live.
+     *
+     * @param _handle the handle to check
+     * @return {@code true} if the handle is live
+     */
+    public boolean isValid(
+        final int _handle) {
+      if (_handle < 0) {
+        return false;
+      }
+      final int slot = _handle & HandlePool.SLOT_MASK;
+      return (slot < this.slotCount)
+        && (this.used[slot])
+        && (this.generations[slot] == (_handle >>> HandlePool.SLOT_BITS));
+    }
+
+    /**
+     * Gets the slot of a live handle.
+     *
+     * @param _handle the handle
+     * @return the slot index
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int slot(
+        final int _handle) {
+      if (!this.isValid(_handle)) {
+        throw new IllegalArgumentException("Invalid handle: " + _handle);
+      }
+      return _handle & HandlePool.SLOT_MASK;
+    }
+
+    /**
+     * Checks whether a slot is currently in use.
+     *
+     * @param _slot the slot index
+     * @return {@code true} if the slot holds a live handle
+     */
+    public boolean isUsed(
+        final int _slot) {
+      return (_slot >= 0) && (_slot < this.slotCount) && (this.used[_slot]);
+    }
+
+    /**
+     * Rebuilds the live handle of a slot in use.
+     *
+     * @param _slot the slot index
+     * @return the handle currently stored in that slot
+     */
+    public int handle(
+        final int _slot) {
+      return (this.generations[_slot] << HandlePool.SLOT_BITS) | _slot;
+    }
+
+    /**
+     * Gets the number of slots ever handed out. Every slot in use is
+     * below this value.
+     *
+     * @return the slot high watermark
+     */
+    public int slotCount() {
+      return this.slotCount;
+    }
+
+    /**
+     * Gets the number of live handles.
+     *
+     * @return the live handle count
+     */
+    public int size() {
+      return this.liveCount;
+    }
+
+    /**
+     * Gets the number of slots the pool can hold before growing. Arrays
+     * indexed by slot must be at least this long.
+     *
+     * @return the slot capacity
+     */
+    public int capacity() {
+      return this.generations.length;
+    }
+
+    /**
+     * Doubles the slot capacity.
+     */
+    private void grow() {
+      final int newCapacity = Math.min(
+        HandlePool.MAX_SLOTS, this.generations.length * 2);
+      this.generations = Arrays.copyOf(this.generations, newCapacity);
+      this.used = Arrays.copyOf(this.used, newCapacity);
+      this.freeSlots = Arrays.copyOf(this.freeSlots, newCapacity);
+    }
+
+  }
@@ -0,0 +1,462 @@
+package es.noa.rad.game.engine.memory;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import es.noa.rad.game.engine.configuration.settings.GameSettings;
+
+  /**
+   * Thread-local stack of reusable JOML temporaries, scoped by frames.
+   *
+   * <p>Mirrors LWJGL's {@code MemoryStack} for JOML objects: a frame is
+   * pushed, temporaries are taken from it, and popping the frame returns
+   * them all at once. Every thread owns one stack with a pool per type
+   * that only grows while a deeper or busier frame than ever before runs,
+   * so steady-state math allocates nothing.
+   *
+   * <p>Temporaries are handed out reset: matrices and quaternions as
+   * identity, vectors as zero. They must not outlive their frame.
+   *
+   * <p>With {@code game.debug.mode} enabled the stack also detects:
+   * <ul>
+   *   <li>Escapes: temporaries of a popped frame are overwritten with NaN
+   *       and dropped from the pool, so code still holding one keeps
+   *       producing NaN instead of silently sharing it with a later
+   *       frame.</li>
+   *   <li>Leaks: {@link #checkFrames()}, called by the game loop after
+   *       every update and render and by every
+   *       {@link es.noa.rad.game.engine.job.TaskGraph} task on the worker
+   *       that ran it, fails when a frame was not popped and reports where
+   *       it was pushed.</li>
+   *   <li>Cross-thread use: a stack used from a thread other than its
+   *       owner fails at once.</li>
+   * </ul>
+   *
+   * <p>Recording push sites and replacing dropped temporaries allocates,
+   * so debug mode is not allocation-free.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * try (MathStack stack = MathStack.stackPush()) {
+   *   Matrix4f model = stack.matrix4f().translation(position);
+   *   Vector3f forward = stack.vector3f().set(0, 0, -1);
+   *   model.transformDirection(forward);
+   * }
+   * }</pre>
+   */
+  public final class MathStack
+      implements AutoCloseable {
+
+    /**
+     * Stack of every thread, created on first use.
+     */
+    private static final ThreadLocal<MathStack> STACKS = new ThreadLocal<>();
+
+    /**
+     * Number of temporaries of every type before a pool grows.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Number of frames before the frame arrays grow.
+     */
+    private static final int INITIAL_DEPTH = 8;
+
+    /**
+     * Thread owning the stack.
+     */
+    private final Thread owner;
+
+    /**
+     * Whether escapes, leaks and cross-thread use are detected.
+     */
+    private final boolean debug;
+
+    /**
+     * Pool of 4x4 matrices.
+     */
+    private final Pool<Matrix4f> matrix4fs;
+
+    /**
+     * Pool of 3x3 matrices.
+     */
+    private final Pool<Matrix3f> matrix3fs;
+
+    /**
+     * Pool of quaternions.
+     */
+    private final Pool<Quaternionf> quaternionfs;
+
+    /**
+     * Pool of 4D vectors.
+     */
+    private final Pool<Vector4f> vector4fs;
+
+    /**
+     * Pool of 3D vectors.
+     */
+    private final Pool<Vector3f> vector3fs;
+
+    /**
+     * Pool of 2D vectors.
+     */
+    private final Pool<Vector2f> vector2fs;
+
+    /**
+     * Every pool, to save and restore them as a whole.
+     */
+    private final Pool<?>[] pools;
+
+    /**
+     * Saved pool tops of every frame, one per pool.
+     */
+    private int[] frames;
+
+    /**
+     * Push site of every frame, only recorded in debug mode.
+     */
+    private Throwable[] pushSites;
+
+    /**
+     * Number of pushed frames.
+     */
+    private int depth;
+
+    /**
+     * Creates the stack of the calling thread.
+     */
+    private MathStack() {
+      this.owner = Thread.currentThread();
+      this.debug = GameSettings.GAME_DEBUG_MODE.<Boolean>get();
+      this.matrix4fs = new Pool<>(Matrix4f::new, Matrix4f::identity,
+        matrix -> matrix.scaling(Float.NaN));
+      this.matrix3fs = new Pool<>(Matrix3f::new, Matrix3f::identity,
+        matrix -> matrix.scaling(Float.NaN));
+      this.quaternionfs = new Pool<>(Quaternionf::new, Quaternionf::identity,
+        quaternion -> quaternion.set(
+          Float.NaN, Float.NaN, Float.NaN, Float.NaN));
+      this.vector4fs = new Pool<>(Vector4f::new, Vector4f::zero,
+        vector -> vector.set(Float.NaN));
+      this.vector3fs = new Pool<>(Vector3f::new, Vector3f::zero,
+        vector -> vector.set(Float.NaN));
+      this.vector2fs = new Pool<>(Vector2f::new, Vector2f::zero,
+        vector -> vector.set(Float.NaN));
+      this.pools = new Pool<?>[] {
+        this.matrix4fs, this.matrix3fs, this.quaternionfs,
+        this.vector4fs, this.vector3fs, this.vector2fs,
+      };
+      this.frames = new int[MathStack.INITIAL_DEPTH * this.pools.length];
+      this.pushSites = new Throwable[MathStack.INITIAL_DEPTH];
+      this.depth = 0;
+    }
+
+    /**
+     * Gets the stack of the calling thread.
+     *
+     * @return the stack
+     */
+    public static MathStack get() {
+      MathStack stack = MathStack.STACKS.get();
+      if (stack == null) {
+        stack = new MathStack();
+        MathStack.STACKS.set(stack);
+      }
+      return stack;
+    }
+
+    /**
+     * Pushes a frame on the stack of the calling thread.
+     *
+     * @return the stack, to be closed to pop the frame
+     */
+    public static MathStack stackPush() {
+      return MathStack.get().push();
+    }
+
+    /**
+     * Checks that every frame of the calling thread's stack was popped.
+     *
+     * <p>In debug mode a leaked frame throws; otherwise the stack is reset
+     * so leaks cannot grow it without bound. A thread that never used its
+     * stack has nothing to check.
+     *
+     * @throws IllegalStateException in debug mode if a frame is still
+     *     pushed
+     */
+    public static void checkFrames() {
+      final MathStack stack = MathStack.STACKS.get();
+      if ((stack == null) || (stack.depth == 0)) {
+        return;
+      }
+      if (stack.debug) {
+        final Throwable pushSite = stack.pushSites[stack.depth - 1];
+        stack.reset();
+        throw new IllegalStateException(
+          "Math stack frame was not popped.", pushSite);
+      }
+      stack.reset();
+    }
+
+    /**
+     * Pushes a frame.
+     *
+     * @return this stack, to be closed to pop the frame
+     */
+    public MathStack push() {
+      this.checkOwner();
+      if ((this.depth + 1) * this.pools.length > this.frames.length) {
+        this.frames = Arrays.copyOf(this.frames, this.frames.length * 2);
+        this.pushSites
+          = Arrays.copyOf(this.pushSites, this.pushSites.length * 2);
+      }
+      final int frame = this.depth * this.pools.length;
+      for (int pool = 0; pool < this.pools.length; pool++) {
+        this.frames[frame + pool] = this.pools[pool].top;
+      }
+      if (this.debug) {
+        this.pushSites[this.depth] = new Throwable("Frame pushed here.");
+      }
+      this.depth++;
+      return this;
+    }
+
+    /**
+     * Pops the current frame, returning its temporaries.
+     *
+     * @throws IllegalStateException if no frame is pushed
+     */
+    public void pop() {
+      this.checkOwner();
+      if (this.depth == 0) {
+        throw new IllegalStateException("Math stack underflow.");
+      }
+      this.depth--;
+      final int frame = this.depth * this.pools.length;
+      for (int pool = 0; pool < this.pools.length; pool++) {
+        this.pools[pool].restore(this.frames[frame + pool], this.debug);
+      }
+      this.pushSites[this.depth] = null;
+    }
+
+    /**
+     * Pops the current frame.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+      this.pop();
+    }
+
+    /**
+     * Gets the number of pushed frames.
+     *
+     * @return the frame depth
+     */
+    public int depth() {
+      return this.depth;
+    }
+
+    /**
+     * Takes an identity 4x4 matrix from the current frame.
+     *
+     * @return the matrix
+     * @throws IllegalStateException if no frame is pushed
+     */
+    public Matrix4f matrix4f() {
+      return this.take(this.matrix4fs);
+    }
+
+    /**
+     * Takes an identity 3x3 matrix from the current frame.
+     *
+     * @return the matrix
+     * @throws IllegalStateException if no frame is pushed
+     */
+    public Matrix3f matrix3f() {
+      return this.take(this.matrix3fs);
+    }
+
+    /**
+     * Takes an identity quaternion from the current frame.
+     *
+     * @return the quaternion
+     * @throws IllegalStateException if no frame is pushed
+     */
+    public Quaternionf quaternionf() {
+      return this.take(this.quaternionfs);
+    }
+
+    /**
+     * Takes a zero 4D vector from the current frame.
+     *
+     * @return the vector
+     * @throws IllegalStateException if no frame is pushed
+     */
+    public Vector4f vector4f() {
+      return this.take(this.vector4fs);
+    }
+
+    /**
+     * Takes a zero 3D vector from the current frame.
+     *
+     * @return the vector
+     * @throws IllegalStateException if no frame is pushed
+     */
+    public Vector3f vector3f() {
+      return this.take(this.vector3fs);
+    }
+
+    /**
+     * Takes a zero 2D vector from the current frame.
+     *
+     * @return the vector
+     * @throws IllegalStateException if no frame is pushed
+     */
+    public Vector2f vector2f() {
+      return this.take(this.vector2fs);
+    }
+
+    /**
+     * Takes a temporary from a pool.
+     *
+     * @param <T> the type of the temporary
+     * @param _pool the pool
+     * @return the reset temporary
+     */
+    private <T> T take(
+        final Pool<T> _pool) {
+      if (this.depth == 0) {
+        throw new IllegalStateException(
+          "Math stack temporaries need a pushed frame.");
+      }
+      if (this.debug) {
+        this.checkOwner();
+      }
+      return _pool.next();
+    }
+
+    /**
+     * Pops every frame.
+     */
+    private void reset() {
+      while (this.depth > 0) {
+        this.pop();
+      }
+    }
+
+    /**
+     * Fails in debug mode if the calling thread does not own the stack.
+     */
+    private void checkOwner() {
+      if (this.debug && (Thread.currentThread() != this.owner)) {
+        throw new IllegalStateException("Math stack of "
+          + this.owner.getName() + " used from "
+          + Thread.currentThread().getName() + ".");
+      }
+    }
+
+    /**
+     * Growable pool of temporaries of one type.
+     *
+     * @param <T> the type of the temporaries
+     */
+    private static final class Pool<T> {
+
+      /**
+       * Creates new temporaries.
+       */
+      private final Supplier<T> factory;
+
+      /**
+       * Resets a temporary before it is handed out.
+       */
+      private final Consumer<T> reset;
+
+      /**
+       * Overwrites a returned temporary with NaN.
+       */
+      private final Consumer<T> poison;
+
+      /**
+       * Temporaries, created on demand.
+       */
+      private Object[] items;
+
+      /**
+       * Number of temporaries handed out.
+       */
+      private int top;
+
+      /**
+       * Creates an empty pool.
+       *
+       * @param _factory creates new temporaries
+       * @param _reset resets a temporary before it is handed out
+       * @param _poison overwrites a returned temporary with NaN
+       */
+      Pool(
+          final Supplier<T> _factory,
+          final Consumer<T> _reset,
+          final Consumer<T> _poison) {
+        this.factory = _factory;
+        this.reset = _reset;
+        this.poison = _poison;
+        this.items = new Object[MathStack.INITIAL_CAPACITY];
+        this.top = 0;
+      }
+
+      /**
+       * Hands out the next temporary, creating it the first time.
+       *
+       * @return the reset temporary
+       */
+      @SuppressWarnings("unchecked")
+      T next() {
+        if (this.top == this.items.length) {
+          this.items = Arrays.copyOf(this.items, this.items.length * 2);
+        }
+        T item = (T) this.items[this.top];
+        if (item == null) {
+          item = this.factory.get();
+          this.items[this.top] = item;
+        }
+        this.top++;
+        this.reset.accept(item);
+        return item;
+      }
+
+      /**
+       * Returns the temporaries handed out since a saved top.
+       *
+       * <p>Poisoned temporaries are dropped, so the next frame gets new
+       * ones instead of resetting the NaN of a temporary that escaped.
+       *
+       * @param _top the saved top
+       * @param _poison whether the returned temporaries are overwritten
+       *     with NaN
+       */
+      @SuppressWarnings("unchecked")
+      void restore(
+          final int _top,
+          final boolean _poison) {
+        if (_poison) {
+          for (int item = _top; item < this.top; item++) {
+            this.poison.accept((T) this.items[item]);
+            this.items[item] = null;
+          }
+        }
+        this.top = _top;
+      }
+
+    }
+
+  }
@@ -0,0 +1,756 @@
+package es.noa.rad.game.engine.memory;
+
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.libc.LibCString;
+
+  /**
+   * Off-heap arena that suballocates many small ranges from a few large
+   * blocks allocated with {@link MemoryUtil}.
+   *
+   * <p>Allocations are identified by stable generational handles instead of
+   * addresses or buffers: {@link #defragment()} may move the memory of an
+   * allocation, but its handle stays valid and {@link #address(int)}
+   * always returns the current location. Addresses must therefore not be
+   * cached across a defragmentation.
+   *
+   * <p>Every block keeps a sorted free list of ranges. Allocation is first
+   * fit over the blocks, freeing coalesces the range with its neighbours,
+   * and a new block is reserved only when no free range is large enough.
+   * All bookkeeping lives in primitive arrays, so allocating and freeing
+   * never create garbage in steady state.
+   *
+   * <p>Not thread-safe.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * OffHeapArena arena = new OffHeapArena(4 << 20, 16);
+   * int handle = arena.allocate(1024);
+   * MemoryUtil.memPutFloat(arena.address(handle), 1.0f);
+   * arena.free(handle);
+   * arena.close();
+   * }</pre>
+   *
+   * @see HandlePool
+   */
+  public final class OffHeapArena {
+
+    /**
+     * Default alignment in bytes of every allocation.
+     */
+    public static final int DEFAULT_ALIGNMENT = 16;
+
+    /**
+     * Initial number of block slots.
+     */
+    private static final int INITIAL_BLOCKS = 4;
+
+    /**
+     * Initial number of allocation slots.
+     */
+    private static final int INITIAL_ALLOCATIONS = 1024;
+
+    /**
+     * Number of bits an offset is shifted by when packed with a slot.
+     */
+    private static final int OFFSET_SHIFT = 32;
+
+    /**
+     * Mask extracting a slot packed with an offset.
+     */
+    private static final long SLOT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Size in bytes of a regular block.
+     */
+    private final int blockSize;
+
+    /**
+     * Alignment in bytes of every allocation (power of two).
+     */
+    private final int alignment;
+
+    /**
+     * Base address of every block, NULL for released blocks.
+     */
+    private long[] blockAddresses;
+
+    /**
+     * Size in bytes of every block.
+     */
+    private int[] blockSizes;
+
+    /**
+     * Free ranges of every block.
+     */
+    private FreeList[] freeLists;
+
+    /**
+     * Number of block slots in use (including released ones).
+     */
+    private int blockCount;
+
+    /**
+     * Generational handles of the allocations.
+     */
+    private final HandlePool handles;
+
+    /**
+     * Block of every allocation, indexed by handle slot.
+     */
+    private int[] allocationBlocks;
+
+    /**
+     * Offset inside its block of every allocation, indexed by handle slot.
+     */
+    private int[] allocationOffsets;
+
+    /**
+     * Aligned size of every allocation, indexed by handle slot.
+     */
+    private int[] allocationSizes;
+
+    /**
+     * Total bytes handed out to live allocations.
+     */
+    private long bytesUsed;
+
+    /**
+     * Total bytes reserved by live blocks.
+     */
+    private long bytesReserved;
+
+    /**
+     * Creates an arena reserving blocks of the given size.
+     *
+     * @param _blockSize size in bytes of a regular block
+     * @param _alignment alignment in bytes of every allocation (power of
+     *     two)
+     * @throws IllegalArgumentException if the block size is not positive
+     *     or the alignment is not a power of two
+     */
+    public OffHeapArena(
+        final int _blockSize,
+        final int _alignment) {
+      if (_blockSize <= 0) {
+        throw new IllegalArgumentException(
+          "Block size must be positive: " + _blockSize);
+      }
+      if ((_alignment <= 0) || (Integer.bitCount(_alignment) != 1)) {
+        throw new IllegalArgumentException(
+          "Alignment must be a power of two: " + _alignment);
+      }
+      this.blockSize = _blockSize;
+      this.alignment = _alignment;
+      this.blockAddresses = new long[OffHeapArena.INITIAL_BLOCKS];
+      this.blockSizes = new int[OffHeapArena.INITIAL_BLOCKS];
+      this.freeLists = new FreeList[OffHeapArena.INITIAL_BLOCKS];
+      this.blockCount = 0;
+      this.handles = new HandlePool(OffHeapArena.INITIAL_ALLOCATIONS);
+      this.allocationBlocks = new int[this.handles.capacity()];
+      this.allocationOffsets = new int[this.handles.capacity()];
+      this.allocationSizes = new int[this.handles.capacity()];
+      this.bytesUsed = 0L;
+      this.bytesReserved = 0L;
+    }
+
+    /**
+     * Allocates a range of at least the given size.
+     *
+     * <p>The content of the range is undefined.
+     *
+     * @param _size the requested size in bytes
+     * @return the handle of the allocation
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public int allocate(
+        final int _size) {
+      if (_size <= 0) {
+        throw new IllegalArgumentException(
+          "Allocation size must be positive: " + _size);
+      }
+      final int size = this.align(_size);
+
+      /* First fit over the existing blocks. */
+      int block = -1;
+      int offset = -1;
+      for (int index = 0; (index < this.blockCount) && (offset < 0);
+          index++) {
+        if (this.blockAddresses[index] != MemoryUtil.NULL) {
+          offset = this.freeLists[index].take(size);
+          block = index;
+        }
+      }
+
+      /* Reserve a new block when nothing fits. */
+      if (offset < 0) {
+        block = this.reserveBlock(
+          this.align(Math.max(this.blockSize, size)));
+        offset = this.freeLists[block].take(size);
+      }
+
+      final int handle = this.handles.allocate();
+      final int slot = this.handles.slot(handle);
+      if (slot >= this.allocationBlocks.length) {
+        this.growAllocations();
+      }
+      this.allocationBlocks[slot] = block;
+      this.allocationOffsets[slot] = offset;
+      this.allocationSizes[slot] = size;
+      this.bytesUsed += size;
+      return handle;
+    }
+
+    /**
+     * Frees an allocation.
+     *
+     * @param _handle the handle of the allocation
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void free(
+        final int _handle) {
+      final int slot = this.handles.release(_handle);
+      final int size = this.allocationSizes[slot];
+      this.freeLists[this.allocationBlocks[slot]]
+        .release(this.allocationOffsets[slot], size);
+      this.bytesUsed -= size;
+    }
+
+    /**
+     * Gets the current address of an allocation.
+     *
+     * <p>The address changes when {@link #defragment()} moves the
+     * allocation.
+     *
+     * @param _handle the handle of the allocation
+     * @return the address of the first byte of the allocation
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public long address(
+        final int _handle) {
+      final int slot = this.handles.slot(_handle);
+      return this.blockAddresses[this.allocationBlocks[slot]]
+        + this.allocationOffsets[slot];
+    }
+
+    /**
+     * Gets the aligned size of an allocation.
+     *
+     * @param _handle the handle of the allocation
+     * @return the size in bytes (a multiple of the alignment)
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int size(
+        final int _handle) {
+      return this.allocationSizes[this.handles.slot(_handle)];
+    }
+
+    /**
+     * Checks whether a handle identifies a live allocation.
+     *
+     * @param _handle the handle to check
+     * @return {@code true} if the allocation is live
+     */
+    public boolean isValid(
+        final int _handle) {
+      return this.handles.isValid(_handle);
+    }
+
+    /**
+     * Compacts the arena.
+     *
+     * <p>Live allocations are slid to the start of their block, then the
+     * allocations of the last blocks are moved into the free tail of the
+     * first ones, and blocks left empty are released. Handles remain valid
+     * but addresses change.
+     *
+     * @return the number of bytes moved
+     */
+    public long defragment() {
+      long moved = this.compactBlocks();
+      moved += this.evacuateBlocks();
+      moved += this.compactBlocks();
+      this.releaseEmptyBlocks();
+      return moved;
+    }
+
+    /**
+     * Releases every block.
+     *
+     * <p>The arena must not be used after this call.
+     */
+    public void close() {
+      for (int block = 0; block < this.blockCount; block++) {
+        if (this.blockAddresses[block] != MemoryUtil.NULL) {
+          MemoryUtil.nmemAlignedFree(this.blockAddresses[block]);
+          this.blockAddresses[block] = MemoryUtil.NULL;
+        }
+      }
+      this.blockCount = 0;
+      this.bytesUsed = 0L;
+      this.bytesReserved = 0L;
+    }
+
+    /**
+     * Gets the number of live allocations.
+     *
+     * @return the allocation count
+     */
+    public int allocationCount() {
+      return this.handles.size();
+    }
+
+    /**
+     * Gets the number of live blocks.
+     *
+     * @return the block count
+     */
+    public int blockCount() {
+      int count = 0;
+      for (int block = 0; block < this.blockCount; block++) {
+        if (this.blockAddresses[block] != MemoryUtil.NULL) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Gets the bytes handed out to live allocations, alignment padding
+     * included.
+     *
+     * @return the used bytes
+     */
+    public long bytesUsed() {
+      return this.bytesUsed;
+    }
+
+    /**
+     * Gets the bytes reserved from the system by live blocks.
+     *
+     * @return the reserved bytes
+     */
+    public long bytesReserved() {
+      return this.bytesReserved;
+    }
+
+    /**
+     * Gets the reserved bytes not handed out to any allocation.
+     *
+     * @return the free bytes
+     */
+    public long bytesFree() {
+      return this.bytesReserved - this.bytesUsed;
+    }
+
+    /**
+     * Gets the size of the largest free range, i.e. the largest allocation
+     * that can be served without reserving a new block.
+     *
+     * @return the largest free range in bytes
+     */
+    public long largestFreeRange() {
+      long largest = 0L;
+      for (int block = 0; block < this.blockCount; block++) {
+        if (this.blockAddresses[block] != MemoryUtil.NULL) {
+          largest = Math.max(largest, this.freeLists[block].largest());
+        }
+      }
+      return largest;
+    }
+
+    /**
+     * Gets the free bytes that are not part of the largest free range.
+     *
+     * <p>Zero means all free memory is contiguous; values close to
+     * {@link #bytesFree()} mean free memory is scattered in small holes and
+     * a {@link #defragment()} would help.
+     *
+     * @return the fragmented bytes
+     */
+    public long bytesFragmented() {
+      return this.bytesFree() - this.largestFreeRange();
+    }
+
+    /**
+     * Rounds a size up to the alignment.
+     *
+     * @param _size the size in bytes
+     * @return the aligned size
+     */
+    private int align(
+        final int _size) {
+      return Math.addExact(_size, this.alignment - 1) & -this.alignment;
+    }
+
+    /**
+     * Reserves a new block, reusing a released block slot if possible.
+     *
+     * @param _size the size in bytes of the block
+     * @return the index of the block
+     */
+    private int reserveBlock(
+        final int _size) {
+      int block = -1;
+      for (int index = 0; (index < this.blockCount) && (block < 0); index++) {
+        if (this.blockAddresses[index] == MemoryUtil.NULL) {
+          block = index;
+        }
+      }
+      if (block < 0) {
+        if (this.blockCount == this.blockAddresses.length) {
+          final int newCapacity = this.blockAddresses.length * 2;
+          this.blockAddresses
+            = Arrays.copyOf(this.blockAddresses, newCapacity);
+          this.blockSizes = Arrays.copyOf(this.blockSizes, newCapacity);
+          this.freeLists = Arrays.copyOf(this.freeLists, newCapacity);
+        }
+        block = this.blockCount++;
+      }
+
+      final long address = MemoryUtil.nmemAlignedAlloc(this.alignment, _size);
+      if (address == MemoryUtil.NULL) {
+        throw new OutOfMemoryError(
+          "Unable to reserve an arena block of " + _size + " bytes.");
+      }
+      this.blockAddresses[block] = address;
+      this.blockSizes[block] = _size;
+      if (this.freeLists[block] == null) {
+        this.freeLists[block] = new FreeList();
+      }
+      this.freeLists[block].reset(0, _size);
+      this.bytesReserved += _size;
+      return block;
+    }
+
+    /**
+     * Releases every block that holds no allocation, except the first
+     * live one, which is kept to avoid thrashing.
+     */
+    private void releaseEmptyBlocks() {
+      boolean keep = true;
+      for (int block = 0; block < this.blockCount; block++) {
+        if (this.blockAddresses[block] == MemoryUtil.NULL) {
+          continue;
+        }
+        final boolean empty
+          = this.freeLists[block].largest() == this.blockSizes[block];
+        if (empty && !keep) {
+          MemoryUtil.nmemAlignedFree(this.blockAddresses[block]);
+          this.blockAddresses[block] = MemoryUtil.NULL;
+          this.bytesReserved -= this.blockSizes[block];
+          this.blockSizes[block] = 0;
+        }
+        keep = false;
+      }
+    }
+
+    /**
+     * Slides the allocations of every block to its start.
+     *
+     * @return the number of bytes moved
+     */
+    private long compactBlocks() {
+      final long[] order = this.sortedAllocations();
+      final boolean[] occupied = new boolean[this.blockCount];
+      long moved = 0L;
+      int index = 0;
+      while (index < order.length) {
+        final int block
+          = this.allocationBlocks[OffHeapArena.slot(order[index])];
+        final long base = this.blockAddresses[block];
+        int cursor = 0;
+        while ((index < order.length)
+            && (this.allocationBlocks[OffHeapArena.slot(order[index])]
+                == block)) {
+          final int slot = OffHeapArena.slot(order[index]);
+          final int offset = this.allocationOffsets[slot];
+          final int size = this.allocationSizes[slot];
+          if (offset != cursor) {
+            LibCString.nmemmove(base + cursor, base + offset, size);
+            this.allocationOffsets[slot] = cursor;
+            moved += size;
+          }
+          cursor += size;
+          index++;
+        }
+        this.freeLists[block].reset(cursor, this.blockSizes[block] - cursor);
+        occupied[block] = true;
+      }
+      /* Blocks without allocations are entirely free. */
+      for (int block = 0; block < this.blockCount; block++) {
+        if ((this.blockAddresses[block] != MemoryUtil.NULL)
+         && (!occupied[block])) {
+          this.freeLists[block].reset(0, this.blockSizes[block]);
+        }
+      }
+      return moved;
+    }
+
+    /**
+     * Moves allocations from the last blocks into free ranges of earlier
+     * blocks.
+     *
+     * @return the number of bytes moved
+     */
+    private long evacuateBlocks() {
+      final long[] order = this.sortedAllocations();
+      long moved = 0L;
+      for (int index = order.length - 1; index >= 0; index--) {
+        final int slot = OffHeapArena.slot(order[index]);
+        final int source = this.allocationBlocks[slot];
+        final int size = this.allocationSizes[slot];
+        for (int target = 0; target < source; target++) {
+          if (this.blockAddresses[target] == MemoryUtil.NULL) {
+            continue;
+          }
+          final int offset = this.freeLists[target].take(size);
+          if (offset >= 0) {
+            MemoryUtil.memCopy(
+              this.blockAddresses[source] + this.allocationOffsets[slot],
+              this.blockAddresses[target] + offset,
+              size
+            );
+            this.freeLists[source]
+              .release(this.allocationOffsets[slot], size);
+            this.allocationBlocks[slot] = target;
+            this.allocationOffsets[slot] = offset;
+            moved += size;
+            break;
+          }
+        }
+      }
+      return moved;
+    }
+
+    /**
+     * Lists the live allocations ordered by block and then by offset.
+     *
+     * <p>Each entry packs the offset of the allocation in the high 32 bits
+     * and its handle slot in the low 32 bits (see {@link #slot(long)}).
+     * Entries are bucketed by block first, so each block only sorts its own
+     * allocations.
+     *
+     * @return the sorted allocations
+     */
+    private long[] sortedAllocations() {
+      final int[] starts = new int[this.blockCount + 1];
+      for (int slot = 0; slot < this.handles.slotCount(); slot++) {
+        if (this.handles.isUsed(slot)) {
+          starts[this.allocationBlocks[slot] + 1]++;
+        }
+      }
+      for (int block = 0; block < this.blockCount; block++) {
+        starts[block + 1] += starts[block];
+      }
+
+      final long[] order = new long[this.handles.size()];
+      final int[] cursors = Arrays.copyOf(starts, this.blockCount);
+      for (int slot = 0; slot < this.handles.slotCount(); slot++) {
+        if (this.handles.isUsed(slot)) {
+          final long offset = this.allocationOffsets[slot];
+          order[cursors[this.allocationBlocks[slot]]++]
+            = (offset << OffHeapArena.OFFSET_SHIFT) | slot;
+        }
+      }
+      for (int block = 0; block < this.blockCount; block++) {
+        Arrays.sort(order, starts[block], starts[block + 1]);
+      }
+      return order;
+    }
+
+    /**
+     * Extracts the handle slot of an entry built by
+     * {@link #sortedAllocations()}.
+     *
+     * @param _entry the packed offset and slot
+     * @return the handle slot
+     */
+    private static int slot(
+        final long _entry) {
+      return (int) (_entry & OffHeapArena.SLOT_MASK);
+    }
+
+    /**
+     * Grows the per-allocation arrays to the handle pool capacity.
+     */
+    private void growAllocations() {
+      final int newCapacity = this.handles.capacity();
+      this.allocationBlocks
+        = Arrays.copyOf(this.allocationBlocks, newCapacity);
+      this.allocationOffsets
+        = Arrays.copyOf(this.allocationOffsets, newCapacity);
+      this.allocationSizes
+        = Arrays.copyOf(this.allocationSizes, newCapacity);
+    }
+
+    /**
+     * Sorted list of the free ranges of a block.
+     *
+     * <p>Ranges never overlap nor touch: releasing a range merges it with
+     * its neighbours.
+     */
+    private static final class FreeList {
+
+      /**
+       * Initial number of ranges.
+       */
+      private static final int INITIAL_CAPACITY = 16;
+
+      /**
+       * Start offset of every range, ascending.
+       */
+      private int[] offsets;
+
+      /**
+       * Size of every range.
+       */
+      private int[] sizes;
+
+      /**
+       * Number of ranges.
+       */
+      private int count;
+
+      /**
+       * Creates an empty free list.
+       */
+      FreeList() {
+        this.offsets = new int[FreeList.INITIAL_CAPACITY];
+        this.sizes = new int[FreeList.INITIAL_CAPACITY];
+        this.count = 0;
+      }
+
+      /**
+       * Replaces the content with a single range.
+       *
+       * @param _offset the start of the range
+       * @param _size the size of the range, may be zero
+       */
+      void reset(
+          final int _offset,
+          final int _size) {
+        this.count = 0;
+        if (_size > 0) {
+          this.offsets[0] = _offset;
+          this.sizes[0] = _size;
+          this.count = 1;
+        }
+      }
+
+      /**
+       * Takes the given size from the first range large enough.
+       *
+       * @param _size the size in bytes
+       * @return the offset of the taken range, or -1 if nothing fits
+       */
+      int take(
+          final int _size) {
+        for (int index = 0; index < this.count; index++) {
+          if (this.sizes[index] >= _size) {
+            final int offset = this.offsets[index];
+            if (this.sizes[index] == _size) {
+              this.remove(index);
+            } else {
+              this.offsets[index] += _size;
+              this.sizes[index] -= _size;
+            }
+            return offset;
+          }
+        }
+        return -1;
+      }
+
+      /**
+       * Gives a range back, merging it with adjacent free ranges.
+       *
+       * @param _offset the start of the range
+       * @param _size the size of the range
+       */
+      void release(
+          final int _offset,
+          final int _size) {
+        /* Position of the first range starting after the released one. */
+        int low = 0;
+        int high = this.count;
+        while (low < high) {
+          final int middle = (low + high) >>> 1;
+          if (this.offsets[middle] < _offset) {
+            low = middle + 1;
+          } else {
+            high = middle;
+          }
+        }
+        final int next = low;
+        final int previous = next - 1;
+        final boolean mergePrevious = (previous >= 0)
+          && ((this.offsets[previous] + this.sizes[previous]) == _offset);
+        final boolean mergeNext = (next < this.count)
+          && ((_offset + _size) == this.offsets[next]);
+
+        if (mergePrevious && mergeNext) {
+          this.sizes[previous] += _size + this.sizes[next];
+          this.remove(next);
+        } else if (mergePrevious) {
+          this.sizes[previous] += _size;
+        } else if (mergeNext) {
+          this.offsets[next] = _offset;
+          this.sizes[next] += _size;
+        } else {
+          this.insert(next, _offset, _size);
+        }
+      }
+
+      /**
+       * Gets the size of the largest range.
+       *
+       * @return the largest range in bytes
+       */
+      int largest() {
+        int largest = 0;
+        for (int index = 0; index < this.count; index++) {
+          largest = Math.max(largest, this.sizes[index]);
+        }
+        return largest;
+      }
+
+      /**
+       * Removes the range at the given position.
+       *
+       * @param _index the position of the range
+       */
+      private void remove(
+          final int _index) {
+        final int tail = this.count - _index - 1;
+        System.arraycopy(this.offsets, _index + 1, this.offsets, _index, tail);
+        System.arraycopy(this.sizes, _index + 1, this.sizes, _index, tail);
+        this.count--;
+      }
+
+      /**
+       * Inserts a range at the given position.
+       *
+       * @param _index the position of the range
+       * @param _offset the start of the range
+       * @param _size the size of the range
+       */
+      private void insert(
+          final int _index,
+          final int _offset,
+          final int _size) {
+        if (this.count == this.offsets.length) {
+          this.offsets = Arrays.copyOf(this.offsets, this.count * 2);
+          this.sizes = Arrays.copyOf(this.sizes, this.count * 2);
+        }
+        final int tail = this.count - _index;
+        System.arraycopy(this.offsets, _index, this.offsets, _index + 1, tail);
+        System.arraycopy(this.sizes, _index, this.sizes, _index + 1, tail);
+        this.offsets[_index] = _offset;
+        this.sizes[_index] = _size;
+        this.count++;
+      }
+
+    }
+
+  }
@@ -0,0 +1,912 @@
+package es.noa.rad.game.engine.physics;
+
+import java.util.Arrays;
+
+import org.joml.Vector3fc;
+
+import es.noa.rad.game.engine.util.LongIntMap;
+
+  /**
+   * Contact manifolds of a step and their sequential impulse solver.
+   *
+   * <p>A manifold holds the contact points between two bodies; every point
+   * has its own normal, pointing from the first body to the second, and
+   * two tangents for friction. All data lives in flat arrays, manifolds
+   * and points indexed separately.
+   *
+   * <p>The solver accumulates impulses per point and clamps the totals:
+   * normal impulses never pull, friction impulses stay within the friction
+   * cone (approximated by a box). Points are matched with the points of
+   * the same pair in the previous step by their position on the first
+   * body, and matched points start from the impulses they ended with
+   * (warm starting), which is what lets stacks come to rest.
+   *
+   * <p>{@link #solve} only touches the manifolds it is given and the
+   * velocities of dynamic bodies, so disjoint islands can be solved
+   * concurrently.
+   */
+  final class ContactSolver {
+
+    /**
+     * Fraction of the penetration corrected per step.
+     */
+    private static final float BAUMGARTE = 0.2f;
+
+    /**
+     * Penetration tolerated without correction.
+     */
+    private static final float SLOP = 0.005f;
+
+    /**
+     * Closing speed above which restitution applies.
+     */
+    private static final float RESTITUTION_THRESHOLD = 1.0f;
+
+    /**
+     * Squared distance within which a point matches a point of the
+     * previous step.
+     */
+    private static final float MATCH_DISTANCE_SQUARED = 0.0025f;
+
+    /**
+     * Threshold on a normal component above which the first tangent is
+     * built from the other two components (1 / sqrt(3)).
+     */
+    private static final float TANGENT_THRESHOLD = 0.57735f;
+
+    /**
+     * Number of bits the first body is shifted by in a pair key.
+     */
+    private static final int KEY_SHIFT = 32;
+
+    /**
+     * Number of points a manifold holds at most.
+     */
+    private static final int MAXIMUM_POINTS = 4;
+
+    /**
+     * Row of the normal constraint of a point.
+     */
+    private static final int NORMAL_ROW = 0;
+
+    /**
+     * Row of the first friction constraint of a point.
+     */
+    private static final int TANGENT_ROW = 1;
+
+    /**
+     * Row of the second friction constraint of a point.
+     */
+    private static final int BITANGENT_ROW = 2;
+
+    /**
+     * Offset of {@code rB x d} in a Jacobian row.
+     */
+    private static final int ANGULAR_B = 3;
+
+    /**
+     * Offset of {@code I^-1 (rA x d)} in a Jacobian row.
+     */
+    private static final int INERTIA_A = 6;
+
+    /**
+     * Offset of {@code I^-1 (rB x d)} in a Jacobian row.
+     */
+    private static final int INERTIA_B = 9;
+
+    /**
+     * Number of floats of a Jacobian row.
+     */
+    private static final int ROW_STRIDE = 12;
+
+    /**
+     * Number of floats of the Jacobian of a point.
+     */
+    private static final int POINT_STRIDE = 36;
+
+    /**
+     * World the bodies belong to.
+     */
+    private final PhysicsWorld world;
+
+    /**
+     * First body of every manifold.
+     */
+    private int[] bodiesA;
+
+    /**
+     * Second body of every manifold.
+     */
+    private int[] bodiesB;
+
+    /**
+     * First point of every manifold.
+     */
+    private int[] starts;
+
+    /**
+     * Number of points of every manifold.
+     */
+    private int[] counts;
+
+    /**
+     * Pair key of every manifold.
+     */
+    private long[] keys;
+
+    /**
+     * Friction coefficient of every manifold.
+     */
+    private float[] frictions;
+
+    /**
+     * Restitution of every manifold.
+     */
+    private float[] restitutions;
+
+    /**
+     * Number of manifolds.
+     */
+    private int manifoldCount;
+
+    /**
+     * World position of every point.
+     */
+    private float[] points;
+
+    /**
+     * Normal of every point.
+     */
+    private float[] normals;
+
+    /**
+     * First friction direction of every point.
+     */
+    private float[] tangents;
+
+    /**
+     * Second friction direction of every point.
+     */
+    private float[] bitangents;
+
+    /**
+     * Offset of every point from the first body.
+     */
+    private float[] armsA;
+
+    /**
+     * Offset of every point from the second body.
+     */
+    private float[] armsB;
+
+    /**
+     * Jacobian of the three rows of every point: for each row, the arm
+     * crossed with the direction and that product through the inverse
+     * inertia, for both bodies.
+     */
+    private float[] jacobians;
+
+    /**
+     * Position of every point in the local frame of the first body.
+     */
+    private float[] anchors;
+
+    /**
+     * Penetration of every point, negative while separated.
+     */
+    private float[] depths;
+
+    /**
+     * Accumulated normal impulse of every point.
+     */
+    private float[] normalImpulses;
+
+    /**
+     * Accumulated impulse along the first tangent of every point.
+     */
+    private float[] tangentImpulses;
+
+    /**
+     * Accumulated impulse along the second tangent of every point.
+     */
+    private float[] bitangentImpulses;
+
+    /**
+     * Effective mass along the normal of every point.
+     */
+    private float[] normalMasses;
+
+    /**
+     * Effective mass along the first tangent of every point.
+     */
+    private float[] tangentMasses;
+
+    /**
+     * Effective mass along the second tangent of every point.
+     */
+    private float[] bitangentMasses;
+
+    /**
+     * Target normal velocity of every point.
+     */
+    private float[] biases;
+
+    /**
+     * Number of points.
+     */
+    private int pointCount;
+
+    /**
+     * Manifolds of the previous step by pair key.
+     */
+    private final LongIntMap previousManifolds;
+
+    /**
+     * First point of every manifold of the previous step.
+     */
+    private int[] previousStarts;
+
+    /**
+     * Number of points of every manifold of the previous step.
+     */
+    private int[] previousCounts;
+
+    /**
+     * Local anchor of every point of the previous step.
+     */
+    private float[] previousAnchors;
+
+    /**
+     * Final normal impulse of every point of the previous step.
+     */
+    private float[] previousNormalImpulses;
+
+    /**
+     * Final friction impulse of every point of the previous step, as a
+     * world vector.
+     */
+    private float[] previousFrictionImpulses;
+
+    /**
+     * Creates an empty set of manifolds.
+     *
+     * @param _world the world the bodies belong to
+     * @param _capacity the number of manifolds before growing
+     */
+    ContactSolver(
+        final PhysicsWorld _world,
+        final int _capacity) {
+      this.world = _world;
+      final int capacity = Math.max(1, _capacity);
+      this.bodiesA = new int[capacity];
+      this.bodiesB = new int[capacity];
+      this.starts = new int[capacity];
+      this.counts = new int[capacity];
+      this.keys = new long[capacity];
+      this.frictions = new float[capacity];
+      this.restitutions = new float[capacity];
+      this.previousStarts = new int[capacity];
+      this.previousCounts = new int[capacity];
+      this.previousManifolds = new LongIntMap(capacity);
+      this.growPoints(capacity * ContactSolver.MAXIMUM_POINTS);
+      this.previousAnchors = new float[this.anchors.length];
+      this.previousNormalImpulses = new float[this.normalImpulses.length];
+      this.previousFrictionImpulses = new float[this.anchors.length];
+    }
+
+    /**
+     * Removes the manifolds of the previous step, keeping them for warm
+     * starting.
+     */
+    void begin() {
+      this.manifoldCount = 0;
+      this.pointCount = 0;
+    }
+
+    /**
+     * Starts a manifold between two bodies; points are added with
+     * {@link #add} and the manifold is closed with {@link #endManifold()}.
+     *
+     * @param _bodyA the slot of the first body
+     * @param _bodyB the slot of the second body
+     */
+    void beginManifold(
+        final int _bodyA,
+        final int _bodyB) {
+      if (this.manifoldCount == this.bodiesA.length) {
+        this.growManifolds(this.manifoldCount * 2);
+      }
+      if ((this.pointCount + ContactSolver.MAXIMUM_POINTS)
+          > this.depths.length) {
+        this.growPoints(this.depths.length * 2);
+      }
+      final int manifold = this.manifoldCount;
+      this.bodiesA[manifold] = _bodyA;
+      this.bodiesB[manifold] = _bodyB;
+      this.starts[manifold] = this.pointCount;
+      this.counts[manifold] = 0;
+      this.keys[manifold] = (((long) _bodyA) << ContactSolver.KEY_SHIFT)
+        | Integer.toUnsignedLong(_bodyB);
+      final float[] friction = this.world.frictions();
+      final float[] restitution = this.world.restitutions();
+      this.frictions[manifold]
+        = (float) Math.sqrt(friction[_bodyA] * friction[_bodyB]);
+      this.restitutions[manifold]
+        = Math.max(restitution[_bodyA], restitution[_bodyB]);
+    }
+
+    /**
+     * Adds a point to the open manifold. Points beyond the fourth are
+     * ignored.
+     *
+     * @param _point the world position of the point
+     * @param _normal the unit normal, from the first body to the second
+     * @param _depth the penetration, negative while separated
+     */
+    void add(
+        final Vector3fc _point,
+        final Vector3fc _normal,
+        final float _depth) {
+      final int manifold = this.manifoldCount;
+      if (this.counts[manifold] == ContactSolver.MAXIMUM_POINTS) {
+        return;
+      }
+      final int point = this.pointCount++;
+      this.counts[manifold]++;
+      final int v = point * PhysicsWorld.VECTOR_STRIDE;
+      this.points[v] = _point.x();
+      this.points[v + 1] = _point.y();
+      this.points[v + 2] = _point.z();
+      final float nx = _normal.x();
+      final float ny = _normal.y();
+      final float nz = _normal.z();
+      this.normals[v] = nx;
+      this.normals[v + 1] = ny;
+      this.normals[v + 2] = nz;
+      this.depths[point] = _depth;
+
+      /* Friction directions perpendicular to the normal. */
+      float tx;
+      float ty;
+      float tz;
+      if (Math.abs(nx) >= ContactSolver.TANGENT_THRESHOLD) {
+        tx = ny;
+        ty = -nx;
+        tz = 0.0f;
+      } else {
+        tx = 0.0f;
+        ty = nz;
+        tz = -ny;
+      }
+      final float length
+        = (float) (1.0D / Math.sqrt((tx * tx) + (ty * ty) + (tz * tz)));
+      tx *= length;
+      ty *= length;
+      tz *= length;
+      this.tangents[v] = tx;
+      this.tangents[v + 1] = ty;
+      this.tangents[v + 2] = tz;
+      this.bitangents[v] = (ny * tz) - (nz * ty);
+      this.bitangents[v + 1] = (nz * tx) - (nx * tz);
+      this.bitangents[v + 2] = (nx * ty) - (ny * tx);
+
+      /* Anchor on the first body: R^T (p - x). */
+      final int body = this.bodiesA[manifold];
+      final float[] position = this.world.positions();
+      final float[] rotation = this.world.rotations();
+      final int b = body * PhysicsWorld.VECTOR_STRIDE;
+      final int m = body * PhysicsWorld.MATRIX_STRIDE;
+      final float dx = _point.x() - position[b];
+      final float dy = _point.y() - position[b + 1];
+      final float dz = _point.z() - position[b + 2];
+      for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+        final int column = m + (axis * PhysicsWorld.VECTOR_STRIDE);
+        this.anchors[v + axis] = (rotation[column] * dx)
+          + (rotation[column + 1] * dy) + (rotation[column + 2] * dz);
+      }
+    }
+
+    /**
+     * Closes the open manifold, dropping it if it has no point, and warm
+     * starts its points from the previous step.
+     */
+    void endManifold() {
+      final int manifold = this.manifoldCount;
+      if (this.counts[manifold] == 0) {
+        return;
+      }
+      this.manifoldCount++;
+
+      final int start = this.starts[manifold];
+      final int end = start + this.counts[manifold];
+      final int previous
+        = this.previousManifolds.get(this.keys[manifold], -1);
+      for (int point = start; point < end; point++) {
+        this.normalImpulses[point] = 0.0f;
+        this.tangentImpulses[point] = 0.0f;
+        this.bitangentImpulses[point] = 0.0f;
+        if (previous < 0) {
+          continue;
+        }
+        final int v = point * PhysicsWorld.VECTOR_STRIDE;
+        int match = -1;
+        float best = ContactSolver.MATCH_DISTANCE_SQUARED;
+        final int previousStart = this.previousStarts[previous];
+        final int previousEnd = previousStart + this.previousCounts[previous];
+        for (int old = previousStart; old < previousEnd; old++) {
+          final int o = old * PhysicsWorld.VECTOR_STRIDE;
+          final float dx = this.anchors[v] - this.previousAnchors[o];
+          final float dy = this.anchors[v + 1] - this.previousAnchors[o + 1];
+          final float dz = this.anchors[v + 2] - this.previousAnchors[o + 2];
+          final float distance = (dx * dx) + (dy * dy) + (dz * dz);
+          if (distance < best) {
+            best = distance;
+            match = old;
+          }
+        }
+        if (match >= 0) {
+          final int o = match * PhysicsWorld.VECTOR_STRIDE;
+          this.normalImpulses[point] = this.previousNormalImpulses[match];
+          this.tangentImpulses[point] = ContactSolver.dot(
+            this.previousFrictionImpulses, o, this.tangents, v);
+          this.bitangentImpulses[point] = ContactSolver.dot(
+            this.previousFrictionImpulses, o, this.bitangents, v);
+        }
+      }
+    }
+
+    /**
+     * Solves the manifolds of an island: computes their effective masses
+     * and targets, applies the warm start impulses and iterates, sweeping
+     * the manifolds in alternating directions.
+     *
+     * @param _order the manifold indices
+     * @param _from the position of the first manifold in the order
+     * @param _to the position after the last manifold
+     * @param _iterations the number of velocity iterations
+     */
+    void solve(
+        final int[] _order,
+        final int _from,
+        final int _to,
+        final int _iterations) {
+      for (int index = _from; index < _to; index++) {
+        this.prepare(_order[index]);
+      }
+      /* Alternate the sweep so the order does not bias the result. */
+      for (int iteration = 0; iteration < _iterations; iteration++) {
+        if ((iteration % 2) == 0) {
+          for (int index = _from; index < _to; index++) {
+            this.solveManifold(_order[index]);
+          }
+        } else {
+          for (int index = _to - 1; index >= _from; index--) {
+            this.solveManifold(_order[index]);
+          }
+        }
+      }
+    }
+
+    /**
+     * Keeps the final impulses of the step for the next one.
+     */
+    void end() {
+      if (this.manifoldCount > this.previousStarts.length) {
+        this.previousStarts = new int[this.bodiesA.length];
+        this.previousCounts = new int[this.bodiesA.length];
+      }
+      if (this.anchors.length > this.previousAnchors.length) {
+        this.previousAnchors = new float[this.anchors.length];
+        this.previousNormalImpulses = new float[this.normalImpulses.length];
+        this.previousFrictionImpulses = new float[this.anchors.length];
+      }
+      this.previousManifolds.clear();
+      for (int manifold = 0; manifold < this.manifoldCount; manifold++) {
+        this.previousManifolds.put(this.keys[manifold], manifold);
+      }
+      System.arraycopy(this.starts, 0, this.previousStarts, 0,
+        this.manifoldCount);
+      System.arraycopy(this.counts, 0, this.previousCounts, 0,
+        this.manifoldCount);
+      System.arraycopy(this.anchors, 0, this.previousAnchors, 0,
+        this.pointCount * PhysicsWorld.VECTOR_STRIDE);
+      System.arraycopy(this.normalImpulses, 0, this.previousNormalImpulses,
+        0, this.pointCount);
+      for (int point = 0; point < this.pointCount; point++) {
+        final int v = point * PhysicsWorld.VECTOR_STRIDE;
+        final float tangent = this.tangentImpulses[point];
+        final float bitangent = this.bitangentImpulses[point];
+        for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+          this.previousFrictionImpulses[v + axis]
+            = (this.tangents[v + axis] * tangent)
+            + (this.bitangents[v + axis] * bitangent);
+        }
+      }
+    }
+
+    /**
+     * Gets the number of manifolds.
+     *
+     * @return the manifold count
+     */
+    int manifoldCount() {
+      return this.manifoldCount;
+    }
+
+    /**
+     * Gets the number of points.
+     *
+     * @return the point count
+     */
+    int pointCount() {
+      return this.pointCount;
+    }
+
+    /**
+     * Gets the first body of every manifold.
+     *
+     * @return the body slots, by manifold
+     */
+    int[] bodiesA() {
+      return this.bodiesA;
+    }
+
+    /**
+     * Gets the second body of every manifold.
+     *
+     * @return the body slots, by manifold
+     */
+    int[] bodiesB() {
+      return this.bodiesB;
+    }
+
+    /**
+     * Computes the arms, Jacobians, effective masses and target velocity of
+     * the points of a manifold, then applies their warm start impulses.
+     *
+     * @param _manifold the manifold
+     */
+    private void prepare(
+        final int _manifold) {
+      final float[] position = this.world.positions();
+      final float inverseDt = 1.0f / this.world.deltaTime();
+      final int bodyA = this.bodiesA[_manifold];
+      final int bodyB = this.bodiesB[_manifold];
+      final int a = bodyA * PhysicsWorld.VECTOR_STRIDE;
+      final int b = bodyB * PhysicsWorld.VECTOR_STRIDE;
+      final int start = this.starts[_manifold];
+      final int end = start + this.counts[_manifold];
+      for (int point = start; point < end; point++) {
+        final int v = point * PhysicsWorld.VECTOR_STRIDE;
+        final int j = point * ContactSolver.POINT_STRIDE;
+        final int jt = j + ContactSolver.ROW_STRIDE;
+        final int jb = jt + ContactSolver.ROW_STRIDE;
+        for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+          this.armsA[v + axis] = this.points[v + axis] - position[a + axis];
+          this.armsB[v + axis] = this.points[v + axis] - position[b + axis];
+        }
+        this.normalMasses[point] = this.jacobian(_manifold, point,
+          ContactSolver.NORMAL_ROW, this.normals);
+        this.tangentMasses[point] = this.jacobian(_manifold, point,
+          ContactSolver.TANGENT_ROW, this.tangents);
+        this.bitangentMasses[point] = this.jacobian(_manifold, point,
+          ContactSolver.BITANGENT_ROW, this.bitangents);
+
+        /* Close the gap if separated, else push out part of the depth. */
+        final float depth = this.depths[point];
+        float bias;
+        if (depth < 0.0f) {
+          bias = depth * inverseDt;
+        } else {
+          bias = ContactSolver.BAUMGARTE * inverseDt
+            * Math.max(0.0f, depth - ContactSolver.SLOP);
+          final float closing
+            = this.velocity(bodyA, bodyB, v, j, this.normals);
+          if (closing < -ContactSolver.RESTITUTION_THRESHOLD) {
+            bias = Math.max(bias, -this.restitutions[_manifold] * closing);
+          }
+        }
+        this.biases[point] = bias;
+
+        this.apply(bodyA, bodyB, v, j, this.normals,
+          this.normalImpulses[point]);
+        this.apply(bodyA, bodyB, v, jt, this.tangents,
+          this.tangentImpulses[point]);
+        this.apply(bodyA, bodyB, v, jb, this.bitangents,
+          this.bitangentImpulses[point]);
+      }
+    }
+
+    /**
+     * Runs one velocity iteration over the points of a manifold, friction
+     * first.
+     *
+     * @param _manifold the manifold
+     */
+    private void solveManifold(
+        final int _manifold) {
+      final float friction = this.frictions[_manifold];
+      final int bodyA = this.bodiesA[_manifold];
+      final int bodyB = this.bodiesB[_manifold];
+      final int start = this.starts[_manifold];
+      final int end = start + this.counts[_manifold];
+      for (int point = start; point < end; point++) {
+        final int v = point * PhysicsWorld.VECTOR_STRIDE;
+        final int j = point * ContactSolver.POINT_STRIDE;
+        final int jt = j + ContactSolver.ROW_STRIDE;
+        final int jb = jt + ContactSolver.ROW_STRIDE;
+        final float limit = friction * this.normalImpulses[point];
+
+        float old = this.tangentImpulses[point];
+        float impulse = old - (this.tangentMasses[point]
+          * this.velocity(bodyA, bodyB, v, jt, this.tangents));
+        impulse = Math.max(-limit, Math.min(limit, impulse));
+        this.tangentImpulses[point] = impulse;
+        this.apply(bodyA, bodyB, v, jt, this.tangents, impulse - old);
+
+        old = this.bitangentImpulses[point];
+        impulse = old - (this.bitangentMasses[point]
+          * this.velocity(bodyA, bodyB, v, jb, this.bitangents));
+        impulse = Math.max(-limit, Math.min(limit, impulse));
+        this.bitangentImpulses[point] = impulse;
+        this.apply(bodyA, bodyB, v, jb, this.bitangents, impulse - old);
+
+        old = this.normalImpulses[point];
+        impulse = old + (this.normalMasses[point] * (this.biases[point]
+          - this.velocity(bodyA, bodyB, v, j, this.normals)));
+        impulse = Math.max(0.0f, impulse);
+        this.normalImpulses[point] = impulse;
+        this.apply(bodyA, bodyB, v, j, this.normals, impulse - old);
+      }
+    }
+
+    /**
+     * Computes the Jacobian of a constraint row, {@code r x d} and
+     * {@code I^-1 (r x d)} for both bodies, and returns its effective
+     * mass.
+     *
+     * @param _manifold the manifold
+     * @param _point the point
+     * @param _row the row: normal, tangent or bitangent
+     * @param _directions the direction array of the row
+     * @return the effective mass of the row
+     */
+    private float jacobian(
+        final int _manifold,
+        final int _point,
+        final int _row,
+        final float[] _directions) {
+      final float[] inverseMass = this.world.inverseMasses();
+      final float[] inertia = this.world.inverseInertias();
+      final float[] rows = this.jacobians;
+      final int bodyA = this.bodiesA[_manifold];
+      final int bodyB = this.bodiesB[_manifold];
+      final int v = _point * PhysicsWorld.VECTOR_STRIDE;
+      final int j = (_point * ContactSolver.POINT_STRIDE)
+        + (_row * ContactSolver.ROW_STRIDE);
+      ContactSolver.cross(this.armsA, v, _directions, rows, j);
+      ContactSolver.cross(this.armsB, v, _directions, rows,
+        j + ContactSolver.ANGULAR_B);
+      ContactSolver.multiply(inertia, bodyA * PhysicsWorld.MATRIX_STRIDE,
+        rows, j, j + ContactSolver.INERTIA_A);
+      ContactSolver.multiply(inertia, bodyB * PhysicsWorld.MATRIX_STRIDE,
+        rows, j + ContactSolver.ANGULAR_B, j + ContactSolver.INERTIA_B);
+      return 1.0f / (inverseMass[bodyA] + inverseMass[bodyB]
+        + ContactSolver.dot(rows, j, rows, j + ContactSolver.INERTIA_A)
+        + ContactSolver.dot(rows, j + ContactSolver.ANGULAR_B, rows,
+          j + ContactSolver.INERTIA_B));
+    }
+
+    /**
+     * Computes the velocity of the second body relative to the first at a
+     * point, along the direction of a row.
+     *
+     * @param _bodyA the slot of the first body
+     * @param _bodyB the slot of the second body
+     * @param _point the index of the point in the vector arrays
+     * @param _row the index of the row in the Jacobian array
+     * @param _directions the direction array of the row
+     * @return the relative velocity along the direction
+     */
+    private float velocity(
+        final int _bodyA,
+        final int _bodyB,
+        final int _point,
+        final int _row,
+        final float[] _directions) {
+      final float[] linear = this.world.velocities();
+      final float[] angular = this.world.angularVelocities();
+      final float[] rows = this.jacobians;
+      final int a = _bodyA * PhysicsWorld.VECTOR_STRIDE;
+      final int b = _bodyB * PhysicsWorld.VECTOR_STRIDE;
+      final int v = _point;
+      final int ja = _row;
+      final int jb = _row + ContactSolver.ANGULAR_B;
+      /* d . (vB - vA) + (rB x d) . wB - (rA x d) . wA */
+      return (_directions[v] * (linear[b] - linear[a]))
+        + (_directions[v + 1] * (linear[b + 1] - linear[a + 1]))
+        + (_directions[v + 2] * (linear[b + 2] - linear[a + 2]))
+        + (rows[jb] * angular[b]) + (rows[jb + 1] * angular[b + 1])
+        + (rows[jb + 2] * angular[b + 2])
+        - (rows[ja] * angular[a]) - (rows[ja + 1] * angular[a + 1])
+        - (rows[ja + 2] * angular[a + 2]);
+    }
+
+    /**
+     * Applies an impulse along the direction of a row: away from the first
+     * body, towards the second. Static bodies are left untouched.
+     *
+     * @param _bodyA the slot of the first body
+     * @param _bodyB the slot of the second body
+     * @param _point the index of the point in the vector arrays
+     * @param _row the index of the row in the Jacobian array
+     * @param _directions the direction array of the row
+     * @param _impulse the impulse magnitude
+     */
+    private void apply(
+        final int _bodyA,
+        final int _bodyB,
+        final int _point,
+        final int _row,
+        final float[] _directions,
+        final float _impulse) {
+      final float[] inverseMass = this.world.inverseMasses();
+      final float[] linear = this.world.velocities();
+      final float[] angular = this.world.angularVelocities();
+      final float[] rows = this.jacobians;
+      if (inverseMass[_bodyA] > 0.0f) {
+        final int a = _bodyA * PhysicsWorld.VECTOR_STRIDE;
+        final int ia = _row + ContactSolver.INERTIA_A;
+        final float scaled = inverseMass[_bodyA] * _impulse;
+        for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+          linear[a + axis] -= _directions[_point + axis] * scaled;
+          angular[a + axis] -= rows[ia + axis] * _impulse;
+        }
+      }
+      if (inverseMass[_bodyB] > 0.0f) {
+        final int b = _bodyB * PhysicsWorld.VECTOR_STRIDE;
+        final int ib = _row + ContactSolver.INERTIA_B;
+        final float scaled = inverseMass[_bodyB] * _impulse;
+        for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+          linear[b + axis] += _directions[_point + axis] * scaled;
+          angular[b + axis] += rows[ib + axis] * _impulse;
+        }
+      }
+    }
+
+    /**
+     * Stores {@code r x d} for an arm and a direction stored in arrays at
+     * the same index.
+     *
+     * @param _arms the arm array
+     * @param _offset the index of the arm and of the direction
+     * @param _directions the direction array
+     * @param _dest the array receiving the product
+     * @param _destOffset the index of the product
+     */
+    private static void cross(
+        final float[] _arms,
+        final int _offset,
+        final float[] _directions,
+        final float[] _dest,
+        final int _destOffset) {
+      final float rx = _arms[_offset];
+      final float ry = _arms[_offset + 1];
+      final float rz = _arms[_offset + 2];
+      final float dx = _directions[_offset];
+      final float dy = _directions[_offset + 1];
+      final float dz = _directions[_offset + 2];
+      _dest[_destOffset] = (ry * dz) - (rz * dy);
+      _dest[_destOffset + 1] = (rz * dx) - (rx * dz);
+      _dest[_destOffset + 2] = (rx * dy) - (ry * dx);
+    }
+
+    /**
+     * Multiplies a vector by a column-major 3x3 matrix.
+     *
+     * @param _matrix the matrix array
+     * @param _matrixOffset the index of the matrix
+     * @param _vectors the array holding the vector and receiving the
+     *     product
+     * @param _from the index of the vector
+     * @param _to the index of the product
+     */
+    private static void multiply(
+        final float[] _matrix,
+        final int _matrixOffset,
+        final float[] _vectors,
+        final int _from,
+        final int _to) {
+      final float x = _vectors[_from];
+      final float y = _vectors[_from + 1];
+      final float z = _vectors[_from + 2];
+      final int c1 = _matrixOffset + PhysicsWorld.VECTOR_STRIDE;
+      final int c2 = c1 + PhysicsWorld.VECTOR_STRIDE;
+      for (int row = 0; row < PhysicsWorld.VECTOR_STRIDE; row++) {
+        _vectors[_to + row] = (_matrix[_matrixOffset + row] * x)
+          + (_matrix[c1 + row] * y) + (_matrix[c2 + row] * z);
+      }
+    }
+
+    /**
+     * Computes the dot product of two vectors stored in arrays.
+     *
+     * @param _first the first array
+     * @param _firstOffset the index of the first vector
+     * @param _second the second array
+     * @param _secondOffset the index of the second vector
+     * @return the dot product
+     */
+    private static float dot(
+        final float[] _first,
+        final int _firstOffset,
+        final float[] _second,
+        final int _secondOffset) {
+      return (_first[_firstOffset] * _second[_secondOffset])
+        + (_first[_firstOffset + 1] * _second[_secondOffset + 1])
+        + (_first[_firstOffset + 2] * _second[_secondOffset + 2]);
+    }
+
+    /**
+     * Grows the per-manifold arrays.
+     *
+     * @param _capacity the new number of manifolds
+     */
+    private void growManifolds(
+        final int _capacity) {
+      this.bodiesA = Arrays.copyOf(this.bodiesA, _capacity);
+      this.bodiesB = Arrays.copyOf(this.bodiesB, _capacity);
+      this.starts = Arrays.copyOf(this.starts, _capacity);
+      this.counts = Arrays.copyOf(this.counts, _capacity);
+      this.keys = Arrays.copyOf(this.keys, _capacity);
+      this.frictions = Arrays.copyOf(this.frictions, _capacity);
+      this.restitutions = Arrays.copyOf(this.restitutions, _capacity);
+    }
+
+    /**
+     * Grows the per-point arrays.
+     *
+     * @param _capacity the new number of points
+     */
+    private void growPoints(
+        final int _capacity) {
+      final int vectors = _capacity * PhysicsWorld.VECTOR_STRIDE;
+      this.points = ContactSolver.grow(this.points, vectors);
+      this.normals = ContactSolver.grow(this.normals, vectors);
+      this.tangents = ContactSolver.grow(this.tangents, vectors);
+      this.bitangents = ContactSolver.grow(this.bitangents, vectors);
+      this.armsA = ContactSolver.grow(this.armsA, vectors);
+      this.armsB = ContactSolver.grow(this.armsB, vectors);
+      this.anchors = ContactSolver.grow(this.anchors, vectors);
+      this.jacobians = ContactSolver.grow(this.jacobians,
+        _capacity * ContactSolver.POINT_STRIDE);
+      this.depths = ContactSolver.grow(this.depths, _capacity);
+      this.normalImpulses = ContactSolver.grow(this.normalImpulses, _capacity);
+      this.tangentImpulses
+        = ContactSolver.grow(this.tangentImpulses, _capacity);
+      this.bitangentImpulses
+        = ContactSolver.grow(this.bitangentImpulses, _capacity);
+      this.normalMasses = ContactSolver.grow(this.normalMasses, _capacity);
+      this.tangentMasses = ContactSolver.grow(this.tangentMasses, _capacity);
+      this.bitangentMasses
+        = ContactSolver.grow(this.bitangentMasses, _capacity);
+      this.biases = ContactSolver.grow(this.biases, _capacity);
+    }
+
+    /**
+     * Grows an array, creating it the first time.
+     *
+     * @param _array the array, may be null
+     * @param _length the new length
+     * @return the grown array
+     */
+    private static float[] grow(
+        final float[] _array,
+        final int _length) {
+      if (_array == null) {
+        return new float[_length];
+      }
+      return Arrays.copyOf(_array, _length);
+    }
+
+  }
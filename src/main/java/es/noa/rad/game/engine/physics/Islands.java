@@ -0,0 +1,186 @@
+package es.noa.rad.game.engine.physics;
+
+import java.util.Arrays;
+
+  /**
+   * Groups the contact manifolds of a step into islands.
+   *
+   * <p>Two dynamic bodies are in the same island when a chain of contacts
+   * links them. Static bodies do not link islands, since the solver never
+   * changes their velocity. Islands therefore share no dynamic body and
+   * can be solved concurrently.
+   *
+   * <p>Islands are found with a union-find over the body slots, then the
+   * manifolds are grouped by island with a counting sort. All arrays are
+   * reused between steps.
+   */
+  final class Islands {
+
+    /**
+     * Union-find parent of every body slot.
+     */
+    private int[] parents;
+
+    /**
+     * Island of every root slot, -1 if none yet.
+     */
+    private int[] rootIslands;
+
+    /**
+     * Island of every manifold.
+     */
+    private int[] manifoldIslands;
+
+    /**
+     * Manifolds grouped by island.
+     */
+    private int[] manifolds;
+
+    /**
+     * Start of the manifolds of every island in {@link #manifolds}; the
+     * entry after the last island holds the manifold count.
+     */
+    private int[] starts;
+
+    /**
+     * Number of islands.
+     */
+    private int count;
+
+    /**
+     * Creates the grouping.
+     *
+     * @param _capacity the number of body slots and manifolds before
+     *     growing
+     */
+    Islands(
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.parents = new int[capacity];
+      this.rootIslands = new int[capacity];
+      this.manifoldIslands = new int[capacity];
+      this.manifolds = new int[capacity];
+      this.starts = new int[capacity + 1];
+      this.count = 0;
+    }
+
+    /**
+     * Groups the manifolds of a step.
+     *
+     * @param _slotCount the number of body slots
+     * @param _inverseMasses the inverse mass of every body
+     * @param _contacts the manifolds
+     */
+    void build(
+        final int _slotCount,
+        final float[] _inverseMasses,
+        final ContactSolver _contacts) {
+      final int manifoldCount = _contacts.manifoldCount();
+      if (_slotCount > this.parents.length) {
+        this.parents = new int[_slotCount];
+        this.rootIslands = new int[_slotCount];
+      }
+      if (manifoldCount > this.manifolds.length) {
+        this.manifoldIslands = new int[manifoldCount];
+        this.manifolds = new int[manifoldCount];
+      }
+      for (int slot = 0; slot < _slotCount; slot++) {
+        this.parents[slot] = slot;
+      }
+      Arrays.fill(this.rootIslands, 0, _slotCount, -1);
+
+      final int[] bodiesA = _contacts.bodiesA();
+      final int[] bodiesB = _contacts.bodiesB();
+      for (int manifold = 0; manifold < manifoldCount; manifold++) {
+        final int first = bodiesA[manifold];
+        final int second = bodiesB[manifold];
+        if ((_inverseMasses[first] > 0.0f)
+            && (_inverseMasses[second] > 0.0f)) {
+          final int firstRoot = this.find(first);
+          final int secondRoot = this.find(second);
+          if (firstRoot != secondRoot) {
+            this.parents[secondRoot] = firstRoot;
+          }
+        }
+      }
+
+      this.count = 0;
+      for (int manifold = 0; manifold < manifoldCount; manifold++) {
+        int body = bodiesA[manifold];
+        if (_inverseMasses[body] == 0.0f) {
+          body = bodiesB[manifold];
+        }
+        final int root = this.find(body);
+        if (this.rootIslands[root] < 0) {
+          this.rootIslands[root] = this.count++;
+        }
+        this.manifoldIslands[manifold] = this.rootIslands[root];
+      }
+
+      /* Counting sort of the manifolds by island. */
+      if (this.count + 1 > this.starts.length) {
+        this.starts = new int[this.count + 1];
+      }
+      Arrays.fill(this.starts, 0, this.count + 1, 0);
+      for (int manifold = 0; manifold < manifoldCount; manifold++) {
+        this.starts[this.manifoldIslands[manifold] + 1]++;
+      }
+      for (int island = 0; island < this.count; island++) {
+        this.starts[island + 1] += this.starts[island];
+      }
+      for (int manifold = 0; manifold < manifoldCount; manifold++) {
+        this.manifolds[this.starts[this.manifoldIslands[manifold]]++]
+          = manifold;
+      }
+      /* The fill turned every start into the next one; shift them back. */
+      System.arraycopy(this.starts, 0, this.starts, 1, this.count);
+      this.starts[0] = 0;
+    }
+
+    /**
+     * Gets the number of islands.
+     *
+     * @return the island count
+     */
+    int count() {
+      return this.count;
+    }
+
+    /**
+     * Gets the start of the manifolds of an island.
+     *
+     * @param _island the island, or the island count for the end of the
+     *     last one
+     * @return the position of its first manifold in {@link #manifolds()}
+     */
+    int start(
+        final int _island) {
+      return this.starts[_island];
+    }
+
+    /**
+     * Gets the manifolds grouped by island.
+     *
+     * @return the manifold indices
+     */
+    int[] manifolds() {
+      return this.manifolds;
+    }
+
+    /**
+     * Finds the root of a slot, halving the path on the way.
+     *
+     * @param _slot the body slot
+     * @return the root slot
+     */
+    private int find(
+        final int _slot) {
+      int slot = _slot;
+      while (this.parents[slot] != slot) {
+        this.parents[slot] = this.parents[this.parents[slot]];
+        slot = this.parents[slot];
+      }
+      return slot;
+    }
+
+  }
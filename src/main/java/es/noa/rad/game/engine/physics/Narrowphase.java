@@ -0,0 +1,1074 @@
+package es.noa.rad.game.engine.physics;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+  /**
+   * Exact contact generation between the shapes of two bodies.
+   *
+   * <p>Pairs are ordered by {@link Shape} so each combination has a single
+   * routine. Spheres and capsules reduce to closest points between points
+   * and segments. Boxes are tested with the separating axis theorem over
+   * their fifteen candidate axes; a face axis produces up to four points by
+   * clipping the incident face against the reference face, an edge axis
+   * produces the single closest point between the two edges.
+   *
+   * <p>Contacts are generated up to {@link PhysicsWorld#CONTACT_MARGIN}
+   * before the shapes touch, so the solver can stop bodies before they
+   * penetrate.
+   *
+   * <p>All temporaries are fields, so collision tests do not allocate;
+   * not thread-safe.
+   */
+  final class Narrowphase {
+
+    /**
+     * Distance below which two points are considered the same.
+     */
+    private static final float EPSILON = 1.0E-6f;
+
+    /**
+     * Length of the cross product of two box axes below which they are
+     * considered parallel and the edge axis is skipped.
+     */
+    private static final float PARALLEL_EPSILON = 1.0E-3f;
+
+    /**
+     * Cosine above which two capsules are considered parallel and get two
+     * contact points.
+     */
+    private static final float PARALLEL_COSINE = 0.99f;
+
+    /**
+     * Relative tolerance favouring the face of the first box, then faces
+     * over edges, so the chosen feature does not flicker.
+     */
+    private static final float RELATIVE_TOLERANCE = 0.95f;
+
+    /**
+     * Absolute tolerance favouring the face of the first box, then faces
+     * over edges.
+     */
+    private static final float ABSOLUTE_TOLERANCE = 0.01f;
+
+    /**
+     * Number of refinements of the closest point between a capsule and a
+     * box.
+     */
+    private static final int CLOSEST_ITERATIONS = 4;
+
+    /**
+     * Factor placing a contact midway between two surfaces.
+     */
+    private static final float HALF = 0.5f;
+
+    /**
+     * Largest number of vertices of a clipped face.
+     */
+    private static final int POLYGON_VERTICES = 8;
+
+    /**
+     * Number of points a manifold keeps.
+     */
+    private static final int MANIFOLD_POINTS = 4;
+
+    /**
+     * World the bodies belong to.
+     */
+    private final PhysicsWorld world;
+
+    /**
+     * Manifolds receiving the contacts.
+     */
+    private final ContactSolver contacts;
+
+    /**
+     * Start of the first segment, or centre of the first sphere.
+     */
+    private final Vector3f startA;
+
+    /**
+     * End of the first segment.
+     */
+    private final Vector3f endA;
+
+    /**
+     * Start of the second segment, or centre of the second sphere.
+     */
+    private final Vector3f startB;
+
+    /**
+     * End of the second segment.
+     */
+    private final Vector3f endB;
+
+    /**
+     * Closest point on the first shape.
+     */
+    private final Vector3f closestA;
+
+    /**
+     * Closest point on the second shape.
+     */
+    private final Vector3f closestB;
+
+    /**
+     * Contact point handed to the manifold.
+     */
+    private final Vector3f point;
+
+    /**
+     * Contact normal handed to the manifold.
+     */
+    private final Vector3f normal;
+
+    /**
+     * Projection of the centre offset on the axes of the first box.
+     */
+    private final float[] projectionsA;
+
+    /**
+     * Projection of the centre offset on the axes of the second box.
+     */
+    private final float[] projectionsB;
+
+    /**
+     * Dot products between the axes of the two boxes, row by axis of the
+     * first box.
+     */
+    private final float[] dots;
+
+    /**
+     * Absolute values of {@link #dots}, padded against parallel axes.
+     */
+    private final float[] absoluteDots;
+
+    /**
+     * Face being clipped.
+     */
+    private float[] polygon;
+
+    /**
+     * Output of a clipping pass.
+     */
+    private float[] clipped;
+
+    /**
+     * Candidate contact points of a face contact.
+     */
+    private final float[] candidates;
+
+    /**
+     * Penetration of every candidate.
+     */
+    private final float[] candidateDepths;
+
+    /**
+     * Creates the narrowphase of a world.
+     *
+     * @param _world the world the bodies belong to
+     * @param _contacts the manifolds receiving the contacts
+     */
+    Narrowphase(
+        final PhysicsWorld _world,
+        final ContactSolver _contacts) {
+      this.world = _world;
+      this.contacts = _contacts;
+      this.startA = new Vector3f();
+      this.endA = new Vector3f();
+      this.startB = new Vector3f();
+      this.endB = new Vector3f();
+      this.closestA = new Vector3f();
+      this.closestB = new Vector3f();
+      this.point = new Vector3f();
+      this.normal = new Vector3f();
+      this.projectionsA = new float[PhysicsWorld.VECTOR_STRIDE];
+      this.projectionsB = new float[PhysicsWorld.VECTOR_STRIDE];
+      this.dots = new float[PhysicsWorld.MATRIX_STRIDE];
+      this.absoluteDots = new float[PhysicsWorld.MATRIX_STRIDE];
+      final int vertices
+        = Narrowphase.POLYGON_VERTICES * PhysicsWorld.VECTOR_STRIDE;
+      this.polygon = new float[vertices];
+      this.clipped = new float[vertices];
+      this.candidates = new float[vertices];
+      this.candidateDepths = new float[Narrowphase.POLYGON_VERTICES];
+    }
+
+    /**
+     * Generates the manifold between two bodies, if they are close enough.
+     *
+     * @param _first the slot of one body
+     * @param _second the slot of the other body
+     */
+    void collide(
+        final int _first,
+        final int _second) {
+      final Shape[] shapes = this.world.shapes();
+      int a = _first;
+      int b = _second;
+      if (shapes[a].ordinal() > shapes[b].ordinal()) {
+        a = _second;
+        b = _first;
+      }
+      this.contacts.beginManifold(a, b);
+      switch (shapes[a]) {
+        case SPHERE:
+          this.sphere(a, b, shapes[b]);
+          break;
+        case CAPSULE:
+          if (shapes[b] == Shape.CAPSULE) {
+            this.capsuleCapsule(a, b);
+          } else {
+            this.capsuleBox(a, b);
+          }
+          break;
+        default:
+          this.boxBox(a, b);
+          break;
+      }
+      this.contacts.endManifold();
+    }
+
+    /**
+     * Collides a sphere with any shape.
+     *
+     * @param _sphere the slot of the sphere
+     * @param _other the slot of the other body
+     * @param _shape the shape of the other body
+     */
+    private void sphere(
+        final int _sphere,
+        final int _other,
+        final Shape _shape) {
+      final float[] extents = this.world.extents();
+      final float radius = extents[_sphere * PhysicsWorld.VECTOR_STRIDE];
+      this.centre(_sphere, this.startA);
+      switch (_shape) {
+        case SPHERE:
+          this.centre(_other, this.startB);
+          this.spheres(this.startA, radius, this.startB,
+            extents[_other * PhysicsWorld.VECTOR_STRIDE]);
+          break;
+        case CAPSULE:
+          this.segment(_other, this.startB, this.endB);
+          Narrowphase.closestOnSegment(this.startB, this.endB, this.startA,
+            this.closestB);
+          this.spheres(this.startA, radius, this.closestB,
+            extents[_other * PhysicsWorld.VECTOR_STRIDE]);
+          break;
+        default:
+          this.sphereBox(this.startA, radius, _other);
+          break;
+      }
+    }
+
+    /**
+     * Collides two capsules through the closest points of their segments.
+     * Parallel capsules get a point at each end of the overlap, so they
+     * can rest side by side.
+     *
+     * @param _a the slot of the first capsule
+     * @param _b the slot of the second capsule
+     */
+    private void capsuleCapsule(
+        final int _a,
+        final int _b) {
+      final float[] extents = this.world.extents();
+      final float radiusA = extents[_a * PhysicsWorld.VECTOR_STRIDE];
+      final float radiusB = extents[_b * PhysicsWorld.VECTOR_STRIDE];
+      this.segment(_a, this.startA, this.endA);
+      this.segment(_b, this.startB, this.endB);
+      final float[] rotations = this.world.rotations();
+      final int axisA = (_a * PhysicsWorld.MATRIX_STRIDE)
+        + PhysicsWorld.VECTOR_STRIDE;
+      final int axisB = (_b * PhysicsWorld.MATRIX_STRIDE)
+        + PhysicsWorld.VECTOR_STRIDE;
+      final float cosine = (rotations[axisA] * rotations[axisB])
+        + (rotations[axisA + 1] * rotations[axisB + 1])
+        + (rotations[axisA + 2] * rotations[axisB + 2]);
+      if (Math.abs(cosine) > Narrowphase.PARALLEL_COSINE) {
+        Narrowphase.closestOnSegment(this.startA, this.endA, this.startB,
+          this.closestA);
+        this.spheres(this.closestA, radiusA, this.startB, radiusB);
+        Narrowphase.closestOnSegment(this.startA, this.endA, this.endB,
+          this.closestA);
+        this.spheres(this.closestA, radiusA, this.endB, radiusB);
+        Narrowphase.closestOnSegment(this.startB, this.endB, this.startA,
+          this.closestB);
+        this.spheres(this.startA, radiusA, this.closestB, radiusB);
+        Narrowphase.closestOnSegment(this.startB, this.endB, this.endA,
+          this.closestB);
+        this.spheres(this.endA, radiusA, this.closestB, radiusB);
+        return;
+      }
+      Narrowphase.closestBetweenSegments(this.startA, this.endA, this.startB,
+        this.endB, this.closestA, this.closestB);
+      this.spheres(this.closestA, radiusA, this.closestB, radiusB);
+    }
+
+    /**
+     * Collides a capsule with a box: each end of the capsule as a sphere,
+     * or, when neither end touches, the point of the segment closest to
+     * the box.
+     *
+     * @param _capsule the slot of the capsule
+     * @param _box the slot of the box
+     */
+    private void capsuleBox(
+        final int _capsule,
+        final int _box) {
+      final float radius
+        = this.world.extents()[_capsule * PhysicsWorld.VECTOR_STRIDE];
+      this.segment(_capsule, this.startA, this.endA);
+      final boolean start = this.sphereBox(this.startA, radius, _box);
+      final boolean end = this.sphereBox(this.endA, radius, _box);
+      if (start || end) {
+        return;
+      }
+      /* Alternate projections converge to the closest pair. */
+      this.centre(_box, this.closestB);
+      for (int iteration = 0; iteration < Narrowphase.CLOSEST_ITERATIONS;
+          iteration++) {
+        Narrowphase.closestOnSegment(this.startA, this.endA, this.closestB,
+          this.closestA);
+        this.closestInBox(_box, this.closestA, this.closestB);
+      }
+      Narrowphase.closestOnSegment(this.startA, this.endA, this.closestB,
+        this.closestA);
+      this.sphereBox(this.closestA, radius, _box);
+    }
+
+    /**
+     * Adds the contact between two spheres, if they are close enough.
+     *
+     * @param _centreA the centre of the first sphere
+     * @param _radiusA the radius of the first sphere
+     * @param _centreB the centre of the second sphere
+     * @param _radiusB the radius of the second sphere
+     * @return whether a contact was added
+     */
+    private boolean spheres(
+        final Vector3fc _centreA,
+        final float _radiusA,
+        final Vector3fc _centreB,
+        final float _radiusB) {
+      final float radius = _radiusA + _radiusB;
+      final float limit = radius + PhysicsWorld.CONTACT_MARGIN;
+      final float distanceSquared = _centreA.distanceSquared(_centreB);
+      if (distanceSquared > (limit * limit)) {
+        return false;
+      }
+      final float distance = (float) Math.sqrt(distanceSquared);
+      if (distance > Narrowphase.EPSILON) {
+        _centreB.sub(_centreA, this.normal).div(distance);
+      } else {
+        this.normal.set(0.0f, 1.0f, 0.0f);
+      }
+      /* Midway between the two surfaces. */
+      _centreA.fma((_radiusA + distance - _radiusB) * Narrowphase.HALF,
+        this.normal, this.point);
+      this.contacts.add(this.point, this.normal, radius - distance);
+      return true;
+    }
+
+    /**
+     * Adds the contact between a sphere and a box, if they are close
+     * enough. The sphere belongs to the first body of the manifold.
+     *
+     * @param _centre the centre of the sphere
+     * @param _radius the radius of the sphere
+     * @param _box the slot of the box
+     * @return whether a contact was added
+     */
+    private boolean sphereBox(
+        final Vector3fc _centre,
+        final float _radius,
+        final int _box) {
+      this.closestInBox(_box, _centre, this.point);
+      final float distanceSquared = _centre.distanceSquared(this.point);
+      if (distanceSquared > (Narrowphase.EPSILON * Narrowphase.EPSILON)) {
+        final float limit = _radius + PhysicsWorld.CONTACT_MARGIN;
+        if (distanceSquared > (limit * limit)) {
+          return false;
+        }
+        final float distance = (float) Math.sqrt(distanceSquared);
+        this.point.sub(_centre, this.normal).div(distance);
+        /* Midway between the box surface and the sphere surface. */
+        this.point.add(_centre).fma(_radius, this.normal).mul(Narrowphase.HALF);
+        this.contacts.add(this.point, this.normal, _radius - distance);
+        return true;
+      }
+
+      /* Centre inside the box: push out through the nearest face. */
+      final float[] positions = this.world.positions();
+      final float[] rotations = this.world.rotations();
+      final float[] extents = this.world.extents();
+      final int p = _box * PhysicsWorld.VECTOR_STRIDE;
+      final int m = _box * PhysicsWorld.MATRIX_STRIDE;
+      int face = 0;
+      float penetration = Float.MAX_VALUE;
+      float side = 1.0f;
+      for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+        final int c = m + (axis * PhysicsWorld.VECTOR_STRIDE);
+        final float local = (rotations[c] * (_centre.x() - positions[p]))
+          + (rotations[c + 1] * (_centre.y() - positions[p + 1]))
+          + (rotations[c + 2] * (_centre.z() - positions[p + 2]));
+        final float depth = extents[p + axis] - Math.abs(local);
+        if (depth < penetration) {
+          penetration = depth;
+          face = axis;
+          side = Math.signum(local);
+          if (side == 0.0f) {
+            side = 1.0f;
+          }
+        }
+      }
+      final int c = m + (face * PhysicsWorld.VECTOR_STRIDE);
+      this.normal.set(-side * rotations[c], -side * rotations[c + 1],
+        -side * rotations[c + 2]);
+      this.contacts.add(_centre, this.normal, _radius + penetration);
+      return true;
+    }
+
+    /**
+     * Collides two boxes.
+     *
+     * @param _a the slot of the first box
+     * @param _b the slot of the second box
+     */
+    private void boxBox(
+        final int _a,
+        final int _b) {
+      final float[] positions = this.world.positions();
+      final float[] rotations = this.world.rotations();
+      final float[] extents = this.world.extents();
+      final int pa = _a * PhysicsWorld.VECTOR_STRIDE;
+      final int pb = _b * PhysicsWorld.VECTOR_STRIDE;
+      final int ma = _a * PhysicsWorld.MATRIX_STRIDE;
+      final int mb = _b * PhysicsWorld.MATRIX_STRIDE;
+      final float dx = positions[pb] - positions[pa];
+      final float dy = positions[pb + 1] - positions[pa + 1];
+      final float dz = positions[pb + 2] - positions[pa + 2];
+      final float[] t = this.projectionsA;
+      final float[] s = this.projectionsB;
+      final float[] r = this.dots;
+      final float[] absolute = this.absoluteDots;
+      for (int i = 0; i < PhysicsWorld.VECTOR_STRIDE; i++) {
+        final int ca = ma + (i * PhysicsWorld.VECTOR_STRIDE);
+        final int cb = mb + (i * PhysicsWorld.VECTOR_STRIDE);
+        t[i] = (rotations[ca] * dx) + (rotations[ca + 1] * dy)
+          + (rotations[ca + 2] * dz);
+        s[i] = (rotations[cb] * dx) + (rotations[cb + 1] * dy)
+          + (rotations[cb + 2] * dz);
+        for (int j = 0; j < PhysicsWorld.VECTOR_STRIDE; j++) {
+          final int column = mb + (j * PhysicsWorld.VECTOR_STRIDE);
+          final int index = (i * PhysicsWorld.VECTOR_STRIDE) + j;
+          r[index] = (rotations[ca] * rotations[column])
+            + (rotations[ca + 1] * rotations[column + 1])
+            + (rotations[ca + 2] * rotations[column + 2]);
+          absolute[index] = Math.abs(r[index]) + Narrowphase.EPSILON;
+        }
+      }
+
+      /* Faces of the first box. */
+      float separationA = -Float.MAX_VALUE;
+      int faceA = 0;
+      for (int i = 0; i < PhysicsWorld.VECTOR_STRIDE; i++) {
+        final int row = i * PhysicsWorld.VECTOR_STRIDE;
+        final float separation = Math.abs(t[i]) - (extents[pa + i]
+          + (extents[pb] * absolute[row])
+          + (extents[pb + 1] * absolute[row + 1])
+          + (extents[pb + 2] * absolute[row + 2]));
+        if (separation > PhysicsWorld.CONTACT_MARGIN) {
+          return;
+        }
+        if (separation > separationA) {
+          separationA = separation;
+          faceA = i;
+        }
+      }
+
+      /* Faces of the second box. */
+      float separationB = -Float.MAX_VALUE;
+      int faceB = 0;
+      for (int j = 0; j < PhysicsWorld.VECTOR_STRIDE; j++) {
+        final float separation = Math.abs(s[j]) - (extents[pb + j]
+          + (extents[pa] * absolute[j])
+          + (extents[pa + 1] * absolute[PhysicsWorld.VECTOR_STRIDE + j])
+          + (extents[pa + 2] * absolute[(2 * PhysicsWorld.VECTOR_STRIDE)
+            + j]));
+        if (separation > PhysicsWorld.CONTACT_MARGIN) {
+          return;
+        }
+        if (separation > separationB) {
+          separationB = separation;
+          faceB = j;
+        }
+      }
+
+      /* Edge pairs, a_i x b_j. */
+      float separationEdge = -Float.MAX_VALUE;
+      int edgeA = -1;
+      int edgeB = -1;
+      for (int i = 0; i < PhysicsWorld.VECTOR_STRIDE; i++) {
+        final int i1 = (i + 1) % PhysicsWorld.VECTOR_STRIDE;
+        final int i2 = (i + 2) % PhysicsWorld.VECTOR_STRIDE;
+        for (int j = 0; j < PhysicsWorld.VECTOR_STRIDE; j++) {
+          final int j1 = (j + 1) % PhysicsWorld.VECTOR_STRIDE;
+          final int j2 = (j + 2) % PhysicsWorld.VECTOR_STRIDE;
+          final float cosine = r[(i * PhysicsWorld.VECTOR_STRIDE) + j];
+          final float length
+            = (float) Math.sqrt(Math.max(0.0f, 1.0f - (cosine * cosine)));
+          if (length < Narrowphase.PARALLEL_EPSILON) {
+            continue;
+          }
+          final int row1 = i1 * PhysicsWorld.VECTOR_STRIDE;
+          final int row2 = i2 * PhysicsWorld.VECTOR_STRIDE;
+          final int row = i * PhysicsWorld.VECTOR_STRIDE;
+          final float distance = (t[i2] * r[row1 + j]) - (t[i1] * r[row2 + j]);
+          final float radiusA = (extents[pa + i1] * absolute[row2 + j])
+            + (extents[pa + i2] * absolute[row1 + j]);
+          final float radiusB = (extents[pb + j1] * absolute[row + j2])
+            + (extents[pb + j2] * absolute[row + j1]);
+          final float separation
+            = (Math.abs(distance) - (radiusA + radiusB)) / length;
+          if (separation > PhysicsWorld.CONTACT_MARGIN) {
+            return;
+          }
+          if (separation > separationEdge) {
+            separationEdge = separation;
+            edgeA = i;
+            edgeB = j;
+          }
+        }
+      }
+
+      final boolean referenceB = separationB
+        > ((Narrowphase.RELATIVE_TOLERANCE * separationA)
+          + Narrowphase.ABSOLUTE_TOLERANCE);
+      final float separationFace = referenceB ? separationB : separationA;
+      if ((edgeA >= 0) && (separationEdge
+          > ((Narrowphase.RELATIVE_TOLERANCE * separationFace)
+            + Narrowphase.ABSOLUTE_TOLERANCE))) {
+        this.edgeContact(_a, _b, edgeA, edgeB, separationEdge);
+      } else if (referenceB) {
+        this.faceContact(_b, _a, faceB, true);
+      } else {
+        this.faceContact(_a, _b, faceA, false);
+      }
+    }
+
+    /**
+     * Adds the contacts of a face of a box against another box: the
+     * incident face of the other box is clipped by the side planes of the
+     * reference face and its vertices below the margin become contacts.
+     *
+     * @param _reference the slot of the box owning the reference face
+     * @param _incident the slot of the other box
+     * @param _axis the axis of the reference face
+     * @param _flip whether the reference box is the second body of the
+     *     manifold
+     */
+    private void faceContact(
+        final int _reference,
+        final int _incident,
+        final int _axis,
+        final boolean _flip) {
+      final float[] positions = this.world.positions();
+      final float[] rotations = this.world.rotations();
+      final float[] extents = this.world.extents();
+      final int pr = _reference * PhysicsWorld.VECTOR_STRIDE;
+      final int pi = _incident * PhysicsWorld.VECTOR_STRIDE;
+      final int mr = _reference * PhysicsWorld.MATRIX_STRIDE;
+      final int mi = _incident * PhysicsWorld.MATRIX_STRIDE;
+
+      /* Reference normal, towards the incident box. */
+      final int cr = mr + (_axis * PhysicsWorld.VECTOR_STRIDE);
+      float nx = rotations[cr];
+      float ny = rotations[cr + 1];
+      float nz = rotations[cr + 2];
+      if ((((positions[pi] - positions[pr]) * nx)
+          + ((positions[pi + 1] - positions[pr + 1]) * ny)
+          + ((positions[pi + 2] - positions[pr + 2]) * nz)) < 0.0f) {
+        nx = -nx;
+        ny = -ny;
+        nz = -nz;
+      }
+
+      /* Incident face: the one most opposed to the reference normal. */
+      int face = 0;
+      float best = -1.0f;
+      float side = 1.0f;
+      for (int j = 0; j < PhysicsWorld.VECTOR_STRIDE; j++) {
+        final int c = mi + (j * PhysicsWorld.VECTOR_STRIDE);
+        final float dot = (rotations[c] * nx) + (rotations[c + 1] * ny)
+          + (rotations[c + 2] * nz);
+        if (Math.abs(dot) > best) {
+          best = Math.abs(dot);
+          face = j;
+          side = (dot > 0.0f) ? -1.0f : 1.0f;
+        }
+      }
+      final int f = mi + (face * PhysicsWorld.VECTOR_STRIDE);
+      final int u = mi + (((face + 1) % PhysicsWorld.VECTOR_STRIDE)
+        * PhysicsWorld.VECTOR_STRIDE);
+      final int v = mi + (((face + 2) % PhysicsWorld.VECTOR_STRIDE)
+        * PhysicsWorld.VECTOR_STRIDE);
+      final float eu = extents[pi + ((face + 1) % PhysicsWorld.VECTOR_STRIDE)];
+      final float ev = extents[pi + ((face + 2) % PhysicsWorld.VECTOR_STRIDE)];
+      final float ef = side * extents[pi + face];
+      for (int corner = 0; corner < Narrowphase.MANIFOLD_POINTS; corner++) {
+        /* Corners in order around the face: (+,+) (-,+) (-,-) (+,-). */
+        final float su = ((corner == 0) || (corner == 3)) ? eu : -eu;
+        final float sv = (corner < 2) ? ev : -ev;
+        final int o = corner * PhysicsWorld.VECTOR_STRIDE;
+        for (int k = 0; k < PhysicsWorld.VECTOR_STRIDE; k++) {
+          this.polygon[o + k] = positions[pi + k] + (rotations[f + k] * ef)
+            + (rotations[u + k] * su) + (rotations[v + k] * sv);
+        }
+      }
+
+      /* Clip by the four side planes of the reference face. */
+      int count = Narrowphase.MANIFOLD_POINTS;
+      for (int plane = 0; plane < Narrowphase.MANIFOLD_POINTS; plane++) {
+        final int sideAxis = (_axis + 1 + (plane / 2))
+          % PhysicsWorld.VECTOR_STRIDE;
+        final int c = mr + (sideAxis * PhysicsWorld.VECTOR_STRIDE);
+        final float sign = ((plane % 2) == 0) ? 1.0f : -1.0f;
+        final float px = sign * rotations[c];
+        final float py = sign * rotations[c + 1];
+        final float pz = sign * rotations[c + 2];
+        final float offset = (px * positions[pr]) + (py * positions[pr + 1])
+          + (pz * positions[pr + 2]) + extents[pr + sideAxis];
+        count = this.clip(count, px, py, pz, offset);
+        if (count == 0) {
+          return;
+        }
+      }
+
+      /* Keep the vertices below the margin, moved halfway to the face. */
+      final float faceOffset = (nx * positions[pr]) + (ny * positions[pr + 1])
+        + (nz * positions[pr + 2]) + extents[pr + _axis];
+      int candidateCount = 0;
+      for (int vertex = 0; vertex < count; vertex++) {
+        final int o = vertex * PhysicsWorld.VECTOR_STRIDE;
+        final float separation = (nx * this.polygon[o])
+          + (ny * this.polygon[o + 1]) + (nz * this.polygon[o + 2])
+          - faceOffset;
+        if (separation <= PhysicsWorld.CONTACT_MARGIN) {
+          final int target = candidateCount * PhysicsWorld.VECTOR_STRIDE;
+          final float half = separation * Narrowphase.HALF;
+          this.candidates[target] = this.polygon[o] - (nx * half);
+          this.candidates[target + 1] = this.polygon[o + 1] - (ny * half);
+          this.candidates[target + 2] = this.polygon[o + 2] - (nz * half);
+          this.candidateDepths[candidateCount] = -separation;
+          candidateCount++;
+        }
+      }
+      if (_flip) {
+        this.normal.set(-nx, -ny, -nz);
+      } else {
+        this.normal.set(nx, ny, nz);
+      }
+      this.reduce(candidateCount, nx, ny, nz);
+    }
+
+    /**
+     * Adds the contact between an edge of each box.
+     *
+     * @param _a the slot of the first box
+     * @param _b the slot of the second box
+     * @param _axisA the edge axis of the first box
+     * @param _axisB the edge axis of the second box
+     * @param _separation the separation along the edge axis
+     */
+    private void edgeContact(
+        final int _a,
+        final int _b,
+        final int _axisA,
+        final int _axisB,
+        final float _separation) {
+      final float[] positions = this.world.positions();
+      final float[] rotations = this.world.rotations();
+      final int pa = _a * PhysicsWorld.VECTOR_STRIDE;
+      final int pb = _b * PhysicsWorld.VECTOR_STRIDE;
+      final int ca = (_a * PhysicsWorld.MATRIX_STRIDE)
+        + (_axisA * PhysicsWorld.VECTOR_STRIDE);
+      final int cb = (_b * PhysicsWorld.MATRIX_STRIDE)
+        + (_axisB * PhysicsWorld.VECTOR_STRIDE);
+      this.normal.set(
+        (rotations[ca + 1] * rotations[cb + 2])
+          - (rotations[ca + 2] * rotations[cb + 1]),
+        (rotations[ca + 2] * rotations[cb])
+          - (rotations[ca] * rotations[cb + 2]),
+        (rotations[ca] * rotations[cb + 1])
+          - (rotations[ca + 1] * rotations[cb])).normalize();
+      if ((((positions[pb] - positions[pa]) * this.normal.x)
+          + ((positions[pb + 1] - positions[pa + 1]) * this.normal.y)
+          + ((positions[pb + 2] - positions[pa + 2]) * this.normal.z))
+          < 0.0f) {
+        this.normal.negate();
+      }
+      this.supportEdge(_a, _axisA, 1.0f, this.startA, this.endA);
+      this.supportEdge(_b, _axisB, -1.0f, this.startB, this.endB);
+      Narrowphase.closestBetweenSegments(this.startA, this.endA, this.startB,
+        this.endB, this.closestA, this.closestB);
+      this.closestA.add(this.closestB, this.point).mul(Narrowphase.HALF);
+      this.contacts.add(this.point, this.normal, -_separation);
+    }
+
+    /**
+     * Finds the edge of a box along an axis that lies furthest along the
+     * contact normal.
+     *
+     * @param _box the slot of the box
+     * @param _axis the axis the edge runs along
+     * @param _direction 1 to search along the normal, -1 against it
+     * @param _start receives the start of the edge
+     * @param _end receives the end of the edge
+     */
+    private void supportEdge(
+        final int _box,
+        final int _axis,
+        final float _direction,
+        final Vector3f _start,
+        final Vector3f _end) {
+      final float[] positions = this.world.positions();
+      final float[] rotations = this.world.rotations();
+      final float[] extents = this.world.extents();
+      final int p = _box * PhysicsWorld.VECTOR_STRIDE;
+      final int m = _box * PhysicsWorld.MATRIX_STRIDE;
+      _start.set(positions[p], positions[p + 1], positions[p + 2]);
+      for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+        if (axis == _axis) {
+          continue;
+        }
+        final int c = m + (axis * PhysicsWorld.VECTOR_STRIDE);
+        final float dot = (rotations[c] * this.normal.x)
+          + (rotations[c + 1] * this.normal.y)
+          + (rotations[c + 2] * this.normal.z);
+        final float extent = ((dot * _direction) >= 0.0f)
+          ? extents[p + axis] : -extents[p + axis];
+        _start.add(rotations[c] * extent, rotations[c + 1] * extent,
+          rotations[c + 2] * extent);
+      }
+      final int c = m + (_axis * PhysicsWorld.VECTOR_STRIDE);
+      final float extent = extents[p + _axis];
+      _end.set(_start).add(rotations[c] * extent, rotations[c + 1] * extent,
+        rotations[c + 2] * extent);
+      _start.sub(rotations[c] * extent, rotations[c + 1] * extent,
+        rotations[c + 2] * extent);
+    }
+
+    /**
+     * Clips the polygon by a plane, keeping the part behind it
+     * (Sutherland-Hodgman).
+     *
+     * @param _count the number of vertices of the polygon
+     * @param _x the x component of the plane normal
+     * @param _y the y component of the plane normal
+     * @param _z the z component of the plane normal
+     * @param _offset the plane offset along the normal
+     * @return the number of vertices of the clipped polygon
+     */
+    private int clip(
+        final int _count,
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _offset) {
+      final float[] input = this.polygon;
+      final float[] output = this.clipped;
+      int count = 0;
+      for (int vertex = 0; vertex < _count; vertex++) {
+        final int current = vertex * PhysicsWorld.VECTOR_STRIDE;
+        final int next = ((vertex + 1) % _count) * PhysicsWorld.VECTOR_STRIDE;
+        final float distanceCurrent = (_x * input[current])
+          + (_y * input[current + 1]) + (_z * input[current + 2]) - _offset;
+        final float distanceNext = (_x * input[next])
+          + (_y * input[next + 1]) + (_z * input[next + 2]) - _offset;
+        if (distanceCurrent <= 0.0f) {
+          final int o = count * PhysicsWorld.VECTOR_STRIDE;
+          output[o] = input[current];
+          output[o + 1] = input[current + 1];
+          output[o + 2] = input[current + 2];
+          count++;
+        }
+        if ((distanceCurrent <= 0.0f) != (distanceNext <= 0.0f)) {
+          final float fraction
+            = distanceCurrent / (distanceCurrent - distanceNext);
+          final int o = count * PhysicsWorld.VECTOR_STRIDE;
+          for (int k = 0; k < PhysicsWorld.VECTOR_STRIDE; k++) {
+            output[o + k] = input[current + k]
+              + (fraction * (input[next + k] - input[current + k]));
+          }
+          count++;
+        }
+      }
+      this.polygon = output;
+      this.clipped = input;
+      return count;
+    }
+
+    /**
+     * Adds at most four of the candidate points to the manifold: the
+     * deepest, the furthest from it, then the two spanning the largest
+     * area on either side of the line they form.
+     *
+     * @param _count the number of candidates
+     * @param _x the x component of the reference normal
+     * @param _y the y component of the reference normal
+     * @param _z the z component of the reference normal
+     */
+    private void reduce(
+        final int _count,
+        final float _x,
+        final float _y,
+        final float _z) {
+      if (_count <= Narrowphase.MANIFOLD_POINTS) {
+        for (int candidate = 0; candidate < _count; candidate++) {
+          this.addCandidate(candidate);
+        }
+        return;
+      }
+      final float[] c = this.candidates;
+      int first = 0;
+      for (int candidate = 1; candidate < _count; candidate++) {
+        if (this.candidateDepths[candidate] > this.candidateDepths[first]) {
+          first = candidate;
+        }
+      }
+      final int f = first * PhysicsWorld.VECTOR_STRIDE;
+      int second = -1;
+      float furthest = -1.0f;
+      for (int candidate = 0; candidate < _count; candidate++) {
+        final int o = candidate * PhysicsWorld.VECTOR_STRIDE;
+        final float ex = c[o] - c[f];
+        final float ey = c[o + 1] - c[f + 1];
+        final float ez = c[o + 2] - c[f + 2];
+        final float distance = (ex * ex) + (ey * ey) + (ez * ez);
+        if (distance > furthest) {
+          furthest = distance;
+          second = candidate;
+        }
+      }
+      final int s = second * PhysicsWorld.VECTOR_STRIDE;
+      final float lx = c[s] - c[f];
+      final float ly = c[s + 1] - c[f + 1];
+      final float lz = c[s + 2] - c[f + 2];
+      int third = -1;
+      int fourth = -1;
+      float largest = 0.0f;
+      float smallest = 0.0f;
+      for (int candidate = 0; candidate < _count; candidate++) {
+        final int o = candidate * PhysicsWorld.VECTOR_STRIDE;
+        final float ex = c[o] - c[f];
+        final float ey = c[o + 1] - c[f + 1];
+        final float ez = c[o + 2] - c[f + 2];
+        /* Signed area of the triangle, along the reference normal. */
+        final float area = (((ly * ez) - (lz * ey)) * _x)
+          + (((lz * ex) - (lx * ez)) * _y)
+          + (((lx * ey) - (ly * ex)) * _z);
+        if (area > largest) {
+          largest = area;
+          third = candidate;
+        }
+        if (area < smallest) {
+          smallest = area;
+          fourth = candidate;
+        }
+      }
+      this.addCandidate(first);
+      if (second != first) {
+        this.addCandidate(second);
+      }
+      if (third >= 0) {
+        this.addCandidate(third);
+      }
+      if (fourth >= 0) {
+        this.addCandidate(fourth);
+      }
+    }
+
+    /**
+     * Adds a candidate point to the manifold with the current normal.
+     *
+     * @param _candidate the candidate
+     */
+    private void addCandidate(
+        final int _candidate) {
+      final int o = _candidate * PhysicsWorld.VECTOR_STRIDE;
+      this.point.set(this.candidates[o], this.candidates[o + 1],
+        this.candidates[o + 2]);
+      this.contacts.add(this.point, this.normal,
+        this.candidateDepths[_candidate]);
+    }
+
+    /**
+     * Computes the point of a box closest to a point.
+     *
+     * @param _box the slot of the box
+     * @param _point the point
+     * @param _dest receives the closest point; may be the same as the point
+     */
+    private void closestInBox(
+        final int _box,
+        final Vector3fc _point,
+        final Vector3f _dest) {
+      final float[] positions = this.world.positions();
+      final float[] rotations = this.world.rotations();
+      final float[] extents = this.world.extents();
+      final int p = _box * PhysicsWorld.VECTOR_STRIDE;
+      final int m = _box * PhysicsWorld.MATRIX_STRIDE;
+      final float dx = _point.x() - positions[p];
+      final float dy = _point.y() - positions[p + 1];
+      final float dz = _point.z() - positions[p + 2];
+      _dest.set(positions[p], positions[p + 1], positions[p + 2]);
+      for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+        final int c = m + (axis * PhysicsWorld.VECTOR_STRIDE);
+        final float extent = extents[p + axis];
+        final float local = Math.max(-extent, Math.min(extent,
+          (rotations[c] * dx) + (rotations[c + 1] * dy)
+            + (rotations[c + 2] * dz)));
+        _dest.add(rotations[c] * local, rotations[c + 1] * local,
+          rotations[c + 2] * local);
+      }
+    }
+
+    /**
+     * Gets the centre of a body.
+     *
+     * @param _slot the body slot
+     * @param _dest receives the centre
+     */
+    private void centre(
+        final int _slot,
+        final Vector3f _dest) {
+      final float[] positions = this.world.positions();
+      final int p = _slot * PhysicsWorld.VECTOR_STRIDE;
+      _dest.set(positions[p], positions[p + 1], positions[p + 2]);
+    }
+
+    /**
+     * Gets the segment of a capsule, along its local y axis.
+     *
+     * @param _capsule the slot of the capsule
+     * @param _start receives the lower end
+     * @param _end receives the upper end
+     */
+    private void segment(
+        final int _capsule,
+        final Vector3f _start,
+        final Vector3f _end) {
+      final float[] rotations = this.world.rotations();
+      final float half
+        = this.world.extents()[(_capsule * PhysicsWorld.VECTOR_STRIDE) + 1];
+      final int c = (_capsule * PhysicsWorld.MATRIX_STRIDE)
+        + PhysicsWorld.VECTOR_STRIDE;
+      this.centre(_capsule, _start);
+      _end.set(_start).add(rotations[c] * half, rotations[c + 1] * half,
+        rotations[c + 2] * half);
+      _start.sub(rotations[c] * half, rotations[c + 1] * half,
+        rotations[c + 2] * half);
+    }
+
+    /**
+     * Computes the point of a segment closest to a point.
+     *
+     * @param _start the start of the segment
+     * @param _end the end of the segment
+     * @param _point the point
+     * @param _dest receives the closest point
+     */
+    private static void closestOnSegment(
+        final Vector3fc _start,
+        final Vector3fc _end,
+        final Vector3fc _point,
+        final Vector3f _dest) {
+      final float ex = _end.x() - _start.x();
+      final float ey = _end.y() - _start.y();
+      final float ez = _end.z() - _start.z();
+      final float length = (ex * ex) + (ey * ey) + (ez * ez);
+      float fraction = 0.0f;
+      if (length > Narrowphase.EPSILON) {
+        fraction = (((_point.x() - _start.x()) * ex)
+          + ((_point.y() - _start.y()) * ey)
+          + ((_point.z() - _start.z()) * ez)) / length;
+        fraction = Math.max(0.0f, Math.min(1.0f, fraction));
+      }
+      _dest.set(_start.x() + (ex * fraction), _start.y() + (ey * fraction),
+        _start.z() + (ez * fraction));
+    }
+
+    /**
+     * Computes the closest points between two segments.
+     *
+     * @param _startA the start of the first segment
+     * @param _endA the end of the first segment
+     * @param _startB the start of the second segment
+     * @param _endB the end of the second segment
+     * @param _destA receives the closest point on the first segment
+     * @param _destB receives the closest point on the second segment
+     */
+    private static void closestBetweenSegments(
+        final Vector3fc _startA,
+        final Vector3fc _endA,
+        final Vector3fc _startB,
+        final Vector3fc _endB,
+        final Vector3f _destA,
+        final Vector3f _destB) {
+      final float ax = _endA.x() - _startA.x();
+      final float ay = _endA.y() - _startA.y();
+      final float az = _endA.z() - _startA.z();
+      final float bx = _endB.x() - _startB.x();
+      final float by = _endB.y() - _startB.y();
+      final float bz = _endB.z() - _startB.z();
+      final float rx = _startA.x() - _startB.x();
+      final float ry = _startA.y() - _startB.y();
+      final float rz = _startA.z() - _startB.z();
+      final float lengthA = (ax * ax) + (ay * ay) + (az * az);
+      final float lengthB = (bx * bx) + (by * by) + (bz * bz);
+      final float projectionB = (bx * rx) + (by * ry) + (bz * rz);
+      float fractionA;
+      float fractionB;
+      if ((lengthA <= Narrowphase.EPSILON)
+          && (lengthB <= Narrowphase.EPSILON)) {
+        fractionA = 0.0f;
+        fractionB = 0.0f;
+      } else if (lengthA <= Narrowphase.EPSILON) {
+        fractionA = 0.0f;
+        fractionB = Math.max(0.0f, Math.min(1.0f, projectionB / lengthB));
+      } else {
+        final float projectionA = (ax * rx) + (ay * ry) + (az * rz);
+        if (lengthB <= Narrowphase.EPSILON) {
+          fractionB = 0.0f;
+          fractionA = Math.max(0.0f, Math.min(1.0f,
+            -projectionA / lengthA));
+        } else {
+          final float cross = (ax * bx) + (ay * by) + (az * bz);
+          final float denominator = (lengthA * lengthB) - (cross * cross);
+          fractionA = 0.0f;
+          if (denominator > Narrowphase.EPSILON) {
+            fractionA = Math.max(0.0f, Math.min(1.0f,
+              ((cross * projectionB) - (projectionA * lengthB))
+                / denominator));
+          }
+          fractionB = ((cross * fractionA) + projectionB) / lengthB;
+          if (fractionB < 0.0f) {
+            fractionB = 0.0f;
+            fractionA = Math.max(0.0f, Math.min(1.0f,
+              -projectionA / lengthA));
+          } else if (fractionB > 1.0f) {
+            fractionB = 1.0f;
+            fractionA = Math.max(0.0f, Math.min(1.0f,
+              (cross - projectionA) / lengthA));
+          }
+        }
+      }
+      _destA.set(_startA.x() + (ax * fractionA),
+        _startA.y() + (ay * fractionA), _startA.z() + (az * fractionA));
+      _destB.set(_startB.x() + (bx * fractionB),
+        _startB.y() + (by * fractionB), _startB.z() + (bz * fractionB));
+    }
+
+  }
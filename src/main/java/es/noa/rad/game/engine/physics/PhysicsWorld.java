@@ -0,0 +1,1244 @@
+package es.noa.rad.game.engine.physics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+
+import es.noa.rad.game.engine.configuration.settings.PhysicsSettings;
+import es.noa.rad.game.engine.memory.HandlePool;
+import es.noa.rad.game.engine.util.IntList;
+
+  /**
+   * Rigid body simulation stepped by the fixed update of the game loop.
+   *
+   * <p>Bodies are spheres, capsules or boxes identified by generational
+   * handles; their state lives in flat arrays indexed by handle slot
+   * (structure of arrays). A body with zero mass is static. Every
+   * {@link #step(float)}:
+   * <ol>
+   *   <li>Applies gravity and refreshes the world rotation, inverse inertia
+   *       and bounds of every body.</li>
+   *   <li>Finds the overlapping bounds with an incremental
+   *       {@link SweepAndPrune}.</li>
+   *   <li>Builds contact manifolds for the overlapping pairs
+   *       (narrowphase), matched with the previous step to warm start the
+   *       solver.</li>
+   *   <li>Splits the dynamic bodies into islands of touching bodies and
+   *       solves the contacts of independent islands in parallel with
+   *       sequential impulses.</li>
+   *   <li>Integrates positions and orientations.</li>
+   * </ol>
+   *
+   * <p>Contacts are speculative: pairs closer than a small margin already
+   * get a contact that only lets them approach until they touch, which
+   * keeps resting stacks free of jitter.
+   *
+   * <p>The world has no dependency on the window or the graphics API and
+   * can be stepped headless.
+   *
+   * <p>Not thread-safe: a world is modified and stepped by one thread at a
+   * time; the step itself uses the pool.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * PhysicsWorld world = new PhysicsWorld();
+   * int ground = world.createBox(50.0f, 0.5f, 50.0f, 0.0f);
+   * world.position(ground, 0.0f, -0.5f, 0.0f);
+   * int crate = world.createBox(0.5f, 0.5f, 0.5f, 1.0f);
+   * world.position(crate, 0.0f, 3.0f, 0.0f);
+   * GameTiming.get().updateCallback(world::step);
+   * }</pre>
+   */
+  public final class PhysicsWorld {
+
+    /**
+     * Number of floats of a vector.
+     */
+    static final int VECTOR_STRIDE = 3;
+
+    /**
+     * Number of floats of a quaternion.
+     */
+    static final int QUATERNION_STRIDE = 4;
+
+    /**
+     * Number of floats of a 3x3 matrix.
+     */
+    static final int MATRIX_STRIDE = 9;
+
+    /**
+     * Distance by which bounds are enlarged, within which contacts are
+     * generated before bodies touch.
+     */
+    static final float CONTACT_MARGIN = 0.02f;
+
+    /**
+     * Index of the w component of a quaternion.
+     */
+    private static final int W = 3;
+
+    /**
+     * Default friction coefficient of a body.
+     */
+    private static final float DEFAULT_FRICTION = 0.5f;
+
+    /**
+     * Default gravity acceleration along the y axis.
+     */
+    private static final float DEFAULT_GRAVITY = -9.81f;
+
+    /**
+     * Default number of velocity iterations per step.
+     */
+    private static final int DEFAULT_ITERATIONS = 10;
+
+    /**
+     * Inertia divisor of a solid box, for its half extents.
+     */
+    private static final float BOX_INERTIA_DIVISOR = 3.0f;
+
+    /**
+     * Number of manifolds of a range of islands below which it is solved
+     * on the calling worker.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /**
+     * Fraction of the volume of a sphere, as a factor of r cubed.
+     */
+    private static final float SPHERE_VOLUME = 4.0f / 3.0f;
+
+    /**
+     * Inertia factor of a solid sphere.
+     */
+    private static final float SPHERE_INERTIA = 0.4f;
+
+    /**
+     * Inertia factor of a solid cylinder around its axis.
+     */
+    private static final float CYLINDER_INERTIA = 0.5f;
+
+    /**
+     * Inertia divisor of a solid cylinder across its axis, for the
+     * radius term.
+     */
+    private static final float CYLINDER_RADIUS_DIVISOR = 4.0f;
+
+    /**
+     * Inertia divisor of a solid cylinder or box across an axis, for the
+     * length term.
+     */
+    private static final float LENGTH_DIVISOR = 12.0f;
+
+    /**
+     * Offset factor of the centre of mass of a hemisphere from its base,
+     * as a factor of the radius, used by the capsule inertia.
+     */
+    private static final float HEMISPHERE_OFFSET = 3.0f / 8.0f;
+
+    /**
+     * Generational handles of the bodies.
+     */
+    private final HandlePool handles;
+
+    /**
+     * Shape of every body.
+     */
+    private Shape[] shapes;
+
+    /**
+     * Shape dimensions of every body: half extents of a box, radius of a
+     * sphere, radius and half height of a capsule.
+     */
+    private float[] extents;
+
+    /**
+     * Position of every body.
+     */
+    private float[] positions;
+
+    /**
+     * Orientation of every body, as a quaternion.
+     */
+    private float[] orientations;
+
+    /**
+     * Rotation matrix of every body, column-major, refreshed every step.
+     */
+    private float[] rotations;
+
+    /**
+     * Linear velocity of every body.
+     */
+    private float[] velocities;
+
+    /**
+     * Angular velocity of every body.
+     */
+    private float[] angularVelocities;
+
+    /**
+     * Inverse mass of every body, zero for static bodies.
+     */
+    private float[] inverseMasses;
+
+    /**
+     * Diagonal of the inverse inertia tensor of every body in its local
+     * frame.
+     */
+    private float[] localInverseInertias;
+
+    /**
+     * Inverse inertia tensor of every body in world space, column-major,
+     * refreshed every step.
+     */
+    private float[] inverseInertias;
+
+    /**
+     * Friction coefficient of every body.
+     */
+    private float[] frictions;
+
+    /**
+     * Restitution of every body.
+     */
+    private float[] restitutions;
+
+    /**
+     * Minimum x of the bounds of every body.
+     */
+    private float[] minX;
+
+    /**
+     * Minimum y of the bounds of every body.
+     */
+    private float[] minY;
+
+    /**
+     * Minimum z of the bounds of every body.
+     */
+    private float[] minZ;
+
+    /**
+     * Maximum x of the bounds of every body.
+     */
+    private float[] maxX;
+
+    /**
+     * Maximum y of the bounds of every body.
+     */
+    private float[] maxY;
+
+    /**
+     * Maximum z of the bounds of every body.
+     */
+    private float[] maxZ;
+
+    /**
+     * Broadphase over the bounds.
+     */
+    private final SweepAndPrune broadphase;
+
+    /**
+     * Overlapping pairs of the running step, as consecutive slots.
+     */
+    private final IntList pairs;
+
+    /**
+     * Contact manifolds and solver.
+     */
+    private final ContactSolver contacts;
+
+    /**
+     * Contact generation for the overlapping pairs.
+     */
+    private final Narrowphase narrowphase;
+
+    /**
+     * Islands of touching dynamic bodies.
+     */
+    private final Islands islands;
+
+    /**
+     * Gravity acceleration.
+     */
+    private final Vector3f gravity;
+
+    /**
+     * Number of velocity iterations per step.
+     */
+    private int iterations;
+
+    /**
+     * Time step of the running step.
+     */
+    private float deltaTime;
+
+    /**
+     * Duration of the last step in nanoseconds.
+     */
+    private long stepNanos;
+
+    /**
+     * Creates a world configured by the physics settings.
+     */
+    public PhysicsWorld() {
+      this(PhysicsSettings.PHYSICS_BODY_CAPACITY.<Integer>get());
+      this.gravity.set(0.0f, PhysicsSettings.PHYSICS_GRAVITY.<Float>get(),
+        0.0f);
+      this.iterations = PhysicsSettings.PHYSICS_SOLVER_ITERATIONS.get();
+    }
+
+    /**
+     * Creates a world with the default gravity and iteration count.
+     *
+     * @param _capacity the number of bodies before growing
+     */
+    public PhysicsWorld(
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.handles = new HandlePool(capacity);
+      this.shapes = new Shape[0];
+      this.grow(capacity);
+      this.broadphase = new SweepAndPrune(capacity);
+      this.pairs = new IntList(capacity * 2);
+      this.contacts = new ContactSolver(this, capacity);
+      this.narrowphase = new Narrowphase(this, this.contacts);
+      this.islands = new Islands(capacity);
+      this.gravity = new Vector3f(0.0f, PhysicsWorld.DEFAULT_GRAVITY, 0.0f);
+      this.iterations = PhysicsWorld.DEFAULT_ITERATIONS;
+    }
+
+    /**
+     * Creates a box body at the origin.
+     *
+     * @param _halfX the half extent along the local x axis
+     * @param _halfY the half extent along the local y axis
+     * @param _halfZ the half extent along the local z axis
+     * @param _mass the mass, zero for a static body
+     * @return the body handle
+     * @throws IllegalArgumentException if a dimension is not positive or
+     *     the mass is negative
+     */
+    public int createBox(
+        final float _halfX,
+        final float _halfY,
+        final float _halfZ,
+        final float _mass) {
+      PhysicsWorld.checkDimension(_halfX);
+      PhysicsWorld.checkDimension(_halfY);
+      PhysicsWorld.checkDimension(_halfZ);
+      final int body = this.create(Shape.BOX, _mass);
+      final int slot = this.handles.slot(body);
+      final int offset = slot * PhysicsWorld.VECTOR_STRIDE;
+      this.extents[offset] = _halfX;
+      this.extents[offset + 1] = _halfY;
+      this.extents[offset + 2] = _halfZ;
+      if (_mass > 0.0f) {
+        final float x = _halfX * _halfX;
+        final float y = _halfY * _halfY;
+        final float z = _halfZ * _halfZ;
+        /* Full extents are twice the half ones: m (2a)^2 / 12 = m a^2 / 3. */
+        final float factor = _mass / PhysicsWorld.BOX_INERTIA_DIVISOR;
+        this.inertia(slot, factor * (y + z), factor * (x + z),
+          factor * (x + y));
+      }
+      return body;
+    }
+
+    /**
+     * Creates a sphere body at the origin.
+     *
+     * @param _radius the radius
+     * @param _mass the mass, zero for a static body
+     * @return the body handle
+     * @throws IllegalArgumentException if the radius is not positive or
+     *     the mass is negative
+     */
+    public int createSphere(
+        final float _radius,
+        final float _mass) {
+      PhysicsWorld.checkDimension(_radius);
+      final int body = this.create(Shape.SPHERE, _mass);
+      final int slot = this.handles.slot(body);
+      this.extents[slot * PhysicsWorld.VECTOR_STRIDE] = _radius;
+      if (_mass > 0.0f) {
+        final float inertia
+          = PhysicsWorld.SPHERE_INERTIA * _mass * _radius * _radius;
+        this.inertia(slot, inertia, inertia, inertia);
+      }
+      return body;
+    }
+
+    /**
+     * Creates a capsule body at the origin, along the local y axis.
+     *
+     * @param _radius the radius
+     * @param _halfHeight the half height of the inner segment
+     * @param _mass the mass, zero for a static body
+     * @return the body handle
+     * @throws IllegalArgumentException if a dimension is not positive or
+     *     the mass is negative
+     */
+    public int createCapsule(
+        final float _radius,
+        final float _halfHeight,
+        final float _mass) {
+      PhysicsWorld.checkDimension(_radius);
+      PhysicsWorld.checkDimension(_halfHeight);
+      final int body = this.create(Shape.CAPSULE, _mass);
+      final int slot = this.handles.slot(body);
+      final int offset = slot * PhysicsWorld.VECTOR_STRIDE;
+      this.extents[offset] = _radius;
+      this.extents[offset + 1] = _halfHeight;
+      if (_mass > 0.0f) {
+        /* Split the mass between the cylinder and the two hemispheres. */
+        final float radius2 = _radius * _radius;
+        final float height = 2.0f * _halfHeight;
+        final float cylinderVolume = radius2 * height;
+        final float sphereVolume = PhysicsWorld.SPHERE_VOLUME * radius2
+          * _radius;
+        final float cylinderMass
+          = (_mass * cylinderVolume) / (cylinderVolume + sphereVolume);
+        final float sphereMass = _mass - cylinderMass;
+        final float axial = (PhysicsWorld.CYLINDER_INERTIA * cylinderMass
+          * radius2) + (PhysicsWorld.SPHERE_INERTIA * sphereMass * radius2);
+        final float across = (cylinderMass
+          * ((radius2 / PhysicsWorld.CYLINDER_RADIUS_DIVISOR)
+          + ((height * height) / PhysicsWorld.LENGTH_DIVISOR)))
+          + (sphereMass * ((PhysicsWorld.SPHERE_INERTIA * radius2)
+          + ((height * height) / PhysicsWorld.CYLINDER_RADIUS_DIVISOR)
+          + (PhysicsWorld.HEMISPHERE_OFFSET * height * _radius)));
+        this.inertia(slot, across, axial, across);
+      }
+      return body;
+    }
+
+    /**
+     * Destroys a body.
+     *
+     * @param _body the body handle
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void destroy(
+        final int _body) {
+      final int slot = this.handles.release(_body);
+      this.broadphase.remove(slot);
+      this.shapes[slot] = null;
+    }
+
+    /**
+     * Checks whether a handle identifies a live body.
+     *
+     * @param _body the body handle
+     * @return {@code true} if the body is live
+     */
+    public boolean isValid(
+        final int _body) {
+      return this.handles.isValid(_body);
+    }
+
+    /**
+     * Sets the position of a body.
+     *
+     * @param _body the body handle
+     * @param _x the x coordinate
+     * @param _y the y coordinate
+     * @param _z the z coordinate
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void position(
+        final int _body,
+        final float _x,
+        final float _y,
+        final float _z) {
+      PhysicsWorld.set(this.positions, this.handles.slot(_body), _x, _y, _z);
+    }
+
+    /**
+     * Gets the position of a body.
+     *
+     * @param _body the body handle
+     * @param _destination the vector receiving the position
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Vector3f position(
+        final int _body,
+        final Vector3f _destination) {
+      return PhysicsWorld.get(this.positions, this.handles.slot(_body),
+        _destination);
+    }
+
+    /**
+     * Sets the orientation of a body.
+     *
+     * @param _body the body handle
+     * @param _orientation the orientation, expected to be normalized
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void orientation(
+        final int _body,
+        final Quaternionfc _orientation) {
+      final int offset
+        = this.handles.slot(_body) * PhysicsWorld.QUATERNION_STRIDE;
+      this.orientations[offset] = _orientation.x();
+      this.orientations[offset + 1] = _orientation.y();
+      this.orientations[offset + 2] = _orientation.z();
+      this.orientations[offset + PhysicsWorld.W] = _orientation.w();
+    }
+
+    /**
+     * Gets the orientation of a body.
+     *
+     * @param _body the body handle
+     * @param _destination the quaternion receiving the orientation
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Quaternionf orientation(
+        final int _body,
+        final Quaternionf _destination) {
+      final int offset
+        = this.handles.slot(_body) * PhysicsWorld.QUATERNION_STRIDE;
+      return _destination.set(this.orientations[offset],
+        this.orientations[offset + 1], this.orientations[offset + 2],
+        this.orientations[offset + PhysicsWorld.W]);
+    }
+
+    /**
+     * Sets the linear velocity of a body.
+     *
+     * @param _body the body handle
+     * @param _x the x velocity
+     * @param _y the y velocity
+     * @param _z the z velocity
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void velocity(
+        final int _body,
+        final float _x,
+        final float _y,
+        final float _z) {
+      PhysicsWorld.set(this.velocities, this.handles.slot(_body), _x, _y,
+        _z);
+    }
+
+    /**
+     * Gets the linear velocity of a body.
+     *
+     * @param _body the body handle
+     * @param _destination the vector receiving the velocity
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Vector3f velocity(
+        final int _body,
+        final Vector3f _destination) {
+      return PhysicsWorld.get(this.velocities, this.handles.slot(_body),
+        _destination);
+    }
+
+    /**
+     * Sets the angular velocity of a body.
+     *
+     * @param _body the body handle
+     * @param _x the angular velocity around x in radians per second
+     * @param _y the angular velocity around y in radians per second
+     * @param _z the angular velocity around z in radians per second
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void angularVelocity(
+        final int _body,
+        final float _x,
+        final float _y,
+        final float _z) {
+      PhysicsWorld.set(this.angularVelocities, this.handles.slot(_body), _x,
+        _y, _z);
+    }
+
+    /**
+     * Gets the angular velocity of a body.
+     *
+     * @param _body the body handle
+     * @param _destination the vector receiving the angular velocity
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Vector3f angularVelocity(
+        final int _body,
+        final Vector3f _destination) {
+      return PhysicsWorld.get(this.angularVelocities,
+        this.handles.slot(_body), _destination);
+    }
+
+    /**
+     * Sets the friction coefficient of a body. The coefficient of a
+     * contact is the geometric mean of both bodies.
+     *
+     * @param _body the body handle
+     * @param _friction the friction coefficient
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void friction(
+        final int _body,
+        final float _friction) {
+      this.frictions[this.handles.slot(_body)] = _friction;
+    }
+
+    /**
+     * Sets the restitution of a body. The restitution of a contact is the
+     * largest of both bodies.
+     *
+     * @param _body the body handle
+     * @param _restitution the restitution, from 0 (no bounce) to 1
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void restitution(
+        final int _body,
+        final float _restitution) {
+      this.restitutions[this.handles.slot(_body)] = _restitution;
+    }
+
+    /**
+     * Sets the gravity acceleration.
+     *
+     * @param _x the x acceleration
+     * @param _y the y acceleration
+     * @param _z the z acceleration
+     */
+    public void gravity(
+        final float _x,
+        final float _y,
+        final float _z) {
+      this.gravity.set(_x, _y, _z);
+    }
+
+    /**
+     * Sets the number of velocity iterations of the solver per step.
+     *
+     * @param _iterations the iteration count
+     * @throws IllegalArgumentException if the count is not positive
+     */
+    public void iterations(
+        final int _iterations) {
+      if (_iterations <= 0) {
+        throw new IllegalArgumentException(
+          "Iteration count must be positive: " + _iterations);
+      }
+      this.iterations = _iterations;
+    }
+
+    /**
+     * Advances the simulation, solving islands on the common pool.
+     *
+     * @param _deltaTime the fixed time step in seconds
+     */
+    public void step(
+        final float _deltaTime) {
+      this.step(_deltaTime, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Advances the simulation.
+     *
+     * @param _deltaTime the fixed time step in seconds
+     * @param _pool the pool solving the islands
+     */
+    public void step(
+        final float _deltaTime,
+        final ForkJoinPool _pool) {
+      if (_deltaTime <= 0.0f) {
+        return;
+      }
+      final long start = System.nanoTime();
+      this.deltaTime = _deltaTime;
+      this.integrateVelocities();
+      this.broadphase.update(this.minX, this.minY, this.minZ, this.maxX,
+        this.maxY, this.maxZ, this.pairs);
+
+      this.contacts.begin();
+      final int[] pair = this.pairs.array();
+      for (int index = 0; index < this.pairs.size(); index += 2) {
+        final int first = pair[index];
+        final int second = pair[index + 1];
+        if ((this.inverseMasses[first] > 0.0f)
+            || (this.inverseMasses[second] > 0.0f)) {
+          this.narrowphase.collide(first, second);
+        }
+      }
+
+      this.islands.build(this.handles.slotCount(), this.inverseMasses,
+        this.contacts);
+      final int islandCount = this.islands.count();
+      if (islandCount > 0) {
+        if ((islandCount == 1) || (_pool.getParallelism() == 1)) {
+          this.solveIslands(0, islandCount);
+        } else {
+          _pool.invoke(new IslandTask(0, islandCount));
+        }
+      }
+
+      this.integratePositions();
+      this.contacts.end();
+      this.stepNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the number of bodies.
+     *
+     * @return the body count
+     */
+    public int bodyCount() {
+      return this.handles.size();
+    }
+
+    /**
+     * Gets the number of overlapping bounds found by the last step.
+     *
+     * @return the pair count
+     */
+    public int pairCount() {
+      return this.pairs.size() / 2;
+    }
+
+    /**
+     * Gets the number of contact manifolds of the last step.
+     *
+     * @return the manifold count
+     */
+    public int manifoldCount() {
+      return this.contacts.manifoldCount();
+    }
+
+    /**
+     * Gets the number of contact points of the last step.
+     *
+     * @return the contact count
+     */
+    public int contactCount() {
+      return this.contacts.pointCount();
+    }
+
+    /**
+     * Gets the number of islands solved by the last step.
+     *
+     * @return the island count
+     */
+    public int islandCount() {
+      return this.islands.count();
+    }
+
+    /**
+     * Gets the duration of the last step.
+     *
+     * @return the step time in nanoseconds
+     */
+    public long stepNanos() {
+      return this.stepNanos;
+    }
+
+    /**
+     * Gets the shape of every body.
+     *
+     * @return the shapes, by slot
+     */
+    Shape[] shapes() {
+      return this.shapes;
+    }
+
+    /**
+     * Gets the shape dimensions of every body.
+     *
+     * @return the dimensions, three floats per slot
+     */
+    float[] extents() {
+      return this.extents;
+    }
+
+    /**
+     * Gets the position of every body.
+     *
+     * @return the positions, three floats per slot
+     */
+    float[] positions() {
+      return this.positions;
+    }
+
+    /**
+     * Gets the rotation matrix of every body.
+     *
+     * @return the column-major matrices, nine floats per slot
+     */
+    float[] rotations() {
+      return this.rotations;
+    }
+
+    /**
+     * Gets the linear velocity of every body.
+     *
+     * @return the velocities, three floats per slot
+     */
+    float[] velocities() {
+      return this.velocities;
+    }
+
+    /**
+     * Gets the angular velocity of every body.
+     *
+     * @return the angular velocities, three floats per slot
+     */
+    float[] angularVelocities() {
+      return this.angularVelocities;
+    }
+
+    /**
+     * Gets the inverse mass of every body.
+     *
+     * @return the inverse masses, by slot
+     */
+    float[] inverseMasses() {
+      return this.inverseMasses;
+    }
+
+    /**
+     * Gets the world inverse inertia tensor of every body.
+     *
+     * @return the column-major tensors, nine floats per slot
+     */
+    float[] inverseInertias() {
+      return this.inverseInertias;
+    }
+
+    /**
+     * Gets the friction coefficient of every body.
+     *
+     * @return the friction coefficients, by slot
+     */
+    float[] frictions() {
+      return this.frictions;
+    }
+
+    /**
+     * Gets the restitution of every body.
+     *
+     * @return the restitutions, by slot
+     */
+    float[] restitutions() {
+      return this.restitutions;
+    }
+
+    /**
+     * Gets the time step of the running step.
+     *
+     * @return the time step in seconds
+     */
+    float deltaTime() {
+      return this.deltaTime;
+    }
+
+    /**
+     * Creates a body with default state.
+     *
+     * @param _shape the shape
+     * @param _mass the mass, zero for a static body
+     * @return the body handle
+     */
+    private int create(
+        final Shape _shape,
+        final float _mass) {
+      if (!(_mass >= 0.0f)) {
+        throw new IllegalArgumentException(
+          "Mass must not be negative: " + _mass);
+      }
+      final int body = this.handles.allocate();
+      final int slot = this.handles.slot(body);
+      if (slot >= this.shapes.length) {
+        this.grow(this.handles.capacity());
+      }
+      this.shapes[slot] = _shape;
+      PhysicsWorld.set(this.extents, slot, 0.0f, 0.0f, 0.0f);
+      PhysicsWorld.set(this.positions, slot, 0.0f, 0.0f, 0.0f);
+      PhysicsWorld.set(this.velocities, slot, 0.0f, 0.0f, 0.0f);
+      PhysicsWorld.set(this.angularVelocities, slot, 0.0f, 0.0f, 0.0f);
+      PhysicsWorld.set(this.localInverseInertias, slot, 0.0f, 0.0f, 0.0f);
+      final int offset = slot * PhysicsWorld.QUATERNION_STRIDE;
+      this.orientations[offset] = 0.0f;
+      this.orientations[offset + 1] = 0.0f;
+      this.orientations[offset + 2] = 0.0f;
+      this.orientations[offset + PhysicsWorld.W] = 1.0f;
+      this.inverseMasses[slot] = 0.0f;
+      if (_mass > 0.0f) {
+        this.inverseMasses[slot] = 1.0f / _mass;
+      }
+      this.frictions[slot] = PhysicsWorld.DEFAULT_FRICTION;
+      this.restitutions[slot] = 0.0f;
+      this.broadphase.insert(slot);
+      return body;
+    }
+
+    /**
+     * Stores the inverse of a diagonal inertia tensor.
+     *
+     * @param _slot the body slot
+     * @param _x the inertia around the local x axis
+     * @param _y the inertia around the local y axis
+     * @param _z the inertia around the local z axis
+     */
+    private void inertia(
+        final int _slot,
+        final float _x,
+        final float _y,
+        final float _z) {
+      PhysicsWorld.set(this.localInverseInertias, _slot, 1.0f / _x,
+        1.0f / _y, 1.0f / _z);
+    }
+
+    /**
+     * Applies gravity and refreshes the rotation, world inverse inertia
+     * and bounds of every body.
+     */
+    private void integrateVelocities() {
+      final float dt = this.deltaTime;
+      final float gravityX = this.gravity.x * dt;
+      final float gravityY = this.gravity.y * dt;
+      final float gravityZ = this.gravity.z * dt;
+      for (int slot = 0; slot < this.handles.slotCount(); slot++) {
+        if (this.shapes[slot] == null) {
+          continue;
+        }
+        final int vector = slot * PhysicsWorld.VECTOR_STRIDE;
+        if (this.inverseMasses[slot] > 0.0f) {
+          this.velocities[vector] += gravityX;
+          this.velocities[vector + 1] += gravityY;
+          this.velocities[vector + 2] += gravityZ;
+        }
+        this.refreshRotation(slot);
+        this.refreshInertia(slot);
+        this.refreshBounds(slot);
+      }
+    }
+
+    /**
+     * Moves and rotates every dynamic body by its velocities.
+     */
+    private void integratePositions() {
+      final float dt = this.deltaTime;
+      final float halfDt = 0.5f * dt;
+      for (int slot = 0; slot < this.handles.slotCount(); slot++) {
+        if ((this.shapes[slot] == null)
+            || (this.inverseMasses[slot] == 0.0f)) {
+          continue;
+        }
+        final int vector = slot * PhysicsWorld.VECTOR_STRIDE;
+        this.positions[vector] += this.velocities[vector] * dt;
+        this.positions[vector + 1] += this.velocities[vector + 1] * dt;
+        this.positions[vector + 2] += this.velocities[vector + 2] * dt;
+
+        /* q += 0.5 dt (w, 0) q, then renormalize. */
+        final float wx = this.angularVelocities[vector] * halfDt;
+        final float wy = this.angularVelocities[vector + 1] * halfDt;
+        final float wz = this.angularVelocities[vector + 2] * halfDt;
+        final int offset = slot * PhysicsWorld.QUATERNION_STRIDE;
+        final float qx = this.orientations[offset];
+        final float qy = this.orientations[offset + 1];
+        final float qz = this.orientations[offset + 2];
+        final float qw = this.orientations[offset + PhysicsWorld.W];
+        final float x = qx + ((wx * qw) + (wy * qz)) - (wz * qy);
+        final float y = qy + ((wy * qw) + (wz * qx)) - (wx * qz);
+        final float z = qz + ((wz * qw) + (wx * qy)) - (wy * qx);
+        final float w = qw - (wx * qx) - (wy * qy) - (wz * qz);
+        final float scale
+          = (float) (1.0D / Math.sqrt((x * x) + (y * y) + (z * z) + (w * w)));
+        this.orientations[offset] = x * scale;
+        this.orientations[offset + 1] = y * scale;
+        this.orientations[offset + 2] = z * scale;
+        this.orientations[offset + PhysicsWorld.W] = w * scale;
+      }
+    }
+
+    /**
+     * Converts the orientation of a body to its rotation matrix.
+     *
+     * @param _slot the body slot
+     */
+    private void refreshRotation(
+        final int _slot) {
+      final int offset = _slot * PhysicsWorld.QUATERNION_STRIDE;
+      final float x = this.orientations[offset];
+      final float y = this.orientations[offset + 1];
+      final float z = this.orientations[offset + 2];
+      final float w = this.orientations[offset + PhysicsWorld.W];
+      final float[] matrix = this.rotations;
+      final int m = _slot * PhysicsWorld.MATRIX_STRIDE;
+      matrix[m] = 1.0f - (2.0f * ((y * y) + (z * z)));
+      matrix[m + 1] = 2.0f * ((x * y) + (w * z));
+      matrix[m + 2] = 2.0f * ((x * z) - (w * y));
+      matrix[m + PhysicsWorld.VECTOR_STRIDE] = 2.0f * ((x * y) - (w * z));
+      matrix[m + PhysicsWorld.VECTOR_STRIDE + 1]
+        = 1.0f - (2.0f * ((x * x) + (z * z)));
+      matrix[m + PhysicsWorld.VECTOR_STRIDE + 2] = 2.0f * ((y * z) + (w * x));
+      matrix[m + (2 * PhysicsWorld.VECTOR_STRIDE)]
+        = 2.0f * ((x * z) + (w * y));
+      matrix[m + (2 * PhysicsWorld.VECTOR_STRIDE) + 1]
+        = 2.0f * ((y * z) - (w * x));
+      matrix[m + (2 * PhysicsWorld.VECTOR_STRIDE) + 2]
+        = 1.0f - (2.0f * ((x * x) + (y * y)));
+    }
+
+    /**
+     * Rotates the inverse inertia of a body to world space:
+     * {@code R diag(I^-1) R^T}.
+     *
+     * @param _slot the body slot
+     */
+    private void refreshInertia(
+        final int _slot) {
+      final int m = _slot * PhysicsWorld.MATRIX_STRIDE;
+      final int local = _slot * PhysicsWorld.VECTOR_STRIDE;
+      for (int column = 0; column < PhysicsWorld.VECTOR_STRIDE; column++) {
+        for (int row = 0; row < PhysicsWorld.VECTOR_STRIDE; row++) {
+          float sum = 0.0f;
+          for (int axis = 0; axis < PhysicsWorld.VECTOR_STRIDE; axis++) {
+            sum += this.rotations[m + (axis * PhysicsWorld.VECTOR_STRIDE)
+                + row]
+              * this.localInverseInertias[local + axis]
+              * this.rotations[m + (axis * PhysicsWorld.VECTOR_STRIDE)
+                + column];
+          }
+          this.inverseInertias[m + (column * PhysicsWorld.VECTOR_STRIDE)
+            + row] = sum;
+        }
+      }
+    }
+
+    /**
+     * Computes the world bounds of a body, enlarged by the contact margin.
+     *
+     * @param _slot the body slot
+     */
+    private void refreshBounds(
+        final int _slot) {
+      final int vector = _slot * PhysicsWorld.VECTOR_STRIDE;
+      final int m = _slot * PhysicsWorld.MATRIX_STRIDE;
+      final float[] matrix = this.rotations;
+      float x;
+      float y;
+      float z;
+      switch (this.shapes[_slot]) {
+        case SPHERE:
+          x = this.extents[vector];
+          y = x;
+          z = x;
+          break;
+        case CAPSULE:
+          final float radius = this.extents[vector];
+          final float half = this.extents[vector + 1];
+          final int axis = m + PhysicsWorld.VECTOR_STRIDE;
+          x = (Math.abs(matrix[axis]) * half) + radius;
+          y = (Math.abs(matrix[axis + 1]) * half) + radius;
+          z = (Math.abs(matrix[axis + 2]) * half) + radius;
+          break;
+        default:
+          x = 0.0f;
+          y = 0.0f;
+          z = 0.0f;
+          for (int column = 0; column < PhysicsWorld.VECTOR_STRIDE;
+              column++) {
+            final float extent = this.extents[vector + column];
+            final int c = m + (column * PhysicsWorld.VECTOR_STRIDE);
+            x += Math.abs(matrix[c]) * extent;
+            y += Math.abs(matrix[c + 1]) * extent;
+            z += Math.abs(matrix[c + 2]) * extent;
+          }
+          break;
+      }
+      x += PhysicsWorld.CONTACT_MARGIN;
+      y += PhysicsWorld.CONTACT_MARGIN;
+      z += PhysicsWorld.CONTACT_MARGIN;
+      this.minX[_slot] = this.positions[vector] - x;
+      this.minY[_slot] = this.positions[vector + 1] - y;
+      this.minZ[_slot] = this.positions[vector + 2] - z;
+      this.maxX[_slot] = this.positions[vector] + x;
+      this.maxY[_slot] = this.positions[vector + 1] + y;
+      this.maxZ[_slot] = this.positions[vector + 2] + z;
+    }
+
+    /**
+     * Solves a range of islands on the calling thread.
+     *
+     * @param _from the first island
+     * @param _to the island after the last one
+     */
+    private void solveIslands(
+        final int _from,
+        final int _to) {
+      final int[] order = this.islands.manifolds();
+      for (int island = _from; island < _to; island++) {
+        this.contacts.solve(order, this.islands.start(island),
+          this.islands.start(island + 1), this.iterations);
+      }
+    }
+
+    /**
+     * Grows the per-body arrays.
+     *
+     * @param _capacity the new number of slots
+     */
+    private void grow(
+        final int _capacity) {
+      this.shapes = Arrays.copyOf(this.shapes, _capacity);
+      this.extents = PhysicsWorld.grow(this.extents,
+        _capacity * PhysicsWorld.VECTOR_STRIDE);
+      this.positions = PhysicsWorld.grow(this.positions,
+        _capacity * PhysicsWorld.VECTOR_STRIDE);
+      this.orientations = PhysicsWorld.grow(this.orientations,
+        _capacity * PhysicsWorld.QUATERNION_STRIDE);
+      this.rotations = PhysicsWorld.grow(this.rotations,
+        _capacity * PhysicsWorld.MATRIX_STRIDE);
+      this.velocities = PhysicsWorld.grow(this.velocities,
+        _capacity * PhysicsWorld.VECTOR_STRIDE);
+      this.angularVelocities = PhysicsWorld.grow(this.angularVelocities,
+        _capacity * PhysicsWorld.VECTOR_STRIDE);
+      this.inverseMasses = PhysicsWorld.grow(this.inverseMasses, _capacity);
+      this.localInverseInertias = PhysicsWorld.grow(
+        this.localInverseInertias, _capacity * PhysicsWorld.VECTOR_STRIDE);
+      this.inverseInertias = PhysicsWorld.grow(this.inverseInertias,
+        _capacity * PhysicsWorld.MATRIX_STRIDE);
+      this.frictions = PhysicsWorld.grow(this.frictions, _capacity);
+      this.restitutions = PhysicsWorld.grow(this.restitutions, _capacity);
+      this.minX = PhysicsWorld.grow(this.minX, _capacity);
+      this.minY = PhysicsWorld.grow(this.minY, _capacity);
+      this.minZ = PhysicsWorld.grow(this.minZ, _capacity);
+      this.maxX = PhysicsWorld.grow(this.maxX, _capacity);
+      this.maxY = PhysicsWorld.grow(this.maxY, _capacity);
+      this.maxZ = PhysicsWorld.grow(this.maxZ, _capacity);
+    }
+
+    /**
+     * Grows an array, creating it the first time.
+     *
+     * @param _array the array, may be null
+     * @param _length the new length
+     * @return the grown array
+     */
+    private static float[] grow(
+        final float[] _array,
+        final int _length) {
+      if (_array == null) {
+        return new float[_length];
+      }
+      return Arrays.copyOf(_array, _length);
+    }
+
+    /**
+     * Writes a vector into a per-body array.
+     *
+     * @param _array the array
+     * @param _slot the body slot
+     * @param _x the x component
+     * @param _y the y component
+     * @param _z the z component
+     */
+    private static void set(
+        final float[] _array,
+        final int _slot,
+        final float _x,
+        final float _y,
+        final float _z) {
+      final int offset = _slot * PhysicsWorld.VECTOR_STRIDE;
+      _array[offset] = _x;
+      _array[offset + 1] = _y;
+      _array[offset + 2] = _z;
+    }
+
+    /**
+     * Reads a vector from a per-body array.
+     *
+     * @param _array the array
+     * @param _slot the body slot
+     * @param _destination the vector receiving the components
+     * @return the destination
+     */
+    private static Vector3f get(
+        final float[] _array,
+        final int _slot,
+        final Vector3f _destination) {
+      final int offset = _slot * PhysicsWorld.VECTOR_STRIDE;
+      return _destination.set(_array[offset], _array[offset + 1],
+        _array[offset + 2]);
+    }
+
+    /**
+     * Fails if a shape dimension is not positive.
+     *
+     * @param _dimension the dimension
+     */
+    private static void checkDimension(
+        final float _dimension) {
+      if (!(_dimension > 0.0f)) {
+        throw new IllegalArgumentException(
+          "Shape dimension must be positive: " + _dimension);
+      }
+    }
+
+    /**
+     * Task solving a range of islands, split while it holds many
+     * manifolds.
+     */
+    private final class IslandTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * First island of the range.
+       */
+      private final int from;
+
+      /**
+       * Island after the last one of the range.
+       */
+      private final int to;
+
+      /**
+       * Creates the task of a range.
+       *
+       * @param _from the first island
+       * @param _to the island after the last one
+       */
+      IslandTask(
+          final int _from,
+          final int _to) {
+        this.from = _from;
+        this.to = _to;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        final Islands grouping = PhysicsWorld.this.islands;
+        if (((this.to - this.from) == 1)
+            || ((grouping.start(this.to) - grouping.start(this.from))
+              <= PhysicsWorld.PARALLEL_THRESHOLD)) {
+          PhysicsWorld.this.solveIslands(this.from, this.to);
+          return;
+        }
+        final int middle = (this.from + this.to) >>> 1;
+        ForkJoinTask.invokeAll(
+          new IslandTask(this.from, middle), new IslandTask(middle, this.to));
+      }
+
+    }
+
+  }
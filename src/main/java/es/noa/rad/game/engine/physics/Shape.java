@@ -0,0 +1,29 @@
+package es.noa.rad.game.engine.physics;
+
+  /**
+   * Collision shapes of the rigid bodies of a {@link PhysicsWorld}.
+   *
+   * <p>Every shape is centred on the body position and rotated by the body
+   * orientation. The constants are declared in the order the narrowphase
+   * dispatches pairs: a pair is swapped so that its first shape never
+   * comes after the second one.
+   */
+  public enum Shape {
+
+    /**
+     * Sphere given by its radius.
+     */
+    SPHERE,
+
+    /**
+     * Capsule along the local y axis, given by its radius and the half
+     * height of its inner segment.
+     */
+    CAPSULE,
+
+    /**
+     * Box given by its half extents along the local axes.
+     */
+    BOX
+
+  }
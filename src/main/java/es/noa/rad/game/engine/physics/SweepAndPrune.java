@@ -0,0 +1,317 @@
+package es.noa.rad.game.engine.physics;
+
+import java.util.Arrays;
+
+import es.noa.rad.game.engine.util.IntList;
+
+  /**
+   * Incremental sweep-and-prune broadphase over bounds stored as structure
+   * of arrays.
+   *
+   * <p>Proxies are kept sorted by the minimum of their bounds along a sweep
+   * axis. Between two updates bodies barely move, so the order of the
+   * previous update is almost right and an insertion sort repairs it in
+   * close to linear time. The sweep then walks the sorted proxies and only
+   * tests the proxies whose interval on the sweep axis overlaps, which
+   * keeps the pair search near {@code O(n)} for scenes that are spread
+   * out along that axis.
+   *
+   * <p>The sweep axis is the one along which the bounds centres vary most,
+   * re-evaluated every update; switching axis sorts the proxies from
+   * scratch once.
+   *
+   * <p>Proxies are small integers, typically the slots of the bodies; the
+   * bounds of proxy {@code p} are read at index {@code p} of the six
+   * arrays passed to {@link #update}.
+   *
+   * <p>Not thread-safe.
+   */
+  public final class SweepAndPrune {
+
+    /**
+     * Number of spatial axes.
+     */
+    private static final int AXES = 3;
+
+    /**
+     * Factor by which the spread along another axis must exceed the spread
+     * along the current sweep axis before the axis is switched.
+     */
+    private static final float AXIS_HYSTERESIS = 1.5f;
+
+    /**
+     * Number of bits a sortable key is shifted by when packed with a
+     * proxy.
+     */
+    private static final int KEY_SHIFT = 32;
+
+    /**
+     * Proxies sorted by the minimum of their bounds along the sweep axis.
+     */
+    private int[] order;
+
+    /**
+     * Packed keys and proxies, scratch of a full sort.
+     */
+    private long[] sortKeys;
+
+    /**
+     * Minimum arrays of the running update, by axis.
+     */
+    private final float[][] mins;
+
+    /**
+     * Maximum arrays of the running update, by axis.
+     */
+    private final float[][] maxs;
+
+    /**
+     * Spread of the bounds centres along every axis, scratch of the axis
+     * selection.
+     */
+    private final double[] variances;
+
+    /**
+     * Number of proxies.
+     */
+    private int size;
+
+    /**
+     * Current sweep axis: 0 for x, 1 for y, 2 for z.
+     */
+    private int axis;
+
+    /**
+     * Whether the order must be rebuilt from scratch on the next update.
+     */
+    private boolean unsorted;
+
+    /**
+     * Number of proxies moved by the insertion sort of the last update.
+     */
+    private int moves;
+
+    /**
+     * Creates an empty broadphase.
+     *
+     * @param _capacity the number of proxies before growing
+     */
+    public SweepAndPrune(
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.order = new int[capacity];
+      this.sortKeys = new long[capacity];
+      this.mins = new float[SweepAndPrune.AXES][];
+      this.maxs = new float[SweepAndPrune.AXES][];
+      this.variances = new double[SweepAndPrune.AXES];
+      this.size = 0;
+      this.axis = 0;
+      this.unsorted = false;
+    }
+
+    /**
+     * Adds a proxy. It is moved to its place by the next update.
+     *
+     * @param _proxy the proxy
+     */
+    public void insert(
+        final int _proxy) {
+      if (this.size == this.order.length) {
+        this.order = Arrays.copyOf(this.order, this.size * 2);
+        this.sortKeys = new long[this.order.length];
+      }
+      this.order[this.size++] = _proxy;
+    }
+
+    /**
+     * Removes a proxy.
+     *
+     * @param _proxy the proxy
+     * @throws IllegalArgumentException if the proxy was not added
+     */
+    public void remove(
+        final int _proxy) {
+      for (int index = 0; index < this.size; index++) {
+        if (this.order[index] == _proxy) {
+          System.arraycopy(this.order, index + 1, this.order, index,
+            this.size - index - 1);
+          this.size--;
+          return;
+        }
+      }
+      throw new IllegalArgumentException("Unknown proxy: " + _proxy);
+    }
+
+    /**
+     * Re-sorts the proxies and reports every pair whose bounds overlap.
+     *
+     * <p>Each pair is reported once, smaller proxy first.
+     *
+     * @param _minX the minimum x of every proxy
+     * @param _minY the minimum y of every proxy
+     * @param _minZ the minimum z of every proxy
+     * @param _maxX the maximum x of every proxy
+     * @param _maxY the maximum y of every proxy
+     * @param _maxZ the maximum z of every proxy
+     * @param _pairs the list receiving the pairs, as consecutive proxies;
+     *     cleared first
+     */
+    public void update(
+        final float[] _minX,
+        final float[] _minY,
+        final float[] _minZ,
+        final float[] _maxX,
+        final float[] _maxY,
+        final float[] _maxZ,
+        final IntList _pairs) {
+      _pairs.clear();
+      this.mins[0] = _minX;
+      this.mins[1] = _minY;
+      this.mins[2] = _minZ;
+      this.maxs[0] = _maxX;
+      this.maxs[1] = _maxY;
+      this.maxs[2] = _maxZ;
+      this.selectAxis();
+
+      final float[] min = this.mins[this.axis];
+      final float[] max = this.maxs[this.axis];
+      if (this.unsorted) {
+        this.sort(min);
+        this.unsorted = false;
+        this.moves = this.size;
+      } else {
+        this.insertionSort(min);
+      }
+
+      /* Sweep: only proxies starting before the end of one can touch it. */
+      final int first = (this.axis + 1) % SweepAndPrune.AXES;
+      final int second = (this.axis + 2) % SweepAndPrune.AXES;
+      final float[] minA = this.mins[first];
+      final float[] maxA = this.maxs[first];
+      final float[] minB = this.mins[second];
+      final float[] maxB = this.maxs[second];
+      for (int index = 0; index < this.size; index++) {
+        final int proxy = this.order[index];
+        final float end = max[proxy];
+        for (int next = index + 1; next < this.size; next++) {
+          final int other = this.order[next];
+          if (min[other] > end) {
+            break;
+          }
+          if ((minA[other] <= maxA[proxy]) && (minA[proxy] <= maxA[other])
+              && (minB[other] <= maxB[proxy])
+              && (minB[proxy] <= maxB[other])) {
+            _pairs.add(Math.min(proxy, other));
+            _pairs.add(Math.max(proxy, other));
+          }
+        }
+      }
+    }
+
+    /**
+     * Gets the number of proxies.
+     *
+     * @return the proxy count
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Gets the current sweep axis.
+     *
+     * @return 0 for x, 1 for y, 2 for z
+     */
+    public int axis() {
+      return this.axis;
+    }
+
+    /**
+     * Gets the number of proxies moved by the sort of the last update, a
+     * measure of how coherent the motion was.
+     *
+     * @return the moved proxy count
+     */
+    public int moves() {
+      return this.moves;
+    }
+
+    /**
+     * Picks the axis along which the bounds centres spread most.
+     */
+    private void selectAxis() {
+      if (this.size < 2) {
+        return;
+      }
+      for (int current = 0; current < SweepAndPrune.AXES; current++) {
+        final float[] min = this.mins[current];
+        final float[] max = this.maxs[current];
+        double sum = 0.0D;
+        double squares = 0.0D;
+        for (int index = 0; index < this.size; index++) {
+          final int proxy = this.order[index];
+          final double centre = min[proxy] + (double) max[proxy];
+          sum += centre;
+          squares += centre * centre;
+        }
+        this.variances[current] = squares - ((sum * sum) / this.size);
+      }
+      int best = this.axis;
+      for (int current = 0; current < SweepAndPrune.AXES; current++) {
+        if (this.variances[current]
+            > (this.variances[best] * SweepAndPrune.AXIS_HYSTERESIS)) {
+          best = current;
+        }
+      }
+      if (best != this.axis) {
+        this.axis = best;
+        this.unsorted = true;
+      }
+    }
+
+    /**
+     * Repairs an almost sorted order.
+     *
+     * @param _min the minimum along the sweep axis of every proxy
+     */
+    private void insertionSort(
+        final float[] _min) {
+      int moved = 0;
+      for (int index = 1; index < this.size; index++) {
+        final int proxy = this.order[index];
+        final float key = _min[proxy];
+        int hole = index;
+        while ((hole > 0) && (_min[this.order[hole - 1]] > key)) {
+          this.order[hole] = this.order[hole - 1];
+          hole--;
+        }
+        if (hole != index) {
+          this.order[hole] = proxy;
+          moved++;
+        }
+      }
+      this.moves = moved;
+    }
+
+    /**
+     * Sorts the proxies from scratch.
+     *
+     * @param _min the minimum along the sweep axis of every proxy
+     */
+    private void sort(
+        final float[] _min) {
+      for (int index = 0; index < this.size; index++) {
+        final int proxy = this.order[index];
+        /* Flip the magnitude bits of negatives so ints order like floats. */
+        int bits = Float.floatToRawIntBits(_min[proxy]);
+        bits ^= (bits >> (Integer.SIZE - 1)) & Integer.MAX_VALUE;
+        this.sortKeys[index] = (((long) bits) << SweepAndPrune.KEY_SHIFT)
+          | Integer.toUnsignedLong(proxy);
+      }
+      Arrays.sort(this.sortKeys, 0, this.size);
+      for (int index = 0; index < this.size; index++) {
+        this.order[index] = (int) this.sortKeys[index];
+      }
+    }
+
+  }
@@ -0,0 +1,303 @@
+package es.noa.rad.game.engine.render;
+
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Flyweight view over the off-heap payload of a single draw command.
+   *
+   * <p>The {@link RenderQueue} stores the payload of every command in a
+   * preallocated off-heap block with a fixed stride of {@link #SIZE} bytes.
+   * Instances of this class are cursors into that block: they are created
+   * once by the queue and repositioned for every command, so recording and
+   * replaying commands never allocates on the Java heap.
+   *
+   * <p>Payload layout:
+   * <pre>
+   * | offset | size | field                                        |
+   * |--------|------|----------------------------------------------|
+   * |      0 |    8 | vertex data address                          |
+   * |      8 |    8 | index data address (32-bit indices)          |
+   * |     16 |    4 | vertex count                                 |
+   * |     20 |    4 | index count                                  |
+   * |     24 |    4 | vertex format ({@link VertexFormat} ordinal) |
+   * |     28 |    4 | user data                                    |
+   * |     32 |    8 | instance data address                        |
+   * |     40 |    4 | instance count                               |
+   * |     44 |    4 | instance stride in bytes                     |
+   * </pre>
+   *
+   * <p>A command with an instance count of zero is a regular draw; with a
+   * positive count its geometry is drawn once per instance, each instance
+   * reading {@code instance stride} bytes of per-instance data.
+   *
+   * <p>The geometry memory referenced by a command is owned by the caller
+   * and must stay valid until the queue has been submitted.
+   *
+   * @see RenderQueue
+   * @see RenderBackend
+   */
+  public final class DrawCommand {
+
+    /**
+     * Size in bytes of a draw command payload.
+     */
+    public static final int SIZE = 48;
+
+    /**
+     * Offset of the vertex data address.
+     */
+    private static final int VERTEX_ADDRESS = 0;
+
+    /**
+     * Offset of the index data address.
+     */
+    private static final int INDEX_ADDRESS = 8;
+
+    /**
+     * Offset of the vertex count.
+     */
+    private static final int VERTEX_COUNT = 16;
+
+    /**
+     * Offset of the index count.
+     */
+    private static final int INDEX_COUNT = 20;
+
+    /**
+     * Offset of the vertex format ordinal.
+     */
+    private static final int VERTEX_FORMAT = 24;
+
+    /**
+     * Offset of the user data.
+     */
+    private static final int USER_DATA = 28;
+
+    /**
+     * Offset of the instance data address.
+     */
+    private static final int INSTANCE_ADDRESS = 32;
+
+    /**
+     * Offset of the instance count.
+     */
+    private static final int INSTANCE_COUNT = 40;
+
+    /**
+     * Offset of the instance stride.
+     */
+    private static final int INSTANCE_STRIDE = 44;
+
+    /**
+     * Address of the payload currently viewed by this cursor.
+     */
+    private long address;
+
+    /**
+     * Package-private constructor; cursors are owned by the render queue.
+     */
+    DrawCommand() {
+      this.address = MemoryUtil.NULL;
+    }
+
+    /**
+     * Moves the cursor to another payload.
+     *
+     * @param _address the address of the payload
+     */
+    void position(
+        final long _address) {
+      this.address = _address;
+    }
+
+    /**
+     * Clears the payload currently viewed by this cursor.
+     */
+    void clear() {
+      MemoryUtil.memSet(this.address, 0, DrawCommand.SIZE);
+    }
+
+    /**
+     * Gets the address of the vertex data.
+     *
+     * @return the vertex data address
+     */
+    public long vertexAddress() {
+      return MemoryUtil.memGetAddress(
+        this.address + DrawCommand.VERTEX_ADDRESS);
+    }
+
+    /**
+     * Sets the address of the vertex data.
+     *
+     * @param _vertexAddress the vertex data address
+     */
+    public void vertexAddress(
+        final long _vertexAddress) {
+      MemoryUtil.memPutAddress(
+        this.address + DrawCommand.VERTEX_ADDRESS, _vertexAddress);
+    }
+
+    /**
+     * Gets the address of the 32-bit index data.
+     *
+     * @return the index data address, or {@code NULL} for non indexed draws
+     */
+    public long indexAddress() {
+      return MemoryUtil.memGetAddress(
+        this.address + DrawCommand.INDEX_ADDRESS);
+    }
+
+    /**
+     * Sets the address of the 32-bit index data.
+     *
+     * @param _indexAddress the index data address, or {@code NULL}
+     */
+    public void indexAddress(
+        final long _indexAddress) {
+      MemoryUtil.memPutAddress(
+        this.address + DrawCommand.INDEX_ADDRESS, _indexAddress);
+    }
+
+    /**
+     * Gets the number of vertices referenced by the command.
+     *
+     * @return the vertex count
+     */
+    public int vertexCount() {
+      return MemoryUtil.memGetInt(this.address + DrawCommand.VERTEX_COUNT);
+    }
+
+    /**
+     * Sets the number of vertices referenced by the command.
+     *
+     * @param _vertexCount the vertex count
+     */
+    public void vertexCount(
+        final int _vertexCount) {
+      MemoryUtil.memPutInt(
+        this.address + DrawCommand.VERTEX_COUNT, _vertexCount);
+    }
+
+    /**
+     * Gets the number of indices referenced by the command.
+     *
+     * @return the index count
+     */
+    public int indexCount() {
+      return MemoryUtil.memGetInt(this.address + DrawCommand.INDEX_COUNT);
+    }
+
+    /**
+     * Sets the number of indices referenced by the command.
+     *
+     * @param _indexCount the index count
+     */
+    public void indexCount(
+        final int _indexCount) {
+      MemoryUtil.memPutInt(
+        this.address + DrawCommand.INDEX_COUNT, _indexCount);
+    }
+
+    /**
+     * Gets the layout of the vertex data.
+     *
+     * @return the vertex format
+     */
+    public VertexFormat vertexFormat() {
+      return VertexFormat.of(
+        MemoryUtil.memGetInt(this.address + DrawCommand.VERTEX_FORMAT));
+    }
+
+    /**
+     * Sets the layout of the vertex data.
+     *
+     * @param _vertexFormat the vertex format
+     */
+    public void vertexFormat(
+        final VertexFormat _vertexFormat) {
+      MemoryUtil.memPutInt(
+        this.address + DrawCommand.VERTEX_FORMAT, _vertexFormat.ordinal());
+    }
+
+    /**
+     * Gets the free-form user data attached to the command.
+     *
+     * @return the user data
+     */
+    public int userData() {
+      return MemoryUtil.memGetInt(this.address + DrawCommand.USER_DATA);
+    }
+
+    /**
+     * Sets the free-form user data attached to the command.
+     *
+     * @param _userData the user data
+     */
+    public void userData(
+        final int _userData) {
+      MemoryUtil.memPutInt(this.address + DrawCommand.USER_DATA, _userData);
+    }
+
+    /**
+     * Gets the address of the per-instance data.
+     *
+     * @return the instance data address, or {@code NULL} for regular draws
+     */
+    public long instanceAddress() {
+      return MemoryUtil.memGetAddress(
+        this.address + DrawCommand.INSTANCE_ADDRESS);
+    }
+
+    /**
+     * Sets the address of the per-instance data.
+     *
+     * @param _instanceAddress the instance data address, or {@code NULL}
+     */
+    public void instanceAddress(
+        final long _instanceAddress) {
+      MemoryUtil.memPutAddress(
+        this.address + DrawCommand.INSTANCE_ADDRESS, _instanceAddress);
+    }
+
+    /**
+     * Gets the number of instances drawn by the command.
+     *
+     * @return the instance count, zero for regular draws
+     */
+    public int instanceCount() {
+      return MemoryUtil.memGetInt(this.address + DrawCommand.INSTANCE_COUNT);
+    }
+
+    /**
+     * Sets the number of instances drawn by the command.
+     *
+     * @param _instanceCount the instance count, zero for regular draws
+     */
+    public void instanceCount(
+        final int _instanceCount) {
+      MemoryUtil.memPutInt(
+        this.address + DrawCommand.INSTANCE_COUNT, _instanceCount);
+    }
+
+    /**
+     * Gets the size in bytes of the data of each instance.
+     *
+     * @return the instance stride
+     */
+    public int instanceStride() {
+      return MemoryUtil.memGetInt(this.address + DrawCommand.INSTANCE_STRIDE);
+    }
+
+    /**
+     * Sets the size in bytes of the data of each instance.
+     *
+     * @param _instanceStride the instance stride
+     */
+    public void instanceStride(
+        final int _instanceStride) {
+      MemoryUtil.memPutInt(
+        this.address + DrawCommand.INSTANCE_STRIDE, _instanceStride);
+    }
+
+  }
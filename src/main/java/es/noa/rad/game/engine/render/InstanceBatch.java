@@ -0,0 +1,602 @@
+package es.noa.rad.game.engine.render;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.render.lod.LodMesh;
+import es.noa.rad.game.engine.render.lod.LodSelector;
+
+  /**
+   * Automatic instancing of meshes drawn many times per frame.
+   *
+   * <p>Every draw records a {@link SortKey}, a mesh of the
+   * {@link MeshArena}, a transform and a color into primitive arrays. On
+   * {@link #flush(RenderQueue)} the draws are radix sorted by mesh and then
+   * (stably) by sort key without its depth field, so draws sharing layer,
+   * pass, shader, material and mesh become contiguous. Their per-instance
+   * data is then gathered in that order into a persistent off-heap
+   * instance block, and a single instanced {@link DrawCommand} is pushed
+   * per group.
+   *
+   * <p>Meshes with levels of detail ({@link LodMesh}) pick their level
+   * when the draw is recorded, through the {@link LodSelector} of the
+   * batch, from the bounding sphere of the mesh moved by the transform.
+   * Draws of different levels of a mesh are grouped separately.
+   *
+   * <p>Instance layout ({@link #INSTANCE_STRIDE} bytes, a multiple of 16 as
+   * required by the graphics APIs):
+   * <pre>
+   * | offset | size | field                               |
+   * |--------|------|-------------------------------------|
+   * |      0 |   64 | model matrix, column-major floats   |
+   * |     64 |    4 | color packed as 0xAABBGGRR          |
+   * |     68 |   12 | padding                             |
+   * </pre>
+   *
+   * <p>The depth of the recorded sort keys is dropped, since a group is a
+   * single draw: instancing suits opaque geometry, while draws that need
+   * back-to-front order should be pushed to the queue directly.
+   *
+   * <p>Like the {@link SpriteBatch}, the batch only produces render queue
+   * commands, so grouping can be checked headless with a
+   * {@link RecordingRenderBackend}; {@link #frameInstances()} and
+   * {@link #frameDraws()} measure the draws saved. Instance data must stay
+   * valid until the queue is submitted, so the instance block is only
+   * rewound by {@link #clear()} after submission.
+   *
+   * <p>Not thread-safe.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * long key = SortKey.encode(0, 0, shader, material, 0);
+   * for (int tree = 0; tree < trees; tree++) {
+   *   batch.draw(key, treeMesh, transforms[tree], InstanceBatch.WHITE);
+   * }
+   * batch.flush(queue);
+   * queue.submit(backend);
+   * batch.clear();
+   * }</pre>
+   *
+   * @see MeshArena
+   * @see RenderQueue
+   */
+  public final class InstanceBatch {
+
+    /**
+     * Size in bytes of the data of an instance.
+     */
+    public static final int INSTANCE_STRIDE = 80;
+
+    /**
+     * Opaque white in the packed color format.
+     */
+    public static final int WHITE = 0xFFFFFFFF;
+
+    /**
+     * Number of floats of a transform.
+     */
+    private static final int MATRIX_SIZE = 16;
+
+    /**
+     * Offset of the packed color inside an instance.
+     */
+    private static final int COLOR_OFFSET = 64;
+
+    /**
+     * Initial number of blocks that can be retired in a frame.
+     */
+    private static final int INITIAL_RETIRED = 4;
+
+    /**
+     * Mask clearing the depth field of a sort key.
+     */
+    private static final long GROUP_MASK = ~((long) SortKey.MAX_DEPTH);
+
+    /**
+     * Index count of the draws of a whole mesh.
+     */
+    private static final int WHOLE_MESH = -1;
+
+    /**
+     * Bit shift of the mesh handle in the mesh sort key.
+     */
+    private static final int MESH_SHIFT = 32;
+
+    /**
+     * Arena holding the geometry of the meshes.
+     */
+    private final MeshArena meshes;
+
+    /**
+     * Transform of every recorded draw, sixteen floats each.
+     */
+    private float[] transforms;
+
+    /**
+     * Packed color of every recorded draw.
+     */
+    private int[] colors;
+
+    /**
+     * Mesh handle of every recorded draw.
+     */
+    private int[] meshHandles;
+
+    /**
+     * First index of the level of every recorded draw.
+     */
+    private int[] firstIndices;
+
+    /**
+     * Index count of the level of every recorded draw, or -1 for the
+     * whole mesh.
+     */
+    private int[] indexCounts;
+
+    /**
+     * Selector of the levels of detail, or null.
+     */
+    private final LodSelector lodSelector;
+
+    /**
+     * Scratch vector of the level selection.
+     */
+    private final Vector3f lodScratch;
+
+    /**
+     * Sort key, without depth, of every recorded draw.
+     */
+    private long[] groupKeys;
+
+    /**
+     * Keys being sorted.
+     */
+    private long[] keys;
+
+    /**
+     * Draw index attached to every key, permuted by the sort.
+     */
+    private int[] order;
+
+    /**
+     * Scratch keys used by the radix sort.
+     */
+    private long[] scratchKeys;
+
+    /**
+     * Scratch indices used by the radix sort.
+     */
+    private int[] scratchOrder;
+
+    /**
+     * Histogram scratch used by the radix sort.
+     */
+    private final int[] histogram;
+
+    /**
+     * Number of draws recorded since the last flush.
+     */
+    private int count;
+
+    /**
+     * Current instance block.
+     */
+    private long instances;
+
+    /**
+     * Number of instances the instance block can hold.
+     */
+    private int instanceCapacity;
+
+    /**
+     * Number of instances already written to the block this frame.
+     */
+    private int instanceCursor;
+
+    /**
+     * Blocks replaced during the frame, released on {@link #clear()}.
+     */
+    private long[] retired;
+
+    /**
+     * Number of entries in {@link #retired}.
+     */
+    private int retiredCount;
+
+    /**
+     * Number of draws flushed since the last {@link #clear()}.
+     */
+    private int frameInstances;
+
+    /**
+     * Number of draw commands pushed since the last {@link #clear()}.
+     */
+    private int frameDraws;
+
+    /**
+     * Creates an instance batch.
+     *
+     * @param _meshes the arena holding the meshes drawn by the batch
+     * @param _capacity the number of draws per frame before growing
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public InstanceBatch(
+        final MeshArena _meshes,
+        final int _capacity) {
+      this(_meshes, _capacity, null);
+    }
+
+    /**
+     * Creates an instance batch selecting levels of detail.
+     *
+     * @param _meshes the arena holding the meshes drawn by the batch
+     * @param _capacity the number of draws per frame before growing
+     * @param _lodSelector the selector of the levels of {@link LodMesh}
+     *     draws, or null if the batch draws none
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public InstanceBatch(
+        final MeshArena _meshes,
+        final int _capacity,
+        final LodSelector _lodSelector) {
+      if (_capacity <= 0) {
+        throw new IllegalArgumentException(
+          "Instance batch capacity must be positive: " + _capacity);
+      }
+      this.meshes = _meshes;
+      this.transforms = new float[_capacity * InstanceBatch.MATRIX_SIZE];
+      this.colors = new int[_capacity];
+      this.meshHandles = new int[_capacity];
+      this.firstIndices = new int[_capacity];
+      this.indexCounts = new int[_capacity];
+      this.lodSelector = _lodSelector;
+      this.lodScratch = new Vector3f();
+      this.groupKeys = new long[_capacity];
+      this.keys = new long[_capacity];
+      this.order = new int[_capacity];
+      this.scratchKeys = new long[_capacity];
+      this.scratchOrder = new int[_capacity];
+      this.histogram = new int[RadixSort.histogramSize()];
+      this.count = 0;
+      this.instances = MemoryUtil.NULL;
+      this.instanceCapacity = 0;
+      this.instanceCursor = 0;
+      this.retired = new long[InstanceBatch.INITIAL_RETIRED];
+      this.retiredCount = 0;
+      this.reserve(_capacity);
+    }
+
+    /**
+     * Records a draw of a mesh.
+     *
+     * @param _sortKey the sort key of the draw; its depth is ignored
+     * @param _mesh the handle of the mesh in the arena
+     * @param _transform the model matrix
+     * @param _color the color packed as {@code 0xAABBGGRR}
+     */
+    public void draw(
+        final long _sortKey,
+        final int _mesh,
+        final Matrix4fc _transform,
+        final int _color) {
+      this.record(_sortKey, _mesh, 0, InstanceBatch.WHOLE_MESH, _transform,
+        _color);
+    }
+
+    /**
+     * Records a draw of the level of a mesh chosen by the
+     * {@link LodSelector} of the batch.
+     *
+     * @param _sortKey the sort key of the draw; its depth is ignored
+     * @param _object the identifier of the drawn object, a small
+     *     non-negative integer that keeps its level between frames
+     * @param _mesh the levels of the mesh in the arena
+     * @param _transform the model matrix
+     * @param _color the color packed as {@code 0xAABBGGRR}
+     * @return the level drawn
+     * @throws IllegalStateException if the batch has no selector
+     */
+    public int draw(
+        final long _sortKey,
+        final int _object,
+        final LodMesh _mesh,
+        final Matrix4fc _transform,
+        final int _color) {
+      if (this.lodSelector == null) {
+        throw new IllegalStateException(
+          "Instance batch created without a LOD selector.");
+      }
+      final float scale = _transform.getScale(this.lodScratch)
+        .get(this.lodScratch.maxComponent());
+      _transform.transformPosition(
+        _mesh.centerX(), _mesh.centerY(), _mesh.centerZ(), this.lodScratch);
+      final int level = this.lodSelector.select(_object,
+        this.lodScratch.x, this.lodScratch.y, this.lodScratch.z,
+        _mesh.radius() * scale, _mesh);
+      this.record(_sortKey, _mesh.mesh(), _mesh.firstIndex(level),
+        _mesh.indexCount(level), _transform, _color);
+      return level;
+    }
+
+    /**
+     * Gets the selector of the levels of {@link LodMesh} draws.
+     *
+     * @return the selector, or null if the batch draws no levels
+     */
+    public LodSelector lodSelector() {
+      return this.lodSelector;
+    }
+
+    /**
+     * Groups the recorded draws, writes their instance data to the
+     * instance block and pushes one instanced draw command per group.
+     *
+     * <p>May be called several times per frame; every flush appends to the
+     * instance block.
+     *
+     * @param _queue the queue receiving the draw commands
+     * @throws IllegalArgumentException if a recorded mesh is not live
+     */
+    public void flush(
+        final RenderQueue _queue) {
+      if (this.count == 0) {
+        return;
+      }
+      if ((this.instanceCursor + this.count) > this.instanceCapacity) {
+        this.reserve(this.instanceCursor + this.count);
+      }
+
+      /*
+       * LSD order: mesh and level first, then the stable group key. The
+       * levels of a mesh differ by their index count.
+       */
+      for (int draw = 0; draw < this.count; draw++) {
+        this.keys[draw] = (Integer.toUnsignedLong(this.meshHandles[draw])
+          << InstanceBatch.MESH_SHIFT)
+          | Integer.toUnsignedLong(this.indexCounts[draw]);
+        this.order[draw] = draw;
+      }
+      this.sort();
+      for (int index = 0; index < this.count; index++) {
+        this.keys[index] = this.groupKeys[this.order[index]];
+      }
+      this.sort();
+
+      int groupStart = 0;
+      for (int index = 0; index < this.count; index++) {
+        final int draw = this.order[index];
+        this.writeInstance(draw, this.instanceCursor + index);
+        if (((index + 1) == this.count)
+         || (this.keys[index + 1] != this.keys[groupStart])
+         || (this.meshHandles[this.order[index + 1]]
+             != this.meshHandles[this.order[groupStart]])
+         || (this.indexCounts[this.order[index + 1]]
+             != this.indexCounts[this.order[groupStart]])) {
+          this.pushGroup(_queue, groupStart, index + 1);
+          groupStart = index + 1;
+        }
+      }
+
+      this.instanceCursor += this.count;
+      this.frameInstances += this.count;
+      this.count = 0;
+    }
+
+    /**
+     * Rewinds the instance block for the next frame and releases blocks
+     * replaced during the frame.
+     *
+     * <p>Must only be called once the queue the batch was flushed to has
+     * been submitted.
+     */
+    public void clear() {
+      for (int index = 0; index < this.retiredCount; index++) {
+        MemoryUtil.nmemFree(this.retired[index]);
+      }
+      this.retiredCount = 0;
+      this.instanceCursor = 0;
+      this.frameInstances = 0;
+      this.frameDraws = 0;
+      this.count = 0;
+    }
+
+    /**
+     * Gets the number of draws recorded and not yet flushed.
+     *
+     * @return the pending draw count
+     */
+    public int size() {
+      return this.count;
+    }
+
+    /**
+     * Gets the number of draws flushed since the last {@link #clear()},
+     * which is the number of draw commands needed without instancing.
+     *
+     * @return the instance count of the frame
+     */
+    public int frameInstances() {
+      return this.frameInstances;
+    }
+
+    /**
+     * Gets the number of instanced draw commands pushed since the last
+     * {@link #clear()}.
+     *
+     * @return the draw count of the frame
+     */
+    public int frameDraws() {
+      return this.frameDraws;
+    }
+
+    /**
+     * Releases the off-heap instance block.
+     *
+     * <p>The batch must not be used after this call.
+     */
+    public void close() {
+      this.clear();
+      MemoryUtil.nmemFree(this.instances);
+      this.instances = MemoryUtil.NULL;
+      this.instanceCapacity = 0;
+    }
+
+    /**
+     * Records a draw of a range of the indices of a mesh.
+     *
+     * @param _sortKey the sort key of the draw
+     * @param _mesh the handle of the mesh in the arena
+     * @param _firstIndex the first index of the range
+     * @param _indexCount the index count of the range, or -1 for the
+     *     whole mesh
+     * @param _transform the model matrix
+     * @param _color the packed color
+     */
+    private void record(
+        final long _sortKey,
+        final int _mesh,
+        final int _firstIndex,
+        final int _indexCount,
+        final Matrix4fc _transform,
+        final int _color) {
+      if (this.count == this.keys.length) {
+        this.grow();
+      }
+      final int draw = this.count++;
+      _transform.get(this.transforms, draw * InstanceBatch.MATRIX_SIZE);
+      this.colors[draw] = _color;
+      this.meshHandles[draw] = _mesh;
+      this.firstIndices[draw] = _firstIndex;
+      this.indexCounts[draw] = _indexCount;
+      this.groupKeys[draw] = _sortKey & InstanceBatch.GROUP_MASK;
+    }
+
+    /**
+     * Sorts the keys and order of the recorded draws.
+     */
+    private void sort() {
+      RadixSort.sort(
+        this.keys,
+        this.order,
+        this.scratchKeys,
+        this.scratchOrder,
+        this.histogram,
+        this.count
+      );
+    }
+
+    /**
+     * Writes the instance data of a draw.
+     *
+     * @param _draw the index of the recorded draw
+     * @param _target the position of the instance in the block
+     */
+    private void writeInstance(
+        final int _draw,
+        final int _target) {
+      final long address = this.instances
+        + (((long) _target) * InstanceBatch.INSTANCE_STRIDE);
+      final int transform = _draw * InstanceBatch.MATRIX_SIZE;
+      for (int element = 0; element < InstanceBatch.MATRIX_SIZE;
+          element++) {
+        MemoryUtil.memPutFloat(
+          address + (((long) element) * Float.BYTES),
+          this.transforms[transform + element]);
+      }
+      MemoryUtil.memPutInt(
+        address + InstanceBatch.COLOR_OFFSET, this.colors[_draw]);
+    }
+
+    /**
+     * Pushes the instanced draw command of a group of sorted draws.
+     *
+     * @param _queue the queue receiving the command
+     * @param _start the first sorted draw of the group
+     * @param _end one past the last sorted draw of the group
+     */
+    private void pushGroup(
+        final RenderQueue _queue,
+        final int _start,
+        final int _end) {
+      final long key = this.keys[_start];
+      final DrawCommand command = _queue.push(key);
+      final int draw = this.order[_start];
+      if (this.indexCounts[draw] == InstanceBatch.WHOLE_MESH) {
+        this.meshes.draw(this.meshHandles[draw], command);
+      } else {
+        this.meshes.draw(this.meshHandles[draw], this.firstIndices[draw],
+          this.indexCounts[draw], command);
+      }
+      command.instanceAddress(this.instances
+        + (((long) (this.instanceCursor + _start))
+          * InstanceBatch.INSTANCE_STRIDE));
+      command.instanceCount(_end - _start);
+      command.instanceStride(InstanceBatch.INSTANCE_STRIDE);
+      command.userData(SortKey.material(key));
+      this.frameDraws++;
+    }
+
+    /**
+     * Ensures the instance block can hold the given number of instances,
+     * preserving the instances already written this frame.
+     *
+     * @param _instances the number of instances
+     */
+    private void reserve(
+        final int _instances) {
+      final int capacity = Math.max(_instances, this.instanceCapacity * 2);
+      final long newInstances = MemoryUtil.nmemAlloc(
+        ((long) capacity) * InstanceBatch.INSTANCE_STRIDE);
+      if (newInstances == MemoryUtil.NULL) {
+        throw new OutOfMemoryError(
+          "Unable to allocate the instance batch memory.");
+      }
+      if (this.instances != MemoryUtil.NULL) {
+        if (this.instanceCursor > 0) {
+          /* Draws already pushed this frame still point to the old data. */
+          MemoryUtil.memCopy(this.instances, newInstances,
+            ((long) this.instanceCursor) * InstanceBatch.INSTANCE_STRIDE);
+          this.retire(this.instances);
+        } else {
+          MemoryUtil.nmemFree(this.instances);
+        }
+      }
+      this.instances = newInstances;
+      this.instanceCapacity = capacity;
+    }
+
+    /**
+     * Keeps a replaced block alive until the next {@link #clear()}.
+     *
+     * @param _address the address of the block
+     */
+    private void retire(
+        final long _address) {
+      if (this.retiredCount == this.retired.length) {
+        this.retired = Arrays.copyOf(this.retired, this.retiredCount * 2);
+      }
+      this.retired[this.retiredCount++] = _address;
+    }
+
+    /**
+     * Doubles the capacity of the recording arrays.
+     */
+    private void grow() {
+      final int newCapacity = Math.multiplyExact(this.keys.length, 2);
+      this.transforms = Arrays.copyOf(
+        this.transforms, newCapacity * InstanceBatch.MATRIX_SIZE);
+      this.colors = Arrays.copyOf(this.colors, newCapacity);
+      this.meshHandles = Arrays.copyOf(this.meshHandles, newCapacity);
+      this.firstIndices = Arrays.copyOf(this.firstIndices, newCapacity);
+      this.indexCounts = Arrays.copyOf(this.indexCounts, newCapacity);
+      this.groupKeys = Arrays.copyOf(this.groupKeys, newCapacity);
+      this.keys = Arrays.copyOf(this.keys, newCapacity);
+      this.order = Arrays.copyOf(this.order, newCapacity);
+      this.scratchKeys = new long[newCapacity];
+      this.scratchOrder = new int[newCapacity];
+    }
+
+  }
@@ -0,0 +1,360 @@
+package es.noa.rad.game.engine.render;
+
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.memory.HandlePool;
+import es.noa.rad.game.engine.memory.OffHeapArena;
+
+  /**
+   * Off-heap storage for the vertex and index data of many meshes.
+   *
+   * <p>Vertex and index data are suballocated from two
+   * {@link OffHeapArena}s, so thousands of meshes share a handful of large
+   * native blocks instead of owning one buffer each. Meshes are referenced
+   * by stable handles; the addresses of their data may change after
+   * {@link #defragment()} and must be read again through
+   * {@link #vertexAddress(int)} and {@link #indexAddress(int)} (or
+   * {@link #draw(int, DrawCommand)}) every frame.
+   *
+   * <p>Indices are 32-bit, as expected by {@link DrawCommand}.
+   *
+   * <p>Not thread-safe.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * int mesh = arena.create(VertexFormat.POSITION_NORMAL_TEXCOORD, 24, 36);
+   * MemoryUtil.memCopy(vertices, arena.vertexAddress(mesh), size);
+   * ...
+   * arena.draw(mesh, queue.push(sortKey));
+   * }</pre>
+   *
+   * @see OffHeapArena
+   */
+  public final class MeshArena {
+
+    /**
+     * Size in bytes of an index.
+     */
+    public static final int INDEX_SIZE = Integer.BYTES;
+
+    /**
+     * Initial number of meshes before the mesh table grows.
+     */
+    private static final int INITIAL_MESHES = 256;
+
+    /**
+     * Arena holding the vertex data.
+     */
+    private final OffHeapArena vertexArena;
+
+    /**
+     * Arena holding the index data.
+     */
+    private final OffHeapArena indexArena;
+
+    /**
+     * Handles of the meshes.
+     */
+    private final HandlePool meshes;
+
+    /**
+     * Vertex allocation of every mesh, indexed by handle slot.
+     */
+    private int[] vertexHandles;
+
+    /**
+     * Index allocation of every mesh, or
+     * {@link HandlePool#INVALID_HANDLE} for non-indexed meshes.
+     */
+    private int[] indexHandles;
+
+    /**
+     * Vertex count of every mesh, indexed by handle slot.
+     */
+    private int[] vertexCounts;
+
+    /**
+     * Index count of every mesh, indexed by handle slot.
+     */
+    private int[] indexCounts;
+
+    /**
+     * Vertex format ordinal of every mesh, indexed by handle slot.
+     */
+    private int[] vertexFormats;
+
+    /**
+     * Creates a mesh arena.
+     *
+     * @param _blockSize size in bytes of the blocks reserved by the vertex
+     *     and index arenas
+     */
+    public MeshArena(
+        final int _blockSize) {
+      this.vertexArena
+        = new OffHeapArena(_blockSize, OffHeapArena.DEFAULT_ALIGNMENT);
+      this.indexArena
+        = new OffHeapArena(_blockSize, OffHeapArena.DEFAULT_ALIGNMENT);
+      this.meshes = new HandlePool(MeshArena.INITIAL_MESHES);
+      this.vertexHandles = new int[this.meshes.capacity()];
+      this.indexHandles = new int[this.meshes.capacity()];
+      this.vertexCounts = new int[this.meshes.capacity()];
+      this.indexCounts = new int[this.meshes.capacity()];
+      this.vertexFormats = new int[this.meshes.capacity()];
+    }
+
+    /**
+     * Creates a mesh with uninitialized vertex and index data.
+     *
+     * @param _format the vertex format
+     * @param _vertexCount the number of vertices
+     * @param _indexCount the number of indices, zero for a non-indexed mesh
+     * @return the handle of the mesh
+     * @throws IllegalArgumentException if the vertex count is not positive
+     *     or the index count is negative
+     */
+    public int create(
+        final VertexFormat _format,
+        final int _vertexCount,
+        final int _indexCount) {
+      if (_vertexCount <= 0) {
+        throw new IllegalArgumentException(
+          "Vertex count must be positive: " + _vertexCount);
+      }
+      if (_indexCount < 0) {
+        throw new IllegalArgumentException(
+          "Index count must not be negative: " + _indexCount);
+      }
+      final int vertexHandle = this.vertexArena.allocate(
+        Math.multiplyExact(_vertexCount, _format.stride()));
+      int indexHandle = HandlePool.INVALID_HANDLE;
+      if (_indexCount > 0) {
+        indexHandle = this.indexArena.allocate(
+          Math.multiplyExact(_indexCount, MeshArena.INDEX_SIZE));
+      }
+
+      final int mesh = this.meshes.allocate();
+      final int slot = this.meshes.slot(mesh);
+      if (slot >= this.vertexHandles.length) {
+        this.grow();
+      }
+      this.vertexHandles[slot] = vertexHandle;
+      this.indexHandles[slot] = indexHandle;
+      this.vertexCounts[slot] = _vertexCount;
+      this.indexCounts[slot] = _indexCount;
+      this.vertexFormats[slot] = _format.ordinal();
+      return mesh;
+    }
+
+    /**
+     * Destroys a mesh and frees its data.
+     *
+     * @param _mesh the handle of the mesh
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void destroy(
+        final int _mesh) {
+      final int slot = this.meshes.release(_mesh);
+      this.vertexArena.free(this.vertexHandles[slot]);
+      if (this.indexHandles[slot] != HandlePool.INVALID_HANDLE) {
+        this.indexArena.free(this.indexHandles[slot]);
+      }
+    }
+
+    /**
+     * Checks whether a handle identifies a live mesh.
+     *
+     * @param _mesh the handle to check
+     * @return {@code true} if the mesh is live
+     */
+    public boolean isValid(
+        final int _mesh) {
+      return this.meshes.isValid(_mesh);
+    }
+
+    /**
+     * Gets the current address of the vertex data of a mesh.
+     *
+     * @param _mesh the handle of the mesh
+     * @return the vertex data address
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public long vertexAddress(
+        final int _mesh) {
+      return this.vertexArena.address(
+        this.vertexHandles[this.meshes.slot(_mesh)]);
+    }
+
+    /**
+     * Gets the current address of the index data of a mesh.
+     *
+     * @param _mesh the handle of the mesh
+     * @return the index data address, or NULL for a non-indexed mesh
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public long indexAddress(
+        final int _mesh) {
+      final int indexHandle = this.indexHandles[this.meshes.slot(_mesh)];
+      if (indexHandle == HandlePool.INVALID_HANDLE) {
+        return MemoryUtil.NULL;
+      }
+      return this.indexArena.address(indexHandle);
+    }
+
+    /**
+     * Gets the vertex count of a mesh.
+     *
+     * @param _mesh the handle of the mesh
+     * @return the vertex count
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int vertexCount(
+        final int _mesh) {
+      return this.vertexCounts[this.meshes.slot(_mesh)];
+    }
+
+    /**
+     * Gets the index count of a mesh.
+     *
+     * @param _mesh the handle of the mesh
+     * @return the index count, zero for a non-indexed mesh
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int indexCount(
+        final int _mesh) {
+      return this.indexCounts[this.meshes.slot(_mesh)];
+    }
+
+    /**
+     * Gets the vertex format of a mesh.
+     *
+     * @param _mesh the handle of the mesh
+     * @return the vertex format
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public VertexFormat vertexFormat(
+        final int _mesh) {
+      return VertexFormat.of(this.vertexFormats[this.meshes.slot(_mesh)]);
+    }
+
+    /**
+     * Fills the geometry of a draw command with the current data of a mesh.
+     *
+     * @param _mesh the handle of the mesh
+     * @param _command the command to fill
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void draw(
+        final int _mesh,
+        final DrawCommand _command) {
+      final int slot = this.meshes.slot(_mesh);
+      _command.vertexAddress(
+        this.vertexArena.address(this.vertexHandles[slot]));
+      _command.vertexCount(this.vertexCounts[slot]);
+      _command.vertexFormat(VertexFormat.of(this.vertexFormats[slot]));
+      if (this.indexHandles[slot] != HandlePool.INVALID_HANDLE) {
+        _command.indexAddress(
+          this.indexArena.address(this.indexHandles[slot]));
+        _command.indexCount(this.indexCounts[slot]);
+      } else {
+        _command.indexAddress(MemoryUtil.NULL);
+        _command.indexCount(0);
+      }
+    }
+
+    /**
+     * Fills the geometry of a draw command with a range of the indices of
+     * a mesh, such as one level of a
+     * {@link es.noa.rad.game.engine.render.lod.LodMesh}.
+     *
+     * @param _mesh the handle of the mesh
+     * @param _firstIndex the first index of the range
+     * @param _indexCount the number of indices of the range
+     * @param _command the command to fill
+     * @throws IllegalArgumentException if the handle is not live or the
+     *     range lies outside the indices of the mesh
+     */
+    public void draw(
+        final int _mesh,
+        final int _firstIndex,
+        final int _indexCount,
+        final DrawCommand _command) {
+      final int slot = this.meshes.slot(_mesh);
+      if ((_firstIndex < 0) || (_indexCount < 0)
+          || (_firstIndex > (this.indexCounts[slot] - _indexCount))) {
+        throw new IllegalArgumentException("Index range " + _firstIndex
+          + "+" + _indexCount + " outside " + this.indexCounts[slot]);
+      }
+      this.draw(_mesh, _command);
+      if (_indexCount > 0) {
+        _command.indexAddress(_command.indexAddress()
+          + (((long) _firstIndex) * MeshArena.INDEX_SIZE));
+      }
+      _command.indexCount(_indexCount);
+    }
+
+    /**
+     * Compacts the vertex and index data.
+     *
+     * <p>Must not run while draw commands referencing mesh data are
+     * pending, since they hold the old addresses.
+     *
+     * @return the number of bytes moved
+     * @see OffHeapArena#defragment()
+     */
+    public long defragment() {
+      return this.vertexArena.defragment() + this.indexArena.defragment();
+    }
+
+    /**
+     * Gets the number of live meshes.
+     *
+     * @return the mesh count
+     */
+    public int meshCount() {
+      return this.meshes.size();
+    }
+
+    /**
+     * Gets the arena holding the vertex data, for statistics.
+     *
+     * @return the vertex arena
+     */
+    public OffHeapArena vertexArena() {
+      return this.vertexArena;
+    }
+
+    /**
+     * Gets the arena holding the index data, for statistics.
+     *
+     * @return the index arena
+     */
+    public OffHeapArena indexArena() {
+      return this.indexArena;
+    }
+
+    /**
+     * Releases all mesh data.
+     *
+     * <p>The arena must not be used after this call.
+     */
+    public void close() {
+      this.vertexArena.close();
+      this.indexArena.close();
+    }
+
+    /**
+     * Grows the mesh table to the handle pool capacity.
+     */
+    private void grow() {
+      final int newCapacity = this.meshes.capacity();
+      this.vertexHandles = Arrays.copyOf(this.vertexHandles, newCapacity);
+      this.indexHandles = Arrays.copyOf(this.indexHandles, newCapacity);
+      this.vertexCounts = Arrays.copyOf(this.vertexCounts, newCapacity);
+      this.indexCounts = Arrays.copyOf(this.indexCounts, newCapacity);
+      this.vertexFormats = Arrays.copyOf(this.vertexFormats, newCapacity);
+    }
+
+  }
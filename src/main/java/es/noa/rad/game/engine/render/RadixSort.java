@@ -0,0 +1,145 @@
+package es.noa.rad.game.engine.render;
+
+import java.util.Arrays;
+
+  /**
+   * Allocation free LSD radix sort for 64-bit keys with an attached
+   * {@code int} payload.
+   *
+   * <p>Keys are ordered as unsigned integers, one byte per pass. Passes
+   * where every key shares the same byte value (very common for sort keys
+   * whose high fields are constant in a frame) are skipped entirely, so a
+   * frame that only uses a handful of layers and passes sorts in far fewer
+   * than eight passes.
+   *
+   * <p>The caller owns all the arrays, which lets the render queue and the
+   * batchers reuse the same scratch memory frame after frame.
+   *
+   * @see RenderQueue
+   */
+  public final class RadixSort {
+
+    /**
+     * Number of bits sorted per pass.
+     */
+    private static final int RADIX_BITS = 8;
+
+    /**
+     * Number of buckets per pass.
+     */
+    private static final int RADIX = 1 << RadixSort.RADIX_BITS;
+
+    /**
+     * Mask to extract the bucket of a key.
+     */
+    private static final int RADIX_MASK = RadixSort.RADIX - 1;
+
+    /**
+     * Number of passes needed to cover a 64-bit key.
+     */
+    private static final int PASSES = Long.SIZE / RadixSort.RADIX_BITS;
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private RadixSort() {
+      super();
+    }
+
+    /**
+     * Sorts the first {@code _count} keys in ascending unsigned order and
+     * applies the same permutation to the values.
+     *
+     * <p>The sort is stable. On return the sorted data is always found in
+     * {@code _keys} and {@code _values}; the scratch arrays are left with
+     * unspecified content.
+     *
+     * @param _keys the keys to sort
+     * @param _values the values attached to each key
+     * @param _scratchKeys scratch array of at least {@code _count} keys
+     * @param _scratchValues scratch array of at least {@code _count} values
+     * @param _histogram scratch array of at least
+     *     {@code 8 * 256} counters
+     * @param _count the number of entries to sort
+     */
+    public static void sort(
+        final long[] _keys,
+        final int[] _values,
+        final long[] _scratchKeys,
+        final int[] _scratchValues,
+        final int[] _histogram,
+        final int _count) {
+      if (_count < 2) {
+        return;
+      }
+
+      /* Build the histograms of all passes in a single sweep. */
+      Arrays.fill(_histogram, 0, RadixSort.PASSES * RadixSort.RADIX, 0);
+      for (int index = 0; index < _count; index++) {
+        final long key = _keys[index];
+        for (int pass = 0; pass < RadixSort.PASSES; pass++) {
+          final int bucket = ((int) (key >>> (pass * RadixSort.RADIX_BITS)))
+            & RadixSort.RADIX_MASK;
+          _histogram[(pass * RadixSort.RADIX) + bucket]++;
+        }
+      }
+
+      long[] sourceKeys = _keys;
+      int[] sourceValues = _values;
+      long[] targetKeys = _scratchKeys;
+      int[] targetValues = _scratchValues;
+
+      for (int pass = 0; pass < RadixSort.PASSES; pass++) {
+        final int base = pass * RadixSort.RADIX;
+        final int shift = pass * RadixSort.RADIX_BITS;
+
+        /* Skip the pass when every key falls in the same bucket. */
+        final int firstBucket
+          = ((int) (sourceKeys[0] >>> shift)) & RadixSort.RADIX_MASK;
+        if (_histogram[base + firstBucket] == _count) {
+          continue;
+        }
+
+        /* Turn the counts into starting offsets. */
+        int offset = 0;
+        for (int bucket = 0; bucket < RadixSort.RADIX; bucket++) {
+          final int bucketCount = _histogram[base + bucket];
+          _histogram[base + bucket] = offset;
+          offset += bucketCount;
+        }
+
+        for (int index = 0; index < _count; index++) {
+          final long key = sourceKeys[index];
+          final int bucket = ((int) (key >>> shift)) & RadixSort.RADIX_MASK;
+          final int target = _histogram[base + bucket]++;
+          targetKeys[target] = key;
+          targetValues[target] = sourceValues[index];
+        }
+
+        /* Swap the roles of the buffers for the next pass. */
+        final long[] swapKeys = sourceKeys;
+        sourceKeys = targetKeys;
+        targetKeys = swapKeys;
+        final int[] swapValues = sourceValues;
+        sourceValues = targetValues;
+        targetValues = swapValues;
+      }
+
+      /* Make sure the result ends up in the caller's arrays. */
+      if (sourceKeys != _keys) {
+        System.arraycopy(sourceKeys, 0, _keys, 0, _count);
+        System.arraycopy(sourceValues, 0, _values, 0, _count);
+      }
+    }
+
+    /**
+     * Gets the minimum size of the histogram scratch array required by
+     * {@link #sort(long[], int[], long[], int[], int[], int)}.
+     *
+     * @return the histogram size
+     */
+    public static int histogramSize() {
+      return RadixSort.PASSES * RadixSort.RADIX;
+    }
+
+  }
@@ -0,0 +1,463 @@
+package es.noa.rad.game.engine.render;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+  /**
+   * Headless {@link RenderBackend} that records the commands it receives.
+   *
+   * <p>Nothing is drawn. The backend keeps a copy of the sort key and
+   * payload of every command submitted during the last frame, plus a few
+   * counters, so batching and sorting logic can be verified and profiled
+   * on machines without a GPU.
+   *
+   * <p>Recorded data is stored in primitive arrays that are reused from
+   * frame to frame.
+   *
+   * @see RenderQueue
+   */
+  public final class RecordingRenderBackend
+      implements RenderBackend {
+
+    /**
+     * Initial number of commands the backend can record before growing.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Sort keys of the commands recorded in the last frame.
+     */
+    private long[] sortKeys;
+
+    /**
+     * Vertex data addresses of the commands recorded in the last frame.
+     */
+    private long[] vertexAddresses;
+
+    /**
+     * Index data addresses of the commands recorded in the last frame.
+     */
+    private long[] indexAddresses;
+
+    /**
+     * Vertex counts of the commands recorded in the last frame.
+     */
+    private int[] vertexCounts;
+
+    /**
+     * Index counts of the commands recorded in the last frame.
+     */
+    private int[] indexCounts;
+
+    /**
+     * Vertex format ordinals of the commands recorded in the last frame.
+     */
+    private int[] vertexFormats;
+
+    /**
+     * User data of the commands recorded in the last frame.
+     */
+    private int[] userData;
+
+    /**
+     * Instance data addresses of the commands recorded in the last frame.
+     */
+    private long[] instanceAddresses;
+
+    /**
+     * Instance counts of the commands recorded in the last frame.
+     */
+    private int[] instanceCounts;
+
+    /**
+     * Instance strides of the commands recorded in the last frame.
+     */
+    private int[] instanceStrides;
+
+    /**
+     * Number of commands recorded in the last frame.
+     */
+    private int count;
+
+    /**
+     * Number of shader or material changes seen in the last frame.
+     */
+    private int stateChanges;
+
+    /**
+     * Number of objects drawn in the last frame: one per regular command
+     * plus the instances of every instanced command.
+     */
+    private int drawnObjects;
+
+    /**
+     * Number of frames completed since the backend was created.
+     */
+    private long frames;
+
+    /**
+     * Total number of commands submitted since the backend was created.
+     */
+    private long totalCommands;
+
+    /**
+     * Whether a frame is currently being recorded.
+     */
+    private boolean recording;
+
+    /**
+     * Number of textures created and not destroyed.
+     */
+    private int textureCount;
+
+    /**
+     * Total size of the pixels of every texture created.
+     */
+    private long textureBytes;
+
+    /**
+     * Handle of the next texture created.
+     */
+    private int nextTexture;
+
+    /**
+     * Creates an empty recording backend.
+     */
+    public RecordingRenderBackend() {
+      this.sortKeys = new long[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.vertexAddresses = new long[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.indexAddresses = new long[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.vertexCounts = new int[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.indexCounts = new int[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.vertexFormats = new int[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.userData = new int[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.instanceAddresses
+        = new long[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.instanceCounts = new int[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.instanceStrides = new int[RecordingRenderBackend.INITIAL_CAPACITY];
+      this.count = 0;
+      this.stateChanges = 0;
+      this.drawnObjects = 0;
+      this.frames = 0L;
+      this.totalCommands = 0L;
+      this.recording = false;
+      this.textureCount = 0;
+      this.textureBytes = 0L;
+      this.nextTexture = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Discards the commands recorded in the previous frame.
+     *
+     * @throws IllegalStateException if a frame is already being recorded
+     */
+    @Override
+    public void beginFrame() {
+      if (this.recording) {
+        throw new IllegalStateException("Frame already begun.");
+      }
+      this.recording = true;
+      this.count = 0;
+      this.stateChanges = 0;
+      this.drawnObjects = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if no frame is being recorded
+     */
+    @Override
+    public void submit(
+        final long _sortKey,
+        final DrawCommand _command) {
+      if (!this.recording) {
+        throw new IllegalStateException("Submit outside of a frame.");
+      }
+      if (this.count == this.sortKeys.length) {
+        this.grow();
+      }
+      if ((this.count == 0)
+       || (SortKey.shader(_sortKey)
+           != SortKey.shader(this.sortKeys[this.count - 1]))
+       || (SortKey.material(_sortKey)
+           != SortKey.material(this.sortKeys[this.count - 1]))) {
+        this.stateChanges++;
+      }
+      final int index = this.count++;
+      this.sortKeys[index] = _sortKey;
+      this.vertexAddresses[index] = _command.vertexAddress();
+      this.indexAddresses[index] = _command.indexAddress();
+      this.vertexCounts[index] = _command.vertexCount();
+      this.indexCounts[index] = _command.indexCount();
+      this.vertexFormats[index] = _command.vertexFormat().ordinal();
+      this.userData[index] = _command.userData();
+      this.instanceAddresses[index] = _command.instanceAddress();
+      this.instanceCounts[index] = _command.instanceCount();
+      this.instanceStrides[index] = _command.instanceStride();
+      this.drawnObjects += Math.max(1, _command.instanceCount());
+      this.totalCommands++;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if no frame is being recorded
+     */
+    @Override
+    public void endFrame() {
+      if (!this.recording) {
+        throw new IllegalStateException("Frame not begun.");
+      }
+      this.recording = false;
+      this.frames++;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Only counts the texture; the pixels are not read.
+     */
+    @Override
+    public int createTexture(
+        final int _width,
+        final int _height,
+        final int _mipCount,
+        final boolean _srgb,
+        final long _pixels,
+        final long _byteSize) {
+      this.textureCount++;
+      this.textureBytes += _byteSize;
+      return this.nextTexture++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroyTexture(
+        final int _texture) {
+      this.textureCount--;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+      this.count = 0;
+      this.recording = false;
+    }
+
+    /**
+     * Gets the number of textures created and not yet destroyed.
+     *
+     * @return the texture count
+     */
+    public int textureCount() {
+      return this.textureCount;
+    }
+
+    /**
+     * Gets the total size of the pixels of every texture created.
+     *
+     * @return the texture bytes
+     */
+    public long textureBytes() {
+      return this.textureBytes;
+    }
+
+    /**
+     * Gets the number of commands recorded in the last frame.
+     *
+     * @return the command count
+     */
+    public int commandCount() {
+      return this.count;
+    }
+
+    /**
+     * Gets the number of shader or material changes in the last frame.
+     *
+     * <p>The first command of a frame counts as a change.
+     *
+     * @return the number of state changes
+     */
+    public int stateChanges() {
+      return this.stateChanges;
+    }
+
+    /**
+     * Gets the number of objects drawn in the last frame.
+     *
+     * <p>Regular commands count as one object and instanced commands as
+     * their instance count, so comparing this value with
+     * {@link #commandCount()} shows how many draws instancing saved.
+     *
+     * @return the number of drawn objects
+     */
+    public int drawnObjects() {
+      return this.drawnObjects;
+    }
+
+    /**
+     * Gets the number of frames completed so far.
+     *
+     * @return the frame count
+     */
+    public long frames() {
+      return this.frames;
+    }
+
+    /**
+     * Gets the total number of commands submitted so far.
+     *
+     * @return the total command count
+     */
+    public long totalCommands() {
+      return this.totalCommands;
+    }
+
+    /**
+     * Gets the sort key of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the sort key
+     */
+    public long sortKey(
+        final int _index) {
+      return this.sortKeys[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the vertex data address of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the vertex data address
+     */
+    public long vertexAddress(
+        final int _index) {
+      return this.vertexAddresses[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the index data address of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the index data address
+     */
+    public long indexAddress(
+        final int _index) {
+      return this.indexAddresses[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the vertex count of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the vertex count
+     */
+    public int vertexCount(
+        final int _index) {
+      return this.vertexCounts[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the index count of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the index count
+     */
+    public int indexCount(
+        final int _index) {
+      return this.indexCounts[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the vertex format of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the vertex format
+     */
+    public VertexFormat vertexFormat(
+        final int _index) {
+      return VertexFormat.of(this.vertexFormats[this.checkIndex(_index)]);
+    }
+
+    /**
+     * Gets the user data of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the user data
+     */
+    public int userData(
+        final int _index) {
+      return this.userData[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the instance data address of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the instance data address, or {@code NULL}
+     */
+    public long instanceAddress(
+        final int _index) {
+      return this.instanceAddresses[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the instance count of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the instance count, zero for regular draws
+     */
+    public int instanceCount(
+        final int _index) {
+      return this.instanceCounts[this.checkIndex(_index)];
+    }
+
+    /**
+     * Gets the instance stride of a recorded command.
+     *
+     * @param _index the position of the command in submission order
+     * @return the instance stride in bytes
+     */
+    public int instanceStride(
+        final int _index) {
+      return this.instanceStrides[this.checkIndex(_index)];
+    }
+
+    /**
+     * Validates the position of a recorded command.
+     *
+     * @param _index the position to validate
+     * @return the same position
+     * @throws IndexOutOfBoundsException if no such command was recorded
+     */
+    private int checkIndex(
+        final int _index) {
+      return Objects.checkIndex(_index, this.count);
+    }
+
+    /**
+     * Doubles the capacity of the recording arrays.
+     */
+    private void grow() {
+      final int newCapacity = this.sortKeys.length * 2;
+      this.sortKeys = Arrays.copyOf(this.sortKeys, newCapacity);
+      this.vertexAddresses = Arrays.copyOf(this.vertexAddresses, newCapacity);
+      this.indexAddresses = Arrays.copyOf(this.indexAddresses, newCapacity);
+      this.vertexCounts = Arrays.copyOf(this.vertexCounts, newCapacity);
+      this.indexCounts = Arrays.copyOf(this.indexCounts, newCapacity);
+      this.vertexFormats = Arrays.copyOf(this.vertexFormats, newCapacity);
+      this.userData = Arrays.copyOf(this.userData, newCapacity);
+      this.instanceAddresses
+        = Arrays.copyOf(this.instanceAddresses, newCapacity);
+      this.instanceCounts = Arrays.copyOf(this.instanceCounts, newCapacity);
+      this.instanceStrides = Arrays.copyOf(this.instanceStrides, newCapacity);
+    }
+
+  }
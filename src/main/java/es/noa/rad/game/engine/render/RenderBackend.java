@@ -0,0 +1,89 @@
+package es.noa.rad.game.engine.render;
+
+  /**
+   * Graphics API neutral consumer of sorted draw commands.
+   *
+   * <p>Once per frame the {@link RenderQueue} sorts the recorded commands
+   * and replays them to a backend:
+   * <ol>
+   *   <li>{@link #beginFrame()}</li>
+   *   <li>{@link #submit(long, DrawCommand)} for every command, in sort key
+   *       order</li>
+   *   <li>{@link #endFrame()}</li>
+   * </ol>
+   *
+   * <p>The {@link DrawCommand} handed to {@link #submit(long, DrawCommand)}
+   * is a reusable cursor that is only valid during the call; backends must
+   * copy whatever they need to keep.
+   *
+   * <p>Textures are created and destroyed between frames, on the thread
+   * that drives the frames, from pixels the backend copies.
+   *
+   * @see RenderQueue
+   * @see RecordingRenderBackend
+   */
+  public interface RenderBackend {
+
+    /**
+     * Handle of no texture.
+     */
+    int INVALID_TEXTURE = -1;
+
+    /**
+     * Called before the first command of a frame is submitted.
+     */
+    void beginFrame();
+
+    /**
+     * Submits a single draw command.
+     *
+     * @param _sortKey the packed sort key of the command
+     * @param _command cursor over the command payload
+     * @see SortKey
+     */
+    void submit(
+        long _sortKey,
+        DrawCommand _command);
+
+    /**
+     * Called after the last command of a frame has been submitted.
+     */
+    void endFrame();
+
+    /**
+     * Creates a texture from RGBA8 pixels with a full mip chain, every
+     * level stored tightly packed right after the previous one, level 0
+     * first.
+     *
+     * @param _width the width of level 0 in pixels
+     * @param _height the height of level 0 in pixels
+     * @param _mipCount the number of levels
+     * @param _srgb whether the pixels are in the sRGB color space
+     * @param _pixels the address of the pixels, copied by the backend
+     * @param _byteSize the size of the pixels in bytes
+     * @return the texture handle, or {@link #INVALID_TEXTURE} if the
+     *     texture could not be created
+     */
+    int createTexture(
+        int _width,
+        int _height,
+        int _mipCount,
+        boolean _srgb,
+        long _pixels,
+        long _byteSize);
+
+    /**
+     * Destroys a texture.
+     *
+     * @param _texture the handle returned by
+     *     {@link #createTexture(int, int, int, boolean, long, long)}
+     */
+    void destroyTexture(
+        int _texture);
+
+    /**
+     * Releases every resource owned by the backend.
+     */
+    void close();
+
+  }
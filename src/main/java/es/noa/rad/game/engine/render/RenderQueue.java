@@ -0,0 +1,243 @@
+package es.noa.rad.game.engine.render;
+
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Per-frame queue of draw commands ordered by packed sort keys.
+   *
+   * <p>Commands are recorded in any order during the frame and replayed to
+   * a {@link RenderBackend} in ascending {@link SortKey} order, so that the
+   * backend changes layer, pass, shader and material state as rarely as
+   * possible.
+   *
+   * <p>Memory layout:
+   * <ul>
+   *   <li>Sort keys live in a {@code long[]}, next to an {@code int[]} with
+   *       the slot of each command; both are radix sorted together.</li>
+   *   <li>Command payloads live in a single preallocated off-heap block
+   *       with a fixed stride of {@link DrawCommand#SIZE} bytes and are
+   *       never moved by the sort.</li>
+   * </ul>
+   *
+   * <p>All storage is reused from frame to frame. It only grows (doubling
+   * its capacity) when a frame records more commands than ever before, so
+   * steady state recording, sorting and submission never allocate.
+   *
+   * <p>Not thread-safe: commands must be recorded from a single thread.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * DrawCommand command = queue.push(SortKey.encode(0, 0, shader, material,
+   *     SortKey.quantizeDepth(depth)));
+   * command.vertexAddress(vertices);
+   * command.vertexCount(vertexCount);
+   * command.vertexFormat(VertexFormat.POSITION_NORMAL_TEXCOORD);
+   * ...
+   * queue.submit(backend);
+   * }</pre>
+   *
+   * @see SortKey
+   * @see DrawCommand
+   * @see RenderBackend
+   */
+  public final class RenderQueue {
+
+    /**
+     * Sort keys of the recorded commands.
+     */
+    private long[] keys;
+
+    /**
+     * Payload slot of each recorded command, permuted along with the keys.
+     */
+    private int[] slots;
+
+    /**
+     * Scratch keys used by the radix sort.
+     */
+    private long[] scratchKeys;
+
+    /**
+     * Scratch slots used by the radix sort.
+     */
+    private int[] scratchSlots;
+
+    /**
+     * Histogram scratch used by the radix sort.
+     */
+    private final int[] histogram;
+
+    /**
+     * Base address of the off-heap payload block.
+     */
+    private long payload;
+
+    /**
+     * Maximum number of commands the current storage can hold.
+     */
+    private int capacity;
+
+    /**
+     * Number of commands recorded in the current frame.
+     */
+    private int count;
+
+    /**
+     * Cursor handed to callers while recording.
+     */
+    private final DrawCommand writer;
+
+    /**
+     * Cursor handed to the backend while replaying.
+     */
+    private final DrawCommand reader;
+
+    /**
+     * Creates a render queue able to hold the given number of commands
+     * before growing.
+     *
+     * @param _capacity the initial command capacity
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public RenderQueue(
+        final int _capacity) {
+      if (_capacity <= 0) {
+        throw new IllegalArgumentException(
+          "Render queue capacity must be positive: " + _capacity);
+      }
+      this.capacity = _capacity;
+      this.count = 0;
+      this.keys = new long[_capacity];
+      this.slots = new int[_capacity];
+      this.scratchKeys = new long[_capacity];
+      this.scratchSlots = new int[_capacity];
+      this.histogram = new int[RadixSort.histogramSize()];
+      this.payload
+        = MemoryUtil.nmemAlloc(((long) _capacity) * DrawCommand.SIZE);
+      if (this.payload == MemoryUtil.NULL) {
+        throw new OutOfMemoryError(
+          "Unable to allocate the render queue payload.");
+      }
+      this.writer = new DrawCommand();
+      this.reader = new DrawCommand();
+    }
+
+    /**
+     * Records a new command and returns a cursor to fill its payload.
+     *
+     * <p>The payload starts zeroed. The returned cursor is shared and is
+     * only valid until the next call to this method.
+     *
+     * @param _sortKey the packed sort key of the command
+     * @return the cursor over the new command payload
+     * @see SortKey#encode(int, int, int, int, int)
+     */
+    public DrawCommand push(
+        final long _sortKey) {
+      if (this.count == this.capacity) {
+        this.grow();
+      }
+      final int slot = this.count++;
+      this.keys[slot] = _sortKey;
+      this.slots[slot] = slot;
+      this.writer.position(
+        this.payload + (((long) slot) * DrawCommand.SIZE));
+      this.writer.clear();
+      return this.writer;
+    }
+
+    /**
+     * Sorts the recorded commands by their sort key.
+     *
+     * <p>Called automatically by {@link #submit(RenderBackend)}; it can be
+     * invoked earlier to measure the sort in isolation.
+     */
+    public void sort() {
+      RadixSort.sort(
+        this.keys,
+        this.slots,
+        this.scratchKeys,
+        this.scratchSlots,
+        this.histogram,
+        this.count
+      );
+    }
+
+    /**
+     * Sorts the recorded commands, replays them to the backend and clears
+     * the queue for the next frame.
+     *
+     * @param _backend the backend receiving the commands
+     */
+    public void submit(
+        final RenderBackend _backend) {
+      this.sort();
+      _backend.beginFrame();
+      for (int index = 0; index < this.count; index++) {
+        this.reader.position(
+          this.payload + (((long) this.slots[index]) * DrawCommand.SIZE));
+        _backend.submit(this.keys[index], this.reader);
+      }
+      _backend.endFrame();
+      this.clear();
+    }
+
+    /**
+     * Discards every recorded command without submitting them.
+     */
+    public void clear() {
+      this.count = 0;
+    }
+
+    /**
+     * Gets the number of commands recorded in the current frame.
+     *
+     * @return the command count
+     */
+    public int size() {
+      return this.count;
+    }
+
+    /**
+     * Gets the number of commands the queue can hold before growing.
+     *
+     * @return the command capacity
+     */
+    public int capacity() {
+      return this.capacity;
+    }
+
+    /**
+     * Releases the off-heap payload block.
+     *
+     * <p>The queue must not be used after this call.
+     */
+    public void close() {
+      MemoryUtil.nmemFree(this.payload);
+      this.payload = MemoryUtil.NULL;
+      this.capacity = 0;
+      this.count = 0;
+    }
+
+    /**
+     * Doubles the capacity of the queue, preserving recorded commands.
+     */
+    private void grow() {
+      final int newCapacity = Math.multiplyExact(this.capacity, 2);
+      final long newPayload = MemoryUtil.nmemRealloc(
+        this.payload, ((long) newCapacity) * DrawCommand.SIZE);
+      if (newPayload == MemoryUtil.NULL) {
+        throw new OutOfMemoryError(
+          "Unable to grow the render queue payload.");
+      }
+      this.payload = newPayload;
+      this.keys = Arrays.copyOf(this.keys, newCapacity);
+      this.slots = Arrays.copyOf(this.slots, newCapacity);
+      this.scratchKeys = new long[newCapacity];
+      this.scratchSlots = new int[newCapacity];
+      this.capacity = newCapacity;
+    }
+
+  }
@@ -0,0 +1,221 @@
+package es.noa.rad.game.engine.render;
+
+  /**
+   * Encoder and decoder for the packed 64-bit draw command sort keys.
+   *
+   * <p>Every command pushed to the {@link RenderQueue} carries one of these
+   * keys. Sorting the keys as unsigned integers groups the commands so the
+   * backend changes state as rarely as possible. Bit layout, from the most
+   * significant bit to the least significant one:
+   * <pre>
+   * | 63 .. 56 | 55 .. 48 | 47 .. 36 | 35 .. 20 | 19 .. 0 |
+   * |  layer   |   pass   |  shader  | material |  depth  |
+   * |  8 bits  |  8 bits  | 12 bits  | 16 bits  | 20 bits |
+   * </pre>
+   *
+   * <p>Layers separate whole render targets (world, HUD, debug), passes
+   * separate the stages inside a layer (opaque, transparent). Depth is the
+   * least significant field, so inside a shader/material group commands
+   * are ordered front to back. Translucent passes that need back to front
+   * ordering can encode {@code 1.0 - depth} instead.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * long key = SortKey.encode(0, 1, shaderId, materialId,
+   *     SortKey.quantizeDepth(viewDepth / farPlane));
+   * }</pre>
+   *
+   * @see RenderQueue
+   */
+  public final class SortKey {
+
+    /**
+     * Number of bits used by the layer field.
+     */
+    public static final int LAYER_BITS = 8;
+
+    /**
+     * Number of bits used by the pass field.
+     */
+    public static final int PASS_BITS = 8;
+
+    /**
+     * Number of bits used by the shader field.
+     */
+    public static final int SHADER_BITS = 12;
+
+    /**
+     * Number of bits used by the material field.
+     */
+    public static final int MATERIAL_BITS = 16;
+
+    /**
+     * Number of bits used by the depth field.
+     */
+    public static final int DEPTH_BITS = 20;
+
+    /**
+     * Bit offset of the depth field.
+     */
+    private static final int DEPTH_SHIFT = 0;
+
+    /**
+     * Bit offset of the material field.
+     */
+    private static final int MATERIAL_SHIFT
+      = SortKey.DEPTH_SHIFT + SortKey.DEPTH_BITS;
+
+    /**
+     * Bit offset of the shader field.
+     */
+    private static final int SHADER_SHIFT
+      = SortKey.MATERIAL_SHIFT + SortKey.MATERIAL_BITS;
+
+    /**
+     * Bit offset of the pass field.
+     */
+    private static final int PASS_SHIFT
+      = SortKey.SHADER_SHIFT + SortKey.SHADER_BITS;
+
+    /**
+     * Bit offset of the layer field.
+     */
+    private static final int LAYER_SHIFT
+      = SortKey.PASS_SHIFT + SortKey.PASS_BITS;
+
+    /**
+     * Largest value that fits in the layer field.
+     */
+    public static final int MAX_LAYER = (1 << SortKey.LAYER_BITS) - 1;
+
+    /**
+     * Largest value that fits in the pass field.
+     */
+    public static final int MAX_PASS = (1 << SortKey.PASS_BITS) - 1;
+
+    /**
+     * Largest value that fits in the shader field.
+     */
+    public static final int MAX_SHADER = (1 << SortKey.SHADER_BITS) - 1;
+
+    /**
+     * Largest value that fits in the material field.
+     */
+    public static final int MAX_MATERIAL = (1 << SortKey.MATERIAL_BITS) - 1;
+
+    /**
+     * Largest value that fits in the depth field.
+     */
+    public static final int MAX_DEPTH = (1 << SortKey.DEPTH_BITS) - 1;
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private SortKey() {
+      super();
+    }
+
+    /**
+     * Packs the draw command attributes into a single sort key.
+     *
+     * <p>Values are masked to the width of their field, so out of range
+     * values wrap around instead of corrupting the neighbouring fields.
+     *
+     * @param _layer the layer (0 to {@link #MAX_LAYER})
+     * @param _pass the pass inside the layer (0 to {@link #MAX_PASS})
+     * @param _shader the shader identifier (0 to {@link #MAX_SHADER})
+     * @param _material the material identifier
+     *     (0 to {@link #MAX_MATERIAL})
+     * @param _depth the quantized depth (0 to {@link #MAX_DEPTH})
+     * @return the packed sort key
+     */
+    public static long encode(
+        final int _layer,
+        final int _pass,
+        final int _shader,
+        final int _material,
+        final int _depth) {
+      return (((long) (_layer & SortKey.MAX_LAYER)) << SortKey.LAYER_SHIFT)
+        | (((long) (_pass & SortKey.MAX_PASS)) << SortKey.PASS_SHIFT)
+        | (((long) (_shader & SortKey.MAX_SHADER)) << SortKey.SHADER_SHIFT)
+        | (((long) (_material & SortKey.MAX_MATERIAL))
+            << SortKey.MATERIAL_SHIFT)
+        | (((long) (_depth & SortKey.MAX_DEPTH)) << SortKey.DEPTH_SHIFT);
+    }
+
+    /**
+     * Quantizes a normalized depth into the depth field range.
+     *
+     * <p>Values outside {@code [0, 1]} are clamped.
+     *
+     * @param _depth the normalized depth (0 = near, 1 = far)
+     * @return the quantized depth (0 to {@link #MAX_DEPTH})
+     */
+    public static int quantizeDepth(
+        final float _depth) {
+      if (!(_depth > 0.0F)) {
+        return 0;
+      }
+      if (_depth >= 1.0F) {
+        return SortKey.MAX_DEPTH;
+      }
+      return ((int) (_depth * SortKey.MAX_DEPTH));
+    }
+
+    /**
+     * Extracts the layer field of a sort key.
+     *
+     * @param _sortKey the packed sort key
+     * @return the layer
+     */
+    public static int layer(
+        final long _sortKey) {
+      return ((int) (_sortKey >>> SortKey.LAYER_SHIFT)) & SortKey.MAX_LAYER;
+    }
+
+    /**
+     * Extracts the pass field of a sort key.
+     *
+     * @param _sortKey the packed sort key
+     * @return the pass
+     */
+    public static int pass(
+        final long _sortKey) {
+      return ((int) (_sortKey >>> SortKey.PASS_SHIFT)) & SortKey.MAX_PASS;
+    }
+
+    /**
+     * Extracts the shader field of a sort key.
+     *
+     * @param _sortKey the packed sort key
+     * @return the shader identifier
+     */
+    public static int shader(
+        final long _sortKey) {
+      return ((int) (_sortKey >>> SortKey.SHADER_SHIFT)) & SortKey.MAX_SHADER;
+    }
+
+    /**
+     * Extracts the material field of a sort key.
+     *
+     * @param _sortKey the packed sort key
+     * @return the material identifier
+     */
+    public static int material(
+        final long _sortKey) {
+      return ((int) (_sortKey >>> SortKey.MATERIAL_SHIFT))
+        & SortKey.MAX_MATERIAL;
+    }
+
+    /**
+     * Extracts the depth field of a sort key.
+     *
+     * @param _sortKey the packed sort key
+     * @return the quantized depth
+     */
+    public static int depth(
+        final long _sortKey) {
+      return ((int) (_sortKey >>> SortKey.DEPTH_SHIFT)) & SortKey.MAX_DEPTH;
+    }
+
+  }
@@ -0,0 +1,685 @@
+package es.noa.rad.game.engine.render;
+
+import java.util.Arrays;
+
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Batch renderer for textured 2D quads (sprites, HUD elements, glyphs).
+   *
+   * <p>Sprites are recorded during the frame into primitive arrays (one per
+   * attribute) together with a {@link SortKey} built from the current
+   * layer, shader and texture. On {@link #flush(RenderQueue)} the sprites
+   * are radix sorted by that key, their four vertices are generated
+   * directly into a persistent off-heap staging block in
+   * {@link VertexFormat#POSITION_TEXCOORD_COLOR} layout, and a single
+   * {@link DrawCommand} is pushed per run of sprites sharing the same key.
+   * All draws share one prebuilt quad index block.
+   *
+   * <p>The batch does not talk to any graphics API: its output is regular
+   * render queue commands, so batching can be checked headless with a
+   * {@link RecordingRenderBackend}.
+   *
+   * <p>Sprites of the same layer are grouped by shader and texture, which
+   * means their relative order is only preserved among sprites sharing the
+   * same texture. Use layers where drawing order matters.
+   *
+   * <p>Recording and flushing never allocate once the batch has grown to
+   * the largest frame seen. Vertex data must stay valid until the queue is
+   * submitted, so the staging block is only rewound by {@link #clear()}
+   * after submission; if it has to grow in between, the previous block is
+   * kept alive until then.
+   *
+   * <p>Not thread-safe.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * batch.layer(1);
+   * batch.texture(atlas);
+   * batch.region(0.0f, 0.0f, 0.5f, 0.5f);
+   * batch.color(0xFFFFFFFF);
+   * batch.draw(x, y, 32.0f, 32.0f);
+   * ...
+   * batch.flush(queue);
+   * queue.submit(backend);
+   * batch.clear();
+   * }</pre>
+   *
+   * @see RenderQueue
+   */
+  public final class SpriteBatch {
+
+    /**
+     * Number of vertices of a sprite.
+     */
+    public static final int VERTICES_PER_SPRITE = 4;
+
+    /**
+     * Number of indices of a sprite (two triangles).
+     */
+    public static final int INDICES_PER_SPRITE = 6;
+
+    /**
+     * Opaque white in the packed color format.
+     */
+    public static final int WHITE = 0xFFFFFFFF;
+
+    /**
+     * Vertex layout written by the batch.
+     */
+    private static final VertexFormat FORMAT
+      = VertexFormat.POSITION_TEXCOORD_COLOR;
+
+    /**
+     * Size in bytes of the vertices of a sprite.
+     */
+    private static final int SPRITE_STRIDE
+      = SpriteBatch.VERTICES_PER_SPRITE * SpriteBatch.FORMAT.stride();
+
+    /**
+     * Size in bytes of the indices of a sprite.
+     */
+    private static final int SPRITE_INDEX_STRIDE
+      = SpriteBatch.INDICES_PER_SPRITE * Integer.BYTES;
+
+    /**
+     * Offset of the texture coordinate inside a vertex.
+     */
+    private static final int TEXCOORD_OFFSET = 12;
+
+    /**
+     * Offset of the packed color inside a vertex.
+     */
+    private static final int COLOR_OFFSET = 20;
+
+    /**
+     * Number of floats of a texture region (u0, v0, u1, v1).
+     */
+    private static final int REGION_SIZE = 4;
+
+    /**
+     * Vertex of every index of a quad, relative to its first vertex.
+     */
+    private static final int[] QUAD_INDICES = {0, 1, 2, 2, 3, 0};
+
+    /**
+     * Initial number of blocks that can be retired in a frame.
+     */
+    private static final int INITIAL_RETIRED = 4;
+
+    /**
+     * Half of a sprite extent.
+     */
+    private static final float HALF = 0.5F;
+
+    /**
+     * Pass written in the sort key of every draw.
+     */
+    private final int pass;
+
+    /**
+     * Horizontal position of every recorded sprite.
+     */
+    private float[] positionX;
+
+    /**
+     * Vertical position of every recorded sprite.
+     */
+    private float[] positionY;
+
+    /**
+     * Width of every recorded sprite.
+     */
+    private float[] widths;
+
+    /**
+     * Height of every recorded sprite.
+     */
+    private float[] heights;
+
+    /**
+     * Rotation in radians of every recorded sprite.
+     */
+    private float[] rotations;
+
+    /**
+     * Texture region of every recorded sprite: u0, v0, u1, v1.
+     */
+    private float[] regions;
+
+    /**
+     * Packed color of every recorded sprite.
+     */
+    private int[] colors;
+
+    /**
+     * Sort key of every recorded sprite.
+     */
+    private long[] keys;
+
+    /**
+     * Sprite index attached to every key, permuted by the sort.
+     */
+    private int[] order;
+
+    /**
+     * Scratch keys used by the radix sort.
+     */
+    private long[] scratchKeys;
+
+    /**
+     * Scratch indices used by the radix sort.
+     */
+    private int[] scratchOrder;
+
+    /**
+     * Histogram scratch used by the radix sort.
+     */
+    private final int[] histogram;
+
+    /**
+     * Number of sprites recorded since the last flush.
+     */
+    private int count;
+
+    /**
+     * Current staging block of vertex data.
+     */
+    private long staging;
+
+    /**
+     * Current quad index block.
+     */
+    private long indices;
+
+    /**
+     * Number of sprites the staging and index blocks can hold.
+     */
+    private int stagingCapacity;
+
+    /**
+     * Number of sprites already written to the staging block this frame.
+     */
+    private int stagingCursor;
+
+    /**
+     * Blocks replaced during the frame, released on {@link #clear()}.
+     */
+    private long[] retired;
+
+    /**
+     * Number of entries in {@link #retired}.
+     */
+    private int retiredCount;
+
+    /**
+     * Current layer.
+     */
+    private int layer;
+
+    /**
+     * Current shader identifier.
+     */
+    private int shader;
+
+    /**
+     * Current texture identifier.
+     */
+    private int texture;
+
+    /**
+     * Current packed color.
+     */
+    private int color;
+
+    /**
+     * Current texture region: u0, v0, u1, v1.
+     */
+    private final float[] region;
+
+    /**
+     * Number of sprites flushed since the last {@link #clear()}.
+     */
+    private int frameSprites;
+
+    /**
+     * Number of draw commands pushed since the last {@link #clear()}.
+     */
+    private int frameDraws;
+
+    /**
+     * Creates a sprite batch.
+     *
+     * @param _capacity the number of sprites per frame before growing
+     * @param _pass the pass written in the sort key of every draw
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public SpriteBatch(
+        final int _capacity,
+        final int _pass) {
+      if (_capacity <= 0) {
+        throw new IllegalArgumentException(
+          "Sprite batch capacity must be positive: " + _capacity);
+      }
+      this.pass = _pass;
+      this.positionX = new float[_capacity];
+      this.positionY = new float[_capacity];
+      this.widths = new float[_capacity];
+      this.heights = new float[_capacity];
+      this.rotations = new float[_capacity];
+      this.regions = new float[_capacity * SpriteBatch.REGION_SIZE];
+      this.colors = new int[_capacity];
+      this.keys = new long[_capacity];
+      this.order = new int[_capacity];
+      this.scratchKeys = new long[_capacity];
+      this.scratchOrder = new int[_capacity];
+      this.histogram = new int[RadixSort.histogramSize()];
+      this.count = 0;
+      this.staging = MemoryUtil.NULL;
+      this.indices = MemoryUtil.NULL;
+      this.stagingCapacity = 0;
+      this.stagingCursor = 0;
+      this.retired = new long[SpriteBatch.INITIAL_RETIRED];
+      this.retiredCount = 0;
+      this.region = new float[] {0.0F, 0.0F, 1.0F, 1.0F};
+      this.color = SpriteBatch.WHITE;
+      this.reserve(_capacity);
+    }
+
+    /**
+     * Sets the layer of the next sprites.
+     *
+     * @param _layer the layer (0 to {@link SortKey#MAX_LAYER})
+     */
+    public void layer(
+        final int _layer) {
+      this.layer = _layer;
+    }
+
+    /**
+     * Sets the shader of the next sprites.
+     *
+     * @param _shader the shader identifier (0 to {@link SortKey#MAX_SHADER})
+     */
+    public void shader(
+        final int _shader) {
+      this.shader = _shader;
+    }
+
+    /**
+     * Sets the texture of the next sprites.
+     *
+     * <p>The texture is written in the material field of the sort key and
+     * in the user data of the draw commands.
+     *
+     * @param _texture the texture identifier
+     *     (0 to {@link SortKey#MAX_MATERIAL})
+     */
+    public void texture(
+        final int _texture) {
+      this.texture = _texture;
+    }
+
+    /**
+     * Sets the color of the next sprites.
+     *
+     * @param _color the color packed as {@code 0xAABBGGRR}, so that its
+     *     bytes are stored in RGBA order
+     */
+    public void color(
+        final int _color) {
+      this.color = _color;
+    }
+
+    /**
+     * Sets the texture region of the next sprites.
+     *
+     * @param _u0 the left texture coordinate
+     * @param _v0 the bottom texture coordinate
+     * @param _u1 the right texture coordinate
+     * @param _v1 the top texture coordinate
+     */
+    public void region(
+        final float _u0,
+        final float _v0,
+        final float _u1,
+        final float _v1) {
+      this.region[0] = _u0;
+      this.region[1] = _v0;
+      this.region[2] = _u1;
+      this.region[3] = _v1;
+    }
+
+    /**
+     * Records an axis aligned sprite with the current state.
+     *
+     * @param _x the left edge
+     * @param _y the bottom edge
+     * @param _width the width
+     * @param _height the height
+     */
+    public void draw(
+        final float _x,
+        final float _y,
+        final float _width,
+        final float _height) {
+      this.draw(_x, _y, _width, _height, 0.0F);
+    }
+
+    /**
+     * Records a sprite rotated around its center with the current state.
+     *
+     * @param _x the left edge before rotation
+     * @param _y the bottom edge before rotation
+     * @param _width the width
+     * @param _height the height
+     * @param _rotation the counter-clockwise rotation in radians
+     */
+    public void draw(
+        final float _x,
+        final float _y,
+        final float _width,
+        final float _height,
+        final float _rotation) {
+      if (this.count == this.keys.length) {
+        this.grow();
+      }
+      final int sprite = this.count++;
+      this.positionX[sprite] = _x;
+      this.positionY[sprite] = _y;
+      this.widths[sprite] = _width;
+      this.heights[sprite] = _height;
+      this.rotations[sprite] = _rotation;
+      System.arraycopy(
+        this.region,
+        0,
+        this.regions,
+        sprite * SpriteBatch.REGION_SIZE,
+        SpriteBatch.REGION_SIZE
+      );
+      this.colors[sprite] = this.color;
+      this.keys[sprite] = SortKey.encode(
+        this.layer, this.pass, this.shader, this.texture, 0);
+      this.order[sprite] = sprite;
+    }
+
+    /**
+     * Sorts the recorded sprites, writes their vertices to the staging
+     * block and pushes one draw command per layer, shader and texture run.
+     *
+     * <p>May be called several times per frame; every flush appends to the
+     * staging block.
+     *
+     * @param _queue the queue receiving the draw commands
+     */
+    public void flush(
+        final RenderQueue _queue) {
+      if (this.count == 0) {
+        return;
+      }
+      if ((this.stagingCursor + this.count) > this.stagingCapacity) {
+        this.reserve(this.stagingCursor + this.count);
+      }
+      RadixSort.sort(
+        this.keys,
+        this.order,
+        this.scratchKeys,
+        this.scratchOrder,
+        this.histogram,
+        this.count
+      );
+
+      int runStart = 0;
+      for (int index = 0; index < this.count; index++) {
+        this.writeSprite(this.order[index], this.stagingCursor + index);
+        if (((index + 1) == this.count)
+         || (this.keys[index + 1] != this.keys[runStart])) {
+          this.pushRun(_queue, runStart, index + 1);
+          runStart = index + 1;
+        }
+      }
+
+      this.stagingCursor += this.count;
+      this.frameSprites += this.count;
+      this.count = 0;
+    }
+
+    /**
+     * Rewinds the staging block for the next frame and releases blocks
+     * replaced during the frame.
+     *
+     * <p>Must only be called once the queue the batch was flushed to has
+     * been submitted.
+     */
+    public void clear() {
+      for (int index = 0; index < this.retiredCount; index++) {
+        MemoryUtil.nmemFree(this.retired[index]);
+      }
+      this.retiredCount = 0;
+      this.stagingCursor = 0;
+      this.frameSprites = 0;
+      this.frameDraws = 0;
+      this.count = 0;
+    }
+
+    /**
+     * Gets the number of sprites recorded and not yet flushed.
+     *
+     * @return the pending sprite count
+     */
+    public int size() {
+      return this.count;
+    }
+
+    /**
+     * Gets the number of sprites flushed since the last {@link #clear()}.
+     *
+     * @return the sprite count of the frame
+     */
+    public int frameSprites() {
+      return this.frameSprites;
+    }
+
+    /**
+     * Gets the number of draw commands pushed since the last
+     * {@link #clear()}.
+     *
+     * @return the draw count of the frame
+     */
+    public int frameDraws() {
+      return this.frameDraws;
+    }
+
+    /**
+     * Releases the off-heap staging and index blocks.
+     *
+     * <p>The batch must not be used after this call.
+     */
+    public void close() {
+      this.clear();
+      MemoryUtil.nmemFree(this.staging);
+      MemoryUtil.nmemFree(this.indices);
+      this.staging = MemoryUtil.NULL;
+      this.indices = MemoryUtil.NULL;
+      this.stagingCapacity = 0;
+    }
+
+    /**
+     * Writes the four vertices of a sprite.
+     *
+     * @param _sprite the index of the recorded sprite
+     * @param _target the position of the sprite in the staging block
+     */
+    private void writeSprite(
+        final int _sprite,
+        final int _target) {
+      final float halfWidth = this.widths[_sprite] * SpriteBatch.HALF;
+      final float halfHeight = this.heights[_sprite] * SpriteBatch.HALF;
+      final float centerX = this.positionX[_sprite] + halfWidth;
+      final float centerY = this.positionY[_sprite] + halfHeight;
+      final float rotation = this.rotations[_sprite];
+      float cos = 1.0F;
+      float sin = 0.0F;
+      if (rotation != 0.0F) {
+        cos = (float) Math.cos(rotation);
+        sin = (float) Math.sin(rotation);
+      }
+      /* Half extents rotated once; the corners are +/- combinations. */
+      final float axisXx = halfWidth * cos;
+      final float axisXy = halfWidth * sin;
+      final float axisYx = -halfHeight * sin;
+      final float axisYy = halfHeight * cos;
+
+      final int uv = _sprite * SpriteBatch.REGION_SIZE;
+      final float u0 = this.regions[uv];
+      final float v0 = this.regions[uv + 1];
+      final float u1 = this.regions[uv + 2];
+      final float v1 = this.regions[uv + 3];
+      final int rgba = this.colors[_sprite];
+
+      final long address
+        = this.staging + (((long) _target) * SpriteBatch.SPRITE_STRIDE);
+      final int stride = SpriteBatch.FORMAT.stride();
+      SpriteBatch.writeVertex(address,
+        centerX - axisXx - axisYx, centerY - axisXy - axisYy, u0, v0, rgba);
+      SpriteBatch.writeVertex(address + stride,
+        centerX + axisXx - axisYx, centerY + axisXy - axisYy, u1, v0, rgba);
+      SpriteBatch.writeVertex(address + (2L * stride),
+        centerX + axisXx + axisYx, centerY + axisXy + axisYy, u1, v1, rgba);
+      SpriteBatch.writeVertex(address + (3L * stride),
+        centerX - axisXx + axisYx, centerY - axisXy + axisYy, u0, v1, rgba);
+    }
+
+    /**
+     * Writes a single vertex.
+     *
+     * @param _address the address of the vertex
+     * @param _x the horizontal position
+     * @param _y the vertical position
+     * @param _u the horizontal texture coordinate
+     * @param _v the vertical texture coordinate
+     * @param _color the packed color
+     */
+    private static void writeVertex(
+        final long _address,
+        final float _x,
+        final float _y,
+        final float _u,
+        final float _v,
+        final int _color) {
+      MemoryUtil.memPutFloat(_address, _x);
+      MemoryUtil.memPutFloat(_address + Float.BYTES, _y);
+      MemoryUtil.memPutFloat(_address + (2L * Float.BYTES), 0.0F);
+      MemoryUtil.memPutFloat(_address + SpriteBatch.TEXCOORD_OFFSET, _u);
+      MemoryUtil.memPutFloat(
+        _address + SpriteBatch.TEXCOORD_OFFSET + Float.BYTES, _v);
+      MemoryUtil.memPutInt(_address + SpriteBatch.COLOR_OFFSET, _color);
+    }
+
+    /**
+     * Pushes the draw command of a run of sorted sprites sharing a key.
+     *
+     * @param _queue the queue receiving the command
+     * @param _start the first sorted sprite of the run
+     * @param _end one past the last sorted sprite of the run
+     */
+    private void pushRun(
+        final RenderQueue _queue,
+        final int _start,
+        final int _end) {
+      final long key = this.keys[_start];
+      final int sprites = _end - _start;
+      final DrawCommand command = _queue.push(key);
+      command.vertexAddress(this.staging
+        + (((long) (this.stagingCursor + _start)) * SpriteBatch.SPRITE_STRIDE));
+      command.vertexCount(sprites * SpriteBatch.VERTICES_PER_SPRITE);
+      command.indexAddress(this.indices);
+      command.indexCount(sprites * SpriteBatch.INDICES_PER_SPRITE);
+      command.vertexFormat(SpriteBatch.FORMAT);
+      command.userData(SortKey.material(key));
+      this.frameDraws++;
+    }
+
+    /**
+     * Ensures the staging and index blocks can hold the given number of
+     * sprites, preserving the vertices already written this frame.
+     *
+     * @param _sprites the number of sprites
+     */
+    private void reserve(
+        final int _sprites) {
+      final int capacity = Math.max(_sprites, this.stagingCapacity * 2);
+      final long newStaging
+        = MemoryUtil.nmemAlloc(((long) capacity) * SpriteBatch.SPRITE_STRIDE);
+      final long newIndices = MemoryUtil.nmemAlloc(
+        ((long) capacity) * SpriteBatch.SPRITE_INDEX_STRIDE);
+      if ((newStaging == MemoryUtil.NULL) || (newIndices == MemoryUtil.NULL)) {
+        MemoryUtil.nmemFree(newStaging);
+        MemoryUtil.nmemFree(newIndices);
+        throw new OutOfMemoryError(
+          "Unable to allocate the sprite batch staging memory.");
+      }
+
+      /* Two triangles per sprite sharing the diagonal. */
+      for (int sprite = 0; sprite < capacity; sprite++) {
+        final long address
+          = newIndices + (((long) sprite) * SpriteBatch.SPRITE_INDEX_STRIDE);
+        final int base = sprite * SpriteBatch.VERTICES_PER_SPRITE;
+        for (int index = 0; index < SpriteBatch.INDICES_PER_SPRITE;
+            index++) {
+          MemoryUtil.memPutInt(
+            address + (((long) index) * Integer.BYTES),
+            base + SpriteBatch.QUAD_INDICES[index]);
+        }
+      }
+
+      if (this.staging != MemoryUtil.NULL) {
+        if (this.stagingCursor > 0) {
+          /* Draws already pushed this frame still point to the old data. */
+          MemoryUtil.memCopy(this.staging, newStaging,
+            ((long) this.stagingCursor) * SpriteBatch.SPRITE_STRIDE);
+          this.retire(this.staging);
+          this.retire(this.indices);
+        } else {
+          MemoryUtil.nmemFree(this.staging);
+          MemoryUtil.nmemFree(this.indices);
+        }
+      }
+      this.staging = newStaging;
+      this.indices = newIndices;
+      this.stagingCapacity = capacity;
+    }
+
+    /**
+     * Keeps a replaced block alive until the next {@link #clear()}.
+     *
+     * @param _address the address of the block
+     */
+    private void retire(
+        final long _address) {
+      if (this.retiredCount == this.retired.length) {
+        this.retired = Arrays.copyOf(this.retired, this.retiredCount * 2);
+      }
+      this.retired[this.retiredCount++] = _address;
+    }
+
+    /**
+     * Doubles the capacity of the recording arrays.
+     */
+    private void grow() {
+      final int newCapacity = Math.multiplyExact(this.keys.length, 2);
+      this.positionX = Arrays.copyOf(this.positionX, newCapacity);
+      this.positionY = Arrays.copyOf(this.positionY, newCapacity);
+      this.widths = Arrays.copyOf(this.widths, newCapacity);
+      this.heights = Arrays.copyOf(this.heights, newCapacity);
+      this.rotations = Arrays.copyOf(this.rotations, newCapacity);
+      this.regions
+        = Arrays.copyOf(this.regions, newCapacity * SpriteBatch.REGION_SIZE);
+      this.colors = Arrays.copyOf(this.colors, newCapacity);
+      this.keys = Arrays.copyOf(this.keys, newCapacity);
+      this.order = Arrays.copyOf(this.order, newCapacity);
+      this.scratchKeys = new long[newCapacity];
+      this.scratchOrder = new int[newCapacity];
+    }
+
+  }
@@ -0,0 +1,80 @@
+package es.noa.rad.game.engine.render;
+
+  /**
+   * Enumeration of the interleaved vertex layouts understood by the
+   * render backends.
+   *
+   * <p>Draw commands only carry raw vertex memory, so the layout is
+   * identified by the ordinal of one of these constants. Every backend
+   * must be able to describe each layout to its graphics API.
+   *
+   * <p>Layouts:
+   * <ul>
+   *   <li>{@link #POSITION_TEXCOORD_COLOR}: 2D/HUD geometry
+   *       (sprites, particles, text)</li>
+   *   <li>{@link #POSITION_NORMAL_TEXCOORD}: lit 3D meshes</li>
+   * </ul>
+   *
+   * @see DrawCommand
+   */
+  public enum VertexFormat {
+
+    /**
+     * Position ({@code float x3}), texture coordinate ({@code float x2})
+     * and packed RGBA color ({@code ubyte x4}).
+     *
+     * <p>Stride: 24 bytes.
+     */
+    POSITION_TEXCOORD_COLOR(24),
+
+    /**
+     * Position ({@code float x3}), normal ({@code float x3}) and texture
+     * coordinate ({@code float x2}).
+     *
+     * <p>Stride: 32 bytes.
+     */
+    POSITION_NORMAL_TEXCOORD(32);
+
+    /**
+     * Cached copy of {@link #values()} to avoid cloning it on every
+     * lookup from the render loop.
+     */
+    private static final VertexFormat[] VALUES = VertexFormat.values();
+
+    /**
+     * Size in bytes of a single vertex.
+     */
+    private final int stride;
+
+    /**
+     * Private constructor for enum constants.
+     *
+     * @param _stride size in bytes of a single vertex
+     */
+    VertexFormat(
+        final int _stride) {
+      this.stride = _stride;
+    }
+
+    /**
+     * Gets the size in bytes of a single vertex.
+     *
+     * @return the vertex stride
+     */
+    public int stride() {
+      return this.stride;
+    }
+
+    /**
+     * Gets the vertex format identified by an ordinal stored in a
+     * draw command.
+     *
+     * @param _ordinal the ordinal of the vertex format
+     * @return the matching {@code VertexFormat}
+     */
+    public static VertexFormat of(
+        final int _ordinal) {
+      return VertexFormat.VALUES[_ordinal];
+    }
+
+  }
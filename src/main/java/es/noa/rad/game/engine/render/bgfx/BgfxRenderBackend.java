@@ -0,0 +1,895 @@
+package es.noa.rad.game.engine.render.bgfx;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.lwjgl.bgfx.BGFX;
+import org.lwjgl.bgfx.BGFXInit;
+import org.lwjgl.bgfx.BGFXInstanceDataBuffer;
+import org.lwjgl.bgfx.BGFXMemory;
+import org.lwjgl.bgfx.BGFXPlatform;
+import org.lwjgl.bgfx.BGFXTransientIndexBuffer;
+import org.lwjgl.bgfx.BGFXTransientVertexBuffer;
+import org.lwjgl.bgfx.BGFXVertexLayout;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.render.DrawCommand;
+import es.noa.rad.game.engine.render.RenderBackend;
+import es.noa.rad.game.engine.render.SortKey;
+import es.noa.rad.game.engine.render.VertexFormat;
+
+  /**
+   * {@link RenderBackend} implemented on top of bgfx.
+   *
+   * <p>Threading model: bgfx runs in multithreaded mode. A dedicated
+   * "Render" thread owned by this backend calls
+   * {@code bgfx_render_frame()} before {@code bgfx_init()}, which tells
+   * bgfx not to create its own render thread, and then keeps executing
+   * frames until bgfx shuts down. The thread that calls {@link #init} (the
+   * "Game" thread) becomes the API thread: it records commands through a
+   * bgfx encoder and hands each frame over with {@code bgfx_frame()}.
+   *
+   * <p>Geometry: every draw command is copied into transient vertex and
+   * index buffers, which bgfx recycles every frame. The per-instance data
+   * of instanced commands goes to a transient instance data buffer the
+   * same way. Commands that do not fit in the remaining transient space
+   * are dropped and counted.
+   *
+   * <p>Mapping of the sort key fields:
+   * <ul>
+   *   <li>layer: bgfx view; every view covers the back buffer and only
+   *       view 0 is cleared, so higher layers draw over lower ones</li>
+   *   <li>shader: program registered with
+   *       {@link #program(int, short)}; commands whose shader has no
+   *       program are set up and then discarded</li>
+   *   <li>depth: bgfx submission depth</li>
+   * </ul>
+   *
+   * <p>Textures: the user data of a command names its texture, the handle
+   * returned by {@link #createTexture}, as written by the sprite, instance
+   * and particle batches from the material of the sort key. A live texture
+   * is bound at stage 0 through the {@value #TEXTURE_SAMPLER} sampler
+   * uniform before the draw is submitted; any other value draws without a
+   * texture.
+   *
+   * <p>Headless use: initialized with {@code BGFX_RENDERER_TYPE_NOOP} and
+   * no native window, the whole submission path runs on machines without
+   * a GPU, which allows profiling the CPU cost of rendering in CI.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * BgfxRenderBackend backend
+   *     = new BgfxRenderBackend(BGFX.BGFX_RENDERER_TYPE_NOOP);
+   * backend.init(MemoryUtil.NULL, MemoryUtil.NULL, 1280, 720, false);
+   * renderQueue.submit(backend);
+   * backend.close();
+   * }</pre>
+   *
+   * @see es.noa.rad.game.engine.render.RenderQueue
+   */
+  public final class BgfxRenderBackend
+      implements RenderBackend {
+
+    /**
+     * Default size in bytes of the transient vertex buffer pool (32 MiB).
+     */
+    public static final int DEFAULT_TRANSIENT_VERTEX_BUFFER_SIZE
+      = 33554432;
+
+    /**
+     * Default size in bytes of the transient index buffer pool (16 MiB).
+     */
+    public static final int DEFAULT_TRANSIENT_INDEX_BUFFER_SIZE
+      = 16777216;
+
+    /**
+     * Name of the sampler uniform the texture of every draw is bound to.
+     */
+    public static final String TEXTURE_SAMPLER = "s_texColor";
+
+    /**
+     * Maximum time in milliseconds the render thread waits for a frame
+     * before checking again.
+     */
+    private static final int RENDER_FRAME_TIMEOUT = 100;
+
+    /**
+     * Maximum time in milliseconds the render thread sleeps while bgfx has
+     * no context, before calling {@code bgfx_render_frame()} again.
+     */
+    private static final long NO_CONTEXT_WAIT = 1L;
+
+    /**
+     * Default clear color (RGBA).
+     */
+    private static final int CLEAR_COLOR = 0x303030FF;
+
+    /**
+     * Number of distinct shader identifiers in a sort key.
+     */
+    private static final int PROGRAM_SLOTS = SortKey.MAX_SHADER + 1;
+
+    /**
+     * Number of components of a position attribute.
+     */
+    private static final int POSITION_COMPONENTS = 3;
+
+    /**
+     * Number of components of a normal attribute.
+     */
+    private static final int NORMAL_COMPONENTS = 3;
+
+    /**
+     * Number of components of a texture coordinate attribute.
+     */
+    private static final int TEXCOORD_COMPONENTS = 2;
+
+    /**
+     * Number of components of a packed color attribute.
+     */
+    private static final int COLOR_COMPONENTS = 4;
+
+    /**
+     * Size in bytes of a 32-bit index.
+     */
+    private static final int INDEX_SIZE = Integer.BYTES;
+
+    /**
+     * Mask of a bgfx handle stored in an int.
+     */
+    private static final int HANDLE_MASK = 0xFFFF;
+
+    /**
+     * Texture stage the texture of every draw is bound to.
+     */
+    private static final int TEXTURE_STAGE = 0;
+
+    /**
+     * Sampler flags telling bgfx to use the flags the texture was created
+     * with.
+     */
+    private static final int TEXTURE_FLAGS = 0xFFFFFFFF;
+
+    /**
+     * The bgfx renderer type requested at creation.
+     */
+    private final int rendererType;
+
+    /**
+     * Program handle registered for each shader identifier.
+     */
+    private final short[] programs;
+
+    /**
+     * Vertex layout for each {@link VertexFormat}, indexed by ordinal.
+     */
+    private final BGFXVertexLayout[] layouts;
+
+    /**
+     * Reusable transient vertex buffer descriptor.
+     */
+    private final BGFXTransientVertexBuffer transientVertexBuffer;
+
+    /**
+     * Reusable transient index buffer descriptor.
+     */
+    private final BGFXTransientIndexBuffer transientIndexBuffer;
+
+    /**
+     * Reusable instance data buffer descriptor.
+     */
+    private final BGFXInstanceDataBuffer instanceDataBuffer;
+
+    /**
+     * Size in bytes of the transient vertex buffer pool.
+     */
+    private int transientVertexBufferSize;
+
+    /**
+     * Size in bytes of the transient index buffer pool.
+     */
+    private int transientIndexBufferSize;
+
+    /**
+     * Whether every texture handle names a live texture.
+     */
+    private final boolean[] textures;
+
+    /**
+     * Sampler uniform handle, {@code BGFX_INVALID_HANDLE} until
+     * {@link #init}.
+     */
+    private short textureSampler;
+
+    /**
+     * Thread executing the bgfx render loop.
+     */
+    private Thread renderThread;
+
+    /**
+     * Flag telling the render thread to stop once bgfx has shut down.
+     */
+    private volatile boolean running;
+
+    /**
+     * Latch released once {@code bgfx_init()} has returned, or when the
+     * render thread is stopped.
+     */
+    private CountDownLatch initDone;
+
+    /**
+     * Error that killed the render thread before bgfx knew it, or null.
+     */
+    private volatile Throwable renderError;
+
+    /**
+     * Number of bgfx views configured, one per sort key layer up to the
+     * renderer limit.
+     */
+    private int viewCount;
+
+    /**
+     * Whether bgfx has been initialized by this backend.
+     */
+    private boolean initialized;
+
+    /**
+     * Encoder of the frame being recorded, NULL outside of a frame.
+     */
+    private long encoder;
+
+    /**
+     * Number of draws submitted in the last frame.
+     */
+    private int submittedDraws;
+
+    /**
+     * Number of draws dropped in the last frame (no transient space, no
+     * program or no view).
+     */
+    private int droppedDraws;
+
+    /**
+     * Number of draws submitted with a texture in the last frame.
+     */
+    private int texturedDraws;
+
+    /**
+     * Creates a bgfx backend for the given renderer type.
+     *
+     * <p>bgfx is not initialized until {@link #init} is called.
+     *
+     * @param _rendererType one of the {@code BGFX_RENDERER_TYPE_*}
+     *     constants; {@code BGFX_RENDERER_TYPE_COUNT} picks the platform
+     *     default
+     * @see #rendererType(String)
+     */
+    public BgfxRenderBackend(
+        final int _rendererType) {
+      this.rendererType = _rendererType;
+      this.programs = new short[BgfxRenderBackend.PROGRAM_SLOTS];
+      Arrays.fill(this.programs, BGFX.BGFX_INVALID_HANDLE);
+      this.layouts = new BGFXVertexLayout[VertexFormat.values().length];
+      this.transientVertexBuffer = BGFXTransientVertexBuffer.calloc();
+      this.transientIndexBuffer = BGFXTransientIndexBuffer.calloc();
+      this.instanceDataBuffer = BGFXInstanceDataBuffer.calloc();
+      this.textures = new boolean[BgfxRenderBackend.HANDLE_MASK + 1];
+      this.textureSampler = BGFX.BGFX_INVALID_HANDLE;
+      this.transientVertexBufferSize
+        = BgfxRenderBackend.DEFAULT_TRANSIENT_VERTEX_BUFFER_SIZE;
+      this.transientIndexBufferSize
+        = BgfxRenderBackend.DEFAULT_TRANSIENT_INDEX_BUFFER_SIZE;
+      this.renderThread = null;
+      this.running = false;
+      this.initDone = new CountDownLatch(0);
+      this.viewCount = 0;
+      this.initialized = false;
+      this.encoder = MemoryUtil.NULL;
+      this.submittedDraws = 0;
+      this.droppedDraws = 0;
+      this.texturedDraws = 0;
+    }
+
+    /**
+     * Resolves a renderer name from the configuration to a bgfx renderer
+     * type.
+     *
+     * <p>Accepted names: {@code auto}, {@code noop}, {@code opengl},
+     * {@code vulkan}, {@code direct3d11}, {@code direct3d12} and
+     * {@code metal} (case insensitive).
+     *
+     * @param _name the renderer name
+     * @return the matching {@code BGFX_RENDERER_TYPE_*} constant
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static int rendererType(
+        final String _name) {
+      switch (_name.trim().toLowerCase(Locale.ROOT)) {
+        case "auto":
+          return BGFX.BGFX_RENDERER_TYPE_COUNT;
+        case "noop":
+          return BGFX.BGFX_RENDERER_TYPE_NOOP;
+        case "opengl":
+          return BGFX.BGFX_RENDERER_TYPE_OPENGL;
+        case "vulkan":
+          return BGFX.BGFX_RENDERER_TYPE_VULKAN;
+        case "direct3d11":
+          return BGFX.BGFX_RENDERER_TYPE_DIRECT3D11;
+        case "direct3d12":
+          return BGFX.BGFX_RENDERER_TYPE_DIRECT3D12;
+        case "metal":
+          return BGFX.BGFX_RENDERER_TYPE_METAL;
+        default:
+          throw new IllegalArgumentException(
+            "Unknown bgfx renderer: '" + _name + "'");
+      }
+    }
+
+    /**
+     * Sets the size of the transient buffer pools.
+     *
+     * <p>Must be called before {@link #init}. The pools bound the amount
+     * of geometry that can be submitted in a single frame.
+     *
+     * @param _vertexBufferSize size in bytes of the vertex pool
+     * @param _indexBufferSize size in bytes of the index pool
+     * @throws IllegalStateException if bgfx is already initialized
+     */
+    public void transientBufferSizes(
+        final int _vertexBufferSize,
+        final int _indexBufferSize) {
+      if (this.initialized) {
+        throw new IllegalStateException(
+          "Transient buffer sizes must be set before init().");
+      }
+      this.transientVertexBufferSize = _vertexBufferSize;
+      this.transientIndexBufferSize = _indexBufferSize;
+    }
+
+    /**
+     * Starts the render thread and initializes bgfx from the calling
+     * thread, which becomes the bgfx API thread.
+     *
+     * @param _nativeDisplay native display handle (X11 display), or NULL
+     * @param _nativeWindow native window handle, or NULL for headless use
+     * @param _width back buffer width in pixels
+     * @param _height back buffer height in pixels
+     * @param _vSync whether presentation waits for vertical refresh
+     * @throws IllegalStateException if bgfx cannot be initialized
+     */
+    public void init(
+        final long _nativeDisplay,
+        final long _nativeWindow,
+        final int _width,
+        final int _height,
+        final boolean _vSync) {
+      if (this.initialized) {
+        throw new IllegalStateException("bgfx already initialized.");
+      }
+
+      /*
+       * The render thread must call bgfx_render_frame() before the API
+       * thread calls bgfx_init(), and must keep calling it during init.
+       */
+      final CountDownLatch renderThreadReady = new CountDownLatch(1);
+      this.initDone = new CountDownLatch(1);
+      this.renderError = null;
+      this.running = true;
+      this.renderThread = new Thread(
+        () -> this.renderLoop(renderThreadReady), "Render");
+      this.renderThread.setDaemon(true);
+      this.renderThread.start();
+      try {
+        renderThreadReady.await();
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        this.stopRenderThread();
+        throw new IllegalStateException(
+          "Interrupted while starting the render thread.",
+          interruptedException);
+      }
+      if (this.renderError != null) {
+        this.stopRenderThread();
+        throw new IllegalStateException(
+          "The render thread failed to start.", this.renderError);
+      }
+
+      try (MemoryStack stack = MemoryStack.stackPush()) {
+        final BGFXInit init = BGFXInit.malloc(stack);
+        BGFX.bgfx_init_ctor(init);
+        init.type(this.rendererType);
+        init.vendorId(BGFX.BGFX_PCI_ID_NONE);
+        init.resolution()
+          .width(_width)
+          .height(_height)
+          .reset(_vSync ? BGFX.BGFX_RESET_VSYNC : BGFX.BGFX_RESET_NONE);
+        init.limits()
+          .transientVbSize(this.transientVertexBufferSize)
+          .transientIbSize(this.transientIndexBufferSize);
+        init.platformData()
+          .ndt(_nativeDisplay)
+          .nwh(_nativeWindow);
+
+        final boolean started = BGFX.bgfx_init(init);
+        this.initDone.countDown();
+        if (!started) {
+          this.stopRenderThread();
+          throw new IllegalStateException("bgfx wasn't initialized.");
+        }
+      }
+      this.initialized = true;
+
+      this.createLayouts();
+      this.textureSampler = BGFX.bgfx_create_uniform(
+        BgfxRenderBackend.TEXTURE_SAMPLER, BGFX.BGFX_UNIFORM_TYPE_SAMPLER, 1);
+
+      /* One view per layer, only the first one cleared every frame. */
+      this.viewCount = Math.min(SortKey.MAX_LAYER + 1,
+        BGFX.bgfx_get_caps().limits().maxViews());
+      BGFX.bgfx_set_view_clear(
+        0,
+        BGFX.BGFX_CLEAR_COLOR | BGFX.BGFX_CLEAR_DEPTH,
+        BgfxRenderBackend.CLEAR_COLOR,
+        1.0F,
+        0
+      );
+      this.setViewRects(_width, _height);
+    }
+
+    /**
+     * Makes every configured view cover the back buffer.
+     *
+     * @param _width back buffer width in pixels
+     * @param _height back buffer height in pixels
+     */
+    private void setViewRects(
+        final int _width,
+        final int _height) {
+      for (int view = 0; view < this.viewCount; view++) {
+        BGFX.bgfx_set_view_rect(view, 0, 0, _width, _height);
+      }
+    }
+
+    /**
+     * Body of the render thread.
+     *
+     * @param _ready latch released once bgfx knows this is the render
+     *     thread, or once the thread failed to tell it
+     */
+    private void renderLoop(
+        final CountDownLatch _ready) {
+      /* Tell bgfx to run in multithreaded mode on this thread. */
+      try {
+        BGFXPlatform.bgfx_render_frame(-1);
+      } catch (final LinkageError linkageException) {
+        this.renderError = linkageException;
+        return;
+      } finally {
+        _ready.countDown();
+      }
+
+      int result = BGFXPlatform.BGFX_RENDER_FRAME_NO_CONTEXT;
+      while (result != BGFXPlatform.BGFX_RENDER_FRAME_EXITING) {
+        result = BGFXPlatform.bgfx_render_frame(
+          BgfxRenderBackend.RENDER_FRAME_TIMEOUT);
+        if (result == BGFXPlatform.BGFX_RENDER_FRAME_NO_CONTEXT) {
+          /* No context yet (init in progress) or anymore (init failed). */
+          if (!this.running) {
+            return;
+          }
+          this.awaitInit();
+        }
+      }
+    }
+
+    /**
+     * Sleeps until {@code bgfx_init()} returns, at most
+     * {@link #NO_CONTEXT_WAIT} milliseconds so that the render thread keeps
+     * serving the init handshake.
+     */
+    private void awaitInit() {
+      try {
+        this.initDone.await(
+          BgfxRenderBackend.NO_CONTEXT_WAIT, TimeUnit.MILLISECONDS);
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        this.running = false;
+      }
+    }
+
+    /**
+     * Creates the bgfx vertex layouts of every {@link VertexFormat}.
+     */
+    private void createLayouts() {
+      final int type = BGFX.bgfx_get_renderer_type();
+      for (final VertexFormat vertexFormat : VertexFormat.values()) {
+        final BGFXVertexLayout layout = BGFXVertexLayout.calloc();
+        BGFX.bgfx_vertex_layout_begin(layout, type);
+        switch (vertexFormat) {
+          case POSITION_TEXCOORD_COLOR:
+            BGFX.bgfx_vertex_layout_add(
+              layout,
+              BGFX.BGFX_ATTRIB_POSITION,
+              BgfxRenderBackend.POSITION_COMPONENTS,
+              BGFX.BGFX_ATTRIB_TYPE_FLOAT,
+              false,
+              false
+            );
+            BGFX.bgfx_vertex_layout_add(
+              layout,
+              BGFX.BGFX_ATTRIB_TEXCOORD0,
+              BgfxRenderBackend.TEXCOORD_COMPONENTS,
+              BGFX.BGFX_ATTRIB_TYPE_FLOAT,
+              false,
+              false
+            );
+            BGFX.bgfx_vertex_layout_add(
+              layout,
+              BGFX.BGFX_ATTRIB_COLOR0,
+              BgfxRenderBackend.COLOR_COMPONENTS,
+              BGFX.BGFX_ATTRIB_TYPE_UINT8,
+              true,
+              false
+            );
+            break;
+          case POSITION_NORMAL_TEXCOORD:
+            BGFX.bgfx_vertex_layout_add(
+              layout,
+              BGFX.BGFX_ATTRIB_POSITION,
+              BgfxRenderBackend.POSITION_COMPONENTS,
+              BGFX.BGFX_ATTRIB_TYPE_FLOAT,
+              false,
+              false
+            );
+            BGFX.bgfx_vertex_layout_add(
+              layout,
+              BGFX.BGFX_ATTRIB_NORMAL,
+              BgfxRenderBackend.NORMAL_COMPONENTS,
+              BGFX.BGFX_ATTRIB_TYPE_FLOAT,
+              false,
+              false
+            );
+            BGFX.bgfx_vertex_layout_add(
+              layout,
+              BGFX.BGFX_ATTRIB_TEXCOORD0,
+              BgfxRenderBackend.TEXCOORD_COMPONENTS,
+              BGFX.BGFX_ATTRIB_TYPE_FLOAT,
+              false,
+              false
+            );
+            break;
+          default:
+            throw new IllegalStateException(
+              "Unsupported vertex format: " + vertexFormat);
+        }
+        BGFX.bgfx_vertex_layout_end(layout);
+        this.layouts[vertexFormat.ordinal()] = layout;
+      }
+    }
+
+    /**
+     * Registers the bgfx program used for a shader identifier.
+     *
+     * @param _shader the shader identifier used in sort keys
+     * @param _program the bgfx program handle, or
+     *     {@code BGFX_INVALID_HANDLE} to discard the shader's draws
+     */
+    public void program(
+        final int _shader,
+        final short _program) {
+      this.programs[_shader & SortKey.MAX_SHADER] = _program;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Begins a bgfx encoder on the calling (API) thread.
+     */
+    @Override
+    public void beginFrame() {
+      this.checkInitialized();
+      this.submittedDraws = 0;
+      this.droppedDraws = 0;
+      this.texturedDraws = 0;
+      /* Make sure the default view is cleared even without draws. */
+      BGFX.bgfx_touch(0);
+      this.encoder = BGFX.bgfx_encoder_begin(false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Copies the command geometry into transient buffers, binds the
+     * texture named by its user data and submits it to the view matching
+     * the sort key layer. Commands on a layer beyond the views of the
+     * renderer are dropped.
+     */
+    @Override
+    public void submit(
+        final long _sortKey,
+        final DrawCommand _command) {
+      final int vertexCount = _command.vertexCount();
+      if (vertexCount <= 0) {
+        return;
+      }
+      final int view = SortKey.layer(_sortKey);
+      if (view >= this.viewCount) {
+        this.droppedDraws++;
+        return;
+      }
+      final VertexFormat vertexFormat = _command.vertexFormat();
+      final BGFXVertexLayout layout = this.layouts[vertexFormat.ordinal()];
+      final int indexCount = _command.indexCount();
+      final boolean indexed = (_command.indexAddress() != MemoryUtil.NULL)
+        && (indexCount > 0);
+      final int instanceCount = _command.instanceCount();
+      final int instanceStride = _command.instanceStride();
+      final boolean instanced = instanceCount > 0;
+
+      /* Drop the draw when the transient pools are exhausted. */
+      if ((BGFX.bgfx_get_avail_transient_vertex_buffer(vertexCount, layout)
+            < vertexCount)
+       || (indexed
+           && (BGFX.bgfx_get_avail_transient_index_buffer(indexCount, true)
+               < indexCount))
+       || (instanced
+           && (BGFX.bgfx_get_avail_instance_data_buffer(
+                 instanceCount, instanceStride) < instanceCount))) {
+        this.droppedDraws++;
+        return;
+      }
+
+      BGFX.bgfx_alloc_transient_vertex_buffer(
+        this.transientVertexBuffer, vertexCount, layout);
+      MemoryUtil.memCopy(
+        _command.vertexAddress(),
+        MemoryUtil.memGetAddress(
+          this.transientVertexBuffer.address()
+            + BGFXTransientVertexBuffer.DATA),
+        ((long) vertexCount) * vertexFormat.stride()
+      );
+      BGFX.bgfx_encoder_set_transient_vertex_buffer(
+        this.encoder, 0, this.transientVertexBuffer, 0, vertexCount);
+
+      if (indexed) {
+        BGFX.bgfx_alloc_transient_index_buffer(
+          this.transientIndexBuffer, indexCount, true);
+        MemoryUtil.memCopy(
+          _command.indexAddress(),
+          MemoryUtil.memGetAddress(
+            this.transientIndexBuffer.address()
+              + BGFXTransientIndexBuffer.DATA),
+          ((long) indexCount) * BgfxRenderBackend.INDEX_SIZE
+        );
+        BGFX.bgfx_encoder_set_transient_index_buffer(
+          this.encoder, this.transientIndexBuffer, 0, indexCount);
+      }
+
+      if (instanced) {
+        BGFX.bgfx_alloc_instance_data_buffer(
+          this.instanceDataBuffer, instanceCount, instanceStride);
+        MemoryUtil.memCopy(
+          _command.instanceAddress(),
+          MemoryUtil.memGetAddress(
+            this.instanceDataBuffer.address() + BGFXInstanceDataBuffer.DATA),
+          ((long) instanceCount) * instanceStride
+        );
+        BGFX.bgfx_encoder_set_instance_data_buffer(
+          this.encoder, this.instanceDataBuffer, 0, instanceCount);
+      }
+
+      BGFX.bgfx_encoder_set_state(this.encoder, BGFX.BGFX_STATE_DEFAULT, 0);
+
+      final int texture = _command.userData();
+      final boolean textured = (texture >= 0)
+        && (texture <= BgfxRenderBackend.HANDLE_MASK)
+        && this.textures[texture];
+      if (textured) {
+        BGFX.bgfx_encoder_set_texture(
+          this.encoder,
+          BgfxRenderBackend.TEXTURE_STAGE,
+          this.textureSampler,
+          (short) texture,
+          BgfxRenderBackend.TEXTURE_FLAGS
+        );
+      }
+
+      final short program = this.programs[SortKey.shader(_sortKey)];
+      if (program == BGFX.BGFX_INVALID_HANDLE) {
+        BGFX.bgfx_encoder_discard(this.encoder, BGFX.BGFX_DISCARD_ALL);
+        this.droppedDraws++;
+        return;
+      }
+      BGFX.bgfx_encoder_submit(
+        this.encoder,
+        view,
+        program,
+        SortKey.depth(_sortKey),
+        BGFX.BGFX_DISCARD_ALL
+      );
+      this.submittedDraws++;
+      if (textured) {
+        this.texturedDraws++;
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Ends the encoder and hands the frame over to the render thread.
+     */
+    @Override
+    public void endFrame() {
+      if (this.encoder != MemoryUtil.NULL) {
+        BGFX.bgfx_encoder_end(this.encoder);
+        this.encoder = MemoryUtil.NULL;
+      }
+      BGFX.bgfx_frame(false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Copies the pixels into bgfx memory and creates an immutable
+     * RGBA8 texture on the calling (API) thread.
+     *
+     * @throws IllegalArgumentException if the pixels do not fit in bgfx
+     *     memory
+     */
+    @Override
+    public int createTexture(
+        final int _width,
+        final int _height,
+        final int _mipCount,
+        final boolean _srgb,
+        final long _pixels,
+        final long _byteSize) {
+      this.checkInitialized();
+      if (_byteSize > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException(
+          "Texture too large: " + _byteSize);
+      }
+      final BGFXMemory memory = BGFX.bgfx_copy(
+        MemoryUtil.memByteBuffer(_pixels, (int) _byteSize));
+      final short texture = BGFX.bgfx_create_texture_2d(
+        _width,
+        _height,
+        _mipCount > 1,
+        1,
+        BGFX.BGFX_TEXTURE_FORMAT_RGBA8,
+        _srgb ? BGFX.BGFX_TEXTURE_SRGB : BGFX.BGFX_TEXTURE_NONE,
+        memory
+      );
+      if (texture == BGFX.BGFX_INVALID_HANDLE) {
+        return RenderBackend.INVALID_TEXTURE;
+      }
+      this.textures[texture & BgfxRenderBackend.HANDLE_MASK] = true;
+      return texture & BgfxRenderBackend.HANDLE_MASK;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroyTexture(
+        final int _texture) {
+      this.checkInitialized();
+      this.textures[_texture & BgfxRenderBackend.HANDLE_MASK] = false;
+      BGFX.bgfx_destroy_texture((short) _texture);
+    }
+
+    /**
+     * Resizes the back buffer.
+     *
+     * @param _width back buffer width in pixels
+     * @param _height back buffer height in pixels
+     * @param _vSync whether presentation waits for vertical refresh
+     */
+    public void resize(
+        final int _width,
+        final int _height,
+        final boolean _vSync) {
+      this.checkInitialized();
+      BGFX.bgfx_reset(
+        _width,
+        _height,
+        _vSync ? BGFX.BGFX_RESET_VSYNC : BGFX.BGFX_RESET_NONE,
+        BGFX.BGFX_TEXTURE_FORMAT_COUNT
+      );
+      this.setViewRects(_width, _height);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Shuts bgfx down, waits for the render thread to exit and frees
+     * the native descriptors.
+     */
+    @Override
+    public void close() {
+      if (this.initialized) {
+        if (this.encoder != MemoryUtil.NULL) {
+          BGFX.bgfx_encoder_end(this.encoder);
+          this.encoder = MemoryUtil.NULL;
+        }
+        BGFX.bgfx_destroy_uniform(this.textureSampler);
+        this.textureSampler = BGFX.BGFX_INVALID_HANDLE;
+        Arrays.fill(this.textures, false);
+        BGFX.bgfx_shutdown();
+        this.initialized = false;
+      }
+      this.stopRenderThread();
+      for (int index = 0; index < this.layouts.length; index++) {
+        if (this.layouts[index] != null) {
+          this.layouts[index].free();
+          this.layouts[index] = null;
+        }
+      }
+      this.transientVertexBuffer.free();
+      this.transientIndexBuffer.free();
+      this.instanceDataBuffer.free();
+    }
+
+    /**
+     * Gets the number of draws submitted to bgfx in the last frame.
+     *
+     * @return the submitted draw count
+     */
+    public int submittedDraws() {
+      return this.submittedDraws;
+    }
+
+    /**
+     * Gets the number of draws dropped in the last frame because the
+     * transient pools were exhausted, the shader had no program or the
+     * layer had no view.
+     *
+     * @return the dropped draw count
+     */
+    public int droppedDraws() {
+      return this.droppedDraws;
+    }
+
+    /**
+     * Gets the number of draws submitted with a texture bound in the last
+     * frame.
+     *
+     * @return the textured draw count
+     */
+    public int texturedDraws() {
+      return this.texturedDraws;
+    }
+
+    /**
+     * Stops and joins the render thread.
+     */
+    private void stopRenderThread() {
+      this.running = false;
+      this.initDone.countDown();
+      if (this.renderThread == null) {
+        return;
+      }
+      try {
+        this.renderThread.join();
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      this.renderThread = null;
+    }
+
+    /**
+     * Verifies that bgfx has been initialized.
+     *
+     * @throws IllegalStateException if {@link #init} has not been called
+     */
+    private void checkInitialized() {
+      if (!this.initialized) {
+        throw new IllegalStateException(
+          "bgfx must be initialized. Call init() first.");
+      }
+    }
+
+  }
@@ -0,0 +1,263 @@
+package es.noa.rad.game.engine.render.culling;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.joml.primitives.AABBf;
+
+  /**
+   * Axis aligned bounding boxes stored as structure of arrays.
+   *
+   * <p>Each coordinate lives in its own {@code float[]}, so culling loops
+   * stream through six contiguous arrays instead of chasing one object per
+   * box, and the same layout can be loaded lane by lane by the Vector API.
+   * The index of a box is the identifier reported by the cullers.
+   *
+   * <p>Not thread-safe for writing; cullers only read it.
+   *
+   * @see FrustumCuller
+   */
+  public final class BoundingBoxes {
+
+    /**
+     * Minimum x of every box.
+     */
+    private float[] minX;
+
+    /**
+     * Minimum y of every box.
+     */
+    private float[] minY;
+
+    /**
+     * Minimum z of every box.
+     */
+    private float[] minZ;
+
+    /**
+     * Maximum x of every box.
+     */
+    private float[] maxX;
+
+    /**
+     * Maximum y of every box.
+     */
+    private float[] maxY;
+
+    /**
+     * Maximum z of every box.
+     */
+    private float[] maxZ;
+
+    /**
+     * Number of boxes.
+     */
+    private int size;
+
+    /**
+     * Creates an empty set of boxes.
+     *
+     * @param _capacity the number of boxes before growing
+     */
+    public BoundingBoxes(
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.minX = new float[capacity];
+      this.minY = new float[capacity];
+      this.minZ = new float[capacity];
+      this.maxX = new float[capacity];
+      this.maxY = new float[capacity];
+      this.maxZ = new float[capacity];
+      this.size = 0;
+    }
+
+    /**
+     * Appends a box.
+     *
+     * @param _minX the minimum x
+     * @param _minY the minimum y
+     * @param _minZ the minimum z
+     * @param _maxX the maximum x
+     * @param _maxY the maximum y
+     * @param _maxZ the maximum z
+     * @return the index of the box
+     */
+    public int add(
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ) {
+      if (this.size == this.minX.length) {
+        this.grow(this.size + 1);
+      }
+      final int index = this.size++;
+      this.minX[index] = _minX;
+      this.minY[index] = _minY;
+      this.minZ[index] = _minZ;
+      this.maxX[index] = _maxX;
+      this.maxY[index] = _maxY;
+      this.maxZ[index] = _maxZ;
+      return index;
+    }
+
+    /**
+     * Appends a box.
+     *
+     * @param _box the box
+     * @return the index of the box
+     */
+    public int add(
+        final AABBf _box) {
+      return this.add(
+        _box.minX, _box.minY, _box.minZ, _box.maxX, _box.maxY, _box.maxZ);
+    }
+
+    /**
+     * Replaces a box.
+     *
+     * @param _index the index of the box
+     * @param _box the new bounds
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public void set(
+        final int _index,
+        final AABBf _box) {
+      Objects.checkIndex(_index, this.size);
+      this.minX[_index] = _box.minX;
+      this.minY[_index] = _box.minY;
+      this.minZ[_index] = _box.minZ;
+      this.maxX[_index] = _box.maxX;
+      this.maxY[_index] = _box.maxY;
+      this.maxZ[_index] = _box.maxZ;
+    }
+
+    /**
+     * Copies a box.
+     *
+     * @param _index the index of the box
+     * @param _dest the box receiving the bounds
+     * @return the destination box
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public AABBf get(
+        final int _index,
+        final AABBf _dest) {
+      Objects.checkIndex(_index, this.size);
+      return _dest.setMin(
+          this.minX[_index], this.minY[_index], this.minZ[_index])
+        .setMax(this.maxX[_index], this.maxY[_index], this.maxZ[_index]);
+    }
+
+    /**
+     * Gets the number of boxes.
+     *
+     * @return the size
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Sets the number of boxes, growing the arrays if needed.
+     *
+     * <p>Boxes added by growing the size have undefined bounds until
+     * written, as when they are the destination of
+     * {@code BatchMath.transformBounds}.
+     *
+     * @param _size the new size
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public void size(
+        final int _size) {
+      if (_size < 0) {
+        throw new IllegalArgumentException(
+          "Bounding box count must not be negative: " + _size);
+      }
+      if (_size > this.minX.length) {
+        this.grow(_size);
+      }
+      this.size = _size;
+    }
+
+    /**
+     * Removes every box, keeping the capacity.
+     */
+    public void clear() {
+      this.size = 0;
+    }
+
+    /**
+     * Gets the minimum x array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] minX() {
+      return this.minX;
+    }
+
+    /**
+     * Gets the minimum y array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] minY() {
+      return this.minY;
+    }
+
+    /**
+     * Gets the minimum z array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] minZ() {
+      return this.minZ;
+    }
+
+    /**
+     * Gets the maximum x array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] maxX() {
+      return this.maxX;
+    }
+
+    /**
+     * Gets the maximum y array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] maxY() {
+      return this.maxY;
+    }
+
+    /**
+     * Gets the maximum z array.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    public float[] maxZ() {
+      return this.maxZ;
+    }
+
+    /**
+     * Grows the capacity to at least the given number of boxes, at least
+     * doubling it.
+     *
+     * @param _capacity the number of boxes
+     */
+    private void grow(
+        final int _capacity) {
+      final int newCapacity
+        = Math.max(_capacity, Math.multiplyExact(this.minX.length, 2));
+      this.minX = Arrays.copyOf(this.minX, newCapacity);
+      this.minY = Arrays.copyOf(this.minY, newCapacity);
+      this.minZ = Arrays.copyOf(this.minZ, newCapacity);
+      this.maxX = Arrays.copyOf(this.maxX, newCapacity);
+      this.maxY = Arrays.copyOf(this.maxY, newCapacity);
+      this.maxZ = Arrays.copyOf(this.maxZ, newCapacity);
+    }
+
+  }
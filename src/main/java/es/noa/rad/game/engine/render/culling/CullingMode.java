@@ -0,0 +1,44 @@
+package es.noa.rad.game.engine.render.culling;
+
+  /**
+   * Execution strategies of the {@link FrustumCuller}.
+   *
+   * <p>All strategies produce the same visible indices in ascending order;
+   * they only differ in how the work is spread over cores and lanes, which
+   * makes them directly comparable when profiling.
+   *
+   * @see FrustumCuller#cull(BoundingBoxes, es.noa.rad.game.engine.util.IntList,
+   *     CullingMode)
+   */
+  public enum CullingMode {
+
+    /**
+     * One thread, one box at a time through JOML's
+     * {@code FrustumIntersection}.
+     */
+    SCALAR,
+
+    /**
+     * One thread, several boxes at a time with the Vector API. Falls back
+     * to {@link #SCALAR} when the Vector API is not available.
+     */
+    VECTOR,
+
+    /**
+     * Fork-join over chunks of boxes, scalar test inside each chunk.
+     */
+    PARALLEL,
+
+    /**
+     * Fork-join over chunks of boxes, Vector API test inside each chunk.
+     * Falls back to {@link #PARALLEL} when the Vector API is not available.
+     */
+    PARALLEL_VECTOR,
+
+    /**
+     * Picks the fastest strategy for the number of boxes: parallel above
+     * the culler threshold, with the Vector API when available.
+     */
+    AUTO
+
+  }
@@ -0,0 +1,473 @@
+package es.noa.rad.game.engine.render.culling;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4fc;
+import org.joml.Vector4f;
+
+import es.noa.rad.game.engine.util.IntList;
+import es.noa.rad.game.engine.util.VectorSupport;
+
+  /**
+   * View frustum culling of {@link BoundingBoxes}.
+   *
+   * <p>The frustum is rebuilt from the camera view-projection matrix with
+   * {@link #update(Matrix4fc)}; {@link #cull(BoundingBoxes, IntList)} then
+   * writes the index of every box that intersects it into an
+   * {@link IntList}, in ascending order.
+   *
+   * <p>Large sets are split into fixed chunks processed by a
+   * {@link ForkJoinPool}. Each chunk writes its visible indices into its own
+   * region of a shared scratch array, so workers never contend, and the
+   * regions are packed into the output list afterwards. The chunk tasks
+   * and scratch array are reused between frames, so steady-state culling
+   * does not allocate, apart from the node a caller outside the pool
+   * waits on inside {@link ForkJoinPool#invoke}.
+   *
+   * <p>Per-frame statistics (boxes tested, boxes visible, elapsed time) are
+   * kept for the last call.
+   *
+   * <p>Not thread-safe: a culler must be driven by a single thread, which
+   * may be any thread, including one outside the pool.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * culler.update(camera.viewProjection());
+   * culler.cull(boxes, visible);
+   * for (int i = 0; i < visible.size(); i++) {
+   *   draw(visible.get(i));
+   * }
+   * }</pre>
+   *
+   * @see CullingMode
+   */
+  public final class FrustumCuller {
+
+    /**
+     * Default number of boxes from which {@link CullingMode#AUTO} switches
+     * to a parallel strategy.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 32768;
+
+    /**
+     * Number of coefficients of a plane (a, b, c, d).
+     */
+    static final int PLANE_SIZE = 4;
+
+    /**
+     * Number of frustum planes.
+     */
+    private static final int PLANE_COUNT = 6;
+
+    /**
+     * Number of boxes tested by a single fork-join task.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Pool running the parallel strategies.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Number of boxes from which {@link CullingMode#AUTO} goes parallel.
+     */
+    private final int parallelThreshold;
+
+    /**
+     * JOML frustum used by the scalar strategies.
+     */
+    private final FrustumIntersection frustum;
+
+    /**
+     * Normalized frustum planes used by the vector strategies.
+     */
+    private final float[] planes;
+
+    /**
+     * Scratch plane used while extracting {@link #planes}.
+     */
+    private final Vector4f plane;
+
+    /**
+     * Chunk tasks reused between frames.
+     */
+    private ChunkTask[] tasks;
+
+    /**
+     * Visible box count of every chunk.
+     */
+    private int[] chunkCounts;
+
+    /**
+     * Scratch array receiving the visible indices of every chunk.
+     */
+    private int[] scratch;
+
+    /**
+     * Root task forking the chunk tasks.
+     */
+    private final RootTask root;
+
+    /**
+     * Boxes being culled by the current parallel call.
+     */
+    private BoundingBoxes current;
+
+    /**
+     * Whether the current parallel call uses the Vector API.
+     */
+    private boolean currentVector;
+
+    /**
+     * Number of chunks of the current parallel call.
+     */
+    private int chunkCount;
+
+    /**
+     * Number of boxes tested by the last call.
+     */
+    private int tested;
+
+    /**
+     * Number of visible boxes found by the last call.
+     */
+    private int visible;
+
+    /**
+     * Duration in nanoseconds of the last call.
+     */
+    private long elapsedNanos;
+
+    /**
+     * Creates a culler running parallel strategies on the common pool.
+     */
+    public FrustumCuller() {
+      this(ForkJoinPool.commonPool(), FrustumCuller.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a culler.
+     *
+     * @param _pool the pool running the parallel strategies
+     * @param _parallelThreshold the number of boxes from which
+     *     {@link CullingMode#AUTO} goes parallel
+     */
+    public FrustumCuller(
+        final ForkJoinPool _pool,
+        final int _parallelThreshold) {
+      this.pool = _pool;
+      this.parallelThreshold = _parallelThreshold;
+      this.frustum = new FrustumIntersection();
+      this.planes
+        = new float[FrustumCuller.PLANE_COUNT * FrustumCuller.PLANE_SIZE];
+      this.plane = new Vector4f();
+      this.tasks = new ChunkTask[0];
+      this.chunkCounts = new int[0];
+      this.scratch = new int[0];
+      this.root = new RootTask();
+    }
+
+    /**
+     * Rebuilds the frustum from a view-projection matrix.
+     *
+     * @param _viewProjection the combined projection and view matrix
+     */
+    public void update(
+        final Matrix4fc _viewProjection) {
+      this.frustum.set(_viewProjection, false);
+      for (int index = 0; index < FrustumCuller.PLANE_COUNT; index++) {
+        _viewProjection.frustumPlane(index, this.plane);
+        final int offset = index * FrustumCuller.PLANE_SIZE;
+        this.planes[offset] = this.plane.x;
+        this.planes[offset + 1] = this.plane.y;
+        this.planes[offset + 2] = this.plane.z;
+        this.planes[offset + FrustumCuller.PLANE_SIZE - 1] = this.plane.w;
+      }
+    }
+
+    /**
+     * Culls the boxes with {@link CullingMode#AUTO}.
+     *
+     * @param _boxes the boxes to test
+     * @param _visible the list receiving the visible indices; cleared first
+     */
+    public void cull(
+        final BoundingBoxes _boxes,
+        final IntList _visible) {
+      this.cull(_boxes, _visible, CullingMode.AUTO);
+    }
+
+    /**
+     * Culls the boxes with the given strategy.
+     *
+     * @param _boxes the boxes to test
+     * @param _visible the list receiving the visible indices; cleared first
+     * @param _mode the strategy
+     */
+    public void cull(
+        final BoundingBoxes _boxes,
+        final IntList _visible,
+        final CullingMode _mode) {
+      final long start = System.nanoTime();
+      final int count = _boxes.size();
+      final boolean vector = VectorSupport.available()
+        && ((_mode == CullingMode.VECTOR)
+         || (_mode == CullingMode.PARALLEL_VECTOR)
+         || (_mode == CullingMode.AUTO));
+      final boolean parallel = (_mode == CullingMode.PARALLEL)
+        || (_mode == CullingMode.PARALLEL_VECTOR)
+        || ((_mode == CullingMode.AUTO) && (count >= this.parallelThreshold));
+
+      _visible.clear();
+      _visible.ensureCapacity(count);
+      if (parallel && (count > FrustumCuller.CHUNK_SIZE)) {
+        this.cullParallel(_boxes, _visible, vector);
+      } else {
+        _visible.size(
+          this.cullRange(_boxes, 0, count, _visible.array(), 0, vector));
+      }
+
+      this.tested = count;
+      this.visible = _visible.size();
+      this.elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the number of boxes tested by the last call.
+     *
+     * @return the tested box count
+     */
+    public int tested() {
+      return this.tested;
+    }
+
+    /**
+     * Gets the number of visible boxes found by the last call.
+     *
+     * @return the visible box count
+     */
+    public int visible() {
+      return this.visible;
+    }
+
+    /**
+     * Gets the duration of the last call.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long elapsedNanos() {
+      return this.elapsedNanos;
+    }
+
+    /**
+     * Gets the JOML frustum built by the last {@link #update(Matrix4fc)}.
+     *
+     * @return the frustum, which must not be modified
+     */
+    public FrustumIntersection frustum() {
+      return this.frustum;
+    }
+
+    /**
+     * Tests a box against planes stored as in {@link #planes}.
+     *
+     * @param _planes the planes, four coefficients each
+     * @param _minX the minimum x
+     * @param _minY the minimum y
+     * @param _minZ the minimum z
+     * @param _maxX the maximum x
+     * @param _maxY the maximum y
+     * @param _maxZ the maximum z
+     * @return {@code true} if the box intersects every half space
+     */
+    static boolean testAab(
+        final float[] _planes,
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ) {
+      for (int plane = 0; plane < _planes.length;
+          plane += FrustumCuller.PLANE_SIZE) {
+        final float a = _planes[plane];
+        final float b = _planes[plane + 1];
+        final float c = _planes[plane + 2];
+        final float d = _planes[plane + FrustumCuller.PLANE_SIZE - 1];
+        final float distance = (a * (a < 0.0F ? _minX : _maxX))
+          + (b * (b < 0.0F ? _minY : _maxY))
+          + (c * (c < 0.0F ? _minZ : _maxZ));
+        if (distance < -d) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Culls a range of boxes on the calling thread.
+     *
+     * @param _boxes the boxes
+     * @param _from the first box to test
+     * @param _to one past the last box to test
+     * @param _out the array receiving the visible indices
+     * @param _offset the position of the first visible index in the array
+     * @param _vector whether to use the Vector API kernel
+     * @return the number of visible boxes written
+     */
+    private int cullRange(
+        final BoundingBoxes _boxes,
+        final int _from,
+        final int _to,
+        final int[] _out,
+        final int _offset,
+        final boolean _vector) {
+      if (_vector) {
+        return FrustumCullerVector.cull(
+          this.planes, _boxes, _from, _to, _out, _offset);
+      }
+      final float[] minX = _boxes.minX();
+      final float[] minY = _boxes.minY();
+      final float[] minZ = _boxes.minZ();
+      final float[] maxX = _boxes.maxX();
+      final float[] maxY = _boxes.maxY();
+      final float[] maxZ = _boxes.maxZ();
+      int written = 0;
+      for (int index = _from; index < _to; index++) {
+        if (this.frustum.testAab(minX[index], minY[index], minZ[index],
+            maxX[index], maxY[index], maxZ[index])) {
+          _out[_offset + written++] = index;
+        }
+      }
+      return written;
+    }
+
+    /**
+     * Culls the boxes with one fork-join task per chunk and packs the
+     * visible indices of every chunk into the output list.
+     *
+     * @param _boxes the boxes
+     * @param _visible the list receiving the visible indices
+     * @param _vector whether to use the Vector API kernel
+     */
+    private void cullParallel(
+        final BoundingBoxes _boxes,
+        final IntList _visible,
+        final boolean _vector) {
+      final int count = _boxes.size();
+      this.prepareChunks(count);
+      this.current = _boxes;
+      this.currentVector = _vector;
+      this.root.reinitialize();
+      this.pool.invoke(this.root);
+      this.current = null;
+
+      final int[] out = _visible.array();
+      int written = 0;
+      for (int chunk = 0; chunk < this.chunkCount; chunk++) {
+        final int chunkVisible = this.chunkCounts[chunk];
+        System.arraycopy(this.scratch, chunk * FrustumCuller.CHUNK_SIZE,
+          out, written, chunkVisible);
+        written += chunkVisible;
+      }
+      _visible.size(written);
+    }
+
+    /**
+     * Sizes the chunk tasks and scratch memory for the given box count.
+     *
+     * @param _count the number of boxes
+     */
+    private void prepareChunks(
+        final int _count) {
+      this.chunkCount = ((_count - 1) / FrustumCuller.CHUNK_SIZE) + 1;
+      if (this.tasks.length < this.chunkCount) {
+        final int previous = this.tasks.length;
+        this.tasks = Arrays.copyOf(this.tasks, this.chunkCount);
+        for (int chunk = previous; chunk < this.chunkCount; chunk++) {
+          this.tasks[chunk] = new ChunkTask(chunk);
+        }
+        this.chunkCounts = new int[this.chunkCount];
+      }
+      if (this.scratch.length < _count) {
+        this.scratch = new int[_count];
+      }
+    }
+
+    /**
+     * Task forking every chunk task of the current call.
+     */
+    private final class RootTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        final FrustumCuller culler = FrustumCuller.this;
+        for (int chunk = 1; chunk < culler.chunkCount; chunk++) {
+          culler.tasks[chunk].reinitialize();
+          culler.tasks[chunk].fork();
+        }
+        culler.tasks[0].reinitialize();
+        culler.tasks[0].compute();
+        for (int chunk = 1; chunk < culler.chunkCount; chunk++) {
+          culler.tasks[chunk].join();
+        }
+      }
+
+    }
+
+    /**
+     * Task culling one chunk of boxes into its region of the scratch array.
+     */
+    private final class ChunkTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Index of the chunk.
+       */
+      private final int chunk;
+
+      /**
+       * Creates the task of a chunk.
+       *
+       * @param _chunk the index of the chunk
+       */
+      ChunkTask(
+          final int _chunk) {
+        this.chunk = _chunk;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        final FrustumCuller culler = FrustumCuller.this;
+        final int from = this.chunk * FrustumCuller.CHUNK_SIZE;
+        final int to
+          = Math.min(from + FrustumCuller.CHUNK_SIZE, culler.current.size());
+        culler.chunkCounts[this.chunk] = culler.cullRange(
+          culler.current, from, to, culler.scratch, from,
+          culler.currentVector);
+      }
+
+    }
+
+  }
@@ -0,0 +1,123 @@
+package es.noa.rad.game.engine.render.culling;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+  /**
+   * Vector API kernel of the {@link FrustumCuller}.
+   *
+   * <p>Tests as many boxes per iteration as the preferred float species has
+   * lanes. For every plane, the corner of each box furthest along the
+   * plane normal is selected per axis from the sign of the normal (a scalar
+   * decision, so no blending is needed) and the box is rejected when that
+   * corner lies behind the plane.
+   *
+   * <p>Only reached when {@code VectorSupport.available()} is true.
+   */
+  final class FrustumCullerVector {
+
+    /**
+     * Species used by the kernel.
+     */
+    private static final VectorSpecies<Float> SPECIES
+      = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private FrustumCullerVector() {
+      super();
+    }
+
+    /**
+     * Writes the index of every box in range that intersects the frustum.
+     *
+     * @param _planes the frustum planes, four coefficients each
+     * @param _boxes the boxes
+     * @param _from the first box to test
+     * @param _to one past the last box to test
+     * @param _out the array receiving the visible indices
+     * @param _offset the position of the first visible index in the array
+     * @return the number of visible boxes written
+     */
+    static int cull(
+        final float[] _planes,
+        final BoundingBoxes _boxes,
+        final int _from,
+        final int _to,
+        final int[] _out,
+        final int _offset) {
+      final float[] minX = _boxes.minX();
+      final float[] minY = _boxes.minY();
+      final float[] minZ = _boxes.minZ();
+      final float[] maxX = _boxes.maxX();
+      final float[] maxY = _boxes.maxY();
+      final float[] maxZ = _boxes.maxZ();
+      final int lanes = FrustumCullerVector.SPECIES.length();
+      final int upper
+        = _from + FrustumCullerVector.SPECIES.loopBound(_to - _from);
+
+      int written = 0;
+      int index = _from;
+      for (; index < upper; index += lanes) {
+        final FloatVector loX = FloatVector.fromArray(
+          FrustumCullerVector.SPECIES, minX, index);
+        final FloatVector loY = FloatVector.fromArray(
+          FrustumCullerVector.SPECIES, minY, index);
+        final FloatVector loZ = FloatVector.fromArray(
+          FrustumCullerVector.SPECIES, minZ, index);
+        final FloatVector hiX = FloatVector.fromArray(
+          FrustumCullerVector.SPECIES, maxX, index);
+        final FloatVector hiY = FloatVector.fromArray(
+          FrustumCullerVector.SPECIES, maxY, index);
+        final FloatVector hiZ = FloatVector.fromArray(
+          FrustumCullerVector.SPECIES, maxZ, index);
+
+        VectorMask<Float> outside
+          = FrustumCullerVector.SPECIES.maskAll(false);
+        for (int plane = 0; plane < _planes.length;
+            plane += FrustumCuller.PLANE_SIZE) {
+          final float a = _planes[plane];
+          final float b = _planes[plane + 1];
+          final float c = _planes[plane + 2];
+          final float d = _planes[plane + FrustumCuller.PLANE_SIZE - 1];
+          FloatVector distance;
+          if (a < 0.0F) {
+            distance = loX.mul(a);
+          } else {
+            distance = hiX.mul(a);
+          }
+          if (b < 0.0F) {
+            distance = distance.add(loY.mul(b));
+          } else {
+            distance = distance.add(hiY.mul(b));
+          }
+          if (c < 0.0F) {
+            distance = distance.add(loZ.mul(c));
+          } else {
+            distance = distance.add(hiZ.mul(c));
+          }
+          outside = outside.or(distance.compare(VectorOperators.LT, -d));
+        }
+
+        long visible = outside.not().toLong();
+        while (visible != 0L) {
+          _out[_offset + written++]
+            = index + Long.numberOfTrailingZeros(visible);
+          visible &= visible - 1L;
+        }
+      }
+
+      /* Scalar tail with the same plane test. */
+      for (; index < _to; index++) {
+        if (FrustumCuller.testAab(_planes, minX[index], minY[index],
+            minZ[index], maxX[index], maxY[index], maxZ[index])) {
+          _out[_offset + written++] = index;
+        }
+      }
+      return written;
+    }
+
+  }
@@ -0,0 +1,985 @@
+package es.noa.rad.game.engine.render.culling;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+
+import es.noa.rad.game.engine.util.IntList;
+import es.noa.rad.game.engine.util.VectorSupport;
+
+  /**
+   * Software occlusion culling on a small CPU depth buffer.
+   *
+   * <p>Every frame a few large occluders (walls, terrain chunks, buildings)
+   * are rasterized into a low resolution depth buffer, and the bounds of
+   * the objects that survived frustum culling are tested against it before
+   * the render queue is built. Objects completely behind occluders are
+   * dropped.
+   *
+   * <p>Frame flow:
+   * <ol>
+   *   <li>{@link #begin(Matrix4fc)} clears the buffer for a camera.</li>
+   *   <li>{@link #addOccluder(float[], int[], int)} and
+   *       {@link #addBoxOccluder(float, float, float, float, float, float)}
+   *       project and store occluder triangles.</li>
+   *   <li>{@link #rasterize()} bins the triangles by screen tile and
+   *       rasterizes every tile as a separate fork-join task, with the
+   *       Vector API when available. Each tile then records its farthest
+   *       depth, which forms a one-level depth hierarchy.</li>
+   *   <li>{@link #cull(BoundingBoxes, IntList)} removes occluded boxes
+   *       from a visible list, checking the tile depths first and only
+   *       falling back to pixels for tiles that may show the box.</li>
+   * </ol>
+   *
+   * <p>The test is conservative: occluders write the depth of their
+   * farthest vertex and boxes are compared with their nearest corner, and
+   * triangles or boxes crossing the near plane are never used to cull.
+   * Coverage is sampled at pixel centres, so accuracy is bounded by the
+   * buffer resolution.
+   *
+   * <p>All buffers are reused from frame to frame. Statistics of the last
+   * frame (occluder triangles, tested and culled boxes, rasterization and
+   * test time) are exposed for profiling.
+   *
+   * <p>Not thread-safe: a culler must be driven by a single thread.
+   *
+   * @see FrustumCuller
+   */
+  public final class OcclusionCuller {
+
+    /**
+     * Default width in pixels of the depth buffer.
+     */
+    public static final int DEFAULT_WIDTH = 256;
+
+    /**
+     * Default height in pixels of the depth buffer.
+     */
+    public static final int DEFAULT_HEIGHT = 144;
+
+    /**
+     * Size in pixels of a square tile.
+     */
+    public static final int TILE_SIZE = 16;
+
+    /**
+     * Depth of an empty pixel (far plane).
+     */
+    static final float FAR_DEPTH = 1.0F;
+
+    /**
+     * Offset from a pixel corner to its centre, where coverage is sampled.
+     */
+    static final float PIXEL_CENTER = 0.5F;
+
+    /**
+     * Scale mapping the NDC range [-1, 1] to [0, 1].
+     */
+    private static final float NDC_SCALE = 0.5F;
+
+    /**
+     * Number of floats stored per triangle: three edge equations
+     * (a, b, c) and the occluder depth.
+     */
+    static final int TRIANGLE_STRIDE = 10;
+
+    /**
+     * Number of floats of an edge equation (a, b, c).
+     */
+    static final int EDGE_STRIDE = 3;
+
+    /**
+     * Offset of the occluder depth inside a triangle.
+     */
+    static final int TRIANGLE_DEPTH = 9;
+
+    /**
+     * Number of ints stored per triangle bounding rectangle.
+     */
+    private static final int BOUNDS_STRIDE = 4;
+
+    /**
+     * Number of floats stored per projected vertex (x, y, depth).
+     */
+    private static final int VERTEX_STRIDE = 3;
+
+    /**
+     * Minimum clip w of a vertex in front of the camera.
+     */
+    private static final float NEAR_W = 1.0E-5F;
+
+    /**
+     * Number of corners of a box.
+     */
+    private static final int BOX_CORNERS = 8;
+
+    /**
+     * Bit of a corner index selecting the maximum x.
+     */
+    private static final int CORNER_X = 1;
+
+    /**
+     * Bit of a corner index selecting the maximum y.
+     */
+    private static final int CORNER_Y = 2;
+
+    /**
+     * Bit of a corner index selecting the maximum z.
+     */
+    private static final int CORNER_Z = 4;
+
+    /**
+     * Triangles of a box, as corner indices (see {@link #CORNER_X},
+     * {@link #CORNER_Y} and {@link #CORNER_Z}).
+     */
+    private static final int[] BOX_INDICES = {
+      0, 2, 3, 0, 3, 1,
+      4, 5, 7, 4, 7, 6,
+      0, 1, 5, 0, 5, 4,
+      2, 6, 7, 2, 7, 3,
+      0, 4, 6, 0, 6, 2,
+      1, 3, 7, 1, 7, 5
+    };
+
+    /**
+     * Pool running the tile tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Width in pixels of the depth buffer.
+     */
+    private final int width;
+
+    /**
+     * Height in pixels of the depth buffer.
+     */
+    private final int height;
+
+    /**
+     * Number of tile columns.
+     */
+    private final int tilesX;
+
+    /**
+     * Number of tile rows.
+     */
+    private final int tilesY;
+
+    /**
+     * Depth of every pixel, row major.
+     */
+    private final float[] depth;
+
+    /**
+     * Farthest depth of every tile.
+     */
+    private final float[] tileDepth;
+
+    /**
+     * View-projection matrix of the current frame.
+     */
+    private final Matrix4f viewProjection;
+
+    /**
+     * Edge equations and depth of every occluder triangle.
+     */
+    private float[] triangles;
+
+    /**
+     * Pixel bounding rectangle of every triangle (x0, y0, x1, y1).
+     */
+    private int[] triangleBounds;
+
+    /**
+     * Number of occluder triangles of the current frame.
+     */
+    private int triangleCount;
+
+    /**
+     * Projected vertices of the occluder being added.
+     */
+    private float[] projected;
+
+    /**
+     * Whether every projected vertex is in front of the camera.
+     */
+    private boolean[] projectedValid;
+
+    /**
+     * Corners of a box occluder.
+     */
+    private final float[] boxCorners;
+
+    /**
+     * First binned triangle of every tile, plus the total at the end.
+     */
+    private final int[] binStarts;
+
+    /**
+     * Triangles binned to each tile, grouped by tile.
+     */
+    private int[] bins;
+
+    /**
+     * Tile tasks reused between frames.
+     */
+    private final TileTask[] tasks;
+
+    /**
+     * Root task forking the tile tasks.
+     */
+    private final RootTask root;
+
+    /**
+     * Whether the Vector API rasterizer is used.
+     */
+    private boolean vector;
+
+    /**
+     * Number of boxes tested in the current frame.
+     */
+    private int tested;
+
+    /**
+     * Number of boxes culled in the current frame.
+     */
+    private int culled;
+
+    /**
+     * Rasterization time of the current frame in nanoseconds.
+     */
+    private long rasterNanos;
+
+    /**
+     * Test time of the current frame in nanoseconds.
+     */
+    private long testNanos;
+
+    /**
+     * Creates an occlusion culler with the default resolution running on
+     * the common pool.
+     */
+    public OcclusionCuller() {
+      this(
+        ForkJoinPool.commonPool(),
+        OcclusionCuller.DEFAULT_WIDTH,
+        OcclusionCuller.DEFAULT_HEIGHT
+      );
+    }
+
+    /**
+     * Creates an occlusion culler.
+     *
+     * @param _pool the pool rasterizing the tiles
+     * @param _width the buffer width in pixels, rounded up to whole tiles
+     * @param _height the buffer height in pixels, rounded up to whole tiles
+     * @throws IllegalArgumentException if a dimension is not positive
+     */
+    public OcclusionCuller(
+        final ForkJoinPool _pool,
+        final int _width,
+        final int _height) {
+      if ((_width <= 0) || (_height <= 0)) {
+        throw new IllegalArgumentException(
+          "Invalid depth buffer size: " + _width + "x" + _height);
+      }
+      this.pool = _pool;
+      this.tilesX = ((_width - 1) / OcclusionCuller.TILE_SIZE) + 1;
+      this.tilesY = ((_height - 1) / OcclusionCuller.TILE_SIZE) + 1;
+      this.width = this.tilesX * OcclusionCuller.TILE_SIZE;
+      this.height = this.tilesY * OcclusionCuller.TILE_SIZE;
+      this.depth = new float[this.width * this.height];
+      this.tileDepth = new float[this.tilesX * this.tilesY];
+      this.viewProjection = new Matrix4f();
+      this.triangles = new float[
+        OcclusionCuller.BOX_INDICES.length * OcclusionCuller.TRIANGLE_STRIDE];
+      this.triangleBounds = new int[
+        OcclusionCuller.BOX_INDICES.length * OcclusionCuller.BOUNDS_STRIDE];
+      this.projected = new float[
+        OcclusionCuller.BOX_CORNERS * OcclusionCuller.VERTEX_STRIDE];
+      this.projectedValid = new boolean[OcclusionCuller.BOX_CORNERS];
+      this.boxCorners = new float[
+        OcclusionCuller.BOX_CORNERS * OcclusionCuller.VERTEX_STRIDE];
+      this.binStarts = new int[this.tileDepth.length + 1];
+      this.bins = new int[this.tileDepth.length];
+      this.tasks = new TileTask[this.tileDepth.length];
+      for (int tile = 0; tile < this.tasks.length; tile++) {
+        this.tasks[tile] = new TileTask(tile);
+      }
+      this.root = new RootTask();
+      this.vector = VectorSupport.available();
+    }
+
+    /**
+     * Starts a frame: clears the depth buffer and the occluders.
+     *
+     * @param _viewProjection the combined projection and view matrix
+     */
+    public void begin(
+        final Matrix4fc _viewProjection) {
+      this.viewProjection.set(_viewProjection);
+      this.triangleCount = 0;
+      this.tested = 0;
+      this.culled = 0;
+      this.rasterNanos = 0L;
+      this.testNanos = 0L;
+      Arrays.fill(this.depth, OcclusionCuller.FAR_DEPTH);
+      Arrays.fill(this.tileDepth, OcclusionCuller.FAR_DEPTH);
+    }
+
+    /**
+     * Adds an indexed triangle mesh as occluder.
+     *
+     * <p>Triangles with a vertex behind the camera are ignored. Both faces
+     * occlude.
+     *
+     * @param _positions world space positions, three floats per vertex
+     * @param _indices the triangle indices
+     * @param _indexCount the number of indices to read
+     */
+    public void addOccluder(
+        final float[] _positions,
+        final int[] _indices,
+        final int _indexCount) {
+      final int vertexCount
+        = _positions.length / OcclusionCuller.VERTEX_STRIDE;
+      if (this.projectedValid.length < vertexCount) {
+        this.projected
+          = new float[vertexCount * OcclusionCuller.VERTEX_STRIDE];
+        this.projectedValid = new boolean[vertexCount];
+      }
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        final int offset = vertex * OcclusionCuller.VERTEX_STRIDE;
+        this.projectedValid[vertex] = this.project(
+          _positions[offset],
+          _positions[offset + 1],
+          _positions[offset + 2],
+          this.projected,
+          offset
+        );
+      }
+      for (int index = 0; (index + 2) < _indexCount; index += 3) {
+        this.addTriangle(
+          _indices[index], _indices[index + 1], _indices[index + 2]);
+      }
+    }
+
+    /**
+     * Adds a solid box as occluder.
+     *
+     * @param _minX the minimum x
+     * @param _minY the minimum y
+     * @param _minZ the minimum z
+     * @param _maxX the maximum x
+     * @param _maxY the maximum y
+     * @param _maxZ the maximum z
+     */
+    public void addBoxOccluder(
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ) {
+      for (int corner = 0; corner < OcclusionCuller.BOX_CORNERS; corner++) {
+        final int offset = corner * OcclusionCuller.VERTEX_STRIDE;
+        this.boxCorners[offset]
+          = ((corner & OcclusionCuller.CORNER_X) == 0) ? _minX : _maxX;
+        this.boxCorners[offset + 1]
+          = ((corner & OcclusionCuller.CORNER_Y) == 0) ? _minY : _maxY;
+        this.boxCorners[offset + 2]
+          = ((corner & OcclusionCuller.CORNER_Z) == 0) ? _minZ : _maxZ;
+      }
+      this.addOccluder(
+        this.boxCorners,
+        OcclusionCuller.BOX_INDICES,
+        OcclusionCuller.BOX_INDICES.length
+      );
+    }
+
+    /**
+     * Rasterizes the occluders added since {@link #begin(Matrix4fc)}.
+     */
+    public void rasterize() {
+      final long start = System.nanoTime();
+      this.binTriangles();
+      this.root.reinitialize();
+      this.pool.invoke(this.root);
+      this.rasterNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Removes occluded boxes from a list of visible box indices.
+     *
+     * <p>The relative order of the remaining indices is preserved.
+     *
+     * @param _boxes the boxes
+     * @param _visible the indices to test, compacted in place
+     */
+    public void cull(
+        final BoundingBoxes _boxes,
+        final IntList _visible) {
+      final long start = System.nanoTime();
+      final int[] indices = _visible.array();
+      final int count = _visible.size();
+      final float[] minX = _boxes.minX();
+      final float[] minY = _boxes.minY();
+      final float[] minZ = _boxes.minZ();
+      final float[] maxX = _boxes.maxX();
+      final float[] maxY = _boxes.maxY();
+      final float[] maxZ = _boxes.maxZ();
+      int kept = 0;
+      for (int index = 0; index < count; index++) {
+        final int box = indices[index];
+        if (this.isVisible(minX[box], minY[box], minZ[box],
+            maxX[box], maxY[box], maxZ[box])) {
+          indices[kept++] = box;
+        }
+      }
+      _visible.size(kept);
+      this.tested += count;
+      this.culled += count - kept;
+      this.testNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Tests a box against the depth buffer.
+     *
+     * @param _minX the minimum x
+     * @param _minY the minimum y
+     * @param _minZ the minimum z
+     * @param _maxX the maximum x
+     * @param _maxY the maximum y
+     * @param _maxZ the maximum z
+     * @return {@code false} if the box is completely hidden by occluders
+     */
+    public boolean isVisible(
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ) {
+      /* Screen rectangle and nearest depth of the eight corners. */
+      float left = Float.POSITIVE_INFINITY;
+      float bottom = Float.POSITIVE_INFINITY;
+      float right = Float.NEGATIVE_INFINITY;
+      float top = Float.NEGATIVE_INFINITY;
+      float nearest = Float.POSITIVE_INFINITY;
+      for (int corner = 0; corner < OcclusionCuller.BOX_CORNERS; corner++) {
+        final boolean inFront = this.project(
+          ((corner & OcclusionCuller.CORNER_X) == 0) ? _minX : _maxX,
+          ((corner & OcclusionCuller.CORNER_Y) == 0) ? _minY : _maxY,
+          ((corner & OcclusionCuller.CORNER_Z) == 0) ? _minZ : _maxZ,
+          this.boxCorners,
+          0
+        );
+        if (!inFront) {
+          return true;
+        }
+        left = Math.min(left, this.boxCorners[0]);
+        right = Math.max(right, this.boxCorners[0]);
+        bottom = Math.min(bottom, this.boxCorners[1]);
+        top = Math.max(top, this.boxCorners[1]);
+        nearest = Math.min(nearest, this.boxCorners[2]);
+      }
+
+      final int x0 = Math.max(0, (int) Math.floor(left));
+      final int y0 = Math.max(0, (int) Math.floor(bottom));
+      final int x1 = Math.min(this.width - 1, (int) Math.ceil(right) - 1);
+      final int y1 = Math.min(this.height - 1, (int) Math.ceil(top) - 1);
+      if ((x0 > x1) || (y0 > y1)) {
+        return true;
+      }
+
+      final int tileX0 = x0 / OcclusionCuller.TILE_SIZE;
+      final int tileX1 = x1 / OcclusionCuller.TILE_SIZE;
+      final int tileY0 = y0 / OcclusionCuller.TILE_SIZE;
+      final int tileY1 = y1 / OcclusionCuller.TILE_SIZE;
+      for (int tileY = tileY0; tileY <= tileY1; tileY++) {
+        for (int tileX = tileX0; tileX <= tileX1; tileX++) {
+          /* Hierarchical early out: the whole tile is nearer than the box. */
+          if (this.tileDepth[(tileY * this.tilesX) + tileX] < nearest) {
+            continue;
+          }
+          if (this.isTileVisible(tileX, tileY, x0, y0, x1, y1, nearest)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Enables or disables the Vector API rasterizer. Ignored when the
+     * Vector API is not available.
+     *
+     * @param _vector whether to use the Vector API
+     */
+    public void vector(
+        final boolean _vector) {
+      this.vector = _vector && VectorSupport.available();
+    }
+
+    /**
+     * Checks whether the Vector API rasterizer is used.
+     *
+     * @return {@code true} if the Vector API is used
+     */
+    public boolean vector() {
+      return this.vector;
+    }
+
+    /**
+     * Gets the width of the depth buffer.
+     *
+     * @return the width in pixels
+     */
+    public int width() {
+      return this.width;
+    }
+
+    /**
+     * Gets the height of the depth buffer.
+     *
+     * @return the height in pixels
+     */
+    public int height() {
+      return this.height;
+    }
+
+    /**
+     * Gets the depth buffer, row major, bottom row first.
+     *
+     * @return the depth buffer, which must not be modified
+     */
+    public float[] depthBuffer() {
+      return this.depth;
+    }
+
+    /**
+     * Gets the number of occluder triangles of the current frame.
+     *
+     * @return the triangle count
+     */
+    public int triangleCount() {
+      return this.triangleCount;
+    }
+
+    /**
+     * Gets the number of boxes tested in the current frame.
+     *
+     * @return the tested box count
+     */
+    public int tested() {
+      return this.tested;
+    }
+
+    /**
+     * Gets the number of boxes culled in the current frame.
+     *
+     * @return the culled box count
+     */
+    public int culled() {
+      return this.culled;
+    }
+
+    /**
+     * Gets the fraction of tested boxes culled in the current frame.
+     *
+     * @return the culled ratio, between 0 and 1
+     */
+    public float culledRatio() {
+      if (this.tested == 0) {
+        return 0.0F;
+      }
+      return ((float) this.culled) / this.tested;
+    }
+
+    /**
+     * Gets the rasterization time of the current frame.
+     *
+     * @return the time in nanoseconds
+     */
+    public long rasterNanos() {
+      return this.rasterNanos;
+    }
+
+    /**
+     * Gets the box test time of the current frame.
+     *
+     * @return the time in nanoseconds
+     */
+    public long testNanos() {
+      return this.testNanos;
+    }
+
+    /**
+     * Projects a world space point to the depth buffer.
+     *
+     * @param _x the world x
+     * @param _y the world y
+     * @param _z the world z
+     * @param _out the array receiving the pixel x, pixel y and depth
+     * @param _offset the position of the pixel x in the array
+     * @return {@code false} if the point is behind the camera
+     */
+    private boolean project(
+        final float _x,
+        final float _y,
+        final float _z,
+        final float[] _out,
+        final int _offset) {
+      final Matrix4f m = this.viewProjection;
+      final float w = (m.m03() * _x) + (m.m13() * _y)
+        + (m.m23() * _z) + m.m33();
+      if (w < OcclusionCuller.NEAR_W) {
+        return false;
+      }
+      final float inverseW = 1.0F / w;
+      final float clipX = (m.m00() * _x) + (m.m10() * _y)
+        + (m.m20() * _z) + m.m30();
+      final float clipY = (m.m01() * _x) + (m.m11() * _y)
+        + (m.m21() * _z) + m.m31();
+      final float clipZ = (m.m02() * _x) + (m.m12() * _y)
+        + (m.m22() * _z) + m.m32();
+      /* NDC [-1, 1] to pixels and to depth [0, 1]. */
+      _out[_offset] = ((clipX * inverseW) + 1.0F)
+        * OcclusionCuller.NDC_SCALE * this.width;
+      _out[_offset + 1] = ((clipY * inverseW) + 1.0F)
+        * OcclusionCuller.NDC_SCALE * this.height;
+      _out[_offset + 2]
+        = ((clipZ * inverseW) + 1.0F) * OcclusionCuller.NDC_SCALE;
+      return true;
+    }
+
+    /**
+     * Sets up the edge equations of a projected triangle.
+     *
+     * @param _i0 the first vertex
+     * @param _i1 the second vertex
+     * @param _i2 the third vertex
+     */
+    private void addTriangle(
+        final int _i0,
+        final int _i1,
+        final int _i2) {
+      if (!this.projectedValid[_i0] || !this.projectedValid[_i1]
+          || !this.projectedValid[_i2]) {
+        return;
+      }
+      final int o0 = _i0 * OcclusionCuller.VERTEX_STRIDE;
+      int o1 = _i1 * OcclusionCuller.VERTEX_STRIDE;
+      int o2 = _i2 * OcclusionCuller.VERTEX_STRIDE;
+      final float[] p = this.projected;
+      final float area = ((p[o1] - p[o0]) * (p[o2 + 1] - p[o0 + 1]))
+        - ((p[o1 + 1] - p[o0 + 1]) * (p[o2] - p[o0]));
+      if (area == 0.0F) {
+        return;
+      }
+      if (area < 0.0F) {
+        /* Make every triangle counter-clockwise so both faces occlude. */
+        final int swap = o1;
+        o1 = o2;
+        o2 = swap;
+      }
+
+      final float minX = Math.min(p[o0], Math.min(p[o1], p[o2]));
+      final float maxX = Math.max(p[o0], Math.max(p[o1], p[o2]));
+      final float minY = Math.min(p[o0 + 1], Math.min(p[o1 + 1], p[o2 + 1]));
+      final float maxY = Math.max(p[o0 + 1], Math.max(p[o1 + 1], p[o2 + 1]));
+      final int x0 = Math.max(0, (int) Math.floor(minX));
+      final int y0 = Math.max(0, (int) Math.floor(minY));
+      final int x1 = Math.min(this.width - 1, (int) Math.ceil(maxX));
+      final int y1 = Math.min(this.height - 1, (int) Math.ceil(maxY));
+      if ((x0 > x1) || (y0 > y1)) {
+        return;
+      }
+
+      if (((this.triangleCount + 1) * OcclusionCuller.TRIANGLE_STRIDE)
+          > this.triangles.length) {
+        this.triangles = Arrays.copyOf(
+          this.triangles, this.triangles.length * 2);
+        this.triangleBounds = Arrays.copyOf(
+          this.triangleBounds, this.triangleBounds.length * 2);
+      }
+      final int triangle = this.triangleCount++;
+      final int base = triangle * OcclusionCuller.TRIANGLE_STRIDE;
+      this.edge(base, o0, o1);
+      this.edge(base + OcclusionCuller.EDGE_STRIDE, o1, o2);
+      this.edge(base + (2 * OcclusionCuller.EDGE_STRIDE), o2, o0);
+      this.triangles[base + OcclusionCuller.TRIANGLE_DEPTH]
+        = Math.max(p[o0 + 2], Math.max(p[o1 + 2], p[o2 + 2]));
+
+      final int bounds = triangle * OcclusionCuller.BOUNDS_STRIDE;
+      this.triangleBounds[bounds] = x0;
+      this.triangleBounds[bounds + 1] = y0;
+      this.triangleBounds[bounds + 2] = x1;
+      this.triangleBounds[bounds + OcclusionCuller.BOUNDS_STRIDE - 1] = y1;
+    }
+
+    /**
+     * Writes the equation {@code a * x + b * y + c} of an edge, positive on
+     * the inner side of a counter-clockwise triangle.
+     *
+     * @param _offset the position of the equation in {@link #triangles}
+     * @param _from the offset of the first projected vertex
+     * @param _to the offset of the second projected vertex
+     */
+    private void edge(
+        final int _offset,
+        final int _from,
+        final int _to) {
+      final float[] p = this.projected;
+      final float a = p[_from + 1] - p[_to + 1];
+      final float b = p[_to] - p[_from];
+      this.triangles[_offset] = a;
+      this.triangles[_offset + 1] = b;
+      this.triangles[_offset + 2] = -((a * p[_from]) + (b * p[_from + 1]));
+    }
+
+    /**
+     * Distributes the triangles into per-tile bins.
+     */
+    private void binTriangles() {
+      Arrays.fill(this.binStarts, 0);
+      for (int pass = 0; pass < 2; pass++) {
+        for (int triangle = 0; triangle < this.triangleCount; triangle++) {
+          final int bounds = triangle * OcclusionCuller.BOUNDS_STRIDE;
+          final int tileX0
+            = this.triangleBounds[bounds] / OcclusionCuller.TILE_SIZE;
+          final int tileY0
+            = this.triangleBounds[bounds + 1] / OcclusionCuller.TILE_SIZE;
+          final int tileX1
+            = this.triangleBounds[bounds + 2] / OcclusionCuller.TILE_SIZE;
+          final int tileY1 = this.triangleBounds[
+            bounds + OcclusionCuller.BOUNDS_STRIDE - 1]
+            / OcclusionCuller.TILE_SIZE;
+          for (int tileY = tileY0; tileY <= tileY1; tileY++) {
+            for (int tileX = tileX0; tileX <= tileX1; tileX++) {
+              final int tile = (tileY * this.tilesX) + tileX;
+              if (pass == 0) {
+                this.binStarts[tile + 1]++;
+              } else {
+                this.bins[this.binStarts[tile]++] = triangle;
+              }
+            }
+          }
+        }
+        if (pass == 0) {
+          /* Exclusive prefix sum: starts of every bin. */
+          for (int tile = 0; tile < this.tileDepth.length; tile++) {
+            this.binStarts[tile + 1] += this.binStarts[tile];
+          }
+          if (this.bins.length < this.binStarts[this.tileDepth.length]) {
+            this.bins = new int[this.binStarts[this.tileDepth.length]];
+          }
+        }
+      }
+      /* The fill pass advanced every start to the next bin; shift back. */
+      System.arraycopy(
+        this.binStarts, 0, this.binStarts, 1, this.tileDepth.length);
+      this.binStarts[0] = 0;
+    }
+
+    /**
+     * Rasterizes the triangles binned to a tile and updates its depth.
+     *
+     * @param _tile the tile index
+     */
+    private void rasterizeTile(
+        final int _tile) {
+      final int tileX0
+        = (_tile % this.tilesX) * OcclusionCuller.TILE_SIZE;
+      final int tileY0
+        = (_tile / this.tilesX) * OcclusionCuller.TILE_SIZE;
+      final int tileX1 = tileX0 + OcclusionCuller.TILE_SIZE - 1;
+      final int tileY1 = tileY0 + OcclusionCuller.TILE_SIZE - 1;
+      if (this.binStarts[_tile] == this.binStarts[_tile + 1]) {
+        return;
+      }
+
+      for (int bin = this.binStarts[_tile];
+          bin < this.binStarts[_tile + 1]; bin++) {
+        final int triangle = this.bins[bin];
+        final int bounds = triangle * OcclusionCuller.BOUNDS_STRIDE;
+        final int x0 = Math.max(tileX0, this.triangleBounds[bounds]);
+        final int y0 = Math.max(tileY0, this.triangleBounds[bounds + 1]);
+        final int x1 = Math.min(tileX1, this.triangleBounds[bounds + 2]);
+        final int y1 = Math.min(tileY1, this.triangleBounds[
+          bounds + OcclusionCuller.BOUNDS_STRIDE - 1]);
+        final int base = triangle * OcclusionCuller.TRIANGLE_STRIDE;
+        for (int y = y0; y <= y1; y++) {
+          if (this.vector) {
+            OcclusionRasterVector.span(this.triangles, base, this.depth,
+              (y * this.width), x0, x1, y);
+          } else {
+            OcclusionCuller.span(this.triangles, base, this.depth,
+              (y * this.width), x0, x1, y);
+          }
+        }
+      }
+
+      float farthest = 0.0F;
+      for (int y = tileY0; y <= tileY1; y++) {
+        final int row = y * this.width;
+        for (int x = tileX0; x <= tileX1; x++) {
+          farthest = Math.max(farthest, this.depth[row + x]);
+        }
+      }
+      this.tileDepth[_tile] = farthest;
+    }
+
+    /**
+     * Rasterizes one row of a triangle inside a tile (scalar kernel).
+     *
+     * @param _triangles the triangle equations
+     * @param _base the position of the triangle in the equations
+     * @param _depth the depth buffer
+     * @param _row the position of the row in the depth buffer
+     * @param _x0 the first pixel of the span
+     * @param _x1 the last pixel of the span
+     * @param _y the row
+     */
+    static void span(
+        final float[] _triangles,
+        final int _base,
+        final float[] _depth,
+        final int _row,
+        final int _x0,
+        final int _x1,
+        final int _y) {
+      final float centerY = _y + OcclusionCuller.PIXEL_CENTER;
+      final int edge1 = _base + OcclusionCuller.EDGE_STRIDE;
+      final int edge2 = edge1 + OcclusionCuller.EDGE_STRIDE;
+      final float a0 = _triangles[_base];
+      final float a1 = _triangles[edge1];
+      final float a2 = _triangles[edge2];
+      final float row0
+        = (_triangles[_base + 1] * centerY) + _triangles[_base + 2];
+      final float row1
+        = (_triangles[edge1 + 1] * centerY) + _triangles[edge1 + 2];
+      final float row2
+        = (_triangles[edge2 + 1] * centerY) + _triangles[edge2 + 2];
+      final float triangleDepth
+        = _triangles[_base + OcclusionCuller.TRIANGLE_DEPTH];
+      for (int x = _x0; x <= _x1; x++) {
+        final float centerX = x + OcclusionCuller.PIXEL_CENTER;
+        if ((((a0 * centerX) + row0) >= 0.0F)
+         && (((a1 * centerX) + row1) >= 0.0F)
+         && (((a2 * centerX) + row2) >= 0.0F)
+         && (triangleDepth < _depth[_row + x])) {
+          _depth[_row + x] = triangleDepth;
+        }
+      }
+    }
+
+    /**
+     * Checks whether any pixel of a tile inside a rectangle is farther than
+     * a depth.
+     *
+     * @param _tileX the tile column
+     * @param _tileY the tile row
+     * @param _x0 the left pixel of the rectangle
+     * @param _y0 the bottom pixel of the rectangle
+     * @param _x1 the right pixel of the rectangle
+     * @param _y1 the top pixel of the rectangle
+     * @param _nearest the nearest depth of the tested box
+     * @return {@code true} if the box may be visible in the tile
+     */
+    private boolean isTileVisible(
+        final int _tileX,
+        final int _tileY,
+        final int _x0,
+        final int _y0,
+        final int _x1,
+        final int _y1,
+        final float _nearest) {
+      final int x0 = Math.max(_x0, _tileX * OcclusionCuller.TILE_SIZE);
+      final int y0 = Math.max(_y0, _tileY * OcclusionCuller.TILE_SIZE);
+      final int x1 = Math.min(_x1,
+        ((_tileX + 1) * OcclusionCuller.TILE_SIZE) - 1);
+      final int y1 = Math.min(_y1,
+        ((_tileY + 1) * OcclusionCuller.TILE_SIZE) - 1);
+      for (int y = y0; y <= y1; y++) {
+        final int row = y * this.width;
+        for (int x = x0; x <= x1; x++) {
+          if (this.depth[row + x] >= _nearest) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Task forking every tile task of the current frame.
+     */
+    private final class RootTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        final TileTask[] tileTasks = OcclusionCuller.this.tasks;
+        for (int tile = 1; tile < tileTasks.length; tile++) {
+          tileTasks[tile].reinitialize();
+          tileTasks[tile].fork();
+        }
+        tileTasks[0].reinitialize();
+        tileTasks[0].compute();
+        for (int tile = 1; tile < tileTasks.length; tile++) {
+          tileTasks[tile].join();
+        }
+      }
+
+    }
+
+    /**
+     * Task rasterizing one tile.
+     */
+    private final class TileTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Index of the tile.
+       */
+      private final int tile;
+
+      /**
+       * Creates the task of a tile.
+       *
+       * @param _tile the index of the tile
+       */
+      TileTask(
+          final int _tile) {
+        this.tile = _tile;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        OcclusionCuller.this.rasterizeTile(this.tile);
+      }
+
+    }
+
+  }
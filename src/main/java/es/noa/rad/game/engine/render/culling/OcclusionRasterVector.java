@@ -0,0 +1,100 @@
+package es.noa.rad.game.engine.render.culling;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+  /**
+   * Vector API span kernel of the {@link OcclusionCuller} rasterizer.
+   *
+   * <p>Evaluates the three edge equations of a triangle for as many pixels
+   * of a row as the preferred float species has lanes, and writes the
+   * occluder depth into the covered pixels that are farther away with a
+   * single masked store.
+   *
+   * <p>Only reached when {@code VectorSupport.available()} is true.
+   */
+  final class OcclusionRasterVector {
+
+    /**
+     * Species used by the kernel.
+     */
+    private static final VectorSpecies<Float> SPECIES
+      = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Pixel centre offsets of the lanes: 0.5, 1.5, 2.5...
+     */
+    private static final FloatVector LANE_CENTERS
+      = FloatVector.zero(OcclusionRasterVector.SPECIES)
+        .addIndex(1)
+        .add(OcclusionCuller.PIXEL_CENTER);
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private OcclusionRasterVector() {
+      super();
+    }
+
+    /**
+     * Rasterizes one row of a triangle.
+     *
+     * @param _triangles the triangle equations
+     * @param _base the position of the triangle in the equations
+     * @param _depth the depth buffer
+     * @param _row the position of the row in the depth buffer
+     * @param _x0 the first pixel of the span
+     * @param _x1 the last pixel of the span
+     * @param _y the row
+     */
+    static void span(
+        final float[] _triangles,
+        final int _base,
+        final float[] _depth,
+        final int _row,
+        final int _x0,
+        final int _x1,
+        final int _y) {
+      final float centerY = _y + OcclusionCuller.PIXEL_CENTER;
+      final int edge1 = _base + OcclusionCuller.EDGE_STRIDE;
+      final int edge2 = edge1 + OcclusionCuller.EDGE_STRIDE;
+      final float a0 = _triangles[_base];
+      final float a1 = _triangles[edge1];
+      final float a2 = _triangles[edge2];
+      final float row0
+        = (_triangles[_base + 1] * centerY) + _triangles[_base + 2];
+      final float row1
+        = (_triangles[edge1 + 1] * centerY) + _triangles[edge1 + 2];
+      final float row2
+        = (_triangles[edge2 + 1] * centerY) + _triangles[edge2 + 2];
+      final float triangleDepth
+        = _triangles[_base + OcclusionCuller.TRIANGLE_DEPTH];
+
+      final int lanes = OcclusionRasterVector.SPECIES.length();
+      final int upper = _x0
+        + OcclusionRasterVector.SPECIES.loopBound((_x1 - _x0) + 1);
+      int x = _x0;
+      for (; x < upper; x += lanes) {
+        final FloatVector centerX = OcclusionRasterVector.LANE_CENTERS.add(x);
+        final VectorMask<Float> inside = centerX.mul(a0).add(row0)
+          .compare(VectorOperators.GE, 0.0F)
+          .and(centerX.mul(a1).add(row1).compare(VectorOperators.GE, 0.0F))
+          .and(centerX.mul(a2).add(row2).compare(VectorOperators.GE, 0.0F));
+        if (!inside.anyTrue()) {
+          continue;
+        }
+        final FloatVector depth = FloatVector.fromArray(
+          OcclusionRasterVector.SPECIES, _depth, _row + x);
+        depth.min(triangleDepth)
+          .blend(depth, inside.not())
+          .intoArray(_depth, _row + x);
+      }
+      if (x <= _x1) {
+        OcclusionCuller.span(
+          _triangles, _base, _depth, _row, x, _x1, _y);
+      }
+    }
+
+  }
@@ -0,0 +1,172 @@
+package es.noa.rad.game.engine.render.lod;
+
+import java.util.Arrays;
+
+  /**
+   * Chain of levels of detail of a mesh.
+   *
+   * <p>Level 0 is the original mesh; every further level is simplified
+   * from the previous one with a {@link MeshSimplifier} and only holds an
+   * index buffer, since all levels reference the original vertices. Every
+   * level records its error relative to the radius of the mesh bounds,
+   * accumulated along the chain, which the {@link LodSelector} projects on
+   * screen to pick a level.
+   *
+   * <p>Immutable once built.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * LodChain chain = LodChain.build(new MeshSimplifier(), positions,
+   *     indices, 4, 0.5f, 0.05f);
+   * int[] lod = chain.indices(selector.select(object, x, y, z, r, chain));
+   * }</pre>
+   *
+   * @see LodSelector
+   */
+  public final class LodChain {
+
+    /**
+     * Number of indices of a triangle.
+     */
+    private static final int INDICES_PER_TRIANGLE = 3;
+
+    /**
+     * Fraction of the previous index count below which a new level must
+     * fall to be kept.
+     */
+    private static final float MIN_REDUCTION = 0.95F;
+
+    /**
+     * Index buffer of every level.
+     */
+    private final int[][] levels;
+
+    /**
+     * Accumulated relative error of every level.
+     */
+    private final float[] errors;
+
+    /**
+     * Creates a chain from its levels.
+     *
+     * @param _levels the index buffer of every level, finest first
+     * @param _errors the relative error of every level, non-decreasing
+     * @throws IllegalArgumentException if the arrays are empty or their
+     *     lengths differ
+     */
+    public LodChain(
+        final int[][] _levels,
+        final float[] _errors) {
+      if ((_levels.length == 0) || (_levels.length != _errors.length)) {
+        throw new IllegalArgumentException(
+          "Levels and errors must be non-empty and of the same length.");
+      }
+      this.levels = _levels.clone();
+      this.errors = _errors.clone();
+    }
+
+    /**
+     * Simplifies a mesh into a chain of levels.
+     *
+     * <p>Every level targets {@code _reduction} times the index count of
+     * the previous one. The chain stops early when a level cannot be
+     * reduced any further within the error limit.
+     *
+     * @param _simplifier the simplifier
+     * @param _positions vertex positions, three floats per vertex
+     * @param _indices triangle indices of the original mesh
+     * @param _maxLevels the maximum number of levels, including level 0
+     * @param _reduction the target index count ratio between levels
+     * @param _maxError the maximum relative error of a collapse
+     * @return the chain
+     * @throws IllegalArgumentException if the level count is not positive
+     *     or the reduction is not between zero and one
+     */
+    public static LodChain build(
+        final MeshSimplifier _simplifier,
+        final float[] _positions,
+        final int[] _indices,
+        final int _maxLevels,
+        final float _reduction,
+        final float _maxError) {
+      if (_maxLevels <= 0) {
+        throw new IllegalArgumentException(
+          "Level count must be positive: " + _maxLevels);
+      }
+      if (!((_reduction > 0.0F) && (_reduction < 1.0F))) {
+        throw new IllegalArgumentException(
+          "Reduction must be between zero and one: " + _reduction);
+      }
+      final int[][] levels = new int[_maxLevels][];
+      final float[] errors = new float[_maxLevels];
+      levels[0] = _indices;
+      int count = 1;
+      while (count < _maxLevels) {
+        final int[] previous = levels[count - 1];
+        final int target = (int) (previous.length * _reduction);
+        final int[] level = _simplifier.simplify(
+          _positions, previous, target, _maxError);
+        if ((level.length == 0)
+            || (level.length > (previous.length * LodChain.MIN_REDUCTION))) {
+          break;
+        }
+        levels[count] = level;
+        errors[count] = errors[count - 1] + _simplifier.lastError();
+        count++;
+      }
+      return new LodChain(
+        Arrays.copyOf(levels, count), Arrays.copyOf(errors, count));
+    }
+
+    /**
+     * Gets the number of levels.
+     *
+     * @return the level count, at least one
+     */
+    public int levelCount() {
+      return this.levels.length;
+    }
+
+    /**
+     * Gets the index buffer of a level.
+     *
+     * @param _level the level
+     * @return the indices; must not be modified
+     */
+    public int[] indices(
+        final int _level) {
+      return this.levels[_level];
+    }
+
+    /**
+     * Gets the triangle count of a level.
+     *
+     * @param _level the level
+     * @return the triangle count
+     */
+    public int triangleCount(
+        final int _level) {
+      return this.levels[_level].length / LodChain.INDICES_PER_TRIANGLE;
+    }
+
+    /**
+     * Gets the error of a level.
+     *
+     * @param _level the level
+     * @return the error relative to the radius of the mesh bounds
+     */
+    public float error(
+        final int _level) {
+      return this.errors[_level];
+    }
+
+    /**
+     * Gets the error of every level, for the {@link LodSelector}.
+     *
+     * @return the errors; must not be modified
+     */
+    float[] errors() {
+      return this.errors;
+    }
+
+  }
@@ -0,0 +1,207 @@
+package es.noa.rad.game.engine.render.lod;
+
+import org.joml.primitives.AABBfc;
+
+  /**
+   * Mesh of a {@link es.noa.rad.game.engine.render.MeshArena} holding
+   * every level of a {@link LodChain}.
+   *
+   * <p>All levels share the vertices of the arena mesh; every level is a
+   * range of its indices, finest first, with the relative error the
+   * {@link LodSelector} projects on screen. The bounding sphere of the
+   * mesh, in model space, is the one the selector projects.
+   *
+   * <p>Immutable; the arena mesh is owned by the caller.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * LodMesh ship = meshFile.uploadLods(submesh, arena);
+   * instanceBatch.draw(sortKey, entity, ship, transform, InstanceBatch.WHITE);
+   * }</pre>
+   *
+   * @see es.noa.rad.game.engine.asset.MeshFile#uploadLods(int,
+   *     es.noa.rad.game.engine.render.MeshArena)
+   * @see es.noa.rad.game.engine.render.InstanceBatch
+   */
+  public final class LodMesh {
+
+    /**
+     * Half, to average the bounds.
+     */
+    private static final float HALF = 0.5F;
+
+    /**
+     * Handle of the mesh in the arena.
+     */
+    private final int mesh;
+
+    /**
+     * First index of every level, relative to the first index of the mesh.
+     */
+    private final int[] firstIndices;
+
+    /**
+     * Number of indices of every level.
+     */
+    private final int[] indexCounts;
+
+    /**
+     * Accumulated relative error of every level.
+     */
+    private final float[] errors;
+
+    /**
+     * Center of the bounding sphere.
+     */
+    private final float centerX;
+
+    /**
+     * Center of the bounding sphere.
+     */
+    private final float centerY;
+
+    /**
+     * Center of the bounding sphere.
+     */
+    private final float centerZ;
+
+    /**
+     * Radius of the bounding sphere.
+     */
+    private final float radius;
+
+    /**
+     * Creates the levels of an arena mesh.
+     *
+     * @param _mesh the handle of the mesh in the arena
+     * @param _firstIndices the first index of every level, relative to the
+     *     first index of the mesh
+     * @param _indexCounts the number of indices of every level
+     * @param _errors the relative error of every level, non-decreasing
+     * @param _bounds the model space bounds of the mesh
+     * @throws IllegalArgumentException if the arrays are empty or their
+     *     lengths differ
+     */
+    public LodMesh(
+        final int _mesh,
+        final int[] _firstIndices,
+        final int[] _indexCounts,
+        final float[] _errors,
+        final AABBfc _bounds) {
+      if ((_firstIndices.length == 0)
+          || (_firstIndices.length != _indexCounts.length)
+          || (_firstIndices.length != _errors.length)) {
+        throw new IllegalArgumentException(
+          "Levels must be non-empty and of the same length.");
+      }
+      this.mesh = _mesh;
+      this.firstIndices = _firstIndices.clone();
+      this.indexCounts = _indexCounts.clone();
+      this.errors = _errors.clone();
+      this.centerX = (_bounds.minX() + _bounds.maxX()) * LodMesh.HALF;
+      this.centerY = (_bounds.minY() + _bounds.maxY()) * LodMesh.HALF;
+      this.centerZ = (_bounds.minZ() + _bounds.maxZ()) * LodMesh.HALF;
+      final float extentX = _bounds.maxX() - this.centerX;
+      final float extentY = _bounds.maxY() - this.centerY;
+      final float extentZ = _bounds.maxZ() - this.centerZ;
+      this.radius = (float) Math.sqrt((extentX * extentX)
+        + (extentY * extentY) + (extentZ * extentZ));
+    }
+
+    /**
+     * Gets the handle of the mesh in the arena.
+     *
+     * @return the mesh handle
+     */
+    public int mesh() {
+      return this.mesh;
+    }
+
+    /**
+     * Gets the number of levels.
+     *
+     * @return the level count, at least one
+     */
+    public int levelCount() {
+      return this.errors.length;
+    }
+
+    /**
+     * Gets the first index of a level.
+     *
+     * @param _level the level
+     * @return the first index, relative to the first index of the mesh
+     */
+    public int firstIndex(
+        final int _level) {
+      return this.firstIndices[_level];
+    }
+
+    /**
+     * Gets the number of indices of a level.
+     *
+     * @param _level the level
+     * @return the index count
+     */
+    public int indexCount(
+        final int _level) {
+      return this.indexCounts[_level];
+    }
+
+    /**
+     * Gets the error of a level.
+     *
+     * @param _level the level
+     * @return the error relative to the radius of the mesh bounds
+     */
+    public float error(
+        final int _level) {
+      return this.errors[_level];
+    }
+
+    /**
+     * Gets the center of the model space bounding sphere.
+     *
+     * @return the x coordinate
+     */
+    public float centerX() {
+      return this.centerX;
+    }
+
+    /**
+     * Gets the center of the model space bounding sphere.
+     *
+     * @return the y coordinate
+     */
+    public float centerY() {
+      return this.centerY;
+    }
+
+    /**
+     * Gets the center of the model space bounding sphere.
+     *
+     * @return the z coordinate
+     */
+    public float centerZ() {
+      return this.centerZ;
+    }
+
+    /**
+     * Gets the radius of the model space bounding sphere.
+     *
+     * @return the radius
+     */
+    public float radius() {
+      return this.radius;
+    }
+
+    /**
+     * Gets the error of every level, for the {@link LodSelector}.
+     *
+     * @return the errors; must not be modified
+     */
+    float[] errors() {
+      return this.errors;
+    }
+
+  }
@@ -0,0 +1,375 @@
+package es.noa.rad.game.engine.render.lod;
+
+import java.util.Arrays;
+
+import org.joml.Vector3fc;
+
+import es.noa.rad.game.engine.configuration.settings.RenderSettings;
+
+  /**
+   * Runtime level of detail selection by projected screen size.
+   *
+   * <p>Every object is reduced to its bounding sphere. Its projected
+   * radius in pixels turns the relative error of each level of its
+   * {@link LodChain} into an error in pixels, and the coarsest level whose
+   * error stays below the pixel tolerance is chosen.
+   *
+   * <p>To avoid popping back and forth at the boundary between two levels,
+   * the level chosen for every object is remembered: an object only moves
+   * to a coarser level once that level is below the tolerance reduced by
+   * the hysteresis factor, while it moves to a finer level as soon as the
+   * current one exceeds the tolerance. A global bias scales the tolerance
+   * by a power of two: positive values favour coarser levels.
+   *
+   * <p>Selection costs a square root and a scan of the chain per object
+   * and never allocates once the object table has grown.
+   *
+   * <p>Not thread-safe.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * selector.camera(cameraPosition, fovY, window.height());
+   * for (int object = 0; object < count; object++) {
+   *   int level = selector.select(object, x[object], y[object], z[object],
+   *       radius[object], chains[object]);
+   * }
+   * }</pre>
+   *
+   * @see LodChain
+   * @see LodMesh
+   */
+  public final class LodSelector {
+
+    /**
+     * Level of an object that was never selected.
+     */
+    private static final int UNKNOWN = -1;
+
+    /**
+     * Initial number of objects of the level table.
+     */
+    private static final int INITIAL_OBJECTS = 256;
+
+    /**
+     * Tolerated error in pixels before the bias.
+     */
+    private final float pixelError;
+
+    /**
+     * Fraction of the tolerance an object must gain before moving to a
+     * coarser level.
+     */
+    private final float hysteresis;
+
+    /**
+     * Global bias, as a power of two applied to the tolerance.
+     */
+    private float bias;
+
+    /**
+     * Tolerated error in pixels, with the bias applied.
+     */
+    private float tolerance;
+
+    /**
+     * Camera position.
+     */
+    private float cameraX;
+
+    /**
+     * Camera position.
+     */
+    private float cameraY;
+
+    /**
+     * Camera position.
+     */
+    private float cameraZ;
+
+    /**
+     * Pixels per unit of size at unit distance.
+     */
+    private float projectionScale;
+
+    /**
+     * Level last chosen for every object.
+     */
+    private int[] levels;
+
+    /**
+     * Number of selections since the last {@link #resetStatistics()}.
+     */
+    private int selections;
+
+    /**
+     * Number of level changes since the last {@link #resetStatistics()}.
+     */
+    private int switches;
+
+    /**
+     * Creates a selector configured by the {@code render.lod.*} settings.
+     */
+    public LodSelector() {
+      this(
+        RenderSettings.RENDER_LOD_PIXEL_ERROR.<Float>get(),
+        RenderSettings.RENDER_LOD_HYSTERESIS.<Float>get(),
+        RenderSettings.RENDER_LOD_BIAS.<Float>get()
+      );
+    }
+
+    /**
+     * Creates a selector.
+     *
+     * @param _pixelError the tolerated error in pixels
+     * @param _hysteresis the fraction of the tolerance an object must gain
+     *     before moving to a coarser level, in {@code [0, 1)}
+     * @param _bias the global bias
+     * @throws IllegalArgumentException if the pixel error is not positive
+     *     or the hysteresis is out of range
+     */
+    public LodSelector(
+        final float _pixelError,
+        final float _hysteresis,
+        final float _bias) {
+      if (!(_pixelError > 0.0F)) {
+        throw new IllegalArgumentException(
+          "Pixel error must be positive: " + _pixelError);
+      }
+      if (!((_hysteresis >= 0.0F) && (_hysteresis < 1.0F))) {
+        throw new IllegalArgumentException(
+          "Hysteresis must be in [0, 1): " + _hysteresis);
+      }
+      this.pixelError = _pixelError;
+      this.hysteresis = _hysteresis;
+      this.levels = new int[LodSelector.INITIAL_OBJECTS];
+      Arrays.fill(this.levels, LodSelector.UNKNOWN);
+      this.projectionScale = 1.0F;
+      this.bias(_bias);
+    }
+
+    /**
+     * Sets the camera of the next selections.
+     *
+     * @param _position the camera position
+     * @param _fovY the vertical field of view in radians
+     * @param _viewportHeight the viewport height in pixels
+     */
+    public void camera(
+        final Vector3fc _position,
+        final float _fovY,
+        final int _viewportHeight) {
+      this.cameraX = _position.x();
+      this.cameraY = _position.y();
+      this.cameraZ = _position.z();
+      this.projectionScale = (float) (_viewportHeight
+        / (2.0 * Math.tan(_fovY / 2.0)));
+    }
+
+    /**
+     * Sets the global bias.
+     *
+     * @param _bias the bias: every unit doubles (positive) or halves
+     *     (negative) the tolerated error
+     */
+    public void bias(
+        final float _bias) {
+      this.bias = _bias;
+      this.tolerance = this.pixelError * (float) Math.pow(2.0, _bias);
+    }
+
+    /**
+     * Gets the global bias.
+     *
+     * @return the bias
+     */
+    public float bias() {
+      return this.bias;
+    }
+
+    /**
+     * Computes the projected radius of a sphere.
+     *
+     * @param _x the sphere center
+     * @param _y the sphere center
+     * @param _z the sphere center
+     * @param _radius the sphere radius
+     * @return the radius in pixels, positive infinity if the camera is
+     *     inside the sphere
+     */
+    public float screenRadius(
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _radius) {
+      final float dx = _x - this.cameraX;
+      final float dy = _y - this.cameraY;
+      final float dz = _z - this.cameraZ;
+      final float distanceSquared = (dx * dx) + (dy * dy) + (dz * dz);
+      if (distanceSquared <= (_radius * _radius)) {
+        return Float.POSITIVE_INFINITY;
+      }
+      return (_radius * this.projectionScale)
+        / (float) Math.sqrt(distanceSquared);
+    }
+
+    /**
+     * Selects the level of an object.
+     *
+     * @param _object the object identifier, a small non-negative integer
+     * @param _x the center of the object bounding sphere
+     * @param _y the center of the object bounding sphere
+     * @param _z the center of the object bounding sphere
+     * @param _radius the radius of the object bounding sphere
+     * @param _chain the levels of the object
+     * @return the selected level
+     */
+    public int select(
+        final int _object,
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _radius,
+        final LodChain _chain) {
+      return this.select(_object, _x, _y, _z, _radius, _chain.errors());
+    }
+
+    /**
+     * Selects the level of an object drawn from a mesh arena.
+     *
+     * @param _object the object identifier, a small non-negative integer
+     * @param _x the center of the object bounding sphere
+     * @param _y the center of the object bounding sphere
+     * @param _z the center of the object bounding sphere
+     * @param _radius the radius of the object bounding sphere
+     * @param _mesh the levels of the object
+     * @return the selected level
+     */
+    public int select(
+        final int _object,
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _radius,
+        final LodMesh _mesh) {
+      return this.select(_object, _x, _y, _z, _radius, _mesh.errors());
+    }
+
+    /**
+     * Selects the level of an object from the errors of its levels.
+     *
+     * @param _object the object identifier
+     * @param _x the center of the object bounding sphere
+     * @param _y the center of the object bounding sphere
+     * @param _z the center of the object bounding sphere
+     * @param _radius the radius of the object bounding sphere
+     * @param _errors the relative error of every level, finest first
+     * @return the selected level
+     */
+    private int select(
+        final int _object,
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _radius,
+        final float[] _errors) {
+      if (_object >= this.levels.length) {
+        this.grow(_object + 1);
+      }
+      this.selections++;
+      final float screenRadius = this.screenRadius(_x, _y, _z, _radius);
+      final int current = this.levels[_object];
+      final int allowed = LodSelector.coarsest(
+        _errors, screenRadius, this.tolerance);
+
+      int level = allowed;
+      if ((current != LodSelector.UNKNOWN)
+          && (current < _errors.length) && (allowed > current)) {
+        /* Coarsen only once the stricter tolerance allows it. */
+        level = Math.max(current, LodSelector.coarsest(
+          _errors, screenRadius, this.tolerance * (1.0F - this.hysteresis)));
+      }
+      if (level != current) {
+        if (current != LodSelector.UNKNOWN) {
+          this.switches++;
+        }
+        this.levels[_object] = level;
+      }
+      return level;
+    }
+
+    /**
+     * Forgets the level of an object, typically when it is destroyed.
+     *
+     * @param _object the object identifier
+     */
+    public void forget(
+        final int _object) {
+      if (_object < this.levels.length) {
+        this.levels[_object] = LodSelector.UNKNOWN;
+      }
+    }
+
+    /**
+     * Gets the number of selections since the last
+     * {@link #resetStatistics()}.
+     *
+     * @return the selection count
+     */
+    public int selections() {
+      return this.selections;
+    }
+
+    /**
+     * Gets the number of level changes since the last
+     * {@link #resetStatistics()}.
+     *
+     * @return the switch count
+     */
+    public int switches() {
+      return this.switches;
+    }
+
+    /**
+     * Resets the selection and switch counters, typically once per frame.
+     */
+    public void resetStatistics() {
+      this.selections = 0;
+      this.switches = 0;
+    }
+
+    /**
+     * Finds the coarsest level whose projected error is tolerated.
+     *
+     * @param _errors the relative error of every level
+     * @param _screenRadius the projected radius in pixels
+     * @param _tolerance the tolerated error in pixels
+     * @return the level
+     */
+    private static int coarsest(
+        final float[] _errors,
+        final float _screenRadius,
+        final float _tolerance) {
+      int level = 0;
+      for (int candidate = 1; candidate < _errors.length; candidate++) {
+        if ((_errors[candidate] * _screenRadius) > _tolerance) {
+          break;
+        }
+        level = candidate;
+      }
+      return level;
+    }
+
+    /**
+     * Grows the level table.
+     *
+     * @param _objects the number of objects to hold
+     */
+    private void grow(
+        final int _objects) {
+      final int oldCapacity = this.levels.length;
+      final int capacity = Math.max(_objects, oldCapacity * 2);
+      this.levels = Arrays.copyOf(this.levels, capacity);
+      Arrays.fill(this.levels, oldCapacity, capacity, LodSelector.UNKNOWN);
+    }
+
+  }
@@ -0,0 +1,820 @@
+package es.noa.rad.game.engine.render.lod;
+
+import java.util.Arrays;
+
+  /**
+   * Quadric error metric mesh simplifier.
+   *
+   * <p>Reduces the triangle count of an indexed mesh by collapsing edges in
+   * order of increasing error (Garland and Heckbert). Every vertex carries
+   * the area-weighted sum of the plane quadrics of its triangles, plus
+   * perpendicular planes along open edges so borders and attribute seams
+   * keep their shape. An edge collapses into one of its endpoints, so the
+   * result only references vertices of the input: every level of detail
+   * can share the original vertex buffer and differ in its index buffer.
+   *
+   * <p>Candidate collapses are kept in a binary heap stored in primitive
+   * arrays and evaluated lazily: an entry whose endpoints changed since it
+   * was pushed is recomputed when it reaches the top. Collapses that would
+   * flip a triangle are rejected.
+   *
+   * <p>The error of a collapse is the approximate distance between the
+   * simplified and the original surface, relative to the radius of the
+   * mesh bounds (half their diagonal), so it does not depend on the mesh
+   * scale.
+   *
+   * <p>Meant for import time: it allocates its working memory on every
+   * call. Instances are not thread-safe but may run in parallel on
+   * different instances.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * MeshSimplifier simplifier = new MeshSimplifier();
+   * int[] lod = simplifier.simplify(positions, indices,
+   *     indices.length / 2, 0.01f);
+   * float error = simplifier.lastError();
+   * }</pre>
+   *
+   * @see LodChain
+   */
+  public final class MeshSimplifier {
+
+    /**
+     * Number of components of a vertex position.
+     */
+    private static final int VERTEX_STRIDE = 3;
+
+    /**
+     * Number of doubles of a quadric: the ten coefficients of the
+     * symmetric matrix plus the accumulated area weight.
+     */
+    private static final int QUADRIC_SIZE = 11;
+
+    /**
+     * Offset of the area weight inside a quadric.
+     */
+    private static final int WEIGHT = 10;
+
+    /**
+     * Weight of the border planes relative to the triangle planes.
+     */
+    private static final double BORDER_WEIGHT = 10.0;
+
+    /**
+     * Minimum cosine between a triangle normal before and after a
+     * collapse.
+     */
+    private static final double FLIP_THRESHOLD = 0.2;
+
+    /**
+     * Value of a missing list entry.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Bits of the smaller vertex in an edge key.
+     */
+    private static final int EDGE_SHIFT = 32;
+
+    /**
+     * Scratch normal of a triangle before a collapse.
+     */
+    private final double[] before;
+
+    /**
+     * Scratch normal of a triangle after a collapse.
+     */
+    private final double[] after;
+
+    /**
+     * Error of the last simplification.
+     */
+    private float lastError;
+
+    /**
+     * Vertex positions of the current run.
+     */
+    private float[] positions;
+
+    /**
+     * Triangle indices of the current run (never modified).
+     */
+    private int[] triangles;
+
+    /**
+     * Union-find parent of every vertex: collapsed vertices point to the
+     * vertex they were merged into.
+     */
+    private int[] parents;
+
+    /**
+     * Version of every vertex, bumped when its quadric changes.
+     */
+    private int[] versions;
+
+    /**
+     * Quadric of every vertex.
+     */
+    private double[] quadrics;
+
+    /**
+     * Whether every triangle is still alive.
+     */
+    private boolean[] alive;
+
+    /**
+     * First triangle reference of every vertex.
+     */
+    private int[] listHeads;
+
+    /**
+     * Last triangle reference of every vertex.
+     */
+    private int[] listTails;
+
+    /**
+     * Next reference of every triangle reference.
+     */
+    private int[] listNext;
+
+    /**
+     * Candidate collapse heap: cost of every entry.
+     */
+    private float[] heapCosts;
+
+    /**
+     * Candidate collapse heap: vertex removed by every entry.
+     */
+    private int[] heapFrom;
+
+    /**
+     * Candidate collapse heap: vertex kept by every entry.
+     */
+    private int[] heapTo;
+
+    /**
+     * Candidate collapse heap: versions of both vertices when pushed.
+     */
+    private long[] heapVersions;
+
+    /**
+     * Number of heap entries.
+     */
+    private int heapSize;
+
+    /**
+     * Creates a simplifier.
+     */
+    public MeshSimplifier() {
+      super();
+      this.before = new double[MeshSimplifier.VERTEX_STRIDE];
+      this.after = new double[MeshSimplifier.VERTEX_STRIDE];
+      this.lastError = 0.0F;
+    }
+
+    /**
+     * Simplifies a mesh.
+     *
+     * @param _positions vertex positions, three floats per vertex
+     * @param _indices triangle indices, three per triangle
+     * @param _targetIndexCount the index count to reach
+     * @param _maxError the maximum relative error of a collapse
+     * @return the indices of the simplified mesh, referencing the same
+     *     vertices
+     * @throws IllegalArgumentException if the index count is not a
+     *     multiple of three
+     */
+    public int[] simplify(
+        final float[] _positions,
+        final int[] _indices,
+        final int _targetIndexCount,
+        final float _maxError) {
+      if ((_indices.length % MeshSimplifier.VERTEX_STRIDE) != 0) {
+        throw new IllegalArgumentException(
+          "Index count must be a multiple of three: " + _indices.length);
+      }
+      this.lastError = 0.0F;
+      final int vertexCount = _positions.length / MeshSimplifier.VERTEX_STRIDE;
+      final int triangleCount = _indices.length / MeshSimplifier.VERTEX_STRIDE;
+      this.positions = _positions;
+      this.triangles = _indices;
+      this.parents = new int[vertexCount];
+      this.versions = new int[vertexCount];
+      this.quadrics = new double[vertexCount * MeshSimplifier.QUADRIC_SIZE];
+      this.alive = new boolean[triangleCount];
+      this.listHeads = new int[vertexCount];
+      this.listTails = new int[vertexCount];
+      this.listNext = new int[_indices.length];
+      this.heapSize = 0;
+      this.heapCosts = new float[_indices.length];
+      this.heapFrom = new int[_indices.length];
+      this.heapTo = new int[_indices.length];
+      this.heapVersions = new long[_indices.length];
+
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        this.parents[vertex] = vertex;
+      }
+      Arrays.fill(this.listHeads, MeshSimplifier.NONE);
+      Arrays.fill(this.listTails, MeshSimplifier.NONE);
+      Arrays.fill(this.alive, true);
+      for (int corner = 0; corner < _indices.length; corner++) {
+        this.append(_indices[corner], corner);
+      }
+
+      final double scale = MeshSimplifier.radius(_positions);
+      this.addTriangleQuadrics();
+      this.addBorderQuadrics();
+      for (int corner = 0; corner < _indices.length; corner++) {
+        /* Shared edges are pushed twice; the leftover copy is skipped. */
+        final int a = _indices[corner];
+        final int b = _indices[this.nextCorner(corner)];
+        if (a != b) {
+          this.pushEdge(a, b);
+        }
+      }
+
+      int aliveTriangles = triangleCount;
+      while ((this.heapSize > 0)
+          && ((aliveTriangles * MeshSimplifier.VERTEX_STRIDE)
+            > _targetIndexCount)) {
+        final float cost = this.heapCosts[0];
+        final int from = this.heapFrom[0];
+        final int to = this.heapTo[0];
+        final long version = this.heapVersions[0];
+        this.pop();
+        final int rootFrom = this.find(from);
+        final int rootTo = this.find(to);
+        if (rootFrom == rootTo) {
+          continue;
+        }
+        if ((rootFrom != from) || (rootTo != to)
+            || (version != this.version(from, to))) {
+          this.pushEdge(rootFrom, rootTo);
+          continue;
+        }
+        final double error = Math.sqrt(Math.max(0.0F, cost)) / scale;
+        if (error > _maxError) {
+          break;
+        }
+        if (this.flips(from, to)) {
+          continue;
+        }
+        aliveTriangles -= this.collapse(from, to);
+        this.lastError = Math.max(this.lastError, (float) error);
+      }
+
+      final int[] result
+        = new int[aliveTriangles * MeshSimplifier.VERTEX_STRIDE];
+      int cursor = 0;
+      for (int triangle = 0; triangle < triangleCount; triangle++) {
+        if (this.alive[triangle]) {
+          for (int corner = 0; corner < MeshSimplifier.VERTEX_STRIDE;
+              corner++) {
+            result[cursor++] = this.find(
+              _indices[(triangle * MeshSimplifier.VERTEX_STRIDE) + corner]);
+          }
+        }
+      }
+      this.release();
+      return result;
+    }
+
+    /**
+     * Gets the largest relative error of the collapses of the last
+     * simplification.
+     *
+     * @return the error, relative to the radius of the mesh bounds
+     */
+    public float lastError() {
+      return this.lastError;
+    }
+
+    /**
+     * Drops the references to the working memory of the last run.
+     */
+    private void release() {
+      this.positions = null;
+      this.triangles = null;
+      this.parents = null;
+      this.versions = null;
+      this.quadrics = null;
+      this.alive = null;
+      this.listHeads = null;
+      this.listTails = null;
+      this.listNext = null;
+      this.heapCosts = null;
+      this.heapFrom = null;
+      this.heapTo = null;
+      this.heapVersions = null;
+    }
+
+    /**
+     * Computes the radius of the bounds of a mesh.
+     *
+     * @param _positions vertex positions
+     * @return half the diagonal of the bounds, at least one
+     *     {@link Float#MIN_NORMAL}
+     */
+    private static double radius(
+        final float[] _positions) {
+      final double[] min = {Double.MAX_VALUE, Double.MAX_VALUE,
+        Double.MAX_VALUE};
+      final double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE,
+        -Double.MAX_VALUE};
+      for (int index = 0; index < _positions.length; index++) {
+        final int axis = index % MeshSimplifier.VERTEX_STRIDE;
+        min[axis] = Math.min(min[axis], _positions[index]);
+        max[axis] = Math.max(max[axis], _positions[index]);
+      }
+      double diagonal = 0.0;
+      for (int axis = 0; axis < MeshSimplifier.VERTEX_STRIDE; axis++) {
+        final double extent = Math.max(0.0, max[axis] - min[axis]);
+        diagonal += extent * extent;
+      }
+      return Math.max(Float.MIN_NORMAL, Math.sqrt(diagonal) / 2.0);
+    }
+
+    /**
+     * Adds the area-weighted plane quadric of every triangle to its
+     * vertices.
+     */
+    private void addTriangleQuadrics() {
+      final double[] normal = new double[MeshSimplifier.VERTEX_STRIDE];
+      for (int corner = 0; corner < this.triangles.length;
+          corner += MeshSimplifier.VERTEX_STRIDE) {
+        final int a = this.triangles[corner];
+        final int b = this.triangles[corner + 1];
+        final int c = this.triangles[corner + 2];
+        final double area = this.normal(a, b, c, normal);
+        if (area <= 0.0) {
+          continue;
+        }
+        final double d = -this.dot(normal, a);
+        for (int vertex = 0; vertex < MeshSimplifier.VERTEX_STRIDE;
+            vertex++) {
+          this.addPlane(this.triangles[corner + vertex],
+            normal, d, area);
+        }
+      }
+    }
+
+    /**
+     * Adds a plane perpendicular to every open edge, through the edge, to
+     * its endpoints.
+     */
+    private void addBorderQuadrics() {
+      final long[] edges = new long[this.triangles.length];
+      for (int corner = 0; corner < this.triangles.length; corner++) {
+        edges[corner] = this.edgeKey(corner);
+      }
+      Arrays.sort(edges);
+
+      final double[] normal = new double[MeshSimplifier.VERTEX_STRIDE];
+      final double[] plane = new double[MeshSimplifier.VERTEX_STRIDE];
+      for (int corner = 0; corner < this.triangles.length; corner++) {
+        final long key = this.edgeKey(corner);
+        final int found = Arrays.binarySearch(edges, key);
+        final boolean shared
+          = ((found > 0) && (edges[found - 1] == key))
+          || (((found + 1) < edges.length) && (edges[found + 1] == key));
+        if (shared) {
+          continue;
+        }
+        final int base = corner - (corner % MeshSimplifier.VERTEX_STRIDE);
+        if (this.normal(this.triangles[base], this.triangles[base + 1],
+            this.triangles[base + 2], normal) <= 0.0) {
+          continue;
+        }
+        final int a = this.triangles[corner];
+        final int b = this.triangles[this.nextCorner(corner)];
+        double length = 0.0;
+        for (int axis = 0; axis < MeshSimplifier.VERTEX_STRIDE; axis++) {
+          final double edge = this.coordinate(b, axis)
+            - this.coordinate(a, axis);
+          plane[axis] = edge;
+          length += edge * edge;
+        }
+        /* Plane normal: edge direction crossed with the face normal. */
+        final double ex = plane[0];
+        final double ey = plane[1];
+        final double ez = plane[2];
+        plane[0] = (ey * normal[2]) - (ez * normal[1]);
+        plane[1] = (ez * normal[0]) - (ex * normal[2]);
+        plane[2] = (ex * normal[1]) - (ey * normal[0]);
+        final double planeLength = Math.sqrt(
+          (plane[0] * plane[0]) + (plane[1] * plane[1])
+          + (plane[2] * plane[2]));
+        if (planeLength <= 0.0) {
+          continue;
+        }
+        for (int axis = 0; axis < MeshSimplifier.VERTEX_STRIDE; axis++) {
+          plane[axis] /= planeLength;
+        }
+        final double d = -this.dot(plane, a);
+        final double weight = length * MeshSimplifier.BORDER_WEIGHT;
+        this.addPlane(a, plane, d, weight);
+        this.addPlane(b, plane, d, weight);
+      }
+    }
+
+    /**
+     * Computes the undirected key of the edge starting at a corner.
+     *
+     * @param _corner the corner
+     * @return the key
+     */
+    private long edgeKey(
+        final int _corner) {
+      final int a = this.triangles[_corner];
+      final int b = this.triangles[this.nextCorner(_corner)];
+      return (((long) Math.min(a, b)) << MeshSimplifier.EDGE_SHIFT)
+        | Math.max(a, b);
+    }
+
+    /**
+     * Gets the next corner of the triangle of a corner.
+     *
+     * @param _corner the corner
+     * @return the next corner
+     */
+    private int nextCorner(
+        final int _corner) {
+      final int base = _corner - (_corner % MeshSimplifier.VERTEX_STRIDE);
+      return base + (((_corner - base) + 1) % MeshSimplifier.VERTEX_STRIDE);
+    }
+
+    /**
+     * Adds a weighted plane to the quadric of a vertex.
+     *
+     * @param _vertex the vertex
+     * @param _normal the unit plane normal
+     * @param _d the plane offset
+     * @param _weight the weight
+     */
+    private void addPlane(
+        final int _vertex,
+        final double[] _normal,
+        final double _d,
+        final double _weight) {
+      final double a = _normal[0];
+      final double b = _normal[1];
+      final double c = _normal[2];
+      final double[] q = this.quadrics;
+      int offset = _vertex * MeshSimplifier.QUADRIC_SIZE;
+      q[offset++] += _weight * a * a;
+      q[offset++] += _weight * a * b;
+      q[offset++] += _weight * a * c;
+      q[offset++] += _weight * a * _d;
+      q[offset++] += _weight * b * b;
+      q[offset++] += _weight * b * c;
+      q[offset++] += _weight * b * _d;
+      q[offset++] += _weight * c * c;
+      q[offset++] += _weight * c * _d;
+      q[offset++] += _weight * _d * _d;
+      q[offset] += _weight;
+    }
+
+    /**
+     * Evaluates the combined quadric of two vertices at the position of
+     * the second, divided by the combined weight.
+     *
+     * @param _from the removed vertex
+     * @param _to the kept vertex
+     * @return the mean squared distance to the planes of both vertices
+     */
+    private double cost(
+        final int _from,
+        final int _to) {
+      final double[] q = this.quadrics;
+      final int f = _from * MeshSimplifier.QUADRIC_SIZE;
+      final int t = _to * MeshSimplifier.QUADRIC_SIZE;
+      final double x = this.coordinate(_to, 0);
+      final double y = this.coordinate(_to, 1);
+      final double z = this.coordinate(_to, 2);
+      int o = 0;
+      final double a2 = q[f + o] + q[t + o++];
+      final double ab = q[f + o] + q[t + o++];
+      final double ac = q[f + o] + q[t + o++];
+      final double ad = q[f + o] + q[t + o++];
+      final double b2 = q[f + o] + q[t + o++];
+      final double bc = q[f + o] + q[t + o++];
+      final double bd = q[f + o] + q[t + o++];
+      final double c2 = q[f + o] + q[t + o++];
+      final double cd = q[f + o] + q[t + o++];
+      final double d2 = q[f + o] + q[t + o];
+      final double weight = q[f + MeshSimplifier.WEIGHT]
+        + q[t + MeshSimplifier.WEIGHT];
+      final double value = (a2 * x * x) + (b2 * y * y) + (c2 * z * z)
+        + (2.0 * ((ab * x * y) + (ac * x * z) + (bc * y * z)))
+        + (2.0 * ((ad * x) + (bd * y) + (cd * z))) + d2;
+      if (weight <= 0.0) {
+        return 0.0;
+      }
+      return Math.max(0.0, value / weight);
+    }
+
+    /**
+     * Pushes the cheaper direction of the collapse of an edge.
+     *
+     * @param _a the first vertex
+     * @param _b the second vertex
+     */
+    private void pushEdge(
+        final int _a,
+        final int _b) {
+      final double costA = this.cost(_a, _b);
+      final double costB = this.cost(_b, _a);
+      if (costA <= costB) {
+        this.push((float) costA, _a, _b);
+      } else {
+        this.push((float) costB, _b, _a);
+      }
+    }
+
+    /**
+     * Packs the versions of two vertices.
+     *
+     * @param _from the removed vertex
+     * @param _to the kept vertex
+     * @return the packed versions
+     */
+    private long version(
+        final int _from,
+        final int _to) {
+      return (((long) this.versions[_from]) << MeshSimplifier.EDGE_SHIFT)
+        | Integer.toUnsignedLong(this.versions[_to]);
+    }
+
+    /**
+     * Checks whether collapsing a vertex would flip one of the triangles
+     * that survive the collapse.
+     *
+     * @param _from the removed vertex
+     * @param _to the kept vertex
+     * @return {@code true} if a triangle would flip
+     */
+    private boolean flips(
+        final int _from,
+        final int _to) {
+      for (int ref = this.listHeads[_from]; ref != MeshSimplifier.NONE;
+          ref = this.listNext[ref]) {
+        final int triangle = ref / MeshSimplifier.VERTEX_STRIDE;
+        if (!this.alive[triangle]) {
+          continue;
+        }
+        final int base = triangle * MeshSimplifier.VERTEX_STRIDE;
+        final int a = this.find(this.triangles[base]);
+        final int b = this.find(this.triangles[base + 1]);
+        final int c = this.find(this.triangles[base + 2]);
+        if ((a == _to) || (b == _to) || (c == _to)) {
+          continue;
+        }
+        if (this.normal(a, b, c, this.before) <= 0.0) {
+          continue;
+        }
+        final double area = this.normal(
+          a == _from ? _to : a,
+          b == _from ? _to : b,
+          c == _from ? _to : c,
+          this.after);
+        final double cosine = (this.before[0] * this.after[0])
+          + (this.before[1] * this.after[1])
+          + (this.before[2] * this.after[2]);
+        if ((area <= 0.0) || (cosine < MeshSimplifier.FLIP_THRESHOLD)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Merges a vertex into another.
+     *
+     * @param _from the removed vertex
+     * @param _to the kept vertex
+     * @return the number of triangles that degenerated
+     */
+    private int collapse(
+        final int _from,
+        final int _to) {
+      int removed = 0;
+      for (int ref = this.listHeads[_from]; ref != MeshSimplifier.NONE;
+          ref = this.listNext[ref]) {
+        final int triangle = ref / MeshSimplifier.VERTEX_STRIDE;
+        if (!this.alive[triangle]) {
+          continue;
+        }
+        final int base = triangle * MeshSimplifier.VERTEX_STRIDE;
+        if ((this.find(this.triangles[base]) == _to)
+            || (this.find(this.triangles[base + 1]) == _to)
+            || (this.find(this.triangles[base + 2]) == _to)) {
+          this.alive[triangle] = false;
+          removed++;
+        }
+      }
+
+      this.parents[_from] = _to;
+      final int from = _from * MeshSimplifier.QUADRIC_SIZE;
+      final int to = _to * MeshSimplifier.QUADRIC_SIZE;
+      for (int index = 0; index < MeshSimplifier.QUADRIC_SIZE; index++) {
+        this.quadrics[to + index] += this.quadrics[from + index];
+      }
+      this.versions[_from]++;
+      this.versions[_to]++;
+
+      /* The kept vertex inherits the triangle list of the removed one. */
+      if (this.listHeads[_from] != MeshSimplifier.NONE) {
+        if (this.listHeads[_to] == MeshSimplifier.NONE) {
+          this.listHeads[_to] = this.listHeads[_from];
+        } else {
+          this.listNext[this.listTails[_to]] = this.listHeads[_from];
+        }
+        this.listTails[_to] = this.listTails[_from];
+      }
+      return removed;
+    }
+
+    /**
+     * Appends a triangle corner to the list of a vertex.
+     *
+     * @param _vertex the vertex
+     * @param _corner the corner, which identifies its triangle
+     */
+    private void append(
+        final int _vertex,
+        final int _corner) {
+      this.listNext[_corner] = MeshSimplifier.NONE;
+      if (this.listHeads[_vertex] == MeshSimplifier.NONE) {
+        this.listHeads[_vertex] = _corner;
+      } else {
+        this.listNext[this.listTails[_vertex]] = _corner;
+      }
+      this.listTails[_vertex] = _corner;
+    }
+
+    /**
+     * Finds the vertex a vertex was merged into, compressing the path.
+     *
+     * @param _vertex the vertex
+     * @return the surviving vertex
+     */
+    private int find(
+        final int _vertex) {
+      int root = _vertex;
+      while (this.parents[root] != root) {
+        root = this.parents[root];
+      }
+      int vertex = _vertex;
+      while (this.parents[vertex] != root) {
+        final int next = this.parents[vertex];
+        this.parents[vertex] = root;
+        vertex = next;
+      }
+      return root;
+    }
+
+    /**
+     * Computes the unit normal of a triangle.
+     *
+     * @param _a the first vertex
+     * @param _b the second vertex
+     * @param _c the third vertex
+     * @param _dest the array receiving the normal
+     * @return the area of the triangle, zero if degenerate
+     */
+    private double normal(
+        final int _a,
+        final int _b,
+        final int _c,
+        final double[] _dest) {
+      final double e1x = this.coordinate(_b, 0) - this.coordinate(_a, 0);
+      final double e1y = this.coordinate(_b, 1) - this.coordinate(_a, 1);
+      final double e1z = this.coordinate(_b, 2) - this.coordinate(_a, 2);
+      final double e2x = this.coordinate(_c, 0) - this.coordinate(_a, 0);
+      final double e2y = this.coordinate(_c, 1) - this.coordinate(_a, 1);
+      final double e2z = this.coordinate(_c, 2) - this.coordinate(_a, 2);
+      final double nx = (e1y * e2z) - (e1z * e2y);
+      final double ny = (e1z * e2x) - (e1x * e2z);
+      final double nz = (e1x * e2y) - (e1y * e2x);
+      final double length = Math.sqrt((nx * nx) + (ny * ny) + (nz * nz));
+      if (length <= 0.0) {
+        return 0.0;
+      }
+      _dest[0] = nx / length;
+      _dest[1] = ny / length;
+      _dest[2] = nz / length;
+      return length / 2.0;
+    }
+
+    /**
+     * Computes the dot product of a vector and a vertex position.
+     *
+     * @param _vector the vector
+     * @param _vertex the vertex
+     * @return the dot product
+     */
+    private double dot(
+        final double[] _vector,
+        final int _vertex) {
+      return (_vector[0] * this.coordinate(_vertex, 0))
+        + (_vector[1] * this.coordinate(_vertex, 1))
+        + (_vector[2] * this.coordinate(_vertex, 2));
+    }
+
+    /**
+     * Gets a coordinate of a vertex.
+     *
+     * @param _vertex the vertex
+     * @param _axis the axis
+     * @return the coordinate
+     */
+    private double coordinate(
+        final int _vertex,
+        final int _axis) {
+      return this.positions[(_vertex * MeshSimplifier.VERTEX_STRIDE) + _axis];
+    }
+
+    /**
+     * Pushes a candidate collapse on the heap.
+     *
+     * @param _cost the cost
+     * @param _from the removed vertex
+     * @param _to the kept vertex
+     */
+    private void push(
+        final float _cost,
+        final int _from,
+        final int _to) {
+      if (this.heapSize == this.heapCosts.length) {
+        final int capacity = Math.max(1, this.heapSize * 2);
+        this.heapCosts = Arrays.copyOf(this.heapCosts, capacity);
+        this.heapFrom = Arrays.copyOf(this.heapFrom, capacity);
+        this.heapTo = Arrays.copyOf(this.heapTo, capacity);
+        this.heapVersions = Arrays.copyOf(this.heapVersions, capacity);
+      }
+      final long version = this.version(_from, _to);
+      int index = this.heapSize++;
+      while (index > 0) {
+        final int parent = (index - 1) / 2;
+        if (this.heapCosts[parent] <= _cost) {
+          break;
+        }
+        this.move(parent, index);
+        index = parent;
+      }
+      this.heapCosts[index] = _cost;
+      this.heapFrom[index] = _from;
+      this.heapTo[index] = _to;
+      this.heapVersions[index] = version;
+    }
+
+    /**
+     * Removes the cheapest candidate collapse from the heap.
+     */
+    private void pop() {
+      final int last = --this.heapSize;
+      if (last == 0) {
+        return;
+      }
+      final float cost = this.heapCosts[last];
+      final int from = this.heapFrom[last];
+      final int to = this.heapTo[last];
+      final long version = this.heapVersions[last];
+      int index = 0;
+      while (true) {
+        int child = (2 * index) + 1;
+        if (child >= last) {
+          break;
+        }
+        if (((child + 1) < last)
+            && (this.heapCosts[child + 1] < this.heapCosts[child])) {
+          child++;
+        }
+        if (this.heapCosts[child] >= cost) {
+          break;
+        }
+        this.move(child, index);
+        index = child;
+      }
+      this.heapCosts[index] = cost;
+      this.heapFrom[index] = from;
+      this.heapTo[index] = to;
+      this.heapVersions[index] = version;
+    }
+
+    /**
+     * Copies a heap entry.
+     *
+     * @param _source the entry to copy
+     * @param _target the entry to overwrite
+     */
+    private void move(
+        final int _source,
+        final int _target) {
+      this.heapCosts[_target] = this.heapCosts[_source];
+      this.heapFrom[_target] = this.heapFrom[_source];
+      this.heapTo[_target] = this.heapTo[_source];
+      this.heapVersions[_target] = this.heapVersions[_source];
+    }
+
+  }
@@ -0,0 +1,43 @@
+package es.noa.rad.game.engine.render.particle;
+
+  /**
+   * Execution strategies of the {@link ParticleSystem}.
+   *
+   * <p>All strategies leave the particles in the same state and write the
+   * same vertices; they only differ in how the work is spread over cores
+   * and lanes, which makes them directly comparable when profiling.
+   *
+   * @see ParticleSystem#update(float, ParticleMode)
+   */
+  public enum ParticleMode {
+
+    /**
+     * One thread, one particle at a time.
+     */
+    SCALAR,
+
+    /**
+     * One thread, several particles at a time with the Vector API. Falls
+     * back to {@link #SCALAR} when the Vector API is not available.
+     */
+    VECTOR,
+
+    /**
+     * Fork-join over chunks of particles, scalar update inside each chunk.
+     */
+    PARALLEL,
+
+    /**
+     * Fork-join over chunks of particles, Vector API update inside each
+     * chunk. Falls back to {@link #PARALLEL} when the Vector API is not
+     * available.
+     */
+    PARALLEL_VECTOR,
+
+    /**
+     * Picks the fastest strategy for the number of particles: parallel
+     * above the system threshold, with the Vector API when available.
+     */
+    AUTO
+
+  }
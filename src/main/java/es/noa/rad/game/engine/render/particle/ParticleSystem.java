@@ -0,0 +1,1097 @@
+package es.noa.rad.game.engine.render.particle;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import es.noa.rad.game.engine.render.DrawCommand;
+import es.noa.rad.game.engine.render.RenderQueue;
+import es.noa.rad.game.engine.render.SortKey;
+import es.noa.rad.game.engine.render.VertexFormat;
+import es.noa.rad.game.engine.util.VectorSupport;
+
+  /**
+   * Pool of camera facing particles stored as structure of arrays.
+   *
+   * <p>Position, velocity, remaining life, lifetime, size and color of
+   * every particle live in parallel primitive arrays, so the update streams
+   * through contiguous memory and can be loaded lane by lane by the Vector
+   * API. {@link #update(float)} applies gravity and drag, moves the
+   * particles and ages them, then removes the expired ones by moving the
+   * last live particle into their slot, so the live particles always
+   * occupy the first {@link #size()} slots.
+   *
+   * <p>{@link #flush(RenderQueue, Matrix4fc)} writes one quad per particle,
+   * facing the camera and fading out with its remaining life, directly into
+   * an off-heap staging block in {@link VertexFormat#POSITION_TEXCOORD_COLOR}
+   * layout, and pushes a single {@link DrawCommand} for the whole system.
+   * The quads share a prebuilt index block, as in the sprite batch.
+   *
+   * <p>Large systems are split into fixed chunks processed by a
+   * {@link ForkJoinPool}, both for the update and for the vertex writing;
+   * every chunk owns its own range of particles and vertices, so workers
+   * never contend. The capacity is fixed: particles emitted while the pool
+   * is full are dropped and counted. Nothing is allocated after
+   * construction.
+   *
+   * <p>The staging block is rewritten by every flush, so the queue must be
+   * submitted before the next one.
+   *
+   * <p>Not thread-safe: a system must be driven by a single thread, which
+   * may be any thread, including one outside the pool.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * sparks.lifetime(1.5f);
+   * sparks.particleSize(0.1f);
+   * sparks.color(0xFF40C0FF);
+   * sparks.emit(x, y, z, vx, vy, vz);
+   * ...
+   * sparks.update(deltaTime);
+   * sparks.flush(queue, camera.view());
+   * queue.submit(backend);
+   * }</pre>
+   *
+   * @see ParticleMode
+   */
+  public final class ParticleSystem {
+
+    /**
+     * Default number of particles from which {@link ParticleMode#AUTO}
+     * switches to a parallel strategy.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 65536;
+
+    /**
+     * Number of vertices of a particle.
+     */
+    public static final int VERTICES_PER_PARTICLE = 4;
+
+    /**
+     * Number of indices of a particle (two triangles).
+     */
+    public static final int INDICES_PER_PARTICLE = 6;
+
+    /**
+     * Vertex layout written by the system.
+     */
+    private static final VertexFormat FORMAT
+      = VertexFormat.POSITION_TEXCOORD_COLOR;
+
+    /**
+     * Size in bytes of the vertices of a particle.
+     */
+    private static final int PARTICLE_STRIDE
+      = ParticleSystem.VERTICES_PER_PARTICLE * ParticleSystem.FORMAT.stride();
+
+    /**
+     * Size in bytes of the indices of a particle.
+     */
+    private static final int PARTICLE_INDEX_STRIDE
+      = ParticleSystem.INDICES_PER_PARTICLE * Integer.BYTES;
+
+    /**
+     * Offset of the texture coordinate inside a vertex.
+     */
+    private static final int TEXCOORD_OFFSET = 12;
+
+    /**
+     * Offset of the packed color inside a vertex.
+     */
+    private static final int COLOR_OFFSET = 20;
+
+    /**
+     * Vertex of every index of a quad, relative to its first vertex.
+     */
+    private static final int[] QUAD_INDICES = {0, 1, 2, 2, 3, 0};
+
+    /**
+     * Number of particles processed by a single fork-join task.
+     */
+    private static final int CHUNK_SIZE = 16384;
+
+    /**
+     * Half of a particle size.
+     */
+    private static final float HALF = 0.5F;
+
+    /**
+     * Shift of the alpha byte in the packed color format.
+     */
+    private static final int ALPHA_SHIFT = 24;
+
+    /**
+     * Mask of the alpha byte once shifted down.
+     */
+    private static final int ALPHA_MASK = 0xFF;
+
+    /**
+     * Mask of the red, green and blue bytes in the packed color format.
+     */
+    private static final int RGB_MASK = 0x00FFFFFF;
+
+    /**
+     * Opaque white in the packed color format.
+     */
+    private static final int WHITE = 0xFFFFFFFF;
+
+    /**
+     * Pool running the parallel strategies.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Number of particles from which {@link ParticleMode#AUTO} goes
+     * parallel.
+     */
+    private final int parallelThreshold;
+
+    /**
+     * Pass written in the sort key of the draw.
+     */
+    private final int pass;
+
+    /**
+     * Horizontal position of every particle.
+     */
+    private final float[] positionX;
+
+    /**
+     * Vertical position of every particle.
+     */
+    private final float[] positionY;
+
+    /**
+     * Depth position of every particle.
+     */
+    private final float[] positionZ;
+
+    /**
+     * Horizontal velocity of every particle.
+     */
+    private final float[] velocityX;
+
+    /**
+     * Vertical velocity of every particle.
+     */
+    private final float[] velocityY;
+
+    /**
+     * Depth velocity of every particle.
+     */
+    private final float[] velocityZ;
+
+    /**
+     * Remaining life in seconds of every particle.
+     */
+    private final float[] lives;
+
+    /**
+     * Inverse of the lifetime of every particle, used for the fade.
+     */
+    private final float[] inverseLifetimes;
+
+    /**
+     * Size of every particle.
+     */
+    private final float[] sizes;
+
+    /**
+     * Packed color of every particle.
+     */
+    private final int[] colors;
+
+    /**
+     * Number of live particles.
+     */
+    private int count;
+
+    /**
+     * Staging block of vertex data.
+     */
+    private long staging;
+
+    /**
+     * Quad index block.
+     */
+    private long indices;
+
+    /**
+     * Gravity acceleration on the x axis.
+     */
+    private float gravityX;
+
+    /**
+     * Gravity acceleration on the y axis.
+     */
+    private float gravityY;
+
+    /**
+     * Gravity acceleration on the z axis.
+     */
+    private float gravityZ;
+
+    /**
+     * Linear drag coefficient, per second.
+     */
+    private float drag;
+
+    /**
+     * Lifetime in seconds of the next particles.
+     */
+    private float lifetime;
+
+    /**
+     * Size of the next particles.
+     */
+    private float particleSize;
+
+    /**
+     * Packed color of the next particles.
+     */
+    private int color;
+
+    /**
+     * Texture region of every quad: u0, v0, u1, v1.
+     */
+    private final float[] region;
+
+    /**
+     * Layer written in the sort key of the draw.
+     */
+    private int layer;
+
+    /**
+     * Shader identifier written in the sort key of the draw.
+     */
+    private int shader;
+
+    /**
+     * Texture identifier written in the sort key of the draw.
+     */
+    private int texture;
+
+    /**
+     * Camera right axis in world space, for the current flush.
+     */
+    private final Vector3f right;
+
+    /**
+     * Camera up axis in world space, for the current flush.
+     */
+    private final Vector3f up;
+
+    /**
+     * Chunk tasks reused between frames.
+     */
+    private final ChunkTask[] tasks;
+
+    /**
+     * Root task forking the chunk tasks.
+     */
+    private final RootTask root;
+
+    /**
+     * Number of chunks of the current parallel call.
+     */
+    private int chunkCount;
+
+    /**
+     * Whether the current parallel call writes vertices instead of
+     * integrating.
+     */
+    private boolean currentWrite;
+
+    /**
+     * Whether the current parallel call uses the Vector API.
+     */
+    private boolean currentVector;
+
+    /**
+     * Elapsed time of the current update.
+     */
+    private float currentDeltaTime;
+
+    /**
+     * Velocity factor of the current update.
+     */
+    private float currentDamping;
+
+    /**
+     * Number of particles that expired in the last update.
+     */
+    private int expired;
+
+    /**
+     * Number of particles dropped because the pool was full since the
+     * last update.
+     */
+    private int dropped;
+
+    /**
+     * Duration in nanoseconds of the last update.
+     */
+    private long elapsedNanos;
+
+    /**
+     * Creates a particle system running parallel strategies on the common
+     * pool.
+     *
+     * @param _capacity the maximum number of live particles
+     * @param _pass the pass written in the sort key of the draw
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public ParticleSystem(
+        final int _capacity,
+        final int _pass) {
+      this(_capacity, _pass, ForkJoinPool.commonPool(),
+        ParticleSystem.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates a particle system.
+     *
+     * @param _capacity the maximum number of live particles
+     * @param _pass the pass written in the sort key of the draw
+     * @param _pool the pool running the parallel strategies
+     * @param _parallelThreshold the number of particles from which
+     *     {@link ParticleMode#AUTO} goes parallel
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public ParticleSystem(
+        final int _capacity,
+        final int _pass,
+        final ForkJoinPool _pool,
+        final int _parallelThreshold) {
+      if (_capacity <= 0) {
+        throw new IllegalArgumentException(
+          "Particle system capacity must be positive: " + _capacity);
+      }
+      this.pool = _pool;
+      this.parallelThreshold = _parallelThreshold;
+      this.pass = _pass;
+      this.positionX = new float[_capacity];
+      this.positionY = new float[_capacity];
+      this.positionZ = new float[_capacity];
+      this.velocityX = new float[_capacity];
+      this.velocityY = new float[_capacity];
+      this.velocityZ = new float[_capacity];
+      this.lives = new float[_capacity];
+      this.inverseLifetimes = new float[_capacity];
+      this.sizes = new float[_capacity];
+      this.colors = new int[_capacity];
+      this.count = 0;
+      this.lifetime = 1.0F;
+      this.particleSize = 1.0F;
+      this.color = ParticleSystem.WHITE;
+      this.region = new float[] {0.0F, 0.0F, 1.0F, 1.0F};
+      this.right = new Vector3f();
+      this.up = new Vector3f();
+      this.tasks = new ChunkTask[
+        ((_capacity - 1) / ParticleSystem.CHUNK_SIZE) + 1];
+      for (int chunk = 0; chunk < this.tasks.length; chunk++) {
+        this.tasks[chunk] = new ChunkTask(chunk);
+      }
+      this.root = new RootTask();
+      this.allocate(_capacity);
+    }
+
+    /**
+     * Sets the gravity applied to every particle.
+     *
+     * @param _x the acceleration on the x axis
+     * @param _y the acceleration on the y axis
+     * @param _z the acceleration on the z axis
+     */
+    public void gravity(
+        final float _x,
+        final float _y,
+        final float _z) {
+      this.gravityX = _x;
+      this.gravityY = _y;
+      this.gravityZ = _z;
+    }
+
+    /**
+     * Sets the linear drag applied to every particle.
+     *
+     * @param _drag the fraction of the velocity lost per second, roughly
+     * @throws IllegalArgumentException if the drag is negative
+     */
+    public void drag(
+        final float _drag) {
+      if (_drag < 0.0F) {
+        throw new IllegalArgumentException(
+          "Particle drag must not be negative: " + _drag);
+      }
+      this.drag = _drag;
+    }
+
+    /**
+     * Sets the lifetime of the next particles.
+     *
+     * @param _lifetime the lifetime in seconds
+     * @throws IllegalArgumentException if the lifetime is not positive
+     */
+    public void lifetime(
+        final float _lifetime) {
+      if (!(_lifetime > 0.0F)) {
+        throw new IllegalArgumentException(
+          "Particle lifetime must be positive: " + _lifetime);
+      }
+      this.lifetime = _lifetime;
+    }
+
+    /**
+     * Sets the size of the next particles.
+     *
+     * @param _size the width and height of the quad
+     */
+    public void particleSize(
+        final float _size) {
+      this.particleSize = _size;
+    }
+
+    /**
+     * Sets the color of the next particles.
+     *
+     * @param _color the color packed as {@code 0xAABBGGRR}; the alpha fades
+     *     to zero over the life of the particle
+     */
+    public void color(
+        final int _color) {
+      this.color = _color;
+    }
+
+    /**
+     * Sets the texture region of every quad.
+     *
+     * @param _u0 the left texture coordinate
+     * @param _v0 the bottom texture coordinate
+     * @param _u1 the right texture coordinate
+     * @param _v1 the top texture coordinate
+     */
+    public void region(
+        final float _u0,
+        final float _v0,
+        final float _u1,
+        final float _v1) {
+      this.region[0] = _u0;
+      this.region[1] = _v0;
+      this.region[2] = _u1;
+      this.region[3] = _v1;
+    }
+
+    /**
+     * Sets the layer of the draw.
+     *
+     * @param _layer the layer (0 to {@link SortKey#MAX_LAYER})
+     */
+    public void layer(
+        final int _layer) {
+      this.layer = _layer;
+    }
+
+    /**
+     * Sets the shader of the draw.
+     *
+     * @param _shader the shader identifier (0 to {@link SortKey#MAX_SHADER})
+     */
+    public void shader(
+        final int _shader) {
+      this.shader = _shader;
+    }
+
+    /**
+     * Sets the texture of the draw.
+     *
+     * @param _texture the texture identifier
+     *     (0 to {@link SortKey#MAX_MATERIAL})
+     */
+    public void texture(
+        final int _texture) {
+      this.texture = _texture;
+    }
+
+    /**
+     * Emits a particle with the current lifetime, size and color.
+     *
+     * @param _x the horizontal position
+     * @param _y the vertical position
+     * @param _z the depth position
+     * @param _velocityX the horizontal velocity
+     * @param _velocityY the vertical velocity
+     * @param _velocityZ the depth velocity
+     * @return {@code true} if the particle was emitted, {@code false} if the
+     *     pool was full and it was dropped
+     */
+    public boolean emit(
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _velocityX,
+        final float _velocityY,
+        final float _velocityZ) {
+      if (this.count == this.lives.length) {
+        this.dropped++;
+        return false;
+      }
+      final int particle = this.count++;
+      this.positionX[particle] = _x;
+      this.positionY[particle] = _y;
+      this.positionZ[particle] = _z;
+      this.velocityX[particle] = _velocityX;
+      this.velocityY[particle] = _velocityY;
+      this.velocityZ[particle] = _velocityZ;
+      this.lives[particle] = this.lifetime;
+      this.inverseLifetimes[particle] = 1.0F / this.lifetime;
+      this.sizes[particle] = this.particleSize;
+      this.colors[particle] = this.color;
+      return true;
+    }
+
+    /**
+     * Updates the particles with {@link ParticleMode#AUTO}.
+     *
+     * @param _deltaTime the elapsed time in seconds
+     */
+    public void update(
+        final float _deltaTime) {
+      this.update(_deltaTime, ParticleMode.AUTO);
+    }
+
+    /**
+     * Updates the particles with the given strategy and removes the
+     * expired ones.
+     *
+     * @param _deltaTime the elapsed time in seconds
+     * @param _mode the strategy
+     */
+    public void update(
+        final float _deltaTime,
+        final ParticleMode _mode) {
+      final long start = System.nanoTime();
+      final boolean vector = VectorSupport.available()
+        && ((_mode == ParticleMode.VECTOR)
+         || (_mode == ParticleMode.PARALLEL_VECTOR)
+         || (_mode == ParticleMode.AUTO));
+      final float damping = 1.0F / (1.0F + (this.drag * _deltaTime));
+
+      if (this.parallel(_mode)) {
+        this.currentDeltaTime = _deltaTime;
+        this.currentDamping = damping;
+        this.currentVector = vector;
+        this.runParallel(false);
+      } else {
+        this.integrateRange(0, this.count, _deltaTime, damping, vector);
+      }
+      this.expired = this.compact();
+      this.dropped = 0;
+      this.elapsedNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Writes the quads of the live particles with
+     * {@link ParticleMode#AUTO} and pushes their draw command.
+     *
+     * @param _queue the queue receiving the draw command
+     * @param _view the camera view matrix the quads face
+     */
+    public void flush(
+        final RenderQueue _queue,
+        final Matrix4fc _view) {
+      this.flush(_queue, _view, ParticleMode.AUTO);
+    }
+
+    /**
+     * Writes the quads of the live particles with the given strategy and
+     * pushes their draw command.
+     *
+     * <p>The vertex writing is scalar in every strategy; only the split
+     * over cores depends on it.
+     *
+     * @param _queue the queue receiving the draw command
+     * @param _view the camera view matrix the quads face
+     * @param _mode the strategy
+     */
+    public void flush(
+        final RenderQueue _queue,
+        final Matrix4fc _view,
+        final ParticleMode _mode) {
+      if (this.count == 0) {
+        return;
+      }
+      _view.positiveX(this.right);
+      _view.positiveY(this.up);
+      if (this.parallel(_mode)) {
+        this.runParallel(true);
+      } else {
+        this.writeRange(0, this.count);
+      }
+
+      final long key = SortKey.encode(
+        this.layer, this.pass, this.shader, this.texture, 0);
+      final DrawCommand command = _queue.push(key);
+      command.vertexAddress(this.staging);
+      command.vertexCount(this.count * ParticleSystem.VERTICES_PER_PARTICLE);
+      command.indexAddress(this.indices);
+      command.indexCount(this.count * ParticleSystem.INDICES_PER_PARTICLE);
+      command.vertexFormat(ParticleSystem.FORMAT);
+      command.userData(SortKey.material(key));
+    }
+
+    /**
+     * Removes every particle.
+     */
+    public void clear() {
+      this.count = 0;
+    }
+
+    /**
+     * Gets the number of live particles.
+     *
+     * @return the particle count
+     */
+    public int size() {
+      return this.count;
+    }
+
+    /**
+     * Gets the maximum number of live particles.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+      return this.lives.length;
+    }
+
+    /**
+     * Gets the number of particles that expired in the last update.
+     *
+     * @return the expired particle count
+     */
+    public int expired() {
+      return this.expired;
+    }
+
+    /**
+     * Gets the number of particles dropped because the pool was full since
+     * the last update.
+     *
+     * @return the dropped particle count
+     */
+    public int dropped() {
+      return this.dropped;
+    }
+
+    /**
+     * Gets the duration of the last update.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long elapsedNanos() {
+      return this.elapsedNanos;
+    }
+
+    /**
+     * Releases the off-heap staging and index blocks.
+     *
+     * <p>The system must not be used after this call.
+     */
+    public void close() {
+      this.count = 0;
+      MemoryUtil.nmemFree(this.staging);
+      MemoryUtil.nmemFree(this.indices);
+      this.staging = MemoryUtil.NULL;
+      this.indices = MemoryUtil.NULL;
+    }
+
+    /**
+     * Gets the horizontal positions, for the vector kernel.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    float[] positionX() {
+      return this.positionX;
+    }
+
+    /**
+     * Gets the vertical positions, for the vector kernel.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    float[] positionY() {
+      return this.positionY;
+    }
+
+    /**
+     * Gets the depth positions, for the vector kernel.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    float[] positionZ() {
+      return this.positionZ;
+    }
+
+    /**
+     * Gets the horizontal velocities, for the vector kernel.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    float[] velocityX() {
+      return this.velocityX;
+    }
+
+    /**
+     * Gets the vertical velocities, for the vector kernel.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    float[] velocityY() {
+      return this.velocityY;
+    }
+
+    /**
+     * Gets the depth velocities, for the vector kernel.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    float[] velocityZ() {
+      return this.velocityZ;
+    }
+
+    /**
+     * Gets the remaining lives, for the vector kernel.
+     *
+     * @return the array, valid up to {@link #size()}
+     */
+    float[] lives() {
+      return this.lives;
+    }
+
+    /**
+     * Gets the gravity acceleration on the x axis.
+     *
+     * @return the acceleration
+     */
+    float gravityX() {
+      return this.gravityX;
+    }
+
+    /**
+     * Gets the gravity acceleration on the y axis.
+     *
+     * @return the acceleration
+     */
+    float gravityY() {
+      return this.gravityY;
+    }
+
+    /**
+     * Gets the gravity acceleration on the z axis.
+     *
+     * @return the acceleration
+     */
+    float gravityZ() {
+      return this.gravityZ;
+    }
+
+    /**
+     * Checks whether a strategy runs on the pool for the current count.
+     *
+     * @param _mode the strategy
+     * @return {@code true} if the work is split into chunk tasks
+     */
+    private boolean parallel(
+        final ParticleMode _mode) {
+      final boolean parallel = (_mode == ParticleMode.PARALLEL)
+        || (_mode == ParticleMode.PARALLEL_VECTOR)
+        || ((_mode == ParticleMode.AUTO)
+         && (this.count >= this.parallelThreshold));
+      return parallel && (this.count > ParticleSystem.CHUNK_SIZE);
+    }
+
+    /**
+     * Integrates a range of particles on the calling thread.
+     *
+     * @param _from the first particle to integrate
+     * @param _to one past the last particle to integrate
+     * @param _deltaTime the elapsed time in seconds
+     * @param _damping the factor applied to the velocity for the drag
+     * @param _vector whether to use the Vector API kernel
+     */
+    private void integrateRange(
+        final int _from,
+        final int _to,
+        final float _deltaTime,
+        final float _damping,
+        final boolean _vector) {
+      if (_vector) {
+        ParticleSystemVector.integrate(
+          this, _from, _to, _deltaTime, _damping);
+        return;
+      }
+      final float accelerationX = this.gravityX * _deltaTime;
+      final float accelerationY = this.gravityY * _deltaTime;
+      final float accelerationZ = this.gravityZ * _deltaTime;
+      for (int index = _from; index < _to; index++) {
+        final float vx = (this.velocityX[index] + accelerationX) * _damping;
+        final float vy = (this.velocityY[index] + accelerationY) * _damping;
+        final float vz = (this.velocityZ[index] + accelerationZ) * _damping;
+        this.velocityX[index] = vx;
+        this.velocityY[index] = vy;
+        this.velocityZ[index] = vz;
+        this.positionX[index] += vx * _deltaTime;
+        this.positionY[index] += vy * _deltaTime;
+        this.positionZ[index] += vz * _deltaTime;
+        this.lives[index] -= _deltaTime;
+      }
+    }
+
+    /**
+     * Removes the expired particles by moving the last live particle into
+     * their slot.
+     *
+     * @return the number of particles removed
+     */
+    private int compact() {
+      final int before = this.count;
+      int index = 0;
+      while (index < this.count) {
+        if (this.lives[index] > 0.0F) {
+          index++;
+        } else {
+          this.count--;
+          this.move(this.count, index);
+        }
+      }
+      return before - this.count;
+    }
+
+    /**
+     * Copies a particle into another slot.
+     *
+     * @param _from the slot of the particle
+     * @param _to the slot receiving it
+     */
+    private void move(
+        final int _from,
+        final int _to) {
+      this.positionX[_to] = this.positionX[_from];
+      this.positionY[_to] = this.positionY[_from];
+      this.positionZ[_to] = this.positionZ[_from];
+      this.velocityX[_to] = this.velocityX[_from];
+      this.velocityY[_to] = this.velocityY[_from];
+      this.velocityZ[_to] = this.velocityZ[_from];
+      this.lives[_to] = this.lives[_from];
+      this.inverseLifetimes[_to] = this.inverseLifetimes[_from];
+      this.sizes[_to] = this.sizes[_from];
+      this.colors[_to] = this.colors[_from];
+    }
+
+    /**
+     * Writes the quads of a range of particles to the staging block.
+     *
+     * @param _from the first particle to write
+     * @param _to one past the last particle to write
+     */
+    private void writeRange(
+        final int _from,
+        final int _to) {
+      final float u0 = this.region[0];
+      final float v0 = this.region[1];
+      final float u1 = this.region[2];
+      final float v1 = this.region[3];
+      final int stride = ParticleSystem.FORMAT.stride();
+      for (int index = _from; index < _to; index++) {
+        final float half = this.sizes[index] * ParticleSystem.HALF;
+        final float rightX = this.right.x * half;
+        final float rightY = this.right.y * half;
+        final float rightZ = this.right.z * half;
+        final float upX = this.up.x * half;
+        final float upY = this.up.y * half;
+        final float upZ = this.up.z * half;
+        final float x = this.positionX[index];
+        final float y = this.positionY[index];
+        final float z = this.positionZ[index];
+
+        /* Alpha scaled by the remaining fraction of the life. */
+        final int packed = this.colors[index];
+        final float fade = Math.min(
+          this.lives[index] * this.inverseLifetimes[index], 1.0F);
+        final int alpha = (int) (((packed >>> ParticleSystem.ALPHA_SHIFT)
+          & ParticleSystem.ALPHA_MASK) * fade);
+        final int rgba = (packed & ParticleSystem.RGB_MASK)
+          | (alpha << ParticleSystem.ALPHA_SHIFT);
+
+        final long address = this.staging
+          + (((long) index) * ParticleSystem.PARTICLE_STRIDE);
+        ParticleSystem.writeVertex(address,
+          x - rightX - upX, y - rightY - upY, z - rightZ - upZ,
+          u0, v0, rgba);
+        ParticleSystem.writeVertex(address + stride,
+          x + rightX - upX, y + rightY - upY, z + rightZ - upZ,
+          u1, v0, rgba);
+        ParticleSystem.writeVertex(address + (2L * stride),
+          x + rightX + upX, y + rightY + upY, z + rightZ + upZ,
+          u1, v1, rgba);
+        ParticleSystem.writeVertex(address + (3L * stride),
+          x - rightX + upX, y - rightY + upY, z - rightZ + upZ,
+          u0, v1, rgba);
+      }
+    }
+
+    /**
+     * Writes a single vertex.
+     *
+     * @param _address the address of the vertex
+     * @param _x the horizontal position
+     * @param _y the vertical position
+     * @param _z the depth position
+     * @param _u the horizontal texture coordinate
+     * @param _v the vertical texture coordinate
+     * @param _color the packed color
+     */
+    private static void writeVertex(
+        final long _address,
+        final float _x,
+        final float _y,
+        final float _z,
+        final float _u,
+        final float _v,
+        final int _color) {
+      MemoryUtil.memPutFloat(_address, _x);
+      MemoryUtil.memPutFloat(_address + Float.BYTES, _y);
+      MemoryUtil.memPutFloat(_address + (2L * Float.BYTES), _z);
+      MemoryUtil.memPutFloat(_address + ParticleSystem.TEXCOORD_OFFSET, _u);
+      MemoryUtil.memPutFloat(
+        _address + ParticleSystem.TEXCOORD_OFFSET + Float.BYTES, _v);
+      MemoryUtil.memPutInt(_address + ParticleSystem.COLOR_OFFSET, _color);
+    }
+
+    /**
+     * Runs one chunk task per chunk of live particles on the pool.
+     *
+     * @param _write whether the tasks write vertices instead of
+     *     integrating
+     */
+    private void runParallel(
+        final boolean _write) {
+      this.chunkCount = ((this.count - 1) / ParticleSystem.CHUNK_SIZE) + 1;
+      this.currentWrite = _write;
+      this.root.reinitialize();
+      this.pool.invoke(this.root);
+    }
+
+    /**
+     * Allocates the staging block and builds the quad index block.
+     *
+     * @param _capacity the number of particles
+     */
+    private void allocate(
+        final int _capacity) {
+      this.staging = MemoryUtil.nmemAlloc(
+        ((long) _capacity) * ParticleSystem.PARTICLE_STRIDE);
+      this.indices = MemoryUtil.nmemAlloc(
+        ((long) _capacity) * ParticleSystem.PARTICLE_INDEX_STRIDE);
+      if ((this.staging == MemoryUtil.NULL)
+          || (this.indices == MemoryUtil.NULL)) {
+        MemoryUtil.nmemFree(this.staging);
+        MemoryUtil.nmemFree(this.indices);
+        throw new OutOfMemoryError(
+          "Unable to allocate the particle system staging memory.");
+      }
+
+      /* Two triangles per particle sharing the diagonal. */
+      for (int particle = 0; particle < _capacity; particle++) {
+        final long address = this.indices
+          + (((long) particle) * ParticleSystem.PARTICLE_INDEX_STRIDE);
+        final int base = particle * ParticleSystem.VERTICES_PER_PARTICLE;
+        for (int index = 0; index < ParticleSystem.INDICES_PER_PARTICLE;
+            index++) {
+          MemoryUtil.memPutInt(
+            address + (((long) index) * Integer.BYTES),
+            base + ParticleSystem.QUAD_INDICES[index]);
+        }
+      }
+    }
+
+    /**
+     * Task forking every chunk task of the current call.
+     */
+    private final class RootTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        final ParticleSystem system = ParticleSystem.this;
+        for (int chunk = 1; chunk < system.chunkCount; chunk++) {
+          system.tasks[chunk].reinitialize();
+          system.tasks[chunk].fork();
+        }
+        system.tasks[0].reinitialize();
+        system.tasks[0].compute();
+        for (int chunk = 1; chunk < system.chunkCount; chunk++) {
+          system.tasks[chunk].join();
+        }
+      }
+
+    }
+
+    /**
+     * Task integrating or writing one chunk of particles.
+     */
+    private final class ChunkTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * Index of the chunk.
+       */
+      private final int chunk;
+
+      /**
+       * Creates the task of a chunk.
+       *
+       * @param _chunk the index of the chunk
+       */
+      ChunkTask(
+          final int _chunk) {
+        this.chunk = _chunk;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        final ParticleSystem system = ParticleSystem.this;
+        final int from = this.chunk * ParticleSystem.CHUNK_SIZE;
+        final int to
+          = Math.min(from + ParticleSystem.CHUNK_SIZE, system.count);
+        if (system.currentWrite) {
+          system.writeRange(from, to);
+        } else {
+          system.integrateRange(from, to, system.currentDeltaTime,
+            system.currentDamping, system.currentVector);
+        }
+      }
+
+    }
+
+  }
@@ -0,0 +1,1055 @@
+package es.noa.rad.game.engine.scene;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+import org.joml.Vector3f;
+
+import es.noa.rad.game.engine.math.BatchMath;
+import es.noa.rad.game.engine.memory.HandlePool;
+import es.noa.rad.game.engine.render.culling.BoundingBoxes;
+import es.noa.rad.game.engine.util.IntList;
+
+  /**
+   * Transform hierarchy with dirty tracking and parallel world updates.
+   *
+   * <p>Memory layout:
+   * <ul>
+   *   <li>Nodes are identified by generational handles from a
+   *       {@link HandlePool}; the hierarchy links (parent, first child,
+   *       siblings) are kept per slot.</li>
+   *   <li>Transforms live in structure-of-arrays {@code float[]} blocks
+   *       (translations, rotations, scales and world matrices) in
+   *       breadth-first order, so every depth level is one contiguous
+   *       range, parents always precede their children and siblings are
+   *       adjacent.</li>
+   *   <li>World matrices are affine, column-major, sixteen floats per
+   *       node, the layout of {@link Matrix4f#set(float[], int)}.</li>
+   * </ul>
+   *
+   * <p>Changing a local transform only raises the dirty flag of its node.
+   * {@link #update()} walks the levels top-down from the first dirty node
+   * and recomputes a world matrix only when the node or its parent is
+   * dirty, so clean subtrees cost a flag test. Each level is split into
+   * ranges computed as fork-join tasks; a level only reads the previous
+   * one, so the tasks need no synchronization. A world matrix is computed
+   * as a fused affine product straight from the translation, rotation and
+   * scale, which beats building the local matrix and handing a general
+   * product to {@link BatchMath}.
+   *
+   * <p>World bounds of the nodes are computed from their local bounds in
+   * one {@link BatchMath} call through
+   * {@link #worldBounds(BoundingBoxes, BoundingBoxes)}.
+   *
+   * <p>Structural changes (creating, destroying and re-parenting nodes)
+   * reorder the blocks on the next {@link #update()}. World matrices are
+   * therefore up to date only after an update.
+   *
+   * <p>Not thread-safe: the graph must be modified and updated from one
+   * thread.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * SceneGraph scene = new SceneGraph(1024);
+   * int body = scene.create(HandlePool.INVALID_HANDLE);
+   * int arm = scene.create(body);
+   * scene.translation(arm, 0.5F, 1.0F, 0.0F);
+   * scene.update();
+   * scene.world(arm, matrix);
+   * }</pre>
+   */
+  public final class SceneGraph {
+
+    /**
+     * Number of floats of a translation or a scale.
+     */
+    private static final int VECTOR_STRIDE = 3;
+
+    /**
+     * Number of floats of a rotation quaternion.
+     */
+    private static final int ROTATION_STRIDE = 4;
+
+    /**
+     * Number of floats of a world matrix.
+     */
+    private static final int MATRIX_STRIDE = 16;
+
+    /**
+     * Offset of the w component of a quaternion.
+     */
+    private static final int W = 3;
+
+    /**
+     * Number of nodes from which a level is split into parallel tasks.
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    /**
+     * Number of depth levels the graph can hold before growing.
+     */
+    private static final int INITIAL_LEVELS = 16;
+
+    /**
+     * Handles of the nodes, indexed by slot.
+     */
+    private final HandlePool handles;
+
+    /**
+     * Parent slot of every slot, -1 for roots.
+     */
+    private int[] parents;
+
+    /**
+     * First child slot of every slot, -1 for leaves.
+     */
+    private int[] firstChildren;
+
+    /**
+     * Next sibling slot of every slot, -1 for the last sibling.
+     */
+    private int[] nextSiblings;
+
+    /**
+     * Previous sibling slot of every slot, -1 for the first sibling.
+     */
+    private int[] previousSiblings;
+
+    /**
+     * Block position of every slot.
+     */
+    private int[] positions;
+
+    /**
+     * First root slot, -1 for an empty graph.
+     */
+    private int firstRoot;
+
+    /**
+     * Local translations, three floats per position.
+     */
+    private float[] translations;
+
+    /**
+     * Local rotations, four floats (x, y, z, w) per position.
+     */
+    private float[] rotations;
+
+    /**
+     * Local scales, three floats per position.
+     */
+    private float[] scales;
+
+    /**
+     * World matrices, sixteen floats per position.
+     */
+    private float[] worlds;
+
+    /**
+     * Block position of the parent of every position, -1 for roots.
+     */
+    private int[] parentPositions;
+
+    /**
+     * Slot stored at every position, -1 for destroyed nodes.
+     */
+    private int[] slots;
+
+    /**
+     * Whether the world matrix of every position must be recomputed.
+     */
+    private boolean[] dirty;
+
+    /**
+     * Spare translation block the next reorder writes into.
+     */
+    private float[] spareTranslations;
+
+    /**
+     * Spare rotation block the next reorder writes into.
+     */
+    private float[] spareRotations;
+
+    /**
+     * Spare scale block the next reorder writes into.
+     */
+    private float[] spareScales;
+
+    /**
+     * Spare world block the next reorder writes into.
+     */
+    private float[] spareWorlds;
+
+    /**
+     * Spare dirty flags the next reorder writes into.
+     */
+    private boolean[] spareDirty;
+
+    /**
+     * Number of positions in use, destroyed nodes included until the next
+     * reorder.
+     */
+    private int positionCount;
+
+    /**
+     * First position of every level, followed by the position count.
+     */
+    private final IntList levels;
+
+    /**
+     * Slots in breadth-first order, filled by the reorder.
+     */
+    private final IntList order;
+
+    /**
+     * Whether the blocks must be reordered before the next update.
+     */
+    private boolean layoutDirty;
+
+    /**
+     * Lowest dirty position, {@link Integer#MAX_VALUE} if none.
+     */
+    private int firstDirty;
+
+    /**
+     * Number of world matrices recomputed by the running update.
+     */
+    private final AtomicInteger updatedCounter;
+
+    /**
+     * Number of world matrices recomputed by the last update.
+     */
+    private int updatedCount;
+
+    /**
+     * Duration of the last update in nanoseconds.
+     */
+    private long updateNanos;
+
+    /**
+     * Creates an empty graph.
+     *
+     * @param _capacity the number of nodes the graph can hold before
+     *     growing
+     */
+    public SceneGraph(
+        final int _capacity) {
+      final int capacity = Math.max(1, _capacity);
+      this.handles = new HandlePool(capacity);
+      this.parents = new int[capacity];
+      this.firstChildren = new int[capacity];
+      this.nextSiblings = new int[capacity];
+      this.previousSiblings = new int[capacity];
+      this.positions = new int[capacity];
+      this.firstRoot = -1;
+      this.allocateBlocks(capacity);
+      this.positionCount = 0;
+      this.levels = new IntList(SceneGraph.INITIAL_LEVELS);
+      this.order = new IntList(capacity);
+      this.layoutDirty = false;
+      this.firstDirty = Integer.MAX_VALUE;
+      this.updatedCounter = new AtomicInteger();
+    }
+
+    /**
+     * Creates a node with an identity local transform.
+     *
+     * @param _parent the parent handle, {@link HandlePool#INVALID_HANDLE}
+     *     for a root
+     * @return the handle of the new node
+     * @throws IllegalArgumentException if the parent handle is not live
+     */
+    public int create(
+        final int _parent) {
+      final int parentSlot = this.parentSlot(_parent);
+      final int handle = this.handles.allocate();
+      final int slot = this.handles.slot(handle);
+      if (this.handles.capacity() > this.parents.length) {
+        this.growSlots(this.handles.capacity());
+      }
+      if (this.positionCount == this.slots.length) {
+        this.growBlocks(this.positionCount * 2);
+      }
+      this.firstChildren[slot] = -1;
+      this.link(slot, parentSlot);
+
+      final int position = this.positionCount++;
+      this.positions[slot] = position;
+      this.slots[position] = slot;
+      this.parentPositions[position] = -1;
+      final int vector = position * SceneGraph.VECTOR_STRIDE;
+      final int rotation = position * SceneGraph.ROTATION_STRIDE;
+      Arrays.fill(this.translations, vector,
+        vector + SceneGraph.VECTOR_STRIDE, 0.0F);
+      Arrays.fill(this.rotations, rotation,
+        rotation + SceneGraph.ROTATION_STRIDE, 0.0F);
+      this.rotations[rotation + SceneGraph.W] = 1.0F;
+      Arrays.fill(this.scales, vector,
+        vector + SceneGraph.VECTOR_STRIDE, 1.0F);
+      this.dirty[position] = true;
+      this.firstDirty = Math.min(this.firstDirty, position);
+      this.layoutDirty = true;
+      return handle;
+    }
+
+    /**
+     * Destroys a node and its whole subtree.
+     *
+     * @param _node the node handle
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void destroy(
+        final int _node) {
+      final int root = this.handles.slot(_node);
+      this.unlink(root);
+      /* Depth-first walk releasing every node of the subtree. */
+      int slot = root;
+      while (slot >= 0) {
+        final int child = this.firstChildren[slot];
+        if (child >= 0) {
+          this.firstChildren[slot] = this.nextSiblings[child];
+          slot = child;
+        } else {
+          final int parent = (slot == root) ? -1 : this.parents[slot];
+          this.slots[this.positions[slot]] = -1;
+          this.handles.release(this.handles.handle(slot));
+          slot = parent;
+        }
+      }
+      this.layoutDirty = true;
+    }
+
+    /**
+     * Moves a node, with its subtree, under another parent. The local
+     * transform is kept, so the world transform changes.
+     *
+     * @param _node the node handle
+     * @param _parent the new parent handle,
+     *     {@link HandlePool#INVALID_HANDLE} to make the node a root
+     * @throws IllegalArgumentException if a handle is not live or the
+     *     parent belongs to the subtree of the node
+     */
+    public void parent(
+        final int _node,
+        final int _parent) {
+      final int slot = this.handles.slot(_node);
+      final int parentSlot = this.parentSlot(_parent);
+      for (int ancestor = parentSlot; ancestor >= 0;
+          ancestor = this.parents[ancestor]) {
+        if (ancestor == slot) {
+          throw new IllegalArgumentException(
+            "Node " + _node + " cannot be parented to its own subtree.");
+        }
+      }
+      this.unlink(slot);
+      this.link(slot, parentSlot);
+      this.markDirty(slot);
+      this.layoutDirty = true;
+    }
+
+    /**
+     * Gets the parent of a node.
+     *
+     * @param _node the node handle
+     * @return the parent handle, {@link HandlePool#INVALID_HANDLE} for a
+     *     root
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int parent(
+        final int _node) {
+      final int parent = this.parents[this.handles.slot(_node)];
+      if (parent < 0) {
+        return HandlePool.INVALID_HANDLE;
+      }
+      return this.handles.handle(parent);
+    }
+
+    /**
+     * Checks whether a node handle is live.
+     *
+     * @param _node the node handle
+     * @return {@code true} if the node exists
+     */
+    public boolean isValid(
+        final int _node) {
+      return this.handles.isValid(_node);
+    }
+
+    /**
+     * Sets the local translation of a node.
+     *
+     * @param _node the node handle
+     * @param _x the x translation
+     * @param _y the y translation
+     * @param _z the z translation
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void translation(
+        final int _node,
+        final float _x,
+        final float _y,
+        final float _z) {
+      final int slot = this.handles.slot(_node);
+      final int offset = this.positions[slot] * SceneGraph.VECTOR_STRIDE;
+      this.translations[offset] = _x;
+      this.translations[offset + 1] = _y;
+      this.translations[offset + 2] = _z;
+      this.markDirty(slot);
+    }
+
+    /**
+     * Gets the local translation of a node.
+     *
+     * @param _node the node handle
+     * @param _destination the vector receiving the translation
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Vector3f translation(
+        final int _node,
+        final Vector3f _destination) {
+      final int offset = this.positions[this.handles.slot(_node)]
+        * SceneGraph.VECTOR_STRIDE;
+      return _destination.set(this.translations[offset],
+        this.translations[offset + 1], this.translations[offset + 2]);
+    }
+
+    /**
+     * Sets the local rotation of a node.
+     *
+     * @param _node the node handle
+     * @param _rotation the rotation, expected to be normalized
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void rotation(
+        final int _node,
+        final Quaternionfc _rotation) {
+      final int slot = this.handles.slot(_node);
+      final int offset = this.positions[slot] * SceneGraph.ROTATION_STRIDE;
+      this.rotations[offset] = _rotation.x();
+      this.rotations[offset + 1] = _rotation.y();
+      this.rotations[offset + 2] = _rotation.z();
+      this.rotations[offset + SceneGraph.W] = _rotation.w();
+      this.markDirty(slot);
+    }
+
+    /**
+     * Gets the local rotation of a node.
+     *
+     * @param _node the node handle
+     * @param _destination the quaternion receiving the rotation
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Quaternionf rotation(
+        final int _node,
+        final Quaternionf _destination) {
+      final int offset = this.positions[this.handles.slot(_node)]
+        * SceneGraph.ROTATION_STRIDE;
+      return _destination.set(this.rotations[offset],
+        this.rotations[offset + 1], this.rotations[offset + 2],
+        this.rotations[offset + SceneGraph.W]);
+    }
+
+    /**
+     * Sets the local scale of a node.
+     *
+     * @param _node the node handle
+     * @param _x the x scale
+     * @param _y the y scale
+     * @param _z the z scale
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public void scale(
+        final int _node,
+        final float _x,
+        final float _y,
+        final float _z) {
+      final int slot = this.handles.slot(_node);
+      final int offset = this.positions[slot] * SceneGraph.VECTOR_STRIDE;
+      this.scales[offset] = _x;
+      this.scales[offset + 1] = _y;
+      this.scales[offset + 2] = _z;
+      this.markDirty(slot);
+    }
+
+    /**
+     * Gets the local scale of a node.
+     *
+     * @param _node the node handle
+     * @param _destination the vector receiving the scale
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Vector3f scale(
+        final int _node,
+        final Vector3f _destination) {
+      final int offset = this.positions[this.handles.slot(_node)]
+        * SceneGraph.VECTOR_STRIDE;
+      return _destination.set(this.scales[offset],
+        this.scales[offset + 1], this.scales[offset + 2]);
+    }
+
+    /**
+     * Gets the world matrix of a node computed by the last update.
+     *
+     * @param _node the node handle
+     * @param _destination the matrix receiving the world transform
+     * @return the destination
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public Matrix4f world(
+        final int _node,
+        final Matrix4f _destination) {
+      return _destination.set(this.worlds,
+        this.positions[this.handles.slot(_node)] * SceneGraph.MATRIX_STRIDE);
+    }
+
+    /**
+     * Gets the slot of a node, the index of its bounds in
+     * {@link #worldBounds(BoundingBoxes, BoundingBoxes)}. Slots are below
+     * {@link #slotCount()} and are reused once their node is destroyed.
+     *
+     * @param _node the node handle
+     * @return the slot
+     * @throws IllegalArgumentException if the handle is not live
+     */
+    public int slot(
+        final int _node) {
+      return this.handles.slot(_node);
+    }
+
+    /**
+     * Gets the number of slots ever used by the graph.
+     *
+     * @return the slot high watermark
+     */
+    public int slotCount() {
+      return this.handles.slotCount();
+    }
+
+    /**
+     * Transforms the local bounds of the nodes by their world matrices.
+     *
+     * <p>Boxes are indexed by node {@link #slot(int)}; the world boxes are
+     * resized to the local ones. Boxes of free slots get meaningless
+     * bounds.
+     *
+     * @param _local the model space bounds of every slot
+     * @param _world the world space bounds of every slot
+     * @throws IndexOutOfBoundsException if there are more boxes than slots
+     */
+    public void worldBounds(
+        final BoundingBoxes _local,
+        final BoundingBoxes _world) {
+      _world.size(_local.size());
+      this.worldBounds(_local, _world, 0, _local.size());
+    }
+
+    /**
+     * Transforms the local bounds of a range of slots by their world
+     * matrices. Disjoint ranges can be transformed by different threads.
+     *
+     * @param _local the model space bounds of every slot
+     * @param _world the world space bounds of every slot
+     * @param _from the first slot
+     * @param _to one past the last slot
+     * @throws IndexOutOfBoundsException if the range is out of the boxes
+     *     or of the slots
+     */
+    public void worldBounds(
+        final BoundingBoxes _local,
+        final BoundingBoxes _world,
+        final int _from,
+        final int _to) {
+      BatchMath.transformBounds(
+        this.worlds, this.positions, _local, _world, _from, _to);
+    }
+
+    /**
+     * Recomputes the world matrices of the dirty subtrees on the common
+     * pool.
+     */
+    public void update() {
+      this.update(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reorders the blocks after structural changes and recomputes the
+     * world matrices of the dirty subtrees.
+     *
+     * @param _pool the pool running the large levels
+     */
+    public void update(
+        final ForkJoinPool _pool) {
+      final long start = System.nanoTime();
+      if (this.layoutDirty) {
+        this.reorder();
+      }
+      this.updatedCounter.set(0);
+      if (this.firstDirty < this.positionCount) {
+        final int[] levelStarts = this.levels.array();
+        final int levelCount = this.levels.size() - 1;
+        for (int level = 0; level < levelCount; level++) {
+          final int to = levelStarts[level + 1];
+          if (to <= this.firstDirty) {
+            continue;
+          }
+          final int from = Math.max(levelStarts[level], this.firstDirty);
+          if (((to - from) >= SceneGraph.PARALLEL_THRESHOLD)
+              && (_pool.getParallelism() > 1)) {
+            _pool.invoke(new LevelTask(from, to));
+          } else {
+            this.updatedCounter.addAndGet(this.computeRange(from, to));
+          }
+        }
+        Arrays.fill(this.dirty, this.firstDirty, this.positionCount, false);
+        this.firstDirty = Integer.MAX_VALUE;
+      }
+      this.updatedCount = this.updatedCounter.get();
+      this.updateNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the number of live nodes.
+     *
+     * @return the node count
+     */
+    public int size() {
+      return this.handles.size();
+    }
+
+    /**
+     * Gets the number of depth levels as of the last update.
+     *
+     * @return the level count
+     */
+    public int levelCount() {
+      return Math.max(0, this.levels.size() - 1);
+    }
+
+    /**
+     * Gets the number of world matrices recomputed by the last update.
+     *
+     * @return the updated node count
+     */
+    public int updatedCount() {
+      return this.updatedCount;
+    }
+
+    /**
+     * Gets the duration of the last update, reorder included.
+     *
+     * @return the update time in nanoseconds
+     */
+    public long updateNanos() {
+      return this.updateNanos;
+    }
+
+    /**
+     * Resolves the slot of a parent handle.
+     *
+     * @param _parent the parent handle, {@link HandlePool#INVALID_HANDLE}
+     *     for none
+     * @return the parent slot, -1 for none
+     */
+    private int parentSlot(
+        final int _parent) {
+      if (_parent == HandlePool.INVALID_HANDLE) {
+        return -1;
+      }
+      return this.handles.slot(_parent);
+    }
+
+    /**
+     * Raises the dirty flag of a node.
+     *
+     * @param _slot the node slot
+     */
+    private void markDirty(
+        final int _slot) {
+      final int position = this.positions[_slot];
+      this.dirty[position] = true;
+      this.firstDirty = Math.min(this.firstDirty, position);
+    }
+
+    /**
+     * Links a node as the first child of a parent.
+     *
+     * @param _slot the node slot
+     * @param _parentSlot the parent slot, -1 for a root
+     */
+    private void link(
+        final int _slot,
+        final int _parentSlot) {
+      final int first = (_parentSlot < 0)
+        ? this.firstRoot : this.firstChildren[_parentSlot];
+      this.parents[_slot] = _parentSlot;
+      this.previousSiblings[_slot] = -1;
+      this.nextSiblings[_slot] = first;
+      if (first >= 0) {
+        this.previousSiblings[first] = _slot;
+      }
+      if (_parentSlot < 0) {
+        this.firstRoot = _slot;
+      } else {
+        this.firstChildren[_parentSlot] = _slot;
+      }
+    }
+
+    /**
+     * Unlinks a node from its parent and siblings.
+     *
+     * @param _slot the node slot
+     */
+    private void unlink(
+        final int _slot) {
+      final int previous = this.previousSiblings[_slot];
+      final int next = this.nextSiblings[_slot];
+      if (next >= 0) {
+        this.previousSiblings[next] = previous;
+      }
+      if (previous >= 0) {
+        this.nextSiblings[previous] = next;
+      } else if (this.parents[_slot] < 0) {
+        this.firstRoot = next;
+      } else {
+        this.firstChildren[this.parents[_slot]] = next;
+      }
+    }
+
+    /**
+     * Rebuilds the breadth-first order of the blocks, dropping destroyed
+     * nodes. Local transforms, world matrices and dirty flags move with
+     * their nodes.
+     */
+    private void reorder() {
+      this.order.clear();
+      this.order.ensureCapacity(this.handles.size());
+      this.levels.clear();
+      for (int root = this.firstRoot; root >= 0;
+          root = this.nextSiblings[root]) {
+        this.order.add(root);
+      }
+      this.levels.add(0);
+      int levelEnd = this.order.size();
+      for (int head = 0; head < this.order.size(); head++) {
+        if (head == levelEnd) {
+          this.levels.add(head);
+          levelEnd = this.order.size();
+        }
+        for (int child = this.firstChildren[this.order.get(head)];
+            child >= 0; child = this.nextSiblings[child]) {
+          this.order.add(child);
+        }
+      }
+      final int count = this.order.size();
+      this.levels.add(count);
+
+      final int[] sortedSlots = this.order.array();
+      for (int position = 0; position < count; position++) {
+        final int slot = sortedSlots[position];
+        final int previous = this.positions[slot];
+        System.arraycopy(this.translations,
+          previous * SceneGraph.VECTOR_STRIDE, this.spareTranslations,
+          position * SceneGraph.VECTOR_STRIDE, SceneGraph.VECTOR_STRIDE);
+        System.arraycopy(this.rotations,
+          previous * SceneGraph.ROTATION_STRIDE, this.spareRotations,
+          position * SceneGraph.ROTATION_STRIDE, SceneGraph.ROTATION_STRIDE);
+        System.arraycopy(this.scales,
+          previous * SceneGraph.VECTOR_STRIDE, this.spareScales,
+          position * SceneGraph.VECTOR_STRIDE, SceneGraph.VECTOR_STRIDE);
+        System.arraycopy(this.worlds,
+          previous * SceneGraph.MATRIX_STRIDE, this.spareWorlds,
+          position * SceneGraph.MATRIX_STRIDE, SceneGraph.MATRIX_STRIDE);
+        this.spareDirty[position] = this.dirty[previous];
+        this.positions[slot] = position;
+      }
+      for (int position = 0; position < count; position++) {
+        final int slot = sortedSlots[position];
+        this.slots[position] = slot;
+        final int parent = this.parents[slot];
+        this.parentPositions[position]
+          = (parent < 0) ? -1 : this.positions[parent];
+      }
+      this.swapBlocks();
+      this.positionCount = count;
+      this.firstDirty = 0;
+      this.layoutDirty = false;
+    }
+
+    /**
+     * Exchanges the transform blocks with the spare ones.
+     */
+    private void swapBlocks() {
+      final float[] translationBlock = this.translations;
+      this.translations = this.spareTranslations;
+      this.spareTranslations = translationBlock;
+      final float[] rotationBlock = this.rotations;
+      this.rotations = this.spareRotations;
+      this.spareRotations = rotationBlock;
+      final float[] scaleBlock = this.scales;
+      this.scales = this.spareScales;
+      this.spareScales = scaleBlock;
+      final float[] worldBlock = this.worlds;
+      this.worlds = this.spareWorlds;
+      this.spareWorlds = worldBlock;
+      final boolean[] dirtyBlock = this.dirty;
+      this.dirty = this.spareDirty;
+      this.spareDirty = dirtyBlock;
+    }
+
+    /**
+     * Recomputes the world matrices of a range of one level whose node or
+     * parent is dirty, raising the dirty flag of the recomputed nodes for
+     * the next level.
+     *
+     * @param _from the first position
+     * @param _to the position after the last one
+     * @return the number of recomputed nodes
+     */
+    private int computeRange(
+        final int _from,
+        final int _to) {
+      final boolean[] flags = this.dirty;
+      final int[] parentBlock = this.parentPositions;
+      int updated = 0;
+      for (int position = _from; position < _to; position++) {
+        final int parent = parentBlock[position];
+        if (flags[position] || ((parent >= 0) && flags[parent])) {
+          this.compute(position, parent);
+          flags[position] = true;
+          updated++;
+        }
+      }
+      return updated;
+    }
+
+    /**
+     * Computes the world matrix of a node as the parent world matrix times
+     * the local translation, rotation and scale.
+     *
+     * @param _position the node position
+     * @param _parent the parent position, -1 for a root
+     */
+    private void compute(
+        final int _position,
+        final int _parent) {
+      final int vector = _position * SceneGraph.VECTOR_STRIDE;
+      final int rotation = _position * SceneGraph.ROTATION_STRIDE;
+      final float qx = this.rotations[rotation];
+      final float qy = this.rotations[rotation + 1];
+      final float qz = this.rotations[rotation + 2];
+      final float qw = this.rotations[rotation + SceneGraph.W];
+      final float sx = this.scales[vector];
+      final float sy = this.scales[vector + 1];
+      final float sz = this.scales[vector + 2];
+      final float xx = qx * qx;
+      final float yy = qy * qy;
+      final float zz = qz * qz;
+      final float xy = qx * qy;
+      final float xz = qx * qz;
+      final float yz = qy * qz;
+      final float xw = qx * qw;
+      final float yw = qy * qw;
+      final float zw = qz * qw;
+      /* Local matrix, lCR is column C, row R. */
+      final float l00 = (1.0F - (2.0F * (yy + zz))) * sx;
+      final float l01 = (2.0F * (xy + zw)) * sx;
+      final float l02 = (2.0F * (xz - yw)) * sx;
+      final float l10 = (2.0F * (xy - zw)) * sy;
+      final float l11 = (1.0F - (2.0F * (xx + zz))) * sy;
+      final float l12 = (2.0F * (yz + xw)) * sy;
+      final float l20 = (2.0F * (xz + yw)) * sz;
+      final float l21 = (2.0F * (yz - xw)) * sz;
+      final float l22 = (1.0F - (2.0F * (xx + yy))) * sz;
+      final float l30 = this.translations[vector];
+      final float l31 = this.translations[vector + 1];
+      final float l32 = this.translations[vector + 2];
+
+      final float[] m = this.worlds;
+      final int w = _position * SceneGraph.MATRIX_STRIDE;
+      if (_parent < 0) {
+        SceneGraph.store(m, w, l00, l01, l02);
+        SceneGraph.store(m, w + SceneGraph.ROTATION_STRIDE, l10, l11, l12);
+        SceneGraph.store(m, w + (2 * SceneGraph.ROTATION_STRIDE),
+          l20, l21, l22);
+        SceneGraph.store(m, w + (SceneGraph.W * SceneGraph.ROTATION_STRIDE),
+          l30, l31, l32);
+        m[w + SceneGraph.MATRIX_STRIDE - 1] = 1.0F;
+        return;
+      }
+      final int p = _parent * SceneGraph.MATRIX_STRIDE;
+      final float p00 = m[p];
+      final float p01 = m[p + 1];
+      final float p02 = m[p + 2];
+      final float p10 = m[p + SceneGraph.ROTATION_STRIDE];
+      final float p11 = m[p + SceneGraph.ROTATION_STRIDE + 1];
+      final float p12 = m[p + SceneGraph.ROTATION_STRIDE + 2];
+      final int column2 = p + (2 * SceneGraph.ROTATION_STRIDE);
+      final float p20 = m[column2];
+      final float p21 = m[column2 + 1];
+      final float p22 = m[column2 + 2];
+      final int column3 = p + (SceneGraph.W * SceneGraph.ROTATION_STRIDE);
+      final float p30 = m[column3];
+      final float p31 = m[column3 + 1];
+      final float p32 = m[column3 + 2];
+      SceneGraph.store(m, w,
+        (p00 * l00) + (p10 * l01) + (p20 * l02),
+        (p01 * l00) + (p11 * l01) + (p21 * l02),
+        (p02 * l00) + (p12 * l01) + (p22 * l02));
+      SceneGraph.store(m, w + SceneGraph.ROTATION_STRIDE,
+        (p00 * l10) + (p10 * l11) + (p20 * l12),
+        (p01 * l10) + (p11 * l11) + (p21 * l12),
+        (p02 * l10) + (p12 * l11) + (p22 * l12));
+      SceneGraph.store(m, w + (2 * SceneGraph.ROTATION_STRIDE),
+        (p00 * l20) + (p10 * l21) + (p20 * l22),
+        (p01 * l20) + (p11 * l21) + (p21 * l22),
+        (p02 * l20) + (p12 * l21) + (p22 * l22));
+      SceneGraph.store(m, w + (SceneGraph.W * SceneGraph.ROTATION_STRIDE),
+        (p00 * l30) + (p10 * l31) + (p20 * l32) + p30,
+        (p01 * l30) + (p11 * l31) + (p21 * l32) + p31,
+        (p02 * l30) + (p12 * l31) + (p22 * l32) + p32);
+      m[w + SceneGraph.MATRIX_STRIDE - 1] = 1.0F;
+    }
+
+    /**
+     * Stores the first three rows of a matrix column; the fourth row of
+     * the first three columns is always zero.
+     *
+     * @param _matrices the matrix block
+     * @param _offset the position of the column in the block
+     * @param _row0 the first row
+     * @param _row1 the second row
+     * @param _row2 the third row
+     */
+    private static void store(
+        final float[] _matrices,
+        final int _offset,
+        final float _row0,
+        final float _row1,
+        final float _row2) {
+      _matrices[_offset] = _row0;
+      _matrices[_offset + 1] = _row1;
+      _matrices[_offset + 2] = _row2;
+    }
+
+    /**
+     * Allocates the transform blocks and their spares.
+     *
+     * @param _capacity the number of positions
+     */
+    private void allocateBlocks(
+        final int _capacity) {
+      this.translations = new float[_capacity * SceneGraph.VECTOR_STRIDE];
+      this.rotations = new float[_capacity * SceneGraph.ROTATION_STRIDE];
+      this.scales = new float[_capacity * SceneGraph.VECTOR_STRIDE];
+      this.worlds = new float[_capacity * SceneGraph.MATRIX_STRIDE];
+      this.parentPositions = new int[_capacity];
+      this.slots = new int[_capacity];
+      this.dirty = new boolean[_capacity];
+      this.spareTranslations = new float[this.translations.length];
+      this.spareRotations = new float[this.rotations.length];
+      this.spareScales = new float[this.scales.length];
+      this.spareWorlds = new float[this.worlds.length];
+      this.spareDirty = new boolean[_capacity];
+    }
+
+    /**
+     * Grows the transform blocks, keeping their contents.
+     *
+     * @param _capacity the new number of positions
+     */
+    private void growBlocks(
+        final int _capacity) {
+      this.translations = Arrays.copyOf(
+        this.translations, _capacity * SceneGraph.VECTOR_STRIDE);
+      this.rotations = Arrays.copyOf(
+        this.rotations, _capacity * SceneGraph.ROTATION_STRIDE);
+      this.scales = Arrays.copyOf(
+        this.scales, _capacity * SceneGraph.VECTOR_STRIDE);
+      this.worlds = Arrays.copyOf(
+        this.worlds, _capacity * SceneGraph.MATRIX_STRIDE);
+      this.parentPositions = Arrays.copyOf(this.parentPositions, _capacity);
+      this.slots = Arrays.copyOf(this.slots, _capacity);
+      this.dirty = Arrays.copyOf(this.dirty, _capacity);
+      this.spareTranslations = new float[this.translations.length];
+      this.spareRotations = new float[this.rotations.length];
+      this.spareScales = new float[this.scales.length];
+      this.spareWorlds = new float[this.worlds.length];
+      this.spareDirty = new boolean[_capacity];
+    }
+
+    /**
+     * Grows the per-slot hierarchy arrays, keeping their contents.
+     *
+     * @param _capacity the new number of slots
+     */
+    private void growSlots(
+        final int _capacity) {
+      this.parents = Arrays.copyOf(this.parents, _capacity);
+      this.firstChildren = Arrays.copyOf(this.firstChildren, _capacity);
+      this.nextSiblings = Arrays.copyOf(this.nextSiblings, _capacity);
+      this.previousSiblings
+        = Arrays.copyOf(this.previousSiblings, _capacity);
+      this.positions = Arrays.copyOf(this.positions, _capacity);
+    }
+
+    /**
+     * Task recomputing a range of one level.
+     */
+    private final class LevelTask
+        extends RecursiveAction {
+
+      /**
+       * Serialization version.
+       */
+      private static final long serialVersionUID = 1L;
+
+      /**
+       * First position of the range.
+       */
+      private final int from;
+
+      /**
+       * Position after the last one of the range.
+       */
+      private final int to;
+
+      /**
+       * Creates the task of a range.
+       *
+       * @param _from the first position
+       * @param _to the position after the last one
+       */
+      LevelTask(
+          final int _from,
+          final int _to) {
+        this.from = _from;
+        this.to = _to;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void compute() {
+        if ((this.to - this.from) <= SceneGraph.PARALLEL_THRESHOLD) {
+          SceneGraph.this.updatedCounter.addAndGet(
+            SceneGraph.this.computeRange(this.from, this.to));
+          return;
+        }
+        final int middle = (this.from + this.to) >>> 1;
+        ForkJoinTask.invokeAll(
+          new LevelTask(this.from, middle), new LevelTask(middle, this.to));
+      }
+
+    }
+
+  }
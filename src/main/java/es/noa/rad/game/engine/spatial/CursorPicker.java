@@ -0,0 +1,135 @@
+package es.noa.rad.game.engine.spatial;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+import org.joml.primitives.Rayf;
+
+import es.noa.rad.game.engine.core.Window;
+import es.noa.rad.game.engine.event.MouseEventHandler;
+
+  /**
+   * Turns the mouse cursor into a world space ray and picks meshes with it.
+   *
+   * <p>The ray is obtained by unprojecting the cursor through the inverse
+   * of the view-projection matrix. Cursor coordinates have their origin at
+   * the top-left corner of the window, as reported by GLFW, and are
+   * flipped to the bottom-left origin expected by the projection.
+   *
+   * <p>Not thread-safe: it owns the scratch vectors of the unprojection.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * CursorPicker picker = new CursorPicker();
+   * RayHit hit = new RayHit();
+   * if (picker.pick(bvh, viewProjection, hit)) {
+   *   select(hit.primitive());
+   * }
+   * }</pre>
+   *
+   * @see MeshBvh
+   */
+  public final class CursorPicker {
+
+    /**
+     * Scratch origin of the unprojected ray.
+     */
+    private final Vector3f origin;
+
+    /**
+     * Scratch direction of the unprojected ray.
+     */
+    private final Vector3f direction;
+
+    /**
+     * Scratch viewport (x, y, width, height).
+     */
+    private final int[] viewport;
+
+    /**
+     * Scratch ray of {@link #pick(MeshBvh, Matrix4fc, RayHit)}.
+     */
+    private final Rayf ray;
+
+    /**
+     * Creates a cursor picker.
+     */
+    public CursorPicker() {
+      super();
+      this.origin = new Vector3f();
+      this.direction = new Vector3f();
+      this.viewport = new int[] {0, 0, 0, 0};
+      this.ray = new Rayf();
+    }
+
+    /**
+     * Computes the world space ray under a window position.
+     *
+     * @param _viewProjection the view-projection matrix
+     * @param _cursorX the horizontal position, from the left edge
+     * @param _cursorY the vertical position, from the top edge
+     * @param _width the window width
+     * @param _height the window height
+     * @param _dest the ray receiving the result
+     * @return the destination ray
+     */
+    public Rayf ray(
+        final Matrix4fc _viewProjection,
+        final float _cursorX,
+        final float _cursorY,
+        final int _width,
+        final int _height,
+        final Rayf _dest) {
+      this.viewport[2] = _width;
+      this.viewport[2 + 1] = _height;
+      _viewProjection.unprojectRay(
+        _cursorX, _height - _cursorY, this.viewport,
+        this.origin, this.direction);
+      this.direction.normalize();
+      _dest.oX = this.origin.x;
+      _dest.oY = this.origin.y;
+      _dest.oZ = this.origin.z;
+      _dest.dX = this.direction.x;
+      _dest.dY = this.direction.y;
+      _dest.dZ = this.direction.z;
+      return _dest;
+    }
+
+    /**
+     * Computes the world space ray under the mouse cursor of the window.
+     *
+     * @param _viewProjection the view-projection matrix
+     * @param _dest the ray receiving the result
+     * @return the destination ray
+     */
+    public Rayf cursorRay(
+        final Matrix4fc _viewProjection,
+        final Rayf _dest) {
+      final MouseEventHandler mouse = MouseEventHandler.get();
+      final Window window = Window.get();
+      return this.ray(
+        _viewProjection,
+        (float) mouse.getCursorPositionX(),
+        (float) mouse.getCursorPositionY(),
+        window.width(),
+        window.height(),
+        _dest
+      );
+    }
+
+    /**
+     * Finds the closest triangle of a mesh under the mouse cursor.
+     *
+     * @param _bvh the hierarchy of the mesh, in world space
+     * @param _viewProjection the view-projection matrix
+     * @param _hit the hit receiving the result
+     * @return {@code true} if a triangle is under the cursor
+     */
+    public boolean pick(
+        final MeshBvh _bvh,
+        final Matrix4fc _viewProjection,
+        final RayHit _hit) {
+      this.cursorRay(_viewProjection, this.ray);
+      return _bvh.intersect(this.ray, Float.POSITIVE_INFINITY, _hit);
+    }
+
+  }
@@ -0,0 +1,931 @@
+package es.noa.rad.game.engine.spatial;
+
+import java.util.Arrays;
+
+import org.joml.FrustumIntersection;
+import org.joml.primitives.AABBf;
+import org.joml.primitives.AABBfc;
+import org.joml.primitives.Rayf;
+
+import es.noa.rad.game.engine.util.IntList;
+
+  /**
+   * Incrementally updated bounding volume hierarchy for moving objects.
+   *
+   * <p>Every object is a leaf (a proxy) storing a fattened copy of its
+   * bounds: moves that stay inside the fat bounds cost a containment test,
+   * and only objects leaving them are removed and reinserted. Insertion
+   * descends towards the sibling with the lowest surface area cost, and
+   * the ancestors of every changed leaf are rebalanced with tree rotations,
+   * so the tree never has to be rebuilt.
+   *
+   * <p>Nodes are pooled in primitive arrays (six floats of bounds and four
+   * ints of links per node) with an embedded free list, so proxies are
+   * plain node indices and steady-state updates do not allocate.
+   *
+   * <p>Not thread-safe: queries share the traversal stack of the tree.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * int proxy = tree.createProxy(bounds, entity);
+   * ...
+   * tree.moveProxy(proxy, newBounds);
+   * tree.query(frustum, visible);
+   * }</pre>
+   *
+   * @see MeshBvh
+   */
+  public final class DynamicAabbTree {
+
+    /**
+     * Value of a missing node.
+     */
+    public static final int NULL_NODE = -1;
+
+    /**
+     * Default distance added to every side of the proxy bounds.
+     */
+    public static final float DEFAULT_MARGIN = 0.1F;
+
+    /**
+     * Default initial number of nodes.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * Number of floats of a bounding box.
+     */
+    private static final int BOUNDS_STRIDE = 6;
+
+    /**
+     * Offset of the maximum corner inside a bounding box.
+     */
+    private static final int MAX_OFFSET = 3;
+
+    /**
+     * Initial depth of the traversal stack.
+     */
+    private static final int INITIAL_STACK = 64;
+
+    /**
+     * Distance added to every side of the proxy bounds.
+     */
+    private final float margin;
+
+    /**
+     * Scratch hit of the ray queries collecting every proxy.
+     */
+    private final RayHit scratchHit;
+
+    /**
+     * Bounds of every node, fattened for leaves.
+     */
+    private float[] bounds;
+
+    /**
+     * Parent of every node, or the next free node for free nodes.
+     */
+    private int[] parents;
+
+    /**
+     * First child of every node, {@link #NULL_NODE} for leaves.
+     */
+    private int[] lefts;
+
+    /**
+     * Second child of every node, {@link #NULL_NODE} for leaves.
+     */
+    private int[] rights;
+
+    /**
+     * Height of every node: zero for leaves, -1 for free nodes.
+     */
+    private int[] heights;
+
+    /**
+     * User data of every leaf.
+     */
+    private int[] userData;
+
+    /**
+     * Traversal stack of the queries.
+     */
+    private int[] stack;
+
+    /**
+     * Root node, or {@link #NULL_NODE} for an empty tree.
+     */
+    private int root;
+
+    /**
+     * First free node, or {@link #NULL_NODE}.
+     */
+    private int freeList;
+
+    /**
+     * Number of nodes ever handed out, free or not.
+     */
+    private int nodeCount;
+
+    /**
+     * Number of live proxies.
+     */
+    private int proxyCount;
+
+    /**
+     * Number of proxies reinserted since the last
+     * {@link #resetStatistics()}.
+     */
+    private int reinsertions;
+
+    /**
+     * Creates a tree with the default margin and capacity.
+     */
+    public DynamicAabbTree() {
+      this(DynamicAabbTree.DEFAULT_MARGIN, DynamicAabbTree.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a tree.
+     *
+     * @param _margin distance added to every side of the proxy bounds
+     * @param _capacity initial number of nodes
+     * @throws IllegalArgumentException if the margin is negative or the
+     *     capacity is not positive
+     */
+    public DynamicAabbTree(
+        final float _margin,
+        final int _capacity) {
+      if (!(_margin >= 0.0F)) {
+        throw new IllegalArgumentException(
+          "Margin must not be negative: " + _margin);
+      }
+      if (_capacity <= 0) {
+        throw new IllegalArgumentException(
+          "Capacity must be positive: " + _capacity);
+      }
+      this.margin = _margin;
+      this.scratchHit = new RayHit();
+      this.bounds = new float[_capacity * DynamicAabbTree.BOUNDS_STRIDE];
+      this.parents = new int[_capacity];
+      this.lefts = new int[_capacity];
+      this.rights = new int[_capacity];
+      this.heights = new int[_capacity];
+      this.userData = new int[_capacity];
+      this.stack = new int[DynamicAabbTree.INITIAL_STACK];
+      this.clear();
+    }
+
+    /**
+     * Adds an object to the tree.
+     *
+     * @param _bounds the bounds of the object
+     * @param _userData the value returned by {@link #userData(int)}
+     * @return the proxy of the object
+     */
+    public int createProxy(
+        final AABBfc _bounds,
+        final int _userData) {
+      return this.createProxy(
+        _bounds.minX(), _bounds.minY(), _bounds.minZ(),
+        _bounds.maxX(), _bounds.maxY(), _bounds.maxZ(),
+        _userData);
+    }
+
+    /**
+     * Adds an object to the tree.
+     *
+     * @param _minX minimum x of the object bounds
+     * @param _minY minimum y of the object bounds
+     * @param _minZ minimum z of the object bounds
+     * @param _maxX maximum x of the object bounds
+     * @param _maxY maximum y of the object bounds
+     * @param _maxZ maximum z of the object bounds
+     * @param _userData the value returned by {@link #userData(int)}
+     * @return the proxy of the object
+     */
+    public int createProxy(
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ,
+        final int _userData) {
+      final int proxy = this.allocateNode();
+      this.fatten(proxy, _minX, _minY, _minZ, _maxX, _maxY, _maxZ);
+      this.userData[proxy] = _userData;
+      this.heights[proxy] = 0;
+      this.insertLeaf(proxy);
+      this.proxyCount++;
+      return proxy;
+    }
+
+    /**
+     * Removes an object from the tree.
+     *
+     * @param _proxy the proxy of the object
+     * @throws IllegalArgumentException if the proxy is not live
+     */
+    public void destroyProxy(
+        final int _proxy) {
+      this.checkProxy(_proxy);
+      this.removeLeaf(_proxy);
+      this.freeNode(_proxy);
+      this.proxyCount--;
+    }
+
+    /**
+     * Updates the bounds of an object.
+     *
+     * @param _proxy the proxy of the object
+     * @param _bounds the new bounds of the object
+     * @return {@code true} if the proxy left its fat bounds and was
+     *     reinserted
+     * @throws IllegalArgumentException if the proxy is not live
+     */
+    public boolean moveProxy(
+        final int _proxy,
+        final AABBfc _bounds) {
+      return this.moveProxy(_proxy,
+        _bounds.minX(), _bounds.minY(), _bounds.minZ(),
+        _bounds.maxX(), _bounds.maxY(), _bounds.maxZ());
+    }
+
+    /**
+     * Updates the bounds of an object.
+     *
+     * @param _proxy the proxy of the object
+     * @param _minX minimum x of the new bounds
+     * @param _minY minimum y of the new bounds
+     * @param _minZ minimum z of the new bounds
+     * @param _maxX maximum x of the new bounds
+     * @param _maxY maximum y of the new bounds
+     * @param _maxZ maximum z of the new bounds
+     * @return {@code true} if the proxy left its fat bounds and was
+     *     reinserted
+     * @throws IllegalArgumentException if the proxy is not live
+     */
+    public boolean moveProxy(
+        final int _proxy,
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ) {
+      this.checkProxy(_proxy);
+      final int offset = _proxy * DynamicAabbTree.BOUNDS_STRIDE;
+      final int max = offset + DynamicAabbTree.MAX_OFFSET;
+      final float[] b = this.bounds;
+      if ((b[offset] <= _minX) && (b[offset + 1] <= _minY)
+          && (b[offset + 2] <= _minZ) && (b[max] >= _maxX)
+          && (b[max + 1] >= _maxY) && (b[max + 2] >= _maxZ)) {
+        return false;
+      }
+      this.removeLeaf(_proxy);
+      this.fatten(_proxy, _minX, _minY, _minZ, _maxX, _maxY, _maxZ);
+      this.insertLeaf(_proxy);
+      this.reinsertions++;
+      return true;
+    }
+
+    /**
+     * Gets the user data of an object.
+     *
+     * @param _proxy the proxy of the object
+     * @return the user data given on creation
+     * @throws IllegalArgumentException if the proxy is not live
+     */
+    public int userData(
+        final int _proxy) {
+      this.checkProxy(_proxy);
+      return this.userData[_proxy];
+    }
+
+    /**
+     * Gets the fattened bounds stored for an object.
+     *
+     * @param _proxy the proxy of the object
+     * @param _dest the box receiving the bounds
+     * @return the destination box
+     * @throws IllegalArgumentException if the proxy is not live
+     */
+    public AABBf fatBounds(
+        final int _proxy,
+        final AABBf _dest) {
+      this.checkProxy(_proxy);
+      final int offset = _proxy * DynamicAabbTree.BOUNDS_STRIDE;
+      final int max = offset + DynamicAabbTree.MAX_OFFSET;
+      return _dest
+        .setMin(this.bounds[offset], this.bounds[offset + 1],
+          this.bounds[offset + 2])
+        .setMax(this.bounds[max], this.bounds[max + 1], this.bounds[max + 2]);
+    }
+
+    /**
+     * Collects the proxies whose fat bounds overlap a box.
+     *
+     * @param _bounds the box
+     * @param _dest the list receiving the proxies (appended)
+     */
+    public void query(
+        final AABBfc _bounds,
+        final IntList _dest) {
+      this.query(
+        _bounds.minX(), _bounds.minY(), _bounds.minZ(),
+        _bounds.maxX(), _bounds.maxY(), _bounds.maxZ(),
+        _dest);
+    }
+
+    /**
+     * Collects the proxies whose fat bounds overlap a box.
+     *
+     * @param _minX minimum x of the box
+     * @param _minY minimum y of the box
+     * @param _minZ minimum z of the box
+     * @param _maxX maximum x of the box
+     * @param _maxY maximum y of the box
+     * @param _maxZ maximum z of the box
+     * @param _dest the list receiving the proxies (appended)
+     */
+    public void query(
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ,
+        final IntList _dest) {
+      if (this.root == DynamicAabbTree.NULL_NODE) {
+        return;
+      }
+      final float[] b = this.bounds;
+      int size = 0;
+      this.stack[size++] = this.root;
+      while (size > 0) {
+        final int node = this.stack[--size];
+        final int offset = node * DynamicAabbTree.BOUNDS_STRIDE;
+        final int max = offset + DynamicAabbTree.MAX_OFFSET;
+        if ((b[offset] > _maxX) || (b[max] < _minX)
+            || (b[offset + 1] > _maxY) || (b[max + 1] < _minY)
+            || (b[offset + 2] > _maxZ) || (b[max + 2] < _minZ)) {
+          continue;
+        }
+        if (this.lefts[node] == DynamicAabbTree.NULL_NODE) {
+          _dest.add(node);
+        } else {
+          size = this.pushChildren(node, size);
+        }
+      }
+    }
+
+    /**
+     * Collects the proxies whose fat bounds intersect a frustum.
+     *
+     * <p>Subtrees fully inside the frustum are collected without testing
+     * their nodes.
+     *
+     * @param _frustum the frustum
+     * @param _dest the list receiving the proxies (appended)
+     */
+    public void query(
+        final FrustumIntersection _frustum,
+        final IntList _dest) {
+      if (this.root == DynamicAabbTree.NULL_NODE) {
+        return;
+      }
+      final float[] b = this.bounds;
+      int size = 0;
+      this.stack[size++] = this.root;
+      while (size > 0) {
+        final int entry = this.stack[--size];
+        /* Negative entries encode subtrees known to be inside. */
+        final boolean inside = entry < 0;
+        final int node = inside ? ~entry : entry;
+        int result = FrustumIntersection.INSIDE;
+        if (!inside) {
+          final int offset = node * DynamicAabbTree.BOUNDS_STRIDE;
+          final int max = offset + DynamicAabbTree.MAX_OFFSET;
+          result = _frustum.intersectAab(
+            b[offset], b[offset + 1], b[offset + 2],
+            b[max], b[max + 1], b[max + 2]);
+          if ((result != FrustumIntersection.INSIDE)
+              && (result != FrustumIntersection.INTERSECT)) {
+            continue;
+          }
+        }
+        if (this.lefts[node] == DynamicAabbTree.NULL_NODE) {
+          _dest.add(node);
+        } else {
+          size = this.pushChildren(node, size);
+          if (result == FrustumIntersection.INSIDE) {
+            this.stack[size - 1] = ~this.stack[size - 1];
+            this.stack[size - 2] = ~this.stack[size - 2];
+          }
+        }
+      }
+    }
+
+    /**
+     * Collects the proxies whose fat bounds are crossed by a ray.
+     *
+     * @param _ray the ray
+     * @param _maxDistance the maximum distance along the ray
+     * @param _dest the list receiving the proxies (appended)
+     */
+    public void raycast(
+        final Rayf _ray,
+        final float _maxDistance,
+        final IntList _dest) {
+      if (this.root == DynamicAabbTree.NULL_NODE) {
+        return;
+      }
+      final float[] ray = this.scratchHit.prepare(_ray);
+      int size = 0;
+      this.stack[size++] = this.root;
+      while (size > 0) {
+        final int node = this.stack[--size];
+        if (MeshBvh.entry(this.bounds, node, ray, _maxDistance)
+            == Float.POSITIVE_INFINITY) {
+          continue;
+        }
+        if (this.lefts[node] == DynamicAabbTree.NULL_NODE) {
+          _dest.add(node);
+        } else {
+          size = this.pushChildren(node, size);
+        }
+      }
+    }
+
+    /**
+     * Finds the first proxy whose fat bounds are crossed by a ray.
+     *
+     * <p>The hit distance is the distance at which the ray enters the fat
+     * bounds; the barycentric coordinates are zero.
+     *
+     * @param _ray the ray
+     * @param _maxDistance the maximum distance along the ray
+     * @param _hit the hit receiving the proxy as primitive
+     * @return {@code true} if a proxy was hit
+     */
+    public boolean raycast(
+        final Rayf _ray,
+        final float _maxDistance,
+        final RayHit _hit) {
+      _hit.reset(_maxDistance);
+      if (this.root == DynamicAabbTree.NULL_NODE) {
+        return false;
+      }
+      final float[] ray = _hit.prepare(_ray);
+      int size = 0;
+      this.stack[size++] = this.root;
+      while (size > 0) {
+        final int node = this.stack[--size];
+        final float distance
+          = MeshBvh.entry(this.bounds, node, ray, _hit.distance());
+        if (distance == Float.POSITIVE_INFINITY) {
+          continue;
+        }
+        if (this.lefts[node] == DynamicAabbTree.NULL_NODE) {
+          final float entry = Math.max(distance, 0.0F);
+          if (entry < _hit.distance()) {
+            _hit.set(entry, node, 0.0F, 0.0F);
+          }
+        } else {
+          size = this.pushChildren(node, size);
+        }
+      }
+      return _hit.hit();
+    }
+
+    /**
+     * Removes every proxy.
+     */
+    public void clear() {
+      this.root = DynamicAabbTree.NULL_NODE;
+      this.freeList = DynamicAabbTree.NULL_NODE;
+      this.nodeCount = 0;
+      this.proxyCount = 0;
+    }
+
+    /**
+     * Gets the number of live proxies.
+     *
+     * @return the proxy count
+     */
+    public int proxyCount() {
+      return this.proxyCount;
+    }
+
+    /**
+     * Gets the height of the tree.
+     *
+     * @return the height, zero for an empty tree or a single proxy
+     */
+    public int height() {
+      if (this.root == DynamicAabbTree.NULL_NODE) {
+        return 0;
+      }
+      return this.heights[this.root];
+    }
+
+    /**
+     * Gets the number of nodes the arrays can hold before growing.
+     *
+     * @return the node capacity
+     */
+    public int capacity() {
+      return this.parents.length;
+    }
+
+    /**
+     * Gets the number of proxies reinserted by
+     * {@link #moveProxy(int, AABBfc)} since the last
+     * {@link #resetStatistics()}.
+     *
+     * @return the reinsertion count
+     */
+    public int reinsertions() {
+      return this.reinsertions;
+    }
+
+    /**
+     * Resets the reinsertion counter, typically once per tick.
+     */
+    public void resetStatistics() {
+      this.reinsertions = 0;
+    }
+
+    /**
+     * Checks that a proxy is a live leaf.
+     *
+     * @param _proxy the proxy
+     * @throws IllegalArgumentException if the proxy is not live
+     */
+    private void checkProxy(
+        final int _proxy) {
+      if ((_proxy < 0) || (_proxy >= this.nodeCount)
+          || (this.heights[_proxy] != 0)) {
+        throw new IllegalArgumentException("Invalid proxy: " + _proxy);
+      }
+    }
+
+    /**
+     * Pushes the children of a node on the traversal stack.
+     *
+     * @param _node the node
+     * @param _size the current stack size
+     * @return the new stack size
+     */
+    private int pushChildren(
+        final int _node,
+        final int _size) {
+      if ((_size + 2) > this.stack.length) {
+        this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+      }
+      this.stack[_size] = this.lefts[_node];
+      this.stack[_size + 1] = this.rights[_node];
+      return _size + 2;
+    }
+
+    /**
+     * Stores the fattened bounds of a leaf.
+     *
+     * @param _node the leaf
+     * @param _minX minimum x of the tight bounds
+     * @param _minY minimum y of the tight bounds
+     * @param _minZ minimum z of the tight bounds
+     * @param _maxX maximum x of the tight bounds
+     * @param _maxY maximum y of the tight bounds
+     * @param _maxZ maximum z of the tight bounds
+     */
+    private void fatten(
+        final int _node,
+        final float _minX,
+        final float _minY,
+        final float _minZ,
+        final float _maxX,
+        final float _maxY,
+        final float _maxZ) {
+      final int offset = _node * DynamicAabbTree.BOUNDS_STRIDE;
+      final int max = offset + DynamicAabbTree.MAX_OFFSET;
+      this.bounds[offset] = _minX - this.margin;
+      this.bounds[offset + 1] = _minY - this.margin;
+      this.bounds[offset + 2] = _minZ - this.margin;
+      this.bounds[max] = _maxX + this.margin;
+      this.bounds[max + 1] = _maxY + this.margin;
+      this.bounds[max + 2] = _maxZ + this.margin;
+    }
+
+    /**
+     * Takes a node from the free list, growing the pool if needed.
+     *
+     * @return the node
+     */
+    private int allocateNode() {
+      int node = this.freeList;
+      if (node != DynamicAabbTree.NULL_NODE) {
+        this.freeList = this.parents[node];
+      } else {
+        node = this.nodeCount++;
+        if (node == this.parents.length) {
+          this.grow();
+        }
+      }
+      this.parents[node] = DynamicAabbTree.NULL_NODE;
+      this.lefts[node] = DynamicAabbTree.NULL_NODE;
+      this.rights[node] = DynamicAabbTree.NULL_NODE;
+      this.heights[node] = 0;
+      return node;
+    }
+
+    /**
+     * Returns a node to the free list.
+     *
+     * @param _node the node
+     */
+    private void freeNode(
+        final int _node) {
+      this.parents[_node] = this.freeList;
+      this.heights[_node] = -1;
+      this.freeList = _node;
+    }
+
+    /**
+     * Doubles the node arrays.
+     */
+    private void grow() {
+      final int capacity = this.parents.length * 2;
+      this.bounds = Arrays.copyOf(this.bounds,
+        capacity * DynamicAabbTree.BOUNDS_STRIDE);
+      this.parents = Arrays.copyOf(this.parents, capacity);
+      this.lefts = Arrays.copyOf(this.lefts, capacity);
+      this.rights = Arrays.copyOf(this.rights, capacity);
+      this.heights = Arrays.copyOf(this.heights, capacity);
+      this.userData = Arrays.copyOf(this.userData, capacity);
+    }
+
+    /**
+     * Inserts a leaf next to the sibling with the lowest area cost.
+     *
+     * @param _leaf the leaf, with its bounds set
+     */
+    private void insertLeaf(
+        final int _leaf) {
+      if (this.root == DynamicAabbTree.NULL_NODE) {
+        this.root = _leaf;
+        this.parents[_leaf] = DynamicAabbTree.NULL_NODE;
+        return;
+      }
+
+      /* Descend while pushing the leaf down is cheaper than pairing. */
+      int index = this.root;
+      while (this.lefts[index] != DynamicAabbTree.NULL_NODE) {
+        final float area = this.area(index);
+        final float combined = this.unionArea(index, _leaf);
+        final float cost = 2.0F * combined;
+        final float inheritance = 2.0F * (combined - area);
+        final float leftCost
+          = this.descentCost(this.lefts[index], _leaf) + inheritance;
+        final float rightCost
+          = this.descentCost(this.rights[index], _leaf) + inheritance;
+        if ((cost < leftCost) && (cost < rightCost)) {
+          break;
+        }
+        if (leftCost < rightCost) {
+          index = this.lefts[index];
+        } else {
+          index = this.rights[index];
+        }
+      }
+
+      final int sibling = index;
+      final int oldParent = this.parents[sibling];
+      final int newParent = this.allocateNode();
+      this.parents[newParent] = oldParent;
+      this.union(newParent, sibling, _leaf);
+      this.heights[newParent] = this.heights[sibling] + 1;
+      this.lefts[newParent] = sibling;
+      this.rights[newParent] = _leaf;
+      this.parents[sibling] = newParent;
+      this.parents[_leaf] = newParent;
+      this.replaceChild(oldParent, sibling, newParent);
+      this.refitUpwards(newParent);
+    }
+
+    /**
+     * Detaches a leaf, replacing its parent with its sibling.
+     *
+     * @param _leaf the leaf
+     */
+    private void removeLeaf(
+        final int _leaf) {
+      if (_leaf == this.root) {
+        this.root = DynamicAabbTree.NULL_NODE;
+        return;
+      }
+      final int parent = this.parents[_leaf];
+      final int grandParent = this.parents[parent];
+      int sibling = this.lefts[parent];
+      if (sibling == _leaf) {
+        sibling = this.rights[parent];
+      }
+      this.parents[sibling] = grandParent;
+      this.replaceChild(grandParent, parent, sibling);
+      this.freeNode(parent);
+      if (grandParent != DynamicAabbTree.NULL_NODE) {
+        this.refitUpwards(grandParent);
+      }
+    }
+
+    /**
+     * Replaces a child of a node, or the root.
+     *
+     * @param _parent the node, or {@link #NULL_NODE} for the root
+     * @param _oldChild the child to replace
+     * @param _newChild the new child
+     */
+    private void replaceChild(
+        final int _parent,
+        final int _oldChild,
+        final int _newChild) {
+      if (_parent == DynamicAabbTree.NULL_NODE) {
+        this.root = _newChild;
+      } else if (this.lefts[_parent] == _oldChild) {
+        this.lefts[_parent] = _newChild;
+      } else {
+        this.rights[_parent] = _newChild;
+      }
+    }
+
+    /**
+     * Rebalances and refits a node and all its ancestors.
+     *
+     * @param _node the first node
+     */
+    private void refitUpwards(
+        final int _node) {
+      int index = _node;
+      while (index != DynamicAabbTree.NULL_NODE) {
+        index = this.balance(index);
+        this.refit(index);
+        index = this.parents[index];
+      }
+    }
+
+    /**
+     * Recomputes the bounds and height of an inner node from its children.
+     *
+     * @param _node the node
+     */
+    private void refit(
+        final int _node) {
+      final int left = this.lefts[_node];
+      final int right = this.rights[_node];
+      this.union(_node, left, right);
+      this.heights[_node]
+        = 1 + Math.max(this.heights[left], this.heights[right]);
+    }
+
+    /**
+     * Rotates the taller grandchild up if the children of a node differ in
+     * height by more than one.
+     *
+     * @param _node the node
+     * @return the node now at the position of the given node
+     */
+    private int balance(
+        final int _node) {
+      final int a = _node;
+      if ((this.lefts[a] == DynamicAabbTree.NULL_NODE)
+          || (this.heights[a] < 2)) {
+        return a;
+      }
+      final int b = this.lefts[a];
+      final int c = this.rights[a];
+      final int difference = this.heights[c] - this.heights[b];
+      if (difference > 1) {
+        this.rotate(a, c, true);
+        return c;
+      }
+      if (difference < -1) {
+        this.rotate(a, b, false);
+        return b;
+      }
+      return a;
+    }
+
+    /**
+     * Rotates a child up into the position of its parent.
+     *
+     * <p>The child takes the parent as its first child and keeps its
+     * taller child; the shorter one replaces the child in the parent.
+     *
+     * @param _parent the node moving down
+     * @param _child the child moving up
+     * @param _right whether the child is the second child of the parent
+     */
+    private void rotate(
+        final int _parent,
+        final int _child,
+        final boolean _right) {
+      final int first = this.lefts[_child];
+      final int second = this.rights[_child];
+      final int grandParent = this.parents[_parent];
+      this.lefts[_child] = _parent;
+      this.parents[_child] = grandParent;
+      this.parents[_parent] = _child;
+      this.replaceChild(grandParent, _parent, _child);
+
+      int taller = first;
+      int shorter = second;
+      if (this.heights[first] <= this.heights[second]) {
+        taller = second;
+        shorter = first;
+      }
+      this.rights[_child] = taller;
+      if (_right) {
+        this.rights[_parent] = shorter;
+      } else {
+        this.lefts[_parent] = shorter;
+      }
+      this.parents[shorter] = _parent;
+      this.refit(_parent);
+      this.refit(_child);
+    }
+
+    /**
+     * Computes the cost of descending into a child during insertion.
+     *
+     * @param _child the child
+     * @param _leaf the inserted leaf
+     * @return the cost, without the inherited cost of the ancestors
+     */
+    private float descentCost(
+        final int _child,
+        final int _leaf) {
+      final float combined = this.unionArea(_child, _leaf);
+      if (this.lefts[_child] == DynamicAabbTree.NULL_NODE) {
+        return combined;
+      }
+      return combined - this.area(_child);
+    }
+
+    /**
+     * Computes half the surface area of a node.
+     *
+     * @param _node the node
+     * @return half the surface area
+     */
+    private float area(
+        final int _node) {
+      return MeshBvh.area(this.bounds, _node * DynamicAabbTree.BOUNDS_STRIDE);
+    }
+
+    /**
+     * Computes half the surface area of the union of two nodes.
+     *
+     * @param _first the first node
+     * @param _second the second node
+     * @return half the surface area of the union
+     */
+    private float unionArea(
+        final int _first,
+        final int _second) {
+      final float[] b = this.bounds;
+      final int first = _first * DynamicAabbTree.BOUNDS_STRIDE;
+      final int second = _second * DynamicAabbTree.BOUNDS_STRIDE;
+      final int max = DynamicAabbTree.MAX_OFFSET;
+      final float x = Math.max(b[first + max], b[second + max])
+        - Math.min(b[first], b[second]);
+      final float y = Math.max(b[first + max + 1], b[second + max + 1])
+        - Math.min(b[first + 1], b[second + 1]);
+      final float z = Math.max(b[first + max + 2], b[second + max + 2])
+        - Math.min(b[first + 2], b[second + 2]);
+      return (x * y) + (y * z) + (z * x);
+    }
+
+    /**
+     * Stores the union of two nodes into a third.
+     *
+     * @param _dest the node receiving the union
+     * @param _first the first node
+     * @param _second the second node
+     */
+    private void union(
+        final int _dest,
+        final int _first,
+        final int _second) {
+      final float[] b = this.bounds;
+      final int dest = _dest * DynamicAabbTree.BOUNDS_STRIDE;
+      final int first = _first * DynamicAabbTree.BOUNDS_STRIDE;
+      final int second = _second * DynamicAabbTree.BOUNDS_STRIDE;
+      for (int axis = 0; axis < DynamicAabbTree.MAX_OFFSET; axis++) {
+        b[dest + axis] = Math.min(b[first + axis], b[second + axis]);
+        final int max = DynamicAabbTree.MAX_OFFSET + axis;
+        b[dest + max] = Math.max(b[first + max], b[second + max]);
+      }
+    }
+
+  }
@@ -0,0 +1,903 @@
+package es.noa.rad.game.engine.spatial;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joml.primitives.AABBf;
+import org.joml.primitives.Rayf;
+
+  /**
+   * Bounding volume hierarchy over the triangles of a static mesh.
+   *
+   * <p>Built once with the surface area heuristic (SAH) evaluated over a
+   * fixed number of centroid bins per axis. Subtrees above a size
+   * threshold are built as separate fork-join tasks; node pairs are
+   * reserved with an atomic counter, so the tasks write disjoint parts of
+   * the same preallocated arrays.
+   *
+   * <p>Memory layout:
+   * <ul>
+   *   <li>Nodes are flattened into a {@code float[]} of bounds (six floats
+   *       per node) and an {@code int[]} of two ints per node: for leaves
+   *       the first triangle and the triangle count, for inner nodes the
+   *       left child (the right child always follows it) and zero.</li>
+   *   <li>Triangle vertices are copied in leaf order into a single
+   *       {@code float[]}, so a leaf reads one contiguous range.</li>
+   * </ul>
+   *
+   * <p>Ray queries visit the nearest child first and prune against the
+   * closest hit found so far. The tree is immutable once built, so queries
+   * are thread-safe as long as each thread uses its own {@link RayHit}.
+   *
+   * <p>Usage example:
+   * <pre>{@code
+   * MeshBvh bvh = new MeshBvh(positions, indices);
+   * RayHit hit = new RayHit();
+   * if (bvh.intersect(ray, Float.POSITIVE_INFINITY, hit)) {
+   *   int triangle = hit.primitive();
+   * }
+   * }</pre>
+   *
+   * @see CursorPicker
+   */
+  public final class MeshBvh {
+
+    /**
+     * Number of floats of a bounding box.
+     */
+    private static final int BOUNDS_STRIDE = 6;
+
+    /**
+     * Offset of the maximum corner inside a bounding box.
+     */
+    private static final int MAX_OFFSET = 3;
+
+    /**
+     * Number of components of a vertex.
+     */
+    private static final int VERTEX_STRIDE = 3;
+
+    /**
+     * Number of floats of a triangle (three vertices).
+     */
+    private static final int TRIANGLE_STRIDE = 9;
+
+    /**
+     * Number of centroid bins per axis evaluated by the SAH.
+     */
+    private static final int BINS = 16;
+
+    /**
+     * Largest leaf created when splitting is not worth it.
+     */
+    private static final int MAX_LEAF_SIZE = 8;
+
+    /**
+     * Number of triangles from which subtrees are built in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 32768;
+
+    /**
+     * One half, to average the corners of a box.
+     */
+    private static final float HALF = 0.5F;
+
+    /**
+     * Tolerance of the ray-triangle test.
+     */
+    private static final float EPSILON = 1.0E-8F;
+
+    /**
+     * Bounds of every node.
+     */
+    private final float[] nodeBounds;
+
+    /**
+     * First triangle or left child, and triangle count, of every node.
+     */
+    private final int[] nodeInfo;
+
+    /**
+     * Number of nodes in use.
+     */
+    private final int nodeCount;
+
+    /**
+     * Triangle vertices in leaf order.
+     */
+    private final float[] triangleVertices;
+
+    /**
+     * Original index of every triangle in leaf order.
+     */
+    private final int[] triangleIds;
+
+    /**
+     * Number of triangles.
+     */
+    private final int triangleCount;
+
+    /**
+     * Build time in nanoseconds.
+     */
+    private final long buildNanos;
+
+    /**
+     * Builds the hierarchy on the common pool.
+     *
+     * @param _positions vertex positions, three floats per vertex
+     * @param _indices triangle indices, three per triangle
+     */
+    public MeshBvh(
+        final float[] _positions,
+        final int[] _indices) {
+      this(_positions, _indices, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the hierarchy.
+     *
+     * @param _positions vertex positions, three floats per vertex
+     * @param _indices triangle indices, three per triangle
+     * @param _pool the pool running the parallel build
+     */
+    public MeshBvh(
+        final float[] _positions,
+        final int[] _indices,
+        final ForkJoinPool _pool) {
+      final long start = System.nanoTime();
+      this.triangleCount = _indices.length / MeshBvh.VERTEX_STRIDE;
+      final int maxNodes = Math.max(1, 2 * this.triangleCount);
+      this.nodeBounds = new float[maxNodes * MeshBvh.BOUNDS_STRIDE];
+      this.nodeInfo = new int[maxNodes * 2];
+      this.triangleIds = new int[this.triangleCount];
+      this.triangleVertices
+        = new float[this.triangleCount * MeshBvh.TRIANGLE_STRIDE];
+
+      final Builder builder = new Builder(_positions, _indices);
+      this.nodeInfo[1] = this.triangleCount;
+      builder.nodeBounds(0);
+      if (this.triangleCount > 0) {
+        _pool.invoke(builder.new BuildTask(0));
+      }
+      this.nodeCount = builder.nodeCounter.get();
+
+      /* Copy the triangles in leaf order. */
+      for (int index = 0; index < this.triangleCount; index++) {
+        final int triangle = builder.order[index];
+        this.triangleIds[index] = triangle;
+        for (int corner = 0; corner < MeshBvh.VERTEX_STRIDE; corner++) {
+          System.arraycopy(
+            _positions,
+            _indices[(triangle * MeshBvh.VERTEX_STRIDE) + corner]
+              * MeshBvh.VERTEX_STRIDE,
+            this.triangleVertices,
+            (index * MeshBvh.TRIANGLE_STRIDE)
+              + (corner * MeshBvh.VERTEX_STRIDE),
+            MeshBvh.VERTEX_STRIDE
+          );
+        }
+      }
+      this.buildNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Finds the closest triangle hit by a ray.
+     *
+     * @param _ray the ray
+     * @param _maxDistance the maximum distance along the ray
+     * @param _hit the hit receiving the result
+     * @return {@code true} if a triangle was hit
+     */
+    public boolean intersect(
+        final Rayf _ray,
+        final float _maxDistance,
+        final RayHit _hit) {
+      _hit.reset(_maxDistance);
+      if (this.triangleCount == 0) {
+        return false;
+      }
+      final float[] ray = _hit.prepare(_ray);
+      int[] stack = _hit.stack();
+      int size = 0;
+      if (MeshBvh.entry(this.nodeBounds, 0, ray, _maxDistance)
+          != Float.POSITIVE_INFINITY) {
+        stack[size++] = 0;
+      }
+
+      while (size > 0) {
+        final int node = stack[--size];
+        final int first = this.nodeInfo[2 * node];
+        final int count = this.nodeInfo[(2 * node) + 1];
+        if (count > 0) {
+          for (int index = first; index < (first + count); index++) {
+            this.intersectTriangle(index, ray, _hit);
+          }
+          continue;
+        }
+
+        final float limit = _hit.distance();
+        final float left = MeshBvh.entry(this.nodeBounds, first, ray, limit);
+        final float right
+          = MeshBvh.entry(this.nodeBounds, first + 1, ray, limit);
+        if ((size + 2) > stack.length) {
+          stack = _hit.growStack();
+        }
+        /* Push the far child first so the near one is visited first. */
+        if (left <= right) {
+          if (right != Float.POSITIVE_INFINITY) {
+            stack[size++] = first + 1;
+          }
+          if (left != Float.POSITIVE_INFINITY) {
+            stack[size++] = first;
+          }
+        } else {
+          if (left != Float.POSITIVE_INFINITY) {
+            stack[size++] = first;
+          }
+          stack[size++] = first + 1;
+        }
+      }
+      return _hit.hit();
+    }
+
+    /**
+     * Gets the bounds of the whole mesh.
+     *
+     * @param _dest the box receiving the bounds
+     * @return the destination box
+     */
+    public AABBf bounds(
+        final AABBf _dest) {
+      return _dest
+        .setMin(this.nodeBounds[0], this.nodeBounds[1], this.nodeBounds[2])
+        .setMax(
+          this.nodeBounds[MeshBvh.MAX_OFFSET],
+          this.nodeBounds[MeshBvh.MAX_OFFSET + 1],
+          this.nodeBounds[MeshBvh.MAX_OFFSET + 2]
+        );
+    }
+
+    /**
+     * Gets the number of triangles.
+     *
+     * @return the triangle count
+     */
+    public int triangleCount() {
+      return this.triangleCount;
+    }
+
+    /**
+     * Gets the number of nodes.
+     *
+     * @return the node count
+     */
+    public int nodeCount() {
+      return this.nodeCount;
+    }
+
+    /**
+     * Gets the build time.
+     *
+     * @return the build time in nanoseconds
+     */
+    public long buildNanos() {
+      return this.buildNanos;
+    }
+
+    /**
+     * Computes the distance at which a ray enters a node.
+     *
+     * @param _bounds the node bounds
+     * @param _node the node
+     * @param _ray the precomputed ray
+     * @param _maxDistance the maximum distance along the ray
+     * @return the entry distance, or positive infinity on a miss
+     */
+    static float entry(
+        final float[] _bounds,
+        final int _node,
+        final float[] _ray,
+        final float _maxDistance) {
+      final int min = _node * MeshBvh.BOUNDS_STRIDE;
+      final int max = min + MeshBvh.MAX_OFFSET;
+      final int inverse = RayHit.RAY_INVERSE;
+      final float x0 = (_bounds[min] - _ray[0]) * _ray[inverse];
+      final float x1 = (_bounds[max] - _ray[0]) * _ray[inverse];
+      final float y0 = (_bounds[min + 1] - _ray[1]) * _ray[inverse + 1];
+      final float y1 = (_bounds[max + 1] - _ray[1]) * _ray[inverse + 1];
+      final float z0 = (_bounds[min + 2] - _ray[2]) * _ray[inverse + 2];
+      final float z1 = (_bounds[max + 2] - _ray[2]) * _ray[inverse + 2];
+      final float near = Math.max(
+        Math.max(Math.min(x0, x1), Math.min(y0, y1)), Math.min(z0, z1));
+      final float far = Math.min(
+        Math.min(Math.max(x0, x1), Math.max(y0, y1)), Math.max(z0, z1));
+      if ((far >= Math.max(near, 0.0F)) && (near < _maxDistance)) {
+        return near;
+      }
+      return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Tests a triangle (Möller-Trumbore, both faces) and records the hit
+     * if it is the closest so far.
+     *
+     * @param _index the triangle in leaf order
+     * @param _ray the precomputed ray
+     * @param _hit the hit
+     */
+    private void intersectTriangle(
+        final int _index,
+        final float[] _ray,
+        final RayHit _hit) {
+      final float[] t = this.triangleVertices;
+      final int v0 = _index * MeshBvh.TRIANGLE_STRIDE;
+      final int v1 = v0 + MeshBvh.VERTEX_STRIDE;
+      final int v2 = v1 + MeshBvh.VERTEX_STRIDE;
+      final int d = RayHit.RAY_DIRECTION;
+      final float edge1X = t[v1] - t[v0];
+      final float edge1Y = t[v1 + 1] - t[v0 + 1];
+      final float edge1Z = t[v1 + 2] - t[v0 + 2];
+      final float edge2X = t[v2] - t[v0];
+      final float edge2Y = t[v2 + 1] - t[v0 + 1];
+      final float edge2Z = t[v2 + 2] - t[v0 + 2];
+      final float pX = (_ray[d + 1] * edge2Z) - (_ray[d + 2] * edge2Y);
+      final float pY = (_ray[d + 2] * edge2X) - (_ray[d] * edge2Z);
+      final float pZ = (_ray[d] * edge2Y) - (_ray[d + 1] * edge2X);
+      final float determinant
+        = (edge1X * pX) + (edge1Y * pY) + (edge1Z * pZ);
+      if (Math.abs(determinant) < MeshBvh.EPSILON) {
+        return;
+      }
+      final float inverse = 1.0F / determinant;
+      final float sX = _ray[0] - t[v0];
+      final float sY = _ray[1] - t[v0 + 1];
+      final float sZ = _ray[2] - t[v0 + 2];
+      final float u = ((sX * pX) + (sY * pY) + (sZ * pZ)) * inverse;
+      if ((u < 0.0F) || (u > 1.0F)) {
+        return;
+      }
+      final float qX = (sY * edge1Z) - (sZ * edge1Y);
+      final float qY = (sZ * edge1X) - (sX * edge1Z);
+      final float qZ = (sX * edge1Y) - (sY * edge1X);
+      final float v
+        = ((_ray[d] * qX) + (_ray[d + 1] * qY) + (_ray[d + 2] * qZ)) * inverse;
+      if ((v < 0.0F) || ((u + v) > 1.0F)) {
+        return;
+      }
+      final float distance
+        = ((edge2X * qX) + (edge2Y * qY) + (edge2Z * qZ)) * inverse;
+      if ((distance >= 0.0F) && (distance < _hit.distance())) {
+        _hit.set(distance, this.triangleIds[_index], u, v);
+      }
+    }
+
+    /**
+     * Build state shared by the build tasks.
+     */
+    private final class Builder {
+
+      /**
+       * Triangle order, partitioned in place while building.
+       */
+      private final int[] order;
+
+      /**
+       * Centroid of every triangle.
+       */
+      private final float[] centroids;
+
+      /**
+       * Bounds of every triangle.
+       */
+      private final float[] triangleBounds;
+
+      /**
+       * Next free node pair.
+       */
+      private final AtomicInteger nodeCounter;
+
+      /**
+       * Precomputes the triangle bounds and centroids.
+       *
+       * @param _positions vertex positions
+       * @param _indices triangle indices
+       */
+      Builder(
+          final float[] _positions,
+          final int[] _indices) {
+        final int count = MeshBvh.this.triangleCount;
+        this.order = new int[count];
+        this.centroids = new float[count * MeshBvh.VERTEX_STRIDE];
+        this.triangleBounds = new float[count * MeshBvh.BOUNDS_STRIDE];
+        /* Children are allocated in pairs right after the root. */
+        this.nodeCounter = new AtomicInteger(1);
+        for (int triangle = 0; triangle < count; triangle++) {
+          this.order[triangle] = triangle;
+          final int bounds = triangle * MeshBvh.BOUNDS_STRIDE;
+          Arrays.fill(this.triangleBounds, bounds,
+            bounds + MeshBvh.MAX_OFFSET, Float.POSITIVE_INFINITY);
+          Arrays.fill(this.triangleBounds, bounds + MeshBvh.MAX_OFFSET,
+            bounds + MeshBvh.BOUNDS_STRIDE, Float.NEGATIVE_INFINITY);
+          for (int corner = 0; corner < MeshBvh.VERTEX_STRIDE; corner++) {
+            final int vertex = _indices[(triangle * MeshBvh.VERTEX_STRIDE)
+              + corner] * MeshBvh.VERTEX_STRIDE;
+            for (int axis = 0; axis < MeshBvh.VERTEX_STRIDE; axis++) {
+              final float value = _positions[vertex + axis];
+              this.triangleBounds[bounds + axis]
+                = Math.min(this.triangleBounds[bounds + axis], value);
+              this.triangleBounds[bounds + MeshBvh.MAX_OFFSET + axis]
+                = Math.max(
+                  this.triangleBounds[bounds + MeshBvh.MAX_OFFSET + axis],
+                  value);
+            }
+          }
+          for (int axis = 0; axis < MeshBvh.VERTEX_STRIDE; axis++) {
+            this.centroids[(triangle * MeshBvh.VERTEX_STRIDE) + axis]
+              = (this.triangleBounds[bounds + axis]
+                + this.triangleBounds[bounds + MeshBvh.MAX_OFFSET + axis])
+              * MeshBvh.HALF;
+          }
+        }
+      }
+
+      /**
+       * Computes the bounds of a node from its triangles.
+       *
+       * @param _node the node
+       */
+      void nodeBounds(
+          final int _node) {
+        final float[] bounds = MeshBvh.this.nodeBounds;
+        final int offset = _node * MeshBvh.BOUNDS_STRIDE;
+        Arrays.fill(bounds, offset, offset + MeshBvh.MAX_OFFSET,
+          Float.POSITIVE_INFINITY);
+        Arrays.fill(bounds, offset + MeshBvh.MAX_OFFSET,
+          offset + MeshBvh.BOUNDS_STRIDE, Float.NEGATIVE_INFINITY);
+        final int first = MeshBvh.this.nodeInfo[2 * _node];
+        final int count = MeshBvh.this.nodeInfo[(2 * _node) + 1];
+        for (int index = first; index < (first + count); index++) {
+          final int triangle
+            = this.order[index] * MeshBvh.BOUNDS_STRIDE;
+          for (int axis = 0; axis < MeshBvh.VERTEX_STRIDE; axis++) {
+            bounds[offset + axis] = Math.min(
+              bounds[offset + axis], this.triangleBounds[triangle + axis]);
+            final int max = MeshBvh.MAX_OFFSET + axis;
+            bounds[offset + max] = Math.max(
+              bounds[offset + max], this.triangleBounds[triangle + max]);
+          }
+        }
+      }
+
+      /**
+       * Splits a leaf node recursively.
+       *
+       * @param _node the node
+       * @param _scratch the binning scratch of the calling task
+       * @return the children to build in new tasks, or -1 if the subtree
+       *     was completed on the calling thread
+       */
+      int subdivide(
+          final int _node,
+          final BinScratch _scratch) {
+        final int[] info = MeshBvh.this.nodeInfo;
+        final int first = info[2 * _node];
+        final int count = info[(2 * _node) + 1];
+        if (count <= 2) {
+          return -1;
+        }
+
+        final int split = this.findSplit(_node, _scratch);
+        int leftCount;
+        if (split >= 0) {
+          leftCount = this.partition(first, count, _scratch);
+        } else if (count > MeshBvh.MAX_LEAF_SIZE) {
+          leftCount = count / 2;
+        } else {
+          return -1;
+        }
+        if ((leftCount == 0) || (leftCount == count)) {
+          leftCount = count / 2;
+        }
+
+        final int left = this.nodeCounter.getAndAdd(2);
+        info[2 * left] = first;
+        info[(2 * left) + 1] = leftCount;
+        info[2 * (left + 1)] = first + leftCount;
+        info[(2 * (left + 1)) + 1] = count - leftCount;
+        info[2 * _node] = left;
+        info[(2 * _node) + 1] = 0;
+        this.nodeBounds(left);
+        this.nodeBounds(left + 1);
+
+        if (count >= MeshBvh.PARALLEL_THRESHOLD) {
+          return left;
+        }
+        this.subdivide(left, _scratch);
+        this.subdivide(left + 1, _scratch);
+        return -1;
+      }
+
+      /**
+       * Evaluates the SAH over centroid bins on every axis.
+       *
+       * <p>On success the best axis, bin and centroid range are left in
+       * the scratch for {@link #partition(int, int, BinScratch)}.
+       *
+       * @param _node the node
+       * @param _scratch the binning scratch
+       * @return the best split bin, or -1 if no split beats a leaf
+       */
+      private int findSplit(
+          final int _node,
+          final BinScratch _scratch) {
+        final int first = MeshBvh.this.nodeInfo[2 * _node];
+        final int count = MeshBvh.this.nodeInfo[(2 * _node) + 1];
+        final float leafCost = count * MeshBvh.area(
+          MeshBvh.this.nodeBounds, _node * MeshBvh.BOUNDS_STRIDE);
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestSplit = -1;
+
+        for (int axis = 0; axis < MeshBvh.VERTEX_STRIDE; axis++) {
+          float low = Float.POSITIVE_INFINITY;
+          float high = Float.NEGATIVE_INFINITY;
+          for (int index = first; index < (first + count); index++) {
+            final float centroid = this.centroids[
+              (this.order[index] * MeshBvh.VERTEX_STRIDE) + axis];
+            low = Math.min(low, centroid);
+            high = Math.max(high, centroid);
+          }
+          if (!(high > low)) {
+            continue;
+          }
+          final float scale = MeshBvh.BINS / (high - low);
+
+          _scratch.clear();
+          for (int index = first; index < (first + count); index++) {
+            final int triangle = this.order[index];
+            final int bin = Math.min(MeshBvh.BINS - 1, (int) ((this.centroids[
+              (triangle * MeshBvh.VERTEX_STRIDE) + axis] - low) * scale));
+            _scratch.add(bin, this.triangleBounds,
+              triangle * MeshBvh.BOUNDS_STRIDE);
+          }
+          final int split = _scratch.sweep();
+          if (_scratch.bestCost() < bestCost) {
+            bestCost = _scratch.bestCost();
+            bestSplit = split;
+            _scratch.choose(axis, split, low, scale);
+          }
+        }
+
+        if ((bestSplit < 0)
+            || ((bestCost >= leafCost) && (count <= MeshBvh.MAX_LEAF_SIZE))) {
+          return -1;
+        }
+        return bestSplit;
+      }
+
+      /**
+       * Moves the triangles left of the chosen split to the front of the
+       * range.
+       *
+       * @param _first the first triangle of the range
+       * @param _count the number of triangles of the range
+       * @param _scratch the scratch holding the chosen split
+       * @return the number of triangles on the left side
+       */
+      private int partition(
+          final int _first,
+          final int _count,
+          final BinScratch _scratch) {
+        int low = _first;
+        int high = (_first + _count) - 1;
+        while (low <= high) {
+          final int triangle = this.order[low];
+          final int bin = Math.min(MeshBvh.BINS - 1, (int) ((this.centroids[
+            (triangle * MeshBvh.VERTEX_STRIDE) + _scratch.chosenAxis()]
+            - _scratch.chosenLow()) * _scratch.chosenScale()));
+          if (bin < _scratch.chosenSplit()) {
+            low++;
+          } else {
+            this.order[low] = this.order[high];
+            this.order[high] = triangle;
+            high--;
+          }
+        }
+        return low - _first;
+      }
+
+      /**
+       * Task building the subtree of a node.
+       */
+      private final class BuildTask
+          extends RecursiveAction {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Root of the subtree.
+         */
+        private final int node;
+
+        /**
+         * Creates the task of a subtree.
+         *
+         * @param _node the root of the subtree
+         */
+        BuildTask(
+            final int _node) {
+          this.node = _node;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute() {
+          final int left = Builder.this.subdivide(this.node, new BinScratch());
+          if (left >= 0) {
+            ForkJoinTask.invokeAll(
+              new BuildTask(left), new BuildTask(left + 1));
+          }
+        }
+
+      }
+
+    }
+
+    /**
+     * Computes half the surface area of a box.
+     *
+     * @param _bounds the array holding the box
+     * @param _offset the position of the box in the array
+     * @return half the surface area, zero for empty boxes
+     */
+    static float area(
+        final float[] _bounds,
+        final int _offset) {
+      final float x = _bounds[_offset + MeshBvh.MAX_OFFSET] - _bounds[_offset];
+      final float y
+        = _bounds[_offset + MeshBvh.MAX_OFFSET + 1] - _bounds[_offset + 1];
+      final float z
+        = _bounds[_offset + MeshBvh.MAX_OFFSET + 2] - _bounds[_offset + 2];
+      if ((x < 0.0F) || (y < 0.0F) || (z < 0.0F)) {
+        return 0.0F;
+      }
+      return (x * y) + (y * z) + (z * x);
+    }
+
+    /**
+     * Per-task scratch of the SAH binning.
+     */
+    private static final class BinScratch {
+
+      /**
+       * Bounds of every bin.
+       */
+      private final float[] binBounds;
+
+      /**
+       * Triangle count of every bin.
+       */
+      private final int[] binCounts;
+
+      /**
+       * Area of the union of the bins right of every split.
+       */
+      private final float[] rightAreas;
+
+      /**
+       * Running bounds used by the sweeps.
+       */
+      private final float[] running;
+
+      /**
+       * Cost of the best split of the last sweep.
+       */
+      private float bestCost;
+
+      /**
+       * Axis of the chosen split.
+       */
+      private int chosenAxis;
+
+      /**
+       * Bin of the chosen split: bins below it go left.
+       */
+      private int chosenSplit;
+
+      /**
+       * Lowest centroid on the chosen axis.
+       */
+      private float chosenLow;
+
+      /**
+       * Centroid to bin scale on the chosen axis.
+       */
+      private float chosenScale;
+
+      /**
+       * Creates the scratch.
+       */
+      BinScratch() {
+        this.binBounds = new float[MeshBvh.BINS * MeshBvh.BOUNDS_STRIDE];
+        this.binCounts = new int[MeshBvh.BINS];
+        this.rightAreas = new float[MeshBvh.BINS];
+        this.running = new float[MeshBvh.BOUNDS_STRIDE];
+      }
+
+      /**
+       * Empties every bin.
+       */
+      void clear() {
+        Arrays.fill(this.binCounts, 0);
+        for (int bin = 0; bin < MeshBvh.BINS; bin++) {
+          BinScratch.empty(this.binBounds, bin * MeshBvh.BOUNDS_STRIDE);
+        }
+      }
+
+      /**
+       * Adds a triangle to a bin.
+       *
+       * @param _bin the bin
+       * @param _bounds the triangle bounds array
+       * @param _offset the position of the triangle bounds
+       */
+      void add(
+          final int _bin,
+          final float[] _bounds,
+          final int _offset) {
+        this.binCounts[_bin]++;
+        BinScratch.grow(this.binBounds, _bin * MeshBvh.BOUNDS_STRIDE,
+          _bounds, _offset);
+      }
+
+      /**
+       * Sweeps the bins from both sides and finds the cheapest split.
+       *
+       * @return the best split bin (bins below it go left), or -1
+       */
+      int sweep() {
+        BinScratch.empty(this.running, 0);
+        for (int bin = MeshBvh.BINS - 1; bin > 0; bin--) {
+          BinScratch.grow(this.running, 0, this.binBounds,
+            bin * MeshBvh.BOUNDS_STRIDE);
+          this.rightAreas[bin] = MeshBvh.area(this.running, 0);
+        }
+        BinScratch.empty(this.running, 0);
+        int leftCount = 0;
+        int rightCount = 0;
+        for (int bin = 0; bin < MeshBvh.BINS; bin++) {
+          rightCount += this.binCounts[bin];
+        }
+        this.bestCost = Float.POSITIVE_INFINITY;
+        int best = -1;
+        for (int split = 1; split < MeshBvh.BINS; split++) {
+          final int bin = split - 1;
+          BinScratch.grow(this.running, 0, this.binBounds,
+            bin * MeshBvh.BOUNDS_STRIDE);
+          leftCount += this.binCounts[bin];
+          rightCount -= this.binCounts[bin];
+          if ((leftCount == 0) || (rightCount == 0)) {
+            continue;
+          }
+          final float cost = (leftCount * MeshBvh.area(this.running, 0))
+            + (rightCount * this.rightAreas[split]);
+          if (cost < this.bestCost) {
+            this.bestCost = cost;
+            best = split;
+          }
+        }
+        return best;
+      }
+
+      /**
+       * Gets the cost of the best split of the last sweep.
+       *
+       * @return the cost
+       */
+      float bestCost() {
+        return this.bestCost;
+      }
+
+      /**
+       * Remembers the split used to partition the node.
+       *
+       * @param _axis the axis
+       * @param _split the split bin
+       * @param _low the lowest centroid on the axis
+       * @param _scale the centroid to bin scale
+       */
+      void choose(
+          final int _axis,
+          final int _split,
+          final float _low,
+          final float _scale) {
+        this.chosenAxis = _axis;
+        this.chosenSplit = _split;
+        this.chosenLow = _low;
+        this.chosenScale = _scale;
+      }
+
+      /**
+       * Gets the axis of the chosen split.
+       *
+       * @return the axis
+       */
+      int chosenAxis() {
+        return this.chosenAxis;
+      }
+
+      /**
+       * Gets the bin of the chosen split.
+       *
+       * @return the split bin
+       */
+      int chosenSplit() {
+        return this.chosenSplit;
+      }
+
+      /**
+       * Gets the lowest centroid on the chosen axis.
+       *
+       * @return the lowest centroid
+       */
+      float chosenLow() {
+        return this.chosenLow;
+      }
+
+      /**
+       * Gets the centroid to bin scale on the chosen axis.
+       *
+       * @return the scale
+       */
+      float chosenScale() {
+        return this.chosenScale;
+      }
+
+      /**
+       * Resets a box to empty.
+       *
+       * @param _bounds the array holding the box
+       * @param _offset the position of the box
+       */
+      private static void empty(
+          final float[] _bounds,
+          final int _offset) {
+        Arrays.fill(_bounds, _offset, _offset + MeshBvh.MAX_OFFSET,
+          Float.POSITIVE_INFINITY);
+        Arrays.fill(_bounds, _offset + MeshBvh.MAX_OFFSET,
+          _offset + MeshBvh.BOUNDS_STRIDE, Float.NEGATIVE_INFINITY);
+      }
+
+      /**
+       * Grows a box to include another.
+       *
+       * @param _target the array holding the box to grow
+       * @param _targetOffset the position of the box to grow
+       * @param _source the array holding the included box
+       * @param _sourceOffset the position of the included box
+       */
+      private static void grow(
+          final float[] _target,
+          final int _targetOffset,
+          final float[] _source,
+          final int _sourceOffset) {
+        for (int axis = 0; axis < MeshBvh.MAX_OFFSET; axis++) {
+          _target[_targetOffset + axis] = Math.min(
+            _target[_targetOffset + axis], _source[_sourceOffset + axis]);
+          final int max = MeshBvh.MAX_OFFSET + axis;
+          _target[_targetOffset + max] = Math.max(
+            _target[_targetOffset + max], _source[_sourceOffset + max]);
+        }
+      }
+
+    }
+
+  }
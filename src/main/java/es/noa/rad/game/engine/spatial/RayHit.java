@@ -0,0 +1,221 @@
+package es.noa.rad.game.engine.spatial;
+
+import java.util.Arrays;
+
+import org.joml.Vector3f;
+import org.joml.primitives.Rayf;
+
+  /**
+   * Result and scratch state of a ray query.
+   *
+   * <p>Besides the closest hit (distance, primitive and barycentric
+   * coordinates) it owns the traversal stack and the precomputed ray used
+   * by the spatial structures, so queries never allocate. Keep one instance
+   * per querying thread.
+   *
+   * @see MeshBvh#intersect(Rayf, float, RayHit)
+   */
+  public final class RayHit {
+
+    /**
+     * Value of {@link #primitive()} when nothing was hit.
+     */
+    public static final int NO_HIT = -1;
+
+    /**
+     * Number of floats of the precomputed ray.
+     */
+    static final int RAY_SIZE = 9;
+
+    /**
+     * Offset of the direction in the precomputed ray.
+     */
+    static final int RAY_DIRECTION = 3;
+
+    /**
+     * Offset of the inverse direction in the precomputed ray.
+     */
+    static final int RAY_INVERSE = 6;
+
+    /**
+     * Initial depth of the traversal stack.
+     */
+    private static final int INITIAL_STACK = 64;
+
+    /**
+     * Distance along the ray of the closest hit.
+     */
+    private float distance;
+
+    /**
+     * Primitive of the closest hit, or {@link #NO_HIT}.
+     */
+    private int primitive;
+
+    /**
+     * First barycentric coordinate of the closest hit.
+     */
+    private float u;
+
+    /**
+     * Second barycentric coordinate of the closest hit.
+     */
+    private float v;
+
+    /**
+     * Origin, direction and inverse direction of the current ray.
+     */
+    private final float[] ray;
+
+    /**
+     * Traversal stack.
+     */
+    private int[] stack;
+
+    /**
+     * Creates an empty hit.
+     */
+    public RayHit() {
+      this.ray = new float[RayHit.RAY_SIZE];
+      this.stack = new int[RayHit.INITIAL_STACK];
+      this.reset(Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Checks whether the last query hit something.
+     *
+     * @return {@code true} if a primitive was hit
+     */
+    public boolean hit() {
+      return this.primitive != RayHit.NO_HIT;
+    }
+
+    /**
+     * Gets the distance along the ray of the closest hit, in units of the
+     * ray direction length.
+     *
+     * @return the distance, or the maximum distance if nothing was hit
+     */
+    public float distance() {
+      return this.distance;
+    }
+
+    /**
+     * Gets the primitive of the closest hit (the triangle index for
+     * meshes, the proxy for trees).
+     *
+     * @return the primitive, or {@link #NO_HIT}
+     */
+    public int primitive() {
+      return this.primitive;
+    }
+
+    /**
+     * Gets the first barycentric coordinate of the closest hit (weight of
+     * the second triangle vertex).
+     *
+     * @return the coordinate
+     */
+    public float u() {
+      return this.u;
+    }
+
+    /**
+     * Gets the second barycentric coordinate of the closest hit (weight of
+     * the third triangle vertex).
+     *
+     * @return the coordinate
+     */
+    public float v() {
+      return this.v;
+    }
+
+    /**
+     * Computes the world position of the closest hit.
+     *
+     * @param _ray the ray of the query
+     * @param _dest the vector receiving the position
+     * @return the destination vector
+     */
+    public Vector3f point(
+        final Rayf _ray,
+        final Vector3f _dest) {
+      return _dest.set(
+        _ray.oX + (_ray.dX * this.distance),
+        _ray.oY + (_ray.dY * this.distance),
+        _ray.oZ + (_ray.dZ * this.distance)
+      );
+    }
+
+    /**
+     * Clears the hit before a query.
+     *
+     * @param _maxDistance the maximum distance of the query
+     */
+    void reset(
+        final float _maxDistance) {
+      this.distance = _maxDistance;
+      this.primitive = RayHit.NO_HIT;
+      this.u = 0.0F;
+      this.v = 0.0F;
+    }
+
+    /**
+     * Records a closer hit.
+     *
+     * @param _distance the distance along the ray
+     * @param _primitive the primitive
+     * @param _u the first barycentric coordinate
+     * @param _v the second barycentric coordinate
+     */
+    void set(
+        final float _distance,
+        final int _primitive,
+        final float _u,
+        final float _v) {
+      this.distance = _distance;
+      this.primitive = _primitive;
+      this.u = _u;
+      this.v = _v;
+    }
+
+    /**
+     * Precomputes the ray of a query.
+     *
+     * @param _ray the ray
+     * @return the origin, direction and inverse direction
+     */
+    float[] prepare(
+        final Rayf _ray) {
+      this.ray[0] = _ray.oX;
+      this.ray[1] = _ray.oY;
+      this.ray[2] = _ray.oZ;
+      this.ray[RayHit.RAY_DIRECTION] = _ray.dX;
+      this.ray[RayHit.RAY_DIRECTION + 1] = _ray.dY;
+      this.ray[RayHit.RAY_DIRECTION + 2] = _ray.dZ;
+      this.ray[RayHit.RAY_INVERSE] = 1.0F / _ray.dX;
+      this.ray[RayHit.RAY_INVERSE + 1] = 1.0F / _ray.dY;
+      this.ray[RayHit.RAY_INVERSE + 2] = 1.0F / _ray.dZ;
+      return this.ray;
+    }
+
+    /**
+     * Gets the traversal stack.
+     *
+     * @return the stack
+     */
+    int[] stack() {
+      return this.stack;
+    }
+
+    /**
+     * Doubles the traversal stack.
+     *
+     * @return the new stack, with the previous content
+     */
+    int[] growStack() {
+      this.stack = Arrays.copyOf(this.stack, this.stack.length * 2);
+      return this.stack;
+    }
+
+  }
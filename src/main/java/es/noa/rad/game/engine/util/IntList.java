@@ -0,0 +1,156 @@
+package es.noa.rad.game.engine.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+  /**
+   * Growable list of primitive {@code int} values.
+   *
+   * <p>Meant to be allocated once and reused every frame: {@link #clear()}
+   * only resets the size, so once the list has grown to the largest frame
+   * seen, adding values never allocates. The backing array is exposed for
+   * bulk writes from hot loops; {@link #ensureCapacity(int)} followed by
+   * {@link #size(int)} lets producers fill it directly.
+   *
+   * <p>Not thread-safe.
+   */
+  public final class IntList {
+
+    /**
+     * Largest capacity a Java array can safely be allocated with.
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * Backing array.
+     */
+    private int[] data;
+
+    /**
+     * Number of values in the list.
+     */
+    private int size;
+
+    /**
+     * Creates an empty list.
+     *
+     * @param _capacity the number of values the list can hold before
+     *     growing
+     */
+    public IntList(
+        final int _capacity) {
+      this.data = new int[Math.max(1, _capacity)];
+      this.size = 0;
+    }
+
+    /**
+     * Appends a value.
+     *
+     * @param _value the value to append
+     */
+    public void add(
+        final int _value) {
+      if (this.size == this.data.length) {
+        this.ensureCapacity(this.size + 1);
+      }
+      this.data[this.size++] = _value;
+    }
+
+    /**
+     * Gets a value.
+     *
+     * @param _index the position of the value
+     * @return the value
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public int get(
+        final int _index) {
+      return this.data[Objects.checkIndex(_index, this.size)];
+    }
+
+    /**
+     * Replaces a value.
+     *
+     * @param _index the position of the value
+     * @param _value the new value
+     * @throws IndexOutOfBoundsException if the position is out of range
+     */
+    public void set(
+        final int _index,
+        final int _value) {
+      this.data[Objects.checkIndex(_index, this.size)] = _value;
+    }
+
+    /**
+     * Gets the number of values.
+     *
+     * @return the size
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Sets the number of values after a bulk write to {@link #array()}.
+     *
+     * @param _size the new size
+     * @throws IndexOutOfBoundsException if the size exceeds the capacity
+     */
+    public void size(
+        final int _size) {
+      this.size = Objects.checkIndex(_size, this.data.length + 1);
+    }
+
+    /**
+     * Checks whether the list is empty.
+     *
+     * @return {@code true} if the list holds no value
+     */
+    public boolean isEmpty() {
+      return this.size == 0;
+    }
+
+    /**
+     * Removes every value, keeping the capacity.
+     */
+    public void clear() {
+      this.size = 0;
+    }
+
+    /**
+     * Grows the backing array to hold at least the given number of values.
+     *
+     * <p>The backing array returned by {@link #array()} may be replaced.
+     *
+     * @param _capacity the minimum capacity
+     */
+    public void ensureCapacity(
+        final int _capacity) {
+      if (_capacity > this.data.length) {
+        final int newCapacity = Math.max(
+          _capacity,
+          (int) Math.min(IntList.MAX_CAPACITY, this.data.length * 2L));
+        this.data = Arrays.copyOf(this.data, newCapacity);
+      }
+    }
+
+    /**
+     * Gets the number of values the list can hold before growing.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+      return this.data.length;
+    }
+
+    /**
+     * Gets the backing array. Only the first {@link #size()} values are
+     * meaningful.
+     *
+     * @return the backing array
+     */
+    public int[] array() {
+      return this.data;
+    }
+
+  }
@@ -0,0 +1,182 @@
+package es.noa.rad.game.engine.util;
+
+import java.util.Arrays;
+
+  /**
+   * Hash map from primitive {@code long} keys to {@code int} values.
+   *
+   * <p>Open addressing with linear probing over flat arrays, so lookups do
+   * not box keys and, like {@link IntList}, a map reused every frame stops
+   * allocating once it has grown to the largest frame seen. Entries cannot
+   * be removed one by one; {@link #clear()} empties the whole map.
+   *
+   * <p>Not thread-safe.
+   */
+  public final class LongIntMap {
+
+    /**
+     * Largest fraction of the slots in use before the map grows.
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Multiplier spreading the key bits (golden ratio, 64-bit).
+     */
+    private static final long HASH_MULTIPLIER = -7046029254386353131L;
+
+    /**
+     * Key of every slot.
+     */
+    private long[] keys;
+
+    /**
+     * Value of every slot.
+     */
+    private int[] values;
+
+    /**
+     * Whether every slot holds an entry.
+     */
+    private boolean[] used;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Number of entries the map holds before growing.
+     */
+    private int threshold;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param _capacity the number of entries the map can hold before
+     *     growing
+     */
+    public LongIntMap(
+        final int _capacity) {
+      this.allocate(LongIntMap.tableSize(Math.max(1, _capacity)));
+      this.size = 0;
+    }
+
+    /**
+     * Associates a value with a key, replacing the previous value.
+     *
+     * @param _key the key
+     * @param _value the value
+     */
+    public void put(
+        final long _key,
+        final int _value) {
+      if (this.size >= this.threshold) {
+        this.grow();
+      }
+      final int slot = this.find(_key);
+      if (!this.used[slot]) {
+        this.used[slot] = true;
+        this.keys[slot] = _key;
+        this.size++;
+      }
+      this.values[slot] = _value;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param _key the key
+     * @param _missing the value returned when the key is absent
+     * @return the value, or {@code _missing} if the key is absent
+     */
+    public int get(
+        final long _key,
+        final int _missing) {
+      final int slot = this.find(_key);
+      if (this.used[slot]) {
+        return this.values[slot];
+      }
+      return _missing;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the size
+     */
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Removes every entry, keeping the capacity.
+     */
+    public void clear() {
+      if (this.size > 0) {
+        Arrays.fill(this.used, false);
+        this.size = 0;
+      }
+    }
+
+    /**
+     * Finds the slot holding a key, or the empty slot it would go to.
+     *
+     * @param _key the key
+     * @return the slot
+     */
+    private int find(
+        final long _key) {
+      final int mask = this.keys.length - 1;
+      long hash = _key * LongIntMap.HASH_MULTIPLIER;
+      hash ^= hash >>> Integer.SIZE;
+      int slot = ((int) hash) & mask;
+      while (this.used[slot] && (this.keys[slot] != _key)) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /**
+     * Doubles the table and reinserts every entry.
+     */
+    private void grow() {
+      final long[] oldKeys = this.keys;
+      final int[] oldValues = this.values;
+      final boolean[] oldUsed = this.used;
+      this.allocate(oldKeys.length * 2);
+      for (int slot = 0; slot < oldKeys.length; slot++) {
+        if (oldUsed[slot]) {
+          final int target = this.find(oldKeys[slot]);
+          this.used[target] = true;
+          this.keys[target] = oldKeys[slot];
+          this.values[target] = oldValues[slot];
+        }
+      }
+    }
+
+    /**
+     * Replaces the table with an empty one.
+     *
+     * @param _slots the number of slots (power of two)
+     */
+    private void allocate(
+        final int _slots) {
+      this.keys = new long[_slots];
+      this.values = new int[_slots];
+      this.used = new boolean[_slots];
+      this.threshold = (int) (_slots * LongIntMap.LOAD_FACTOR);
+    }
+
+    /**
+     * Computes the number of slots for a number of entries.
+     *
+     * @param _capacity the number of entries
+     * @return the number of slots (power of two)
+     */
+    private static int tableSize(
+        final int _capacity) {
+      final int slots = (int) Math.ceil(_capacity / LongIntMap.LOAD_FACTOR);
+      return Math.max(2, Integer.highestOneBit(slots - 1) << 1);
+    }
+
+  }
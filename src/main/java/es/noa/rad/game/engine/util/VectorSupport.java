@@ -0,0 +1,53 @@
+package es.noa.rad.game.engine.util;
+
+  /**
+   * Detection of the incubating Vector API ({@code jdk.incubator.vector}).
+   *
+   * <p>The engine is compiled against the Vector API, but the module is
+   * only resolved at runtime when the JVM is started with
+   * {@code --add-modules jdk.incubator.vector}. Classes using it must only
+   * be reached after checking {@link #available()}; otherwise the scalar
+   * fallback has to be used.
+   *
+   * <p>The Vector API can also be disabled on purpose with the system
+   * property {@code es.noa.rad.game.vector=false}, which is handy to compare
+   * both code paths.
+   */
+  public final class VectorSupport {
+
+    /**
+     * Name of the Vector API module.
+     */
+    public static final String MODULE = "jdk.incubator.vector";
+
+    /**
+     * System property that disables the Vector API when set to
+     * {@code false}.
+     */
+    public static final String PROPERTY = "es.noa.rad.game.vector";
+
+    /**
+     * Whether the Vector API module is resolved and enabled.
+     */
+    private static final boolean AVAILABLE
+      = ModuleLayer.boot().findModule(VectorSupport.MODULE).isPresent()
+        && Boolean.parseBoolean(
+          System.getProperty(VectorSupport.PROPERTY, "true"));
+
+    /**
+     * Private constructor to prevent instantiation of the utility class.
+     */
+    private VectorSupport() {
+      super();
+    }
+
+    /**
+     * Checks whether the Vector API can be used.
+     *
+     * @return {@code true} if the module is resolved and not disabled
+     */
+    public static boolean available() {
+      return VectorSupport.AVAILABLE;
+    }
+
+  }
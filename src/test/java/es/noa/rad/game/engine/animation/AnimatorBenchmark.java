@@ -0,0 +1,788 @@
+package es.noa.rad.game.engine.animation;
+
+import es.noa.rad.game.engine.asset.AnimationImporter;
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.job.JobSystem;
+import es.noa.rad.game.engine.math.BatchMath;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Random;
+import org.joml.Matrix4f;
+
+  /**
+   * Measures the {@link Animator} on a thousand characters and the memory
+   * saved by the {@link ClipCompressor}.
+   *
+   * <p>Writes a skinned glTF model: a root with four chains of joints, a
+   * triangle bound to every joint, and two clips keyed at 30 fps that
+   * rotate every joint along a sine curve, except the tips of the chains,
+   * which keep their bind rotation. The model is imported with the
+   * {@link AnimationImporter} twice, keeping every key and with a
+   * tolerance, and the compressed size is compared with the raw Assimp
+   * channels. Sampling the compressed clips at every source key must
+   * stay close to the source curves.
+   *
+   * <p>The skinning palette of a character in the bind pose must be the
+   * identity, and the palettes of the animated characters must match the
+   * joint hierarchy composed with JOML from the same poses. The median
+   * update time of the animator is then reported with half of the
+   * characters blending both clips, together with the bytes the calling
+   * thread allocates per frame.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class AnimatorBenchmark {
+
+    /**
+     * Animated characters.
+     */
+    private static final int CHARACTERS = 1_000;
+
+    /**
+     * Chains of joints hanging from the root.
+     */
+    private static final int CHAINS = 4;
+
+    /**
+     * Joints of a chain.
+     */
+    private static final int CHAIN_JOINTS = 15;
+
+    /**
+     * Joints at the end of a chain that keep their bind rotation.
+     */
+    private static final int STILL_TIPS = 3;
+
+    /**
+     * Joints of the model.
+     */
+    private static final int JOINTS =
+      1 + (AnimatorBenchmark.CHAINS * AnimatorBenchmark.CHAIN_JOINTS);
+
+    /**
+     * Length of a bone.
+     */
+    private static final float BONE = 0.1F;
+
+    /**
+     * Duration of the clips in seconds.
+     */
+    private static final float DURATION = 2.0F;
+
+    /**
+     * Keys of every source channel, 30 per second.
+     */
+    private static final int KEYS = 61;
+
+    /**
+     * Largest joint rotation of the clips in radians.
+     */
+    private static final float AMPLITUDE = 0.6F;
+
+    /**
+     * Names of the clips; the second one cycles twice as fast.
+     */
+    private static final String[] CLIPS = {"walk", "run"};
+
+    /**
+     * Tolerance of the compressed import.
+     */
+    private static final float TOLERANCE = 0.002F;
+
+    /**
+     * Largest rotation error allowed at the source keys, in radians.
+     */
+    private static final double MAX_ERROR = 0.005;
+
+    /**
+     * Largest difference allowed between the palettes and JOML.
+     */
+    private static final float EPSILON = 1.0E-4F;
+
+    /**
+     * Weight of the second clip on the blending characters.
+     */
+    private static final float BLEND_WEIGHT = 0.3F;
+
+    /**
+     * Elapsed time of a frame in seconds.
+     */
+    private static final float DELTA_TIME = 1F / 60F;
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 100;
+
+    /**
+     * Frames timed; the median is reported.
+     */
+    private static final int FRAMES = 101;
+
+    /**
+     * Not instantiable.
+     */
+    private AnimatorBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     * @throws IOException if the model cannot be written or imported
+     */
+    public static void main(
+        final String[] _args) throws IOException {
+      Configuration.get().init();
+      final Path model = Files.createTempFile("animation", ".gltf");
+      final AnimationImporter exact;
+      final AnimationImporter compressed;
+      try {
+        AnimatorBenchmark.write(model);
+        exact = AnimationImporter.load(model, 0.0F);
+        compressed = AnimationImporter.load(model,
+          AnimatorBenchmark.TOLERANCE);
+      } finally {
+        Files.deleteIfExists(model);
+      }
+      AnimatorBenchmark.checkCompression(exact, compressed);
+      AnimatorBenchmark.checkSkinning(compressed);
+      AnimatorBenchmark.time(compressed);
+      System.out.println("AnimatorBenchmark passed");
+    }
+
+    /**
+     * Checks the size and the accuracy of the compressed clips.
+     *
+     * @param _exact the import keeping every key
+     * @param _compressed the import with the tolerance
+     */
+    private static void checkCompression(
+        final AnimationImporter _exact,
+        final AnimationImporter _compressed) {
+      final Skeleton skeleton = _compressed.skeleton();
+      AnimatorBenchmark.check(
+        _compressed.clipCount() == AnimatorBenchmark.CLIPS.length,
+        "Imported " + _compressed.clipCount() + " clips");
+      AnimatorBenchmark.check(
+        skeleton.joint(AnimatorBenchmark.jointName(0)) >= 0,
+        "Root joint not imported");
+      final long source = _compressed.sourceBytes();
+      System.out.printf("%d joints, %d clips of %d keys per channel%n",
+        skeleton.jointCount(), _compressed.clipCount(),
+        AnimatorBenchmark.KEYS);
+      System.out.printf("Assimp channels     %,9d bytes%n", source);
+      System.out.printf("tolerance 0         %,9d bytes (%.1fx smaller)%n",
+        _exact.compressedBytes(),
+        ((double) source) / _exact.compressedBytes());
+      System.out.printf("tolerance %.3f     %,9d bytes (%.1fx smaller)%n",
+        AnimatorBenchmark.TOLERANCE, _compressed.compressedBytes(),
+        ((double) source) / _compressed.compressedBytes());
+      AnimatorBenchmark.check((_exact.compressedBytes() < source)
+        && (_compressed.compressedBytes() < _exact.compressedBytes()),
+        "Compression did not shrink the clips");
+      for (int clip = 0; clip < AnimatorBenchmark.CLIPS.length; clip++) {
+        final String name = AnimatorBenchmark.CLIPS[clip];
+        final double exactError = AnimatorBenchmark.error(
+          _exact.skeleton(), _exact.clip(name), clip);
+        final double error =
+          AnimatorBenchmark.error(skeleton, _compressed.clip(name), clip);
+        System.out.printf("%-4s largest rotation error %.4f rad,"
+          + " %.4f rad with tolerance 0%n", name, error, exactError);
+        AnimatorBenchmark.check(error <= AnimatorBenchmark.MAX_ERROR,
+          name + " rotation error " + error);
+      }
+    }
+
+    /**
+     * Measures the largest rotation error of a clip at the source keys.
+     *
+     * @param _skeleton the skeleton of the clip
+     * @param _clip the clip
+     * @param _index the index of the source clip
+     * @return the largest angle between a sampled and a source rotation
+     */
+    private static double error(
+        final Skeleton _skeleton,
+        final AnimationClip _clip,
+        final int _index) {
+      final Pose pose = new Pose(_skeleton.jointCount());
+      final float[] expected = new float[Pose.ROTATION_STRIDE];
+      final float[] rotations = pose.rotations();
+      double largest = 0.0;
+      for (int key = 0; key < AnimatorBenchmark.KEYS; key++) {
+        final float time = AnimatorBenchmark.time(key);
+        _clip.sample(time, pose);
+        for (int joint = 0; joint < AnimatorBenchmark.JOINTS; joint++) {
+          AnimatorBenchmark.rotation(_index, joint, time, expected);
+          final int offset = Pose.ROTATION_STRIDE
+            * _skeleton.joint(AnimatorBenchmark.jointName(joint));
+          double dot = 0.0;
+          for (int component = 0; component < Pose.ROTATION_STRIDE;
+              component++) {
+            dot += rotations[offset + component] * expected[component];
+          }
+          largest = Math.max(largest,
+            2.0 * Math.acos(Math.min(Math.abs(dot), 1.0)));
+        }
+      }
+      return largest;
+    }
+
+    /**
+     * Checks the skinning palettes in the bind pose and while playing.
+     *
+     * @param _importer the imported skeleton and clips
+     */
+    private static void checkSkinning(
+        final AnimationImporter _importer) {
+      final Skeleton skeleton = _importer.skeleton();
+      final JobSystem jobSystem = new JobSystem();
+      try {
+        final Animator animator = new Animator(jobSystem, 2);
+        final int still = animator.create(skeleton);
+        final int moving = animator.create(skeleton);
+        animator.play(moving, _importer.clip(AnimatorBenchmark.CLIPS[0]));
+        animator.blend(moving, _importer.clip(AnimatorBenchmark.CLIPS[1]),
+          AnimatorBenchmark.BLEND_WEIGHT);
+        animator.speed(moving, 1.3F);
+        final float[] identity = new float[BatchMath.MATRIX_SIZE];
+        new Matrix4f().get(identity);
+        for (int step = 0; step < 10; step++) {
+          animator.update(0.137F);
+          final float[] palette = animator.skinning(still);
+          for (int joint = 0; joint < skeleton.jointCount(); joint++) {
+            for (int cell = 0; cell < BatchMath.MATRIX_SIZE; cell++) {
+              AnimatorBenchmark.check(Math.abs(
+                palette[(joint * BatchMath.MATRIX_SIZE) + cell]
+                  - identity[cell]) <= AnimatorBenchmark.EPSILON,
+                "Bind pose palette of joint " + joint + " is not identity");
+            }
+          }
+          AnimatorBenchmark.checkPalette(skeleton, animator.pose(moving),
+            animator.skinning(moving));
+        }
+      } finally {
+        jobSystem.close();
+      }
+      System.out.println("Palettes match JOML");
+    }
+
+    /**
+     * Checks a skinning palette against the hierarchy composed with JOML.
+     *
+     * @param _skeleton the skeleton
+     * @param _pose the local pose
+     * @param _palette the palette computed from the pose
+     */
+    private static void checkPalette(
+        final Skeleton _skeleton,
+        final Pose _pose,
+        final float[] _palette) {
+      final int joints = _skeleton.jointCount();
+      final Matrix4f[] models = new Matrix4f[joints];
+      final Matrix4f skin = new Matrix4f();
+      final Matrix4f inverseBind = new Matrix4f();
+      final float[] expected = new float[BatchMath.MATRIX_SIZE];
+      final float[] t = _pose.translations();
+      final float[] r = _pose.rotations();
+      final float[] s = _pose.scales();
+      for (int joint = 0; joint < joints; joint++) {
+        final int v = joint * Pose.VECTOR_STRIDE;
+        final int q = joint * Pose.ROTATION_STRIDE;
+        final Matrix4f local = new Matrix4f().translationRotateScale(
+          t[v], t[v + 1], t[v + 2], r[q], r[q + 1], r[q + 2], r[q + Pose.W],
+          s[v], s[v + 1], s[v + 2]);
+        final int parent = _skeleton.parent(joint);
+        models[joint] = (parent < 0) ? local : models[parent].mul(local,
+          new Matrix4f());
+        models[joint].mul(inverseBind.set(_skeleton.inverseBinds(),
+          joint * BatchMath.MATRIX_SIZE), skin).get(expected);
+        for (int cell = 0; cell < BatchMath.MATRIX_SIZE; cell++) {
+          AnimatorBenchmark.check(Math.abs(
+            _palette[(joint * BatchMath.MATRIX_SIZE) + cell]
+              - expected[cell]) <= AnimatorBenchmark.EPSILON,
+            "Palette of joint " + joint + " differs from JOML");
+        }
+      }
+    }
+
+    /**
+     * Times the update of every character, half of them blending.
+     *
+     * @param _importer the imported skeleton and clips
+     */
+    private static void time(
+        final AnimationImporter _importer) {
+      final Skeleton skeleton = _importer.skeleton();
+      final AnimationClip walk = _importer.clip(AnimatorBenchmark.CLIPS[0]);
+      final AnimationClip run = _importer.clip(AnimatorBenchmark.CLIPS[1]);
+      final Random random = new Random(48);
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long[] nanos = new long[AnimatorBenchmark.FRAMES];
+      final JobSystem jobSystem = new JobSystem();
+      try {
+        final Animator animator =
+          new Animator(jobSystem, AnimatorBenchmark.CHARACTERS);
+        for (int index = 0; index < AnimatorBenchmark.CHARACTERS; index++) {
+          final int character = animator.create(skeleton);
+          animator.play(character, walk);
+          animator.speed(character, 0.5F + random.nextFloat());
+          if ((index % 2) == 1) {
+            animator.blend(character, run, AnimatorBenchmark.BLEND_WEIGHT);
+          }
+        }
+        long allocated = 0L;
+        for (int frame = -AnimatorBenchmark.WARM_FRAMES;
+            frame < AnimatorBenchmark.FRAMES; frame++) {
+          threads.getThreadAllocatedBytes(thread);
+          final long before = threads.getThreadAllocatedBytes(thread);
+          animator.update(AnimatorBenchmark.DELTA_TIME);
+          final long bytes = threads.getThreadAllocatedBytes(thread) - before;
+          if (frame >= 0) {
+            nanos[frame] = animator.updateNanos();
+            allocated += bytes;
+          }
+        }
+        Arrays.sort(nanos);
+        final double millis = nanos[nanos.length / 2] / 1.0E6;
+        System.out.printf("%d characters (half blending) on %d workers:"
+          + " %.2f ms per frame, %.1f us per character,"
+          + " %.0f bytes per frame%n", AnimatorBenchmark.CHARACTERS,
+          jobSystem.threads(), millis,
+          (millis * 1.0E3) / AnimatorBenchmark.CHARACTERS,
+          ((double) allocated) / AnimatorBenchmark.FRAMES);
+      } finally {
+        jobSystem.close();
+      }
+    }
+
+    /**
+     * Writes the skinned and animated model.
+     *
+     * @param _model the glTF file
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(
+        final Path _model) throws IOException {
+      final int joints = AnimatorBenchmark.JOINTS;
+      final float[][] locals = new float[joints][];
+      final float[][] globals = new float[joints][];
+      final StringBuilder nodes = new StringBuilder();
+      for (int joint = 0; joint < joints; joint++) {
+        final int parent = AnimatorBenchmark.parent(joint);
+        locals[joint] = AnimatorBenchmark.bindTranslation(joint);
+        globals[joint] = locals[joint].clone();
+        if (parent >= 0) {
+          for (int axis = 0; axis < Pose.VECTOR_STRIDE; axis++) {
+            globals[joint][axis] += globals[parent][axis];
+          }
+        }
+        final StringBuilder children = new StringBuilder();
+        for (int child = joint + 1; child < joints; child++) {
+          if (AnimatorBenchmark.parent(child) == joint) {
+            children.append(children.length() == 0 ? "" : ",").append(child);
+          }
+        }
+        nodes.append(String.format(Locale.ROOT, "{\"name\":\"%s\","
+          + "\"translation\":[%s]%s},", AnimatorBenchmark.jointName(joint),
+          AnimatorBenchmark.list(locals[joint]), children.length() == 0
+            ? "" : ",\"children\":[" + children + "]"));
+      }
+      nodes.append("{\"name\":\"body\",\"mesh\":0,\"skin\":0}");
+
+      final GltfBuffer buffer = new GltfBuffer();
+      final float[] positions = new float[joints * 9];
+      final short[] jointIndices = new short[joints * 12];
+      final float[] weights = new float[joints * 12];
+      final float[] inverseBinds = new float[joints * BatchMath.MATRIX_SIZE];
+      for (int joint = 0; joint < joints; joint++) {
+        final float[] at = globals[joint];
+        for (int corner = 0; corner < 3; corner++) {
+          final int vertex = (joint * 3) + corner;
+          positions[vertex * 3] = at[0] + ((corner == 1) ? 0.05F : 0.0F);
+          positions[(vertex * 3) + 1] = at[1];
+          positions[(vertex * 3) + 2] = at[2] + ((corner == 2) ? 0.05F : 0.0F);
+          jointIndices[vertex * 4] = (short) joint;
+          weights[vertex * 4] = 1.0F;
+        }
+        new Matrix4f().translation(-at[0], -at[1], -at[2])
+          .get(inverseBinds, joint * BatchMath.MATRIX_SIZE);
+      }
+      final int positionAccessor = buffer.floats(positions, "VEC3", true);
+      final int jointAccessor = buffer.shorts(jointIndices);
+      final int weightAccessor = buffer.floats(weights, "VEC4", false);
+      final int bindAccessor = buffer.floats(inverseBinds, "MAT4", false);
+
+      final float[] times = new float[AnimatorBenchmark.KEYS];
+      for (int key = 0; key < times.length; key++) {
+        times[key] = AnimatorBenchmark.time(key);
+      }
+      final int timeAccessor = buffer.floats(times, "SCALAR", true);
+      final StringBuilder animations = new StringBuilder();
+      for (int clip = 0; clip < AnimatorBenchmark.CLIPS.length; clip++) {
+        final StringBuilder channels = new StringBuilder();
+        final StringBuilder samplers = new StringBuilder();
+        final float[] rotation = new float[Pose.ROTATION_STRIDE];
+        for (int joint = 0; joint < joints; joint++) {
+          final float[] rotations =
+            new float[AnimatorBenchmark.KEYS * Pose.ROTATION_STRIDE];
+          for (int key = 0; key < AnimatorBenchmark.KEYS; key++) {
+            AnimatorBenchmark.rotation(clip, joint, times[key], rotation);
+            System.arraycopy(rotation, 0, rotations,
+              key * Pose.ROTATION_STRIDE, Pose.ROTATION_STRIDE);
+          }
+          AnimatorBenchmark.channel(channels, samplers, joint, joint,
+            "rotation", timeAccessor,
+            buffer.floats(rotations, "VEC4", false));
+        }
+        final float[] translations =
+          new float[AnimatorBenchmark.KEYS * Pose.VECTOR_STRIDE];
+        for (int key = 0; key < AnimatorBenchmark.KEYS; key++) {
+          translations[(key * Pose.VECTOR_STRIDE) + 1] = 1.0F + (0.05F
+            * (float) Math.sin((4.0 * Math.PI * (clip + 1) * times[key])
+              / AnimatorBenchmark.DURATION));
+        }
+        AnimatorBenchmark.channel(channels, samplers, joints, 0,
+          "translation", timeAccessor,
+          buffer.floats(translations, "VEC3", false));
+        animations.append(animations.length() == 0 ? "" : ",")
+          .append("{\"name\":\"").append(AnimatorBenchmark.CLIPS[clip])
+          .append("\",\"channels\":[").append(channels)
+          .append("],\"samplers\":[").append(samplers).append("]}");
+      }
+
+      final StringBuilder skinJoints = new StringBuilder();
+      for (int joint = 0; joint < joints; joint++) {
+        skinJoints.append(joint == 0 ? "" : ",").append(joint);
+      }
+      final String json = "{\"asset\":{\"version\":\"2.0\"},\"scene\":0,"
+        + "\"scenes\":[{\"nodes\":[0," + joints + "]}],"
+        + "\"nodes\":[" + nodes + "],"
+        + "\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":"
+        + positionAccessor + ",\"JOINTS_0\":" + jointAccessor
+        + ",\"WEIGHTS_0\":" + weightAccessor + "}}]}],"
+        + "\"skins\":[{\"joints\":[" + skinJoints
+        + "],\"inverseBindMatrices\":" + bindAccessor + "}],"
+        + "\"animations\":[" + animations + "],"
+        + buffer.json() + "}";
+      Files.writeString(_model, json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a linear animation channel and its sampler.
+     *
+     * @param _channels the channels of the clip
+     * @param _samplers the samplers of the clip
+     * @param _sampler the index of the new sampler
+     * @param _joint the animated joint
+     * @param _path the animated property
+     * @param _input the accessor of the key times
+     * @param _output the accessor of the key values
+     */
+    private static void channel(
+        final StringBuilder _channels,
+        final StringBuilder _samplers,
+        final int _sampler,
+        final int _joint,
+        final String _path,
+        final int _input,
+        final int _output) {
+      final String separator = (_sampler == 0) ? "" : ",";
+      _channels.append(separator).append("{\"sampler\":").append(_sampler)
+        .append(",\"target\":{\"node\":").append(_joint)
+        .append(",\"path\":\"").append(_path).append("\"}}");
+      _samplers.append(separator).append("{\"input\":").append(_input)
+        .append(",\"output\":").append(_output)
+        .append(",\"interpolation\":\"LINEAR\"}");
+    }
+
+    /**
+     * Computes the source rotation of a joint.
+     *
+     * @param _clip the index of the clip
+     * @param _joint the joint
+     * @param _time the time in seconds
+     * @param _dest the quaternion: x, y, z and w
+     */
+    private static void rotation(
+        final int _clip,
+        final int _joint,
+        final float _time,
+        final float[] _dest) {
+      final int link = (_joint == 0) ? 0
+        : ((_joint - 1) % AnimatorBenchmark.CHAIN_JOINTS);
+      if (link >= (AnimatorBenchmark.CHAIN_JOINTS
+          - AnimatorBenchmark.STILL_TIPS)) {
+        _dest[0] = 0.0F;
+        _dest[1] = 0.0F;
+        _dest[2] = 0.0F;
+        _dest[Pose.W] = 1.0F;
+        return;
+      }
+      final double angle = AnimatorBenchmark.AMPLITUDE * Math.sin(
+        ((2.0 * Math.PI * (_clip + 1) * _time) / AnimatorBenchmark.DURATION)
+          + (_joint * 0.7));
+      final double x = Math.sin(_joint * 1.3);
+      final double y = Math.cos(_joint * 1.3);
+      final double z = 0.5;
+      final double scale =
+        Math.sin(angle / 2.0) / Math.sqrt((x * x) + (y * y) + (z * z));
+      _dest[0] = (float) (x * scale);
+      _dest[1] = (float) (y * scale);
+      _dest[2] = (float) (z * scale);
+      _dest[Pose.W] = (float) Math.cos(angle / 2.0);
+    }
+
+    /**
+     * Gets the parent of a joint of the model.
+     *
+     * @param _joint the joint
+     * @return the parent, -1 for the root
+     */
+    private static int parent(
+        final int _joint) {
+      if (_joint == 0) {
+        return -1;
+      }
+      return (((_joint - 1) % AnimatorBenchmark.CHAIN_JOINTS) == 0)
+        ? 0 : (_joint - 1);
+    }
+
+    /**
+     * Gets the bind translation of a joint of the model.
+     *
+     * @param _joint the joint
+     * @return the translation from its parent: x, y and z
+     */
+    private static float[] bindTranslation(
+        final int _joint) {
+      if (_joint == 0) {
+        return new float[] {0.0F, 1.0F, 0.0F};
+      }
+      final float bone = AnimatorBenchmark.BONE;
+      return switch ((_joint - 1) / AnimatorBenchmark.CHAIN_JOINTS) {
+        case 0 -> new float[] {0.0F, bone, 0.0F};
+        case 1 -> new float[] {bone, 0.0F, 0.0F};
+        case 2 -> new float[] {-bone, 0.0F, 0.0F};
+        default -> new float[] {0.0F, -bone, 0.0F};
+      };
+    }
+
+    /**
+     * Gets the time of a source key.
+     *
+     * @param _key the key
+     * @return the time in seconds
+     */
+    private static float time(
+        final int _key) {
+      return (_key * AnimatorBenchmark.DURATION)
+        / (AnimatorBenchmark.KEYS - 1);
+    }
+
+    /**
+     * Gets the name of a joint of the model.
+     *
+     * @param _joint the joint
+     * @return the name
+     */
+    private static String jointName(
+        final int _joint) {
+      return "joint" + _joint;
+    }
+
+    /**
+     * Formats numbers as a JSON list without brackets.
+     *
+     * @param _values the numbers
+     * @return the list
+     */
+    private static String list(
+        final float[] _values) {
+      final StringBuilder list = new StringBuilder();
+      for (final float value : _values) {
+        list.append(list.length() == 0 ? "" : ",")
+          .append(String.format(Locale.ROOT, "%s", value));
+      }
+      return list.toString();
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+    /**
+     * Binary buffer of a glTF model, embedded as a data URI, with one
+     * buffer view per accessor.
+     */
+    private static final class GltfBuffer {
+
+      /**
+       * glTF component type of {@code float}.
+       */
+      private static final int FLOAT = 5126;
+
+      /**
+       * glTF component type of unsigned {@code short}.
+       */
+      private static final int UNSIGNED_SHORT = 5123;
+
+      /**
+       * Bytes of the buffer.
+       */
+      private final ByteBuffer bytes =
+        ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+      /**
+       * Buffer views written so far.
+       */
+      private final StringBuilder views = new StringBuilder();
+
+      /**
+       * Accessors written so far.
+       */
+      private final StringBuilder accessors = new StringBuilder();
+
+      /**
+       * Number of accessors written so far.
+       */
+      private int count;
+
+      /**
+       * Appends float elements.
+       *
+       * @param _values the components of every element
+       * @param _type the glTF element type
+       * @param _bounds whether to record the bounds of the elements
+       * @return the accessor index
+       */
+      private int floats(
+          final float[] _values,
+          final String _type,
+          final boolean _bounds) {
+        final int components = GltfBuffer.components(_type);
+        final int start = this.bytes.position();
+        for (final float value : _values) {
+          this.bytes.putFloat(value);
+        }
+        String bounds = "";
+        if (_bounds) {
+          final float[] min = new float[components];
+          final float[] max = new float[components];
+          Arrays.fill(min, Float.POSITIVE_INFINITY);
+          Arrays.fill(max, Float.NEGATIVE_INFINITY);
+          for (int index = 0; index < _values.length; index++) {
+            min[index % components] =
+              Math.min(min[index % components], _values[index]);
+            max[index % components] =
+              Math.max(max[index % components], _values[index]);
+          }
+          bounds = ",\"min\":[" + AnimatorBenchmark.list(min)
+            + "],\"max\":[" + AnimatorBenchmark.list(max) + "]";
+        }
+        return this.accessor(start, GltfBuffer.FLOAT,
+          _values.length / components, _type, bounds);
+      }
+
+      /**
+       * Appends unsigned short four-component elements.
+       *
+       * @param _values the components of every element
+       * @return the accessor index
+       */
+      private int shorts(
+          final short[] _values) {
+        final int start = this.bytes.position();
+        for (final short value : _values) {
+          this.bytes.putShort(value);
+        }
+        return this.accessor(start, GltfBuffer.UNSIGNED_SHORT,
+          _values.length / 4, "VEC4", "");
+      }
+
+      /**
+       * Records a buffer view and its accessor for the bytes written since
+       * a position.
+       *
+       * @param _start the position of the first byte
+       * @param _componentType the glTF component type
+       * @param _elements the number of elements
+       * @param _type the glTF element type
+       * @param _bounds the bounds properties, empty if none
+       * @return the accessor index
+       */
+      private int accessor(
+          final int _start,
+          final int _componentType,
+          final int _elements,
+          final String _type,
+          final String _bounds) {
+        final String separator = (this.count == 0) ? "" : ",";
+        this.views.append(separator).append("{\"buffer\":0,\"byteOffset\":")
+          .append(_start).append(",\"byteLength\":")
+          .append(this.bytes.position() - _start).append('}');
+        this.accessors.append(separator).append("{\"bufferView\":")
+          .append(this.count).append(",\"componentType\":")
+          .append(_componentType).append(",\"count\":").append(_elements)
+          .append(",\"type\":\"").append(_type).append('"').append(_bounds)
+          .append('}');
+        return this.count++;
+      }
+
+      /**
+       * Gets the buffer, buffer view and accessor properties.
+       *
+       * @return the JSON properties, without the enclosing braces
+       */
+      private String json() {
+        final byte[] data =
+          Arrays.copyOf(this.bytes.array(), this.bytes.position());
+        return "\"buffers\":[{\"byteLength\":" + data.length
+          + ",\"uri\":\"data:application/octet-stream;base64,"
+          + Base64.getEncoder().encodeToString(data) + "\"}],"
+          + "\"bufferViews\":[" + this.views + "],"
+          + "\"accessors\":[" + this.accessors + "]";
+      }
+
+      /**
+       * Gets the number of components of a glTF element type.
+       *
+       * @param _type the element type
+       * @return the components per element
+       */
+      private static int components(
+          final String _type) {
+        return switch (_type) {
+          case "SCALAR" -> 1;
+          case "VEC3" -> 3;
+          case "VEC4" -> 4;
+          default -> BatchMath.MATRIX_SIZE;
+        };
+      }
+
+    }
+
+  }
@@ -0,0 +1,348 @@
+package es.noa.rad.game.engine.asset;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+  /**
+   * Stresses the {@link AssetCache} over its budget from several threads.
+   *
+   * <p>Every thread acquires keys drawn from a Gaussian, so a few keys are
+   * hot and most are cold, keeps a handful of references and releases
+   * the oldest. The assets loaded add up to several times the budget and
+   * one key in ten of the cold ones fails to load. The check fails if a
+   * closed asset is handed out, an asset is closed twice, the cache ends
+   * over budget with no references, or its accounting differs from the
+   * bytes of the assets still open. Concurrent asynchronous acquisitions
+   * of a key must share one load, and errors and rejected executions
+   * must complete the futures.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class AssetCacheCheck {
+
+    /**
+     * Memory budget of the stressed cache in bytes.
+     */
+    private static final long BUDGET = 20_000_000L;
+
+    /**
+     * Number of stressing threads.
+     */
+    private static final int THREADS = 6;
+
+    /**
+     * Acquisitions made by every thread.
+     */
+    private static final int ITERATIONS = 40_000;
+
+    /**
+     * Number of distinct keys.
+     */
+    private static final int KEYS = 2_000;
+
+    /**
+     * References every thread holds at most.
+     */
+    private static final int HELD = 8;
+
+    /**
+     * Concurrent asynchronous acquisitions of one key.
+     */
+    private static final int ASYNC_ACQUISITIONS = 50;
+
+    /**
+     * Bytes of the assets still open.
+     */
+    private static final AtomicLong LIVE_BYTES = new AtomicLong();
+
+    /**
+     * Assets closed more than once.
+     */
+    private static final AtomicInteger DOUBLE_CLOSES = new AtomicInteger();
+
+    /**
+     * Not instantiable.
+     */
+    private AssetCacheCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if a stressing thread fails
+     * @throws TimeoutException if a future never completes
+     */
+    public static void main(
+        final String[] _args)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      final ExecutorService executor =
+        Executors.newFixedThreadPool(AssetCacheCheck.THREADS);
+      try {
+        AssetCacheCheck.stress(executor);
+        AssetCacheCheck.sharedLoad(executor);
+        AssetCacheCheck.failures();
+      } finally {
+        executor.shutdown();
+      }
+      System.out.println("AssetCacheCheck passed");
+    }
+
+    /**
+     * Acquires and releases keys from every thread of an executor.
+     *
+     * @param _executor the executor
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if a stressing thread fails
+     */
+    private static void stress(
+        final ExecutorService _executor)
+        throws InterruptedException, ExecutionException {
+      final AssetCache cache = new AssetCache(AssetCacheCheck.BUDGET);
+      final List<Future<?>> futures = new ArrayList<>();
+      final long start = System.nanoTime();
+      for (int thread = 0; thread < AssetCacheCheck.THREADS; thread++) {
+        final Random random = new Random(thread);
+        futures.add(_executor.submit(() -> {
+          final ArrayDeque<String> held = new ArrayDeque<>();
+          for (int iteration = 0; iteration < AssetCacheCheck.ITERATIONS;
+              iteration++) {
+            final int key = (int) Math.abs(
+              random.nextGaussian() * AssetCacheCheck.KEYS / 3)
+              % AssetCacheCheck.KEYS;
+            try {
+              final FakeAsset asset =
+                cache.acquire("a" + key, AssetCacheCheck::load);
+              AssetCacheCheck.check(!asset.closed.get(),
+                "Closed asset handed out: a" + key);
+              held.add("a" + key);
+            } catch (final CompletionException completionException) {
+              // An expected failure; no reference is kept.
+            }
+            if (held.size() > AssetCacheCheck.HELD) {
+              cache.release(held.poll());
+            }
+          }
+          while (!held.isEmpty()) {
+            cache.release(held.poll());
+          }
+          return null;
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+      final long nanos = System.nanoTime() - start;
+      final int operations = AssetCacheCheck.THREADS
+        * AssetCacheCheck.ITERATIONS;
+
+      System.out.printf("%d acquisitions, %.0f ns each: hits %d misses %d"
+        + " evictions %d failures %d%n", operations,
+        nanos / (double) operations, cache.hits(), cache.misses(),
+        cache.evictions(), cache.failures());
+      System.out.printf("used %d of %d bytes, %d bytes open%n",
+        cache.usedBytes(), AssetCacheCheck.BUDGET,
+        AssetCacheCheck.LIVE_BYTES.get());
+      AssetCacheCheck.check(cache.usedBytes() <= AssetCacheCheck.BUDGET,
+        "Over budget with no references: " + cache.usedBytes());
+      AssetCacheCheck.check(
+        cache.usedBytes() == AssetCacheCheck.LIVE_BYTES.get(),
+        "Accounting differs from the open assets");
+      AssetCacheCheck.check(AssetCacheCheck.DOUBLE_CLOSES.get() == 0,
+        "Assets closed twice: " + AssetCacheCheck.DOUBLE_CLOSES.get());
+      cache.trim();
+      AssetCacheCheck.check(
+        (cache.size() == 0) && (AssetCacheCheck.LIVE_BYTES.get() == 0),
+        "Assets left after trimming: " + cache.size());
+    }
+
+    /**
+     * Acquires one key asynchronously many times while its load waits.
+     *
+     * @param _executor the executor loading the key
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if the load fails
+     */
+    private static void sharedLoad(
+        final ExecutorService _executor)
+        throws InterruptedException, ExecutionException {
+      final AssetCache cache = new AssetCache(1 << 20);
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger loads = new AtomicInteger();
+      final List<CompletableFuture<FakeAsset>> futures = new ArrayList<>();
+      for (int acquisition = 0;
+          acquisition < AssetCacheCheck.ASYNC_ACQUISITIONS; acquisition++) {
+        futures.add(cache.acquireAsync("shared", key -> {
+          loads.incrementAndGet();
+          try {
+            release.await();
+          } catch (final InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+          }
+          return new FakeAsset(10L);
+        }, _executor));
+      }
+      release.countDown();
+      for (final CompletableFuture<FakeAsset> future : futures) {
+        AssetCacheCheck.check(future.get() == futures.get(0).get(),
+          "Asynchronous acquisitions got different assets");
+      }
+      AssetCacheCheck.check(loads.get() == 1, "Loads: " + loads.get());
+      AssetCacheCheck.check(
+        cache.references("shared") == AssetCacheCheck.ASYNC_ACQUISITIONS,
+        "References: " + cache.references("shared"));
+    }
+
+    /**
+     * Fails loads with an error, a rejected execution and an error on an
+     * executor.
+     *
+     * <p>The error on the executor must also reach the loading thread.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws TimeoutException if a future never completes
+     */
+    private static void failures()
+        throws InterruptedException, TimeoutException {
+      final AssetCache cache = new AssetCache(1_000L);
+      try {
+        cache.acquire("error", key -> {
+          throw new StackOverflowError("load");
+        });
+        AssetCacheCheck.check(false, "Error swallowed");
+      } catch (final StackOverflowError stackOverflowError) {
+        AssetCacheCheck.check(!cache.contains("error"),
+          "Failed key kept after an error");
+      }
+      cache.acquire("error", key -> new FakeAsset(10L));
+      AssetCacheCheck.check(cache.references("error") == 1,
+        "Failed key not reloaded");
+
+      final ExecutorService shutDown = Executors.newSingleThreadExecutor();
+      shutDown.shutdown();
+      try {
+        cache.acquireAsync("rejected", key -> new FakeAsset(1L), shutDown)
+          .join();
+        AssetCacheCheck.check(false, "Rejected load completed");
+      } catch (final CompletionException completionException) {
+        AssetCacheCheck.check(!cache.contains("rejected"),
+          "Rejected key kept");
+      }
+
+      final AtomicInteger uncaught = new AtomicInteger();
+      final ExecutorService executor = Executors.newSingleThreadExecutor(
+        runnable -> {
+          final Thread thread = new Thread(runnable);
+          thread.setUncaughtExceptionHandler(
+            (worker, throwable) -> uncaught.incrementAndGet());
+          return thread;
+        });
+      try {
+        cache.acquireAsync("async", key -> {
+          throw new OutOfMemoryError("load");
+        }, executor).get(2L, TimeUnit.SECONDS);
+        AssetCacheCheck.check(false, "Asynchronous error swallowed");
+      } catch (final ExecutionException executionException) {
+        AssetCacheCheck.check(
+          executionException.getCause() instanceof OutOfMemoryError,
+          "Wrong cause: " + executionException.getCause());
+      } finally {
+        executor.shutdown();
+      }
+      executor.awaitTermination(2L, TimeUnit.SECONDS);
+      AssetCacheCheck.check(uncaught.get() == 1,
+        "Error not rethrown on the loading thread");
+    }
+
+    /**
+     * Loads a key, failing for one key in ten of the cold ones.
+     *
+     * @param _key the key
+     * @return the asset
+     */
+    private static FakeAsset load(
+        final String _key) {
+      if ((_key.length() == 4) && _key.endsWith("7")) {
+        throw new IllegalStateException("Corrupt asset: " + _key);
+      }
+      try {
+        Thread.sleep(0L, 200_000);
+      } catch (final InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      return new FakeAsset(1_000L + (_key.hashCode() & 0xFFFF));
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+    /**
+     * Asset tracking the bytes still open.
+     */
+    private static final class FakeAsset implements Asset {
+
+      /**
+       * Size in bytes.
+       */
+      private final long byteSize;
+
+      /**
+       * Whether the asset was closed.
+       */
+      private final AtomicBoolean closed = new AtomicBoolean();
+
+      /**
+       * Creates an open asset.
+       *
+       * @param _byteSize the size in bytes
+       */
+      FakeAsset(
+          final long _byteSize) {
+        this.byteSize = _byteSize;
+        AssetCacheCheck.LIVE_BYTES.addAndGet(_byteSize);
+      }
+
+      @Override
+      public long byteSize() {
+        return this.byteSize;
+      }
+
+      @Override
+      public void close() {
+        if (this.closed.compareAndSet(false, true)) {
+          AssetCacheCheck.LIVE_BYTES.addAndGet(-this.byteSize);
+        } else {
+          AssetCacheCheck.DOUBLE_CLOSES.incrementAndGet();
+        }
+      }
+
+    }
+
+  }
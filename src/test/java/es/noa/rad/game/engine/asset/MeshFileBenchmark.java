@@ -0,0 +1,388 @@
+package es.noa.rad.game.engine.asset;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.render.MeshArena;
+import es.noa.rad.game.engine.render.VertexFormat;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+import org.lwjgl.assimp.Assimp;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Compares loading a {@link MeshFile} with importing the source model
+   * through Assimp at runtime.
+   *
+   * <p>Writes a large OBJ model of several terrain patches and converts
+   * it once with the {@link MeshImporter}. Each load then ends with every
+   * submesh in a {@link MeshArena}: the runtime path imports the OBJ with
+   * the importer's Assimp flags and interleaves its vertices and indices
+   * into the arena, while the mapped path opens the mesh file and copies
+   * its streams natively. Both must produce the same vertex and index
+   * counts, and the arena must hold the exact bytes of the file streams.
+   * The median load time and the heap bytes allocated by a load are
+   * reported for both, plus the time to only map the file, which is all
+   * drawing straight from the mapping needs. Both files stay in the page
+   * cache between runs, so disk reads are not measured.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class MeshFileBenchmark {
+
+    /**
+     * Terrain patches of the model, one submesh each.
+     */
+    private static final int PATCHES = 4;
+
+    /**
+     * Quads per side of a patch.
+     */
+    private static final int QUADS = 200;
+
+    /**
+     * Assimp imports timed; the median is reported.
+     */
+    private static final int IMPORT_RUNS = 5;
+
+    /**
+     * Mesh file loads timed; the median is reported.
+     */
+    private static final int LOAD_RUNS = 51;
+
+    /**
+     * Vertex format of the submeshes.
+     */
+    private static final VertexFormat FORMAT =
+      VertexFormat.POSITION_NORMAL_TEXCOORD;
+
+    /**
+     * Not instantiable.
+     */
+    private MeshFileBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     * @throws IOException if the model or mesh file cannot be written or
+     *     read
+     */
+    public static void main(
+        final String[] _args)
+        throws IOException {
+      Configuration.get().init();
+      final Path directory = Files.createTempDirectory("meshes");
+      final Path model = directory.resolve("terrain.obj");
+      final Path meshFile = directory.resolve("terrain.nmsh");
+      try {
+        MeshFileBenchmark.writeModel(model);
+        final long start = System.nanoTime();
+        MeshImporter.convert(model, meshFile, ForkJoinPool.commonPool(),
+          MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD, 1);
+        System.out.printf("%.1f MB OBJ converted in %.2f s to a %.1f MB"
+          + " mesh file%n", Files.size(model) / 1.0E6,
+          (System.nanoTime() - start) / 1.0E9, Files.size(meshFile) / 1.0E6);
+        MeshFileBenchmark.run(model, meshFile);
+      } finally {
+        Files.deleteIfExists(meshFile);
+        Files.deleteIfExists(model);
+        Files.delete(directory);
+      }
+      System.out.println("MeshFileBenchmark passed");
+    }
+
+    /**
+     * Checks and times both paths.
+     *
+     * @param _model the OBJ model
+     * @param _meshFile the converted mesh file
+     * @throws IOException if the mesh file cannot be read
+     */
+    private static void run(
+        final Path _model,
+        final Path _meshFile)
+        throws IOException {
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      threads.getThreadAllocatedBytes(thread);
+
+      final long[] importNanos = new long[MeshFileBenchmark.IMPORT_RUNS];
+      long importBytes = 0L;
+      long[] importCounts = null;
+      for (int run = 0; run < importNanos.length; run++) {
+        final MeshArena arena = new MeshArena(16 << 20);
+        try {
+          final long before = threads.getThreadAllocatedBytes(thread);
+          final long start = System.nanoTime();
+          importCounts = MeshFileBenchmark.importModel(_model, arena);
+          importNanos[run] = System.nanoTime() - start;
+          importBytes = threads.getThreadAllocatedBytes(thread) - before;
+        } finally {
+          arena.close();
+        }
+      }
+
+      final long[] loadNanos = new long[MeshFileBenchmark.LOAD_RUNS];
+      final long[] mapNanos = new long[MeshFileBenchmark.LOAD_RUNS];
+      long loadBytes = 0L;
+      long[] loadCounts = null;
+      for (int run = 0; run < loadNanos.length; run++) {
+        final MeshArena arena = new MeshArena(16 << 20);
+        try {
+          final long before = threads.getThreadAllocatedBytes(thread);
+          final long start = System.nanoTime();
+          final MeshFile file = MeshFile.open(_meshFile);
+          mapNanos[run] = System.nanoTime() - start;
+          final int[] meshes = new int[file.submeshCount()];
+          for (int submesh = 0; submesh < meshes.length; submesh++) {
+            meshes[submesh] = file.upload(submesh, arena);
+          }
+          loadNanos[run] = System.nanoTime() - start;
+          loadBytes = threads.getThreadAllocatedBytes(thread) - before;
+          loadCounts = MeshFileBenchmark.verify(file, arena, meshes);
+          file.close();
+        } finally {
+          arena.close();
+        }
+      }
+
+      MeshFileBenchmark.check(Arrays.equals(importCounts, loadCounts),
+        "Assimp loaded " + Arrays.toString(importCounts)
+          + " vertices and indices, the mesh file "
+          + Arrays.toString(loadCounts));
+      Arrays.sort(importNanos);
+      Arrays.sort(loadNanos);
+      Arrays.sort(mapNanos);
+      final double importMs = importNanos[importNanos.length / 2] / 1.0E6;
+      final double loadMs = loadNanos[loadNanos.length / 2] / 1.0E6;
+      System.out.printf("%d submeshes, %d vertices, %d indices%n",
+        MeshFileBenchmark.PATCHES, loadCounts[0], loadCounts[1]);
+      System.out.printf("Assimp import into the arena: %8.2f ms, %,d heap"
+        + " bytes%n", importMs, importBytes);
+      System.out.printf("mesh file into the arena:     %8.2f ms, %,d heap"
+        + " bytes (%.0fx faster)%n", loadMs, loadBytes, importMs / loadMs);
+      System.out.printf("mesh file mapping only:       %8.3f ms%n",
+        mapNanos[mapNanos.length / 2] / 1.0E6);
+      MeshFileBenchmark.check(loadMs < importMs,
+        "Mapped loading is not faster than the Assimp import");
+    }
+
+    /**
+     * Imports the model with Assimp and interleaves its triangle meshes
+     * into an arena, as a runtime import would.
+     *
+     * @param _model the model
+     * @param _arena the arena
+     * @return the total vertex and index counts
+     * @throws IOException if the model cannot be imported
+     */
+    private static long[] importModel(
+        final Path _model,
+        final MeshArena _arena)
+        throws IOException {
+      final AIScene scene = Assimp.aiImportFile(
+        _model.toString(), MeshImporter.IMPORT_FLAGS);
+      if (scene == null) {
+        throw new IOException("Unable to import " + _model + ": "
+          + Assimp.aiGetErrorString());
+      }
+      final long[] counts = new long[2];
+      try {
+        for (int index = 0; index < scene.mNumMeshes(); index++) {
+          final AIMesh mesh = AIMesh.create(scene.mMeshes().get(index));
+          if ((mesh.mPrimitiveTypes() & Assimp.aiPrimitiveType_TRIANGLE)
+              == 0) {
+            continue;
+          }
+          final int vertexCount = mesh.mNumVertices();
+          final int indexCount = mesh.mNumFaces() * 3;
+          final int handle = _arena.create(
+            MeshFileBenchmark.FORMAT, vertexCount, indexCount);
+          MeshFileBenchmark.interleave(mesh, _arena.vertexAddress(handle));
+          final long indices = _arena.indexAddress(handle);
+          final long faces = mesh.mFaces().address();
+          for (int face = 0; face < mesh.mNumFaces(); face++) {
+            final long source = MemoryUtil.memGetAddress(
+              faces + (((long) face) * AIFace.SIZEOF) + AIFace.MINDICES);
+            MemoryUtil.memCopy(source,
+              indices + (((long) face) * 3 * MeshArena.INDEX_SIZE),
+              3L * MeshArena.INDEX_SIZE);
+          }
+          counts[0] += vertexCount;
+          counts[1] += indexCount;
+        }
+      } finally {
+        Assimp.aiReleaseImport(scene);
+      }
+      return counts;
+    }
+
+    /**
+     * Interleaves the positions, normals and texture coordinates of a
+     * mesh.
+     *
+     * @param _mesh the mesh
+     * @param _target the address of the interleaved vertices
+     */
+    private static void interleave(
+        final AIMesh _mesh,
+        final long _target) {
+      final long positions = _mesh.mVertices().address();
+      final long normals = _mesh.mNormals().address();
+      final long texcoords = _mesh.mTextureCoords(0).address();
+      final int stride = MeshFileBenchmark.FORMAT.stride();
+      for (int vertex = 0; vertex < _mesh.mNumVertices(); vertex++) {
+        final long source = ((long) vertex) * AIVector3D.SIZEOF;
+        final long target = _target + (((long) vertex) * stride);
+        MemoryUtil.memCopy(positions + source, target, 3L * Float.BYTES);
+        MemoryUtil.memCopy(normals + source, target + (3L * Float.BYTES),
+          3L * Float.BYTES);
+        MemoryUtil.memCopy(texcoords + source, target + (6L * Float.BYTES),
+          2L * Float.BYTES);
+      }
+    }
+
+    /**
+     * Checks that the arena holds the streams of the mesh file.
+     *
+     * @param _file the mesh file
+     * @param _arena the arena
+     * @param _meshes the arena mesh of every submesh
+     * @return the total vertex and index counts
+     */
+    private static long[] verify(
+        final MeshFile _file,
+        final MeshArena _arena,
+        final int[] _meshes) {
+      final long[] counts = new long[2];
+      final int stride = MeshFileBenchmark.FORMAT.stride();
+      for (int submesh = 0; submesh < _meshes.length; submesh++) {
+        final int vertices = _file.vertexCount(submesh);
+        final int indices = _file.indexCount(submesh);
+        MeshFileBenchmark.check(
+          (_arena.vertexCount(_meshes[submesh]) == vertices)
+            && (_arena.indexCount(_meshes[submesh]) == indices),
+          "Submesh " + submesh + " uploaded with the wrong counts");
+        final long vertexBase = MemoryUtil.memAddress(_file.vertices())
+          + (((long) _file.firstVertex(submesh)) * stride);
+        final long indexBase = MemoryUtil.memAddress(_file.indices())
+          + (((long) _file.firstIndex(submesh)) * MeshArena.INDEX_SIZE);
+        MeshFileBenchmark.check(MeshFileBenchmark.equal(vertexBase,
+          _arena.vertexAddress(_meshes[submesh]), ((long) vertices) * stride)
+          && MeshFileBenchmark.equal(indexBase,
+            _arena.indexAddress(_meshes[submesh]),
+            ((long) indices) * MeshArena.INDEX_SIZE),
+          "Submesh " + submesh + " differs from the mesh file");
+        counts[0] += vertices;
+        counts[1] += indices;
+      }
+      return counts;
+    }
+
+    /**
+     * Compares two blocks of native memory.
+     *
+     * @param _a the first block
+     * @param _b the second block
+     * @param _size the size in bytes
+     * @return whether the blocks hold the same bytes
+     */
+    private static boolean equal(
+        final long _a,
+        final long _b,
+        final long _size) {
+      for (long offset = 0L; offset < _size; offset++) {
+        if (MemoryUtil.memGetByte(_a + offset)
+            != MemoryUtil.memGetByte(_b + offset)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Writes the OBJ model: hilly terrain patches side by side.
+     *
+     * @param _model the file to write
+     * @throws IOException if it cannot be written
+     */
+    private static void writeModel(
+        final Path _model)
+        throws IOException {
+      final int side = MeshFileBenchmark.QUADS + 1;
+      try (BufferedWriter writer = Files.newBufferedWriter(_model)) {
+        for (int patch = 0; patch < MeshFileBenchmark.PATCHES; patch++) {
+          writer.write("o patch" + patch + "\n");
+          for (int z = 0; z < side; z++) {
+            for (int x = 0; x < side; x++) {
+              final float worldX = (patch * MeshFileBenchmark.QUADS) + x;
+              final float height = (float) (Math.sin(worldX * 0.1)
+                * Math.cos(z * 0.13) * 4.0);
+              writer.write(String.format(Locale.ROOT,
+                "v %.4f %.4f %.4f%nvt %.5f %.5f%n", worldX, height,
+                (float) z, x / (float) MeshFileBenchmark.QUADS,
+                z / (float) MeshFileBenchmark.QUADS));
+            }
+          }
+          final int base = (patch * side * side) + 1;
+          for (int z = 0; z < MeshFileBenchmark.QUADS; z++) {
+            for (int x = 0; x < MeshFileBenchmark.QUADS; x++) {
+              final int corner = base + (z * side) + x;
+              MeshFileBenchmark.face(writer, corner, corner + side,
+                corner + 1);
+              MeshFileBenchmark.face(writer, corner + 1, corner + side,
+                corner + side + 1);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Writes a triangle whose vertices share the index of their texture
+     * coordinates.
+     *
+     * @param _writer the writer
+     * @param _a the first vertex, from 1
+     * @param _b the second vertex, from 1
+     * @param _c the third vertex, from 1
+     * @throws IOException if it cannot be written
+     */
+    private static void face(
+        final BufferedWriter _writer,
+        final int _a,
+        final int _b,
+        final int _c)
+        throws IOException {
+      _writer.write("f " + _a + "/" + _a + " " + _b + "/" + _b + " " + _c
+        + "/" + _c + "\n");
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
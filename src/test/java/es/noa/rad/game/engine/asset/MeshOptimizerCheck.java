@@ -0,0 +1,535 @@
+package es.noa.rad.game.engine.asset;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.util.Arrays;
+import java.util.Random;
+
+  /**
+   * Checks the vertex cache, overdraw and vertex fetch passes of the
+   * {@link MeshOptimizer}.
+   *
+   * <p>A bumpy sphere and a flat grid are built with their triangles and
+   * vertices shuffled, as an exporter may leave them, and optimized with
+   * and without the overdraw pass. Every optimized mesh must keep the
+   * same triangles with the same winding, number its vertices in order of
+   * first use, and cut the ACMR below a bound close to the optimum of a
+   * {@link MeshOptimizer#DEFAULT_CACHE_SIZE} entry FIFO cache. The ACMR
+   * reported by the optimizer must match an independent FIFO simulation,
+   * and the overdraw pass may cost at most the configured share of extra
+   * misses.
+   *
+   * <p>Overdraw is measured with a small software rasterizer drawing the
+   * sphere from the six axis directions with back-face culling and an
+   * early depth test: the ratio of shaded fragments to covered pixels,
+   * 1.0 meaning no pixel is shaded twice. The overdraw pass must lower
+   * it compared with the cache order alone.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class MeshOptimizerCheck {
+
+    /**
+     * Floats of a vertex: position, normal and texture coordinates.
+     */
+    private static final int STRIDE = 8;
+
+    /**
+     * Segments of the sphere around its axis.
+     */
+    private static final int SEGMENTS = 128;
+
+    /**
+     * Rings of the sphere from pole to pole.
+     */
+    private static final int RINGS = 64;
+
+    /**
+     * Quads per side of the grid.
+     */
+    private static final int QUADS = 128;
+
+    /**
+     * Largest ACMR accepted after the optimization.
+     */
+    private static final float MAX_ACMR = 0.8F;
+
+    /**
+     * Width and height of the overdraw target in pixels.
+     */
+    private static final int RESOLUTION = 256;
+
+    /**
+     * Half extent of the region of space the rasterizer sees.
+     */
+    private static final float VIEW_EXTENT = 1.5F;
+
+    /**
+     * Not instantiable.
+     */
+    private MeshOptimizerCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final Random random = new Random(39);
+      final float[] sphereVertices = MeshOptimizerCheck.sphereVertices();
+      final int[] sphereIndices = MeshOptimizerCheck.sphereIndices();
+      MeshOptimizerCheck.shuffle(sphereIndices, sphereVertices, random);
+      final float[] gridVertices = MeshOptimizerCheck.gridVertices();
+      final int[] gridIndices = MeshOptimizerCheck.gridIndices();
+      MeshOptimizerCheck.shuffle(gridIndices, gridVertices, random);
+
+      final float[] overdraw = new float[3];
+      overdraw[0] = MeshOptimizerCheck.overdraw(sphereIndices, sphereVertices);
+      MeshOptimizerCheck.run("sphere, cache only",
+        sphereIndices, sphereVertices, 0.0F, overdraw, 1);
+      MeshOptimizerCheck.run("sphere, with overdraw", sphereIndices,
+        sphereVertices, MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD, overdraw,
+        2);
+      MeshOptimizerCheck.run("grid", gridIndices, gridVertices,
+        MeshOptimizer.DEFAULT_OVERDRAW_THRESHOLD, null, 0);
+      System.out.printf("sphere overdraw: %.3f shuffled, %.3f cache order,"
+        + " %.3f with the overdraw pass%n", overdraw[0], overdraw[1],
+        overdraw[2]);
+      MeshOptimizerCheck.check(overdraw[2] < overdraw[1],
+        "The overdraw pass did not lower the overdraw");
+      System.out.println("MeshOptimizerCheck passed");
+    }
+
+    /**
+     * Optimizes a copy of a mesh and checks the result.
+     *
+     * @param _name the name of the mesh, for the report
+     * @param _indices the shuffled triangle indices
+     * @param _vertices the shuffled vertices
+     * @param _overdrawThreshold the overdraw threshold of the optimizer
+     * @param _overdraw the overdraw of every variant, or null to skip it
+     * @param _slot the slot of this variant in {@code _overdraw}
+     */
+    private static void run(
+        final String _name,
+        final int[] _indices,
+        final float[] _vertices,
+        final float _overdrawThreshold,
+        final float[] _overdraw,
+        final int _slot) {
+      final int[] indices = _indices.clone();
+      final float[] vertices = _vertices.clone();
+      final int vertexCount = vertices.length / MeshOptimizerCheck.STRIDE;
+      final MeshOptimizer optimizer = new MeshOptimizer(
+        MeshOptimizer.DEFAULT_CACHE_SIZE, _overdrawThreshold);
+      final long start = System.nanoTime();
+      final int used = optimizer.optimize(indices, vertices,
+        MeshOptimizerCheck.STRIDE);
+      final double millis = (System.nanoTime() - start) / 1.0E6;
+      System.out.printf("%-22s %6d triangles: ACMR %.3f -> %.3f, ATVR %.3f"
+        + " -> %.3f in %.1f ms%n", _name, indices.length / 3,
+        optimizer.acmrBefore(), optimizer.acmrAfter(), optimizer.atvrBefore(),
+        optimizer.atvrAfter(), millis);
+
+      MeshOptimizerCheck.check(used == vertexCount,
+        _name + ": " + used + " of " + vertexCount + " vertices kept");
+      MeshOptimizerCheck.check(
+        Arrays.equals(MeshOptimizerCheck.triangles(_indices, _vertices),
+          MeshOptimizerCheck.triangles(indices, vertices)),
+        _name + ": the triangles changed");
+      int next = 0;
+      for (final int vertex : indices) {
+        MeshOptimizerCheck.check(vertex <= next,
+          _name + ": vertex " + vertex + " used before " + next);
+        if (vertex == next) {
+          next++;
+        }
+      }
+      MeshOptimizerCheck.check(
+        Math.abs(MeshOptimizerCheck.fifoAcmr(_indices, vertexCount)
+          - optimizer.acmrBefore()) < 1.0E-6F
+          && Math.abs(MeshOptimizerCheck.fifoAcmr(indices, used)
+            - optimizer.acmrAfter()) < 1.0E-6F,
+        _name + ": ACMR differs from the FIFO simulation");
+      MeshOptimizerCheck.check(
+        optimizer.acmrAfter() <= MeshOptimizerCheck.MAX_ACMR,
+        _name + ": ACMR " + optimizer.acmrAfter() + " after optimizing");
+      if (_overdraw != null) {
+        _overdraw[_slot] = MeshOptimizerCheck.overdraw(indices, vertices);
+        if (_slot > 1) {
+          final MeshOptimizer cacheOnly = new MeshOptimizer(
+            MeshOptimizer.DEFAULT_CACHE_SIZE, 0.0F);
+          final int[] cacheIndices = _indices.clone();
+          cacheOnly.optimize(cacheIndices, _vertices.clone(),
+            MeshOptimizerCheck.STRIDE);
+          MeshOptimizerCheck.check(optimizer.acmrAfter()
+              <= (cacheOnly.acmrAfter() * _overdrawThreshold) + 1.0E-6F,
+            _name + ": the overdraw pass costs more than its threshold");
+        }
+      }
+    }
+
+    /**
+     * Simulates a FIFO vertex cache of the default size.
+     *
+     * @param _indices the triangle indices
+     * @param _vertexCount the number of vertices
+     * @return the cache misses per triangle
+     */
+    private static float fifoAcmr(
+        final int[] _indices,
+        final int _vertexCount) {
+      final int[] cache = new int[MeshOptimizer.DEFAULT_CACHE_SIZE];
+      Arrays.fill(cache, -1);
+      final boolean[] cached = new boolean[_vertexCount];
+      int head = 0;
+      int misses = 0;
+      for (final int vertex : _indices) {
+        if (!cached[vertex]) {
+          misses++;
+          if (cache[head] >= 0) {
+            cached[cache[head]] = false;
+          }
+          cache[head] = vertex;
+          cached[vertex] = true;
+          head = (head + 1) % cache.length;
+        }
+      }
+      return ((float) misses) / (_indices.length / 3);
+    }
+
+    /**
+     * Describes every triangle by the positions of its corners, starting
+     * from the smallest so that the winding is kept, in sorted order.
+     *
+     * @param _indices the triangle indices
+     * @param _vertices the vertices
+     * @return the sorted triangle descriptions
+     */
+    private static String[] triangles(
+        final int[] _indices,
+        final float[] _vertices) {
+      final String[] triangles = new String[_indices.length / 3];
+      final String[] corners = new String[3];
+      for (int triangle = 0; triangle < triangles.length; triangle++) {
+        int first = 0;
+        for (int corner = 0; corner < 3; corner++) {
+          final int offset =
+            _indices[(triangle * 3) + corner] * MeshOptimizerCheck.STRIDE;
+          corners[corner] = Arrays.toString(Arrays.copyOfRange(
+            _vertices, offset, offset + MeshOptimizerCheck.STRIDE));
+          if (corners[corner].compareTo(corners[first]) < 0) {
+            first = corner;
+          }
+        }
+        triangles[triangle] = corners[first] + corners[(first + 1) % 3]
+          + corners[(first + 2) % 3];
+      }
+      Arrays.sort(triangles);
+      return triangles;
+    }
+
+    /**
+     * Measures the overdraw of a mesh drawn in index order from the six
+     * axis directions.
+     *
+     * @param _indices the triangle indices
+     * @param _vertices the vertices
+     * @return the shaded fragments per covered pixel
+     */
+    private static float overdraw(
+        final int[] _indices,
+        final float[] _vertices) {
+      final int resolution = MeshOptimizerCheck.RESOLUTION;
+      final float[] depth = new float[resolution * resolution];
+      final float[] screen = new float[9];
+      long shaded = 0L;
+      long covered = 0L;
+      for (int view = 0; view < 6; view++) {
+        final int axis = view / 2;
+        final float sign = ((view % 2) == 0) ? 1F : -1F;
+        Arrays.fill(depth, Float.POSITIVE_INFINITY);
+        for (int triangle = 0; triangle < _indices.length; triangle += 3) {
+          for (int corner = 0; corner < 3; corner++) {
+            final int offset =
+              _indices[triangle + corner] * MeshOptimizerCheck.STRIDE;
+            final float scale = resolution
+              / (2F * MeshOptimizerCheck.VIEW_EXTENT);
+            screen[corner * 3] = (_vertices[offset + ((axis + 1) % 3)]
+              + MeshOptimizerCheck.VIEW_EXTENT) * scale;
+            screen[(corner * 3) + 1] = (_vertices[offset + ((axis + 2) % 3)]
+              + MeshOptimizerCheck.VIEW_EXTENT) * scale;
+            screen[(corner * 3) + 2] = sign * _vertices[offset + axis];
+          }
+          shaded += MeshOptimizerCheck.rasterize(screen, depth, sign);
+        }
+        for (final float value : depth) {
+          if (value != Float.POSITIVE_INFINITY) {
+            covered++;
+          }
+        }
+      }
+      return ((float) shaded) / covered;
+    }
+
+    /**
+     * Rasterizes a triangle with back-face culling and an early depth
+     * test.
+     *
+     * @param _screen the pixel coordinates and depth of every corner
+     * @param _depth the depth buffer, smaller is closer
+     * @param _sign the orientation of the view, which mirrors the image
+     * @return the number of fragments shaded
+     */
+    private static int rasterize(
+        final float[] _screen,
+        final float[] _depth,
+        final float _sign) {
+      final float x0 = _screen[0];
+      final float y0 = _screen[1];
+      final float x1 = _screen[3];
+      final float y1 = _screen[4];
+      final float x2 = _screen[6];
+      final float y2 = _screen[7];
+      final float area = (((x1 - x0) * (y2 - y0)) - ((x2 - x0) * (y1 - y0)))
+        * _sign;
+      /* The viewer looks down the negative axis: front faces are CCW. */
+      if (area >= 0F) {
+        return 0;
+      }
+      final int resolution = MeshOptimizerCheck.RESOLUTION;
+      final int minX = Math.max(0, (int) Math.floor(
+        Math.min(x0, Math.min(x1, x2))));
+      final int maxX = Math.min(resolution - 1, (int) Math.ceil(
+        Math.max(x0, Math.max(x1, x2))));
+      final int minY = Math.max(0, (int) Math.floor(
+        Math.min(y0, Math.min(y1, y2))));
+      final int maxY = Math.min(resolution - 1, (int) Math.ceil(
+        Math.max(y0, Math.max(y1, y2))));
+      int shaded = 0;
+      for (int y = minY; y <= maxY; y++) {
+        for (int x = minX; x <= maxX; x++) {
+          final float px = x + 0.5F;
+          final float py = y + 0.5F;
+          final float w0 = (((x2 - x1) * (py - y1)) - ((y2 - y1) * (px - x1)))
+            * _sign;
+          final float w1 = (((x0 - x2) * (py - y2)) - ((y0 - y2) * (px - x2)))
+            * _sign;
+          final float w2 = (((x1 - x0) * (py - y0)) - ((y1 - y0) * (px - x0)))
+            * _sign;
+          if ((w0 > 0F) || (w1 > 0F) || (w2 > 0F)) {
+            continue;
+          }
+          final float z = ((w0 * _screen[2]) + (w1 * _screen[5])
+            + (w2 * _screen[8])) / area;
+          final int pixel = (y * resolution) + x;
+          if (z < _depth[pixel]) {
+            _depth[pixel] = z;
+            shaded++;
+          }
+        }
+      }
+      return shaded;
+    }
+
+    /**
+     * Shuffles the triangles and renumbers the vertices of a mesh at
+     * random.
+     *
+     * @param _indices the triangle indices, shuffled in place
+     * @param _vertices the vertices, permuted in place
+     * @param _random the random source
+     */
+    private static void shuffle(
+        final int[] _indices,
+        final float[] _vertices,
+        final Random _random) {
+      final int triangleCount = _indices.length / 3;
+      for (int triangle = triangleCount - 1; triangle > 0; triangle--) {
+        final int other = _random.nextInt(triangle + 1);
+        for (int corner = 0; corner < 3; corner++) {
+          final int swap = _indices[(triangle * 3) + corner];
+          _indices[(triangle * 3) + corner] = _indices[(other * 3) + corner];
+          _indices[(other * 3) + corner] = swap;
+        }
+      }
+      final int vertexCount = _vertices.length / MeshOptimizerCheck.STRIDE;
+      final int[] permutation = new int[vertexCount];
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        permutation[vertex] = vertex;
+      }
+      for (int vertex = vertexCount - 1; vertex > 0; vertex--) {
+        final int other = _random.nextInt(vertex + 1);
+        final int swap = permutation[vertex];
+        permutation[vertex] = permutation[other];
+        permutation[other] = swap;
+      }
+      final float[] source = _vertices.clone();
+      for (int vertex = 0; vertex < vertexCount; vertex++) {
+        System.arraycopy(source, vertex * MeshOptimizerCheck.STRIDE,
+          _vertices, permutation[vertex] * MeshOptimizerCheck.STRIDE,
+          MeshOptimizerCheck.STRIDE);
+      }
+      for (int index = 0; index < _indices.length; index++) {
+        _indices[index] = permutation[_indices[index]];
+      }
+    }
+
+    /**
+     * Builds the vertices of a sphere with bumps, whose folds hide parts
+     * of it from every direction: the two poles, then every ring.
+     *
+     * @return the vertices
+     */
+    private static float[] sphereVertices() {
+      final int vertexCount = 2
+        + ((MeshOptimizerCheck.RINGS - 1) * MeshOptimizerCheck.SEGMENTS);
+      final float[] vertices =
+        new float[vertexCount * MeshOptimizerCheck.STRIDE];
+      MeshOptimizerCheck.vertex(vertices, 0, 0.0, 0.0);
+      MeshOptimizerCheck.vertex(vertices, 1, Math.PI, 0.0);
+      int vertex = 2;
+      for (int ring = 1; ring < MeshOptimizerCheck.RINGS; ring++) {
+        for (int segment = 0; segment < MeshOptimizerCheck.SEGMENTS;
+            segment++) {
+          MeshOptimizerCheck.vertex(vertices, vertex++,
+            (Math.PI * ring) / MeshOptimizerCheck.RINGS,
+            (2.0 * Math.PI * segment) / MeshOptimizerCheck.SEGMENTS);
+        }
+      }
+      return vertices;
+    }
+
+    /**
+     * Writes a vertex of the bumpy sphere.
+     *
+     * @param _vertices the vertices
+     * @param _vertex the vertex
+     * @param _polar the polar angle
+     * @param _azimuth the azimuth
+     */
+    private static void vertex(
+        final float[] _vertices,
+        final int _vertex,
+        final double _polar,
+        final double _azimuth) {
+      final double radius = 1.0
+        + (0.5 * Math.sin(4.0 * _polar) * Math.sin(4.0 * _azimuth));
+      final int offset = _vertex * MeshOptimizerCheck.STRIDE;
+      _vertices[offset] =
+        (float) (radius * Math.sin(_polar) * Math.cos(_azimuth));
+      _vertices[offset + 1] = (float) (radius * Math.cos(_polar));
+      _vertices[offset + 2] =
+        (float) (radius * Math.sin(_polar) * Math.sin(_azimuth));
+      _vertices[offset + 6] = (float) (_azimuth / (2.0 * Math.PI));
+      _vertices[offset + 7] = (float) (_polar / Math.PI);
+    }
+
+    /**
+     * Builds the outward facing triangles of the sphere.
+     *
+     * @return the triangle indices
+     */
+    private static int[] sphereIndices() {
+      final int segments = MeshOptimizerCheck.SEGMENTS;
+      final int last = MeshOptimizerCheck.RINGS - 1;
+      final int[] indices = new int[2 * segments * last * 3];
+      int cursor = 0;
+      for (int segment = 0; segment < segments; segment++) {
+        final int next = (segment + 1) % segments;
+        indices[cursor++] = 0;
+        indices[cursor++] = MeshOptimizerCheck.ring(1, next);
+        indices[cursor++] = MeshOptimizerCheck.ring(1, segment);
+        indices[cursor++] = 1;
+        indices[cursor++] = MeshOptimizerCheck.ring(last, segment);
+        indices[cursor++] = MeshOptimizerCheck.ring(last, next);
+      }
+      for (int ring = 1; ring < last; ring++) {
+        for (int segment = 0; segment < segments; segment++) {
+          final int next = (segment + 1) % segments;
+          indices[cursor++] = MeshOptimizerCheck.ring(ring, segment);
+          indices[cursor++] = MeshOptimizerCheck.ring(ring, next);
+          indices[cursor++] = MeshOptimizerCheck.ring(ring + 1, segment);
+          indices[cursor++] = MeshOptimizerCheck.ring(ring, next);
+          indices[cursor++] = MeshOptimizerCheck.ring(ring + 1, next);
+          indices[cursor++] = MeshOptimizerCheck.ring(ring + 1, segment);
+        }
+      }
+      return indices;
+    }
+
+    /**
+     * Gets the vertex of a ring and segment of the sphere.
+     *
+     * @param _ring the ring, from 1
+     * @param _segment the segment
+     * @return the vertex index
+     */
+    private static int ring(
+        final int _ring,
+        final int _segment) {
+      return 2 + ((_ring - 1) * MeshOptimizerCheck.SEGMENTS) + _segment;
+    }
+
+    /**
+     * Builds the vertices of the grid.
+     *
+     * @return the vertices
+     */
+    private static float[] gridVertices() {
+      final int side = MeshOptimizerCheck.QUADS + 1;
+      final float[] vertices =
+        new float[side * side * MeshOptimizerCheck.STRIDE];
+      for (int z = 0; z < side; z++) {
+        for (int x = 0; x < side; x++) {
+          final int offset = ((z * side) + x) * MeshOptimizerCheck.STRIDE;
+          vertices[offset] = x;
+          vertices[offset + 2] = z;
+          vertices[offset + 4] = 1F;
+        }
+      }
+      return vertices;
+    }
+
+    /**
+     * Builds the triangles of the grid.
+     *
+     * @return the triangle indices
+     */
+    private static int[] gridIndices() {
+      final int side = MeshOptimizerCheck.QUADS + 1;
+      final int[] indices =
+        new int[MeshOptimizerCheck.QUADS * MeshOptimizerCheck.QUADS * 6];
+      int cursor = 0;
+      for (int z = 0; z < MeshOptimizerCheck.QUADS; z++) {
+        for (int x = 0; x < MeshOptimizerCheck.QUADS; x++) {
+          final int corner = (z * side) + x;
+          indices[cursor++] = corner;
+          indices[cursor++] = corner + side;
+          indices[cursor++] = corner + 1;
+          indices[cursor++] = corner + 1;
+          indices[cursor++] = corner + side;
+          indices[cursor++] = corner + side + 1;
+        }
+      }
+      return indices;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
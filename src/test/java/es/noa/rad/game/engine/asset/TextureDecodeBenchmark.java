@@ -0,0 +1,271 @@
+package es.noa.rad.game.engine.asset;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import org.lwjgl.stb.STBImageWrite;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Measures the decode throughput of the {@link TextureLoader}.
+   *
+   * <p>Writes a batch of PNG, TGA and JPEG images, then loads every batch
+   * with one worker and with one worker per core, several times, timing
+   * the batch until its last texture is polled. Every texture must load
+   * with its full mip chain, and the level 0 pixels of the lossless
+   * formats must match the written ones. The throughput is
+   * reported in megabytes of level 0 pixels decoded per second of wall
+   * time and per second of worker time, which includes the mip chain,
+   * along with the megabytes of files read.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class TextureDecodeBenchmark {
+
+    /**
+     * Images per format.
+     */
+    private static final int IMAGES = 8;
+
+    /**
+     * Width and height of every image in pixels.
+     */
+    private static final int SIZE = 1024;
+
+    /**
+     * Mip levels of a 1024x1024 image.
+     */
+    private static final int MIP_COUNT = 11;
+
+    /**
+     * Quality of the JPEG images.
+     */
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Batches loaded per format and worker count; the median is reported.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Milliseconds the caller sleeps between polls.
+     */
+    private static final long POLL_MILLIS = 1L;
+
+    /**
+     * Formats written, by file extension.
+     */
+    private static final String[] FORMATS = {"png", "tga", "jpg"};
+
+    /**
+     * Not instantiable.
+     */
+    private TextureDecodeBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     * @throws IOException if the images cannot be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(
+        final String[] _args)
+        throws IOException, InterruptedException {
+      Configuration.get().init();
+      final Path directory = Files.createTempDirectory("textures");
+      try {
+        TextureDecodeBenchmark.writeImages(directory);
+        final int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d images of %dx%d per format, %d cores%n",
+          TextureDecodeBenchmark.IMAGES, TextureDecodeBenchmark.SIZE,
+          TextureDecodeBenchmark.SIZE, cores);
+        for (final String format : TextureDecodeBenchmark.FORMATS) {
+          TextureDecodeBenchmark.measure(directory, format, 1);
+          if (cores > 1) {
+            TextureDecodeBenchmark.measure(directory, format, cores);
+          }
+        }
+      } finally {
+        try (Stream<Path> files = Files.list(directory)) {
+          for (final Path file : (Iterable<Path>) files::iterator) {
+            Files.delete(file);
+          }
+        }
+        Files.delete(directory);
+      }
+      System.out.println("TextureDecodeBenchmark passed");
+    }
+
+    /**
+     * Loads the batch of a format several times and reports the median
+     * throughput.
+     *
+     * @param _directory the directory holding the images
+     * @param _format the file extension of the batch
+     * @param _threads the number of workers
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void measure(
+        final Path _directory,
+        final String _format,
+        final int _threads)
+        throws InterruptedException {
+      final double[] wall = new double[TextureDecodeBenchmark.RUNS];
+      final double[] worker = new double[TextureDecodeBenchmark.RUNS];
+      double fileMegabytes = 0.0;
+      for (int run = 0; run < TextureDecodeBenchmark.RUNS; run++) {
+        final TextureLoader loader = new TextureLoader(_threads,
+          TextureDecodeBenchmark.IMAGES, true);
+        final Texture[] textures = new Texture[TextureDecodeBenchmark.IMAGES];
+        try {
+          final long start = System.nanoTime();
+          for (int image = 0; image < TextureDecodeBenchmark.IMAGES;
+              image++) {
+            loader.load(_directory.resolve(image + "." + _format));
+          }
+          int loaded = 0;
+          while (loaded < TextureDecodeBenchmark.IMAGES) {
+            final Texture texture = loader.poll();
+            if (texture == null) {
+              Thread.sleep(TextureDecodeBenchmark.POLL_MILLIS);
+              continue;
+            }
+            textures[loaded++] = texture;
+          }
+          final double seconds = (System.nanoTime() - start) / 1.0E9;
+          for (final Texture texture : textures) {
+            TextureDecodeBenchmark.verify(texture, _format);
+          }
+          final double megabytes = loader.bytesDecoded() / 1.0E6;
+          wall[run] = megabytes / seconds;
+          worker[run] = megabytes / (loader.decodeNanos() / 1.0E9);
+          fileMegabytes = loader.bytesRead() / 1.0E6;
+        } finally {
+          for (final Texture texture : textures) {
+            if (texture != null) {
+              texture.close();
+            }
+          }
+          loader.close();
+        }
+      }
+      Arrays.sort(wall);
+      Arrays.sort(worker);
+      System.out.printf("%s, %d worker(s): %6.1f MB/s decoded, %6.1f MB/s"
+        + " per worker with mips, %.1f MB of files%n", _format, _threads,
+        wall[wall.length / 2], worker[worker.length / 2], fileMegabytes);
+    }
+
+    /**
+     * Checks a loaded texture against the image written.
+     *
+     * @param _texture the texture
+     * @param _format the file extension of the image
+     */
+    private static void verify(
+        final Texture _texture,
+        final String _format) {
+      final String name = _texture.path().getFileName().toString();
+      TextureDecodeBenchmark.check(_texture.loaded(),
+        name + " failed: " + _texture.error());
+      TextureDecodeBenchmark.check(
+        (_texture.width() == TextureDecodeBenchmark.SIZE)
+          && (_texture.height() == TextureDecodeBenchmark.SIZE)
+          && (_texture.mipCount() == TextureDecodeBenchmark.MIP_COUNT),
+        name + " decoded as " + _texture.width() + "x" + _texture.height()
+          + " with " + _texture.mipCount() + " mips");
+      if ("jpg".equals(_format)) {
+        return;
+      }
+      final int image =
+        Integer.parseInt(name.substring(0, name.indexOf('.')));
+      final long pixels = _texture.mipAddress(0);
+      final int count =
+        TextureDecodeBenchmark.SIZE * TextureDecodeBenchmark.SIZE;
+      for (int pixel = 0; pixel < count; pixel++) {
+        if (MemoryUtil.memGetInt(pixels + (((long) pixel) * Texture.CHANNELS))
+            != TextureDecodeBenchmark.pixel(image, pixel)) {
+          TextureDecodeBenchmark.check(false,
+            name + " differs at pixel " + pixel);
+        }
+      }
+    }
+
+    /**
+     * Writes the images of every format.
+     *
+     * @param _directory the directory receiving them
+     */
+    private static void writeImages(
+        final Path _directory) {
+      final int count =
+        TextureDecodeBenchmark.SIZE * TextureDecodeBenchmark.SIZE;
+      final ByteBuffer rgba = MemoryUtil.memAlloc(count * Texture.CHANNELS);
+      try {
+        for (int image = 0; image < TextureDecodeBenchmark.IMAGES;
+            image++) {
+          for (int pixel = 0; pixel < count; pixel++) {
+            rgba.putInt(pixel * Texture.CHANNELS,
+              TextureDecodeBenchmark.pixel(image, pixel));
+          }
+          final int size = TextureDecodeBenchmark.SIZE;
+          STBImageWrite.stbi_write_png(
+            _directory.resolve(image + ".png").toString(), size, size,
+            Texture.CHANNELS, rgba, size * Texture.CHANNELS);
+          STBImageWrite.stbi_write_tga(
+            _directory.resolve(image + ".tga").toString(), size, size,
+            Texture.CHANNELS, rgba);
+          STBImageWrite.stbi_write_jpg(
+            _directory.resolve(image + ".jpg").toString(), size, size,
+            Texture.CHANNELS, rgba, TextureDecodeBenchmark.JPEG_QUALITY);
+        }
+      } finally {
+        MemoryUtil.memFree(rgba);
+      }
+    }
+
+    /**
+     * Computes a pixel of an image: smooth gradients with some noise, so
+     * the files compress like real textures.
+     *
+     * @param _image the image
+     * @param _pixel the pixel index
+     * @return the pixel as read from memory in native order, opaque
+     */
+    private static int pixel(
+        final int _image,
+        final int _pixel) {
+      final int x = _pixel % TextureDecodeBenchmark.SIZE;
+      final int y = _pixel / TextureDecodeBenchmark.SIZE;
+      final int noise = ((_pixel * 0x9E3779B1) >>> 29) + _image;
+      final int red = ((x >> 2) + noise) & 0xFF;
+      final int green = ((y >> 2) + noise) & 0xFF;
+      final int blue = (((x + y) >> 3) * _image) & 0xFF;
+      final int abgr = 0xFF000000 | (blue << 16) | (green << 8) | red;
+      return (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)
+        ? abgr : Integer.reverseBytes(abgr);
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
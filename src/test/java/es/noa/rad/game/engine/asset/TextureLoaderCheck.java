@@ -0,0 +1,200 @@
+package es.noa.rad.game.engine.asset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.lwjgl.stb.STBImageWrite;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Checks that the game thread never waits on the {@link TextureLoader}.
+   *
+   * <p>Writes a set of PNG files plus a corrupt and a missing one, then
+   * requests them all from a loader with a queue smaller than the set,
+   * so the workers back up behind the game thread. Every {@code load}
+   * and {@code poll} call is timed; the check fails if any of them
+   * takes longer than a frame budget, if a request is lost, or if
+   * {@link TextureLoader#pending()} does not return to zero.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class TextureLoaderCheck {
+
+    /**
+     * Number of valid images requested.
+     */
+    private static final int IMAGES = 24;
+
+    /**
+     * Width of every image in pixels.
+     */
+    private static final int WIDTH = 1024;
+
+    /**
+     * Height of every image in pixels.
+     */
+    private static final int HEIGHT = 512;
+
+    /**
+     * Mip levels of a 1024x512 image.
+     */
+    private static final int MIP_COUNT = 11;
+
+    /**
+     * Longest a call of the game thread may take, in nanoseconds: a
+     * quarter of a 60 Hz frame.
+     */
+    private static final long CALL_BUDGET_NANOS = 4_000_000L;
+
+    /**
+     * Milliseconds the game thread sleeps between polls, as a frame.
+     */
+    private static final long FRAME_MILLIS = 1L;
+
+    /**
+     * Not instantiable.
+     */
+    private TextureLoaderCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     * @throws IOException if the images cannot be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(
+        final String[] _args)
+        throws IOException, InterruptedException {
+      final Path directory = Files.createTempDirectory("textures");
+      try {
+        TextureLoaderCheck.writeImages(directory);
+        Files.write(directory.resolve("corrupt.png"), new byte[] {1, 2, 3});
+        TextureLoaderCheck.run(directory);
+      } finally {
+        try (Stream<Path> files = Files.list(directory)) {
+          for (final Path file : (Iterable<Path>) files::iterator) {
+            Files.delete(file);
+          }
+        }
+        Files.delete(directory);
+      }
+      System.out.println("TextureLoaderCheck passed");
+    }
+
+    /**
+     * Loads the images written in a directory.
+     *
+     * @param _directory the directory
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void run(
+        final Path _directory)
+        throws InterruptedException {
+      final TextureLoader loader = new TextureLoader(2, 2, true);
+      final long[] calls = new long[TextureLoaderCheck.IMAGES * 64];
+      int callCount = 0;
+      final long start = System.nanoTime();
+      for (int image = 0; image < TextureLoaderCheck.IMAGES; image++) {
+        final long call = System.nanoTime();
+        loader.load(_directory.resolve(image + ".png"));
+        calls[callCount++] = System.nanoTime() - call;
+      }
+      loader.load(_directory.resolve("corrupt.png"));
+      loader.load(_directory.resolve("missing.png"));
+
+      int loaded = 0;
+      int failed = 0;
+      while ((loaded + failed) < (TextureLoaderCheck.IMAGES + 2)) {
+        final long call = System.nanoTime();
+        final Texture texture = loader.poll();
+        final long elapsed = System.nanoTime() - call;
+        if (callCount < calls.length) {
+          calls[callCount++] = elapsed;
+        }
+        if (texture == null) {
+          Thread.sleep(TextureLoaderCheck.FRAME_MILLIS);
+          continue;
+        }
+        if (texture.loaded()) {
+          TextureLoaderCheck.check(
+            texture.mipCount() == TextureLoaderCheck.MIP_COUNT,
+            "Wrong mip count " + texture.mipCount());
+          loaded++;
+        } else {
+          System.out.printf("failed as expected: %s (%s)%n",
+            texture.path().getFileName(), texture.error());
+          failed++;
+        }
+        texture.close();
+      }
+      final double seconds = (System.nanoTime() - start) / 1.0E9;
+
+      Arrays.sort(calls, 0, callCount);
+      final long worst = calls[callCount - 1];
+      System.out.printf("loaded %d failed %d in %.2f s, %.1f MB/s decoded%n",
+        loaded, failed, seconds, loader.bytesDecoded() / 1.0E6 / seconds);
+      System.out.printf("game thread calls %d: median %.1f us, max %.1f us%n",
+        callCount, calls[callCount / 2] / 1.0E3, worst / 1.0E3);
+      TextureLoaderCheck.check(loaded == TextureLoaderCheck.IMAGES,
+        "Lost textures: " + loaded);
+      TextureLoaderCheck.check(failed == 2, "Unexpected failures: " + failed);
+      TextureLoaderCheck.check(loader.pending() == 0,
+        "Pending requests left: " + loader.pending());
+      TextureLoaderCheck.check(
+        worst <= TextureLoaderCheck.CALL_BUDGET_NANOS,
+        "Game thread blocked for " + worst + " ns");
+      loader.close();
+    }
+
+    /**
+     * Writes the test images.
+     *
+     * @param _directory the directory receiving them
+     */
+    private static void writeImages(
+        final Path _directory) {
+      final int pixels = TextureLoaderCheck.WIDTH * TextureLoaderCheck.HEIGHT;
+      final ByteBuffer rgba = MemoryUtil.memAlloc(pixels * Texture.CHANNELS);
+      try {
+        for (int image = 0; image < TextureLoaderCheck.IMAGES; image++) {
+          for (int pixel = 0; pixel < pixels; pixel++) {
+            rgba.put((byte) (pixel % TextureLoaderCheck.WIDTH))
+              .put((byte) (pixel / TextureLoaderCheck.WIDTH))
+              .put((byte) (image * pixel))
+              .put((byte) -1);
+          }
+          rgba.flip();
+          STBImageWrite.stbi_write_png(
+            _directory.resolve(image + ".png").toString(),
+            TextureLoaderCheck.WIDTH, TextureLoaderCheck.HEIGHT,
+            Texture.CHANNELS, rgba,
+            TextureLoaderCheck.WIDTH * Texture.CHANNELS);
+          rgba.clear();
+        }
+      } finally {
+        MemoryUtil.memFree(rgba);
+      }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
@@ -0,0 +1,339 @@
+package es.noa.rad.game.engine.audio;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Reports the underruns of the {@link AudioStreamer} on a loopback
+   * device.
+   *
+   * <p>Writes synthetic Ogg Vorbis files with {@link VorbisWriter}, measures
+   * how much faster than real time they decode, then plays one on a
+   * loopback device mixed at the pace of a real output: the stream must
+   * finish with no underrun. The same file mixed a hundred times faster
+   * than real time drains the ring between passes of the streamer, and
+   * its underruns are reported. Finally looping, pause, resume, stop and
+   * a missing file are checked on the mix.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class AudioStreamerCheck {
+
+    /**
+     * Sample rate of the files.
+     */
+    private static final int SAMPLE_RATE = 44_100;
+
+    /**
+     * Mixing frequency of the loopback device.
+     */
+    private static final int MIX_RATE = 48_000;
+
+    /**
+     * Frames mixed per real-time pass, 10 ms.
+     */
+    private static final int MIX_FRAMES = AudioStreamerCheck.MIX_RATE / 100;
+
+    /**
+     * Duration of a real-time pass in nanoseconds.
+     */
+    private static final long MIX_NANOS = 10_000_000L;
+
+    /**
+     * Most passes of a stream before giving up.
+     */
+    private static final int MAX_PASSES = 2_000;
+
+    /**
+     * Duration of the played file in seconds.
+     */
+    private static final float PLAYED_SECONDS = 10F;
+
+    /**
+     * Duration of the looped file in seconds.
+     */
+    private static final float LOOPED_SECONDS = 3F;
+
+    /**
+     * Not instantiable.
+     */
+    private AudioStreamerCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     * @throws IOException if the files cannot be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(
+        final String[] _args)
+        throws IOException, InterruptedException {
+      Configuration.get().init();
+      final Path directory = Files.createTempDirectory("streams");
+      final Path played = directory.resolve("played.ogg");
+      final Path looped = directory.resolve("looped.ogg");
+      try {
+        VorbisWriter.write(played, AudioStreamerCheck.PLAYED_SECONDS, 2,
+          AudioStreamerCheck.SAMPLE_RATE, 7L);
+        final int loopFrames = VorbisWriter.write(looped,
+          AudioStreamerCheck.LOOPED_SECONDS, 2,
+          AudioStreamerCheck.SAMPLE_RATE, 3L);
+        AudioStreamerCheck.decode(played);
+        final AudioDevice device =
+          AudioStreamerCheck.loopback(AudioStreamerCheck.MIX_RATE);
+        final AudioStreamer streamer = new AudioStreamer(4, 8192, 10);
+        final ShortBuffer mix = MemoryUtil.memAllocShort(
+          AudioStreamerCheck.MIX_FRAMES * AudioDevice.CHANNELS);
+        try {
+          AudioStreamerCheck.realTime(device, streamer, played, mix);
+          AudioStreamerCheck.fasterThanRealTime(device, streamer, played);
+          AudioStreamerCheck.controls(device, streamer, looped, loopFrames,
+            directory.resolve("missing.ogg"), mix);
+          System.out.printf("streamer: %d frames decoded at %.1fx real time,"
+            + " %d underruns%n", streamer.decodedFrames(),
+            (streamer.decodedFrames()
+              / (double) AudioStreamerCheck.SAMPLE_RATE)
+              / (streamer.decodeNanos() / 1.0E9), streamer.underruns());
+        } finally {
+          MemoryUtil.memFree(mix);
+          streamer.close();
+          device.close();
+        }
+      } finally {
+        Files.deleteIfExists(played);
+        Files.deleteIfExists(looped);
+        Files.delete(directory);
+      }
+      System.out.println("AudioStreamerCheck passed");
+    }
+
+    /**
+     * Measures the decoding speed of a file.
+     *
+     * @param _path the file
+     * @throws IOException if the file cannot be decoded
+     */
+    private static void decode(
+        final Path _path)
+        throws IOException {
+      final VorbisDecoder decoder = VorbisDecoder.open(_path);
+      final ShortBuffer buffer = MemoryUtil.memAllocShort(
+        8192 * decoder.channels());
+      try {
+        long frames = 0L;
+        final long start = System.nanoTime();
+        int decoded;
+        do {
+          buffer.clear();
+          decoded = decoder.decode(buffer);
+          frames += decoded;
+        } while (decoded > 0);
+        final double seconds = (System.nanoTime() - start) / 1.0E9;
+        System.out.printf("decode: %d frames of %d in %.1f ms, %.1fx real"
+          + " time%n", frames, decoder.frames(), seconds * 1.0E3,
+          frames / (double) decoder.sampleRate() / seconds);
+        AudioStreamerCheck.check(frames == decoder.frames(),
+          "Decoded " + frames + " of " + decoder.frames() + " frames");
+      } finally {
+        MemoryUtil.memFree(buffer);
+        decoder.close();
+      }
+    }
+
+    /**
+     * Plays a file mixed at the pace of a real output.
+     *
+     * @param _device the loopback device
+     * @param _streamer the streamer
+     * @param _path the file
+     * @param _mix the buffer of a pass
+     */
+    private static void realTime(
+        final AudioDevice _device,
+        final AudioStreamer _streamer,
+        final Path _path,
+        final ShortBuffer _mix) {
+      final AudioStream stream = _streamer.play(_path, false);
+      double energy = 0.0;
+      int passes = 0;
+      final long start = System.nanoTime();
+      while (!stream.isFinished()
+          && (passes < AudioStreamerCheck.MAX_PASSES)) {
+        _mix.clear();
+        _device.render(_mix);
+        energy += AudioStreamerCheck.rms(_mix);
+        passes++;
+        final long due = start + (passes * AudioStreamerCheck.MIX_NANOS);
+        while (System.nanoTime() < due) {
+          Thread.onSpinWait();
+        }
+      }
+      System.out.printf("real time: %.2f s mixed, %d frames decoded,"
+        + " average rms %.0f, %d underruns%n", passes / 100.0,
+        stream.decodedFrames(), energy / passes, stream.underruns());
+      AudioStreamerCheck.check(
+        stream.isFinished() && (stream.error() == null),
+        "Stream did not finish: " + stream.error());
+      AudioStreamerCheck.check(energy > 0.0, "Stream was silent");
+      AudioStreamerCheck.check(stream.underruns() == 0,
+        "Underruns at real-time pace: " + stream.underruns());
+    }
+
+    /**
+     * Plays a file mixing a second every 10 ms, reporting the underruns.
+     *
+     * @param _device the loopback device
+     * @param _streamer the streamer
+     * @param _path the file
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void fasterThanRealTime(
+        final AudioDevice _device,
+        final AudioStreamer _streamer,
+        final Path _path)
+        throws InterruptedException {
+      final AudioStream stream = _streamer.play(_path, false);
+      final ShortBuffer second = MemoryUtil.memAllocShort(
+        AudioStreamerCheck.MIX_RATE * AudioDevice.CHANNELS);
+      try {
+        int passes = 0;
+        while (!stream.isFinished()
+            && (passes < AudioStreamerCheck.MAX_PASSES)) {
+          Thread.sleep(10L);
+          second.clear();
+          _device.render(second);
+          passes++;
+        }
+        System.out.printf("100x real time: %d passes, %d underruns%n",
+          passes, stream.underruns());
+        AudioStreamerCheck.check(stream.isFinished(),
+          "Stream did not finish after underruns");
+      } finally {
+        MemoryUtil.memFree(second);
+      }
+    }
+
+    /**
+     * Checks looping, pause, resume, stop and a missing file.
+     *
+     * @param _device the loopback device
+     * @param _streamer the streamer
+     * @param _looped the looped file
+     * @param _loopFrames the frames of the looped file
+     * @param _missing a missing file
+     * @param _mix the buffer of a pass
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void controls(
+        final AudioDevice _device,
+        final AudioStreamer _streamer,
+        final Path _looped,
+        final int _loopFrames,
+        final Path _missing,
+        final ShortBuffer _mix)
+        throws InterruptedException {
+      final AudioStream loop = _streamer.play(_looped, true);
+      final AudioStream missing = _streamer.play(_missing, false);
+      for (int pass = 0; pass < 600; pass++) {
+        Thread.sleep(1L);
+        _mix.clear();
+        _device.render(_mix);
+      }
+      loop.gain(0.5F);
+      loop.pause();
+      final double paused = AudioStreamerCheck.mix(_device, _mix);
+      loop.resume();
+      final double resumed = AudioStreamerCheck.mix(_device, _mix);
+      System.out.printf("loop: %d frames decoded of %d, paused rms %.2f,"
+        + " resumed rms %.0f; missing file: %s%n", loop.decodedFrames(),
+        _loopFrames, paused, resumed, missing.error());
+      AudioStreamerCheck.check(loop.decodedFrames() > _loopFrames,
+        "Loop did not start over");
+      AudioStreamerCheck.check(paused < 1.0, "Paused stream is audible");
+      AudioStreamerCheck.check(resumed > 0.0, "Resumed stream is silent");
+      AudioStreamerCheck.check(
+        missing.isFinished() && (missing.error() != null),
+        "Missing file not reported");
+
+      loop.stop();
+      Thread.sleep(50L);
+      AudioStreamerCheck.check(
+        loop.isFinished() && (_streamer.activeCount() == 0),
+        "Streams left after stopping: " + _streamer.activeCount());
+    }
+
+    /**
+     * Mixes five passes, giving the streamer time between them.
+     *
+     * @param _device the loopback device
+     * @param _mix the buffer of a pass
+     * @return the rms of the last pass
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static double mix(
+        final AudioDevice _device,
+        final ShortBuffer _mix)
+        throws InterruptedException {
+      double rms = 0.0;
+      for (int pass = 0; pass < 5; pass++) {
+        Thread.sleep(11L);
+        _mix.clear();
+        _device.render(_mix);
+        rms = AudioStreamerCheck.rms(_mix);
+      }
+      return rms;
+    }
+
+    /**
+     * Opens a loopback device.
+     *
+     * @param _frequency the mixing frequency
+     * @return the device
+     */
+    private static AudioDevice loopback(
+        final int _frequency) {
+      final AudioDevice device = AudioDevice.loopback(_frequency);
+      System.out.printf("device %s at %d Hz, %d mono and %d stereo"
+        + " sources%n", device.name(), device.frequency(),
+        device.monoSources(), device.stereoSources());
+      return device;
+    }
+
+    /**
+     * Computes the root mean square of a mixed buffer.
+     *
+     * @param _mix the buffer
+     * @return the rms
+     */
+    private static double rms(
+        final ShortBuffer _mix) {
+      double sum = 0.0;
+      for (int sample = 0; sample < _mix.limit(); sample++) {
+        final double value = _mix.get(sample);
+        sum += value * value;
+      }
+      return Math.sqrt(sum / Math.max(1, _mix.limit()));
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
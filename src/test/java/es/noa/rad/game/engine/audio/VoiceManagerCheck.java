@@ -0,0 +1,445 @@
+package es.noa.rad.game.engine.audio;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.lwjgl.openal.AL10;
+import org.lwjgl.openal.AL11;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Stresses the {@link VoiceManager} with ten thousand voices on a
+   * loopback device, then with several threads issuing commands.
+   *
+   * <p>The stress keeps ten thousand voices alive around an orbiting
+   * listener for twenty seconds of frames, replacing one-shots as they
+   * end. Every frame must keep the real voices within the sources, and
+   * the mix must show no click: its largest second difference must stay
+   * far below that of a source started and stopped abruptly. The update
+   * time is reported.
+   *
+   * <p>The concurrent part plays, stops and changes voices from four
+   * threads while the game thread updates, which must only ever fail for
+   * voices that ended meanwhile. Both parts must leave no OpenAL error and
+   * no voice after closing.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class VoiceManagerCheck {
+
+    /**
+     * Mixing frequency of the loopback device and rate of the sounds.
+     */
+    private static final int RATE = 48_000;
+
+    /**
+     * Frames mixed per update, at 60 Hz.
+     */
+    private static final int MIX_FRAMES = VoiceManagerCheck.RATE / 60;
+
+    /**
+     * Voices kept alive by the stress.
+     */
+    private static final int VOICES = 10_000;
+
+    /**
+     * Updates of the stress.
+     */
+    private static final int UPDATES = 1_200;
+
+    /**
+     * Time step of an update.
+     */
+    private static final float DELTA = 1F / 60F;
+
+    /**
+     * Threads issuing commands in the concurrent part.
+     */
+    private static final int PRODUCERS = 4;
+
+    /**
+     * Duration of the concurrent part in nanoseconds.
+     */
+    private static final long PRODUCE_NANOS = 3_000_000_000L;
+
+    /**
+     * How many times smaller than an abrupt start the largest second
+     * difference of the managed mix must be.
+     */
+    private static final int CLICK_MARGIN = 10;
+
+    /**
+     * Not instantiable.
+     */
+    private VoiceManagerCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(
+        final String[] _args)
+        throws InterruptedException {
+      Configuration.get().init();
+      final AudioDevice device = AudioDevice.loopback(VoiceManagerCheck.RATE);
+      final ShortBuffer mix = MemoryUtil.memAllocShort(
+        VoiceManagerCheck.MIX_FRAMES * AudioDevice.CHANNELS);
+      final Sound tone = VoiceManagerCheck.tone();
+      try {
+        final double abrupt = VoiceManagerCheck.abrupt(device, tone, mix);
+        VoiceManagerCheck.stress(device, tone, mix, abrupt);
+        VoiceManagerCheck.producers(device, tone, mix);
+      } finally {
+        tone.close();
+        MemoryUtil.memFree(mix);
+        device.close();
+      }
+      System.out.println("VoiceManagerCheck passed");
+    }
+
+    /**
+     * Creates a one second mono tone of 220 Hz under a squared sine
+     * envelope, so it loops seamlessly and ends silent.
+     *
+     * @return the sound
+     */
+    private static Sound tone() {
+      final ShortBuffer pcm = MemoryUtil.memAllocShort(VoiceManagerCheck.RATE);
+      try {
+        for (int frame = 0; frame < VoiceManagerCheck.RATE; frame++) {
+          final double envelope =
+            Math.pow(Math.sin((Math.PI * frame) / VoiceManagerCheck.RATE), 2);
+          pcm.put(frame, (short) (12_000 * envelope * Math.sin(
+            (2 * Math.PI * 220 * frame) / VoiceManagerCheck.RATE)));
+        }
+        return Sound.create(pcm, 1, VoiceManagerCheck.RATE);
+      } finally {
+        MemoryUtil.memFree(pcm);
+      }
+    }
+
+    /**
+     * Measures the click of a raw source started mid-sound at full gain
+     * and stopped at once.
+     *
+     * @param _device the loopback device
+     * @param _sound the sound
+     * @param _mix the buffer of an update
+     * @return the largest second difference of the mix
+     */
+    private static double abrupt(
+        final AudioDevice _device,
+        final Sound _sound,
+        final ShortBuffer _mix) {
+      final ClickMeter meter = new ClickMeter();
+      final int source = AL10.alGenSources();
+      AL10.alSourcei(source, AL10.AL_BUFFER, _sound.buffer());
+      AL10.alSourcef(source, AL11.AL_SEC_OFFSET, 0.5F);
+      VoiceManagerCheck.render(_device, _mix, meter, 4);
+      AL10.alSourcePlay(source);
+      VoiceManagerCheck.render(_device, _mix, meter, 4);
+      AL10.alSourceStop(source);
+      VoiceManagerCheck.render(_device, _mix, meter, 4);
+      AL10.alSourcei(source, AL10.AL_BUFFER, 0);
+      AL10.alDeleteSources(source);
+      System.out.printf("abrupt source: peak %.0f, largest second difference"
+        + " %.0f%n", meter.peak, meter.curvature);
+      return meter.curvature;
+    }
+
+    /**
+     * Keeps ten thousand voices alive around an orbiting listener.
+     *
+     * @param _device the loopback device
+     * @param _sound the sound
+     * @param _mix the buffer of an update
+     * @param _abrupt the largest second difference of an abrupt source
+     */
+    private static void stress(
+        final AudioDevice _device,
+        final Sound _sound,
+        final ShortBuffer _mix,
+        final double _abrupt) {
+      final VoiceManager voices = new VoiceManager(64, 1024);
+      final Random random = new Random(50);
+      final int[] handles = new int[VoiceManagerCheck.VOICES];
+      for (int voice = 0; voice < handles.length; voice++) {
+        handles[voice] = voices.play(_sound,
+          (random.nextFloat() * 400F) - 200F, 0F,
+          (random.nextFloat() * 400F) - 200F,
+          0.05F + (random.nextFloat() * 0.1F),
+          (random.nextInt(10) == 0) ? 200 : 128, (voice % 4) != 0);
+        voices.pitch(handles[voice], 0.8F + (random.nextFloat() * 0.4F));
+        voices.distance(handles[voice], 2F, 100F);
+      }
+
+      final ClickMeter meter = new ClickMeter();
+      final long[] nanos = new long[VoiceManagerCheck.UPDATES];
+      long promotions = 0L;
+      long demotions = 0L;
+      int replayed = 0;
+      for (int update = 0; update < VoiceManagerCheck.UPDATES; update++) {
+        final float time = update * VoiceManagerCheck.DELTA;
+        voices.listener((float) Math.cos(time * 0.5F) * 150F, 0F,
+          (float) Math.sin(time * 0.5F) * 150F);
+        for (int voice = 0; voice < handles.length; voice += 4) {
+          if (!voices.isValid(handles[voice])) {
+            handles[voice] = voices.play(_sound,
+              (random.nextFloat() * 400F) - 200F, 0F,
+              (random.nextFloat() * 400F) - 200F, 0.1F, 128, false);
+            voices.distance(handles[voice], 2F, 100F);
+            replayed++;
+          }
+        }
+        voices.update(VoiceManagerCheck.DELTA);
+        nanos[update] = voices.updateNanos();
+        promotions += voices.promotions();
+        demotions += voices.demotions();
+        VoiceManagerCheck.render(_device, _mix, meter, 1);
+        VoiceManagerCheck.check(voices.realCount() <= voices.sourceCount(),
+          "More real voices than sources: " + voices.realCount());
+      }
+      final int error = AL10.alGetError();
+
+      final long[] steady = Arrays.copyOfRange(
+        nanos, VoiceManagerCheck.UPDATES / 2, VoiceManagerCheck.UPDATES);
+      Arrays.sort(steady);
+      System.out.printf("%d voices, %d real on %d sources: update median"
+        + " %.1f us, p99 %.1f us, max %.1f us%n", voices.size(),
+        voices.realCount(), voices.sourceCount(),
+        steady[steady.length / 2] / 1.0E3,
+        steady[(steady.length * 99) / 100] / 1.0E3,
+        steady[steady.length - 1] / 1.0E3);
+      System.out.printf("%d promotions, %d demotions, %d one-shots replayed;"
+        + " mix peak %.0f, largest second difference %.0f%n", promotions,
+        demotions, replayed, meter.peak, meter.curvature);
+      VoiceManagerCheck.check(error == AL10.AL_NO_ERROR,
+        "OpenAL error " + error);
+      VoiceManagerCheck.check(meter.peak > 0.0, "Managed mix is silent");
+      VoiceManagerCheck.check(
+        (meter.curvature * VoiceManagerCheck.CLICK_MARGIN) < _abrupt,
+        "Managed mix clicks: " + meter.curvature);
+      voices.close();
+      VoiceManagerCheck.check(voices.size() == 0,
+        "Voices left after closing: " + voices.size());
+    }
+
+    /**
+     * Issues commands from several threads while the calling thread
+     * updates.
+     *
+     * @param _device the loopback device
+     * @param _sound the sound
+     * @param _mix the buffer of an update
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void producers(
+        final AudioDevice _device,
+        final Sound _sound,
+        final ShortBuffer _mix)
+        throws InterruptedException {
+      final VoiceManager voices = new VoiceManager(32, 64);
+      final AtomicBoolean running = new AtomicBoolean(true);
+      final AtomicLong commands = new AtomicLong();
+      final AtomicLong ended = new AtomicLong();
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+      final Thread[] threads = new Thread[VoiceManagerCheck.PRODUCERS];
+      for (int thread = 0; thread < threads.length; thread++) {
+        final Random random = new Random(thread);
+        threads[thread] = new Thread(() -> {
+          try {
+            VoiceManagerCheck.produce(voices, _sound, random, running,
+              commands, ended);
+          } catch (final RuntimeException | Error producerException) {
+            failure.compareAndSet(null, producerException);
+          }
+        }, "Producer-" + thread);
+        threads[thread].start();
+      }
+
+      long slowest = 0L;
+      int updates = 0;
+      final long end = System.nanoTime() + VoiceManagerCheck.PRODUCE_NANOS;
+      while (System.nanoTime() < end) {
+        voices.listener(0F, 0F, 0F);
+        voices.update(VoiceManagerCheck.DELTA);
+        slowest = Math.max(slowest, voices.updateNanos());
+        _mix.clear();
+        _device.render(_mix);
+        VoiceManagerCheck.check(voices.realCount() <= voices.sourceCount(),
+          "More real voices than sources: " + voices.realCount());
+        updates++;
+      }
+      running.set(false);
+      for (final Thread thread : threads) {
+        thread.join();
+      }
+      voices.update(VoiceManagerCheck.DELTA);
+      final int error = AL10.alGetError();
+      System.out.printf("%d producers: %d commands, %d on ended voices,"
+        + " %d updates, slowest %.1f us, %d voices%n",
+        VoiceManagerCheck.PRODUCERS, commands.get(), ended.get(), updates,
+        slowest / 1.0E3, voices.size());
+      if (failure.get() != null) {
+        throw new IllegalStateException("Producer failed", failure.get());
+      }
+      VoiceManagerCheck.check(error == AL10.AL_NO_ERROR,
+        "OpenAL error " + error);
+      voices.close();
+      VoiceManagerCheck.check(voices.size() == 0,
+        "Voices left after closing: " + voices.size());
+    }
+
+    /**
+     * Issues random commands on the voices of a thread until stopped.
+     *
+     * @param _voices the voice manager
+     * @param _sound the sound
+     * @param _random the source of the commands
+     * @param _running whether to go on
+     * @param _commands the counter of commands
+     * @param _ended the counter of commands on ended voices
+     */
+    private static void produce(
+        final VoiceManager _voices,
+        final Sound _sound,
+        final Random _random,
+        final AtomicBoolean _running,
+        final AtomicLong _commands,
+        final AtomicLong _ended) {
+      final int[] handles = new int[256];
+      for (int voice = 0; voice < handles.length; voice++) {
+        handles[voice] = _voices.play(_sound, _random.nextFloat(), 0F,
+          _random.nextFloat(), 0.5F, _random.nextInt(256),
+          _random.nextBoolean());
+      }
+      while (_running.get()) {
+        final int voice = _random.nextInt(handles.length);
+        try {
+          switch (_random.nextInt(5)) {
+            case 0:
+              _voices.stop(handles[voice]);
+              handles[voice] = _voices.play(_sound,
+                _random.nextFloat() * 50F, 0F, 0F, 0.5F, 100, true);
+              break;
+            case 1:
+              _voices.gain(handles[voice], _random.nextFloat());
+              break;
+            case 2:
+              _voices.position(handles[voice], _random.nextFloat() * 20F,
+                0F, 1F);
+              break;
+            case 3:
+              _voices.pitch(handles[voice], 0.5F + _random.nextFloat());
+              break;
+            default:
+              _voices.distance(handles[voice], 1F, 50F);
+              break;
+          }
+        } catch (final IllegalArgumentException illegalArgumentException) {
+          /* A one-shot that ended since the last command. */
+          _ended.incrementAndGet();
+          handles[voice] = _voices.play(_sound, 0F, 0F, 0F, 0.5F, 10, false);
+        }
+        _commands.incrementAndGet();
+      }
+    }
+
+    /**
+     * Mixes updates into a meter.
+     *
+     * @param _device the loopback device
+     * @param _mix the buffer of an update
+     * @param _meter the meter
+     * @param _updates the number of updates to mix
+     */
+    private static void render(
+        final AudioDevice _device,
+        final ShortBuffer _mix,
+        final ClickMeter _meter,
+        final int _updates) {
+      for (int update = 0; update < _updates; update++) {
+        _mix.clear();
+        _device.render(_mix);
+        _meter.scan(_mix);
+      }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+    /**
+     * Peak and largest second difference of the left channel of a mix; a
+     * click is a jump of the second difference.
+     */
+    private static final class ClickMeter {
+
+      /**
+       * Largest absolute sample.
+       */
+      private double peak;
+
+      /**
+       * Largest absolute second difference.
+       */
+      private double curvature;
+
+      /**
+       * Previous sample.
+       */
+      private double previous;
+
+      /**
+       * Sample before the previous one.
+       */
+      private double beforePrevious;
+
+      /**
+       * Samples scanned, up to two.
+       */
+      private int primed;
+
+      /**
+       * Scans a mixed buffer.
+       *
+       * @param _mix the interleaved stereo frames
+       */
+      void scan(
+          final ShortBuffer _mix) {
+        for (int sample = 0; sample < _mix.limit();
+            sample += AudioDevice.CHANNELS) {
+          final double value = _mix.get(sample);
+          this.peak = Math.max(this.peak, Math.abs(value));
+          if (this.primed == 2) {
+            this.curvature = Math.max(this.curvature,
+              Math.abs(value - (2 * this.previous) + this.beforePrevious));
+          } else {
+            this.primed++;
+          }
+          this.beforePrevious = this.previous;
+          this.previous = value;
+        }
+      }
+
+    }
+
+  }
@@ -0,0 +1,483 @@
+package es.noa.rad.game.engine.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+  /**
+   * Writes synthetic Ogg Vorbis files for the audio checks, which have no
+   * encoder to depend on.
+   *
+   * <p>The encoder is the smallest valid Vorbis I stream: long blocks only,
+   * a flat floor, and a residue coded with one 8-bit scalar book, so the
+   * spectrum of every block is written directly. The audio is a few tones
+   * per channel under a slow envelope, synthesized in the frequency
+   * domain. Files are ordinary Vorbis and decode with {@code stb_vorbis}.
+   */
+  final class VorbisWriter {
+
+    /**
+     * Spectrum bins of a long block of 2048 samples.
+     */
+    private static final int BINS = 1024;
+
+    /**
+     * Residue partitions of a block.
+     */
+    private static final int PARTITIONS = 32;
+
+    /**
+     * Bins of a residue partition.
+     */
+    private static final int PARTITION_SIZE =
+      VorbisWriter.BINS / VorbisWriter.PARTITIONS;
+
+    /**
+     * Entries of the residue book, one per 8-bit value.
+     */
+    private static final int VALUES = 256;
+
+    /**
+     * Residue value of a silent bin.
+     */
+    private static final int ZERO = 128;
+
+    /**
+     * Residue quantization step, as a power of two exponent.
+     */
+    private static final int STEP_EXPONENT = -15;
+
+    /**
+     * Tones per channel.
+     */
+    private static final int TONES = 3;
+
+    /**
+     * Audio packets per page.
+     */
+    private static final int PACKETS_PER_PAGE = 16;
+
+    /**
+     * Serial number of the logical stream.
+     */
+    private static final int SERIAL = 0x5EED;
+
+    /**
+     * Page flag of the first page.
+     */
+    private static final int BEGIN = 2;
+
+    /**
+     * Page flag of the last page.
+     */
+    private static final int END = 4;
+
+    /**
+     * Not instantiable.
+     */
+    private VorbisWriter() {
+    }
+
+    /**
+     * Writes a file.
+     *
+     * @param _path the file
+     * @param _seconds the duration
+     * @param _channels the number of channels, one or two
+     * @param _sampleRate the sample rate in Hz
+     * @param _seed the seed of the tones
+     * @return the number of frames of the file
+     * @throws IOException if the file cannot be written
+     */
+    static int write(
+        final Path _path,
+        final float _seconds,
+        final int _channels,
+        final int _sampleRate,
+        final long _seed)
+        throws IOException {
+      final Random random = new Random(_seed);
+      final int packets = (int) (_seconds * _sampleRate / VorbisWriter.BINS)
+        + 1;
+      final int[][] tones = new int[_channels][VorbisWriter.TONES];
+      for (final int[] channelTones : tones) {
+        for (int tone = 0; tone < VorbisWriter.TONES; tone++) {
+          channelTones[tone] = 8 + random.nextInt(192);
+        }
+      }
+      try (OutputStream file = Files.newOutputStream(_path)) {
+        final Pages pages = new Pages(file);
+        pages.write(List.of(VorbisWriter.identification(
+          _channels, _sampleRate)), 0L, VorbisWriter.BEGIN);
+        pages.write(List.of(VorbisWriter.comment(), VorbisWriter.setup()),
+          0L, 0);
+        final List<byte[]> batch = new ArrayList<>();
+        final int[][] spectra = new int[_channels][VorbisWriter.BINS];
+        for (int packet = 0; packet < packets; packet++) {
+          for (int channel = 0; channel < _channels; channel++) {
+            final int[] spectrum = spectra[channel];
+            final double envelope =
+              0.5 + (0.5 * Math.sin((packet * 0.05) + channel));
+            for (int bin = 0; bin < VorbisWriter.BINS; bin++) {
+              spectrum[bin] = VorbisWriter.ZERO;
+            }
+            for (final int tone : tones[channel]) {
+              spectrum[tone] = VorbisWriter.ZERO + (int) (100 * envelope);
+            }
+            for (int bin = 0; bin < VorbisWriter.BINS; bin++) {
+              spectrum[bin] = Math.min(VorbisWriter.VALUES - 1,
+                Math.max(0, spectrum[bin] + random.nextInt(3) - 1));
+            }
+          }
+          batch.add(VorbisWriter.audio(spectra));
+          final boolean last = packet == (packets - 1);
+          if ((batch.size() == VorbisWriter.PACKETS_PER_PAGE) || last) {
+            pages.write(batch, (long) packet * VorbisWriter.BINS,
+              last ? VorbisWriter.END : 0);
+            batch.clear();
+          }
+        }
+      }
+      return (packets - 1) * VorbisWriter.BINS;
+    }
+
+    /**
+     * Builds the identification header.
+     *
+     * @param _channels the number of channels
+     * @param _sampleRate the sample rate in Hz
+     * @return the packet
+     */
+    private static byte[] identification(
+        final int _channels,
+        final int _sampleRate) {
+      final ByteBuffer packet = ByteBuffer.allocate(30)
+        .order(ByteOrder.LITTLE_ENDIAN);
+      packet.put((byte) 1).put("vorbis".getBytes(StandardCharsets.US_ASCII))
+        .putInt(0).put((byte) _channels).putInt(_sampleRate)
+        .putInt(0).putInt(0).putInt(0)
+        /* Short and long blocks of 2^8 and 2^11 samples, framing bit. */
+        .put((byte) ((11 << 4) | 8)).put((byte) 1);
+      return packet.array();
+    }
+
+    /**
+     * Builds the comment header.
+     *
+     * @return the packet
+     */
+    private static byte[] comment() {
+      final byte[] vendor = "check".getBytes(StandardCharsets.US_ASCII);
+      final ByteBuffer packet = ByteBuffer.allocate(16 + vendor.length)
+        .order(ByteOrder.LITTLE_ENDIAN);
+      packet.put((byte) 3).put("vorbis".getBytes(StandardCharsets.US_ASCII))
+        .putInt(vendor.length).put(vendor).putInt(0).put((byte) 1);
+      return packet.array();
+    }
+
+    /**
+     * Builds the setup header: a classification and a residue book, one
+     * flat floor, one residue, one mapping and one long block mode.
+     *
+     * @return the packet
+     */
+    private static byte[] setup() {
+      final Bits bits = new Bits();
+      bits.write(5, 8);
+      for (final byte letter : "vorbis".getBytes(StandardCharsets.US_ASCII)) {
+        bits.write(letter, 8);
+      }
+      bits.write(2 - 1, 8);
+      /* Classification book: two entries of one bit, no lookup. */
+      bits.write(0x564342, 24);
+      bits.write(1, 16);
+      bits.write(2, 24);
+      bits.write(0, 1);
+      bits.write(0, 1);
+      bits.write(0, 5);
+      bits.write(0, 5);
+      bits.write(0, 4);
+      /* Residue book: every 8-bit value, scalar lookup min + value * step. */
+      bits.write(0x564342, 24);
+      bits.write(1, 16);
+      bits.write(VorbisWriter.VALUES, 24);
+      bits.write(0, 1);
+      bits.write(0, 1);
+      for (int entry = 0; entry < VorbisWriter.VALUES; entry++) {
+        bits.write(8 - 1, 5);
+      }
+      bits.write(1, 4);
+      bits.write(VorbisWriter.pack(VorbisWriter.ZERO,
+        VorbisWriter.STEP_EXPONENT, 1), 32);
+      bits.write(VorbisWriter.pack(1, VorbisWriter.STEP_EXPONENT, 0), 32);
+      bits.write(8 - 1, 4);
+      bits.write(0, 1);
+      for (int entry = 0; entry < VorbisWriter.VALUES; entry++) {
+        bits.write(entry, 8);
+      }
+      /* Time domain transforms, unused. */
+      bits.write(0, 6);
+      bits.write(0, 16);
+      /* Floor 1 with one partition of one point at x = 512. */
+      bits.write(0, 6);
+      bits.write(1, 16);
+      bits.write(1, 5);
+      bits.write(0, 4);
+      bits.write(0, 3);
+      bits.write(0, 2);
+      bits.write(0, 8);
+      bits.write(0, 2);
+      bits.write(10, 4);
+      bits.write(VorbisWriter.BINS / 2, 10);
+      /* Residue type 1 over every bin, one class, one pass. */
+      bits.write(0, 6);
+      bits.write(1, 16);
+      bits.write(0, 24);
+      bits.write(VorbisWriter.BINS, 24);
+      bits.write(VorbisWriter.PARTITION_SIZE - 1, 24);
+      bits.write(0, 6);
+      bits.write(0, 8);
+      bits.write(1, 3);
+      bits.write(0, 1);
+      bits.write(1, 8);
+      /* One mapping, one submap, no coupling. */
+      bits.write(0, 6);
+      bits.write(0, 16);
+      bits.write(0, 1);
+      bits.write(0, 1);
+      bits.write(0, 2);
+      bits.write(0, 8);
+      bits.write(0, 8);
+      bits.write(0, 8);
+      /* One long block mode, framing bit. */
+      bits.write(0, 6);
+      bits.write(1, 1);
+      bits.write(0, 16);
+      bits.write(0, 16);
+      bits.write(0, 8);
+      bits.write(1, 1);
+      return bits.bytes();
+    }
+
+    /**
+     * Builds an audio packet writing the spectra directly as residue.
+     *
+     * @param _spectra the residue values of every channel
+     * @return the packet
+     */
+    private static byte[] audio(
+        final int[][] _spectra) {
+      final Bits bits = new Bits();
+      /* Audio packet, mode 0, long previous and next windows. */
+      bits.write(0, 1);
+      bits.write(1, 1);
+      bits.write(1, 1);
+      for (int channel = 0; channel < _spectra.length; channel++) {
+        bits.write(1, 1);
+        bits.write(VorbisWriter.VALUES - 1, 8);
+        bits.write(VorbisWriter.VALUES - 1, 8);
+      }
+      for (final int[] spectrum : _spectra) {
+        for (int partition = 0; partition < VorbisWriter.PARTITIONS;
+            partition++) {
+          bits.code(0, 1);
+          for (int bin = 0; bin < VorbisWriter.PARTITION_SIZE; bin++) {
+            bits.code(
+              spectrum[(partition * VorbisWriter.PARTITION_SIZE) + bin], 8);
+          }
+        }
+      }
+      return bits.bytes();
+    }
+
+    /**
+     * Packs a float as the setup header does.
+     *
+     * @param _mantissa the mantissa
+     * @param _exponent the exponent
+     * @param _sign one if negative
+     * @return the packed value
+     */
+    private static int pack(
+        final int _mantissa,
+        final int _exponent,
+        final int _sign) {
+      return (_sign << 31) | ((_exponent + 788) << 21) | _mantissa;
+    }
+
+    /**
+     * Little endian bit writer of Vorbis packets.
+     */
+    private static final class Bits {
+
+      /**
+       * Complete bytes.
+       */
+      private final ByteArrayOutputStream buffer =
+        new ByteArrayOutputStream();
+
+      /**
+       * Bits of the incomplete byte.
+       */
+      private int accumulator;
+
+      /**
+       * Number of bits in the accumulator.
+       */
+      private int count;
+
+      /**
+       * Writes the low bits of a value, least significant first.
+       *
+       * @param _value the value
+       * @param _bits the number of bits
+       */
+      void write(
+          final int _value,
+          final int _bits) {
+        for (int bit = 0; bit < _bits; bit++) {
+          this.accumulator |= ((_value >>> bit) & 1) << this.count;
+          this.count++;
+          if (this.count == 8) {
+            this.buffer.write(this.accumulator);
+            this.accumulator = 0;
+            this.count = 0;
+          }
+        }
+      }
+
+      /**
+       * Writes a Huffman codeword, most significant bit first.
+       *
+       * @param _codeword the codeword
+       * @param _length the length in bits
+       */
+      void code(
+          final int _codeword,
+          final int _length) {
+        for (int bit = _length - 1; bit >= 0; bit--) {
+          this.write((_codeword >>> bit) & 1, 1);
+        }
+      }
+
+      /**
+       * Gets the bytes written, padding the last one.
+       *
+       * @return the bytes
+       */
+      byte[] bytes() {
+        if (this.count != 0) {
+          this.buffer.write(this.accumulator);
+          this.accumulator = 0;
+          this.count = 0;
+        }
+        return this.buffer.toByteArray();
+      }
+
+    }
+
+    /**
+     * Ogg page writer of one logical stream.
+     */
+    private static final class Pages {
+
+      /**
+       * Size of a page header without its lacing values.
+       */
+      private static final int HEADER_SIZE = 27;
+
+      /**
+       * Position of the checksum in a page header.
+       */
+      private static final int CHECKSUM = 22;
+
+      /**
+       * Largest lacing value.
+       */
+      private static final int LACING = 255;
+
+      /**
+       * Destination file.
+       */
+      private final OutputStream file;
+
+      /**
+       * Sequence number of the next page.
+       */
+      private int sequence;
+
+      /**
+       * Creates a writer.
+       *
+       * @param _file the destination file
+       */
+      Pages(
+          final OutputStream _file) {
+        this.file = _file;
+      }
+
+      /**
+       * Writes a page holding whole packets.
+       *
+       * @param _packets the packets
+       * @param _granule the granule position
+       * @param _flags the page flags
+       * @throws IOException if the page cannot be written
+       */
+      void write(
+          final List<byte[]> _packets,
+          final long _granule,
+          final int _flags)
+          throws IOException {
+        final ByteArrayOutputStream lacing = new ByteArrayOutputStream();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (final byte[] packet : _packets) {
+          int remaining = packet.length;
+          while (remaining >= Pages.LACING) {
+            lacing.write(Pages.LACING);
+            remaining -= Pages.LACING;
+          }
+          lacing.write(remaining);
+          body.write(packet);
+        }
+        final ByteBuffer page = ByteBuffer.allocate(
+          Pages.HEADER_SIZE + lacing.size() + body.size())
+          .order(ByteOrder.LITTLE_ENDIAN);
+        page.put("OggS".getBytes(StandardCharsets.US_ASCII))
+          .put((byte) 0).put((byte) _flags).putLong(_granule)
+          .putInt(VorbisWriter.SERIAL).putInt(this.sequence++).putInt(0)
+          .put((byte) lacing.size()).put(lacing.toByteArray())
+          .put(body.toByteArray());
+        page.putInt(Pages.CHECKSUM, Pages.checksum(page.array()));
+        this.file.write(page.array());
+      }
+
+      /**
+       * Computes the Ogg checksum of a page.
+       *
+       * @param _page the page, with a zero checksum
+       * @return the checksum
+       */
+      private static int checksum(
+          final byte[] _page) {
+        int crc = 0;
+        for (final byte value : _page) {
+          crc ^= (value & 0xFF) << 24;
+          for (int bit = 0; bit < 8; bit++) {
+            crc = (crc < 0) ? ((crc << 1) ^ 0x04C11DB7) : (crc << 1);
+          }
+        }
+        return crc;
+      }
+
+    }
+
+  }
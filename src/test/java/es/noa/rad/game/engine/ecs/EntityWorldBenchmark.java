@@ -0,0 +1,540 @@
+package es.noa.rad.game.engine.ecs;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.util.IntList;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import org.joml.Vector3f;
+
+  /**
+   * Measures the iteration of a million entities of an
+   * {@link EntityWorld} per tick.
+   *
+   * <p>The entities are spread over four archetypes sharing a position
+   * and a velocity, and mirrored by an array of objects holding JOML
+   * vectors. A query moves every entity by its velocity, on the calling
+   * thread and in parallel on the common pool, and the objects are moved
+   * the same way; every position must then match its object exactly, and
+   * the serial iteration must allocate nothing.
+   *
+   * <p>A {@link SystemScheduler} then runs three systems per tick: one
+   * moving the entities, one ageing them and replacing the expired ones
+   * through its {@link CommandBuffer}, and one counting the entities per
+   * team. The first two must share a phase and the third, which reads the
+   * positions, must run after them. Every tick the population must stay
+   * the same, the replaced entities must be dead and every team entity
+   * must be counted. The iteration, update and command application times
+   * are reported.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class EntityWorldBenchmark {
+
+    /**
+     * Position component, three floats.
+     */
+    private static final ComponentType POSITION =
+      ComponentType.floats("benchmark.position", 3);
+
+    /**
+     * Velocity component, three floats.
+     */
+    private static final ComponentType VELOCITY =
+      ComponentType.floats("benchmark.velocity", 3);
+
+    /**
+     * Remaining lifetime component in seconds, one float.
+     */
+    private static final ComponentType LIFETIME =
+      ComponentType.floats("benchmark.lifetime", 1);
+
+    /**
+     * Team component, one int.
+     */
+    private static final ComponentType TEAM =
+      ComponentType.ints("benchmark.team", 1);
+
+    /**
+     * Entities of the world.
+     */
+    private static final int ENTITIES = 1_000_000;
+
+    /**
+     * Entities per chunk.
+     */
+    private static final int CHUNK_CAPACITY = 1024;
+
+    /**
+     * Number of teams.
+     */
+    private static final int TEAMS = 8;
+
+    /**
+     * Longest lifetime in seconds.
+     */
+    private static final float MAX_LIFETIME = 2F;
+
+    /**
+     * Fixed time step in seconds.
+     */
+    private static final float DELTA_TIME = 1F / 60F;
+
+    /**
+     * Ticks run to warm up the compiler.
+     */
+    private static final int WARM_TICKS = 20;
+
+    /**
+     * Ticks timed; the median is reported.
+     */
+    private static final int TICKS = 51;
+
+    /**
+     * Not instantiable.
+     */
+    private EntityWorldBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final Random random = new Random(41);
+      final EntityWorld world =
+        new EntityWorld(EntityWorldBenchmark.CHUNK_CAPACITY);
+      final int[] entities = new int[EntityWorldBenchmark.ENTITIES];
+      final Vector3f[] positions = new Vector3f[EntityWorldBenchmark.ENTITIES];
+      final Vector3f[] velocities =
+        new Vector3f[EntityWorldBenchmark.ENTITIES];
+      final float[] values = new float[3];
+      for (int entity = 0; entity < EntityWorldBenchmark.ENTITIES;
+          entity++) {
+        entities[entity] = EntityWorldBenchmark.spawn(world, null,
+          EntityWorldBenchmark.mask(entity), entity, random, values);
+        final Chunk chunk = world.chunk(entities[entity]);
+        final int offset = world.row(entities[entity]) * 3;
+        final float[] position = chunk.floats(EntityWorldBenchmark.POSITION);
+        final float[] velocity = chunk.floats(EntityWorldBenchmark.VELOCITY);
+        positions[entity] = new Vector3f(position[offset],
+          position[offset + 1], position[offset + 2]);
+        velocities[entity] = new Vector3f(velocity[offset],
+          velocity[offset + 1], velocity[offset + 2]);
+      }
+      System.out.printf("%d entities in %d archetypes, %d per chunk, %d"
+        + " cores%n", world.size(), world.archetypeCount(),
+        EntityWorldBenchmark.CHUNK_CAPACITY,
+        Runtime.getRuntime().availableProcessors());
+      EntityWorldBenchmark.iterate(world, entities, positions, velocities);
+      EntityWorldBenchmark.schedule(world, random);
+      System.out.println("EntityWorldBenchmark passed");
+    }
+
+    /**
+     * Times the query iteration against the objects and checks that both
+     * moved the same way.
+     *
+     * @param _world the world
+     * @param _entities the handle of every entity
+     * @param _positions the position object of every entity
+     * @param _velocities the velocity object of every entity
+     */
+    private static void iterate(
+        final EntityWorld _world,
+        final int[] _entities,
+        final Vector3f[] _positions,
+        final Vector3f[] _velocities) {
+      final Query query = _world.query(EntityWorldBenchmark.POSITION,
+        EntityWorldBenchmark.VELOCITY);
+      final Consumer<Chunk> move = EntityWorldBenchmark::move;
+      final long[] serial = new long[EntityWorldBenchmark.TICKS];
+      final long[] parallel = new long[EntityWorldBenchmark.TICKS];
+      final long[] objects = new long[EntityWorldBenchmark.TICKS];
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      long allocated = 0L;
+      for (int tick = -EntityWorldBenchmark.WARM_TICKS;
+          tick < EntityWorldBenchmark.TICKS; tick++) {
+        threads.getThreadAllocatedBytes(thread);
+        final long before = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        query.forEach(move);
+        final long serialNanos = System.nanoTime() - start;
+        final long serialBytes =
+          threads.getThreadAllocatedBytes(thread) - before;
+        start = System.nanoTime();
+        query.forEach(move, ForkJoinPool.commonPool());
+        final long parallelNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int pass = 0; pass < 2; pass++) {
+          for (int entity = 0; entity < _positions.length; entity++) {
+            _positions[entity].fma(EntityWorldBenchmark.DELTA_TIME,
+              _velocities[entity]);
+          }
+        }
+        final long objectNanos = (System.nanoTime() - start) / 2L;
+        if (tick >= 0) {
+          serial[tick] = serialNanos;
+          parallel[tick] = parallelNanos;
+          objects[tick] = objectNanos;
+          allocated += serialBytes;
+        }
+      }
+      EntityWorldBenchmark.check(allocated == 0L,
+        "The serial iteration allocated " + allocated + " bytes");
+      for (int entity = 0; entity < _entities.length; entity++) {
+        final float[] position = _world.chunk(_entities[entity])
+          .floats(EntityWorldBenchmark.POSITION);
+        final int offset = _world.row(_entities[entity]) * 3;
+        EntityWorldBenchmark.check((position[offset] == _positions[entity].x)
+          && (position[offset + 1] == _positions[entity].y)
+          && (position[offset + 2] == _positions[entity].z),
+          "Entity " + entity + " moved to a different position");
+      }
+      Arrays.sort(serial);
+      Arrays.sort(parallel);
+      Arrays.sort(objects);
+      System.out.printf("moving %d entities: query %.2f ms, parallel query"
+        + " %.2f ms, JOML objects %.2f ms%n", query.count(),
+        serial[serial.length / 2] / 1.0E6,
+        parallel[parallel.length / 2] / 1.0E6,
+        objects[objects.length / 2] / 1.0E6);
+    }
+
+    /**
+     * Times the scheduler running the movement, ageing and team systems
+     * and checks every tick.
+     *
+     * @param _world the world
+     * @param _random the random source
+     */
+    private static void schedule(
+        final EntityWorld _world,
+        final Random _random) {
+      final SystemScheduler scheduler = new SystemScheduler(_world);
+      final AgeSystem age = new AgeSystem(_random);
+      final TeamSystem team = new TeamSystem();
+      scheduler.add(new MoveSystem());
+      scheduler.add(age);
+      scheduler.add(team);
+      EntityWorldBenchmark.check((scheduler.phaseCount() == 2)
+        && (scheduler.phase(0) == 0) && (scheduler.phase(1) == 0)
+        && (scheduler.phase(2) == 1),
+        "Unexpected phases: " + scheduler.phaseCount());
+      final Query teams = _world.query(EntityWorldBenchmark.TEAM);
+      final long[] update = new long[EntityWorldBenchmark.TICKS];
+      final long[] apply = new long[EntityWorldBenchmark.TICKS];
+      long replaced = 0L;
+      for (int tick = -EntityWorldBenchmark.WARM_TICKS;
+          tick < EntityWorldBenchmark.TICKS; tick++) {
+        scheduler.update(EntityWorldBenchmark.DELTA_TIME);
+        EntityWorldBenchmark.check(
+          _world.size() == EntityWorldBenchmark.ENTITIES,
+          "Tick " + tick + " left " + _world.size() + " entities");
+        for (int index = 0; index < age.expired.size(); index++) {
+          EntityWorldBenchmark.check(!_world.isValid(age.expired.get(index)),
+            "Tick " + tick + " left an expired entity alive");
+        }
+        EntityWorldBenchmark.check(team.counted == teams.count(),
+          "Tick " + tick + " counted " + team.counted + " team entities"
+            + " instead of " + teams.count());
+        if (tick >= 0) {
+          update[tick] = scheduler.updateNanos();
+          apply[tick] = scheduler.applyNanos();
+          replaced += age.expired.size();
+        }
+      }
+      Arrays.sort(update);
+      Arrays.sort(apply);
+      System.out.printf("scheduler, 3 systems in 2 phases: update %.2f ms,"
+        + " of which %.2f ms applying %d replacements per tick%n",
+        update[update.length / 2] / 1.0E6, apply[apply.length / 2] / 1.0E6,
+        replaced / EntityWorldBenchmark.TICKS);
+    }
+
+    /**
+     * Moves the entities of a chunk by their velocity.
+     *
+     * @param _chunk the chunk
+     */
+    private static void move(
+        final Chunk _chunk) {
+      final float[] position = _chunk.floats(EntityWorldBenchmark.POSITION);
+      final float[] velocity = _chunk.floats(EntityWorldBenchmark.VELOCITY);
+      final int count = _chunk.size() * 3;
+      for (int value = 0; value < count; value++) {
+        position[value] = position[value]
+          + (EntityWorldBenchmark.DELTA_TIME * velocity[value]);
+      }
+    }
+
+    /**
+     * Gets the component mask of an initial entity: every fourth
+     * archetype.
+     *
+     * @param _entity the entity index
+     * @return the mask
+     */
+    private static long mask(
+        final int _entity) {
+      long mask = EntityWorldBenchmark.POSITION.mask()
+        | EntityWorldBenchmark.VELOCITY.mask();
+      if ((_entity & 1) != 0) {
+        mask |= EntityWorldBenchmark.TEAM.mask();
+      }
+      if ((_entity & 2) != 0) {
+        mask |= EntityWorldBenchmark.LIFETIME.mask();
+      }
+      return mask;
+    }
+
+    /**
+     * Creates an entity with random components, in the world or through a
+     * command buffer.
+     *
+     * @param _world the world, used when there is no buffer
+     * @param _commands the buffer, or null to create it in the world
+     * @param _mask the component mask
+     * @param _team the team, if the mask has one
+     * @param _random the random source
+     * @param _values scratch array of three floats
+     * @return the entity, provisional if created through the buffer
+     */
+    private static int spawn(
+        final EntityWorld _world,
+        final CommandBuffer _commands,
+        final long _mask,
+        final int _team,
+        final Random _random,
+        final float[] _values) {
+      final int entity = (_commands == null)
+        ? _world.create(_mask) : _commands.create(_mask);
+      for (int component = 0; component < 2; component++) {
+        final ComponentType type = (component == 0)
+          ? EntityWorldBenchmark.POSITION : EntityWorldBenchmark.VELOCITY;
+        for (int axis = 0; axis < 3; axis++) {
+          _values[axis] = (_random.nextFloat() * 200F) - 100F;
+        }
+        if (_commands == null) {
+          _world.set(entity, type, _values, 0);
+        } else {
+          _commands.set(entity, type, _values, 0);
+        }
+      }
+      if ((_mask & EntityWorldBenchmark.LIFETIME.mask()) != 0L) {
+        _values[0] = Math.nextUp(_random.nextFloat()
+          * EntityWorldBenchmark.MAX_LIFETIME);
+        if (_commands == null) {
+          _world.set(entity, EntityWorldBenchmark.LIFETIME, _values, 0);
+        } else {
+          _commands.set(entity, EntityWorldBenchmark.LIFETIME, _values, 0);
+        }
+      }
+      if ((_mask & EntityWorldBenchmark.TEAM.mask()) != 0L) {
+        final int[] team = {_team % EntityWorldBenchmark.TEAMS};
+        if (_commands == null) {
+          _world.set(entity, EntityWorldBenchmark.TEAM, team, 0);
+        } else {
+          _commands.set(entity, EntityWorldBenchmark.TEAM, team, 0);
+        }
+      }
+      return entity;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+    /**
+     * Moves the entities by their velocity.
+     */
+    private static final class MoveSystem implements EntitySystem {
+
+      /**
+       * Entities with a position and a velocity, created on first use.
+       */
+      private Query query;
+
+      /**
+       * Movement of a chunk.
+       */
+      private final Consumer<Chunk> move = EntityWorldBenchmark::move;
+
+      @Override
+      public long reads() {
+        return EntityWorldBenchmark.VELOCITY.mask();
+      }
+
+      @Override
+      public long writes() {
+        return EntityWorldBenchmark.POSITION.mask();
+      }
+
+      @Override
+      public void update(
+          final EntityWorld _world,
+          final CommandBuffer _commands,
+          final float _deltaTime) {
+        if (this.query == null) {
+          this.query = _world.query(EntityWorldBenchmark.POSITION,
+            EntityWorldBenchmark.VELOCITY);
+        }
+        this.query.forEach(this.move);
+      }
+
+    }
+
+    /**
+     * Ages the entities with a lifetime and replaces the expired ones by
+     * new entities of the same archetype.
+     */
+    private static final class AgeSystem implements EntitySystem {
+
+      /**
+       * Random source of the replacements.
+       */
+      private final Random random;
+
+      /**
+       * Scratch values of the replacements.
+       */
+      private final float[] values = new float[3];
+
+      /**
+       * Entities expired by the last update.
+       */
+      private final IntList expired = new IntList(1024);
+
+      /**
+       * Entities with a lifetime, created on first use.
+       */
+      private Query query;
+
+      /**
+       * Creates the system.
+       *
+       * @param _random the random source of the replacements
+       */
+      private AgeSystem(
+          final Random _random) {
+        this.random = _random;
+      }
+
+      @Override
+      public long reads() {
+        return 0L;
+      }
+
+      @Override
+      public long writes() {
+        return EntityWorldBenchmark.LIFETIME.mask();
+      }
+
+      @Override
+      public void update(
+          final EntityWorld _world,
+          final CommandBuffer _commands,
+          final float _deltaTime) {
+        if (this.query == null) {
+          this.query = _world.query(EntityWorldBenchmark.LIFETIME);
+        }
+        this.expired.clear();
+        this.query.forEach(chunk -> {
+          final float[] lifetime =
+            chunk.floats(EntityWorldBenchmark.LIFETIME);
+          for (int row = 0; row < chunk.size(); row++) {
+            lifetime[row] -= _deltaTime;
+            if (lifetime[row] <= 0F) {
+              final int entity = chunk.entity(row);
+              this.expired.add(entity);
+              _commands.destroy(entity);
+              EntityWorldBenchmark.spawn(_world, _commands,
+                chunk.archetype().mask(), entity, this.random, this.values);
+            }
+          }
+        });
+      }
+
+    }
+
+    /**
+     * Counts the entities of every team and sums their x positions.
+     */
+    private static final class TeamSystem implements EntitySystem {
+
+      /**
+       * Entities of every team in the last update.
+       */
+      private final int[] members = new int[EntityWorldBenchmark.TEAMS];
+
+      /**
+       * Sum of the x positions of every team in the last update.
+       */
+      private final double[] sums = new double[EntityWorldBenchmark.TEAMS];
+
+      /**
+       * Entities counted by the last update.
+       */
+      private int counted;
+
+      /**
+       * Entities with a team and a position, created on first use.
+       */
+      private Query query;
+
+      @Override
+      public long reads() {
+        return EntityWorldBenchmark.TEAM.mask()
+          | EntityWorldBenchmark.POSITION.mask();
+      }
+
+      @Override
+      public long writes() {
+        return 0L;
+      }
+
+      @Override
+      public void update(
+          final EntityWorld _world,
+          final CommandBuffer _commands,
+          final float _deltaTime) {
+        if (this.query == null) {
+          this.query = _world.query(EntityWorldBenchmark.TEAM,
+            EntityWorldBenchmark.POSITION);
+        }
+        Arrays.fill(this.members, 0);
+        Arrays.fill(this.sums, 0.0);
+        this.query.forEach(chunk -> {
+          final int[] team = chunk.ints(EntityWorldBenchmark.TEAM);
+          final float[] position =
+            chunk.floats(EntityWorldBenchmark.POSITION);
+          for (int row = 0; row < chunk.size(); row++) {
+            this.members[team[row]]++;
+            this.sums[team[row]] += position[row * 3];
+          }
+        });
+        this.counted = Arrays.stream(this.members).sum();
+      }
+
+    }
+
+  }
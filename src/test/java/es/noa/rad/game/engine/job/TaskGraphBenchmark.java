@@ -0,0 +1,245 @@
+package es.noa.rad.game.engine.job;
+
+import es.noa.rad.game.engine.memory.HandlePool;
+import es.noa.rad.game.engine.render.RenderQueue;
+import es.noa.rad.game.engine.render.SpriteBatch;
+import es.noa.rad.game.engine.render.culling.BoundingBoxes;
+import es.noa.rad.game.engine.render.culling.FrustumCuller;
+import es.noa.rad.game.engine.render.particle.ParticleSystem;
+import es.noa.rad.game.engine.scene.SceneGraph;
+import es.noa.rad.game.engine.util.IntList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.joml.Matrix4f;
+
+  /**
+   * Measures how the render frame graph of the
+   * {@link es.noa.rad.game.engine.core.Window} scales with the threads
+   * of the {@link JobSystem}.
+   *
+   * <p>First checks on random graphs that every task runs once and after
+   * its dependencies, that cycles are rejected and that a failure is
+   * rethrown once the remaining tasks have run. Then runs, with 1, 2, 4 and
+   * every available thread, the frame graph of the window: world bounds
+   * then culling of a scene graph, next to particle drawing then the
+   * sprite batch flush, and prints the best frame time of each.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class TaskGraphBenchmark {
+
+    /**
+     * Nodes of the scene graph.
+     */
+    private static final int NODES = 200_000;
+
+    /**
+     * Live particles.
+     */
+    private static final int PARTICLES = 200_000;
+
+    /**
+     * Frames run per thread count.
+     */
+    private static final int FRAMES = 300;
+
+    /**
+     * Tasks of every random graph.
+     */
+    private static final int TASKS = 200;
+
+    /**
+     * Random graphs checked.
+     */
+    private static final int GRAPHS = 50;
+
+    /**
+     * Not instantiable.
+     */
+    private TaskGraphBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      final int processors = Runtime.getRuntime().availableProcessors();
+      System.out.println("available processors " + processors);
+      TaskGraphBenchmark.checkOrder();
+      for (int threads = 1; threads <= 4; threads *= 2) {
+        TaskGraphBenchmark.frames(threads);
+      }
+      if (processors > 4) {
+        TaskGraphBenchmark.frames(processors);
+      }
+      System.out.println("TaskGraphBenchmark passed");
+    }
+
+    /**
+     * Checks the ordering, cycle and failure contracts on random graphs.
+     */
+    private static void checkOrder() {
+      final JobSystem jobSystem = new JobSystem(4);
+      try {
+        final TaskGraph graph = new TaskGraph(jobSystem, 4);
+        final Random random = new Random(5);
+        final AtomicInteger clock = new AtomicInteger();
+        final int[] stamps = new int[TaskGraphBenchmark.TASKS];
+        final int[] dependencies = new int[TaskGraphBenchmark.TASKS * 2];
+        for (int repetition = 0; repetition < TaskGraphBenchmark.GRAPHS;
+            repetition++) {
+          graph.clear();
+          clock.set(0);
+          for (int task = 0; task < TaskGraphBenchmark.TASKS; task++) {
+            final int stamped = task;
+            graph.add(() -> stamps[stamped] = clock.incrementAndGet());
+          }
+          for (int task = 1; task < TaskGraphBenchmark.TASKS; task++) {
+            for (int dependency = 0; dependency < 2; dependency++) {
+              dependencies[(task * 2) + dependency] = random.nextInt(task);
+              graph.dependsOn(task, dependencies[(task * 2) + dependency]);
+            }
+          }
+          graph.run();
+          TaskGraphBenchmark.check(clock.get() == TaskGraphBenchmark.TASKS,
+            "Tasks run: " + clock.get());
+          for (int task = 2; task < dependencies.length; task++) {
+            TaskGraphBenchmark.check(
+              stamps[task / 2] > stamps[dependencies[task]],
+              "Task " + (task / 2) + " ran before " + dependencies[task]);
+          }
+        }
+
+        graph.clear();
+        final int first = graph.add(() -> { });
+        final int second = graph.add(() -> { });
+        graph.dependsOn(first, second);
+        graph.dependsOn(second, first);
+        try {
+          graph.run();
+          TaskGraphBenchmark.check(false, "Cycle not rejected");
+        } catch (final IllegalStateException illegalStateException) {
+          System.out.println("cycle rejected: "
+            + illegalStateException.getMessage());
+        }
+
+        graph.clear();
+        final AtomicInteger dependentRuns = new AtomicInteger();
+        final int failing = graph.add(() -> {
+          throw new IllegalArgumentException("task");
+        });
+        graph.dependsOn(graph.add(dependentRuns::incrementAndGet), failing);
+        try {
+          graph.run();
+          TaskGraphBenchmark.check(false, "Failure swallowed");
+        } catch (final IllegalArgumentException illegalArgumentException) {
+          TaskGraphBenchmark.check(dependentRuns.get() == 1,
+            "Remaining task did not run after a failure");
+        }
+      } finally {
+        jobSystem.close();
+      }
+    }
+
+    /**
+     * Runs the render frame graph with a number of threads.
+     *
+     * @param _threads the threads of the job system
+     */
+    private static void frames(
+        final int _threads) {
+      final JobSystem jobSystem = new JobSystem(_threads);
+      final ParticleSystem particleSystem = new ParticleSystem(
+        TaskGraphBenchmark.PARTICLES, 1, jobSystem.pool(),
+        ParticleSystem.DEFAULT_PARALLEL_THRESHOLD);
+      final RenderQueue renderQueue = new RenderQueue(1024);
+      final SpriteBatch spriteBatch = new SpriteBatch(1024, 0);
+      try {
+        final Random random = new Random(3);
+        final SceneGraph sceneGraph = new SceneGraph(TaskGraphBenchmark.NODES);
+        for (int node = 0; node < TaskGraphBenchmark.NODES; node++) {
+          sceneGraph.translation(
+            sceneGraph.create(HandlePool.INVALID_HANDLE),
+            (random.nextFloat() * 200F) - 100F, 0F,
+            (random.nextFloat() * 200F) - 100F);
+        }
+        final BoundingBoxes localBounds =
+          new BoundingBoxes(TaskGraphBenchmark.NODES);
+        localBounds.size(sceneGraph.slotCount());
+        for (int slot = 0; slot < sceneGraph.slotCount(); slot++) {
+          localBounds.minX()[slot] = -1F;
+          localBounds.minY()[slot] = -1F;
+          localBounds.minZ()[slot] = -1F;
+          localBounds.maxX()[slot] = 1F;
+          localBounds.maxY()[slot] = 1F;
+          localBounds.maxZ()[slot] = 1F;
+        }
+        sceneGraph.update(jobSystem.pool());
+        final BoundingBoxes worldBounds =
+          new BoundingBoxes(TaskGraphBenchmark.NODES);
+        final IntList visibleSlots = new IntList(TaskGraphBenchmark.NODES);
+        final FrustumCuller frustumCuller = new FrustumCuller(
+          jobSystem.pool(), FrustumCuller.DEFAULT_PARALLEL_THRESHOLD);
+
+        particleSystem.lifetime(1000F);
+        for (int particle = 0; particle < TaskGraphBenchmark.PARTICLES;
+            particle++) {
+          particleSystem.emit(random.nextFloat(), random.nextFloat(),
+            random.nextFloat(), 0F, 0F, 0F);
+        }
+        final Matrix4f view = new Matrix4f()
+          .lookAt(0F, 10F, 0F, 0F, 0F, -50F, 0F, 1F, 0F);
+        final Matrix4f viewProjection = new Matrix4f()
+          .perspective(1F, 1.7F, 0.1F, 100F).mul(view);
+
+        final Runnable boundsJob =
+          () -> sceneGraph.worldBounds(localBounds, worldBounds);
+        final Runnable cullingJob = () -> {
+          frustumCuller.update(viewProjection);
+          frustumCuller.cull(worldBounds, visibleSlots);
+        };
+        final Runnable particleDrawJob =
+          () -> particleSystem.flush(renderQueue, view);
+        final Runnable batchesJob = () -> spriteBatch.flush(renderQueue);
+        final TaskGraph renderGraph = new TaskGraph(jobSystem, 8);
+        long best = Long.MAX_VALUE;
+        for (int frame = 0; frame < TaskGraphBenchmark.FRAMES; frame++) {
+          renderGraph.clear();
+          final int bounds = renderGraph.add(boundsJob);
+          renderGraph.dependsOn(renderGraph.add(cullingJob), bounds);
+          final int particleDraw = renderGraph.add(particleDrawJob);
+          renderGraph.dependsOn(renderGraph.add(batchesJob), particleDraw);
+          renderGraph.run();
+          best = Math.min(best, renderGraph.runNanos());
+          renderQueue.clear();
+        }
+        System.out.printf("threads %d: best frame %.3f ms, visible %d of %d,"
+          + " steals %d%n", _threads, best / 1.0E6, visibleSlots.size(),
+          TaskGraphBenchmark.NODES, jobSystem.steals());
+      } finally {
+        spriteBatch.close();
+        renderQueue.close();
+        particleSystem.close();
+        jobSystem.close();
+      }
+    }
+
+    /**
+     * Fails the benchmark.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
@@ -0,0 +1,431 @@
+package es.noa.rad.game.engine.math;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.render.culling.BoundingBoxes;
+import es.noa.rad.game.engine.util.VectorSupport;
+import java.util.Arrays;
+import java.util.Random;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.primitives.AABBf;
+
+  /**
+   * Measures every {@link BatchMath} operation against its scalar
+   * fallback and against per-object JOML calls.
+   *
+   * <p>Every operation is first checked to give the same results as the
+   * matching JOML method, up to the sign of zero, then timed as the median
+   * of many runs on the path chosen by {@link VectorSupport}, on the
+   * scalar fallback and as a JOML loop. Sizes are odd so the vector tails
+   * are covered. Run with and without {@code --add-modules
+   * jdk.incubator.vector}, or with {@code -Des.noa.rad.game.vector=false},
+   * to compare the paths of the public methods.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class BatchMathBenchmark {
+
+    /**
+     * Points of the vector operations.
+     */
+    private static final int POINTS = 1_000_003;
+
+    /**
+     * Matrices of the product.
+     */
+    private static final int MATRICES = 100_003;
+
+    /**
+     * Boxes of the indexed bounds transform.
+     */
+    private static final int BOXES = 100_003;
+
+    /**
+     * Matrices the indexed boxes pick from.
+     */
+    private static final int BLOCK = 5_000;
+
+    /**
+     * Runs timed per measurement; the median is reported.
+     */
+    private static final int RUNS = 101;
+
+    /**
+     * Results differing from JOML in the last check.
+     */
+    private static int misses;
+
+    /**
+     * Not instantiable.
+     */
+    private BatchMathBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      System.out.println("vector api " + VectorSupport.available());
+      System.out.println(
+        "operation      batch ms  scalar ms    joml ms  joml / batch");
+      final Random random = new Random(3);
+      final Matrix4f matrix = new Matrix4f().translate(1F, 2F, 3F)
+        .rotateXYZ(0.3F, 0.7F, -0.2F).scale(1.5F, 0.5F, 2F);
+      final Vector3Array points = new Vector3Array(BatchMathBenchmark.POINTS);
+      for (int point = 0; point < BatchMathBenchmark.POINTS; point++) {
+        points.add((random.nextFloat() * 20F) - 10F,
+          (random.nextFloat() * 20F) - 10F, (random.nextFloat() * 20F) - 10F);
+      }
+      BatchMathBenchmark.vectors(matrix, points);
+      BatchMathBenchmark.bounds(matrix, points, random);
+      BatchMathBenchmark.products(random);
+      BatchMathBenchmark.indexedBounds(random);
+      System.out.println("BatchMathBenchmark passed");
+    }
+
+    /**
+     * Checks and times the point, direction and normal transforms.
+     *
+     * @param _matrix the matrix
+     * @param _points the points
+     */
+    private static void vectors(
+        final Matrix4f _matrix,
+        final Vector3Array _points) {
+      final int count = _points.size();
+      final Vector3Array out = new Vector3Array(count);
+      final Vector3f vector = new Vector3f();
+      final Matrix3f normal = _matrix.normal(new Matrix3f());
+
+      BatchMath.transformPoints(_matrix, _points, out);
+      BatchMathBenchmark.misses = 0;
+      for (int point = 0; point < count; point++) {
+        _matrix.transformPosition(_points.get(point, vector));
+        BatchMathBenchmark.compare(out, point, vector);
+      }
+      BatchMathBenchmark.report("points",
+        () -> BatchMath.transformPoints(_matrix, _points, out),
+        () -> BatchMath.pointsScalar(_matrix, _points, out, 0, count),
+        () -> {
+          for (int point = 0; point < count; point++) {
+            _matrix.transformPosition(_points.get(point, vector));
+            out.set(point, vector.x, vector.y, vector.z);
+          }
+        });
+
+      BatchMath.transformDirections(_matrix, _points, out);
+      BatchMathBenchmark.misses = 0;
+      for (int point = 0; point < count; point++) {
+        _matrix.transformDirection(_points.get(point, vector));
+        BatchMathBenchmark.compare(out, point, vector);
+      }
+      BatchMathBenchmark.report("directions",
+        () -> BatchMath.transformDirections(_matrix, _points, out),
+        () -> BatchMath.directionsScalar(_matrix, _points, out, 0, count),
+        () -> {
+          for (int point = 0; point < count; point++) {
+            _matrix.transformDirection(_points.get(point, vector));
+            out.set(point, vector.x, vector.y, vector.z);
+          }
+        });
+
+      BatchMath.transformNormals(_matrix, _points, out);
+      BatchMathBenchmark.misses = 0;
+      for (int point = 0; point < count; point++) {
+        normal.transform(_points.get(point, vector)).normalize();
+        BatchMathBenchmark.compare(out, point, vector);
+      }
+      BatchMathBenchmark.report("normals",
+        () -> BatchMath.transformNormals(_matrix, _points, out),
+        () -> BatchMath.normalsScalar(normal, _points, out, 0, count),
+        () -> {
+          for (int point = 0; point < count; point++) {
+            normal.transform(_points.get(point, vector)).normalize();
+            out.set(point, vector.x, vector.y, vector.z);
+          }
+        });
+    }
+
+    /**
+     * Checks and times the bounds of points and the box transform.
+     *
+     * @param _matrix the matrix
+     * @param _points the points
+     * @param _random the source of the box extents
+     */
+    private static void bounds(
+        final Matrix4f _matrix,
+        final Vector3Array _points,
+        final Random _random) {
+      final int count = _points.size();
+      final AABBf box = BatchMath.bounds(_points, new AABBf());
+      final AABBf expected = new AABBf();
+      for (int point = 0; point < count; point++) {
+        expected.union(_points.x()[point], _points.y()[point],
+          _points.z()[point]);
+      }
+      BatchMathBenchmark.misses = box.equals(expected) ? 0 : 1;
+      BatchMathBenchmark.report("bounds",
+        () -> BatchMath.bounds(_points, box),
+        () -> BatchMath.boundsScalar(_points, 0, box),
+        () -> {
+          for (int point = 0; point < count; point++) {
+            box.union(_points.x()[point], _points.y()[point],
+              _points.z()[point]);
+          }
+        });
+
+      final BoundingBoxes boxes = new BoundingBoxes(count);
+      for (int point = 0; point < count; point++) {
+        final float x = _points.x()[point];
+        final float y = _points.y()[point];
+        final float z = _points.z()[point];
+        boxes.add(x, y, z, x + _random.nextFloat(), y + _random.nextFloat(),
+          z + _random.nextFloat());
+      }
+      final BoundingBoxes out = new BoundingBoxes(count);
+      final Vector3f min = new Vector3f();
+      final Vector3f max = new Vector3f();
+      BatchMath.transformBounds(_matrix, boxes, out);
+      BatchMathBenchmark.misses = 0;
+      for (int index = 0; index < count; index++) {
+        _matrix.transformAab(boxes.minX()[index], boxes.minY()[index],
+          boxes.minZ()[index], boxes.maxX()[index], boxes.maxY()[index],
+          boxes.maxZ()[index], min, max);
+        BatchMathBenchmark.compare(out, index, min, max);
+      }
+      BatchMathBenchmark.report("boxes",
+        () -> BatchMath.transformBounds(_matrix, boxes, out),
+        () -> BatchMath.boxesScalar(_matrix, boxes, out, 0, count),
+        () -> {
+          for (int index = 0; index < count; index++) {
+            _matrix.transformAab(boxes.minX()[index], boxes.minY()[index],
+              boxes.minZ()[index], boxes.maxX()[index], boxes.maxY()[index],
+              boxes.maxZ()[index], min, max);
+            BatchMathBenchmark.store(out, index, min, max);
+          }
+        });
+    }
+
+    /**
+     * Checks and times the product of matrix arrays.
+     *
+     * @param _random the source of the matrices
+     */
+    private static void products(
+        final Random _random) {
+      final int count = BatchMathBenchmark.MATRICES;
+      final float[] left = new float[count * BatchMath.MATRIX_SIZE];
+      final float[] right = new float[count * BatchMath.MATRIX_SIZE];
+      final float[] dest = new float[count * BatchMath.MATRIX_SIZE];
+      final Matrix4f first = new Matrix4f();
+      final Matrix4f second = new Matrix4f();
+      for (int matrix = 0; matrix < count; matrix++) {
+        first.setPerspective(1F + _random.nextFloat(), 1.3F, 0.1F, 100F)
+          .rotateY(_random.nextFloat()).translate(_random.nextFloat(), 1F, 2F)
+          .get(left, matrix * BatchMath.MATRIX_SIZE);
+        second.translation(_random.nextFloat(), _random.nextFloat(), 3F)
+          .rotateXYZ(_random.nextFloat(), _random.nextFloat(),
+            _random.nextFloat()).scale(2F)
+          .get(right, matrix * BatchMath.MATRIX_SIZE);
+      }
+      BatchMath.multiply(left, right, dest, 0, count);
+      final float[] expected = new float[BatchMath.MATRIX_SIZE];
+      BatchMathBenchmark.misses = 0;
+      for (int matrix = 0; matrix < count; matrix++) {
+        final int offset = matrix * BatchMath.MATRIX_SIZE;
+        first.set(left, offset).mul(second.set(right, offset)).get(expected);
+        for (int cell = 0; cell < BatchMath.MATRIX_SIZE; cell++) {
+          BatchMathBenchmark.compare(dest[offset + cell], expected[cell]);
+        }
+      }
+      BatchMathBenchmark.report("multiply",
+        () -> BatchMath.multiply(left, right, dest, 0, count),
+        () -> BatchMath.matricesScalar(left, BatchMath.MATRIX_SIZE, right,
+          dest, 0, count),
+        () -> {
+          for (int matrix = 0; matrix < count; matrix++) {
+            final int offset = matrix * BatchMath.MATRIX_SIZE;
+            first.set(left, offset).mul(second.set(right, offset))
+              .get(dest, offset);
+          }
+        });
+    }
+
+    /**
+     * Checks and times the box transform picking a matrix per box.
+     *
+     * @param _random the source of the boxes and matrices
+     */
+    private static void indexedBounds(
+        final Random _random) {
+      final int count = BatchMathBenchmark.BOXES;
+      final float[] matrices =
+        new float[BatchMathBenchmark.BLOCK * BatchMath.MATRIX_SIZE];
+      final Matrix4f[] objects = new Matrix4f[BatchMathBenchmark.BLOCK];
+      for (int matrix = 0; matrix < BatchMathBenchmark.BLOCK; matrix++) {
+        objects[matrix] = new Matrix4f()
+          .translate(_random.nextFloat() * 10F, _random.nextFloat(),
+            -_random.nextFloat())
+          .rotateXYZ(_random.nextFloat(), _random.nextFloat(),
+            _random.nextFloat())
+          .scale(_random.nextFloat() + 0.5F);
+        objects[matrix].get(matrices, matrix * BatchMath.MATRIX_SIZE);
+      }
+      final int[] indices = new int[count];
+      final BoundingBoxes boxes = new BoundingBoxes(count);
+      for (int index = 0; index < count; index++) {
+        indices[index] = _random.nextInt(BatchMathBenchmark.BLOCK);
+        final float x = _random.nextFloat();
+        final float y = _random.nextFloat();
+        final float z = _random.nextFloat();
+        boxes.add(x, y, z, x + _random.nextFloat(), y + 1F, z + 2F);
+      }
+      final BoundingBoxes out = new BoundingBoxes(count);
+      out.size(count);
+      final Vector3f min = new Vector3f();
+      final Vector3f max = new Vector3f();
+      BatchMath.transformBounds(matrices, indices, boxes, out, 0, count);
+      BatchMathBenchmark.misses = 0;
+      for (int index = 0; index < count; index++) {
+        objects[indices[index]].transformAab(boxes.minX()[index],
+          boxes.minY()[index], boxes.minZ()[index], boxes.maxX()[index],
+          boxes.maxY()[index], boxes.maxZ()[index], min, max);
+        BatchMathBenchmark.compare(out, index, min, max);
+      }
+      BatchMathBenchmark.report("indexed boxes",
+        () -> BatchMath.transformBounds(matrices, indices, boxes, out, 0,
+          count),
+        () -> BatchMath.boxesScalar(matrices, indices, boxes, out, 0, count),
+        () -> {
+          for (int index = 0; index < count; index++) {
+            objects[indices[index]].transformAab(boxes.minX()[index],
+              boxes.minY()[index], boxes.minZ()[index], boxes.maxX()[index],
+              boxes.maxY()[index], boxes.maxZ()[index], min, max);
+            BatchMathBenchmark.store(out, index, min, max);
+          }
+        });
+    }
+
+    /**
+     * Fails on the misses of the last check, then prints the timings of
+     * an operation.
+     *
+     * @param _operation the operation name
+     * @param _batch the public method
+     * @param _scalar the scalar fallback
+     * @param _joml the per-object JOML loop
+     * @throws IllegalStateException if results differed from JOML
+     */
+    private static void report(
+        final String _operation,
+        final Runnable _batch,
+        final Runnable _scalar,
+        final Runnable _joml) {
+      if (BatchMathBenchmark.misses != 0) {
+        throw new IllegalStateException(_operation + " differs from JOML in "
+          + BatchMathBenchmark.misses + " results");
+      }
+      final double batch = BatchMathBenchmark.median(_batch);
+      final double scalar = BatchMathBenchmark.median(_scalar);
+      final double joml = BatchMathBenchmark.median(_joml);
+      System.out.printf("%-13s %9.3f  %9.3f  %9.3f  %.1fx%n", _operation,
+        batch, scalar, joml, joml / batch);
+    }
+
+    /**
+     * Times an operation.
+     *
+     * @param _operation the operation
+     * @return the median duration in milliseconds
+     */
+    private static double median(
+        final Runnable _operation) {
+      final long[] nanos = new long[BatchMathBenchmark.RUNS];
+      for (int run = 0; run < BatchMathBenchmark.RUNS; run++) {
+        final long start = System.nanoTime();
+        _operation.run();
+        nanos[run] = System.nanoTime() - start;
+      }
+      Arrays.sort(nanos);
+      return nanos[BatchMathBenchmark.RUNS / 2] / 1.0E6;
+    }
+
+    /**
+     * Stores a JOML box.
+     *
+     * @param _boxes the boxes
+     * @param _index the box index
+     * @param _min the minimum corner
+     * @param _max the maximum corner
+     */
+    private static void store(
+        final BoundingBoxes _boxes,
+        final int _index,
+        final Vector3f _min,
+        final Vector3f _max) {
+      _boxes.minX()[_index] = _min.x;
+      _boxes.minY()[_index] = _min.y;
+      _boxes.minZ()[_index] = _min.z;
+      _boxes.maxX()[_index] = _max.x;
+      _boxes.maxY()[_index] = _max.y;
+      _boxes.maxZ()[_index] = _max.z;
+    }
+
+    /**
+     * Compares a batch result with JOML.
+     *
+     * @param _actual the batch result
+     * @param _expected the JOML result
+     */
+    private static void compare(
+        final float _actual,
+        final float _expected) {
+      if (_actual != _expected) {
+        BatchMathBenchmark.misses++;
+      }
+    }
+
+    /**
+     * Compares a batch vector with JOML.
+     *
+     * @param _actual the batch vectors
+     * @param _index the vector index
+     * @param _expected the JOML vector
+     */
+    private static void compare(
+        final Vector3Array _actual,
+        final int _index,
+        final Vector3f _expected) {
+      BatchMathBenchmark.compare(_actual.x()[_index], _expected.x);
+      BatchMathBenchmark.compare(_actual.y()[_index], _expected.y);
+      BatchMathBenchmark.compare(_actual.z()[_index], _expected.z);
+    }
+
+    /**
+     * Compares a batch box with JOML.
+     *
+     * @param _actual the batch boxes
+     * @param _index the box index
+     * @param _min the JOML minimum corner
+     * @param _max the JOML maximum corner
+     */
+    private static void compare(
+        final BoundingBoxes _actual,
+        final int _index,
+        final Vector3f _min,
+        final Vector3f _max) {
+      BatchMathBenchmark.compare(_actual.minX()[_index], _min.x);
+      BatchMathBenchmark.compare(_actual.minY()[_index], _min.y);
+      BatchMathBenchmark.compare(_actual.minZ()[_index], _min.z);
+      BatchMathBenchmark.compare(_actual.maxX()[_index], _max.x);
+      BatchMathBenchmark.compare(_actual.maxY()[_index], _max.y);
+      BatchMathBenchmark.compare(_actual.maxZ()[_index], _max.z);
+    }
+
+  }
@@ -0,0 +1,246 @@
+package es.noa.rad.game.engine.memory;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.configuration.settings.GameSettings;
+import es.noa.rad.game.engine.job.JobSystem;
+import es.noa.rad.game.engine.job.TaskGraph;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+  /**
+   * Checks the {@link MathStack} in the mode set by
+   * {@code game.debug.mode}.
+   *
+   * <p>In release mode, the default, a simulated update of a thousand
+   * transforms must allocate nothing once warmed up, and a frame leaked on
+   * a {@link TaskGraph} worker must be reset silently so later tasks on
+   * that worker start from an empty stack.
+   *
+   * <p>In debug mode, run with an {@code application.properties} enabling
+   * it ahead on the classpath, a temporary of a popped frame must read
+   * NaN even after a later frame, and a frame leaked on a worker must fail
+   * the graph with its push site.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class MathStackCheck {
+
+    /**
+     * Transforms of the simulated update.
+     */
+    private static final int TRANSFORMS = 1_000;
+
+    /**
+     * Updates run to warm up the compiler.
+     */
+    private static final int WARM_UPDATES = 20_000;
+
+    /**
+     * Updates measured.
+     */
+    private static final int UPDATES = 600;
+
+    /**
+     * Graphs leaking a frame on a worker.
+     */
+    private static final int LEAKING_GRAPHS = 100;
+
+    /**
+     * Time step of the simulated update.
+     */
+    private static final float DELTA = 1F / 60F;
+
+    /**
+     * Positions of the transforms.
+     */
+    private static final Vector3f[] POSITIONS =
+      new Vector3f[MathStackCheck.TRANSFORMS];
+
+    /**
+     * Rotations of the transforms.
+     */
+    private static final Quaternionf[] ROTATIONS =
+      new Quaternionf[MathStackCheck.TRANSFORMS];
+
+    /**
+     * View matrix of the simulated camera.
+     */
+    private static final Matrix4f VIEW =
+      new Matrix4f().lookAt(0F, 5F, 10F, 0F, 0F, 0F, 0F, 1F, 0F);
+
+    /**
+     * Sum of the results, so the update is not optimized away.
+     */
+    private static float sink;
+
+    /**
+     * Not instantiable.
+     */
+    private MathStackCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      for (int transform = 0; transform < MathStackCheck.TRANSFORMS;
+          transform++) {
+        MathStackCheck.POSITIONS[transform] =
+          new Vector3f(transform, 0F, -transform);
+        MathStackCheck.ROTATIONS[transform] =
+          new Quaternionf().rotateX(transform);
+      }
+      if (GameSettings.GAME_DEBUG_MODE.<Boolean>get()) {
+        MathStackCheck.checkEscape();
+        MathStackCheck.checkWorkerLeak(true);
+      } else {
+        MathStackCheck.checkAllocation();
+        MathStackCheck.checkWorkerLeak(false);
+      }
+      System.out.println("MathStackCheck passed");
+    }
+
+    /**
+     * Checks that the update allocates nothing once warmed up.
+     */
+    private static void checkAllocation() {
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      for (int update = 0; update < MathStackCheck.WARM_UPDATES; update++) {
+        MathStackCheck.update(MathStackCheck.DELTA);
+        MathStack.checkFrames();
+      }
+      final long before = threads.getThreadAllocatedBytes(thread);
+      final long start = System.nanoTime();
+      for (int update = 0; update < MathStackCheck.UPDATES; update++) {
+        MathStackCheck.update(MathStackCheck.DELTA);
+        MathStack.checkFrames();
+      }
+      final long nanos = System.nanoTime() - start;
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      System.out.printf("%d updates of %d transforms: %d bytes allocated,"
+        + " %.3f ms per update%n", MathStackCheck.UPDATES,
+        MathStackCheck.TRANSFORMS, allocated,
+        nanos / 1.0E6 / MathStackCheck.UPDATES);
+      MathStackCheck.check(allocated == 0L,
+        "Update allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Checks that a temporary of a popped frame keeps reading NaN.
+     */
+    private static void checkEscape() {
+      final Vector3f escaped;
+      try (MathStack stack = MathStack.stackPush()) {
+        escaped = stack.vector3f().set(1F, 2F, 3F);
+      }
+      try (MathStack stack = MathStack.stackPush()) {
+        final Vector3f fresh = stack.vector3f().set(4F, 5F, 6F);
+        MathStackCheck.check(fresh != escaped,
+          "Escaped temporary handed out again");
+      }
+      MathStackCheck.check(Float.isNaN(escaped.x),
+        "Escaped temporary reads " + escaped);
+    }
+
+    /**
+     * Leaks a frame on the workers of a graph.
+     *
+     * @param _debug whether the leak must fail the graph
+     */
+    private static void checkWorkerLeak(
+        final boolean _debug) {
+      final JobSystem jobSystem = new JobSystem(2);
+      try {
+        final TaskGraph graph = new TaskGraph(jobSystem, 4);
+        for (int run = 0; run < MathStackCheck.LEAKING_GRAPHS; run++) {
+          graph.clear();
+          graph.add(() -> {
+            try (MathStack stack = MathStack.stackPush()) {
+              stack.matrix4f();
+            }
+          });
+          graph.add(() -> MathStack.stackPush().vector3f());
+          Throwable pushSite = null;
+          try {
+            graph.run();
+          } catch (final IllegalStateException illegalStateException) {
+            MathStackCheck.check(_debug,
+              "Worker leak failed the graph in release mode");
+            pushSite = illegalStateException.getCause();
+          }
+          MathStackCheck.check(!_debug || (pushSite != null),
+            "Worker leak not reported with its push site");
+        }
+
+        final AtomicInteger deepest = new AtomicInteger();
+        graph.clear();
+        for (int task = 0; task < 4; task++) {
+          graph.add(() -> deepest.accumulateAndGet(
+            MathStack.get().depth(), Math::max));
+        }
+        graph.run();
+        MathStackCheck.check(deepest.get() == 0,
+          "Worker stack left at depth " + deepest.get());
+        System.out.printf("%d worker leaks %s%n",
+          MathStackCheck.LEAKING_GRAPHS, _debug ? "reported" : "reset");
+      } finally {
+        jobSystem.close();
+      }
+    }
+
+    /**
+     * Simulates an update composing the transforms.
+     *
+     * @param _delta the time step
+     */
+    private static void update(
+        final float _delta) {
+      for (int transform = 0; transform < MathStackCheck.TRANSFORMS;
+          transform++) {
+        try (MathStack stack = MathStack.stackPush()) {
+          final Quaternionf spin =
+            stack.quaternionf().rotateY(_delta * transform);
+          final Matrix4f model = stack.matrix4f().translationRotateScale(
+            MathStackCheck.POSITIONS[transform],
+            MathStackCheck.ROTATIONS[transform].mul(spin,
+              stack.quaternionf()), 1F);
+          final Matrix4f modelView =
+            MathStackCheck.VIEW.mul(model, stack.matrix4f());
+          final Vector3f position = modelView.transformPosition(
+            stack.vector3f().set(1F, 2F, 3F));
+          final Vector4f color = modelView.transform(
+            stack.vector4f().set(1F, 0F, 0F, 1F));
+          final Matrix3f normal = modelView.normal(stack.matrix3f());
+          MathStackCheck.sink += position.x + color.w + normal.m00();
+        }
+      }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
@@ -0,0 +1,422 @@
+package es.noa.rad.game.engine.physics;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.util.IntList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+  /**
+   * Measures the {@link PhysicsWorld} stepping thousands of stacked boxes
+   * at 60 updates per second.
+   *
+   * <p>First the {@link SweepAndPrune} broadphase churns thousands of
+   * moving boxes, some of them removed and inserted again, and every few
+   * updates its pairs must equal those of a brute force test of every
+   * pair of bounds.
+   *
+   * <p>Then a grid of box stacks resting on a static ground is stepped
+   * for a few seconds. Every stack must stay standing, every stack must be
+   * its own island, and the median step is reported in dynamic bodies
+   * simulated per millisecond. The same scene stepped again with the
+   * islands solved in parallel on several workers must end in exactly the
+   * same state, bit for bit.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class PhysicsWorldBenchmark {
+
+    /**
+     * Fixed time step in seconds.
+     */
+    private static final float DELTA_TIME = 1F / 60F;
+
+    /**
+     * Boxes churned through the broadphase.
+     */
+    private static final int PROXIES = 4000;
+
+    /**
+     * Half extent of the region holding the broadphase boxes.
+     */
+    private static final float REGION = 100F;
+
+    /**
+     * Broadphase updates run.
+     */
+    private static final int UPDATES = 200;
+
+    /**
+     * Updates between two brute force comparisons.
+     */
+    private static final int COMPARE_EVERY = 10;
+
+    /**
+     * Proxies removed and inserted again every few updates.
+     */
+    private static final int CHURN = 50;
+
+    /**
+     * Stacks per side of the grid.
+     */
+    private static final int GRID = 20;
+
+    /**
+     * Boxes per stack.
+     */
+    private static final int HEIGHT = 10;
+
+    /**
+     * Distance between the centres of two neighbouring stacks.
+     */
+    private static final float SPACING = 2F;
+
+    /**
+     * Steps simulated: five seconds.
+     */
+    private static final int STEPS = 300;
+
+    /**
+     * Steps run before timing, while the stacks settle and the compiler
+     * warms up.
+     */
+    private static final int WARM_STEPS = 60;
+
+    /**
+     * Largest drift accepted of a stacked box from where it started: a
+     * quarter of its size, so every box still rests on the one below.
+     */
+    private static final float MAX_DRIFT = 0.25F;
+
+    /**
+     * Workers of the pool solving the islands of the parallel run.
+     */
+    private static final int WORKERS = 4;
+
+    /**
+     * Not instantiable.
+     */
+    private PhysicsWorldBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      PhysicsWorldBenchmark.broadphase(new Random(45));
+
+      final int[] serialBoxes = new int[PhysicsWorldBenchmark.GRID
+        * PhysicsWorldBenchmark.GRID * PhysicsWorldBenchmark.HEIGHT];
+      final PhysicsWorld serial = PhysicsWorldBenchmark.stacks(serialBoxes);
+      final ForkJoinPool common = ForkJoinPool.commonPool();
+      final long[] nanos = new long[PhysicsWorldBenchmark.STEPS
+        - PhysicsWorldBenchmark.WARM_STEPS];
+      for (int step = 0; step < PhysicsWorldBenchmark.STEPS; step++) {
+        serial.step(PhysicsWorldBenchmark.DELTA_TIME, common);
+        if (step >= PhysicsWorldBenchmark.WARM_STEPS) {
+          nanos[step - PhysicsWorldBenchmark.WARM_STEPS] = serial.stepNanos();
+        }
+      }
+      PhysicsWorldBenchmark.checkStanding(serial, serialBoxes);
+      final int stacks =
+        PhysicsWorldBenchmark.GRID * PhysicsWorldBenchmark.GRID;
+      PhysicsWorldBenchmark.check(serial.islandCount() == stacks,
+        serial.islandCount() + " islands instead of " + stacks);
+      Arrays.sort(nanos);
+      final double millis = nanos[nanos.length / 2] / 1.0E6;
+      System.out.printf("%d stacks of %d boxes, %d pairs, %d contacts,"
+        + " %d islands: %.2f ms per step on the common pool of %d, %.0f"
+        + " bodies/ms, %.1f%% of a 60 UPS update%n", stacks,
+        PhysicsWorldBenchmark.HEIGHT, serial.pairCount(),
+        serial.contactCount(), serial.islandCount(), millis,
+        common.getParallelism(), serialBoxes.length / millis,
+        (millis * 100.0) / (PhysicsWorldBenchmark.DELTA_TIME * 1000.0));
+
+      final int[] parallelBoxes = new int[serialBoxes.length];
+      final PhysicsWorld parallel =
+        PhysicsWorldBenchmark.stacks(parallelBoxes);
+      final ForkJoinPool pool =
+        new ForkJoinPool(PhysicsWorldBenchmark.WORKERS);
+      try {
+        for (int step = 0; step < PhysicsWorldBenchmark.STEPS; step++) {
+          parallel.step(PhysicsWorldBenchmark.DELTA_TIME, pool);
+        }
+      } finally {
+        pool.shutdown();
+      }
+      PhysicsWorldBenchmark.checkIdentical(serial, serialBoxes, parallel,
+        parallelBoxes);
+      System.out.printf("%d workers: the same state after %d steps%n",
+        PhysicsWorldBenchmark.WORKERS, PhysicsWorldBenchmark.STEPS);
+      System.out.println("PhysicsWorldBenchmark passed");
+    }
+
+    /**
+     * Churns moving boxes through the broadphase and compares its pairs
+     * with a brute force test.
+     *
+     * @param _random the random source
+     */
+    private static void broadphase(
+        final Random _random) {
+      final int count = PhysicsWorldBenchmark.PROXIES;
+      final float[][] bounds = new float[6][count];
+      final float[] velocities = new float[count * 3];
+      final SweepAndPrune sweep = new SweepAndPrune(count);
+      for (int proxy = 0; proxy < count; proxy++) {
+        PhysicsWorldBenchmark.place(bounds, proxy, _random);
+        for (int axis = 0; axis < 3; axis++) {
+          velocities[(proxy * 3) + axis] = (_random.nextFloat() - 0.5F) * 0.4F;
+        }
+        sweep.insert(proxy);
+      }
+      final IntList pairs = new IntList(count * 8);
+      final long[] sweepNanos = new long[PhysicsWorldBenchmark.UPDATES];
+      final long[] bruteNanos =
+        new long[PhysicsWorldBenchmark.UPDATES
+          / PhysicsWorldBenchmark.COMPARE_EVERY];
+      long moves = 0L;
+      long pairCount = 0L;
+      for (int update = 0; update < PhysicsWorldBenchmark.UPDATES; update++) {
+        for (int proxy = 0; proxy < count; proxy++) {
+          for (int axis = 0; axis < 3; axis++) {
+            final float velocity = velocities[(proxy * 3) + axis];
+            bounds[axis][proxy] += velocity;
+            bounds[axis + 3][proxy] += velocity;
+            if (Math.abs(bounds[axis][proxy])
+                > PhysicsWorldBenchmark.REGION) {
+              velocities[(proxy * 3) + axis] = -velocity;
+            }
+          }
+        }
+        if ((update % PhysicsWorldBenchmark.COMPARE_EVERY) == 5) {
+          for (int churn = 0; churn < PhysicsWorldBenchmark.CHURN; churn++) {
+            final int proxy = _random.nextInt(count);
+            sweep.remove(proxy);
+            PhysicsWorldBenchmark.place(bounds, proxy, _random);
+            sweep.insert(proxy);
+          }
+        }
+        final long start = System.nanoTime();
+        sweep.update(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4],
+          bounds[5], pairs);
+        sweepNanos[update] = System.nanoTime() - start;
+        moves += sweep.moves();
+        pairCount += pairs.size() / 2;
+        if ((update % PhysicsWorldBenchmark.COMPARE_EVERY) == 0) {
+          final long bruteStart = System.nanoTime();
+          final long[] expected = PhysicsWorldBenchmark.brute(bounds);
+          bruteNanos[update / PhysicsWorldBenchmark.COMPARE_EVERY] =
+            System.nanoTime() - bruteStart;
+          final long[] found = new long[pairs.size() / 2];
+          for (int pair = 0; pair < found.length; pair++) {
+            found[pair] = (((long) pairs.get(pair * 2)) << Integer.SIZE)
+              | pairs.get((pair * 2) + 1);
+          }
+          Arrays.sort(found);
+          PhysicsWorldBenchmark.check(Arrays.equals(found, expected),
+            "Update " + update + ": " + found.length + " pairs instead of "
+              + expected.length);
+        }
+      }
+      Arrays.sort(sweepNanos);
+      Arrays.sort(bruteNanos);
+      System.out.printf("broadphase, %d boxes, %d pairs and %d sort moves"
+        + " per update: sweep and prune %.3f ms, brute force %.2f ms%n",
+        count, pairCount / PhysicsWorldBenchmark.UPDATES,
+        moves / PhysicsWorldBenchmark.UPDATES,
+        sweepNanos[sweepNanos.length / 2] / 1.0E6,
+        bruteNanos[bruteNanos.length / 2] / 1.0E6);
+    }
+
+    /**
+     * Gives a broadphase box random bounds.
+     *
+     * @param _bounds the minimum x, y, z and maximum x, y, z arrays
+     * @param _proxy the proxy
+     * @param _random the random source
+     */
+    private static void place(
+        final float[][] _bounds,
+        final int _proxy,
+        final Random _random) {
+      for (int axis = 0; axis < 3; axis++) {
+        final float centre = (_random.nextFloat() * 2F - 1F)
+          * PhysicsWorldBenchmark.REGION;
+        final float half = 0.5F + (_random.nextFloat() * 2F);
+        _bounds[axis][_proxy] = centre - half;
+        _bounds[axis + 3][_proxy] = centre + half;
+      }
+    }
+
+    /**
+     * Tests every pair of bounds.
+     *
+     * @param _bounds the minimum x, y, z and maximum x, y, z arrays
+     * @return the overlapping pairs, smaller proxy in the high half, sorted
+     */
+    private static long[] brute(
+        final float[][] _bounds) {
+      final int count = _bounds[0].length;
+      long[] pairs = new long[count];
+      int size = 0;
+      for (int first = 0; first < count; first++) {
+        for (int second = first + 1; second < count; second++) {
+          boolean overlap = true;
+          for (int axis = 0; (axis < 3) && overlap; axis++) {
+            overlap = (_bounds[axis][second] <= _bounds[axis + 3][first])
+              && (_bounds[axis][first] <= _bounds[axis + 3][second]);
+          }
+          if (overlap) {
+            if (size == pairs.length) {
+              pairs = Arrays.copyOf(pairs, size * 2);
+            }
+            pairs[size++] = (((long) first) << Integer.SIZE) | second;
+          }
+        }
+      }
+      return Arrays.copyOf(pairs, size);
+    }
+
+    /**
+     * Builds a world with a grid of box stacks resting on a static
+     * ground.
+     *
+     * @param _boxes receives the handle of every stacked box
+     * @return the world
+     */
+    private static PhysicsWorld stacks(
+        final int[] _boxes) {
+      final PhysicsWorld world = new PhysicsWorld(_boxes.length + 1);
+      final float extent = PhysicsWorldBenchmark.GRID
+        * PhysicsWorldBenchmark.SPACING;
+      final int ground = world.createBox(extent, 0.5F, extent, 0F);
+      world.position(ground, 0F, -0.5F, 0F);
+      final float origin = -0.5F * (PhysicsWorldBenchmark.GRID - 1)
+        * PhysicsWorldBenchmark.SPACING;
+      int box = 0;
+      for (int x = 0; x < PhysicsWorldBenchmark.GRID; x++) {
+        for (int z = 0; z < PhysicsWorldBenchmark.GRID; z++) {
+          for (int level = 0; level < PhysicsWorldBenchmark.HEIGHT;
+              level++) {
+            _boxes[box] = world.createBox(0.5F, 0.5F, 0.5F, 1F);
+            world.position(_boxes[box],
+              origin + (x * PhysicsWorldBenchmark.SPACING), 0.5F + level,
+              origin + (z * PhysicsWorldBenchmark.SPACING));
+            box++;
+          }
+        }
+      }
+      return world;
+    }
+
+    /**
+     * Checks that every stacked box is still where it started.
+     *
+     * @param _world the world
+     * @param _boxes the handle of every stacked box
+     */
+    private static void checkStanding(
+        final PhysicsWorld _world,
+        final int[] _boxes) {
+      final float origin = -0.5F * (PhysicsWorldBenchmark.GRID - 1)
+        * PhysicsWorldBenchmark.SPACING;
+      final Vector3f position = new Vector3f();
+      final Vector3f start = new Vector3f();
+      float drift = 0F;
+      for (int box = 0; box < _boxes.length; box++) {
+        final int stack = box / PhysicsWorldBenchmark.HEIGHT;
+        start.set(origin + ((stack / PhysicsWorldBenchmark.GRID)
+            * PhysicsWorldBenchmark.SPACING),
+          0.5F + (box % PhysicsWorldBenchmark.HEIGHT),
+          origin + ((stack % PhysicsWorldBenchmark.GRID)
+            * PhysicsWorldBenchmark.SPACING));
+        _world.position(_boxes[box], position);
+        drift = Math.max(drift, position.distance(start));
+        PhysicsWorldBenchmark.check(
+          position.distance(start) <= PhysicsWorldBenchmark.MAX_DRIFT,
+          "Box " + box + " moved from " + start + " to " + position);
+      }
+      System.out.printf("after %d steps every stack stands, largest drift"
+        + " %.4f%n", PhysicsWorldBenchmark.STEPS, drift);
+    }
+
+    /**
+     * Checks that two worlds hold exactly the same state.
+     *
+     * @param _first the first world
+     * @param _firstBoxes the handle of every box of the first world
+     * @param _second the second world
+     * @param _secondBoxes the handle of every box of the second world
+     */
+    private static void checkIdentical(
+        final PhysicsWorld _first,
+        final int[] _firstBoxes,
+        final PhysicsWorld _second,
+        final int[] _secondBoxes) {
+      final Vector3f first = new Vector3f();
+      final Vector3f second = new Vector3f();
+      final Quaternionf firstRotation = new Quaternionf();
+      final Quaternionf secondRotation = new Quaternionf();
+      for (int box = 0; box < _firstBoxes.length; box++) {
+        _first.position(_firstBoxes[box], first);
+        _second.position(_secondBoxes[box], second);
+        _first.orientation(_firstBoxes[box], firstRotation);
+        _second.orientation(_secondBoxes[box], secondRotation);
+        final boolean same = PhysicsWorldBenchmark.same(first, second)
+          && (Float.floatToRawIntBits(firstRotation.x)
+            == Float.floatToRawIntBits(secondRotation.x))
+          && (Float.floatToRawIntBits(firstRotation.y)
+            == Float.floatToRawIntBits(secondRotation.y))
+          && (Float.floatToRawIntBits(firstRotation.z)
+            == Float.floatToRawIntBits(secondRotation.z))
+          && (Float.floatToRawIntBits(firstRotation.w)
+            == Float.floatToRawIntBits(secondRotation.w));
+        _first.velocity(_firstBoxes[box], first);
+        _second.velocity(_secondBoxes[box], second);
+        PhysicsWorldBenchmark.check(same
+          && PhysicsWorldBenchmark.same(first, second),
+          "Box " + box + " differs between the serial and parallel runs");
+      }
+    }
+
+    /**
+     * Compares two vectors bit for bit.
+     *
+     * @param _first the first vector
+     * @param _second the second vector
+     * @return {@code true} if every component has the same bits
+     */
+    private static boolean same(
+        final Vector3f _first,
+        final Vector3f _second) {
+      return (Float.floatToRawIntBits(_first.x)
+          == Float.floatToRawIntBits(_second.x))
+        && (Float.floatToRawIntBits(_first.y)
+          == Float.floatToRawIntBits(_second.y))
+        && (Float.floatToRawIntBits(_first.z)
+          == Float.floatToRawIntBits(_second.z));
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
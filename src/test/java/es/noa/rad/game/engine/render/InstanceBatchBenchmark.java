@@ -0,0 +1,313 @@
+package es.noa.rad.game.engine.render;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Measures the draw calls saved by the {@link InstanceBatch}.
+   *
+   * <p>A hundred thousand objects, each drawing one of a few hundred
+   * meshes with one of a few shaders and materials, are submitted to a
+   * {@link RecordingRenderBackend} twice per frame: once as one draw
+   * command per object pushed straight to the {@link RenderQueue}, and
+   * once through the batch. The batch must issue exactly one instanced
+   * draw per shader, material and mesh in use, and every object must
+   * appear once among the instances of the draw of its mesh and key, with
+   * its own transform. The draw commands, state changes and CPU time of
+   * both paths are reported, and the timed batch frames must allocate
+   * nothing.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class InstanceBatchBenchmark {
+
+    /**
+     * Objects drawn per frame.
+     */
+    private static final int OBJECTS = 100_000;
+
+    /**
+     * Distinct meshes.
+     */
+    private static final int MESHES = 256;
+
+    /**
+     * Distinct shaders.
+     */
+    private static final int SHADERS = 4;
+
+    /**
+     * Distinct materials.
+     */
+    private static final int MATERIALS = 8;
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 100;
+
+    /**
+     * Frames timed; the median is reported.
+     */
+    private static final int RUNS = 101;
+
+    /**
+     * Mesh of every object.
+     */
+    private static final int[] MESH = new int[InstanceBatchBenchmark.OBJECTS];
+
+    /**
+     * Sort key of every object.
+     */
+    private static final long[] KEY = new long[InstanceBatchBenchmark.OBJECTS];
+
+    /**
+     * Transform of every object.
+     */
+    private static final Matrix4f[] TRANSFORM =
+      new Matrix4f[InstanceBatchBenchmark.OBJECTS];
+
+    /**
+     * Not instantiable.
+     */
+    private InstanceBatchBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final MeshArena arena = new MeshArena(8 << 20);
+      final InstanceBatch batch =
+        new InstanceBatch(arena, InstanceBatchBenchmark.OBJECTS);
+      final RenderQueue queue =
+        new RenderQueue(InstanceBatchBenchmark.OBJECTS);
+      final RecordingRenderBackend backend = new RecordingRenderBackend();
+      try {
+        final int[] meshes = new int[InstanceBatchBenchmark.MESHES];
+        for (int mesh = 0; mesh < meshes.length; mesh++) {
+          meshes[mesh] = arena.create(VertexFormat.POSITION_NORMAL_TEXCOORD,
+            24 + mesh, 36 + (mesh * 3));
+        }
+        final Random random = new Random(34);
+        for (int object = 0; object < InstanceBatchBenchmark.OBJECTS;
+            object++) {
+          InstanceBatchBenchmark.MESH[object] =
+            meshes[random.nextInt(meshes.length)];
+          InstanceBatchBenchmark.KEY[object] = SortKey.encode(0, 0,
+            random.nextInt(InstanceBatchBenchmark.SHADERS),
+            random.nextInt(InstanceBatchBenchmark.MATERIALS),
+            random.nextInt(SortKey.MAX_DEPTH));
+          InstanceBatchBenchmark.TRANSFORM[object] = new Matrix4f()
+            .translation(object, random.nextFloat() * 100F,
+              random.nextFloat() * 100F)
+            .rotateY(random.nextFloat() * 6.28F);
+        }
+        final int naiveDraws =
+          InstanceBatchBenchmark.checkNaive(arena, queue, backend);
+        final int naiveChanges = backend.stateChanges();
+        final int groups =
+          InstanceBatchBenchmark.checkBatch(arena, batch, queue, backend);
+        final int batchChanges = backend.stateChanges();
+        final double naiveMs = InstanceBatchBenchmark.measure(arena, null,
+          queue, backend);
+        final double batchMs = InstanceBatchBenchmark.measure(arena, batch,
+          queue, backend);
+        System.out.printf("%d objects of %d meshes: %d draw commands and %d"
+          + " state changes one by one, %d instanced draw commands and %d"
+          + " state changes batched (%.0fx fewer draws)%n",
+          InstanceBatchBenchmark.OBJECTS, InstanceBatchBenchmark.MESHES,
+          naiveDraws, naiveChanges, groups, batchChanges,
+          ((double) naiveDraws) / groups);
+        System.out.printf("per frame: one by one %.3f ms, batched %.3f ms%n",
+          naiveMs, batchMs);
+      } finally {
+        backend.close();
+        queue.close();
+        batch.close();
+        arena.close();
+      }
+      System.out.println("InstanceBatchBenchmark passed");
+    }
+
+    /**
+     * Submits every object as its own draw command and checks the count.
+     *
+     * @param _arena the mesh arena
+     * @param _queue the queue
+     * @param _backend the recording backend
+     * @return the draw commands submitted
+     */
+    private static int checkNaive(
+        final MeshArena _arena,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      InstanceBatchBenchmark.frame(_arena, null, _queue, _backend);
+      InstanceBatchBenchmark.check(
+        _backend.commandCount() == InstanceBatchBenchmark.OBJECTS,
+        "Expected one draw per object, got " + _backend.commandCount());
+      return _backend.commandCount();
+    }
+
+    /**
+     * Submits the objects through the batch and checks the instanced
+     * draws.
+     *
+     * @param _arena the mesh arena
+     * @param _batch the batch
+     * @param _queue the queue
+     * @param _backend the recording backend
+     * @return the instanced draw commands submitted
+     */
+    private static int checkBatch(
+        final MeshArena _arena,
+        final InstanceBatch _batch,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      final long[] groups = new long[InstanceBatchBenchmark.OBJECTS];
+      for (int object = 0; object < InstanceBatchBenchmark.OBJECTS;
+          object++) {
+        groups[object] = (SortKey.shader(InstanceBatchBenchmark.KEY[object])
+          * ((long) SortKey.MAX_MATERIAL + 1L)
+          + SortKey.material(InstanceBatchBenchmark.KEY[object]))
+          * Integer.MAX_VALUE + InstanceBatchBenchmark.MESH[object];
+      }
+      final int expectedGroups =
+        (int) Arrays.stream(groups).distinct().count();
+
+      InstanceBatchBenchmark.frame(_arena, _batch, _queue, _backend);
+      InstanceBatchBenchmark.check(
+        _backend.commandCount() == expectedGroups,
+        "Expected " + expectedGroups + " instanced draws, got "
+          + _backend.commandCount());
+      final boolean[] drawn = new boolean[InstanceBatchBenchmark.OBJECTS];
+      final float[] matrix = new float[16];
+      for (int draw = 0; draw < _backend.commandCount(); draw++) {
+        for (int instance = 0; instance < _backend.instanceCount(draw);
+            instance++) {
+          final long address = _backend.instanceAddress(draw)
+            + (((long) instance) * _backend.instanceStride(draw));
+          final int object = MemoryUtil.memGetInt(address + 64L);
+          InstanceBatchBenchmark.check(!drawn[object]
+            && (SortKey.shader(_backend.sortKey(draw)) == SortKey.shader(
+              InstanceBatchBenchmark.KEY[object]))
+            && (SortKey.material(_backend.sortKey(draw)) == SortKey.material(
+              InstanceBatchBenchmark.KEY[object]))
+            && (_backend.vertexAddress(draw) == _arena.vertexAddress(
+              InstanceBatchBenchmark.MESH[object])),
+            "Object " + object + " in the wrong draw or drawn twice");
+          drawn[object] = true;
+          InstanceBatchBenchmark.TRANSFORM[object].get(matrix);
+          for (int element = 0; element < matrix.length; element++) {
+            InstanceBatchBenchmark.check(MemoryUtil.memGetFloat(
+              address + (((long) element) * Float.BYTES)) == matrix[element],
+              "Object " + object + " lost its transform");
+          }
+        }
+      }
+      for (int object = 0; object < InstanceBatchBenchmark.OBJECTS;
+          object++) {
+        InstanceBatchBenchmark.check(drawn[object],
+          "Object " + object + " not drawn");
+      }
+      return expectedGroups;
+    }
+
+    /**
+     * Times the frames of a path.
+     *
+     * @param _arena the mesh arena
+     * @param _batch the batch, or null to draw the objects one by one
+     * @param _queue the queue
+     * @param _backend the recording backend
+     * @return the median time of a frame in milliseconds
+     */
+    private static double measure(
+        final MeshArena _arena,
+        final InstanceBatch _batch,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      for (int frame = 0; frame < InstanceBatchBenchmark.WARM_FRAMES;
+          frame++) {
+        InstanceBatchBenchmark.frame(_arena, _batch, _queue, _backend);
+      }
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long[] nanos = new long[InstanceBatchBenchmark.RUNS];
+      threads.getThreadAllocatedBytes(thread);
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int run = 0; run < InstanceBatchBenchmark.RUNS; run++) {
+        final long start = System.nanoTime();
+        InstanceBatchBenchmark.frame(_arena, _batch, _queue, _backend);
+        nanos[run] = System.nanoTime() - start;
+      }
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      InstanceBatchBenchmark.check((_batch == null) || (allocated == 0L),
+        "Batched frames allocated " + allocated + " bytes");
+      Arrays.sort(nanos);
+      return nanos[nanos.length / 2] / 1.0E6;
+    }
+
+    /**
+     * Records, sorts and submits a frame of every object, tagging each
+     * instance with the object in its color.
+     *
+     * @param _arena the mesh arena
+     * @param _batch the batch, or null to draw the objects one by one
+     * @param _queue the queue
+     * @param _backend the recording backend
+     */
+    private static void frame(
+        final MeshArena _arena,
+        final InstanceBatch _batch,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      for (int object = 0; object < InstanceBatchBenchmark.OBJECTS;
+          object++) {
+        if (_batch == null) {
+          final DrawCommand command =
+            _queue.push(InstanceBatchBenchmark.KEY[object]);
+          _arena.draw(InstanceBatchBenchmark.MESH[object], command);
+          command.userData(
+            SortKey.material(InstanceBatchBenchmark.KEY[object]));
+        } else {
+          _batch.draw(InstanceBatchBenchmark.KEY[object],
+            InstanceBatchBenchmark.MESH[object],
+            InstanceBatchBenchmark.TRANSFORM[object], object);
+        }
+      }
+      if (_batch != null) {
+        _batch.flush(_queue);
+      }
+      _queue.submit(_backend);
+      if (_batch != null) {
+        _batch.clear();
+      }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
@@ -0,0 +1,296 @@
+package es.noa.rad.game.engine.render;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.memory.OffHeapArena;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Churns a hundred thousand mesh allocations of mixed sizes through a
+   * {@link MeshArena} and its {@link OffHeapArena}s.
+   *
+   * <p>Meshes from a few vertices to thousands, indexed or not, are
+   * created and destroyed at random around a working set, and the arena is
+   * defragmented every thousand allocations. Each mesh stamps its handle
+   * at the start, middle and end of its vertex and index data; after every
+   * defragmentation all live handles must still resolve to aligned data
+   * carrying their stamps, destroyed handles must be rejected and the
+   * fragmented bytes must not grow. Once every mesh is destroyed, the used
+   * and fragmented bytes must return to zero, a last defragmentation must
+   * release every block but the one each arena keeps, and closing must
+   * leave no native allocation behind, as tracked by the LWJGL debug
+   * allocator.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class MeshArenaCheck {
+
+    /**
+     * Mesh allocations of the churn.
+     */
+    private static final int ALLOCATIONS = 100_000;
+
+    /**
+     * Live meshes the churn keeps around.
+     */
+    private static final int WORKING_SET = 2_000;
+
+    /**
+     * Allocations between defragmentations.
+     */
+    private static final int DEFRAGMENT_PERIOD = 1_000;
+
+    /**
+     * Size in bytes of the arena blocks.
+     */
+    private static final int BLOCK_SIZE = 8 << 20;
+
+    /**
+     * Stale handles kept to check that they are rejected.
+     */
+    private static final int STALE_HANDLES = 256;
+
+    /**
+     * Not instantiable.
+     */
+    private MeshArenaCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      org.lwjgl.system.Configuration.DEBUG_MEMORY_ALLOCATOR.set(true);
+      Configuration.get().init();
+      /* The debug allocator keeps a few allocations of its own. */
+      MemoryUtil.nmemFree(MemoryUtil.nmemAlloc(1L));
+      final long baseline = MeshArenaCheck.nativeBytes();
+      final MeshArena arena = new MeshArena(MeshArenaCheck.BLOCK_SIZE);
+      try {
+        MeshArenaCheck.churn(arena);
+      } finally {
+        arena.close();
+      }
+      final long leaked = MeshArenaCheck.nativeBytes() - baseline;
+      System.out.printf("after close: %d native bytes leaked%n", leaked);
+      MeshArenaCheck.check(leaked == 0L,
+        "Native memory leaked: " + leaked + " bytes");
+      System.out.println("MeshArenaCheck passed");
+    }
+
+    /**
+     * Churns the mesh allocations.
+     *
+     * @param _arena the arena
+     */
+    private static void churn(
+        final MeshArena _arena) {
+      final Random random = new Random(28);
+      final int[] live = new int[MeshArenaCheck.WORKING_SET * 2];
+      final int[] stale = new int[MeshArenaCheck.STALE_HANDLES];
+      int liveCount = 0;
+      int staleCount = 0;
+      long moved = 0L;
+      long defragmentNanos = 0L;
+      long peakReserved = 0L;
+      long peakUsed = 0L;
+      final long start = System.nanoTime();
+      for (int allocation = 1; allocation <= MeshArenaCheck.ALLOCATIONS;
+          allocation++) {
+        final int vertices = (1 << (2 + random.nextInt(11)))
+          + random.nextInt(64);
+        final int indices = (random.nextInt(4) == 0) ? 0
+          : (vertices + random.nextInt(vertices * 2));
+        final VertexFormat format = random.nextBoolean()
+          ? VertexFormat.POSITION_NORMAL_TEXCOORD
+          : VertexFormat.POSITION_TEXCOORD_COLOR;
+        final int mesh = _arena.create(format, vertices, indices);
+        MeshArenaCheck.stamp(_arena, mesh);
+        live[liveCount++] = mesh;
+        while ((liveCount > MeshArenaCheck.WORKING_SET)
+            || ((liveCount > 0) && (random.nextInt(3) == 0))) {
+          final int victim = random.nextInt(liveCount);
+          _arena.destroy(live[victim]);
+          stale[staleCount++ % stale.length] = live[victim];
+          live[victim] = live[--liveCount];
+        }
+        peakReserved = Math.max(peakReserved,
+          _arena.vertexArena().bytesReserved()
+            + _arena.indexArena().bytesReserved());
+        peakUsed = Math.max(peakUsed, _arena.vertexArena().bytesUsed()
+          + _arena.indexArena().bytesUsed());
+
+        if ((allocation % MeshArenaCheck.DEFRAGMENT_PERIOD) == 0) {
+          final long fragmented = MeshArenaCheck.fragmented(_arena);
+          final long defragmentStart = System.nanoTime();
+          moved += _arena.defragment();
+          defragmentNanos += System.nanoTime() - defragmentStart;
+          MeshArenaCheck.check(
+            MeshArenaCheck.fragmented(_arena) <= fragmented,
+            "Defragmentation grew the fragmented bytes");
+          for (int index = 0; index < liveCount; index++) {
+            MeshArenaCheck.verify(_arena, live[index]);
+          }
+          for (int index = 0; index < Math.min(staleCount, stale.length);
+              index++) {
+            MeshArenaCheck.check(!_arena.isValid(stale[index]),
+              "Destroyed mesh " + stale[index] + " still valid");
+          }
+        }
+      }
+      final long nanos = System.nanoTime() - start;
+      System.out.printf("%d mesh allocations in %.1f ms, %d live, %d blocks;"
+        + " peak %.1f MB used of %.1f MB reserved; %d defragmentations moved"
+        + " %.1f MB in %.1f ms%n", MeshArenaCheck.ALLOCATIONS, nanos / 1.0E6,
+        liveCount, _arena.vertexArena().blockCount()
+          + _arena.indexArena().blockCount(), peakUsed / 1.0E6,
+        peakReserved / 1.0E6,
+        MeshArenaCheck.ALLOCATIONS / MeshArenaCheck.DEFRAGMENT_PERIOD,
+        moved / 1.0E6, defragmentNanos / 1.0E6);
+
+      for (int index = 0; index < liveCount; index++) {
+        _arena.destroy(live[index]);
+      }
+      MeshArenaCheck.check(_arena.meshCount() == 0,
+        "Meshes left: " + _arena.meshCount());
+      MeshArenaCheck.check((_arena.vertexArena().bytesUsed() == 0L)
+        && (_arena.indexArena().bytesUsed() == 0L),
+        "Bytes still used after destroying every mesh");
+      _arena.defragment();
+      MeshArenaCheck.check((MeshArenaCheck.fragmented(_arena) == 0L)
+        && (_arena.vertexArena().blockCount() <= 1)
+        && (_arena.indexArena().blockCount() <= 1),
+        "Blocks or fragmented bytes left in an empty arena");
+    }
+
+    /**
+     * Stamps the handle of a mesh at the start, middle and end of its data.
+     *
+     * @param _arena the arena
+     * @param _mesh the mesh
+     */
+    private static void stamp(
+        final MeshArena _arena,
+        final int _mesh) {
+      final long vertexBytes = ((long) _arena.vertexCount(_mesh))
+        * _arena.vertexFormat(_mesh).stride();
+      MeshArenaCheck.stamp(_arena.vertexAddress(_mesh), vertexBytes, _mesh);
+      final long indexBytes = ((long) _arena.indexCount(_mesh))
+        * MeshArena.INDEX_SIZE;
+      if (indexBytes > 0L) {
+        MeshArenaCheck.stamp(_arena.indexAddress(_mesh), indexBytes, ~_mesh);
+      }
+    }
+
+    /**
+     * Stamps a value at the start, middle and end of a range.
+     *
+     * @param _address the range address
+     * @param _bytes the range size
+     * @param _value the value
+     */
+    private static void stamp(
+        final long _address,
+        final long _bytes,
+        final int _value) {
+      MemoryUtil.memPutInt(_address, _value);
+      MemoryUtil.memPutInt(_address + ((_bytes / 2) & -Integer.BYTES),
+        _value);
+      MemoryUtil.memPutInt(_address + _bytes - Integer.BYTES, _value);
+    }
+
+    /**
+     * Checks that a live mesh resolves to aligned data carrying its
+     * stamps.
+     *
+     * @param _arena the arena
+     * @param _mesh the mesh
+     */
+    private static void verify(
+        final MeshArena _arena,
+        final int _mesh) {
+      MeshArenaCheck.check(_arena.isValid(_mesh),
+        "Live mesh " + _mesh + " invalid");
+      final long vertexBytes = ((long) _arena.vertexCount(_mesh))
+        * _arena.vertexFormat(_mesh).stride();
+      MeshArenaCheck.verify(_arena.vertexAddress(_mesh), vertexBytes, _mesh,
+        _mesh);
+      final long indexBytes = ((long) _arena.indexCount(_mesh))
+        * MeshArena.INDEX_SIZE;
+      if (indexBytes > 0L) {
+        MeshArenaCheck.verify(_arena.indexAddress(_mesh), indexBytes, ~_mesh,
+          _mesh);
+      } else {
+        MeshArenaCheck.check(_arena.indexAddress(_mesh) == MemoryUtil.NULL,
+          "Non-indexed mesh " + _mesh + " has indices");
+      }
+    }
+
+    /**
+     * Checks the stamps of a range.
+     *
+     * @param _address the range address
+     * @param _bytes the range size
+     * @param _value the stamped value
+     * @param _mesh the mesh, for the message
+     */
+    private static void verify(
+        final long _address,
+        final long _bytes,
+        final int _value,
+        final int _mesh) {
+      MeshArenaCheck.check(
+        (_address % OffHeapArena.DEFAULT_ALIGNMENT) == 0L,
+        "Mesh " + _mesh + " data misaligned");
+      MeshArenaCheck.check((MemoryUtil.memGetInt(_address) == _value)
+        && (MemoryUtil.memGetInt(_address + ((_bytes / 2) & -Integer.BYTES))
+          == _value)
+        && (MemoryUtil.memGetInt(_address + _bytes - Integer.BYTES)
+          == _value),
+        "Mesh " + _mesh + " data lost its stamps");
+    }
+
+    /**
+     * Gets the native bytes tracked by the LWJGL debug allocator.
+     *
+     * @return the allocated bytes
+     */
+    private static long nativeBytes() {
+      final AtomicLong bytes = new AtomicLong();
+      MemoryUtil.memReport((_address, _memory, _threadId, _threadName,
+          _stacktrace) -> bytes.addAndGet(_memory));
+      return bytes.get();
+    }
+
+    /**
+     * Gets the fragmented bytes of both arenas.
+     *
+     * @param _arena the mesh arena
+     * @return the fragmented bytes
+     */
+    private static long fragmented(
+        final MeshArena _arena) {
+      return _arena.vertexArena().bytesFragmented()
+        + _arena.indexArena().bytesFragmented();
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
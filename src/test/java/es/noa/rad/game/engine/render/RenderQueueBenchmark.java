@@ -0,0 +1,235 @@
+package es.noa.rad.game.engine.render;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+  /**
+   * Measures recording, sorting and submission of a hundred thousand
+   * commands per frame through the {@link RenderQueue}.
+   *
+   * <p>Each frame records commands with keys spread over a few layers and
+   * passes, many shaders and materials and random depths, as a scene
+   * would. The first frame is checked on a {@link RecordingRenderBackend}:
+   * the keys must arrive in ascending unsigned order, equal keys in
+   * recording order, and each payload must follow its key. The frames are
+   * then timed as the median of many runs, next to {@link Arrays#sort} of
+   * the same keys, and the measured frames must allocate nothing.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class RenderQueueBenchmark {
+
+    /**
+     * Commands per frame.
+     */
+    private static final int COMMANDS = 100_000;
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 200;
+
+    /**
+     * Frames timed per measurement; the median is reported.
+     */
+    private static final int RUNS = 101;
+
+    /**
+     * Sort keys of the frame, in recording order.
+     */
+    private static final long[] KEYS = new long[RenderQueueBenchmark.COMMANDS];
+
+    /**
+     * Not instantiable.
+     */
+    private RenderQueueBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final Random random = new Random(26);
+      for (int command = 0; command < RenderQueueBenchmark.COMMANDS;
+          command++) {
+        RenderQueueBenchmark.KEYS[command] = SortKey.encode(
+          random.nextInt(4), random.nextInt(2), random.nextInt(64),
+          random.nextInt(1_024), SortKey.quantizeDepth(random.nextFloat()));
+      }
+      final RenderQueue queue = new RenderQueue(1_024);
+      final RecordingRenderBackend backend = new RecordingRenderBackend();
+      try {
+        RenderQueueBenchmark.checkOrder(queue, backend);
+        RenderQueueBenchmark.measure(queue, backend);
+      } finally {
+        backend.close();
+        queue.close();
+      }
+      System.out.println("RenderQueueBenchmark passed");
+    }
+
+    /**
+     * Checks the order and payloads of a submitted frame.
+     *
+     * @param _queue the queue
+     * @param _backend the recording backend
+     */
+    private static void checkOrder(
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      RenderQueueBenchmark.record(_queue);
+      _queue.submit(_backend);
+      RenderQueueBenchmark.check(
+        _backend.commandCount() == RenderQueueBenchmark.COMMANDS,
+        "Submitted " + _backend.commandCount() + " commands");
+      for (int index = 0; index < _backend.commandCount(); index++) {
+        final int command = _backend.userData(index);
+        RenderQueueBenchmark.check(
+          _backend.sortKey(index) == RenderQueueBenchmark.KEYS[command],
+          "Payload " + command + " does not follow its key");
+        RenderQueueBenchmark.check(_backend.vertexCount(index) == command,
+          "Payload " + command + " was overwritten");
+        if (index > 0) {
+          final int order = Long.compareUnsigned(_backend.sortKey(index - 1),
+            _backend.sortKey(index));
+          RenderQueueBenchmark.check((order < 0)
+            || ((order == 0) && (_backend.userData(index - 1) < command)),
+            "Command " + index + " out of order");
+        }
+      }
+      RenderQueueBenchmark.check(_queue.size() == 0,
+        "Queue not cleared after submission");
+      System.out.printf("%d commands in order, %d state changes%n",
+        _backend.commandCount(), _backend.stateChanges());
+    }
+
+    /**
+     * Times the frames and checks that they allocate nothing.
+     *
+     * @param _queue the queue
+     * @param _backend the recording backend
+     */
+    private static void measure(
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      final long[] copy = new long[RenderQueueBenchmark.COMMANDS];
+      final long[] record = new long[RenderQueueBenchmark.RUNS];
+      final long[] sort = new long[RenderQueueBenchmark.RUNS];
+      final long[] submit = new long[RenderQueueBenchmark.RUNS];
+      final long[] baseline = new long[RenderQueueBenchmark.RUNS];
+      for (int frame = 0; frame < RenderQueueBenchmark.WARM_FRAMES;
+          frame++) {
+        RenderQueueBenchmark.frame(_queue, _backend, record, sort, submit, 0);
+      }
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int run = 0; run < RenderQueueBenchmark.RUNS; run++) {
+        RenderQueueBenchmark.frame(_queue, _backend, record, sort, submit,
+          run);
+      }
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      for (int run = 0; run < RenderQueueBenchmark.RUNS; run++) {
+        System.arraycopy(RenderQueueBenchmark.KEYS, 0, copy, 0,
+          RenderQueueBenchmark.COMMANDS);
+        final long start = System.nanoTime();
+        Arrays.sort(copy);
+        baseline[run] = System.nanoTime() - start;
+      }
+      System.out.printf("%d commands per frame: record %.3f ms, radix sort"
+        + " %.3f ms, sort and submit %.3f ms; Arrays.sort %.3f ms;"
+        + " %d bytes allocated in %d frames%n", RenderQueueBenchmark.COMMANDS,
+        RenderQueueBenchmark.median(record), RenderQueueBenchmark.median(sort),
+        RenderQueueBenchmark.median(submit),
+        RenderQueueBenchmark.median(baseline), allocated,
+        RenderQueueBenchmark.RUNS);
+      RenderQueueBenchmark.check(allocated == 0L,
+        "Frames allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Runs two frames, timing the recording and the sort of the first and
+     * the submission of the second.
+     *
+     * @param _queue the queue
+     * @param _backend the recording backend
+     * @param _record the recording times
+     * @param _sort the sort times
+     * @param _submit the submission times
+     * @param _run the index of the times
+     */
+    private static void frame(
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend,
+        final long[] _record,
+        final long[] _sort,
+        final long[] _submit,
+        final int _run) {
+      long start = System.nanoTime();
+      RenderQueueBenchmark.record(_queue);
+      _record[_run] = System.nanoTime() - start;
+      start = System.nanoTime();
+      _queue.sort();
+      _sort[_run] = System.nanoTime() - start;
+      _queue.clear();
+      RenderQueueBenchmark.record(_queue);
+      start = System.nanoTime();
+      _queue.submit(_backend);
+      _submit[_run] = System.nanoTime() - start;
+    }
+
+    /**
+     * Records the commands of a frame.
+     *
+     * @param _queue the queue
+     */
+    private static void record(
+        final RenderQueue _queue) {
+      for (int command = 0; command < RenderQueueBenchmark.COMMANDS;
+          command++) {
+        final DrawCommand draw =
+          _queue.push(RenderQueueBenchmark.KEYS[command]);
+        draw.vertexAddress(command);
+        draw.vertexCount(command);
+        draw.indexCount(6);
+        draw.vertexFormat(VertexFormat.POSITION_TEXCOORD_COLOR);
+        draw.userData(command);
+      }
+    }
+
+    /**
+     * Gets the median of measured times.
+     *
+     * @param _nanos the times in nanoseconds, sorted in place
+     * @return the median in milliseconds
+     */
+    private static double median(
+        final long[] _nanos) {
+      Arrays.sort(_nanos);
+      return _nanos[_nanos.length / 2] / 1.0E6;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
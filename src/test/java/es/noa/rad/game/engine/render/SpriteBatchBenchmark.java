@@ -0,0 +1,293 @@
+package es.noa.rad.game.engine.render;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Measures a hundred thousand sprites per frame through the
+   * {@link SpriteBatch}.
+   *
+   * <p>Sprites over a few layers and tens of textures, half of them
+   * rotated, are recorded, flushed to a {@link RenderQueue} and submitted
+   * to a {@link RecordingRenderBackend}. The first frame is checked: there
+   * must be one draw per layer and texture, and the vertices of each draw
+   * must be those of the sprites of its layer and texture, in recording
+   * order, each sprite drawn once. The frames are then timed as the median
+   * of many runs and must allocate nothing.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class SpriteBatchBenchmark {
+
+    /**
+     * Sprites per frame.
+     */
+    private static final int SPRITES = 100_000;
+
+    /**
+     * Layers of the sprites.
+     */
+    private static final int LAYERS = 4;
+
+    /**
+     * Textures of the sprites.
+     */
+    private static final int TEXTURES = 32;
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 200;
+
+    /**
+     * Frames timed; the median is reported.
+     */
+    private static final int RUNS = 101;
+
+    /**
+     * Largest distance between a vertex and the corner it stands for.
+     */
+    private static final float TOLERANCE = 1.0E-3F;
+
+    /**
+     * Horizontal position of every sprite.
+     */
+    private static final float[] X = new float[SpriteBatchBenchmark.SPRITES];
+
+    /**
+     * Vertical position of every sprite.
+     */
+    private static final float[] Y = new float[SpriteBatchBenchmark.SPRITES];
+
+    /**
+     * Layer of every sprite.
+     */
+    private static final int[] LAYER = new int[SpriteBatchBenchmark.SPRITES];
+
+    /**
+     * Texture of every sprite.
+     */
+    private static final int[] TEXTURE =
+      new int[SpriteBatchBenchmark.SPRITES];
+
+    /**
+     * Not instantiable.
+     */
+    private SpriteBatchBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final Random random = new Random(29);
+      for (int sprite = 0; sprite < SpriteBatchBenchmark.SPRITES; sprite++) {
+        SpriteBatchBenchmark.X[sprite] = random.nextFloat() * 1920F;
+        SpriteBatchBenchmark.Y[sprite] = random.nextFloat() * 1080F;
+        SpriteBatchBenchmark.LAYER[sprite] =
+          random.nextInt(SpriteBatchBenchmark.LAYERS);
+        SpriteBatchBenchmark.TEXTURE[sprite] =
+          random.nextInt(SpriteBatchBenchmark.TEXTURES);
+      }
+      final SpriteBatch batch = new SpriteBatch(1_024, 0);
+      final RenderQueue queue = new RenderQueue(64);
+      final RecordingRenderBackend backend = new RecordingRenderBackend();
+      try {
+        SpriteBatchBenchmark.checkDraws(batch, queue, backend);
+        SpriteBatchBenchmark.measure(batch, queue, backend);
+      } finally {
+        backend.close();
+        queue.close();
+        batch.close();
+      }
+      System.out.println("SpriteBatchBenchmark passed");
+    }
+
+    /**
+     * Checks the draws and vertices of a frame.
+     *
+     * @param _batch the batch
+     * @param _queue the queue
+     * @param _backend the recording backend
+     */
+    private static void checkDraws(
+        final SpriteBatch _batch,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      SpriteBatchBenchmark.record(_batch);
+      _batch.flush(_queue);
+      _queue.submit(_backend);
+      final int stride = VertexFormat.POSITION_TEXCOORD_COLOR.stride();
+      final int colorOffset = stride - Integer.BYTES;
+      final boolean[] drawn = new boolean[SpriteBatchBenchmark.SPRITES];
+      for (int draw = 0; draw < _backend.commandCount(); draw++) {
+        final long key = _backend.sortKey(draw);
+        final int layer = SortKey.layer(key);
+        final int texture = SortKey.material(key);
+        SpriteBatchBenchmark.check(_backend.userData(draw) == texture,
+          "Draw " + draw + " does not carry its texture");
+        int previous = -1;
+        for (int vertex = 0; vertex < _backend.vertexCount(draw);
+            vertex += SpriteBatch.VERTICES_PER_SPRITE) {
+          final long address =
+            _backend.vertexAddress(draw) + (((long) vertex) * stride);
+          final int sprite = MemoryUtil.memGetInt(address + colorOffset);
+          SpriteBatchBenchmark.check((sprite > previous)
+            && (SpriteBatchBenchmark.LAYER[sprite] == layer)
+            && (SpriteBatchBenchmark.TEXTURE[sprite] == texture)
+            && !drawn[sprite],
+            "Sprite " + sprite + " in the wrong draw or order");
+          drawn[sprite] = true;
+          previous = sprite;
+          if ((sprite % 2) == 0) {
+            SpriteBatchBenchmark.check((Math.abs(MemoryUtil.memGetFloat(
+              address) - SpriteBatchBenchmark.X[sprite])
+                < SpriteBatchBenchmark.TOLERANCE)
+              && (Math.abs(MemoryUtil.memGetFloat(address + Float.BYTES)
+                - SpriteBatchBenchmark.Y[sprite])
+                < SpriteBatchBenchmark.TOLERANCE),
+              "Sprite " + sprite + " misplaced");
+          }
+        }
+      }
+      int missing = 0;
+      for (final boolean sprite : drawn) {
+        missing += sprite ? 0 : 1;
+      }
+      SpriteBatchBenchmark.check(missing == 0,
+        missing + " sprites not drawn");
+      SpriteBatchBenchmark.check(_backend.commandCount()
+        == (SpriteBatchBenchmark.LAYERS * SpriteBatchBenchmark.TEXTURES),
+        "Expected one draw per layer and texture, got "
+          + _backend.commandCount());
+      System.out.printf("%d sprites in %d draws%n", _batch.frameSprites(),
+        _backend.commandCount());
+      _batch.clear();
+    }
+
+    /**
+     * Times the frames and checks that they allocate nothing.
+     *
+     * @param _batch the batch
+     * @param _queue the queue
+     * @param _backend the recording backend
+     */
+    private static void measure(
+        final SpriteBatch _batch,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend) {
+      final long[] record = new long[SpriteBatchBenchmark.RUNS];
+      final long[] flush = new long[SpriteBatchBenchmark.RUNS];
+      final long[] submit = new long[SpriteBatchBenchmark.RUNS];
+      for (int frame = 0; frame < SpriteBatchBenchmark.WARM_FRAMES;
+          frame++) {
+        SpriteBatchBenchmark.frame(_batch, _queue, _backend, record, flush,
+          submit, 0);
+      }
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int run = 0; run < SpriteBatchBenchmark.RUNS; run++) {
+        SpriteBatchBenchmark.frame(_batch, _queue, _backend, record, flush,
+          submit, run);
+      }
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      final double recordMs = SpriteBatchBenchmark.median(record);
+      final double flushMs = SpriteBatchBenchmark.median(flush);
+      final double submitMs = SpriteBatchBenchmark.median(submit);
+      final double spriteNanos = ((recordMs + flushMs + submitMs) * 1.0E6)
+        / SpriteBatchBenchmark.SPRITES;
+      System.out.printf("%d sprites per frame: record %.3f ms, flush %.3f ms,"
+        + " submit %.3f ms, %.1f ns per sprite; %d bytes allocated in %d"
+        + " frames%n", SpriteBatchBenchmark.SPRITES, recordMs, flushMs,
+        submitMs, spriteNanos, allocated, SpriteBatchBenchmark.RUNS);
+      SpriteBatchBenchmark.check(allocated == 0L,
+        "Frames allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Runs a frame, timing its recording, flush and submission.
+     *
+     * @param _batch the batch
+     * @param _queue the queue
+     * @param _backend the recording backend
+     * @param _record the recording times
+     * @param _flush the flush times
+     * @param _submit the submission times
+     * @param _run the index of the times
+     */
+    private static void frame(
+        final SpriteBatch _batch,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend,
+        final long[] _record,
+        final long[] _flush,
+        final long[] _submit,
+        final int _run) {
+      final long start = System.nanoTime();
+      SpriteBatchBenchmark.record(_batch);
+      final long recorded = System.nanoTime();
+      _batch.flush(_queue);
+      final long flushed = System.nanoTime();
+      _queue.submit(_backend);
+      _batch.clear();
+      final long submitted = System.nanoTime();
+      _record[_run] = recorded - start;
+      _flush[_run] = flushed - recorded;
+      _submit[_run] = submitted - flushed;
+    }
+
+    /**
+     * Records the sprites of a frame, colored with their index.
+     *
+     * @param _batch the batch
+     */
+    private static void record(
+        final SpriteBatch _batch) {
+      for (int sprite = 0; sprite < SpriteBatchBenchmark.SPRITES; sprite++) {
+        _batch.layer(SpriteBatchBenchmark.LAYER[sprite]);
+        _batch.texture(SpriteBatchBenchmark.TEXTURE[sprite]);
+        _batch.color(sprite);
+        _batch.draw(SpriteBatchBenchmark.X[sprite],
+          SpriteBatchBenchmark.Y[sprite], 24F, 24F,
+          ((sprite % 2) == 0) ? 0F : (sprite * 0.001F));
+      }
+    }
+
+    /**
+     * Gets the median of measured times.
+     *
+     * @param _nanos the times in nanoseconds, sorted in place
+     * @return the median in milliseconds
+     */
+    private static double median(
+        final long[] _nanos) {
+      Arrays.sort(_nanos);
+      return _nanos[_nanos.length / 2] / 1.0E6;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
@@ -0,0 +1,445 @@
+package es.noa.rad.game.engine.render.bgfx;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.render.DrawCommand;
+import es.noa.rad.game.engine.render.InstanceBatch;
+import es.noa.rad.game.engine.render.MeshArena;
+import es.noa.rad.game.engine.render.RenderBackend;
+import es.noa.rad.game.engine.render.RenderQueue;
+import es.noa.rad.game.engine.render.SortKey;
+import es.noa.rad.game.engine.render.SpriteBatch;
+import es.noa.rad.game.engine.render.VertexFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import org.joml.Matrix4f;
+import org.lwjgl.bgfx.BGFX;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Measures the CPU cost of rendering a scene through the
+   * {@link BgfxRenderBackend} initialized with the noop renderer.
+   *
+   * <p>Each frame draws thousands of unique meshes straight from a
+   * {@link MeshArena}, tens of thousands of repeated meshes through an
+   * {@link InstanceBatch} and a HUD of sprites through a
+   * {@link SpriteBatch}, then submits the queue to bgfx, which copies the
+   * geometry into its transient buffers on the game thread and hands the
+   * frame to its render thread. No GPU or window is needed. Every draw
+   * names one of the textures created through the backend in its user
+   * data, and must reach bgfx with that texture bound. The frame times are
+   * reported, before and after a {@link BgfxRenderBackend#resize} to a
+   * larger back buffer.
+   *
+   * <p>The noop renderer does not compile shaders, so the programs are
+   * built from shader binaries holding only a header.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class BgfxNoopBenchmark {
+
+    /**
+     * Meshes of the scene.
+     */
+    private static final int MESHES = 256;
+
+    /**
+     * Vertices of a mesh, a cube with a normal per face.
+     */
+    private static final int MESH_VERTICES = 24;
+
+    /**
+     * Indices of a mesh.
+     */
+    private static final int MESH_INDICES = 36;
+
+    /**
+     * Unique draws per frame.
+     */
+    private static final int UNIQUE_DRAWS = 4_000;
+
+    /**
+     * Repeated draws per frame, grouped by the instance batch.
+     */
+    private static final int INSTANCES = 20_000;
+
+    /**
+     * Sprites of the HUD per frame.
+     */
+    private static final int SPRITES = 10_000;
+
+    /**
+     * Shaders of the scene, each with its program.
+     */
+    private static final int SHADERS = 16;
+
+    /**
+     * Materials of the scene.
+     */
+    private static final int MATERIALS = 64;
+
+    /**
+     * Textures of the scene.
+     */
+    private static final int TEXTURES = 16;
+
+    /**
+     * Width and height of a texture in pixels.
+     */
+    private static final int TEXTURE_SIZE = 4;
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 100;
+
+    /**
+     * Frames timed per measurement.
+     */
+    private static final int FRAMES = 301;
+
+    /**
+     * Version of the bgfx shader binaries.
+     */
+    private static final int SHADER_VERSION = 11;
+
+    /**
+     * Hash linking the vertex shader outputs to the fragment shader inputs.
+     */
+    private static final int SHADER_HASH = 0x4E4F4F50;
+
+    /**
+     * Not instantiable.
+     */
+    private BgfxNoopBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final BgfxRenderBackend backend =
+        new BgfxRenderBackend(BGFX.BGFX_RENDERER_TYPE_NOOP);
+      backend.init(MemoryUtil.NULL, MemoryUtil.NULL, 1280, 720, false);
+      final MeshArena meshes = new MeshArena(1 << 20);
+      final RenderQueue queue = new RenderQueue(1_024);
+      final InstanceBatch instances =
+        new InstanceBatch(meshes, BgfxNoopBenchmark.INSTANCES);
+      final SpriteBatch sprites =
+        new SpriteBatch(BgfxNoopBenchmark.SPRITES, 0);
+      final short[] programs = new short[BgfxNoopBenchmark.SHADERS];
+      Arrays.fill(programs, BGFX.BGFX_INVALID_HANDLE);
+      final int[] textures = new int[BgfxNoopBenchmark.TEXTURES];
+      Arrays.fill(textures, RenderBackend.INVALID_TEXTURE);
+      try {
+        for (int shader = 0; shader < programs.length; shader++) {
+          programs[shader] = BgfxNoopBenchmark.program();
+          BgfxNoopBenchmark.check(
+            programs[shader] != BGFX.BGFX_INVALID_HANDLE,
+            "Program " + shader + " not created");
+          backend.program(shader, programs[shader]);
+        }
+        BgfxNoopBenchmark.createTextures(backend, textures);
+        final Scene scene = new Scene(meshes, textures);
+        BgfxNoopBenchmark.measure("1280x720", backend, scene, queue,
+          instances, sprites);
+        backend.resize(1920, 1080, false);
+        BgfxNoopBenchmark.measure("1920x1080", backend, scene, queue,
+          instances, sprites);
+      } finally {
+        for (final int texture : textures) {
+          if (texture != RenderBackend.INVALID_TEXTURE) {
+            backend.destroyTexture(texture);
+          }
+        }
+        for (final short program : programs) {
+          if (program != BGFX.BGFX_INVALID_HANDLE) {
+            BGFX.bgfx_destroy_program(program);
+          }
+        }
+        sprites.close();
+        instances.close();
+        queue.close();
+        meshes.close();
+        backend.close();
+      }
+      System.out.println("BgfxNoopBenchmark passed");
+    }
+
+    /**
+     * Times the frames of the scene.
+     *
+     * @param _resolution the back buffer size, for the report
+     * @param _backend the backend
+     * @param _scene the scene
+     * @param _queue the queue
+     * @param _instances the instance batch
+     * @param _sprites the sprite batch
+     */
+    private static void measure(
+        final String _resolution,
+        final BgfxRenderBackend _backend,
+        final Scene _scene,
+        final RenderQueue _queue,
+        final InstanceBatch _instances,
+        final SpriteBatch _sprites) {
+      final long[] nanos = new long[BgfxNoopBenchmark.FRAMES];
+      final int frames = BgfxNoopBenchmark.WARM_FRAMES + nanos.length;
+      int draws = 0;
+      for (int frame = 0; frame < frames; frame++) {
+        final long start = System.nanoTime();
+        _scene.record(_queue, _instances, _sprites);
+        _instances.flush(_queue);
+        _sprites.flush(_queue);
+        draws = _queue.size();
+        _queue.submit(_backend);
+        _instances.clear();
+        _sprites.clear();
+        if (frame >= BgfxNoopBenchmark.WARM_FRAMES) {
+          nanos[frame - BgfxNoopBenchmark.WARM_FRAMES] =
+            System.nanoTime() - start;
+        }
+        BgfxNoopBenchmark.check(
+          (_backend.submittedDraws() == draws)
+            && (_backend.droppedDraws() == 0),
+          "Frame " + frame + " submitted " + _backend.submittedDraws()
+            + " of " + draws + " draws, dropped " + _backend.droppedDraws());
+        BgfxNoopBenchmark.check(_backend.texturedDraws() == draws,
+          "Frame " + frame + " bound a texture to "
+            + _backend.texturedDraws() + " of " + draws + " draws");
+      }
+      Arrays.sort(nanos);
+      System.out.printf("%s: %d objects in %d draws per frame, frame median"
+        + " %.3f ms, p99 %.3f ms, max %.3f ms%n", _resolution,
+        BgfxNoopBenchmark.UNIQUE_DRAWS + BgfxNoopBenchmark.INSTANCES
+          + BgfxNoopBenchmark.SPRITES, draws,
+        nanos[nanos.length / 2] / 1.0E6,
+        nanos[(nanos.length * 99) / 100] / 1.0E6,
+        nanos[nanos.length - 1] / 1.0E6);
+    }
+
+    /**
+     * Creates the textures of the scene through the backend.
+     *
+     * @param _backend the backend
+     * @param _textures the array receiving the texture handles
+     */
+    private static void createTextures(
+        final BgfxRenderBackend _backend,
+        final int[] _textures) {
+      final int size = BgfxNoopBenchmark.TEXTURE_SIZE
+        * BgfxNoopBenchmark.TEXTURE_SIZE * Integer.BYTES;
+      final long pixels = MemoryUtil.nmemAlloc(size);
+      try {
+        for (int texture = 0; texture < _textures.length; texture++) {
+          MemoryUtil.memSet(pixels, texture * 16, size);
+          _textures[texture] = _backend.createTexture(
+            BgfxNoopBenchmark.TEXTURE_SIZE, BgfxNoopBenchmark.TEXTURE_SIZE,
+            1, false, pixels, size);
+          BgfxNoopBenchmark.check(
+            _textures[texture] != RenderBackend.INVALID_TEXTURE,
+            "Texture " + texture + " not created");
+        }
+      } finally {
+        MemoryUtil.nmemFree(pixels);
+      }
+    }
+
+    /**
+     * Creates a program from shader binaries holding only a header, which
+     * the noop renderer accepts.
+     *
+     * @return the program handle
+     */
+    private static short program() {
+      final short vertex = BgfxNoopBenchmark.shader('V');
+      final short fragment = BgfxNoopBenchmark.shader('F');
+      return BGFX.bgfx_create_program(vertex, fragment, true);
+    }
+
+    /**
+     * Creates a shader from a binary with no uniforms, code or attributes.
+     *
+     * @param _type the shader type, {@code V} or {@code F}
+     * @return the shader handle
+     */
+    private static short shader(
+        final char _type) {
+      final ByteBuffer binary = MemoryUtil.memAlloc(Byte.SIZE * Integer.BYTES)
+        .order(ByteOrder.LITTLE_ENDIAN);
+      try {
+        binary.put((byte) _type).put((byte) 'S').put((byte) 'H')
+          .put((byte) BgfxNoopBenchmark.SHADER_VERSION)
+          .putInt(BgfxNoopBenchmark.SHADER_HASH)
+          .putInt(BgfxNoopBenchmark.SHADER_HASH)
+          .putShort((short) 0)
+          .putInt(0)
+          .put((byte) 0)
+          .putShort((short) 0)
+          .flip();
+        return BGFX.bgfx_create_shader(BGFX.bgfx_copy(binary));
+      } finally {
+        MemoryUtil.memFree(binary);
+      }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+    /**
+     * Objects of the benchmark scene, recorded every frame.
+     */
+    private static final class Scene {
+
+      /**
+       * Arena holding the meshes.
+       */
+      private final MeshArena meshes;
+
+      /**
+       * Mesh handles.
+       */
+      private final int[] handles;
+
+      /**
+       * Mesh of each unique draw.
+       */
+      private final int[] uniqueMeshes;
+
+      /**
+       * Texture of each unique draw.
+       */
+      private final int[] uniqueTextures;
+
+      /**
+       * Sort key of each unique draw.
+       */
+      private final long[] uniqueKeys;
+
+      /**
+       * Mesh of each repeated draw.
+       */
+      private final int[] instanceMeshes;
+
+      /**
+       * Sort key of each repeated draw.
+       */
+      private final long[] instanceKeys;
+
+      /**
+       * Transform of each repeated draw.
+       */
+      private final Matrix4f[] transforms;
+
+      /**
+       * Position and texture of each sprite, three floats per sprite.
+       */
+      private final float[] sprites;
+
+      /**
+       * Creates the meshes and objects of the scene.
+       *
+       * @param _meshes the arena receiving the meshes
+       * @param _textures the texture handles
+       */
+      Scene(
+          final MeshArena _meshes,
+          final int[] _textures) {
+        final Random random = new Random(27);
+        this.meshes = _meshes;
+        this.handles = new int[BgfxNoopBenchmark.MESHES];
+        for (int mesh = 0; mesh < this.handles.length; mesh++) {
+          this.handles[mesh] = _meshes.create(
+            VertexFormat.POSITION_NORMAL_TEXCOORD,
+            BgfxNoopBenchmark.MESH_VERTICES, BgfxNoopBenchmark.MESH_INDICES);
+          MemoryUtil.memSet(_meshes.vertexAddress(this.handles[mesh]), 0,
+            ((long) BgfxNoopBenchmark.MESH_VERTICES)
+              * VertexFormat.POSITION_NORMAL_TEXCOORD.stride());
+          final long indices = _meshes.indexAddress(this.handles[mesh]);
+          for (int index = 0; index < BgfxNoopBenchmark.MESH_INDICES;
+              index++) {
+            MemoryUtil.memPutInt(indices + (((long) index) * Integer.BYTES),
+              index % BgfxNoopBenchmark.MESH_VERTICES);
+          }
+        }
+        this.uniqueMeshes = new int[BgfxNoopBenchmark.UNIQUE_DRAWS];
+        this.uniqueTextures = new int[BgfxNoopBenchmark.UNIQUE_DRAWS];
+        this.uniqueKeys = new long[BgfxNoopBenchmark.UNIQUE_DRAWS];
+        for (int draw = 0; draw < this.uniqueMeshes.length; draw++) {
+          this.uniqueMeshes[draw] =
+            this.handles[random.nextInt(this.handles.length)];
+          final int material = random.nextInt(BgfxNoopBenchmark.MATERIALS);
+          this.uniqueTextures[draw] =
+            _textures[material % _textures.length];
+          this.uniqueKeys[draw] = SortKey.encode(0, 0,
+            random.nextInt(BgfxNoopBenchmark.SHADERS), material,
+            SortKey.quantizeDepth(random.nextFloat()));
+        }
+        this.instanceMeshes = new int[BgfxNoopBenchmark.INSTANCES];
+        this.instanceKeys = new long[BgfxNoopBenchmark.INSTANCES];
+        this.transforms = new Matrix4f[BgfxNoopBenchmark.INSTANCES];
+        for (int draw = 0; draw < this.instanceMeshes.length; draw++) {
+          this.instanceMeshes[draw] = this.handles[random.nextInt(16)];
+          this.instanceKeys[draw] = SortKey.encode(0, 0,
+            random.nextInt(4), _textures[random.nextInt(8)], 0);
+          this.transforms[draw] = new Matrix4f().translation(
+            (random.nextFloat() * 200F) - 100F, 0F,
+            (random.nextFloat() * 200F) - 100F).rotateY(random.nextFloat());
+        }
+        this.sprites = new float[BgfxNoopBenchmark.SPRITES * 3];
+        for (int sprite = 0; sprite < BgfxNoopBenchmark.SPRITES; sprite++) {
+          this.sprites[sprite * 3] = random.nextFloat() * 1280F;
+          this.sprites[(sprite * 3) + 1] = random.nextFloat() * 720F;
+          this.sprites[(sprite * 3) + 2] =
+            _textures[random.nextInt(_textures.length)];
+        }
+      }
+
+      /**
+       * Records the objects of a frame.
+       *
+       * @param _queue the queue receiving the unique draws
+       * @param _instances the batch receiving the repeated draws
+       * @param _sprites the batch receiving the sprites
+       */
+      void record(
+          final RenderQueue _queue,
+          final InstanceBatch _instances,
+          final SpriteBatch _sprites) {
+        for (int draw = 0; draw < this.uniqueMeshes.length; draw++) {
+          final DrawCommand command = _queue.push(this.uniqueKeys[draw]);
+          this.meshes.draw(this.uniqueMeshes[draw], command);
+          command.userData(this.uniqueTextures[draw]);
+        }
+        for (int draw = 0; draw < this.instanceMeshes.length; draw++) {
+          _instances.draw(this.instanceKeys[draw], this.instanceMeshes[draw],
+            this.transforms[draw], InstanceBatch.WHITE);
+        }
+        _sprites.layer(1);
+        for (int sprite = 0; sprite < BgfxNoopBenchmark.SPRITES; sprite++) {
+          _sprites.texture((int) this.sprites[(sprite * 3) + 2]);
+          _sprites.draw(this.sprites[sprite * 3],
+            this.sprites[(sprite * 3) + 1], 16F, 16F);
+        }
+      }
+
+    }
+
+  }
@@ -0,0 +1,241 @@
+package es.noa.rad.game.engine.render.culling;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.util.IntList;
+import es.noa.rad.game.engine.util.VectorSupport;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+
+  /**
+   * Compares the serial, vector and parallel strategies of the
+   * {@link FrustumCuller}.
+   *
+   * <p>A quarter million boxes scattered around a perspective camera are
+   * culled with every {@link CullingMode}. Each result is first checked
+   * against a brute force pass over the same boxes: the scalar strategies
+   * against JOML's {@link FrustumIntersection}, the vector strategies
+   * against the scalar test over the normalized planes they use, which
+   * performs the same float operations. Each strategy is then timed as the
+   * median of many runs on a pool with one worker per core. Steady-state
+   * calls must allocate nothing, save the fork-join node the calling
+   * thread waits on in the parallel strategies.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class FrustumCullerBenchmark {
+
+    /**
+     * Boxes culled per call.
+     */
+    private static final int BOXES = 250_000;
+
+    /**
+     * Half extent of the cube the boxes are scattered in.
+     */
+    private static final float WORLD = 500F;
+
+    /**
+     * Number of frustum planes.
+     */
+    private static final int PLANES = 6;
+
+    /**
+     * Bytes a caller outside the pool may allocate to wait for a parallel
+     * call, one fork-join wait node.
+     */
+    private static final long WAIT_BYTES = 32L;
+
+    /**
+     * Calls run to warm up the compiler.
+     */
+    private static final int WARM_CALLS = 100;
+
+    /**
+     * Calls timed; the median is reported.
+     */
+    private static final int RUNS = 51;
+
+    /**
+     * Not instantiable.
+     */
+    private FrustumCullerBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final Random random = new Random(30);
+      final BoundingBoxes boxes =
+        new BoundingBoxes(FrustumCullerBenchmark.BOXES);
+      for (int box = 0; box < FrustumCullerBenchmark.BOXES; box++) {
+        final float x = (random.nextFloat() * 2F - 1F)
+          * FrustumCullerBenchmark.WORLD;
+        final float y = (random.nextFloat() * 2F - 1F)
+          * FrustumCullerBenchmark.WORLD;
+        final float z = (random.nextFloat() * 2F - 1F)
+          * FrustumCullerBenchmark.WORLD;
+        final float extent = 0.25F + (random.nextFloat() * 2F);
+        boxes.add(x - extent, y - extent, z - extent, x + extent,
+          y + extent, z + extent);
+      }
+      final Matrix4f viewProjection = new Matrix4f()
+        .perspective((float) Math.toRadians(60.0), 16F / 9F, 0.1F, 1000F)
+        .lookAt(0F, 20F, 0F, 100F, 0F, -300F, 0F, 1F, 0F);
+
+      final int cores = Runtime.getRuntime().availableProcessors();
+      final ForkJoinPool pool = new ForkJoinPool(cores);
+      try {
+        final FrustumCuller culler = new FrustumCuller(pool,
+          FrustumCuller.DEFAULT_PARALLEL_THRESHOLD);
+        culler.update(viewProjection);
+        final IntList scalar = FrustumCullerBenchmark.reference(boxes,
+          viewProjection, false);
+        final IntList vector = FrustumCullerBenchmark.reference(boxes,
+          viewProjection, true);
+        System.out.printf("%d boxes, %d visible (%.1f%%), %d cores,"
+          + " Vector API %s%n", FrustumCullerBenchmark.BOXES, scalar.size(),
+          (100.0 * scalar.size()) / FrustumCullerBenchmark.BOXES, cores,
+          VectorSupport.available() ? "available" : "unavailable");
+        double serial = 0.0;
+        for (final CullingMode mode : CullingMode.values()) {
+          final boolean vectorMode = VectorSupport.available()
+            && (mode != CullingMode.SCALAR)
+            && (mode != CullingMode.PARALLEL);
+          final double millis = FrustumCullerBenchmark.measure(culler,
+            boxes, mode, vectorMode ? vector : scalar, serial);
+          if (mode == CullingMode.SCALAR) {
+            serial = millis;
+          }
+        }
+      } finally {
+        pool.shutdown();
+      }
+      System.out.println("FrustumCullerBenchmark passed");
+    }
+
+    /**
+     * Culls the boxes one by one, as the reference for the strategies.
+     *
+     * @param _boxes the boxes
+     * @param _viewProjection the camera view-projection matrix
+     * @param _planes whether to test the normalized planes instead of
+     *     JOML's frustum
+     * @return the visible indices, in ascending order
+     */
+    private static IntList reference(
+        final BoundingBoxes _boxes,
+        final Matrix4f _viewProjection,
+        final boolean _planes) {
+      final FrustumIntersection frustum =
+        new FrustumIntersection(_viewProjection, false);
+      final float[] planes = new float[FrustumCullerBenchmark.PLANES
+        * FrustumCuller.PLANE_SIZE];
+      final Vector4f plane = new Vector4f();
+      for (int index = 0; index < FrustumCullerBenchmark.PLANES; index++) {
+        _viewProjection.frustumPlane(index, plane);
+        final int offset = index * FrustumCuller.PLANE_SIZE;
+        planes[offset] = plane.x;
+        planes[offset + 1] = plane.y;
+        planes[offset + 2] = plane.z;
+        planes[offset + FrustumCuller.PLANE_SIZE - 1] = plane.w;
+      }
+      final IntList visible = new IntList(_boxes.size());
+      for (int box = 0; box < _boxes.size(); box++) {
+        final float minX = _boxes.minX()[box];
+        final float minY = _boxes.minY()[box];
+        final float minZ = _boxes.minZ()[box];
+        final float maxX = _boxes.maxX()[box];
+        final float maxY = _boxes.maxY()[box];
+        final float maxZ = _boxes.maxZ()[box];
+        if (_planes
+            ? FrustumCuller.testAab(planes, minX, minY, minZ, maxX, maxY,
+              maxZ)
+            : frustum.testAab(minX, minY, minZ, maxX, maxY, maxZ)) {
+          visible.add(box);
+        }
+      }
+      return visible;
+    }
+
+    /**
+     * Checks and times a strategy.
+     *
+     * @param _culler the culler, already updated
+     * @param _boxes the boxes
+     * @param _mode the strategy
+     * @param _expected the visible indices the strategy must find
+     * @param _serial the median time of the scalar strategy, or zero
+     * @return the median time of a call in milliseconds
+     */
+    private static double measure(
+        final FrustumCuller _culler,
+        final BoundingBoxes _boxes,
+        final CullingMode _mode,
+        final IntList _expected,
+        final double _serial) {
+      final IntList visible = new IntList(_boxes.size());
+      _culler.cull(_boxes, visible, _mode);
+      FrustumCullerBenchmark.check(visible.size() == _expected.size(),
+        _mode + " found " + visible.size() + " visible boxes, expected "
+          + _expected.size());
+      for (int index = 0; index < visible.size(); index++) {
+        FrustumCullerBenchmark.check(
+          visible.get(index) == _expected.get(index),
+          _mode + " differs from the reference at " + index);
+      }
+      for (int call = 0; call < FrustumCullerBenchmark.WARM_CALLS; call++) {
+        _culler.cull(_boxes, visible, _mode);
+      }
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long[] nanos = new long[FrustumCullerBenchmark.RUNS];
+      threads.getThreadAllocatedBytes(thread);
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int run = 0; run < FrustumCullerBenchmark.RUNS; run++) {
+        _culler.cull(_boxes, visible, _mode);
+        nanos[run] = _culler.elapsedNanos();
+      }
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      /* A caller outside the pool waits on a node of its own. */
+      final boolean parallel = (_mode != CullingMode.SCALAR)
+        && (_mode != CullingMode.VECTOR);
+      FrustumCullerBenchmark.check(allocated <= (parallel
+          ? (FrustumCullerBenchmark.RUNS * FrustumCullerBenchmark.WAIT_BYTES)
+          : 0L),
+        _mode + " allocated " + allocated + " bytes");
+      Arrays.sort(nanos);
+      final double millis = nanos[nanos.length / 2] / 1.0E6;
+      System.out.printf("%-15s %7.3f ms, %5.2fx serial, %d bytes per call%n",
+        _mode, millis, ((_serial > 0.0) ? _serial : millis) / millis,
+        allocated / FrustumCullerBenchmark.RUNS);
+      return millis;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
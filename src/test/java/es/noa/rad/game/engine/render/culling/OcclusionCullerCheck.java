@@ -0,0 +1,527 @@
+package es.noa.rad.game.engine.render.culling;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.util.IntList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+  /**
+   * Culls a synthetic city with the {@link FrustumCuller} followed by the
+   * {@link OcclusionCuller}, as the window does every frame.
+   *
+   * <p>A grid of buildings, used as box occluders, stands around a camera
+   * at street level, with a hundred thousand small objects scattered in
+   * the streets between them. The camera turns around over the frames;
+   * every frame the buildings inside the frustum are rasterized and the
+   * frustum visible objects and buildings are tested against the depth
+   * buffer. For a few views, every box the occlusion culler drops is ray
+   * cast from the camera at those of its corners and centre that are on
+   * screen, and each ray must hit a building first, so the culling stays
+   * conservative up to the depth buffer resolution. The ratio of
+   * frustum visible boxes culled and the per-frame cost of rasterization
+   * and tests are reported.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class OcclusionCullerCheck {
+
+    /**
+     * Buildings along each side of the city grid, an odd number so the
+     * camera stands in the empty centre block.
+     */
+    private static final int GRID = 17;
+
+    /**
+     * Distance between the centres of neighbouring buildings.
+     */
+    private static final float BLOCK = 40F;
+
+    /**
+     * Half width of a building footprint; the rest of a block is street.
+     */
+    private static final float HALF_FOOTPRINT = 12F;
+
+    /**
+     * Small objects scattered in the streets.
+     */
+    private static final int OBJECTS = 100_000;
+
+    /**
+     * Height of the camera.
+     */
+    private static final float EYE_HEIGHT = 1.7F;
+
+    /**
+     * Vertical field of view of the camera in radians.
+     */
+    private static final double FIELD_OF_VIEW = Math.toRadians(60.0);
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 100;
+
+    /**
+     * Frames timed, each turning the camera; the median is reported.
+     */
+    private static final int RUNS = 101;
+
+    /**
+     * Views whose culled boxes are ray cast.
+     */
+    private static final int CHECKED_VIEWS = 8;
+
+    /**
+     * Ray cast samples per culled box: its corners and centre.
+     */
+    private static final int SAMPLES = 9;
+
+    /**
+     * Fraction of a ray, from the camera, within which a building must be
+     * hit; the end is left out so boxes touching a building are not hit by
+     * it at the sample itself.
+     */
+    private static final float RAY_END = 0.999F;
+
+    /**
+     * Not instantiable.
+     */
+    private OcclusionCullerCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final BoundingBoxes boxes = new BoundingBoxes(
+        OcclusionCullerCheck.OBJECTS + (OcclusionCullerCheck.GRID
+          * OcclusionCullerCheck.GRID));
+      final int buildings = OcclusionCullerCheck.city(boxes);
+      final ForkJoinPool pool =
+        new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      try {
+        final FrustumCuller frustum = new FrustumCuller(pool,
+          FrustumCuller.DEFAULT_PARALLEL_THRESHOLD);
+        final OcclusionCuller occlusion = new OcclusionCuller(pool,
+          OcclusionCuller.DEFAULT_WIDTH, OcclusionCuller.DEFAULT_HEIGHT);
+        final IntList visible = new IntList(boxes.size());
+        final IntList frustumVisible = new IntList(boxes.size());
+        final Matrix4f viewProjection = new Matrix4f();
+        final int views = OcclusionCullerCheck.RUNS
+          / OcclusionCullerCheck.CHECKED_VIEWS;
+        final long[] rays = new long[2];
+        for (int view = 0; view < OcclusionCullerCheck.RUNS; view += views) {
+          OcclusionCullerCheck.camera(view, viewProjection);
+          OcclusionCullerCheck.frame(frustum, occlusion, boxes, buildings,
+            viewProjection, visible);
+          frustum.cull(boxes, frustumVisible);
+          OcclusionCullerCheck.verify(boxes, buildings, frustumVisible,
+            visible, view, rays);
+        }
+        System.out.printf("%d culled boxes ray cast over %d views; %d of"
+          + " %d rays pass within a depth buffer pixel of an occluder"
+          + " edge%n", rays[0] / OcclusionCullerCheck.SAMPLES,
+          OcclusionCullerCheck.CHECKED_VIEWS, rays[1], rays[0]);
+        OcclusionCullerCheck.measure(frustum, occlusion, boxes, buildings,
+          viewProjection, visible);
+      } finally {
+        pool.shutdown();
+      }
+      System.out.println("OcclusionCullerCheck passed");
+    }
+
+    /**
+     * Builds the city: the buildings first, then the objects in the
+     * streets.
+     *
+     * @param _boxes the boxes receiving the city
+     * @return the number of buildings, the first boxes
+     */
+    private static int city(
+        final BoundingBoxes _boxes) {
+      final Random random = new Random(31);
+      final int half = OcclusionCullerCheck.GRID / 2;
+      for (int gridX = -half; gridX <= half; gridX++) {
+        for (int gridZ = -half; gridZ <= half; gridZ++) {
+          if ((gridX == 0) && (gridZ == 0)) {
+            continue;
+          }
+          final float x = gridX * OcclusionCullerCheck.BLOCK;
+          final float z = gridZ * OcclusionCullerCheck.BLOCK;
+          _boxes.add(x - OcclusionCullerCheck.HALF_FOOTPRINT, 0F,
+            z - OcclusionCullerCheck.HALF_FOOTPRINT,
+            x + OcclusionCullerCheck.HALF_FOOTPRINT,
+            15F + (random.nextFloat() * 30F),
+            z + OcclusionCullerCheck.HALF_FOOTPRINT);
+        }
+      }
+      final int buildings = _boxes.size();
+      final float extent = (half + 0.5F) * OcclusionCullerCheck.BLOCK;
+      while (_boxes.size() < (buildings + OcclusionCullerCheck.OBJECTS)) {
+        final float x = ((random.nextFloat() * 2F) - 1F) * extent;
+        final float z = ((random.nextFloat() * 2F) - 1F) * extent;
+        final float y = random.nextFloat() * 2F;
+        final float size = 0.25F + (random.nextFloat() * 0.75F);
+        if (!OcclusionCullerCheck.inBuilding(_boxes, buildings, x, z,
+            size)) {
+          _boxes.add(x - size, y, z - size, x + size, y + size, z + size);
+        }
+      }
+      return buildings;
+    }
+
+    /**
+     * Tests whether a footprint overlaps a building.
+     *
+     * @param _boxes the boxes
+     * @param _buildings the number of buildings
+     * @param _x the footprint centre x
+     * @param _z the footprint centre z
+     * @param _size the footprint half size
+     * @return {@code true} if it overlaps a building
+     */
+    private static boolean inBuilding(
+        final BoundingBoxes _boxes,
+        final int _buildings,
+        final float _x,
+        final float _z,
+        final float _size) {
+      for (int building = 0; building < _buildings; building++) {
+        if (((_x + _size) > _boxes.minX()[building])
+            && ((_x - _size) < _boxes.maxX()[building])
+            && ((_z + _size) > _boxes.minZ()[building])
+            && ((_z - _size) < _boxes.maxZ()[building])) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Sets the camera of a view, turning around the centre of the city.
+     *
+     * @param _view the view
+     * @param _viewProjection the matrix receiving the camera
+     */
+    private static void camera(
+        final int _view,
+        final Matrix4f _viewProjection) {
+      final double yaw = OcclusionCullerCheck.yaw(_view);
+      _viewProjection.setPerspective(
+          (float) OcclusionCullerCheck.FIELD_OF_VIEW,
+          ((float) OcclusionCuller.DEFAULT_WIDTH)
+            / OcclusionCuller.DEFAULT_HEIGHT, 0.1F, 1000F)
+        .lookAt(0F, OcclusionCullerCheck.EYE_HEIGHT, 0F,
+          (float) Math.sin(yaw), OcclusionCullerCheck.EYE_HEIGHT,
+          (float) -Math.cos(yaw), 0F, 1F, 0F);
+    }
+
+    /**
+     * Gets the yaw of the camera of a view.
+     *
+     * @param _view the view
+     * @return the yaw in radians
+     */
+    private static double yaw(
+        final int _view) {
+      return (2.0 * Math.PI * _view) / OcclusionCullerCheck.RUNS;
+    }
+
+    /**
+     * Culls a frame as the window does.
+     *
+     * @param _frustum the frustum culler
+     * @param _occlusion the occlusion culler
+     * @param _boxes the boxes
+     * @param _buildings the number of buildings, the occluders
+     * @param _viewProjection the camera
+     * @param _visible the list receiving the visible boxes
+     */
+    private static void frame(
+        final FrustumCuller _frustum,
+        final OcclusionCuller _occlusion,
+        final BoundingBoxes _boxes,
+        final int _buildings,
+        final Matrix4f _viewProjection,
+        final IntList _visible) {
+      _frustum.update(_viewProjection);
+      _frustum.cull(_boxes, _visible);
+      _occlusion.begin(_viewProjection);
+      for (int building = 0; building < _buildings; building++) {
+        final float minX = _boxes.minX()[building];
+        final float minY = _boxes.minY()[building];
+        final float minZ = _boxes.minZ()[building];
+        final float maxX = _boxes.maxX()[building];
+        final float maxY = _boxes.maxY()[building];
+        final float maxZ = _boxes.maxZ()[building];
+        if (_frustum.frustum().testAab(minX, minY, minZ, maxX, maxY,
+            maxZ)) {
+          _occlusion.addBoxOccluder(minX, minY, minZ, maxX, maxY, maxZ);
+        }
+      }
+      _occlusion.rasterize();
+      _occlusion.cull(_boxes, _visible);
+    }
+
+    /**
+     * Ray casts every box the occlusion culler dropped.
+     *
+     * <p>Coverage is sampled at the centre of the depth buffer pixels, so
+     * a ray may pass an occluder edge by less than a pixel; such rays are
+     * counted, and any other unblocked ray fails the check.
+     *
+     * @param _boxes the boxes
+     * @param _buildings the number of buildings
+     * @param _frustumVisible the boxes inside the frustum
+     * @param _visible the boxes kept by the occlusion culler
+     * @param _view the view
+     * @param _rays the rays cast and the rays passing an edge by less
+     *     than a pixel, incremented
+     */
+    private static void verify(
+        final BoundingBoxes _boxes,
+        final int _buildings,
+        final IntList _frustumVisible,
+        final IntList _visible,
+        final int _view,
+        final long[] _rays) {
+      final Matrix4f viewProjection = new Matrix4f();
+      OcclusionCullerCheck.camera(_view, viewProjection);
+      final FrustumIntersection frustum =
+        new FrustumIntersection(viewProjection);
+      final double yaw = OcclusionCullerCheck.yaw(_view);
+      int kept = 0;
+      for (int index = 0; index < _frustumVisible.size(); index++) {
+        final int box = _frustumVisible.get(index);
+        if ((kept < _visible.size()) && (_visible.get(kept) == box)) {
+          kept++;
+          continue;
+        }
+        for (int sample = 0; sample < OcclusionCullerCheck.SAMPLES;
+            sample++) {
+          final float x = OcclusionCullerCheck.sample(sample, 0,
+            _boxes.minX()[box], _boxes.maxX()[box]);
+          final float y = OcclusionCullerCheck.sample(sample, 1,
+            _boxes.minY()[box], _boxes.maxY()[box]);
+          final float z = OcclusionCullerCheck.sample(sample, 2,
+            _boxes.minZ()[box], _boxes.maxZ()[box]);
+          if (!frustum.testPoint(x, y, z)) {
+            continue;
+          }
+          _rays[0]++;
+          if (!OcclusionCullerCheck.blocked(_boxes, _buildings, box, x, y,
+              z)) {
+            OcclusionCullerCheck.check(OcclusionCullerCheck.nearEdge(_boxes,
+              _buildings, box, x, y, z, yaw),
+              "Box " + box + " culled but visible from the camera");
+            _rays[1]++;
+          }
+        }
+      }
+      OcclusionCullerCheck.check(kept == _visible.size(),
+        "Occlusion culling kept boxes outside the frustum");
+    }
+
+    /**
+     * Tests whether the ray to a point is blocked once the point moves by
+     * up to a depth buffer pixel on screen.
+     *
+     * @param _boxes the boxes
+     * @param _buildings the number of buildings, the boxes that block
+     *     rays
+     * @param _box the box the point belongs to
+     * @param _x the point x
+     * @param _y the point y
+     * @param _z the point z
+     * @param _yaw the camera yaw
+     * @return {@code true} if a neighbouring ray is blocked
+     */
+    private static boolean nearEdge(
+        final BoundingBoxes _boxes,
+        final int _buildings,
+        final int _box,
+        final float _x,
+        final float _y,
+        final float _z,
+        final double _yaw) {
+      final float rightX = (float) Math.cos(_yaw);
+      final float rightZ = (float) Math.sin(_yaw);
+      final float depth = (_x * rightZ) - (_z * rightX);
+      final float pixel = (float) ((2.0 * depth
+        * Math.tan(OcclusionCullerCheck.FIELD_OF_VIEW / 2.0))
+        / OcclusionCuller.DEFAULT_HEIGHT);
+      for (int right = -1; right <= 1; right++) {
+        for (int up = -1; up <= 1; up++) {
+          if (OcclusionCullerCheck.blocked(_boxes, _buildings, _box,
+              _x + (right * pixel * rightX), _y + (up * pixel),
+              _z + (right * pixel * rightZ))) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Gets a coordinate of a ray cast sample of a box.
+     *
+     * @param _sample the sample, a corner or, past them, the centre
+     * @param _axis the axis
+     * @param _min the box minimum along the axis
+     * @param _max the box maximum along the axis
+     * @return the coordinate
+     */
+    private static float sample(
+        final int _sample,
+        final int _axis,
+        final float _min,
+        final float _max) {
+      if (_sample == (OcclusionCullerCheck.SAMPLES - 1)) {
+        return (_min + _max) * 0.5F;
+      }
+      return (((_sample >> _axis) & 1) == 0) ? _min : _max;
+    }
+
+    /**
+     * Tests whether the ray from the camera to a point hits a building
+     * other than the box itself.
+     *
+     * @param _boxes the boxes
+     * @param _buildings the number of buildings, the boxes that block
+     *     rays
+     * @param _box the box the point belongs to
+     * @param _x the point x
+     * @param _y the point y
+     * @param _z the point z
+     * @return {@code true} if a building hides the point
+     */
+    private static boolean blocked(
+        final BoundingBoxes _boxes,
+        final int _buildings,
+        final int _box,
+        final float _x,
+        final float _y,
+        final float _z) {
+      final float dirY = _y - OcclusionCullerCheck.EYE_HEIGHT;
+      for (int building = 0; building < _buildings; building++) {
+        if (building == _box) {
+          continue;
+        }
+        float near = 0F;
+        float far = OcclusionCullerCheck.RAY_END;
+        final float[] slabs = {
+          _boxes.minX()[building], _boxes.maxX()[building], _x, 0F,
+          _boxes.minY()[building], _boxes.maxY()[building], dirY,
+          OcclusionCullerCheck.EYE_HEIGHT,
+          _boxes.minZ()[building], _boxes.maxZ()[building], _z, 0F,
+        };
+        for (int slab = 0; (slab < slabs.length) && (near <= far);
+            slab += 4) {
+          final float direction = slabs[slab + 2];
+          final float origin = slabs[slab + 3];
+          if (direction == 0F) {
+            if ((origin < slabs[slab]) || (origin > slabs[slab + 1])) {
+              far = -1F;
+            }
+            continue;
+          }
+          final float t0 = (slabs[slab] - origin) / direction;
+          final float t1 = (slabs[slab + 1] - origin) / direction;
+          near = Math.max(near, Math.min(t0, t1));
+          far = Math.min(far, Math.max(t0, t1));
+        }
+        if (near <= far) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Times the frames as the camera turns and reports the culled ratio.
+     *
+     * @param _frustum the frustum culler
+     * @param _occlusion the occlusion culler
+     * @param _boxes the boxes
+     * @param _buildings the number of buildings
+     * @param _viewProjection the camera matrix
+     * @param _visible the list receiving the visible boxes
+     */
+    private static void measure(
+        final FrustumCuller _frustum,
+        final OcclusionCuller _occlusion,
+        final BoundingBoxes _boxes,
+        final int _buildings,
+        final Matrix4f _viewProjection,
+        final IntList _visible) {
+      for (int frame = 0; frame < OcclusionCullerCheck.WARM_FRAMES;
+          frame++) {
+        OcclusionCullerCheck.camera(frame, _viewProjection);
+        OcclusionCullerCheck.frame(_frustum, _occlusion, _boxes, _buildings,
+          _viewProjection, _visible);
+      }
+      final long[] frustumNanos = new long[OcclusionCullerCheck.RUNS];
+      final long[] rasterNanos = new long[OcclusionCullerCheck.RUNS];
+      final long[] testNanos = new long[OcclusionCullerCheck.RUNS];
+      long tested = 0L;
+      long culled = 0L;
+      int triangles = 0;
+      for (int run = 0; run < OcclusionCullerCheck.RUNS; run++) {
+        OcclusionCullerCheck.camera(run, _viewProjection);
+        OcclusionCullerCheck.frame(_frustum, _occlusion, _boxes, _buildings,
+          _viewProjection, _visible);
+        frustumNanos[run] = _frustum.elapsedNanos();
+        rasterNanos[run] = _occlusion.rasterNanos();
+        testNanos[run] = _occlusion.testNanos();
+        tested += _occlusion.tested();
+        culled += _occlusion.culled();
+        triangles = Math.max(triangles, _occlusion.triangleCount());
+      }
+      OcclusionCullerCheck.check(culled > 0L, "Nothing was occluded");
+      System.out.printf("%d boxes, %d buildings: %.1f%% of the %d frustum"
+        + " visible boxes per frame occluded; up to %d occluder triangles"
+        + "%n", _boxes.size(), _buildings, (100.0 * culled) / tested,
+        tested / OcclusionCullerCheck.RUNS, triangles);
+      System.out.printf("per frame: frustum %.3f ms, rasterize %.3f ms,"
+        + " occlusion test %.3f ms (%dx%d depth buffer, vector %s)%n",
+        OcclusionCullerCheck.median(frustumNanos),
+        OcclusionCullerCheck.median(rasterNanos),
+        OcclusionCullerCheck.median(testNanos), _occlusion.width(),
+        _occlusion.height(), _occlusion.vector());
+    }
+
+    /**
+     * Gets the median of measured times.
+     *
+     * @param _nanos the times in nanoseconds, sorted in place
+     * @return the median in milliseconds
+     */
+    private static double median(
+        final long[] _nanos) {
+      Arrays.sort(_nanos);
+      return _nanos[_nanos.length / 2] / 1.0E6;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
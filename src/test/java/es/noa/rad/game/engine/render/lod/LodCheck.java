@@ -0,0 +1,500 @@
+package es.noa.rad.game.engine.render.lod;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import org.joml.Intersectionf;
+import org.joml.Vector3f;
+
+  /**
+   * Checks the error of the levels built by the {@link MeshSimplifier} and
+   * the levels picked by the {@link LodSelector}.
+   *
+   * <p>A tessellated unit sphere is simplified into a
+   * {@link LodChain}. Every level must keep clearly fewer triangles than
+   * the previous one, reference only original vertices, contain no
+   * degenerate or flipped triangle, and stay close to the sphere: the
+   * largest distance between its triangles and the true surface, relative
+   * to the radius of the mesh bounds and beyond that of level 0, must not
+   * exceed twice the error the chain records for it. The quadric error is
+   * measured at the kept vertices, which lie on the sphere, while the
+   * faces deviate most in their interior.
+   *
+   * <p>Spheres are then placed at growing distances from the camera:
+   * every fresh selection must be the coarsest level whose
+   * projected error stays within the pixel tolerance, and the level must
+   * never get finer as the distance grows. An object hovering around a
+   * level boundary must switch once with the hysteresis, while it switches
+   * every frame without it. Finally the selection of a hundred thousand
+   * objects is timed and must allocate nothing.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class LodCheck {
+
+    /**
+     * Segments of the sphere around its axis.
+     */
+    private static final int SEGMENTS = 64;
+
+    /**
+     * Rings of the sphere from pole to pole.
+     */
+    private static final int RINGS = 32;
+
+    /**
+     * Maximum levels of the chain.
+     */
+    private static final int LEVELS = 6;
+
+    /**
+     * Target index count ratio between levels.
+     */
+    private static final float REDUCTION = 0.5F;
+
+    /**
+     * Fraction of the previous triangle count a level must fall below, as
+     * required by the chain.
+     */
+    private static final float MIN_REDUCTION = 0.95F;
+
+    /**
+     * Maximum relative error of a collapse.
+     */
+    private static final float MAX_ERROR = 0.25F;
+
+    /**
+     * Factor the measured deviation of a level may exceed its recorded
+     * error by.
+     */
+    private static final float ERROR_FACTOR = 2F;
+
+    /**
+     * Tolerated error in pixels.
+     */
+    private static final float PIXEL_ERROR = 1F;
+
+    /**
+     * Hysteresis of the selector.
+     */
+    private static final float HYSTERESIS = 0.25F;
+
+    /**
+     * Vertical field of view of the camera.
+     */
+    private static final float FOV_Y = (float) Math.toRadians(60.0);
+
+    /**
+     * Viewport height in pixels.
+     */
+    private static final int VIEWPORT_HEIGHT = 1080;
+
+    /**
+     * Objects selected per timed frame.
+     */
+    private static final int OBJECTS = 100_000;
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 100;
+
+    /**
+     * Frames timed; the median is reported.
+     */
+    private static final int RUNS = 101;
+
+    /**
+     * Not instantiable.
+     */
+    private LodCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final float[] positions = LodCheck.spherePositions();
+      final int[] indices = LodCheck.sphereIndices();
+      final long start = System.nanoTime();
+      final LodChain chain = LodChain.build(new MeshSimplifier(), positions,
+        indices, LodCheck.LEVELS, LodCheck.REDUCTION, LodCheck.MAX_ERROR);
+      final double buildMs = (System.nanoTime() - start) / 1.0E6;
+      System.out.printf("%d levels built in %.1f ms%n", chain.levelCount(),
+        buildMs);
+      LodCheck.check(chain.levelCount() > 2,
+        "Only " + chain.levelCount() + " levels built");
+      LodCheck.checkLevels(chain, positions);
+      LodCheck.checkSelection(chain);
+      LodCheck.checkHysteresis(chain);
+      LodCheck.measure(chain);
+      System.out.println("LodCheck passed");
+    }
+
+    /**
+     * Checks the triangles and the error of every level.
+     *
+     * @param _chain the chain
+     * @param _positions the vertex positions
+     */
+    private static void checkLevels(
+        final LodChain _chain,
+        final float[] _positions) {
+      final int vertexCount = _positions.length / 3;
+      /* The bounds of a unit sphere span two units per axis. */
+      final float boundsRadius = (float) Math.sqrt(3.0);
+      final float baseDeviation =
+        LodCheck.deviation(_chain.indices(0), _positions) / boundsRadius;
+      final Vector3f a = new Vector3f();
+      final Vector3f b = new Vector3f();
+      final Vector3f c = new Vector3f();
+      final Vector3f normal = new Vector3f();
+      for (int level = 0; level < _chain.levelCount(); level++) {
+        final int[] levelIndices = _chain.indices(level);
+        if (level > 0) {
+          LodCheck.check(
+            _chain.triangleCount(level) <= (_chain.triangleCount(level - 1)
+              * LodCheck.MIN_REDUCTION),
+            "Level " + level + " does not reduce the previous one");
+          LodCheck.check(_chain.error(level) >= _chain.error(level - 1),
+            "Level " + level + " has a smaller error than the previous one");
+        }
+        for (int triangle = 0; triangle < levelIndices.length;
+            triangle += 3) {
+          for (int corner = 0; corner < 3; corner++) {
+            final int vertex = levelIndices[triangle + corner];
+            LodCheck.check((vertex >= 0) && (vertex < vertexCount),
+              "Level " + level + " references vertex " + vertex);
+          }
+          LodCheck.corner(_positions, levelIndices[triangle], a);
+          LodCheck.corner(_positions, levelIndices[triangle + 1], b);
+          LodCheck.corner(_positions, levelIndices[triangle + 2], c);
+          LodCheck.normal(a, b, c, normal);
+          /* On a sphere around the origin every face points outwards. */
+          LodCheck.check((normal.lengthSquared() > 0F)
+            && (normal.dot(a.add(b).add(c)) > 0F),
+            "Level " + level + " has a degenerate or flipped triangle "
+              + (triangle / 3));
+        }
+        final float deviation =
+          LodCheck.deviation(levelIndices, _positions) / boundsRadius;
+        System.out.printf("level %d: %5d triangles, recorded error %.5f,"
+          + " measured deviation %.5f (%.5f beyond level 0)%n", level,
+          _chain.triangleCount(level), _chain.error(level), deviation,
+          deviation - baseDeviation);
+        /* Level 0 is the reference: its own tessellation error is kept. */
+        LodCheck.check((deviation - baseDeviation)
+            <= (_chain.error(level) * LodCheck.ERROR_FACTOR),
+          "Level " + level + " deviates " + deviation + " from the sphere,"
+            + " more than its recorded error " + _chain.error(level));
+      }
+    }
+
+    /**
+     * Checks fresh selections at growing distances.
+     *
+     * @param _chain the chain
+     */
+    private static void checkSelection(
+        final LodChain _chain) {
+      final LodSelector selector = new LodSelector(
+        LodCheck.PIXEL_ERROR, LodCheck.HYSTERESIS, 0F);
+      selector.camera(new Vector3f(), LodCheck.FOV_Y,
+        LodCheck.VIEWPORT_HEIGHT);
+      final float[] firstDistance = new float[_chain.levelCount()];
+      Arrays.fill(firstDistance, -1F);
+      int previous = 0;
+      for (float distance = 1.01F; distance <= 1000F; distance *= 1.001F) {
+        selector.forget(0);
+        final int level = selector.select(0, 0F, 0F, -distance, 1F, _chain);
+        final float radius = selector.screenRadius(0F, 0F, -distance, 1F);
+        LodCheck.check(
+          (level == 0)
+            || ((_chain.error(level) * radius) <= LodCheck.PIXEL_ERROR),
+          "Level " + level + " too coarse at distance " + distance);
+        LodCheck.check((level == (_chain.levelCount() - 1))
+            || ((_chain.error(level + 1) * radius) > LodCheck.PIXEL_ERROR),
+          "Level " + level + " too fine at distance " + distance);
+        LodCheck.check(level >= previous,
+          "Level " + level + " finer than " + previous + " at distance "
+            + distance);
+        if (firstDistance[level] < 0F) {
+          firstDistance[level] = distance;
+        }
+        previous = level;
+      }
+      System.out.println("first distance of every level: "
+        + Arrays.toString(firstDistance));
+      LodCheck.check(previous == (_chain.levelCount() - 1),
+        "The coarsest level is never selected");
+    }
+
+    /**
+     * Checks that an object hovering around a level boundary switches
+     * once with the hysteresis and every frame without it.
+     *
+     * @param _chain the chain
+     */
+    private static void checkHysteresis(
+        final LodChain _chain) {
+      final int damped = LodCheck.hover(_chain, LodCheck.HYSTERESIS);
+      final int undamped = LodCheck.hover(_chain, 0F);
+      System.out.printf("hovering around the first boundary for 1000"
+        + " frames: %d switches with hysteresis, %d without%n", damped,
+        undamped);
+      LodCheck.check(damped == 1,
+        damped + " switches around the boundary with hysteresis");
+      LodCheck.check(undamped == 999,
+        undamped + " switches around the boundary without hysteresis");
+    }
+
+    /**
+     * Moves an object back and forth across the distance at which level 1
+     * reaches the tolerance, starting on its coarse side.
+     *
+     * @param _chain the chain
+     * @param _hysteresis the hysteresis of the selector
+     * @return the number of level changes
+     */
+    private static int hover(
+        final LodChain _chain,
+        final float _hysteresis) {
+      final LodSelector selector = new LodSelector(
+        LodCheck.PIXEL_ERROR, _hysteresis, 0F);
+      selector.camera(new Vector3f(), LodCheck.FOV_Y,
+        LodCheck.VIEWPORT_HEIGHT);
+      final float boundary = (_chain.error(1)
+        * selector.screenRadius(0F, 0F, -2F, 1F) * 2F) / LodCheck.PIXEL_ERROR;
+      selector.resetStatistics();
+      for (int frame = 0; frame < 1000; frame++) {
+        final float wobble = ((frame % 2) == 0) ? 1.02F : 0.99F;
+        final int level = selector.select(0, 0F, 0F, -boundary * wobble, 1F,
+          _chain);
+        LodCheck.check((frame > 0) || (level == 1),
+          "Level " + level + " past the boundary");
+      }
+      return selector.switches();
+    }
+
+    /**
+     * Times the selection of many objects.
+     *
+     * @param _chain the chain
+     */
+    private static void measure(
+        final LodChain _chain) {
+      final LodSelector selector = new LodSelector(
+        LodCheck.PIXEL_ERROR, LodCheck.HYSTERESIS, 0F);
+      selector.camera(new Vector3f(), LodCheck.FOV_Y,
+        LodCheck.VIEWPORT_HEIGHT);
+      final Random random = new Random(35);
+      final float[] centers = new float[LodCheck.OBJECTS * 3];
+      for (int index = 0; index < centers.length; index++) {
+        centers[index] = (random.nextFloat() * 2F - 1F) * 60F;
+      }
+      final int[] histogram = new int[_chain.levelCount()];
+      for (int frame = 0; frame < LodCheck.WARM_FRAMES; frame++) {
+        LodCheck.frame(selector, _chain, centers, histogram);
+      }
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long[] nanos = new long[LodCheck.RUNS];
+      threads.getThreadAllocatedBytes(thread);
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int run = 0; run < LodCheck.RUNS; run++) {
+        final long start = System.nanoTime();
+        LodCheck.frame(selector, _chain, centers, histogram);
+        nanos[run] = System.nanoTime() - start;
+      }
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      LodCheck.check(allocated == 0L,
+        "Selection allocated " + allocated + " bytes");
+      Arrays.fill(histogram, 0);
+      LodCheck.frame(selector, _chain, centers, histogram);
+      Arrays.sort(nanos);
+      final double millis = nanos[nanos.length / 2] / 1.0E6;
+      System.out.printf("%d objects selected in %.3f ms (%.1f ns each),"
+        + " objects per level %s%n", LodCheck.OBJECTS, millis,
+        (millis * 1.0E6) / LodCheck.OBJECTS, Arrays.toString(histogram));
+    }
+
+    /**
+     * Selects the level of every object.
+     *
+     * @param _selector the selector
+     * @param _chain the chain shared by every object
+     * @param _centers the object centers
+     * @param _histogram the number of objects per level, incremented
+     */
+    private static void frame(
+        final LodSelector _selector,
+        final LodChain _chain,
+        final float[] _centers,
+        final int[] _histogram) {
+      _selector.resetStatistics();
+      for (int object = 0; object < LodCheck.OBJECTS; object++) {
+        final int offset = object * 3;
+        _histogram[_selector.select(object, _centers[offset],
+          _centers[offset + 1], _centers[offset + 2], 1F, _chain)]++;
+      }
+    }
+
+    /**
+     * Computes the largest distance between the triangles of a mesh whose
+     * vertices lie on the unit sphere and the sphere.
+     *
+     * @param _indices the triangle indices
+     * @param _positions the vertex positions
+     * @return the distance from the sphere of the triangle point closest
+     *     to its center
+     */
+    private static float deviation(
+        final int[] _indices,
+        final float[] _positions) {
+      final Vector3f a = new Vector3f();
+      final Vector3f b = new Vector3f();
+      final Vector3f c = new Vector3f();
+      final Vector3f closest = new Vector3f();
+      float deviation = 0F;
+      for (int triangle = 0; triangle < _indices.length; triangle += 3) {
+        LodCheck.corner(_positions, _indices[triangle], a);
+        LodCheck.corner(_positions, _indices[triangle + 1], b);
+        LodCheck.corner(_positions, _indices[triangle + 2], c);
+        Intersectionf.findClosestPointOnTriangle(
+          a, b, c, new Vector3f(), closest);
+        deviation = Math.max(deviation, 1F - closest.length());
+      }
+      return deviation;
+    }
+
+    /**
+     * Builds the vertices of the sphere: the two poles, then every ring.
+     *
+     * @return the positions, three floats per vertex
+     */
+    private static float[] spherePositions() {
+      final float[] positions = new float[(2 + ((LodCheck.RINGS - 1)
+        * LodCheck.SEGMENTS)) * 3];
+      positions[1] = 1F;
+      positions[4] = -1F;
+      int cursor = 6;
+      for (int ring = 1; ring < LodCheck.RINGS; ring++) {
+        final double polar = (Math.PI * ring) / LodCheck.RINGS;
+        for (int segment = 0; segment < LodCheck.SEGMENTS; segment++) {
+          final double azimuth = (2.0 * Math.PI * segment) / LodCheck.SEGMENTS;
+          positions[cursor++] = (float) (Math.sin(polar) * Math.cos(azimuth));
+          positions[cursor++] = (float) Math.cos(polar);
+          positions[cursor++] = (float) (Math.sin(polar) * Math.sin(azimuth));
+        }
+      }
+      return positions;
+    }
+
+    /**
+     * Builds the closed, outward facing triangles of the sphere.
+     *
+     * @return the triangle indices
+     */
+    private static int[] sphereIndices() {
+      final int segments = LodCheck.SEGMENTS;
+      final int[] indices =
+        new int[2 * segments * (LodCheck.RINGS - 1) * 3];
+      int cursor = 0;
+      for (int segment = 0; segment < segments; segment++) {
+        final int next = (segment + 1) % segments;
+        indices[cursor++] = 0;
+        indices[cursor++] = LodCheck.vertex(1, next);
+        indices[cursor++] = LodCheck.vertex(1, segment);
+        final int last = LodCheck.RINGS - 1;
+        indices[cursor++] = 1;
+        indices[cursor++] = LodCheck.vertex(last, segment);
+        indices[cursor++] = LodCheck.vertex(last, next);
+      }
+      for (int ring = 1; ring < (LodCheck.RINGS - 1); ring++) {
+        for (int segment = 0; segment < segments; segment++) {
+          final int next = (segment + 1) % segments;
+          indices[cursor++] = LodCheck.vertex(ring, segment);
+          indices[cursor++] = LodCheck.vertex(ring, next);
+          indices[cursor++] = LodCheck.vertex(ring + 1, segment);
+          indices[cursor++] = LodCheck.vertex(ring, next);
+          indices[cursor++] = LodCheck.vertex(ring + 1, next);
+          indices[cursor++] = LodCheck.vertex(ring + 1, segment);
+        }
+      }
+      return indices;
+    }
+
+    /**
+     * Gets the vertex of a ring and segment of the sphere.
+     *
+     * @param _ring the ring, from 1
+     * @param _segment the segment
+     * @return the vertex index
+     */
+    private static int vertex(
+        final int _ring,
+        final int _segment) {
+      return 2 + ((_ring - 1) * LodCheck.SEGMENTS) + _segment;
+    }
+
+    /**
+     * Reads a vertex position.
+     *
+     * @param _positions the vertex positions
+     * @param _vertex the vertex
+     * @param _dest the destination
+     */
+    private static void corner(
+        final float[] _positions,
+        final int _vertex,
+        final Vector3f _dest) {
+      _dest.set(_positions[_vertex * 3], _positions[(_vertex * 3) + 1],
+        _positions[(_vertex * 3) + 2]);
+    }
+
+    /**
+     * Computes the unnormalized normal of a triangle.
+     *
+     * @param _a the first corner
+     * @param _b the second corner
+     * @param _c the third corner
+     * @param _dest the destination
+     */
+    private static void normal(
+        final Vector3f _a,
+        final Vector3f _b,
+        final Vector3f _c,
+        final Vector3f _dest) {
+      final float abX = _b.x - _a.x;
+      final float abY = _b.y - _a.y;
+      final float abZ = _b.z - _a.z;
+      final float acX = _c.x - _a.x;
+      final float acY = _c.y - _a.y;
+      final float acZ = _c.z - _a.z;
+      _dest.set((abY * acZ) - (abZ * acY), (abZ * acX) - (abX * acZ),
+        (abX * acY) - (abY * acX));
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
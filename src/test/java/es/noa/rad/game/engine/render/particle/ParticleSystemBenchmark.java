@@ -0,0 +1,241 @@
+package es.noa.rad.game.engine.render.particle;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.render.RecordingRenderBackend;
+import es.noa.rad.game.engine.render.RenderQueue;
+import es.noa.rad.game.engine.render.VertexFormat;
+import es.noa.rad.game.engine.util.VectorSupport;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+  /**
+   * Compares the update strategies of the {@link ParticleSystem} on a
+   * million particles.
+   *
+   * <p>For every {@link ParticleMode} but {@code AUTO}, a full system is
+   * run through the same frames: the expired particles are replaced by new
+   * ones from the same random sequence, the system is updated and its
+   * quads flushed to a {@link RecordingRenderBackend}. Every strategy must
+   * end with exactly the same particles, bit for bit, and write exactly
+   * the same vertices as the scalar one. The single-threaded strategies
+   * must allocate nothing; the parallel ones allocate only inside the
+   * fork-join pool while the calling thread waits for it, which is
+   * reported. The median update and flush times are reported with the
+   * particles updated per second.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class ParticleSystemBenchmark {
+
+    /**
+     * Live particles.
+     */
+    private static final int PARTICLES = 1_000_000;
+
+    /**
+     * Frames run to warm up the compiler.
+     */
+    private static final int WARM_FRAMES = 30;
+
+    /**
+     * Frames timed; the median is reported.
+     */
+    private static final int FRAMES = 51;
+
+    /**
+     * Elapsed time of a frame in seconds.
+     */
+    private static final float DELTA_TIME = 1F / 60F;
+
+    /**
+     * Strategies compared, the scalar reference first.
+     */
+    private static final ParticleMode[] MODES = {ParticleMode.SCALAR,
+      ParticleMode.VECTOR, ParticleMode.PARALLEL,
+      ParticleMode.PARALLEL_VECTOR};
+
+    /**
+     * Not instantiable.
+     */
+    private ParticleSystemBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      System.out.printf("%d particles, Vector API %s, %d cores%n",
+        ParticleSystemBenchmark.PARTICLES,
+        VectorSupport.available() ? "available" : "not available",
+        Runtime.getRuntime().availableProcessors());
+      float[][] reference = null;
+      double scalarMillis = 0.0;
+      for (final ParticleMode mode : ParticleSystemBenchmark.MODES) {
+        final ParticleSystem system =
+          new ParticleSystem(ParticleSystemBenchmark.PARTICLES, 0);
+        final RenderQueue queue = new RenderQueue(16);
+        final RecordingRenderBackend backend = new RecordingRenderBackend();
+        try {
+          final double[] results =
+            ParticleSystemBenchmark.run(system, queue, backend, mode);
+          final float[][] state =
+            ParticleSystemBenchmark.state(system, backend);
+          if (reference == null) {
+            reference = state;
+            scalarMillis = results[0];
+          } else {
+            for (int array = 0; array < state.length; array++) {
+              ParticleSystemBenchmark.check(
+                Arrays.equals(state[array], reference[array]),
+                mode + " differs from " + ParticleMode.SCALAR + " in array "
+                  + array);
+            }
+          }
+          System.out.printf("%-15s update %6.2f ms (%5.1f M/s, %.1fx),"
+            + " flush %6.2f ms, %.0f bytes per frame%n", mode, results[0],
+            ParticleSystemBenchmark.PARTICLES / (results[0] * 1.0E3),
+            scalarMillis / results[0], results[1], results[2]);
+        } finally {
+          backend.close();
+          queue.close();
+          system.close();
+        }
+      }
+      System.out.println("ParticleSystemBenchmark passed");
+    }
+
+    /**
+     * Runs the frames of a strategy.
+     *
+     * @param _system the particle system
+     * @param _queue the queue receiving the draw
+     * @param _backend the recording backend
+     * @param _mode the strategy
+     * @return the median update and flush times in milliseconds, and the
+     *     bytes allocated per frame by the calling thread
+     */
+    private static double[] run(
+        final ParticleSystem _system,
+        final RenderQueue _queue,
+        final RecordingRenderBackend _backend,
+        final ParticleMode _mode) {
+      final Random random = new Random(46);
+      final Matrix4f view = new Matrix4f().lookAt(0F, 5F, 20F,
+        0F, 0F, 0F, 0F, 1F, 0F);
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long[] update = new long[ParticleSystemBenchmark.FRAMES];
+      final long[] flush = new long[ParticleSystemBenchmark.FRAMES];
+      _system.gravity(0F, -9.81F, 0F);
+      _system.drag(0.1F);
+      long allocated = 0L;
+      long expired = 0L;
+      for (int frame = -ParticleSystemBenchmark.WARM_FRAMES;
+          frame < ParticleSystemBenchmark.FRAMES; frame++) {
+        ParticleSystemBenchmark.refill(_system, random);
+        threads.getThreadAllocatedBytes(thread);
+        final long before = threads.getThreadAllocatedBytes(thread);
+        _system.update(ParticleSystemBenchmark.DELTA_TIME, _mode);
+        final long start = System.nanoTime();
+        _system.flush(_queue, view, _mode);
+        final long flushNanos = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes(thread) - before;
+        _queue.submit(_backend);
+        if (frame >= 0) {
+          update[frame] = _system.elapsedNanos();
+          flush[frame] = flushNanos;
+          allocated += bytes;
+          expired += _system.expired();
+        }
+      }
+      final boolean parallel = (_mode == ParticleMode.PARALLEL)
+        || (_mode == ParticleMode.PARALLEL_VECTOR);
+      ParticleSystemBenchmark.check(parallel || (allocated == 0L),
+        _mode + " allocated " + allocated + " bytes");
+      ParticleSystemBenchmark.check(expired > 0L,
+        _mode + ": no particle expired");
+      ParticleSystemBenchmark.check((_backend.commandCount() == 1)
+        && (_backend.vertexCount(0) == (_system.size()
+          * ParticleSystem.VERTICES_PER_PARTICLE)),
+        _mode + " submitted " + _backend.commandCount() + " draws");
+      Arrays.sort(update);
+      Arrays.sort(flush);
+      return new double[] {update[update.length / 2] / 1.0E6,
+        flush[flush.length / 2] / 1.0E6,
+        ((double) allocated) / ParticleSystemBenchmark.FRAMES};
+    }
+
+    /**
+     * Emits particles until the system is full, with random lifetimes,
+     * sizes and colors.
+     *
+     * @param _system the particle system
+     * @param _random the random source
+     */
+    private static void refill(
+        final ParticleSystem _system,
+        final Random _random) {
+      while (_system.size() < _system.capacity()) {
+        _system.lifetime(0.25F + (_random.nextFloat() * 2F));
+        _system.particleSize(0.05F + (_random.nextFloat() * 0.1F));
+        _system.color(_random.nextInt() | 0xFF000000);
+        _system.emit((_random.nextFloat() - 0.5F) * 10F, 0F,
+          (_random.nextFloat() - 0.5F) * 10F,
+          (_random.nextFloat() - 0.5F) * 4F, 4F + (_random.nextFloat() * 6F),
+          (_random.nextFloat() - 0.5F) * 4F);
+      }
+    }
+
+    /**
+     * Copies the state of the live particles and the vertices of the last
+     * flush.
+     *
+     * @param _system the particle system
+     * @param _backend the backend that recorded the flush
+     * @return the positions, velocities, lives and vertices
+     */
+    private static float[][] state(
+        final ParticleSystem _system,
+        final RecordingRenderBackend _backend) {
+      final int count = _system.size();
+      final int floats = (_backend.vertexCount(0)
+        * VertexFormat.POSITION_TEXCOORD_COLOR.stride()) / Float.BYTES;
+      final float[] vertices = new float[floats];
+      MemoryUtil.memFloatBuffer(_backend.vertexAddress(0), floats)
+        .get(vertices);
+      return new float[][] {
+        Arrays.copyOf(_system.positionX(), count),
+        Arrays.copyOf(_system.positionY(), count),
+        Arrays.copyOf(_system.positionZ(), count),
+        Arrays.copyOf(_system.velocityX(), count),
+        Arrays.copyOf(_system.velocityY(), count),
+        Arrays.copyOf(_system.velocityZ(), count),
+        Arrays.copyOf(_system.lives(), count),
+        vertices};
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
@@ -0,0 +1,378 @@
+package es.noa.rad.game.engine.scene;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.memory.HandlePool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+
+  /**
+   * Measures the dirty-flag updates of the {@link SceneGraph} against a
+   * naive hierarchy.
+   *
+   * <p>A million nodes under a thousand roots are mirrored by a naive
+   * hierarchy of objects holding JOML vectors and matrices, which
+   * recomputes every world matrix recursively from the roots. Every tick
+   * the local transform of five percent of the nodes changes in both. The
+   * graph must recompute exactly the nodes with a changed ancestor or
+   * self, nothing on a tick without changes, and every world matrix must
+   * match the naive one. Nodes are then re-parented and subtrees destroyed
+   * in both, and the graph must still match. The update times of both are
+   * reported.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class SceneGraphBenchmark {
+
+    /**
+     * Nodes of the hierarchy.
+     */
+    private static final int NODES = 1_000_000;
+
+    /**
+     * Nodes without a parent; they come first.
+     */
+    private static final int ROOTS = 1000;
+
+    /**
+     * Share of the nodes changed per tick.
+     */
+    private static final float CHANGED = 0.05F;
+
+    /**
+     * Ticks run to warm up the compiler.
+     */
+    private static final int WARM_TICKS = 5;
+
+    /**
+     * Ticks timed; the median is reported.
+     */
+    private static final int TICKS = 21;
+
+    /**
+     * Nodes re-parented, and subtrees destroyed, by the structural step.
+     */
+    private static final int STRUCTURAL = 1000;
+
+    /**
+     * Largest difference accepted between a world matrix element of the
+     * graph and of the naive hierarchy.
+     */
+    private static final float TOLERANCE = 1.0E-3F;
+
+    /**
+     * Not instantiable.
+     */
+    private SceneGraphBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final Random random = new Random(40);
+      final SceneGraph graph = new SceneGraph(SceneGraphBenchmark.NODES);
+      final int[] handles = new int[SceneGraphBenchmark.NODES];
+      final int[] parents = new int[SceneGraphBenchmark.NODES];
+      final Node[] nodes = new Node[SceneGraphBenchmark.NODES];
+      final List<Node> roots = new ArrayList<>(SceneGraphBenchmark.ROOTS);
+      for (int node = 0; node < SceneGraphBenchmark.NODES; node++) {
+        nodes[node] = new Node();
+        if (node < SceneGraphBenchmark.ROOTS) {
+          parents[node] = -1;
+          handles[node] = graph.create(HandlePool.INVALID_HANDLE);
+          roots.add(nodes[node]);
+        } else {
+          /* Parents between an eighth and a quarter of the index. */
+          final int low = (node - 1) / 8;
+          parents[node] = low + random.nextInt(((node - 1) / 4) - low + 1);
+          handles[node] = graph.create(handles[parents[node]]);
+          nodes[parents[node]].children.add(nodes[node]);
+        }
+        SceneGraphBenchmark.change(graph, handles, nodes, node, random);
+      }
+      graph.update();
+      SceneGraphBenchmark.naiveUpdate(roots);
+      SceneGraphBenchmark.compare(graph, handles, nodes, null);
+      graph.update();
+      SceneGraphBenchmark.check(graph.updatedCount() == 0,
+        "A tick without changes updated " + graph.updatedCount() + " nodes");
+      System.out.printf("%d nodes under %d roots in %d levels%n",
+        graph.size(), SceneGraphBenchmark.ROOTS, graph.levelCount());
+
+      final boolean[] changed = new boolean[SceneGraphBenchmark.NODES];
+      final long[] graphNanos = new long[SceneGraphBenchmark.TICKS];
+      final long[] naiveNanos = new long[SceneGraphBenchmark.TICKS];
+      long updated = 0L;
+      for (int tick = -SceneGraphBenchmark.WARM_TICKS;
+          tick < SceneGraphBenchmark.TICKS; tick++) {
+        Arrays.fill(changed, false);
+        for (int change = 0;
+            change < (SceneGraphBenchmark.NODES * SceneGraphBenchmark.CHANGED);
+            change++) {
+          final int node = random.nextInt(SceneGraphBenchmark.NODES);
+          changed[node] = true;
+          SceneGraphBenchmark.change(graph, handles, nodes, node, random);
+        }
+        graph.update();
+        final long start = System.nanoTime();
+        SceneGraphBenchmark.naiveUpdate(roots);
+        final long naive = System.nanoTime() - start;
+        final int expected = SceneGraphBenchmark.affected(parents, changed);
+        SceneGraphBenchmark.check(graph.updatedCount() == expected,
+          "Tick " + tick + " updated " + graph.updatedCount()
+            + " nodes instead of " + expected);
+        if (tick >= 0) {
+          graphNanos[tick] = graph.updateNanos();
+          naiveNanos[tick] = naive;
+          updated += expected;
+        }
+      }
+      SceneGraphBenchmark.compare(graph, handles, nodes, null);
+      Arrays.sort(graphNanos);
+      Arrays.sort(naiveNanos);
+      System.out.printf("%.0f%% of the nodes changed per tick, %.1f%%"
+        + " recomputed: graph %.2f ms, naive recursion %.2f ms (%.1fx) on"
+        + " %d cores%n", SceneGraphBenchmark.CHANGED * 100F,
+        (updated * 100.0) / (SceneGraphBenchmark.NODES
+          * (double) SceneGraphBenchmark.TICKS),
+        graphNanos[graphNanos.length / 2] / 1.0E6,
+        naiveNanos[naiveNanos.length / 2] / 1.0E6,
+        ((double) naiveNanos[naiveNanos.length / 2])
+          / graphNanos[graphNanos.length / 2],
+        Runtime.getRuntime().availableProcessors());
+
+      final boolean[] dead = SceneGraphBenchmark.restructure(graph, handles,
+        parents, nodes, random);
+      graph.update();
+      SceneGraphBenchmark.naiveUpdate(roots);
+      SceneGraphBenchmark.compare(graph, handles, nodes, dead);
+      System.out.printf("after re-parenting and destroying: %d nodes,"
+        + " update with reorder %.2f ms%n", graph.size(),
+        graph.updateNanos() / 1.0E6);
+      System.out.println("SceneGraphBenchmark passed");
+    }
+
+    /**
+     * Gives a node a random local transform in the graph and the naive
+     * hierarchy.
+     *
+     * @param _graph the graph
+     * @param _handles the graph handle of every node
+     * @param _nodes the naive nodes
+     * @param _node the node
+     * @param _random the random source
+     */
+    private static void change(
+        final SceneGraph _graph,
+        final int[] _handles,
+        final Node[] _nodes,
+        final int _node,
+        final Random _random) {
+      final Node node = _nodes[_node];
+      node.translation.set((_random.nextFloat() * 4F) - 2F,
+        (_random.nextFloat() * 4F) - 2F, (_random.nextFloat() * 4F) - 2F);
+      node.rotation.rotationXYZ(_random.nextFloat() * 6.28F,
+        _random.nextFloat() * 6.28F, _random.nextFloat() * 6.28F);
+      node.scale.set(0.8F + (_random.nextFloat() * 0.4F),
+        0.8F + (_random.nextFloat() * 0.4F),
+        0.8F + (_random.nextFloat() * 0.4F));
+      _graph.translation(_handles[_node], node.translation.x,
+        node.translation.y, node.translation.z);
+      _graph.rotation(_handles[_node], node.rotation);
+      _graph.scale(_handles[_node], node.scale.x, node.scale.y,
+        node.scale.z);
+    }
+
+    /**
+     * Counts the nodes with a changed ancestor or self.
+     *
+     * @param _parents the parent of every node, always a lower index
+     * @param _changed whether the local transform of every node changed
+     * @return the number of world matrices that must be recomputed
+     */
+    private static int affected(
+        final int[] _parents,
+        final boolean[] _changed) {
+      final boolean[] affected = new boolean[_parents.length];
+      int count = 0;
+      for (int node = 0; node < _parents.length; node++) {
+        affected[node] = _changed[node]
+          || ((_parents[node] >= 0) && affected[_parents[node]]);
+        if (affected[node]) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Re-parents nodes under roots and destroys subtrees, in the graph and
+     * the naive hierarchy.
+     *
+     * @param _graph the graph
+     * @param _handles the graph handle of every node
+     * @param _parents the parent of every node, updated
+     * @param _nodes the naive nodes
+     * @param _random the random source
+     * @return whether every node was destroyed
+     */
+    private static boolean[] restructure(
+        final SceneGraph _graph,
+        final int[] _handles,
+        final int[] _parents,
+        final Node[] _nodes,
+        final Random _random) {
+      final int range = SceneGraphBenchmark.NODES - SceneGraphBenchmark.ROOTS;
+      for (int move = 0; move < SceneGraphBenchmark.STRUCTURAL; move++) {
+        final int node = SceneGraphBenchmark.ROOTS + _random.nextInt(range);
+        final int parent = _random.nextInt(SceneGraphBenchmark.ROOTS);
+        _graph.parent(_handles[node], _handles[parent]);
+        _nodes[_parents[node]].children.remove(_nodes[node]);
+        _nodes[parent].children.add(_nodes[node]);
+        _parents[node] = parent;
+      }
+      final boolean[] destroyed = new boolean[SceneGraphBenchmark.NODES];
+      for (int kill = 0; kill < SceneGraphBenchmark.STRUCTURAL; kill++) {
+        final int node = SceneGraphBenchmark.ROOTS + _random.nextInt(range);
+        if (_graph.isValid(_handles[node])) {
+          _graph.destroy(_handles[node]);
+          _nodes[_parents[node]].children.remove(_nodes[node]);
+          destroyed[node] = true;
+        }
+      }
+      /* Parents keep a lower index, so one pass finds the subtrees. */
+      final boolean[] dead = new boolean[SceneGraphBenchmark.NODES];
+      int live = 0;
+      for (int node = 0; node < SceneGraphBenchmark.NODES; node++) {
+        dead[node] = destroyed[node]
+          || ((_parents[node] >= 0) && dead[_parents[node]]);
+        if (!dead[node]) {
+          live++;
+        }
+      }
+      SceneGraphBenchmark.check(_graph.size() == live,
+        _graph.size() + " nodes left instead of " + live);
+      return dead;
+    }
+
+    /**
+     * Compares every world matrix of the graph with the naive one.
+     *
+     * @param _graph the graph
+     * @param _handles the graph handle of every node
+     * @param _nodes the naive nodes
+     * @param _dead whether every node was destroyed, or null if none was
+     */
+    private static void compare(
+        final SceneGraph _graph,
+        final int[] _handles,
+        final Node[] _nodes,
+        final boolean[] _dead) {
+      final Matrix4f world = new Matrix4f();
+      for (int node = 0; node < _nodes.length; node++) {
+        if ((_dead != null) && _dead[node]) {
+          SceneGraphBenchmark.check(!_graph.isValid(_handles[node]),
+            "Node " + node + " survived the destruction of its subtree");
+          continue;
+        }
+        _graph.world(_handles[node], world);
+        SceneGraphBenchmark.check(
+          world.equals(_nodes[node].world, SceneGraphBenchmark.TOLERANCE),
+          "Node " + node + " has world " + world + " instead of "
+            + _nodes[node].world);
+      }
+    }
+
+    /**
+     * Recomputes every world matrix of the naive hierarchy.
+     *
+     * @param _roots the root nodes
+     */
+    private static void naiveUpdate(
+        final List<Node> _roots) {
+      for (final Node root : _roots) {
+        root.update(null);
+      }
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+    /**
+     * Node of the naive hierarchy.
+     */
+    private static final class Node {
+
+      /**
+       * Local translation.
+       */
+      private final Vector3f translation = new Vector3f();
+
+      /**
+       * Local rotation.
+       */
+      private final Quaternionf rotation = new Quaternionf();
+
+      /**
+       * Local scale.
+       */
+      private final Vector3f scale = new Vector3f(1F);
+
+      /**
+       * Local matrix.
+       */
+      private final Matrix4f local = new Matrix4f();
+
+      /**
+       * World matrix.
+       */
+      private final Matrix4f world = new Matrix4f();
+
+      /**
+       * Child nodes.
+       */
+      private final List<Node> children = new ArrayList<>(4);
+
+      /**
+       * Recomputes the world matrix of the node and of its subtree.
+       *
+       * @param _parent the parent world matrix, null for a root
+       */
+      private void update(
+          final Matrix4f _parent) {
+        this.local.translationRotateScale(
+          this.translation, this.rotation, this.scale);
+        if (_parent == null) {
+          this.world.set(this.local);
+        } else {
+          _parent.mul(this.local, this.world);
+        }
+        for (final Node child : this.children) {
+          child.update(this.world);
+        }
+      }
+
+    }
+
+  }
@@ -0,0 +1,491 @@
+package es.noa.rad.game.engine.spatial;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import es.noa.rad.game.engine.util.IntList;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.primitives.AABBf;
+
+  /**
+   * Churns moving objects through a {@link DynamicAabbTree}.
+   *
+   * <p>Tens of thousands of objects move every frame, bouncing inside a
+   * world box, and a few of them are destroyed and recreated elsewhere.
+   * Every frame the tree answers box queries around random objects and a
+   * frustum query from a turning camera. Every few frames each answer is
+   * compared with a brute force pass over the fat bounds of the live
+   * proxies, which must find exactly the same proxies, and the tree height
+   * must stay logarithmic. The update and query times are reported against
+   * the brute force pass, and the timed frames must allocate nothing.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class DynamicAabbTreeBenchmark {
+
+    /**
+     * Live objects.
+     */
+    private static final int OBJECTS = 20_000;
+
+    /**
+     * Half extent of the world box.
+     */
+    private static final float WORLD = 500F;
+
+    /**
+     * Largest speed of an object along each axis, per frame.
+     */
+    private static final float SPEED = 0.25F;
+
+    /**
+     * Margin of the fat bounds, a few frames of motion.
+     */
+    private static final float MARGIN = 1F;
+
+    /**
+     * Objects destroyed and recreated every frame.
+     */
+    private static final int CHURN = 200;
+
+    /**
+     * Box queries every frame.
+     */
+    private static final int QUERIES = 100;
+
+    /**
+     * Half extent of the query boxes.
+     */
+    private static final float QUERY_EXTENT = 20F;
+
+    /**
+     * Frames run to warm up the compiler and grow the tree.
+     */
+    private static final int WARM_FRAMES = 300;
+
+    /**
+     * Frames timed; the median is reported.
+     */
+    private static final int RUNS = 301;
+
+    /**
+     * Frames between checks against the brute force pass.
+     */
+    private static final int CHECK_PERIOD = 25;
+
+    /**
+     * Largest tree height tolerated, in multiples of the height of a
+     * perfectly balanced tree.
+     */
+    private static final double HEIGHT_FACTOR = 2.0;
+
+    /**
+     * Centre of every object.
+     */
+    private final float[] centres = new float[3 * OBJECTS];
+
+    /**
+     * Velocity of every object.
+     */
+    private final float[] velocities = new float[3 * OBJECTS];
+
+    /**
+     * Half extent of every object.
+     */
+    private final float[] extents = new float[OBJECTS];
+
+    /**
+     * Proxy of every object.
+     */
+    private final int[] proxies = new int[OBJECTS];
+
+    /**
+     * Tree under test.
+     */
+    private final DynamicAabbTree tree = new DynamicAabbTree(
+      DynamicAabbTreeBenchmark.MARGIN, DynamicAabbTree.DEFAULT_CAPACITY);
+
+    /**
+     * Random source of the motion, churn and queries.
+     */
+    private final Random random = new Random(33);
+
+    /**
+     * Camera of the frustum queries.
+     */
+    private final Matrix4f viewProjection = new Matrix4f();
+
+    /**
+     * Frustum of the frustum queries.
+     */
+    private final FrustumIntersection frustum = new FrustumIntersection();
+
+    /**
+     * Proxies found by the tree in the current frame.
+     */
+    private final IntList found = new IntList(OBJECTS);
+
+    /**
+     * Proxies found by the brute force pass.
+     */
+    private final IntList expected = new IntList(OBJECTS);
+
+    /**
+     * Scratch fat bounds of the brute force pass.
+     */
+    private final AABBf fat = new AABBf();
+
+    /**
+     * Proxies reinserted over the timed frames.
+     */
+    private long reinserted;
+
+    /**
+     * Proxies found by the timed queries.
+     */
+    private long hits;
+
+    /**
+     * Not instantiable outside the benchmark.
+     */
+    private DynamicAabbTreeBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      new DynamicAabbTreeBenchmark().run();
+      System.out.println("DynamicAabbTreeBenchmark passed");
+    }
+
+    /**
+     * Creates the objects, checks and times the frames.
+     */
+    private void run() {
+      for (int object = 0; object < DynamicAabbTreeBenchmark.OBJECTS;
+          object++) {
+        this.spawn(object);
+      }
+      for (int frame = 0; frame < DynamicAabbTreeBenchmark.WARM_FRAMES;
+          frame++) {
+        this.update();
+        this.queries(frame);
+        if ((frame % DynamicAabbTreeBenchmark.CHECK_PERIOD) == 0) {
+          this.verify(frame);
+        }
+      }
+      final long[] updateNanos = new long[DynamicAabbTreeBenchmark.RUNS];
+      final long[] queryNanos = new long[DynamicAabbTreeBenchmark.RUNS];
+      this.reinserted = 0L;
+      this.hits = 0L;
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      threads.getThreadAllocatedBytes(thread);
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int run = 0; run < DynamicAabbTreeBenchmark.RUNS; run++) {
+        final long start = System.nanoTime();
+        this.update();
+        final long updated = System.nanoTime();
+        this.queries(run);
+        queryNanos[run] = System.nanoTime() - updated;
+        updateNanos[run] = updated - start;
+      }
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      for (int frame = 0; frame < DynamicAabbTreeBenchmark.RUNS;
+          frame += DynamicAabbTreeBenchmark.CHECK_PERIOD) {
+        this.update();
+        this.verify(frame);
+      }
+      final long[] bruteNanos = new long[DynamicAabbTreeBenchmark.RUNS
+        / DynamicAabbTreeBenchmark.CHECK_PERIOD];
+      for (int run = 0; run < bruteNanos.length; run++) {
+        final long start = System.nanoTime();
+        this.bruteForceQueries(run);
+        bruteNanos[run] = System.nanoTime() - start;
+      }
+      final double bruteMs = DynamicAabbTreeBenchmark.median(bruteNanos);
+      System.out.printf("%d objects, %d recreated per frame, height %d:"
+        + " update %.3f ms (%d reinsertions per frame), %d box queries and"
+        + " a frustum query %.3f ms (%d proxies found per frame), brute"
+        + " force %.3f ms; %d bytes allocated in %d frames%n",
+        this.tree.proxyCount(), DynamicAabbTreeBenchmark.CHURN,
+        this.tree.height(), DynamicAabbTreeBenchmark.median(updateNanos),
+        this.reinserted / DynamicAabbTreeBenchmark.RUNS,
+        DynamicAabbTreeBenchmark.QUERIES,
+        DynamicAabbTreeBenchmark.median(queryNanos),
+        this.hits / DynamicAabbTreeBenchmark.RUNS, bruteMs, allocated,
+        DynamicAabbTreeBenchmark.RUNS);
+      DynamicAabbTreeBenchmark.check(allocated == 0L,
+        "Frames allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Creates an object at a random place with a random velocity.
+     *
+     * @param _object the object
+     */
+    private void spawn(
+        final int _object) {
+      final int offset = _object * 3;
+      for (int axis = 0; axis < 3; axis++) {
+        this.centres[offset + axis] = ((this.random.nextFloat() * 2F) - 1F)
+          * DynamicAabbTreeBenchmark.WORLD;
+        this.velocities[offset + axis] = ((this.random.nextFloat() * 2F)
+          - 1F) * DynamicAabbTreeBenchmark.SPEED;
+      }
+      this.extents[_object] = 0.5F + (this.random.nextFloat() * 2F);
+      final float extent = this.extents[_object];
+      this.proxies[_object] = this.tree.createProxy(
+        this.centres[offset] - extent, this.centres[offset + 1] - extent,
+        this.centres[offset + 2] - extent, this.centres[offset] + extent,
+        this.centres[offset + 1] + extent, this.centres[offset + 2] + extent,
+        _object);
+    }
+
+    /**
+     * Moves every object, bouncing on the world box, and recreates a few.
+     */
+    private void update() {
+      this.tree.resetStatistics();
+      for (int object = 0; object < DynamicAabbTreeBenchmark.OBJECTS;
+          object++) {
+        final int offset = object * 3;
+        for (int axis = 0; axis < 3; axis++) {
+          float centre = this.centres[offset + axis]
+            + this.velocities[offset + axis];
+          if (Math.abs(centre) > DynamicAabbTreeBenchmark.WORLD) {
+            this.velocities[offset + axis] = -this.velocities[offset + axis];
+            centre = this.centres[offset + axis];
+          }
+          this.centres[offset + axis] = centre;
+        }
+        final float extent = this.extents[object];
+        this.tree.moveProxy(this.proxies[object],
+          this.centres[offset] - extent, this.centres[offset + 1] - extent,
+          this.centres[offset + 2] - extent, this.centres[offset] + extent,
+          this.centres[offset + 1] + extent,
+          this.centres[offset + 2] + extent);
+      }
+      this.reinserted += this.tree.reinsertions();
+      for (int churn = 0; churn < DynamicAabbTreeBenchmark.CHURN; churn++) {
+        final int object =
+          this.random.nextInt(DynamicAabbTreeBenchmark.OBJECTS);
+        this.tree.destroyProxy(this.proxies[object]);
+        this.spawn(object);
+      }
+    }
+
+    /**
+     * Runs the box queries and the frustum query of a frame.
+     *
+     * @param _frame the frame, turning the camera
+     */
+    private void queries(
+        final int _frame) {
+      for (int query = 0; query < DynamicAabbTreeBenchmark.QUERIES;
+          query++) {
+        final int offset = this.queryCentre(_frame, query) * 3;
+        this.found.clear();
+        this.tree.query(
+          this.centres[offset] - DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 1] - DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 2] - DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset] + DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 1] + DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 2] + DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.found);
+        this.hits += this.found.size();
+      }
+      this.camera(_frame);
+      this.found.clear();
+      this.tree.query(this.frustum, this.found);
+      this.hits += this.found.size();
+    }
+
+    /**
+     * Gets the object a box query of a frame is centred on.
+     *
+     * @param _frame the frame
+     * @param _query the query
+     * @return the object
+     */
+    private int queryCentre(
+        final int _frame,
+        final int _query) {
+      return (int) ((((long) _frame * DynamicAabbTreeBenchmark.QUERIES)
+        + _query) * 7_919L % DynamicAabbTreeBenchmark.OBJECTS);
+    }
+
+    /**
+     * Points the camera of a frame, turning around the world centre.
+     *
+     * @param _frame the frame
+     */
+    private void camera(
+        final int _frame) {
+      final double yaw = _frame * 0.05;
+      this.viewProjection.setPerspective((float) Math.toRadians(60.0),
+          16F / 9F, 0.1F, 400F)
+        .lookAt(0F, 0F, 0F, (float) Math.sin(yaw), 0F,
+          (float) -Math.cos(yaw), 0F, 1F, 0F);
+      this.frustum.set(this.viewProjection);
+    }
+
+    /**
+     * Compares every query of a frame with the brute force pass and checks
+     * the tree height.
+     *
+     * @param _frame the frame
+     */
+    private void verify(
+        final int _frame) {
+      for (int query = 0; query < DynamicAabbTreeBenchmark.QUERIES;
+          query++) {
+        final int offset = this.queryCentre(_frame, query) * 3;
+        this.found.clear();
+        this.tree.query(
+          this.centres[offset] - DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 1] - DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 2] - DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset] + DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 1] + DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.centres[offset + 2] + DynamicAabbTreeBenchmark.QUERY_EXTENT,
+          this.found);
+        this.bruteForceBox(offset);
+        this.compare("Box query " + query + " of frame " + _frame);
+      }
+      this.camera(_frame);
+      this.found.clear();
+      this.tree.query(this.frustum, this.found);
+      this.bruteForceFrustum();
+      this.compare("Frustum query of frame " + _frame);
+      final double balanced = Math.ceil(Math.log(this.tree.proxyCount())
+        / Math.log(2.0));
+      DynamicAabbTreeBenchmark.check(this.tree.height()
+        <= (DynamicAabbTreeBenchmark.HEIGHT_FACTOR * balanced),
+        "Tree height " + this.tree.height() + " for "
+          + this.tree.proxyCount() + " proxies");
+    }
+
+    /**
+     * Runs the queries of a frame by brute force, for timing.
+     *
+     * @param _frame the frame
+     */
+    private void bruteForceQueries(
+        final int _frame) {
+      for (int query = 0; query < DynamicAabbTreeBenchmark.QUERIES;
+          query++) {
+        this.bruteForceBox(this.queryCentre(_frame, query) * 3);
+      }
+      this.camera(_frame);
+      this.bruteForceFrustum();
+    }
+
+    /**
+     * Collects the proxies whose fat bounds overlap a query box, testing
+     * every proxy.
+     *
+     * @param _offset the offset of the centre of the query box
+     */
+    private void bruteForceBox(
+        final int _offset) {
+      final float minX = this.centres[_offset]
+        - DynamicAabbTreeBenchmark.QUERY_EXTENT;
+      final float minY = this.centres[_offset + 1]
+        - DynamicAabbTreeBenchmark.QUERY_EXTENT;
+      final float minZ = this.centres[_offset + 2]
+        - DynamicAabbTreeBenchmark.QUERY_EXTENT;
+      final float maxX = this.centres[_offset]
+        + DynamicAabbTreeBenchmark.QUERY_EXTENT;
+      final float maxY = this.centres[_offset + 1]
+        + DynamicAabbTreeBenchmark.QUERY_EXTENT;
+      final float maxZ = this.centres[_offset + 2]
+        + DynamicAabbTreeBenchmark.QUERY_EXTENT;
+      this.expected.clear();
+      for (int object = 0; object < DynamicAabbTreeBenchmark.OBJECTS;
+          object++) {
+        this.tree.fatBounds(this.proxies[object], this.fat);
+        if ((this.fat.minX <= maxX) && (this.fat.maxX >= minX)
+            && (this.fat.minY <= maxY) && (this.fat.maxY >= minY)
+            && (this.fat.minZ <= maxZ) && (this.fat.maxZ >= minZ)) {
+          this.expected.add(this.proxies[object]);
+        }
+      }
+    }
+
+    /**
+     * Collects the proxies whose fat bounds intersect the frustum, testing
+     * every proxy.
+     */
+    private void bruteForceFrustum() {
+      this.expected.clear();
+      for (int object = 0; object < DynamicAabbTreeBenchmark.OBJECTS;
+          object++) {
+        this.tree.fatBounds(this.proxies[object], this.fat);
+        final int result = this.frustum.intersectAab(this.fat.minX,
+          this.fat.minY, this.fat.minZ, this.fat.maxX, this.fat.maxY,
+          this.fat.maxZ);
+        if ((result == FrustumIntersection.INSIDE)
+            || (result == FrustumIntersection.INTERSECT)) {
+          this.expected.add(this.proxies[object]);
+        }
+      }
+    }
+
+    /**
+     * Checks that the tree found the same proxies as the brute force
+     * pass.
+     *
+     * @param _query the query, for the message
+     */
+    private void compare(
+        final String _query) {
+      final int[] tree = Arrays.copyOf(this.found.array(),
+        this.found.size());
+      final int[] brute = Arrays.copyOf(this.expected.array(),
+        this.expected.size());
+      Arrays.sort(tree);
+      Arrays.sort(brute);
+      DynamicAabbTreeBenchmark.check(Arrays.equals(tree, brute),
+        _query + " found " + tree.length + " proxies, brute force "
+          + brute.length);
+    }
+
+    /**
+     * Gets the median of measured times.
+     *
+     * @param _nanos the times in nanoseconds, sorted in place
+     * @return the median in milliseconds
+     */
+    private static double median(
+        final long[] _nanos) {
+      Arrays.sort(_nanos);
+      return _nanos[_nanos.length / 2] / 1.0E6;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }
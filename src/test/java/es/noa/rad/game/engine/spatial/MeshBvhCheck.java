@@ -0,0 +1,371 @@
+package es.noa.rad.game.engine.spatial;
+
+import es.noa.rad.game.engine.configuration.Configuration;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.joml.Matrix4f;
+import org.joml.primitives.Rayf;
+
+  /**
+   * Compares picking through a {@link MeshBvh} with a brute force test of
+   * every triangle.
+   *
+   * <p>A hilly terrain of a quarter million triangles is picked with rays
+   * under random cursor positions of a camera looking over it, built by
+   * the {@link CursorPicker}. Every ray is also tested against all the
+   * triangles with the same Möller-Trumbore arithmetic, so both must agree
+   * exactly on whether the terrain is hit and at which distance; the
+   * triangle may only differ when two share that distance, on a common
+   * edge. The build time and the time per ray of both methods are
+   * reported, and the timed queries must allocate nothing.
+   *
+   * <p>Run with its {@code main}, as described in the README.
+   */
+  public final class MeshBvhCheck {
+
+    /**
+     * Quads along each side of the terrain, two triangles each.
+     */
+    private static final int GRID = 360;
+
+    /**
+     * Distance between neighbouring terrain vertices.
+     */
+    private static final float SPACING = 1F;
+
+    /**
+     * Width of the picking window in pixels.
+     */
+    private static final int WIDTH = 1280;
+
+    /**
+     * Height of the picking window in pixels.
+     */
+    private static final int HEIGHT = 720;
+
+    /**
+     * Rays checked against the brute force test.
+     */
+    private static final int CHECKED_RAYS = 2_000;
+
+    /**
+     * Rays timed through the hierarchy, over and over.
+     */
+    private static final int TIMED_RAYS = 100_000;
+
+    /**
+     * Rounds of timed rays; the median is reported.
+     */
+    private static final int RUNS = 21;
+
+    /**
+     * Determinant below which a ray is parallel to a triangle, as in the
+     * hierarchy.
+     */
+    private static final float EPSILON = 1.0E-8F;
+
+    /**
+     * Not instantiable.
+     */
+    private MeshBvhCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param _args unused
+     */
+    public static void main(
+        final String[] _args) {
+      Configuration.get().init();
+      final Random random = new Random(32);
+      final float[] positions = MeshBvhCheck.positions(random);
+      final int[] indices = MeshBvhCheck.indices();
+      final ForkJoinPool pool =
+        new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      final MeshBvh bvh;
+      try {
+        bvh = new MeshBvh(positions, indices, pool);
+      } finally {
+        pool.shutdown();
+      }
+      System.out.printf("%d triangles, %d nodes built in %.1f ms%n",
+        bvh.triangleCount(), bvh.nodeCount(), bvh.buildNanos() / 1.0E6);
+
+      final float extent = MeshBvhCheck.GRID * MeshBvhCheck.SPACING;
+      final Matrix4f viewProjection = new Matrix4f()
+        .perspective((float) Math.toRadians(60.0),
+          ((float) MeshBvhCheck.WIDTH) / MeshBvhCheck.HEIGHT, 0.1F, 2000F)
+        .lookAt(-20F, 60F, -20F, extent * 0.5F, 0F, extent * 0.5F,
+          0F, 1F, 0F);
+      final CursorPicker picker = new CursorPicker();
+      final Rayf[] rays = new Rayf[MeshBvhCheck.TIMED_RAYS];
+      for (int index = 0; index < rays.length; index++) {
+        rays[index] = picker.ray(viewProjection,
+          random.nextFloat() * MeshBvhCheck.WIDTH,
+          random.nextFloat() * MeshBvhCheck.HEIGHT, MeshBvhCheck.WIDTH,
+          MeshBvhCheck.HEIGHT, new Rayf());
+      }
+      final double bruteNanos = MeshBvhCheck.compare(bvh, positions, indices,
+        rays);
+      final double bvhNanos = MeshBvhCheck.measure(bvh, rays);
+      System.out.printf("per ray: hierarchy %.0f ns, brute force %.0f ns,"
+        + " %.0fx faster%n", bvhNanos, bruteNanos, bruteNanos / bvhNanos);
+      System.out.println("MeshBvhCheck passed");
+    }
+
+    /**
+     * Builds the terrain vertices: rolling hills with some noise.
+     *
+     * @param _random the random source
+     * @return the positions, three floats per vertex
+     */
+    private static float[] positions(
+        final Random _random) {
+      final int side = MeshBvhCheck.GRID + 1;
+      final float[] positions = new float[side * side * 3];
+      for (int row = 0; row < side; row++) {
+        for (int column = 0; column < side; column++) {
+          final int offset = ((row * side) + column) * 3;
+          final float x = column * MeshBvhCheck.SPACING;
+          final float z = row * MeshBvhCheck.SPACING;
+          positions[offset] = x;
+          positions[offset + 1] = (float) ((Math.sin(x * 0.05) * 8.0)
+            + (Math.cos(z * 0.07) * 6.0) + (_random.nextFloat() * 0.5));
+          positions[offset + 2] = z;
+        }
+      }
+      return positions;
+    }
+
+    /**
+     * Builds the terrain triangles, two per quad.
+     *
+     * @return the indices, three per triangle
+     */
+    private static int[] indices() {
+      final int side = MeshBvhCheck.GRID + 1;
+      final int[] indices = new int[MeshBvhCheck.GRID * MeshBvhCheck.GRID
+        * 6];
+      int index = 0;
+      for (int row = 0; row < MeshBvhCheck.GRID; row++) {
+        for (int column = 0; column < MeshBvhCheck.GRID; column++) {
+          final int corner = (row * side) + column;
+          indices[index++] = corner;
+          indices[index++] = corner + side;
+          indices[index++] = corner + 1;
+          indices[index++] = corner + 1;
+          indices[index++] = corner + side;
+          indices[index++] = corner + side + 1;
+        }
+      }
+      return indices;
+    }
+
+    /**
+     * Checks the hierarchy against the brute force test.
+     *
+     * @param _bvh the hierarchy
+     * @param _positions the vertex positions
+     * @param _indices the triangle indices
+     * @param _rays the rays; the first ones are checked
+     * @return the brute force time per ray in nanoseconds
+     */
+    private static double compare(
+        final MeshBvh _bvh,
+        final float[] _positions,
+        final int[] _indices,
+        final Rayf[] _rays) {
+      final RayHit hit = new RayHit();
+      final float[] closest = new float[2];
+      int hits = 0;
+      int ties = 0;
+      long bruteNanos = 0L;
+      for (int index = 0; index < MeshBvhCheck.CHECKED_RAYS; index++) {
+        final Rayf ray = _rays[index];
+        final long start = System.nanoTime();
+        MeshBvhCheck.bruteForce(_positions, _indices, ray, closest);
+        bruteNanos += System.nanoTime() - start;
+        final boolean picked = _bvh.intersect(ray, Float.POSITIVE_INFINITY,
+          hit);
+        final boolean expected = closest[1] >= 0F;
+        MeshBvhCheck.check(picked == expected,
+          "Ray " + index + " hit " + picked + ", expected " + expected);
+        if (!picked) {
+          continue;
+        }
+        hits++;
+        MeshBvhCheck.check(hit.distance() == closest[0],
+          "Ray " + index + " hit at " + hit.distance() + ", expected "
+            + closest[0]);
+        if (hit.primitive() != (int) closest[1]) {
+          MeshBvhCheck.check(MeshBvhCheck.triangle(_positions, _indices,
+            hit.primitive(), ray) == closest[0],
+            "Ray " + index + " picked triangle " + hit.primitive()
+              + ", expected " + (int) closest[1]);
+          ties++;
+        }
+      }
+      System.out.printf("%d rays checked against brute force: %d hits,"
+        + " %d ties on shared edges%n", MeshBvhCheck.CHECKED_RAYS, hits,
+        ties);
+      MeshBvhCheck.check((hits > 0) && (hits < MeshBvhCheck.CHECKED_RAYS),
+        "Rays should both hit and miss the terrain");
+      return ((double) bruteNanos) / MeshBvhCheck.CHECKED_RAYS;
+    }
+
+    /**
+     * Finds the closest triangle hit by a ray, testing every triangle.
+     *
+     * @param _positions the vertex positions
+     * @param _indices the triangle indices
+     * @param _ray the ray
+     * @param _closest receives the distance and the triangle, or a
+     *     negative triangle on a miss
+     */
+    private static void bruteForce(
+        final float[] _positions,
+        final int[] _indices,
+        final Rayf _ray,
+        final float[] _closest) {
+      float distance = Float.POSITIVE_INFINITY;
+      int closest = -1;
+      for (int triangle = 0; triangle < (_indices.length / 3); triangle++) {
+        final float hit = MeshBvhCheck.triangle(_positions, _indices,
+          triangle, _ray);
+        if (hit < distance) {
+          distance = hit;
+          closest = triangle;
+        }
+      }
+      _closest[0] = distance;
+      _closest[1] = closest;
+    }
+
+    /**
+     * Tests a triangle (Möller-Trumbore, both faces), with the arithmetic
+     * of the hierarchy.
+     *
+     * @param _positions the vertex positions
+     * @param _indices the triangle indices
+     * @param _triangle the triangle
+     * @param _ray the ray
+     * @return the hit distance, or positive infinity on a miss
+     */
+    private static float triangle(
+        final float[] _positions,
+        final int[] _indices,
+        final int _triangle,
+        final Rayf _ray) {
+      final int v0 = _indices[_triangle * 3] * 3;
+      final int v1 = _indices[(_triangle * 3) + 1] * 3;
+      final int v2 = _indices[(_triangle * 3) + 2] * 3;
+      final float[] p = _positions;
+      final float edge1X = p[v1] - p[v0];
+      final float edge1Y = p[v1 + 1] - p[v0 + 1];
+      final float edge1Z = p[v1 + 2] - p[v0 + 2];
+      final float edge2X = p[v2] - p[v0];
+      final float edge2Y = p[v2 + 1] - p[v0 + 1];
+      final float edge2Z = p[v2 + 2] - p[v0 + 2];
+      final float pX = (_ray.dY * edge2Z) - (_ray.dZ * edge2Y);
+      final float pY = (_ray.dZ * edge2X) - (_ray.dX * edge2Z);
+      final float pZ = (_ray.dX * edge2Y) - (_ray.dY * edge2X);
+      final float determinant
+        = (edge1X * pX) + (edge1Y * pY) + (edge1Z * pZ);
+      if (Math.abs(determinant) < MeshBvhCheck.EPSILON) {
+        return Float.POSITIVE_INFINITY;
+      }
+      final float inverse = 1.0F / determinant;
+      final float sX = _ray.oX - p[v0];
+      final float sY = _ray.oY - p[v0 + 1];
+      final float sZ = _ray.oZ - p[v0 + 2];
+      final float u = ((sX * pX) + (sY * pY) + (sZ * pZ)) * inverse;
+      if ((u < 0.0F) || (u > 1.0F)) {
+        return Float.POSITIVE_INFINITY;
+      }
+      final float qX = (sY * edge1Z) - (sZ * edge1Y);
+      final float qY = (sZ * edge1X) - (sX * edge1Z);
+      final float qZ = (sX * edge1Y) - (sY * edge1X);
+      final float v = ((_ray.dX * qX) + (_ray.dY * qY) + (_ray.dZ * qZ))
+        * inverse;
+      if ((v < 0.0F) || ((u + v) > 1.0F)) {
+        return Float.POSITIVE_INFINITY;
+      }
+      final float distance
+        = ((edge2X * qX) + (edge2Y * qY) + (edge2Z * qZ)) * inverse;
+      return (distance >= 0.0F) ? distance : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Times the rays through the hierarchy and checks that the queries
+     * allocate nothing.
+     *
+     * @param _bvh the hierarchy
+     * @param _rays the rays
+     * @return the median time per ray in nanoseconds
+     */
+    private static double measure(
+        final MeshBvh _bvh,
+        final Rayf[] _rays) {
+      final RayHit hit = new RayHit();
+      int hits = MeshBvhCheck.pick(_bvh, _rays, hit);
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+      final long thread = Thread.currentThread().threadId();
+      final long[] nanos = new long[MeshBvhCheck.RUNS];
+      threads.getThreadAllocatedBytes(thread);
+      final long before = threads.getThreadAllocatedBytes(thread);
+      for (int run = 0; run < MeshBvhCheck.RUNS; run++) {
+        final long start = System.nanoTime();
+        hits = MeshBvhCheck.pick(_bvh, _rays, hit);
+        nanos[run] = System.nanoTime() - start;
+      }
+      final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      MeshBvhCheck.check(allocated == 0L,
+        "Ray queries allocated " + allocated + " bytes");
+      Arrays.sort(nanos);
+      System.out.printf("%d rays per round, %d hits, %d bytes allocated%n",
+        _rays.length, hits, allocated);
+      return ((double) nanos[nanos.length / 2]) / _rays.length;
+    }
+
+    /**
+     * Picks every ray through the hierarchy.
+     *
+     * @param _bvh the hierarchy
+     * @param _rays the rays
+     * @param _hit the reused hit
+     * @return the number of rays that hit
+     */
+    private static int pick(
+        final MeshBvh _bvh,
+        final Rayf[] _rays,
+        final RayHit _hit) {
+      int hits = 0;
+      for (final Rayf ray : _rays) {
+        if (_bvh.intersect(ray, Float.POSITIVE_INFINITY, _hit)) {
+          hits++;
+        }
+      }
+      return hits;
+    }
+
+    /**
+     * Fails the check.
+     *
+     * @param _condition the condition that must hold
+     * @param _message the failure message
+     * @throws IllegalStateException if the condition does not hold
+     */
+    private static void check(
+        final boolean _condition,
+        final String _message) {
+      if (!_condition) {
+        throw new IllegalStateException(_message);
+      }
+    }
+
+  }